@@ -35,8 +35,20 @@ public final class Config
 	
 	private static final String CACHE_SIZE_KEY_PREFIX = "CACHE_SIZE_FOR_PAGE_";
 	
+	private static final String OFF_HEAP_CACHE_SIZE_KEY_PREFIX = "OFF_HEAP_CACHE_SIZE_FOR_PAGE_";
+	
+	private static final String CACHE_SEGMENTS_KEY = "CACHE_SEGMENTS";
+	
 	private static final String NUM_IO_BUFFERS_KEY = "NUM_IO_BUFFERS";
 	
+	private static final String WRITE_BEHIND_LOW_WATERMARK_KEY = "WRITE_BEHIND_LOW_WATERMARK";
+	
+	private static final String WRITE_BEHIND_HIGH_WATERMARK_KEY = "WRITE_BEHIND_HIGH_WATERMARK";
+	
+	private static final String WRITE_BEHIND_MAX_DELAY_KEY = "WRITE_BEHIND_MAX_DELAY_MSECS";
+	
+	private static final String MAPPED_READS_KEY = "MAPPED_READS";
+	
 	private static final String NUM_CONCURRENT_QUERIES_KEY = "NUM_CONCURRENT_QUERIES";
 	
 	private static final String BLOCK_READ_COST = "BLOCK_READ_TRANSFER_NSECS";
@@ -188,6 +200,32 @@ public final class Config
 		return Integer.parseInt(val);
 	}
 	
+	/**
+	 * Gets the number of pages of the given size that are kept in direct memory, outside the
+	 * Java heap, after they were evicted from the cache. Zero means that no pages are kept.
+	 *  
+	 * @param pageSize The page size to get the off-heap capacity for.
+	 * @return The off-heap capacity in pages.
+	 */
+	public int getOffHeapCacheSize(PageSize pageSize)
+	{
+		String key = OFF_HEAP_CACHE_SIZE_KEY_PREFIX + pageSize.name();
+		String val = this.props.getProperty(key);
+		return Integer.parseInt(val);
+	}
+	
+	/**
+	 * Gets the number of independently locked segments that each page cache is split into.
+	 * A value of one means that a cache is guarded by a single lock.
+	 * 
+	 * @return The number of segments per cache.
+	 */
+	public int getCacheSegments()
+	{
+		String val = this.props.getProperty(CACHE_SEGMENTS_KEY);
+		return Integer.parseInt(val);
+	}
+	
 	/**
 	 * Gets the number of I/O buffers to be used by the buffer pool.
 	 * 
@@ -199,6 +237,60 @@ public final class Config
 		return Integer.parseInt(val);
 	}
 	
+	/**
+	 * Gets the percentage of I/O buffers holding modified pages that are waiting to be
+	 * written, at which the buffer pool stops flushing them.
+	 * 
+	 * @return The low watermark, in percent of the I/O buffers.
+	 */
+	public int getWriteBehindLowWatermark()
+	{
+		String val = this.props.getProperty(WRITE_BEHIND_LOW_WATERMARK_KEY);
+		return Integer.parseInt(val);
+	}
+	
+	/**
+	 * Gets the percentage of I/O buffers holding modified pages that are waiting to be
+	 * written, at which the buffer pool starts flushing them.
+	 * 
+	 * @return The high watermark, in percent of the I/O buffers.
+	 */
+	public int getWriteBehindHighWatermark()
+	{
+		String val = this.props.getProperty(WRITE_BEHIND_HIGH_WATERMARK_KEY);
+		return Integer.parseInt(val);
+	}
+	
+	/**
+	 * Gets the time (milliseconds) that a modified page may wait to be written, before it is
+	 * flushed regardless of the watermarks.
+	 * 
+	 * @return The maximal write delay in milliseconds.
+	 */
+	public int getWriteBehindMaxDelay()
+	{
+		String val = this.props.getProperty(WRITE_BEHIND_MAX_DELAY_KEY);
+		return Integer.parseInt(val);
+	}
+	
+	/**
+	 * Checks whether tables and indexes are to be read through memory mapped regions of their
+	 * files, instead of through read calls on the file channel.
+	 * 
+	 * @return True, if pages are read from mapped regions, false otherwise.
+	 */
+	public boolean isMappedReadsEnabled()
+	{
+		String val = this.props.getProperty(MAPPED_READS_KEY).trim();
+		if (val.equalsIgnoreCase("true")) {
+			return true;
+		}
+		else if (val.equalsIgnoreCase("false")) {
+			return false;
+		}
+		throw new IllegalArgumentException("Not a boolean: " + val);
+	}
+	
 	/**
 	 * Gets the maximal number of concurrent queries.
 	 * 
@@ -286,11 +378,24 @@ public final class Config
 		for (int i = 0; i < sizes.length; i++) {
 			p.setProperty(CACHE_SIZE_KEY_PREFIX + sizes[i].name(),
 					String.valueOf(Constants.DEFAULT_INITIAL_CACHE_SIZE));
+			p.setProperty(OFF_HEAP_CACHE_SIZE_KEY_PREFIX + sizes[i].name(),
+					String.valueOf(Constants.DEFAULT_OFF_HEAP_CACHE_SIZE));
 		}
 		
+		// set the number of cache segments
+		p.setProperty(CACHE_SEGMENTS_KEY, String.valueOf(Constants.DEFAULT_CACHE_SEGMENTS));
+		
 		// set the I/O buffer default
 		p.setProperty(NUM_IO_BUFFERS_KEY, String.valueOf(Constants.DEFAULT_NUM_IO_BUFFERS));
 		
+		// set the write behind defaults
+		p.setProperty(WRITE_BEHIND_LOW_WATERMARK_KEY, String.valueOf(Constants.DEFAULT_WRITE_BEHIND_LOW_WATERMARK));
+		p.setProperty(WRITE_BEHIND_HIGH_WATERMARK_KEY, String.valueOf(Constants.DEFAULT_WRITE_BEHIND_HIGH_WATERMARK));
+		p.setProperty(WRITE_BEHIND_MAX_DELAY_KEY, String.valueOf(Constants.DEFAULT_WRITE_BEHIND_MAX_DELAY));
+		
+		// set the read path default
+		p.setProperty(MAPPED_READS_KEY, String.valueOf(Constants.DEFAULT_MAPPED_READS));
+		
 		// set the concurrent queries default
 		p.setProperty(NUM_CONCURRENT_QUERIES_KEY,
 				String.valueOf(Constants.MAX_CONCURRENT_QUERIES));
@@ -333,6 +438,21 @@ public final class Config
 			catch (Throwable t) {
 				return CACHE_SIZE_KEY_PREFIX + pz.name();
 			}
+			try {
+				if (getOffHeapCacheSize(pz) < 0) {
+					return OFF_HEAP_CACHE_SIZE_KEY_PREFIX + pz.name();
+				}
+			}
+			catch (Throwable t) {
+				return OFF_HEAP_CACHE_SIZE_KEY_PREFIX + pz.name();
+			}
+		}
+		
+		try {
+			getCacheSegments();
+		}
+		catch (Throwable t) {
+			return CACHE_SEGMENTS_KEY;
 		}
 		
 		try {
@@ -342,6 +462,42 @@ public final class Config
 			return NUM_IO_BUFFERS_KEY;
 		}
 		
+		try {
+			int low = getWriteBehindLowWatermark();
+			if (low < 0 || low > 100) {
+				return WRITE_BEHIND_LOW_WATERMARK_KEY;
+			}
+		}
+		catch (Throwable t) {
+			return WRITE_BEHIND_LOW_WATERMARK_KEY;
+		}
+		
+		try {
+			int high = getWriteBehindHighWatermark();
+			if (high < getWriteBehindLowWatermark() || high > 100) {
+				return WRITE_BEHIND_HIGH_WATERMARK_KEY;
+			}
+		}
+		catch (Throwable t) {
+			return WRITE_BEHIND_HIGH_WATERMARK_KEY;
+		}
+		
+		try {
+			if (getWriteBehindMaxDelay() < 0) {
+				return WRITE_BEHIND_MAX_DELAY_KEY;
+			}
+		}
+		catch (Throwable t) {
+			return WRITE_BEHIND_MAX_DELAY_KEY;
+		}
+		
+		try {
+			isMappedReadsEnabled();
+		}
+		catch (Throwable t) {
+			return MAPPED_READS_KEY;
+		}
+		
 		try {
 			getMaxConcurrentQueries();
 		}
@@ -89,13 +89,47 @@ public abstract class Constants
 	 * specific value is given.
 	 */
 	static final int DEFAULT_INITIAL_CACHE_SIZE = 1000;
-	
+
+	/**
+	 * The number of pages per page size that are kept in direct memory after being evicted
+	 * from the cache, if no other specific value is given.
+	 */
+	static final int DEFAULT_OFF_HEAP_CACHE_SIZE = 0;
+
+	/**
+	 * The number of independently locked segments that a page cache is partitioned into
+	 * when it is shared by concurrently running queries.
+	 */
+	static final int DEFAULT_CACHE_SEGMENTS = 16;
+
 	/**
 	 * The number of I/O buffers used by the buffer pool. The I/O buffers are needed to
 	 * sequentialize reads and writes.
 	 */
 	static final int DEFAULT_NUM_IO_BUFFERS = 128;
 	
+	/**
+	 * The share of I/O buffers (percent) holding modified pages waiting to be written, down to
+	 * which the buffer pool flushes once it has started flushing.
+	 */
+	static final int DEFAULT_WRITE_BEHIND_LOW_WATERMARK = 10;
+	
+	/**
+	 * The share of I/O buffers (percent) holding modified pages waiting to be written, at which
+	 * the buffer pool starts flushing them. Below that, writes are deferred to collect longer runs.
+	 */
+	static final int DEFAULT_WRITE_BEHIND_HIGH_WATERMARK = 40;
+	
+	/**
+	 * The default time (milliseconds) a modified page may wait to be written.
+	 */
+	static final int DEFAULT_WRITE_BEHIND_MAX_DELAY = 50;
+	
+	/**
+	 * Whether tables and indexes are read through memory mapped regions of their files by default.
+	 */
+	static final boolean DEFAULT_MAPPED_READS = false;
+	
 	/**
 	 * The default number of concurrent queries.
 	 */
@@ -162,6 +196,11 @@ public abstract class Constants
 	 */
 	public static final int DEFAULT_PREFETCHING_LENGTH = 32;
 	
+	/**
+	 * The size (bytes) of the regions in which resource files are memory mapped for reading.
+	 */
+	public static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+	
 	/**
 	 * A flag that indicates whether to perform debug checks.
 	 */
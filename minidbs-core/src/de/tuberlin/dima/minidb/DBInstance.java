@@ -514,6 +514,9 @@ public class DBInstance
 			TableResourceManager manager = null;
 			try {
 				manager = TableResourceManager.openTable(tableFile);
+				if (config.isMappedReadsEnabled()) {
+					manager.enableMappedReads();
+				}
 				int id = catalogue.reserveNextId();
 				buffer.registerResource(id, manager);
 				td.setResourceProperties(manager, id);
@@ -550,6 +553,9 @@ public class DBInstance
 			IndexResourceManager manager = null;
 			try {
 				manager = IndexResourceManager.openIndex(indexFile, table.getSchema());
+				if (config.isMappedReadsEnabled()) {
+					manager.enableMappedReads();
+				}
 				int resourceId = catalogue.reserveNextId();
 				buffer.registerResource(resourceId, manager);
 				id.setResourceProperties(manager, table, resourceId);
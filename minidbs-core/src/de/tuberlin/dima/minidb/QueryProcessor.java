@@ -132,6 +132,7 @@ public class QueryProcessor
     	long rro = this.config.getBlockRandomReadOverhead();
     	long rwo = this.config.getBlockRandomWriteOverhead();
     	final Optimizer opt = new Optimizer(this.catalogue, rc, wc, rro, rwo);
+    	opt.setMaxConcurrentQueries(this.config.getMaxConcurrentQueries());
     	
     	OptimizerPlanOperator bestPlan = null;
     	
@@ -190,9 +191,14 @@ public class QueryProcessor
 	    
 	    try {
 	    	executablePlan.open(null);
-	    	DataTuple tuple = null;
-	    	while ((tuple = executablePlan.next()) != null) {
-	    		resultHandler.addResultTuple(tuple);
+	    	// the plan is drained in batches, operators without batches of their own fill them tuple by tuple
+	    	DataTuple[] batch = new DataTuple[PhysicalPlanOperator.DEFAULT_BATCH_SIZE];
+	    	int num;
+	    	while ((num = executablePlan.nextBatch(batch)) > 0) {
+	    		for (int i = 0; i < num; i++) {
+	    			resultHandler.addResultTuple(batch[i]);
+	    			batch[i] = null;
+	    		}
 	    	}
 	    	resultHandler.closeResultSet();
 	    }
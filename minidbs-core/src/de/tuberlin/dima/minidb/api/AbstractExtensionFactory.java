@@ -144,7 +144,30 @@ public abstract class AbstractExtensionFactory
 	 * @return The new page cache.
 	 */
 	abstract public PageCache createPageCache(PageSize pageSize, int numPages);
-	
+
+	/**
+	 * Creates a new PageCache with the given number of entries that may be accessed by multiple
+	 * threads at the same time without any external synchronization. The entries are partitioned
+	 * into the given number of independently locked segments, each of which runs its own
+	 * replacement strategy, such that requests for different pages rarely contend for the same lock.
+	 * <p>
+	 * Apart from the thread safety, the cache behaves like the one created through
+	 * {@link #createPageCache(PageSize, int)}. With a single segment, its replacement decisions
+	 * are identical to those of a single ARC cache.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about concurrent caches
+	 * remain loadable. Such factories simply report the method as not supported.
+	 *
+	 * @param pageSize The size of the pages cached by this page cache.
+	 * @param numPages The number of pages that the cache holds.
+	 * @param numSegments The number of independently locked segments to split the cache into.
+	 * @return The new page cache.
+	 */
+	public PageCache createPageCache(PageSize pageSize, int numPages, int numSegments)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	/**
 	 * Creates a buffer pool manager that serves as the resource gateway for all queries.
 	 * The buffer pool internally owns the caches for the respective page sizes and
@@ -218,6 +241,39 @@ public abstract class AbstractExtensionFactory
 			int prefetchWindowLength
 			);
 
+	/**
+	 * Creates a new physical query plan operator performing a table scan as one of several scans of
+	 * a parallel plan. Instead of all data pages of the table, the operator scans the ranges of
+	 * pages it claims from the given dispenser, which it shares with the other scans of the table.
+	 * The remaining parameters are as for
+	 * {@link #createTableScanOperator(BufferPoolManager, TableResourceManager, int, int[], LowLevelPredicate[], int)}.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about parallel scans
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager of the scanned table.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The indexes of the columns that occur in the produced
+	 *                              tuple in the order as they are produced.
+	 * @param predicate An array of predicates each tuple must pass.
+	 * @param prefetchWindowLength The number of pages to prefetch in advance to the page
+	 *                             that the operator currently works on.
+	 * @param dispenser The dispenser of the ranges of pages to scan.
+	 * @return A new physical plan operator representing a TableScan.
+	 */
+	public TableScanOperator createTableScanOperator(
+			BufferPoolManager bufferPool,
+			TableResourceManager tableManager,
+			int resourceId,
+			int[] producedColumnIndexes,
+			LowLevelPredicate[] predicate,
+			int prefetchWindowLength,
+			PageRangeDispenser dispenser)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	/**
 	 * Creates a new physical query plan operator performing an index scan.
 	 *
@@ -227,7 +283,7 @@ public abstract class AbstractExtensionFactory
 	 * the range of keys to retrieve using the index scan operator.
 	 *
 	 * @param index The B+-Tree that is scanned.
-	 * @param startKey The lower boundary of the requested interval.
+	 * @param startKey The lower boundary of the requested interval, or null to start at the first key.
 	 * @param stopKey The upper boundary of the requested interval.
 	 * @param startKeyIncluded A flag indicating whether the lower boundary is inclusive. True indicates an inclusive boundary. 
 	 * @param stopKeyIncluded A flag indicating whether the upper boundary is inclusive. True indicates an inclusive boundary.
@@ -401,6 +457,31 @@ public abstract class AbstractExtensionFactory
 	 */
 	abstract public FetchOperator createFetchOperator(PhysicalPlanOperator child,
 			BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap);
+
+	/**
+	 * Creates a new FETCH operator that draws the RIDs from its child in batches. The RIDs of a
+	 * batch are sorted by their page, the pages are prefetched, and all tuples of a page are
+	 * fetched under a single pin of the page. The columns are mapped as described for
+	 * {@link #createFetchOperator(PhysicalPlanOperator, BufferPoolManager, int, int[])}.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about batched fetches
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param child The child operator of this fetch operator.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param outputColumnMap The map describing how the column of the tuple produced by the
+	 *                        FETCH operator are produced from the tuple fetched from the table.
+	 * @param batchSize The number of RIDs that are sorted and fetched together.
+	 * @param preserveOrder Flag indicating that the tuples are produced in the order in which the
+	 *                      child produced their RIDs, rather than in the order of their pages.
+	 * @return An implementation of the FetchOperator.
+	 */
+	public FetchOperator createFetchOperator(PhysicalPlanOperator child,
+			BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap, int batchSize, boolean preserveOrder)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
 	
 	/**
 	 * Creates a new filter operator that evaluates a local predicate on the incoming tuples.
@@ -454,6 +535,52 @@ public abstract class AbstractExtensionFactory
 			QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
 			int[] sortColumns, boolean[] columnsAscending);
 	
+	/**
+	 * Creates a new sort operator that performs an external merge-sort whose sorted runs are
+	 * generated by several threads, each in a grant of the query heap of its own.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about parallel sorts
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param queryHeap The heap which manages the memory and manages reading and writing of the
+	 *                  temporary lists.
+	 * @param columnTypes An array of the types of the tuple's fields.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort, the primary sort column first.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @param degreeOfParallelism The number of threads that generate the sorted runs.
+	 * @return An implementation of the SortOperator.
+	 */
+	public SortOperator createSortOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
+	/**
+	 * Creates a sort operator that produces only the first tuples in the sort order, at most as
+	 * many as the given limit. It keeps no more tuples than the limit in memory and needs neither
+	 * the query heap nor temporary lists. Without sort columns, it produces the first tuples of
+	 * its child in the order in which they come.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about top-N sorts
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param sortColumns The indices of the columns after which to sort, as for
+	 *                    {@link #createSortOperator(PhysicalPlanOperator, QueryHeap, DataType[], int, int[], boolean[])}.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @param limit The maximal number of tuples to produce.
+	 * @return An implementation of the TopNSortOperator.
+	 */
+	public TopNSortOperator createTopNSortOperator(PhysicalPlanOperator child,
+			int[] sortColumns, boolean[] columnsAscending, int limit)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+	
 	/**
 	 * Creates a group by operator that groups and aggregates a sorted stream of tuples.
 	 * 
@@ -506,6 +633,42 @@ public abstract class AbstractExtensionFactory
 			DataType[] aggColumnTypes,
 			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition);
 
+	/**
+	 * Creates a group by operator that groups and aggregates a stream of tuples in any order
+	 * through hashing. The groups are kept in a hash table in memory taken from the query heap.
+	 * If they do not fit, the tuples of the groups that are not in the table are partitioned to
+	 * temp space and aggregated in further passes. The columns are described as for
+	 * {@link #createGroupByOperator(PhysicalPlanOperator, int[], int[], OutputColumn.AggregationType[], DataType[], int[], int[])}.
+	 * The produced tuples are in no particular order.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about hash aggregation
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param child The child of the operator, delivering the tuples to be grouped and aggregated
+	 *              in any order.
+	 * @param queryHeap The query heap that provides the memory for the groups and the temp space.
+	 * @param inputColumnTypes The types of the columns of the tuples produced by the child.
+	 * @param estimatedGroups The estimated number of groups.
+	 * @param groupColumnIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated functions.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping columns will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced tuple
+	 *                                   the aggregate columns will be put.
+	 * @return An implementation of the GroupByOperator.
+	 */
+	public GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] inputColumnTypes, int estimatedGroups,
+			int[] groupColumnIndices, int[] aggColumnIndices,
+			OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	/**
 	 * Creates a merge join operator that joins two sorted streams of tuples.
 	 * <p>
@@ -547,6 +710,70 @@ public abstract class AbstractExtensionFactory
 	abstract public MergeJoinOperator createMergeJoinOperator(PhysicalPlanOperator leftChild, 
 			PhysicalPlanOperator rightChild, int[] leftJoinColumns, 
 			int[] rightJoinColumns, int[] columnMapLeftTuple, int[] columnMapRightTuple);
+
+	/**
+	 * Creates a hash join operator that joins two streams of tuples in any order. The tuples of
+	 * the build side are put into a hash table over the build join columns, and each tuple of the
+	 * probe side is joined with the build tuples whose join columns are equal to its own and that
+	 * qualify for the join predicate, if one is given. The output tuples are derived through the
+	 * column maps as described for
+	 * {@link #createMergeJoinOperator(PhysicalPlanOperator, PhysicalPlanOperator, int[], int[], int[], int[])}.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about hash joins
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param probeChild The operator producing the tuples that are looked up.
+	 * @param buildChild The operator producing the tuples that are put into the hash table.
+	 * @param probeJoinColumns The join columns of the probe tuples.
+	 * @param buildJoinColumns The join columns of the build tuples.
+	 * @param joinPredicate A further predicate on pairs of probe and build tuples, or null.
+	 * @param columnMapProbeTuple The map describing how the columns from the probe tuple are
+	 *                            copied to the output tuple.
+	 * @param columnMapBuildTuple The map describing how the columns from the build tuple are
+	 *                            copied to the output tuple.
+	 * @return An implementation of the HashJoinOperator.
+	 */
+	public HashJoinOperator createHashJoinOperator(PhysicalPlanOperator probeChild,
+			PhysicalPlanOperator buildChild, int[] probeJoinColumns, int[] buildJoinColumns,
+			JoinPredicate joinPredicate, int[] columnMapProbeTuple, int[] columnMapBuildTuple)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	/**
+	 * Creates an exchange operator that gathers the tuples of several sub-plans, each run by a
+	 * thread of its own, into one stream. The tuples arrive in no particular order.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about parallel plans
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param producers The sub-plans whose tuples are gathered.
+	 * @return An implementation of the ExchangeOperator.
+	 */
+	public ExchangeOperator createGatherOperator(PhysicalPlanOperator[] producers)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	/**
+	 * Creates exchange operators that repartition the tuples of several sub-plans, each run by a
+	 * thread of its own, by the hash of their key columns. There is one operator per partition,
+	 * and all tuples with the same key are produced by the same one. Every one of the operators
+	 * must be opened in each pass, typically each by a thread of its own.
+	 * <p>
+	 * This method is not abstract so that factories which do not know about parallel plans
+	 * remain loadable. Such factories simply report the method as not supported.
+	 * 
+	 * @param producers The sub-plans whose tuples are repartitioned.
+	 * @param keyColumns The columns whose hash decides the partition of a tuple.
+	 * @param numPartitions The number of partitions.
+	 * @return For each partition the ExchangeOperator producing its tuples.
+	 */
+	public ExchangeOperator[] createRepartitionOperators(PhysicalPlanOperator[] producers,
+			int[] keyColumns, int numPartitions)
+	{
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
 	
 	/**
 	 * Creates an optimizer for the order of joins.
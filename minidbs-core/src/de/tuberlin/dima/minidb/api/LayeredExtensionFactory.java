@@ -133,6 +133,18 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public PageCache createPageCache(PageSize pageSize, int numPages, int numSegments) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createPageCache(pageSize, numPages, numSegments);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public BufferPoolManager createBufferPoolManager(Config config, Logger logger) {
 		for (AbstractExtensionFactory factory: this.factories) {
@@ -269,6 +281,19 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public FetchOperator createFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap,
+			int batchSize, boolean preserveOrder) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createFetchOperator(child, bufferPool, tableResourceId, outputColumnMap, batchSize, preserveOrder);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public FilterOperator createFilterOperator(PhysicalPlanOperator child, LocalPredicate predicate) {
 		for (AbstractExtensionFactory factory: this.factories) {
@@ -306,6 +331,33 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public SortOperator createSortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createSortOperator(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending,
+						degreeOfParallelism);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public TopNSortOperator createTopNSortOperator(PhysicalPlanOperator child, int[] sortColumns, boolean[] columnsAscending,
+			int limit) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createTopNSortOperator(child, sortColumns, columnsAscending, limit);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public GroupByOperator createGroupByOperator(PhysicalPlanOperator child, int[] groupColumnIndices, int[] aggColumnIndices,
 			AggregationType[] aggregateFunctions, DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
@@ -320,6 +372,74 @@ public final class LayeredExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] inputColumnTypes,
+			int estimatedGroups, int[] groupColumnIndices, int[] aggColumnIndices, AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashGroupByOperator(child, queryHeap, inputColumnTypes, estimatedGroups, groupColumnIndices,
+					aggColumnIndices, aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public TableScanOperator createTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength, PageRangeDispenser dispenser) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate,
+					prefetchWindowLength, dispenser);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public HashJoinOperator createHashJoinOperator(PhysicalPlanOperator probeChild, PhysicalPlanOperator buildChild,
+			int[] probeJoinColumns, int[] buildJoinColumns, JoinPredicate joinPredicate, int[] columnMapProbeTuple,
+			int[] columnMapBuildTuple) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createHashJoinOperator(probeChild, buildChild, probeJoinColumns, buildJoinColumns, joinPredicate,
+					columnMapProbeTuple, columnMapBuildTuple);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public ExchangeOperator createGatherOperator(PhysicalPlanOperator[] producers) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createGatherOperator(producers);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
+	@Override
+	public ExchangeOperator[] createRepartitionOperators(PhysicalPlanOperator[] producers, int[] keyColumns, int numPartitions) {
+		for (AbstractExtensionFactory factory: this.factories) {
+			try {
+				return factory.createRepartitionOperators(producers, keyColumns, numPartitions);
+			} catch (UnsupportedOperationException e) {
+				// ignore exception
+			}
+		}
+		throw new UnsupportedOperationException("Method not yet supported");
+	}
+
 	@Override
 	public MergeJoinOperator createMergeJoinOperator(PhysicalPlanOperator leftChild, PhysicalPlanOperator rightChild, int[] leftJoinColumns,
 			int[] rightJoinColumns, int[] columnMapLeftTuple, int[] columnMapRightTuple) {
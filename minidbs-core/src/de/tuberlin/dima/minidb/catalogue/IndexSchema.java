@@ -3,9 +3,11 @@ package de.tuberlin.dima.minidb.catalogue;
 
 import java.io.IOException;
 
+import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.core.RID;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.IndexPageFactory;
 import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
 
 
@@ -47,6 +49,16 @@ public class IndexSchema
 	 */
 	private boolean unique;
 	
+	/**
+	 * Flag indicating that the pages of the index store their keys prefix compressed.
+	 */
+	private boolean compressed;
+	
+	/**
+	 * Flag indicating that the leaf pages of the index store each key once with the list of its RIDs.
+	 */
+	private boolean postingLists;
+	
 	/**
 	 * The page number of the root page.
 	 */
@@ -222,6 +234,62 @@ public class IndexSchema
 	{
 		return this.unique;
 	}
+	
+	/**
+	 * Checks whether the pages of this index store their keys prefix compressed.
+	 * 
+	 * @return true, if the pages are compressed, false if not.
+	 */
+	public boolean isCompressed()
+	{
+		return this.compressed;
+	}
+	
+	/**
+	 * Sets whether the pages of this index store their keys prefix compressed. Compressed pages
+	 * hold more keys, but only the key types listed at
+	 * {@link IndexPageFactory#isCompressionSupported(DataType)} can be compressed. The setting
+	 * must not change once pages of the index have been created.
+	 * 
+	 * @param compressed true, if the pages are compressed, false if not.
+	 * @throws IllegalArgumentException Thrown, if the type of the indexed column cannot be compressed.
+	 */
+	public void setCompressed(boolean compressed)
+	{
+		if (compressed && !IndexPageFactory.isCompressionSupported(getIndexedColumnSchema().getDataType())) {
+			throw new IllegalArgumentException("Keys of type " + getIndexedColumnSchema().getDataType() +
+					" cannot be compressed.");
+		}
+		this.compressed = compressed;
+	}
+	
+	/**
+	 * Checks whether the leaf pages of this index store each distinct key once, followed by the
+	 * list of its RIDs, see {@link de.tuberlin.dima.minidb.io.index.BTreePostingListLeafPage}.
+	 * 
+	 * @return true, if the leaves hold posting lists, false if not.
+	 */
+	public boolean hasPostingLists()
+	{
+		return this.postingLists;
+	}
+	
+	/**
+	 * Sets whether the leaf pages of this index store each distinct key once, followed by the
+	 * list of its RIDs. Posting lists save space for keys with many duplicates, as in foreign key
+	 * indexes. The setting takes precedence over {@link #isCompressed()} for the leaves and must
+	 * not change once pages of the index have been created.
+	 * 
+	 * @param postingLists true, if the leaves hold posting lists, false if not.
+	 * @throws IllegalArgumentException Thrown, if the index is unique.
+	 */
+	public void setPostingLists(boolean postingLists)
+	{
+		if (postingLists && this.unique) {
+			throw new IllegalArgumentException("A unique index has no duplicate keys to store in posting lists.");
+		}
+		this.postingLists = postingLists;
+	}
 
 	/**
 	 * Gets the order of the tree, i.e. the maximal number of keys in inner nodes.
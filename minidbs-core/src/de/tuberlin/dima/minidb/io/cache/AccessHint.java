@@ -0,0 +1,27 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+
+/**
+ * Describes how a page is accessed, so that the cache can place it according to its expected
+ * reuse rather than treating all pages the same.
+ */
+public enum AccessHint
+{
+	/**
+	 * The page is read once as part of a large sequential scan. Such pages are kept in a small
+	 * ring of frames at the cold end of the cache and are replaced before any other page, so that
+	 * a scan cannot flush the rest of the cache.
+	 */
+	SEQUENTIAL_SCAN,
+	
+	/**
+	 * The page is accessed without a known pattern. This is the default behavior of the cache.
+	 */
+	RANDOM,
+	
+	/**
+	 * The page is an inner page of an index, which is expected to be accessed frequently. Such
+	 * pages are treated as frequent from their first access on.
+	 */
+	INDEX_INTERNAL;
+}
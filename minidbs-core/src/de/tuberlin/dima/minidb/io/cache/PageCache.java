@@ -95,6 +95,75 @@ public interface PageCache
 	EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
 		throws CachePinnedException, DuplicateCacheEntryException;
 	
+	/**
+	 * Like {@link #getPage(int, int)}, with a hint on how the page is accessed. A request with
+	 * the hint {@link AccessHint#SEQUENTIAL_SCAN} does not make a page more recent or frequent.
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param resourceId The id of the resource for which we seek to get a page.
+	 * @param pageNumber The physical page number of the page we seek to retrieve.
+	 * @param hint The way the page is accessed.
+	 * @return The cache entry containing the page data, or null, if the page is not
+	 *         contained in the cache.
+	 */
+	default CacheableData getPage(int resourceId, int pageNumber, AccessHint hint)
+	{
+		return getPage(resourceId, pageNumber);
+	}
+	
+	/**
+	 * Like {@link #getPageAndPin(int, int)}, with a hint on how the page is accessed.
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param resourceId The id of the resource for which we seek to get a page.
+	 * @param pageNumber The physical page number of the page we seek to retrieve.
+	 * @param hint The way the page is accessed.
+	 * @return The cache entry containing the page data, or null, if the page is not
+	 *         contained in the cache.
+	 */
+	default CacheableData getPageAndPin(int resourceId, int pageNumber, AccessHint hint)
+	{
+		return getPageAndPin(resourceId, pageNumber);
+	}
+	
+	/**
+	 * Like {@link #addPage(CacheableData, int)}, with a hint on how the page is accessed. Pages
+	 * added for a {@link AccessHint#SEQUENTIAL_SCAN} do not enter the ARC lists (and leave no ghost
+	 * entries), pages added as {@link AccessHint#INDEX_INTERNAL} enter T2 directly.
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param newPage The new page to be put into the cache.
+	 * @param resourceId The id of the resource the page belongs to.
+	 * @param hint The way the page is accessed.
+	 * @return The entry for the page that needed to be evicted.
+	 * @throws CachePinnedException Thrown, if no page could be evicted, because all pages
+	 *                              are pinned.
+	 * @throws DuplicateCacheEntryException Thrown, if an entry for that page is already contained.
+	 */
+	default EvictedCacheEntry addPage(CacheableData newPage, int resourceId, AccessHint hint)
+		throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return addPage(newPage, resourceId);
+	}
+	
+	/**
+	 * Like {@link #addPageAndPin(CacheableData, int)}, with a hint on how the page is accessed.
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param newPage The new page to be put into the cache.
+	 * @param resourceId The id of the resource the page belongs to.
+	 * @param hint The way the page is accessed.
+	 * @return The entry for the page that needed to be evicted.
+	 * @throws CachePinnedException Thrown, if no page could be evicted, because all pages
+	 *                              are pinned.
+	 * @throws DuplicateCacheEntryException Thrown, if an entry for that page is already contained.
+	 */
+	default EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId, AccessHint hint)
+		throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return addPageAndPin(newPage, resourceId);
+	}
+	
 	/**
 	 * Decreases the pinning counter of the entry for the page described by this resource-id and
 	 * page number. If there is no entry for this page, this method does nothing. If
@@ -0,0 +1,481 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexStatistics;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * Builds a B-Tree index bottom-up from (key / RID) pairs that arrive in sorted order, instead of
+ * inserting them one after the other from the root. The pairs are appended to leaf pages, see
+ * {@link BTreeLeafPage#appendKeyRIDPair(DataField, RID)}, and whenever a leaf is filled up to the
+ * fill factor, the next leaf is started. Once all pairs are added, the inner nodes are built level by
+ * level over the highest keys of the nodes of the level below, until a level consists of a single
+ * node, the root.
+ * <p>
+ * The builder writes the index file from its first page on, sequentially, and bypasses the buffer
+ * pool: the pages are collected in a batch of buffers and the batch is written with a single call to
+ * {@link IndexResourceManager#writePagesToResource(byte[][], CacheableData[])} when it is full. The
+ * previous contents of the index are dropped, so the index must not have pages in the buffer pool
+ * while it is built.
+ * <p>
+ * A fill factor below one leaves room in every page, so that later inserts do not immediately split
+ * the pages. A key whose pairs continue on the next leaf is marked as such, as the regular insert
+ * marks it after a split.
+ * <p>
+ * For an index with compressed pages, see {@link IndexSchema#isCompressed()}, the fill factor
+ * applies to the number of entries that fit a leaf in the layout of its keys, and to the bytes of an
+ * inner node. The keys of the inner nodes are not the highest keys of the children, but the
+ * shortest separators between neighboring children, which compress best.
+ * <p>
+ * For an index with posting lists in its leaves, see {@link IndexSchema#hasPostingLists()}, the
+ * fill factor applies to the bytes of a leaf.
+ */
+public class BTreeBulkBuilder
+{
+	/**
+	 * The default fraction of the entries of a page that are filled.
+	 */
+	public static final float DEFAULT_FILL_FACTOR = 0.9f;
+
+	/**
+	 * The default number of pages that are written at once.
+	 */
+	public static final int DEFAULT_PAGES_PER_WRITE = 32;
+
+	private final IndexResourceManager index;
+
+	private final IndexSchema schema;
+
+	/**
+	 * The number of pairs a leaf is filled with.
+	 */
+	private final int leafEntries;
+
+	/**
+	 * The number of pointers an inner node is filled with.
+	 */
+	private final int innerPointers;
+
+	private final float fillFactor;
+
+	/**
+	 * Flag indicating that the pages store their keys compressed.
+	 */
+	private final boolean compressed;
+
+	/**
+	 * The buffers of the batch of pages that are written next.
+	 */
+	private final byte[][] buffers;
+
+	private final BTreeIndexPage[] pages;
+
+	private int numPagesInBatch;
+
+	/**
+	 * The number of the page that is created next.
+	 */
+	private int nextPageNumber;
+
+	/**
+	 * The highest keys of the nodes of the level below the one that is built, in order.
+	 */
+	private List<DataField> childKeys = new ArrayList<DataField>();
+
+	/**
+	 * The lowest keys of the nodes of the level below the one that is built, in order.
+	 */
+	private List<DataField> childLowKeys = new ArrayList<DataField>();
+
+	/**
+	 * The page numbers of the nodes of the level below the one that is built, in order.
+	 */
+	private List<Integer> childPages = new ArrayList<Integer>();
+
+	/**
+	 * The leaf that pairs are appended to, or null, before the first pair.
+	 */
+	private BTreeLeafPage leaf;
+
+	private long numEntries;
+
+	private int numLeaves;
+
+	private int height;
+
+	private boolean finished;
+
+
+	/**
+	 * Creates a builder that fills the pages to the default fill factor.
+	 *
+	 * @param index The manager of the index to build.
+	 * @throws IOException Thrown, if the index could not be truncated.
+	 */
+	public BTreeBulkBuilder(IndexResourceManager index) throws IOException
+	{
+		this(index, DEFAULT_FILL_FACTOR, DEFAULT_PAGES_PER_WRITE);
+	}
+
+	/**
+	 * Creates a builder.
+	 *
+	 * @param index The manager of the index to build.
+	 * @param fillFactor The fraction of the entries of a page that are filled, greater than zero and
+	 *                   at most one. Each page gets at least one entry and each inner node at least
+	 *                   three pointers.
+	 * @param pagesPerWrite The number of pages that are written at once.
+	 * @throws IOException Thrown, if the index could not be truncated.
+	 */
+	public BTreeBulkBuilder(IndexResourceManager index, float fillFactor, int pagesPerWrite) throws IOException
+	{
+		if (fillFactor <= 0.0f || fillFactor > 1.0f) {
+			throw new IllegalArgumentException("The fill factor must be in (0, 1].");
+		}
+		this.index = index;
+		this.schema = index.getSchema();
+
+		int maxEntries = this.schema.getMaximalLeafEntries();
+		this.leafEntries = Math.max(1, Math.min(maxEntries, (int) (maxEntries * fillFactor)));
+		int maxPointers = this.schema.getFanOut() + 1;
+		this.innerPointers = Math.min(maxPointers, Math.max(3, (int) (maxPointers * fillFactor)));
+		this.fillFactor = fillFactor;
+		this.compressed = this.schema.isCompressed();
+
+		int pageSize = this.schema.getPageSize().getNumberOfBytes();
+		this.buffers = new byte[Math.max(1, pagesPerWrite)][pageSize];
+		this.pages = new BTreeIndexPage[this.buffers.length];
+
+		// start from a single empty leaf, which becomes the first leaf
+		index.truncate();
+		this.nextPageNumber = this.schema.getFirstLeafNumber();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds the next pair to the index. The pairs must be added in ascending order of their keys.
+	 *
+	 * @param key The key of the pair.
+	 * @param rid The RID of the pair.
+	 * @throws IOException Thrown, if a batch of pages could not be written.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 * @throws IndexFormatCorruptException Thrown, if the key is smaller than the previous one.
+	 * @throws DuplicateException Thrown, if the key equals the previous key, but the index is unique.
+	 */
+	public void addEntry(DataField key, RID rid) throws IOException, PageFormatException
+	{
+		if (this.finished) {
+			throw new IllegalStateException("The index has already been built.");
+		}
+		if (this.leaf == null) {
+			this.leaf = (BTreeLeafPage) newPage(true);
+		}
+		else if (isLeafFilled()) {
+			nextLeaf(key);
+		}
+		if (!this.leaf.appendKeyRIDPair(key, rid)) {
+			// the key does not fit the layout of the compressed leaf, or the free bytes of the
+			// posting list leaf
+			nextLeaf(key);
+			this.leaf.appendKeyRIDPair(key, rid);
+		}
+		this.numEntries++;
+	}
+
+	private boolean isLeafFilled()
+	{
+		int entries = this.leaf.getNumberOfEntries();
+		if (this.leaf instanceof BTreePostingListLeafPage) {
+			int area = this.schema.getPageSize().getNumberOfBytes() - BTreeIndexPage.INDEX_PAGE_HEADER_SIZE;
+			return ((BTreePostingListLeafPage) this.leaf).getFreeSpace() <= (int) (area * (1.0f - this.fillFactor));
+		}
+		else if (this.compressed) {
+			int capacity = ((BTreeCompressedLeafPage) this.leaf).getCapacity();
+			return entries >= Math.max(1, (int) (capacity * this.fillFactor));
+		}
+		return entries == this.leafEntries;
+	}
+
+	/**
+	 * Links the current leaf to the next one, which becomes the current leaf.
+	 *
+	 * @param key The key that is added to the next leaf.
+	 */
+	private void nextLeaf(DataField key) throws IOException, PageFormatException
+	{
+		DataField last = this.leaf.getLastKey();
+		int cmp = last.compareTo(key);
+		if (cmp > 0) {
+			throw new IndexFormatCorruptException("Key " + key + " is smaller than the previous key.");
+		}
+		else if (cmp == 0 && this.schema.isUnique()) {
+			throw new DuplicateException("Key " + key + " is already contained.");
+		}
+		this.leaf.setLastKeyContinuingOnNextPage(cmp == 0);
+		this.leaf.setNextLeafPageNumber(this.nextPageNumber);
+		this.childKeys.add(last);
+		this.childLowKeys.add(this.leaf.getFirstKey());
+		this.childPages.add(this.leaf.getPageNumber());
+		this.leaf = (BTreeLeafPage) newPage(true);
+	}
+
+	/**
+	 * Writes the last leaf, builds the inner nodes and stores the numbers of the root and the first
+	 * leaf in the header of the index.
+	 *
+	 * @throws IOException Thrown, if the pages or the header could not be written.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 */
+	public void finish() throws IOException, PageFormatException
+	{
+		if (this.finished) {
+			return;
+		}
+		this.finished = true;
+		if (this.leaf == null) {
+			// no pairs, the empty leaf of the truncated index stays the root
+			this.height = 1;
+			return;
+		}
+		int firstLeaf = this.schema.getFirstLeafNumber();
+		this.childKeys.add(this.leaf.getLastKey());
+		this.childLowKeys.add(this.leaf.getFirstKey());
+		this.childPages.add(this.leaf.getPageNumber());
+		this.numLeaves = this.childPages.size();
+		this.height = 1;
+
+		while (this.childPages.size() > 1) {
+			if (this.compressed) {
+				buildCompressedLevel();
+			}
+			else {
+				buildLevel();
+			}
+			this.height++;
+		}
+		flush();
+
+		this.index.updateFirstLeafPageNumber(firstLeaf);
+		this.index.updateRootPageNumber(this.childPages.get(0));
+	}
+
+	/**
+	 * Builds the inner nodes over the nodes of the level below, distributing the children evenly,
+	 * such that no node gets more than the pointers per node and each node gets at least two.
+	 */
+	private void buildLevel() throws IOException, PageFormatException
+	{
+		List<DataField> keys = this.childKeys;
+		List<DataField> lowKeys = this.childLowKeys;
+		List<Integer> children = this.childPages;
+		int numChildren = children.size();
+		int numNodes = (numChildren + this.innerPointers - 1) / this.innerPointers;
+
+		this.childKeys = new ArrayList<DataField>(numNodes);
+		this.childLowKeys = new ArrayList<DataField>(numNodes);
+		this.childPages = new ArrayList<Integer>(numNodes);
+		int start = 0;
+		for (int n = 0; n < numNodes; n++) {
+			int end = (int) ((long) numChildren * (n + 1) / numNodes);
+			BTreeInnerNodePage node = (BTreeInnerNodePage) newPage(false);
+			node.initRootState(keys.get(start), children.get(start), children.get(start + 1));
+			for (int i = start + 2; i < end; i++) {
+				node.insertKeyPageNumberPairAtPosition(keys.get(i - 1), children.get(i), node.getNumberOfKeys());
+			}
+			this.childKeys.add(keys.get(end - 1));
+			this.childLowKeys.add(lowKeys.get(start));
+			this.childPages.add(node.getPageNumber());
+			start = end;
+		}
+	}
+
+	/**
+	 * Builds compressed inner nodes over the nodes of the level below. The key between two children
+	 * is the shortest separator of the highest key of the left and the lowest key of the right child.
+	 * The nodes are filled one after the other, each with as many children as fit the fill factor of
+	 * its bytes, but with at least two. If a single child is left for the last node, the nodes before
+	 * it pass one child on, so that no node grows beyond what was found to fit.
+	 */
+	private void buildCompressedLevel() throws IOException, PageFormatException
+	{
+		List<DataField> keys = this.childKeys;
+		List<DataField> lowKeys = this.childLowKeys;
+		List<Integer> children = this.childPages;
+		int numChildren = children.size();
+
+		// the separators between the children i and i + 1, and their normalized forms
+		DataType keyType = this.schema.getIndexedColumnSchema().getDataType();
+		DataField[] separators = new DataField[numChildren - 1];
+		byte[][] normalized = new byte[numChildren - 1][];
+		int[] significant = new int[numChildren - 1];
+		for (int i = 0; i < separators.length; i++) {
+			separators[i] = CompressedKeyArea.getShortestSeparator(keyType, keys.get(i), lowKeys.get(i + 1));
+			normalized[i] = CompressedKeyArea.normalize(separators[i], keyType);
+			significant[i] = CompressedKeyArea.getSignificantLength(normalized[i]);
+		}
+		int pageSize = this.schema.getPageSize().getNumberOfBytes();
+		int pointerWidth = DataType.intType().getNumberOfBytes();
+		int available = (int) ((pageSize - BTreeIndexPage.INDEX_PAGE_HEADER_SIZE - pointerWidth) * this.fillFactor);
+
+		// the nodes hold the children [start, end) with the keys [start, end - 1), for consecutive ends
+		List<Integer> ends = new ArrayList<Integer>();
+		int start = 0;
+		while (start < numChildren) {
+			if (numChildren - start == 1) {
+				ends.add(numChildren);
+				break;
+			}
+			// the keys are sorted, so their common prefix is the one of the first and the last key
+			int end = start + 2;
+			int maxSignificant = significant[start];
+			while (end < numChildren) {
+				int nextSignificant = Math.max(maxSignificant, significant[end - 1]);
+				int prefix = CompressedKeyArea.getPrefixLength(CompressedKeyArea.getCommonPrefixLength(
+						normalized[start], 0, normalized[end - 1], 0, normalized[start].length), nextSignificant);
+				if (CompressedKeyArea.getRequiredBytes(prefix, nextSignificant - prefix, pointerWidth, end - start) > available) {
+					break;
+				}
+				maxSignificant = nextSignificant;
+				end++;
+			}
+			ends.add(end);
+			start = end;
+		}
+
+		int last = ends.size() - 1;
+		if (last > 0 && ends.get(last) - ends.get(last - 1) == 1) {
+			// a single child cannot form the last node. the nearest node before it with more than two
+			// children gives one up, and the nodes with two children in between each pass one on
+			int donor = last - 1;
+			while (donor >= 0 && ends.get(donor) - (donor == 0 ? 0 : ends.get(donor - 1)) == 2) {
+				donor--;
+			}
+			if (donor >= 0) {
+				for (int n = donor; n < last; n++) {
+					ends.set(n, ends.get(n) - 1);
+				}
+			}
+			else {
+				// no node fits three children, the last one has to take them
+				ends.remove(last - 1);
+			}
+		}
+
+		this.childKeys = new ArrayList<DataField>(ends.size());
+		this.childLowKeys = new ArrayList<DataField>(ends.size());
+		this.childPages = new ArrayList<Integer>(ends.size());
+		start = 0;
+		for (int end : ends) {
+			BTreeInnerNodePage node = (BTreeInnerNodePage) newPage(false);
+			node.initRootState(separators[start], children.get(start), children.get(start + 1));
+			for (int i = start + 2; i < end; i++) {
+				if (!node.insertKeyPageNumberPairAtPosition(separators[i - 1], children.get(i), node.getNumberOfKeys())) {
+					throw new IllegalStateException("The separators exceed the compressed inner node.");
+				}
+			}
+			this.childKeys.add(keys.get(end - 1));
+			this.childLowKeys.add(lowKeys.get(start));
+			this.childPages.add(node.getPageNumber());
+			start = end;
+		}
+	}
+
+	/**
+	 * Initializes the next page in the batch, writing the batch first, if it is full.
+	 */
+	private BTreeIndexPage newPage(boolean leafPage) throws IOException, PageFormatException
+	{
+		if (this.numPagesInBatch == this.buffers.length) {
+			flush();
+		}
+		byte[] buffer = this.buffers[this.numPagesInBatch];
+		Arrays.fill(buffer, (byte) 0);
+
+		BTreeIndexPage page;
+		if (this.nextPageNumber == this.schema.getFirstLeafNumber()) {
+			// the empty leaf of the truncated index is overwritten
+			page = IndexPageFactory.initIndexPage(this.schema, buffer, this.nextPageNumber, leafPage);
+		}
+		else {
+			page = (BTreeIndexPage) this.index.reserveNewPage(buffer,
+					leafPage ? BTreeIndexPageType.LEAF_PAGE : BTreeIndexPageType.INNER_NODE_PAGE);
+		}
+		this.pages[this.numPagesInBatch++] = page;
+		this.nextPageNumber++;
+		return page;
+	}
+
+	private void flush() throws IOException
+	{
+		if (this.numPagesInBatch == 0) {
+			return;
+		}
+		if (this.numPagesInBatch == this.buffers.length) {
+			this.index.writePagesToResource(this.buffers, this.pages);
+		}
+		else {
+			this.index.writePagesToResource(Arrays.copyOf(this.buffers, this.numPagesInBatch),
+					Arrays.copyOf(this.pages, this.numPagesInBatch));
+		}
+		Arrays.fill(this.pages, null);
+		this.numPagesInBatch = 0;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of pairs added so far.
+	 *
+	 * @return The number of pairs.
+	 */
+	public long getNumberOfEntries()
+	{
+		return this.numEntries;
+	}
+
+	/**
+	 * Gets the number of leaves of the built index.
+	 *
+	 * @return The number of leaves, or zero, if the index is not built yet or has no pairs.
+	 */
+	public int getNumberOfLeaves()
+	{
+		return this.numLeaves;
+	}
+
+	/**
+	 * Gets the number of levels of the built index, including the leaves.
+	 *
+	 * @return The height of the index, or zero, if it is not built yet.
+	 */
+	public int getHeight()
+	{
+		return this.height;
+	}
+
+	/**
+	 * Gets the statistics of the built index, as the catalogue keeps them for the optimizer.
+	 *
+	 * @return The statistics with the height of the index as its depth and its number of leaves.
+	 */
+	public IndexStatistics getStatistics()
+	{
+		IndexStatistics statistics = new IndexStatistics();
+		statistics.setTreeDepth(this.height);
+		statistics.setNumberOfLeafs(this.numLeaves);
+		return statistics;
+	}
+}
@@ -0,0 +1,290 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * An inner node page that stores its keys prefix compressed, see {@link CompressedKeyArea}. The
+ * page has the header of the regular inner node page with the type value 3, and the layout of the
+ * key area in the bytes 24 - 31. The header is followed by the first pointer, then by the key area,
+ * in which each record is a key slot followed by the pointer right of the key.
+ * <p>
+ * The keys of an inner node only separate the children. Built with separators that end in as many
+ * <code>0xFF</code> bytes as possible, see {@link BTreeBulkBuilder}, the keys are stored in a few
+ * bytes each, which gives the node a much higher fan-out than {@link IndexSchema#getFanOut()}.
+ * Inserts fail once the page is full. Pointers can only be moved between compressed inner node
+ * pages.
+ */
+public class BTreeCompressedInnerNodePage extends BTreeInnerNodePage
+{
+	/**
+	 * The constant indicating a compressed inner node page when found in the header.
+	 */
+	public static final int HEADER_TYPE_VALUE = 3;
+
+	/**
+	 * The offset of the field holding the number of keys.
+	 */
+	private static final int HEADER_NUM_KEYS_OFFSET = 12;
+
+	/**
+	 * The offset of the first pointer.
+	 */
+	private static final int FIRST_POINTER_OFFSET = BTreeIndexPage.INDEX_PAGE_HEADER_SIZE;
+
+	private static final int PAGE_NUMBER_WIDTH = DataType.intType().getNumberOfBytes();
+
+	/**
+	 * The keys and the pointers right of them.
+	 */
+	private final CompressedKeyArea area;
+
+	private final DataType keyType;
+
+	private int numKeys;
+
+	/**
+	 * A flag describing if the keys or pointers have been modified since the creation of the page.
+	 */
+	private boolean modified;
+
+
+	/**
+	 * Creates a compressed inner node page for the given schema, wrapping the given buffer.
+	 *
+	 * @param schema The schema of the index.
+	 * @param buffer The buffer with the binary data of the page.
+	 * @throws PageFormatException Thrown, if the header holds a negative number of keys.
+	 */
+	public BTreeCompressedInnerNodePage(IndexSchema schema, byte[] buffer) throws PageFormatException
+	{
+		super(schema, buffer);
+		this.keyType = schema.getIndexedColumnSchema().getDataType();
+		this.area = new CompressedKeyArea(buffer, this.keyType, schema.getPageSize().getNumberOfBytes(),
+				FIRST_POINTER_OFFSET + PAGE_NUMBER_WIDTH, PAGE_NUMBER_WIDTH);
+		this.numKeys = IntField.getIntFromBinary(buffer, HEADER_NUM_KEYS_OFFSET);
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean hasBeenModified()
+	{
+		return this.modified || super.hasBeenModified();
+	}
+
+	@Override
+	public int getNumberOfKeys()
+	{
+		return this.numKeys;
+	}
+
+	@Override
+	public DataField getFirstKey()
+	{
+		checkExpired();
+		return this.numKeys == 0 ? null : this.area.getKey(0);
+	}
+
+	@Override
+	public DataField getLastKey()
+	{
+		checkExpired();
+		return this.numKeys == 0 ? null : this.area.getKey(this.numKeys - 1);
+	}
+
+	@Override
+	public DataField getKey(int position)
+	{
+		checkExpired();
+		if (position < 0 || position >= this.numKeys) {
+			throw new IndexOutOfBoundsException("Key position '" + position + "' is out of range [0, " + this.numKeys + ").");
+		}
+		return this.area.getKey(position);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws IllegalStateException Thrown, if the page is too full to hold the new key in the
+	 *                               layout that it needs.
+	 */
+	@Override
+	public void setKey(DataField newKeyValue, int position)
+	{
+		checkExpired();
+		if (position < 0 || position >= this.numKeys) {
+			throw new IndexOutOfBoundsException("Key position " + position + " is out of range [0, " + this.numKeys + ").");
+		}
+		byte[] normalized = CompressedKeyArea.normalize(newKeyValue, this.keyType);
+		if (!this.area.makeRoom(normalized, normalized, CompressedKeyArea.getSignificantLength(normalized), this.numKeys, 0)) {
+			throw new IllegalStateException("The key " + newKeyValue + " does not fit the compressed node.");
+		}
+		this.area.writeKey(position, normalized);
+		this.modified = true;
+	}
+
+	// ------------------------------------------------------------------------
+	//                                 pointers
+	// ------------------------------------------------------------------------
+
+	@Override
+	public int getPointer(int position)
+	{
+		checkExpired();
+		if (position < 0 || position > this.numKeys) {
+			throw new IndexOutOfBoundsException("Pointer position '" + position +
+					"' is out of range [0, " + this.numKeys + "]");
+		}
+		return uncheckedGetPointer(position);
+	}
+
+	@Override
+	public int getChildPageForKey(DataField key)
+	{
+		checkExpired();
+		if (this.numKeys == 0) {
+			// no key contained on page, notify
+			throw new IllegalStateException("Attempting to lookup the child on an empty page.");
+		}
+		return uncheckedGetPointer(this.area.lowerBound(key, this.numKeys));
+	}
+
+	@Override
+	public KeyPageNumberPosition getChildWithKeyAndPosition(DataField key)
+	{
+		checkExpired();
+		if (this.numKeys == 0) {
+			// no key contained on page, notify
+			throw new IllegalStateException("Attempting to lookup the child on an empty page.");
+		}
+		int pos = this.area.lowerBound(key, this.numKeys);
+		return new KeyPageNumberPosition(pos == this.numKeys ? null : this.area.getKey(pos), uncheckedGetPointer(pos), pos);
+	}
+
+	// ------------------------------------------------------------------------
+	//                     initialization and inserts
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void initRootState(DataField key, int firstPointer, int secondPointer)
+	{
+		checkExpired();
+		byte[] normalized = CompressedKeyArea.normalize(key, this.keyType);
+		this.area.makeRoom(normalized, normalized, CompressedKeyArea.getSignificantLength(normalized), 0, 1);
+		IntField.encodeIntAsBinary(firstPointer, getBuffer(), FIRST_POINTER_OFFSET);
+		putKeyAndPointer(0, normalized, secondPointer);
+		setNumberOfKeys(1);
+	}
+
+	@Override
+	public DataField moveLastToNewPage(BTreeInnerNodePage newInnerNode, int num) throws PageFormatException
+	{
+		checkExpired();
+		if (num < 2) {
+			throw new IllegalArgumentException("The number of keys to move must be at least 2");
+		}
+		else if (this.numKeys == 0) {
+			throw new IllegalStateException("Method moveLastToNewPage(...) is not applicable to empty nodes.");
+		}
+		else if (num > this.numKeys) {
+			throw new IllegalArgumentException("Cannot move " + num + " keys/pointers. Not enough keys/pointers on this node.");
+		}
+		else if (!(newInnerNode instanceof BTreeCompressedInnerNodePage)) {
+			throw new IllegalArgumentException("Pointers can only be moved between compressed inner node pages.");
+		}
+		BTreeCompressedInnerNodePage target = (BTreeCompressedInnerNodePage) newInnerNode;
+
+		// the num - 1 keys and num pointers behind the key that is dropped. they are a subset of
+		// our keys, so they fit the empty page
+		int first = this.numKeys - num + 1;
+		IntField.encodeIntAsBinary(uncheckedGetPointer(first), target.getBuffer(), FIRST_POINTER_OFFSET);
+		target.numKeys = 0;
+		for (int i = first; i < this.numKeys; i++) {
+			byte[] normalized = this.area.getNormalizedKey(i);
+			target.area.makeRoom(normalized, normalized, CompressedKeyArea.getSignificantLength(normalized), target.numKeys, 1);
+			target.putKeyAndPointer(target.numKeys, normalized, uncheckedGetPointer(i + 1));
+			target.setNumberOfKeys(target.numKeys + 1);
+		}
+
+		// return the one key that is too much in this node
+		DataField dropped = this.area.getKey(first - 1);
+		setNumberOfKeys(first - 1);
+		return dropped;
+	}
+
+	@Override
+	public boolean insertKeyPageNumberPairAtPosition(DataField key, int pageNumber, int keyPosition)
+	{
+		checkExpired();
+		if (keyPosition < 0 || keyPosition > this.numKeys) {
+			throw new IndexOutOfBoundsException("Key position '" + keyPosition + "' is out of range [0, " + this.numKeys + "].");
+		}
+
+		byte[] normalized = CompressedKeyArea.normalize(key, this.keyType);
+		if (!this.area.makeRoom(normalized, normalized, CompressedKeyArea.getSignificantLength(normalized), this.numKeys, 1)) {
+			return false;
+		}
+		this.area.moveRecords(keyPosition, this.numKeys, 1);
+		putKeyAndPointer(keyPosition, normalized, pageNumber);
+		setNumberOfKeys(this.numKeys + 1);
+		return true;
+	}
+
+	@Override
+	public int getInsertPositionForKey(DataField key)
+	{
+		checkExpired();
+		if (this.numKeys == 0) {
+			throw new IllegalStateException("The method cannot be executed on an empty node");
+		}
+		return this.area.lowerBound(key, this.numKeys);
+	}
+
+	@Override
+	public void deleteKeyAndPointer(int keyPosition)
+	{
+		if (keyPosition < 0 || keyPosition >= this.numKeys) {
+			throw new IndexOutOfBoundsException("Key position '" + keyPosition + "' is out of range [0, " + this.numKeys + ").");
+		}
+		this.area.moveRecords(keyPosition + 1, this.numKeys, -1);
+		setNumberOfKeys(this.numKeys - 1);
+	}
+
+	// ------------------------------------------------------------------------
+	//                         Utility Methods
+	// ------------------------------------------------------------------------
+
+	private void checkExpired()
+	{
+		if (Constants.DEBUG_CHECK && isExpired()) {
+			throw new PageExpiredException();
+		}
+	}
+
+	private int uncheckedGetPointer(int position)
+	{
+		int offset = position == 0 ? FIRST_POINTER_OFFSET : this.area.getPayloadOffset(position - 1);
+		return IntField.getIntFromBinary(getBuffer(), offset);
+	}
+
+	private void putKeyAndPointer(int position, byte[] normalized, int pageNumber)
+	{
+		this.area.writeKey(position, normalized);
+		IntField.encodeIntAsBinary(pageNumber, getBuffer(), this.area.getPayloadOffset(position));
+	}
+
+	private void setNumberOfKeys(int numKeys)
+	{
+		this.numKeys = numKeys;
+		IntField.encodeIntAsBinary(numKeys, getBuffer(), HEADER_NUM_KEYS_OFFSET);
+		this.modified = true;
+	}
+}
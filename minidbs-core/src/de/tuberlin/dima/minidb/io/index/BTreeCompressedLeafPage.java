@@ -0,0 +1,369 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.util.List;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * A leaf page that stores its keys prefix compressed, see {@link CompressedKeyArea}. The page has
+ * the header of the regular leaf page with the type value 4, and the layout of the key area in the
+ * bytes 24 - 31. The key area starts behind the header, each record is a key slot followed by the
+ * RID.
+ * <p>
+ * The number of entries of a page depends on how well its keys compress, so that inserts and moves
+ * from other pages may fail with fewer entries than
+ * {@link IndexSchema#getMaximalLeafEntries()} on the page. Entries can only be moved between
+ * compressed leaf pages.
+ */
+public class BTreeCompressedLeafPage extends BTreeLeafPage
+{
+	/**
+	 * The constant indicating a compressed leaf page when found in the header.
+	 */
+	public static final int HEADER_TYPE_VALUE = 4;
+
+	/**
+	 * The offset of the field holding the entries counter.
+	 */
+	private static final int HEADER_NUM_ENTRIES_OFFSET = 12;
+
+	/**
+	 * The keys and RIDs.
+	 */
+	private final CompressedKeyArea area;
+
+	private final DataType keyType;
+
+	private final boolean unique;
+
+	/**
+	 * The current number of entries.
+	 */
+	private int numEntries;
+
+	/**
+	 * A flag describing if the entries of the page have been modified since its creation.
+	 */
+	private boolean modified;
+
+
+	/**
+	 * Creates a compressed leaf page for the given schema, wrapping the given buffer.
+	 *
+	 * @param schema The schema of the index.
+	 * @param buffer The buffer with the binary data of the page.
+	 */
+	public BTreeCompressedLeafPage(IndexSchema schema, byte[] buffer)
+	{
+		super(schema, buffer);
+		this.keyType = schema.getIndexedColumnSchema().getDataType();
+		this.unique = schema.isUnique();
+		this.area = new CompressedKeyArea(buffer, this.keyType, schema.getPageSize().getNumberOfBytes(),
+				BTreeIndexPage.INDEX_PAGE_HEADER_SIZE, RID.getRIDSize());
+		this.numEntries = IntField.getIntFromBinary(buffer, HEADER_NUM_ENTRIES_OFFSET);
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean hasBeenModified()
+	{
+		return this.modified || super.hasBeenModified();
+	}
+
+	@Override
+	public int getNumberOfEntries()
+	{
+		checkExpired();
+		return this.numEntries;
+	}
+
+	/**
+	 * Gets the number of entries that fit the page in the layout of the current keys. Keys that
+	 * share less of the common prefix or that are longer than the current keys lower the capacity
+	 * once they are added.
+	 *
+	 * @return The number of entries that fit the page.
+	 */
+	public int getCapacity()
+	{
+		checkExpired();
+		return this.area.getCapacity();
+	}
+
+	// ------------------------------------------------------------------------
+	//                               lookups
+	// ------------------------------------------------------------------------
+
+	@Override
+	public DataField getFirstKey()
+	{
+		checkExpired();
+		return this.numEntries == 0 ? null : this.area.getKey(0);
+	}
+
+	@Override
+	public DataField getLastKey()
+	{
+		checkExpired();
+		return this.numEntries == 0 ? null : this.area.getKey(this.numEntries - 1);
+	}
+
+	@Override
+	public DataField getKey(int position)
+	{
+		checkExpired();
+		checkPosition(position);
+		return this.area.getKey(position);
+	}
+
+	@Override
+	public int getPositionForKey(DataField key)
+	{
+		checkExpired();
+		return this.area.lowerBound(key, this.numEntries);
+	}
+
+	@Override
+	public RID getRidAtPosition(int position)
+	{
+		checkExpired();
+		checkPosition(position);
+		return RID.getRidFromBinary(getBuffer(), this.area.getPayloadOffset(position));
+	}
+
+	@Override
+	public RID getRIDForKey(DataField key) throws PageFormatException
+	{
+		checkExpired();
+		int pos = this.area.lowerBound(key, this.numEntries);
+		if (pos < this.numEntries && this.area.compare(pos, key) == 0) {
+			return RID.getRidFromBinary(getBuffer(), this.area.getPayloadOffset(pos));
+		}
+		return null;
+	}
+
+	@Override
+	public boolean getAllsRIDsForKey(DataField key, List<RID> target) throws PageFormatException
+	{
+		checkExpired();
+		int pos = this.area.lowerBound(key, this.numEntries);
+		if (pos < this.numEntries && this.area.compare(pos, key) == 0) {
+			// starting at the first occurrence, move forward until the key changes
+			do {
+				target.add(RID.getRidFromBinary(getBuffer(), this.area.getPayloadOffset(pos)));
+				pos++;
+			}
+			while (pos < this.numEntries && this.area.compare(pos, key) == 0);
+
+			// check if this was the last (highest) key on the page.
+			return pos == this.numEntries;
+		}
+		return false;
+	}
+
+	@Override
+	public void getAllKeys(List<DataField> target, int startPosition)
+	{
+		checkExpired();
+		if (startPosition < 0 || startPosition >= this.numEntries) {
+			throw new IllegalArgumentException("The start position is out of bounds.");
+		}
+		for (int position = startPosition; position < this.numEntries; position++) {
+			target.add(this.area.getKey(position));
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                            modifications
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean insertKeyRIDPair(DataField key, RID rid) throws PageFormatException
+	{
+		checkExpired();
+		int pos = this.area.lowerBound(key, this.numEntries);
+		if (this.unique && pos < this.numEntries && this.area.compare(pos, key) == 0) {
+			throw new DuplicateException("Key " + key + " is already contained.");
+		}
+
+		byte[] normalized = CompressedKeyArea.normalize(key, this.keyType);
+		if (!this.area.makeRoom(normalized, normalized, CompressedKeyArea.getSignificantLength(normalized),
+				this.numEntries, 1))
+		{
+			return false;
+		}
+		this.area.moveRecords(pos, this.numEntries, 1);
+		putEntry(pos, normalized, rid);
+		setNumberOfEntries(this.numEntries + 1);
+		return true;
+	}
+
+	@Override
+	public boolean appendKeyRIDPair(DataField key, RID rid)
+	{
+		checkExpired();
+		if (this.numEntries > 0) {
+			int cmp = this.area.compare(this.numEntries - 1, key);
+			if (cmp > 0) {
+				throw new IndexFormatCorruptException("Key " + key + " is smaller than the last key on the page.");
+			}
+			else if (cmp == 0 && this.unique) {
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+		}
+
+		byte[] normalized = CompressedKeyArea.normalize(key, this.keyType);
+		if (!this.area.makeRoom(normalized, normalized, CompressedKeyArea.getSignificantLength(normalized),
+				this.numEntries, 1))
+		{
+			return false;
+		}
+		putEntry(this.numEntries, normalized, rid);
+		setNumberOfEntries(this.numEntries + 1);
+		return true;
+	}
+
+	@Override
+	public boolean deleteKeyRIDPair(DataField key, RID rid) throws PageFormatException
+	{
+		checkExpired();
+		// go from the first occurrence of the key to the right until the pair is found or the
+		// key changes
+		for (int pos = this.area.lowerBound(key, this.numEntries);
+				pos < this.numEntries && this.area.compare(pos, key) == 0; pos++)
+		{
+			if (getRidAtPosition(pos).equals(rid)) {
+				removeEntries(pos, 1);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean appendEntriesFromOtherPage(BTreeLeafPage other, int num)
+	throws PageFormatException, IndexFormatCorruptException
+	{
+		checkExpired();
+		BTreeCompressedLeafPage source = compressedSource(other);
+		if (num <= 0) {
+			return true;
+		}
+		else if (source.numEntries < num) {
+			throw new IllegalArgumentException("Source does not contain enough entries.");
+		}
+		if (this.numEntries > 0 && this.area.compare(this.numEntries - 1, source.area.getKey(0)) > 0) {
+			// our last key is larger than their first, that should not be
+			throw new IndexFormatCorruptException("Keys to append are smaller the last keys");
+		}
+		if (!makeRoomFor(source, 0, num)) {
+			return false;
+		}
+
+		for (int i = 0; i < num; i++) {
+			putEntry(this.numEntries + i, source.area.getNormalizedKey(i), source.getRidAtPosition(i));
+		}
+		setNumberOfEntries(this.numEntries + num);
+		source.removeEntries(0, num);
+		return true;
+	}
+
+	@Override
+	public boolean prependEntriesFromOtherPage(BTreeLeafPage other, int num)
+	throws PageFormatException, IndexFormatCorruptException
+	{
+		checkExpired();
+		BTreeCompressedLeafPage source = compressedSource(other);
+		if (num <= 0) {
+			return true;
+		}
+		else if (source.numEntries < num) {
+			throw new IllegalArgumentException("Source does not contain enough entries.");
+		}
+		int start = source.numEntries - num;
+		if (this.numEntries > 0 && this.area.compare(0, source.area.getKey(source.numEntries - 1)) < 0) {
+			// their last key is larger than our first, that should not be
+			throw new IndexFormatCorruptException("Keys to prepend are larger this node's first keys");
+		}
+		if (!makeRoomFor(source, start, num)) {
+			return false;
+		}
+
+		this.area.moveRecords(0, this.numEntries, num);
+		for (int i = 0; i < num; i++) {
+			putEntry(i, source.area.getNormalizedKey(start + i), source.getRidAtPosition(start + i));
+		}
+		setNumberOfEntries(this.numEntries + num);
+		source.removeEntries(start, num);
+		return true;
+	}
+
+	// ------------------------------------------------------------------------
+	//                         Utility Methods
+	// ------------------------------------------------------------------------
+
+	private void checkExpired()
+	{
+		if (Constants.DEBUG_CHECK && isExpired()) {
+			throw new PageExpiredException();
+		}
+	}
+
+	private void checkPosition(int position)
+	{
+		if (position < 0 || position >= this.numEntries) {
+			throw new IndexOutOfBoundsException("position is not within valid range.");
+		}
+	}
+
+	private static BTreeCompressedLeafPage compressedSource(BTreeLeafPage other)
+	{
+		if (!(other instanceof BTreeCompressedLeafPage)) {
+			throw new IllegalArgumentException("Entries can only be moved between compressed leaf pages.");
+		}
+		return (BTreeCompressedLeafPage) other;
+	}
+
+	/**
+	 * Makes the layout hold the given range of entries of the other page in addition to ours.
+	 */
+	private boolean makeRoomFor(BTreeCompressedLeafPage source, int start, int num)
+	{
+		int significant = 0;
+		for (int i = start; i < start + num; i++) {
+			significant = Math.max(significant, CompressedKeyArea.getSignificantLength(source.area.getNormalizedKey(i)));
+		}
+		return this.area.makeRoom(source.area.getNormalizedKey(start), source.area.getNormalizedKey(start + num - 1),
+				significant, this.numEntries, num);
+	}
+
+	private void putEntry(int position, byte[] normalized, RID rid)
+	{
+		this.area.writeKey(position, normalized);
+		rid.encodeBinary(getBuffer(), this.area.getPayloadOffset(position));
+	}
+
+	private void removeEntries(int position, int num)
+	{
+		this.area.moveRecords(position + num, this.numEntries, -num);
+		setNumberOfEntries(this.numEntries - num);
+	}
+
+	private void setNumberOfEntries(int numEntries)
+	{
+		this.numEntries = numEntries;
+		IntField.encodeIntAsBinary(numEntries, getBuffer(), HEADER_NUM_ENTRIES_OFFSET);
+		this.modified = true;
+	}
+}
@@ -2,6 +2,8 @@ package de.tuberlin.dima.minidb.io.index;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.core.DataField;
@@ -57,15 +59,50 @@ public interface BTreeIndex
 	throws PageFormatException, IndexFormatCorruptException, IOException;
 	
 	
+	/**
+	 * Gets all RIDs for each of the given keys. The result holds at position <tt>i</tt> the list
+	 * of the RIDs for <tt>keys[i]</tt>, which is empty if the key is not found. The keys may come
+	 * in any order and may repeat.
+	 * <p>
+	 * Unlike a sequence of calls to {@link #lookupRids(DataField)}, which descends from the root
+	 * once per key, an implementation should visit the keys in sorted order, descend once and then
+	 * sweep the leaf chain, so that every leaf holding some of the keys is requested only once.
+	 * The default implementation looks up one key after the other.
+	 * 
+	 * @param keys The keys to get the RIDs for.
+	 * @return For each key the list of its RIDs, in the order of the keys.
+	 * @throws PageFormatException Thrown if during processing a page's layout was found to be
+	 *                             found to be corrupted.
+	 * @throws IndexFormatCorruptException Throws, if the evaluation failed because condition
+	 *                                     of the BTree were found to be invalid.
+	 * @throws IOException Thrown, if a page could not be loaded.
+	 */
+	public default List<List<RID>> lookupRids(DataField[] keys)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		List<List<RID>> result = new ArrayList<List<RID>>(keys.length);
+		for (DataField key : keys) {
+			List<RID> rids = new ArrayList<RID>();
+			IndexResultIterator<RID> iterator = lookupRids(key);
+			while (iterator.hasNext()) {
+				rids.add(iterator.next());
+			}
+			result.add(rids);
+		}
+		return result;
+	}
+	
+	
 	/**
 	 * Gets all RIDs in a given key-range. The rage is defined by the start key <code>l</code> (lower bound) 
 	 * and the stop key <code>u</code> (upper bound), where both <code>l</code> and <code>u</code> can be
-	 * optionally included or excluded from the interval, e.g. [l, u) or [l, u].
+	 * optionally included or excluded from the interval, e.g. [l, u) or [l, u]. If the start key is
+	 * <code>null</code>, the interval starts at the first key of the index.
 	 * <p>
 	 * This method should obey the same on-demand-loading semantics as the {@link #lookupRids(DataField)} method. I.e. it
 	 * should NOT first retrieve all RIDs and then return an iterator over an internally kept list.
 	 * 
-	 * @param startKey The lower boundary of the requested interval.
+	 * @param startKey The lower boundary of the requested interval, or <code>null</code>.
 	 * @param stopKey The upper boundary of the requested interval.
 	 * @param startKeyIncluded A flag indicating whether the lower boundary is inclusive. True indicates an inclusive boundary. 
 	 * @param stopKeyIncluded A flag indicating whether the upper boundary is inclusive. True indicates an inclusive boundary.
@@ -83,12 +120,13 @@ public interface BTreeIndex
 	/**
 	 * Gets all Keys that are contained in the given key-range. The rage is defined by the start key <code>l</code> (lower bound) 
 	 * and the stop key <code>u</code> (upper bound), where both <code>l</code> and <code>u</code> can be
-	 * optionally included or excluded from the interval, e.g. [l, u) or [l, u].
+	 * optionally included or excluded from the interval, e.g. [l, u) or [l, u]. If the start key is
+	 * <code>null</code>, the interval starts at the first key of the index.
 	 * <p>
 	 * This method should obey the same on-demand-loading semantics as the {@link #lookupRids(DataField)} method. I.e. it
 	 * should NOT first retrieve all RIDs and then return an iterator over an internally kept list.
 	 * 
-	 * @param startKey The lower boundary of the requested interval.
+	 * @param startKey The lower boundary of the requested interval, or <code>null</code>.
 	 * @param stopKey The upper boundary of the requested interval.
 	 * @param startKeyIncluded A flag indicating whether the lower boundary is inclusive. True indicates an inclusive boundary. 
 	 * @param stopKeyIncluded A flag indicating whether the upper boundary is inclusive. True indicates an inclusive boundary.
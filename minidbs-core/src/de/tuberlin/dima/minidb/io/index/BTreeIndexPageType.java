@@ -14,5 +14,23 @@ public enum BTreeIndexPageType
 	/**
 	 * Enumeration element indicating a page for a leaf node in the tree.
 	 */
-	LEAF_PAGE;
+	LEAF_PAGE,
+	
+	/**
+	 * Enumeration element indicating a page for an inner node in a tree whose pages store the
+	 * keys prefix compressed.
+	 */
+	COMPRESSED_INNER_NODE_PAGE,
+	
+	/**
+	 * Enumeration element indicating a page for a leaf node in a tree whose pages store the
+	 * keys prefix compressed.
+	 */
+	COMPRESSED_LEAF_PAGE,
+	
+	/**
+	 * Enumeration element indicating a page for a leaf node in a tree whose leaves store each
+	 * key once with the list of its RIDs.
+	 */
+	POSTING_LIST_LEAF_PAGE;
 }
\ No newline at end of file
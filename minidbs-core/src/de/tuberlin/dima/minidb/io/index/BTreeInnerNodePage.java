@@ -710,9 +710,7 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		while (low <= high) {
 			// get middle element and compare to the search key
 		    int mid = (low + high) >>> 1;
-	        int midOffset = (mid * this.keyWidth) + HEADER_SIZE;
-		    DataField midVal = this.keyType.getFromBinary(this.buffer, midOffset, this.keyWidth);
-		    int cmp = midVal.compareTo(key);
+		    int cmp = BTreeKeyComparator.compare(this.buffer, (mid * this.keyWidth) + HEADER_SIZE, this.keyType, this.keyWidth, key);
 
 		    // adjust next interval or return found
 		    if (cmp < 0) {
@@ -740,26 +738,27 @@ public class BTreeInnerNodePage implements BTreeIndexPage
 		if (this.numKeys < 1) {
 			return -1;
 		}
-		else {
+		else if (this.unique) {
 			// do binary search for the key 
 			int pos = binSearchForKey(key);
-			if (pos < 0) {
-				// key not found. the next larger key is relevant.
-				// that next larger key is at the insertion position.
-				return -(pos + 1);
-			}
-			else if (this.unique) {
-				return pos;
-			}
-			else {
-				// key found in a non-unique index.
-				// track back to the first occurrence.
-				DataField keyAtPos = getKey(pos);
-				while (pos > 0 && getKey(pos - 1).equals(keyAtPos)) {
-					pos--;
+			// if the key is not found, the next larger key at the insertion position is relevant
+			return pos < 0 ? -(pos + 1) : pos;
+		}
+		else {
+			// the first occurrence of the key, or the next larger key, is relevant.
+			// search it directly instead of tracking back over the duplicates.
+			int low = 0;
+			int high = this.numKeys;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (BTreeKeyComparator.compare(this.buffer, (mid * this.keyWidth) + HEADER_SIZE, this.keyType, this.keyWidth, key) < 0) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
 				}
-				return pos;
-			}			
+			}
+			return low;
 		}
 	}
 	
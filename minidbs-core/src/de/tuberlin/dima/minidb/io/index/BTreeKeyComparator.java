@@ -0,0 +1,117 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+
+
+/**
+ * Compares a search key with a key that is stored in binary form on an index page, without creating
+ * a field for the stored key. For the types <code>SMALL_INT</code>, <code>INT</code>,
+ * <code>BIG_INT</code>, <code>FLOAT</code>, <code>DOUBLE</code>, <code>DATE</code> and
+ * <code>CHAR</code>, the stored key is read in its primitive form and compared with the primitive
+ * value of the search key. The result has the same sign as the <code>compareTo</code> of the
+ * decoded field, including the order of NULL before all other values.
+ * <p>
+ * Keys of the other types are compared by decoding the stored key.
+ */
+public final class BTreeKeyComparator
+{
+	private BTreeKeyComparator()
+	{
+	}
+
+	/**
+	 * Compares the stored key at the given offset with the search key.
+	 *
+	 * @param buffer The buffer holding the stored key.
+	 * @param offset The offset of the stored key in the buffer.
+	 * @param keyType The type of the stored key.
+	 * @param keyWidth The number of bytes of the stored key.
+	 * @param key The search key, of the same type as the stored key.
+	 * @return A negative number, zero or a positive number, if the stored key is smaller than, equal
+	 *         to or greater than the search key.
+	 */
+	public static int compare(byte[] buffer, int offset, DataType keyType, int keyWidth, DataField key)
+	{
+		switch (keyType.getBasicType()) {
+			case SMALL_INT: {
+				short value = (short) ((buffer[offset] & 0xff) | (buffer[offset + 1] << 8));
+				return compareLongs(value, ((SmallIntField) key).getValue());
+			}
+			case INT:
+				return compareLongs(IntField.getIntFromBinary(buffer, offset), ((IntField) key).getValue());
+			case BIG_INT:
+				return compareLongs(getLongFromBinary(buffer, offset), ((BigIntField) key).getValue());
+			case DATE: {
+				int value = IntField.getIntFromBinary(buffer, offset);
+				DateField date = (DateField) key;
+				if (value == 0xffffffff || date.isNULL()) {
+					return (value == 0xffffffff ? 0 : 1) - (date.isNULL() ? 0 : 1);
+				}
+				return compareLongs(value, (date.getYear() << 16) | (date.getMonth() << 8) | date.getDay());
+			}
+			case FLOAT: {
+				float value = Float.intBitsToFloat(IntField.getIntFromBinary(buffer, offset));
+				float other = ((FloatField) key).getValue();
+				if (Float.isNaN(value) || Float.isNaN(other)) {
+					return (Float.isNaN(value) ? 0 : 1) - (Float.isNaN(other) ? 0 : 1);
+				}
+				return value < other ? -1 : (value == other ? 0 : 1);
+			}
+			case DOUBLE: {
+				double value = Double.longBitsToDouble(getLongFromBinary(buffer, offset));
+				double other = ((DoubleField) key).getValue();
+				if (Double.isNaN(value) || Double.isNaN(other)) {
+					return (Double.isNaN(value) ? 0 : 1) - (Double.isNaN(other) ? 0 : 1);
+				}
+				return value < other ? -1 : (value == other ? 0 : 1);
+			}
+			case CHAR:
+				return compareChars(buffer, offset, keyWidth, key);
+			default:
+				return keyType.getFromBinary(buffer, offset, keyWidth).compareTo(key);
+		}
+	}
+
+	/**
+	 * Compares a stored key of type <code>CHAR</code> with the search key character by character,
+	 * as {@link String#compareTo(String)} does.
+	 */
+	private static int compareChars(byte[] buffer, int offset, int keyWidth, DataField key)
+	{
+		boolean storedNull = buffer[offset] == 0 && buffer[offset + 1] == 0;
+		if (storedNull || key.isNULL()) {
+			return (storedNull ? 0 : 1) - (key.isNULL() ? 0 : 1);
+		}
+		// the string of a char field is its value, no copy is made
+		String chars = key.encodeAsString();
+		int numChars = keyWidth >> 1;
+		int common = Math.min(numChars, chars.length());
+		for (int i = 0; i < common; i++, offset += 2) {
+			char c = (char) ((buffer[offset] & 0xff) | ((buffer[offset + 1] << 8) & 0xff00));
+			char other = chars.charAt(i);
+			if (c != other) {
+				return c - other;
+			}
+		}
+		return numChars - chars.length();
+	}
+
+	private static int compareLongs(long value, long other)
+	{
+		return value < other ? -1 : (value == other ? 0 : 1);
+	}
+
+	private static long getLongFromBinary(byte[] buffer, int offset)
+	{
+		return (IntField.getIntFromBinary(buffer, offset) & 0xffffffffL) |
+				((long) IntField.getIntFromBinary(buffer, offset + 4) << 32);
+	}
+}
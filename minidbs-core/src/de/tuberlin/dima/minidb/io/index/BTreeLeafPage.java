@@ -374,20 +374,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 			throw new PageExpiredException();
 		}
 		
-		int pos = binSearchForKey(key);
-
-		// if the key is contained, move to the leftmost occurrence of the key
-		if (pos >= 0) {
-			int keyOffset = (pos - 1) * this.keyWidth + HEADER_SIZE;
-			while (pos > 0 && this.keyType.getFromBinary(this.buffer, keyOffset, this.keyWidth).equals(key)) {
-				pos--;
-				keyOffset -= this.keyWidth;
-			}
-
-			return pos;
-		} else {
-			return -(pos + 1);
-		}
+		return lowerBoundForKey(key);
 	}
 
 	/**
@@ -457,44 +444,18 @@ public class BTreeLeafPage implements BTreeIndexPage
 			throw new PageExpiredException();
 		}
 		
-		int pos = binSearchForKey(key);
-		if (pos >= 0) {
+		int pos = lowerBoundForKey(key);
+		if (pos < this.numEntries && compareKeyAt(pos, key) == 0) {
 			final int ridSize = RID.getRIDSize();
-			int keyOffset = pos * this.keyWidth + HEADER_SIZE;
 			int ridOffset = pos * ridSize + this.RIDSequenceOffset;
 
-			// move backwards to where the key changes
-			// we can add the RIDs in any order because the RID order for the same key is undefined.
-			for (int k = keyOffset, r = ridOffset; k >= HEADER_SIZE; k -= this.keyWidth, r -= ridSize) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, k, this.keyWidth);
-				if (currKey.equals(key)) {
-					// add the RID
-					target.add(RID.getRidFromBinary(this.buffer, r));
-				} else {
-					break;
-				}
-			}
-
-			// move forward until the key changes. the start position was already
-			// covered by the previous loop
-			pos++;
-			keyOffset += this.keyWidth;
-			ridOffset += ridSize;
-
-			while (pos < this.numEntries) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, keyOffset, this.keyWidth);
-				if (currKey.equals(key)) {
-					target.add(RID.getRidFromBinary(this.buffer, ridOffset));
-				} else {
-					pos--;
-					break;
-				}
-
-				// increment
+			// starting at the first occurrence, move forward until the key changes
+			do {
+				target.add(RID.getRidFromBinary(this.buffer, ridOffset));
 				pos++;
-				keyOffset += this.keyWidth;
 				ridOffset += ridSize;
 			}
+			while (pos < this.numEntries && compareKeyAt(pos, key) == 0);
 
 			// check if this was the last (highest) key on the page.
 			return (pos == this.numEntries);
@@ -583,6 +544,47 @@ public class BTreeLeafPage implements BTreeIndexPage
 		}
 	}
 
+	/**
+	 * Appends a pair (key / RID) behind the last pair on this page. This is the cheap way to fill a
+	 * page with pairs that are already sorted, as a bulk load does, because no position has to be
+	 * searched and no pairs have to be shifted.
+	 * 
+	 * @param key The key of the pair. It must not be smaller than the last key on the page.
+	 * @param rid The RID of the pair.
+	 * @return True, if the pair could be appended, false if there was no space left.
+	 * 
+	 * @throws IndexFormatCorruptException Thrown, if the key is smaller than the last key on the page,
+	 *                                     meaning that the sorted order would be violated.
+	 * @throws DuplicateException Thrown, if the key equals the last key, but the index is unique.
+	 */
+	public boolean appendKeyRIDPair(DataField key, RID rid)
+	{
+		if (Constants.DEBUG_CHECK && this.expired) {
+			throw new PageExpiredException();
+		}
+		
+		if (this.numEntries == this.maxEntries) {
+			return false;
+		}
+		if (this.numEntries > 0) {
+			int cmp = getLastKey().compareTo(key);
+			if (cmp > 0) {
+				throw new IndexFormatCorruptException("Key " + key + " is smaller than the last key on the page.");
+			}
+			else if (cmp == 0 && this.unique) {
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+		}
+
+		key.encodeBinary(this.buffer, this.numEntries * this.keyWidth + HEADER_SIZE);
+		rid.encodeBinary(this.buffer, this.numEntries * RID.getRIDSize() + this.RIDSequenceOffset);
+
+		this.modified = true;
+		this.numEntries++;
+		IntField.encodeIntAsBinary(this.numEntries, this.buffer, HEADER_NUM_ENTRIES_OFFSET);
+		return true;
+	}
+
 	/**
 	 * Deletes a pair of (key / RID) from this leaf page. If the pair is not contained,
 	 * the method returns false, if it has been deleted, it returns true. 
@@ -608,7 +610,6 @@ public class BTreeLeafPage implements BTreeIndexPage
 		else {
 			// key contained, find the rid
 			final int ridSize = RID.getRIDSize();
-			int keyOffset = pos * this.keyWidth + HEADER_SIZE;
 			int ridOffset = pos * ridSize + this.RIDSequenceOffset;
 			RID rdd = RID.getRidFromBinary(this.buffer, ridOffset);
 
@@ -620,42 +621,14 @@ public class BTreeLeafPage implements BTreeIndexPage
 			else if (this.unique) {
 				return false;
 			}
-			// not unique, go left and right until the key/RID pair is found
-
-			// move backwards to where the key changes
-			for (int p = pos - 1, k = keyOffset - this.keyWidth, r = ridOffset - ridSize; p >= 0; p--, k -= this.keyWidth, r -= ridSize) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, k, this.keyWidth);
-				if (currKey.equals(key)) {
-					// same key, check rid
-					RID thisRid = RID.getRidFromBinary(this.buffer, r);
-					if (thisRid.equals(rid)) {
-						// found
-						deletePosition(p);
-						return true;
-					}
-					// go on left
-				}
-				else {
-					// no longer the same key
-					break;
-				}
-			}
-			// move backwards to where the key changes
-			for (; pos < this.numEntries; pos++, keyOffset += this.keyWidth, ridOffset += ridSize) {
-				DataField currKey = this.keyType.getFromBinary(this.buffer, keyOffset, this.keyWidth);
-				if (currKey.equals(key)) {
-					// same key, check rid
-					RID thisRid = RID.getRidFromBinary(this.buffer, ridOffset);
-					if (thisRid.equals(rid)) {
-						// found
-						deletePosition(pos);
-						return true;
-					}
-					// go on right
-				}
-				else {
-					// no longer the same key
-					break;
+			// not unique, go from the first occurrence of the key to the right until the
+			// key/RID pair is found or the key changes
+			for (pos = lowerBoundForKey(key), ridOffset = pos * ridSize + this.RIDSequenceOffset;
+					pos < this.numEntries && compareKeyAt(pos, key) == 0; pos++, ridOffset += ridSize)
+			{
+				if (RID.getRidFromBinary(this.buffer, ridOffset).equals(rid)) {
+					deletePosition(pos);
+					return true;
 				}
 			}
 
@@ -840,9 +813,7 @@ public class BTreeLeafPage implements BTreeIndexPage
 		while (low <= high) {
 			// get middle element and compare to the search key
 			int mid = (low + high) >>> 1;
-			int midOffset = (mid * this.keyWidth) + HEADER_SIZE;
-			DataField midVal = this.keyType.getFromBinary(this.buffer, midOffset, this.keyWidth);
-			int cmp = midVal.compareTo(key);
+			int cmp = compareKeyAt(mid, key);
 
 			// adjust next interval or return found
 			if (cmp < 0) {
@@ -858,6 +829,44 @@ public class BTreeLeafPage implements BTreeIndexPage
 		return -(low + 1);  // key not found.
 	}
 	
+	/**
+	 * Finds the position of the first occurrence of a key, or the position of the next larger key,
+	 * if the key is not contained. Unlike walking left from the position found by
+	 * <code>binSearchForKey()</code>, this takes logarithmic time also for long runs of duplicates.
+	 * 
+	 * @param key The key to search for.
+	 * @return The lowest position whose key is not smaller than the given key, between
+	 *         <code>0</code> and <code>numEntries</code>.
+	 */
+	private int lowerBoundForKey(DataField key)
+	{
+		int low = 0;
+		int high = this.numEntries;
+		
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareKeyAt(mid, key) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Compares the key at the given position with the given key in place, without decoding it.
+	 * 
+	 * @param position The position of the key on the page.
+	 * @param key The key to compare with.
+	 * @return The sign of the stored key's <code>compareTo</code> the given key.
+	 */
+	private int compareKeyAt(int position, DataField key)
+	{
+		return BTreeKeyComparator.compare(this.buffer, position * this.keyWidth + HEADER_SIZE, this.keyType, this.keyWidth, key);
+	}
+	
 	/**
 	 * Deletes the entry (key/rid) at the given position.
 	 * 
@@ -0,0 +1,704 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+
+
+/**
+ * A leaf page that stores each distinct key once, together with the sorted list of the RIDs of the
+ * key (the posting list). The page has the header of the regular leaf page with the type value 5,
+ * and in addition:
+ * <ul>
+ *   <li>Bytes 24 - 27 are an INT (little endian) holding the number of distinct keys.</li>
+ * </ul>
+ * The header is followed by the directory of the distinct keys in ascending order. An entry of the
+ * directory is the key, followed by an INT holding the offset of its posting list in the page and
+ * an INT holding the position of the key's first pair among the pairs of the page. The posting
+ * lists fill the page from its end towards the directory, in the order of the keys. A posting list
+ * holds the RIDs in ascending order, the first one as a variable length number, each following one
+ * as the variable length difference to its predecessor. A variable length number holds seven bits
+ * per byte, the least significant first, and sets the highest bit of each byte but the last.
+ * <p>
+ * The page offers the methods of the regular leaf page, which address the (key / RID) pairs by
+ * their positions. The RIDs of a key are in ascending order. Pairs can only be moved between posting
+ * list leaf pages.
+ */
+public class BTreePostingListLeafPage extends BTreeLeafPage
+{
+	/**
+	 * The constant indicating a posting list leaf page when found in the header.
+	 */
+	public static final int HEADER_TYPE_VALUE = 5;
+
+	/**
+	 * Size of the header in this page.
+	 */
+	private static final int HEADER_SIZE = BTreeIndexPage.INDEX_PAGE_HEADER_SIZE;
+
+	/**
+	 * The offset of the field holding the entries counter.
+	 */
+	private static final int HEADER_NUM_ENTRIES_OFFSET = 12;
+
+	/**
+	 * The offset of the field holding the number of distinct keys.
+	 */
+	private static final int HEADER_NUM_KEYS_OFFSET = 24;
+
+	private final DataType keyType;
+
+	private final int keyWidth;
+
+	/**
+	 * The width of an entry of the key directory.
+	 */
+	private final int entryWidth;
+
+	private final int pageSize;
+
+	private final boolean unique;
+
+	/**
+	 * The current number of (key / RID) pairs.
+	 */
+	private int numEntries;
+
+	/**
+	 * The current number of distinct keys.
+	 */
+	private int numKeys;
+
+	/**
+	 * A flag describing if the entries of the page have been modified since its creation.
+	 */
+	private boolean modified;
+
+
+	/**
+	 * Creates a posting list leaf page for the given schema, wrapping the given buffer.
+	 *
+	 * @param schema The schema of the index.
+	 * @param buffer The buffer with the binary data of the page.
+	 */
+	public BTreePostingListLeafPage(IndexSchema schema, byte[] buffer)
+	{
+		super(schema, buffer);
+		this.keyType = schema.getIndexedColumnSchema().getDataType();
+		this.keyWidth = this.keyType.getNumberOfBytes();
+		this.entryWidth = this.keyWidth + 8;
+		this.pageSize = schema.getPageSize().getNumberOfBytes();
+		this.unique = schema.isUnique();
+		this.numEntries = IntField.getIntFromBinary(buffer, HEADER_NUM_ENTRIES_OFFSET);
+		this.numKeys = IntField.getIntFromBinary(buffer, HEADER_NUM_KEYS_OFFSET);
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean hasBeenModified()
+	{
+		return this.modified || super.hasBeenModified();
+	}
+
+	@Override
+	public int getNumberOfEntries()
+	{
+		checkExpired();
+		return this.numEntries;
+	}
+
+	/**
+	 * Gets the number of distinct keys on the page.
+	 *
+	 * @return The number of distinct keys.
+	 */
+	public int getNumberOfKeys()
+	{
+		checkExpired();
+		return this.numKeys;
+	}
+
+	/**
+	 * Gets the number of bytes between the key directory and the posting lists.
+	 *
+	 * @return The number of free bytes.
+	 */
+	public int getFreeSpace()
+	{
+		checkExpired();
+		return getPostingsStart() - (HEADER_SIZE + this.numKeys * this.entryWidth);
+	}
+
+	// ------------------------------------------------------------------------
+	//                               lookups
+	// ------------------------------------------------------------------------
+
+	@Override
+	public DataField getFirstKey()
+	{
+		checkExpired();
+		return this.numKeys == 0 ? null : getKeyOfGroup(0);
+	}
+
+	@Override
+	public DataField getLastKey()
+	{
+		checkExpired();
+		return this.numKeys == 0 ? null : getKeyOfGroup(this.numKeys - 1);
+	}
+
+	@Override
+	public DataField getKey(int position)
+	{
+		checkExpired();
+		checkPosition(position);
+		return getKeyOfGroup(getGroupOfPosition(position));
+	}
+
+	@Override
+	public int getPositionForKey(DataField key)
+	{
+		checkExpired();
+		int group = lowerBoundForKey(key);
+		return group < this.numKeys ? getFirstPosition(group) : this.numEntries;
+	}
+
+	@Override
+	public RID getRidAtPosition(int position)
+	{
+		checkExpired();
+		checkPosition(position);
+		int group = getGroupOfPosition(position);
+		PostingListIterator rids = new PostingListIterator(group);
+		for (int i = getFirstPosition(group); i < position; i++) {
+			rids.nextId();
+		}
+		return new RID(rids.nextId());
+	}
+
+	@Override
+	public RID getRIDForKey(DataField key) throws PageFormatException
+	{
+		checkExpired();
+		int group = findGroup(key);
+		return group < 0 ? null : new RID(new PostingListIterator(group).nextId());
+	}
+
+	@Override
+	public boolean getAllsRIDsForKey(DataField key, List<RID> target) throws PageFormatException
+	{
+		checkExpired();
+		int group = findGroup(key);
+		if (group < 0) {
+			return false;
+		}
+		for (PostingListIterator rids = new PostingListIterator(group); rids.hasNext(); ) {
+			target.add(rids.next());
+		}
+		// check if this was the last (highest) key on the page.
+		return group == this.numKeys - 1;
+	}
+
+	/**
+	 * Gets the RIDs of a key on this page, in ascending order. The RIDs are decoded from the posting
+	 * list of the key one after the other, as they are requested. The page must not be modified
+	 * while the RIDs are read.
+	 *
+	 * @param key The key to retrieve the RIDs for.
+	 * @return An iterator over the RIDs of the key, which is empty, if the key is not on the page.
+	 */
+	public IndexResultIterator<RID> getRIDIteratorForKey(DataField key)
+	{
+		checkExpired();
+		int group = findGroup(key);
+		return new PostingListIterator(group < 0 ? this.numKeys : group);
+	}
+
+	@Override
+	public void getAllKeys(List<DataField> target, int startPosition)
+	{
+		checkExpired();
+		if (startPosition < 0 || startPosition >= this.numEntries) {
+			throw new IllegalArgumentException("The start position is out of bounds.");
+		}
+		int position = startPosition;
+		for (int group = getGroupOfPosition(startPosition); group < this.numKeys; group++) {
+			DataField key = getKeyOfGroup(group);
+			for (int end = getEndPosition(group); position < end; position++) {
+				target.add(key);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                            modifications
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean insertKeyRIDPair(DataField key, RID rid) throws PageFormatException
+	{
+		checkExpired();
+		int group = lowerBoundForKey(key);
+		if (group < this.numKeys && compareKeyOfGroup(group, key) == 0) {
+			if (this.unique) {
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+			return addToGroup(group, rid);
+		}
+		return insertGroup(group, key, rid);
+	}
+
+	@Override
+	public boolean appendKeyRIDPair(DataField key, RID rid)
+	{
+		checkExpired();
+		if (this.numKeys == 0) {
+			return insertGroup(0, key, rid);
+		}
+		int cmp = compareKeyOfGroup(this.numKeys - 1, key);
+		if (cmp > 0) {
+			throw new IndexFormatCorruptException("Key " + key + " is smaller than the last key on the page.");
+		}
+		else if (cmp == 0) {
+			if (this.unique) {
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+			return addToGroup(this.numKeys - 1, rid);
+		}
+		return insertGroup(this.numKeys, key, rid);
+	}
+
+	@Override
+	public boolean deleteKeyRIDPair(DataField key, RID rid) throws PageFormatException
+	{
+		checkExpired();
+		int group = findGroup(key);
+		if (group < 0) {
+			return false;
+		}
+		long[] ids = decodeGroup(group);
+		int index = Arrays.binarySearch(ids, rid.getID());
+		if (index < 0) {
+			return false;
+		}
+		if (ids.length == 1) {
+			removeGroup(group);
+			shiftPositions(group, -1);
+		}
+		else {
+			long[] remaining = new long[ids.length - 1];
+			System.arraycopy(ids, 0, remaining, 0, index);
+			System.arraycopy(ids, index + 1, remaining, index, remaining.length - index);
+			// a shorter list always fits
+			replaceList(group, encode(remaining));
+			shiftPositions(group + 1, -1);
+		}
+		setCounts(this.numEntries - 1, this.numKeys);
+		return true;
+	}
+
+	@Override
+	public boolean appendEntriesFromOtherPage(BTreeLeafPage other, int num)
+	throws PageFormatException, IndexFormatCorruptException
+	{
+		checkExpired();
+		BTreePostingListLeafPage source = postingListSource(other);
+		if (num <= 0) {
+			return true;
+		}
+		else if (source.numEntries < num) {
+			throw new IllegalArgumentException("Source does not contain enough entries.");
+		}
+		if (this.numKeys > 0 && getLastKey().compareTo(source.getFirstKey()) > 0) {
+			// our last key is larger than their first, that should not be
+			throw new IndexFormatCorruptException("Keys to append are smaller the last keys");
+		}
+		return moveEntries(source, 0, num);
+	}
+
+	@Override
+	public boolean prependEntriesFromOtherPage(BTreeLeafPage other, int num)
+	throws PageFormatException, IndexFormatCorruptException
+	{
+		checkExpired();
+		BTreePostingListLeafPage source = postingListSource(other);
+		if (num <= 0) {
+			return true;
+		}
+		else if (source.numEntries < num) {
+			throw new IllegalArgumentException("Source does not contain enough entries.");
+		}
+		if (this.numKeys > 0 && source.getLastKey().compareTo(getFirstKey()) > 0) {
+			// their last key is larger than our first, that should not be
+			throw new IndexFormatCorruptException("Keys to prepend are larger this node's first keys");
+		}
+		return moveEntries(source, source.numEntries - num, num);
+	}
+
+	// ------------------------------------------------------------------------
+	//                         Utility Methods
+	// ------------------------------------------------------------------------
+
+	private void checkExpired()
+	{
+		if (Constants.DEBUG_CHECK && isExpired()) {
+			throw new PageExpiredException();
+		}
+	}
+
+	private void checkPosition(int position)
+	{
+		if (position < 0 || position >= this.numEntries) {
+			throw new IndexOutOfBoundsException("position is not within valid range.");
+		}
+	}
+
+	private static BTreePostingListLeafPage postingListSource(BTreeLeafPage other)
+	{
+		if (!(other instanceof BTreePostingListLeafPage)) {
+			throw new IllegalArgumentException("Entries can only be moved between posting list leaf pages.");
+		}
+		return (BTreePostingListLeafPage) other;
+	}
+
+	private int getEntryOffset(int group)
+	{
+		return HEADER_SIZE + group * this.entryWidth;
+	}
+
+	private DataField getKeyOfGroup(int group)
+	{
+		return this.keyType.getFromBinary(getBuffer(), getEntryOffset(group), this.keyWidth);
+	}
+
+	private int compareKeyOfGroup(int group, DataField key)
+	{
+		return BTreeKeyComparator.compare(getBuffer(), getEntryOffset(group), this.keyType, this.keyWidth, key);
+	}
+
+	private int getListStart(int group)
+	{
+		return IntField.getIntFromBinary(getBuffer(), getEntryOffset(group) + this.keyWidth);
+	}
+
+	private void setListStart(int group, int offset)
+	{
+		IntField.encodeIntAsBinary(offset, getBuffer(), getEntryOffset(group) + this.keyWidth);
+	}
+
+	private int getListEnd(int group)
+	{
+		return group + 1 < this.numKeys ? getListStart(group + 1) : this.pageSize;
+	}
+
+	private int getFirstPosition(int group)
+	{
+		return IntField.getIntFromBinary(getBuffer(), getEntryOffset(group) + this.keyWidth + 4);
+	}
+
+	private void setFirstPosition(int group, int position)
+	{
+		IntField.encodeIntAsBinary(position, getBuffer(), getEntryOffset(group) + this.keyWidth + 4);
+	}
+
+	private int getEndPosition(int group)
+	{
+		return group + 1 < this.numKeys ? getFirstPosition(group + 1) : this.numEntries;
+	}
+
+	private int getPostingsStart()
+	{
+		return this.numKeys > 0 ? getListStart(0) : this.pageSize;
+	}
+
+	/**
+	 * Finds the first distinct key that is not smaller than the given key.
+	 */
+	private int lowerBoundForKey(DataField key)
+	{
+		int low = 0;
+		int high = this.numKeys;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareKeyOfGroup(mid, key) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the distinct key that equals the given key.
+	 *
+	 * @return The number of the key in the directory, or -1, if it is not contained.
+	 */
+	private int findGroup(DataField key)
+	{
+		int group = lowerBoundForKey(key);
+		return group < this.numKeys && compareKeyOfGroup(group, key) == 0 ? group : -1;
+	}
+
+	/**
+	 * Finds the distinct key of the pair at the given position.
+	 */
+	private int getGroupOfPosition(int position)
+	{
+		int low = 0;
+		int high = this.numKeys - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (getFirstPosition(mid) <= position) {
+				low = mid;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private long[] decodeGroup(int group)
+	{
+		long[] ids = new long[getEndPosition(group) - getFirstPosition(group)];
+		PostingListIterator rids = new PostingListIterator(group);
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = rids.nextId();
+		}
+		return ids;
+	}
+
+	/**
+	 * Encodes ascending RIDs as a posting list.
+	 */
+	private static byte[] encode(long[] ids)
+	{
+		byte[] bytes = new byte[ids.length * 10];
+		int length = 0;
+		long previous = 0;
+		for (long id : ids) {
+			long value = id - previous;
+			previous = id;
+			while ((value & ~0x7fL) != 0) {
+				bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+		return Arrays.copyOf(bytes, length);
+	}
+
+	/**
+	 * Adds a RID to the posting list of an existing key.
+	 */
+	private boolean addToGroup(int group, RID rid)
+	{
+		long[] ids = decodeGroup(group);
+		int index = Arrays.binarySearch(ids, rid.getID());
+		if (index < 0) {
+			index = -(index + 1);
+		}
+		long[] extended = new long[ids.length + 1];
+		System.arraycopy(ids, 0, extended, 0, index);
+		extended[index] = rid.getID();
+		System.arraycopy(ids, index, extended, index + 1, ids.length - index);
+		if (!replaceList(group, encode(extended))) {
+			return false;
+		}
+		shiftPositions(group + 1, 1);
+		setCounts(this.numEntries + 1, this.numKeys);
+		return true;
+	}
+
+	/**
+	 * Replaces the posting list of a key, moving the lists of the smaller keys.
+	 */
+	private boolean replaceList(int group, byte[] list)
+	{
+		byte[] buffer = getBuffer();
+		int start = getListStart(group);
+		int end = getListEnd(group);
+		int growth = list.length - (end - start);
+		if (growth > getFreeSpace()) {
+			return false;
+		}
+		int postingsStart = getPostingsStart();
+		System.arraycopy(buffer, postingsStart, buffer, postingsStart - growth, start - postingsStart);
+		System.arraycopy(list, 0, buffer, end - list.length, list.length);
+		for (int g = 0; g <= group; g++) {
+			setListStart(g, getListStart(g) - growth);
+		}
+		return true;
+	}
+
+	/**
+	 * Inserts a new distinct key with a single RID into the directory.
+	 */
+	private boolean insertGroup(int group, DataField key, RID rid)
+	{
+		byte[] list = encode(new long[] { rid.getID() });
+		if (this.entryWidth + list.length > getFreeSpace()) {
+			return false;
+		}
+		byte[] buffer = getBuffer();
+
+		// the list goes behind the one of the previous key
+		int end = group < this.numKeys ? getListStart(group) : this.pageSize;
+		int postingsStart = getPostingsStart();
+		System.arraycopy(buffer, postingsStart, buffer, postingsStart - list.length, end - postingsStart);
+		System.arraycopy(list, 0, buffer, end - list.length, list.length);
+		for (int g = 0; g < group; g++) {
+			setListStart(g, getListStart(g) - list.length);
+		}
+
+		// the directory entry
+		int firstPosition = group < this.numKeys ? getFirstPosition(group) : this.numEntries;
+		int offset = getEntryOffset(group);
+		System.arraycopy(buffer, offset, buffer, offset + this.entryWidth, (this.numKeys - group) * this.entryWidth);
+		key.encodeBinary(buffer, offset);
+		setCounts(this.numEntries + 1, this.numKeys + 1);
+		setListStart(group, end - list.length);
+		setFirstPosition(group, firstPosition);
+		shiftPositions(group + 1, 1);
+		return true;
+	}
+
+	/**
+	 * Removes a distinct key and its posting list from the directory.
+	 */
+	private void removeGroup(int group)
+	{
+		byte[] buffer = getBuffer();
+		int start = getListStart(group);
+		int length = getListEnd(group) - start;
+		int postingsStart = getPostingsStart();
+		System.arraycopy(buffer, postingsStart, buffer, postingsStart + length, start - postingsStart);
+		for (int g = 0; g < group; g++) {
+			setListStart(g, getListStart(g) + length);
+		}
+		int offset = getEntryOffset(group);
+		System.arraycopy(buffer, offset + this.entryWidth, buffer, offset, (this.numKeys - group - 1) * this.entryWidth);
+		setCounts(this.numEntries, this.numKeys - 1);
+	}
+
+	/**
+	 * Moves the first positions of the keys from the given one on.
+	 */
+	private void shiftPositions(int fromGroup, int distance)
+	{
+		for (int g = fromGroup; g < this.numKeys; g++) {
+			setFirstPosition(g, getFirstPosition(g) + distance);
+		}
+	}
+
+	private void setCounts(int numEntries, int numKeys)
+	{
+		this.numEntries = numEntries;
+		this.numKeys = numKeys;
+		IntField.encodeIntAsBinary(numEntries, getBuffer(), HEADER_NUM_ENTRIES_OFFSET);
+		IntField.encodeIntAsBinary(numKeys, getBuffer(), HEADER_NUM_KEYS_OFFSET);
+		this.modified = true;
+	}
+
+	/**
+	 * Moves the pairs at the given positions of the other page to this page. If they do not all fit
+	 * this page, neither page is changed.
+	 */
+	private boolean moveEntries(BTreePostingListLeafPage source, int start, int num) throws PageFormatException
+	{
+		DataField[] keys = new DataField[num];
+		RID[] rids = new RID[num];
+		int i = 0;
+		for (int group = source.getGroupOfPosition(start); i < num; group++) {
+			DataField key = source.getKeyOfGroup(group);
+			PostingListIterator ids = source.new PostingListIterator(group);
+			for (int position = source.getFirstPosition(group); ids.hasNext() && i < num; position++) {
+				long id = ids.nextId();
+				if (position >= start) {
+					keys[i] = key;
+					rids[i++] = new RID(id);
+				}
+			}
+		}
+
+		byte[] backup = getBuffer().clone();
+		int backupEntries = this.numEntries;
+		int backupKeys = this.numKeys;
+		for (i = 0; i < num; i++) {
+			if (!insertKeyRIDPair(keys[i], rids[i])) {
+				System.arraycopy(backup, 0, getBuffer(), 0, backup.length);
+				this.numEntries = backupEntries;
+				this.numKeys = backupKeys;
+				return false;
+			}
+		}
+		for (i = 0; i < num; i++) {
+			source.deleteKeyRIDPair(keys[i], rids[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the posting list of a key.
+	 */
+	private final class PostingListIterator implements IndexResultIterator<RID>
+	{
+		private int offset;
+
+		private final int end;
+
+		private long previous;
+
+		PostingListIterator(int group)
+		{
+			this.offset = group < BTreePostingListLeafPage.this.numKeys ? getListStart(group) : 0;
+			this.end = group < BTreePostingListLeafPage.this.numKeys ? getListEnd(group) : 0;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return this.offset < this.end;
+		}
+
+		@Override
+		public RID next()
+		{
+			if (this.offset >= this.end) {
+				throw new NoSuchElementException();
+			}
+			return new RID(nextId());
+		}
+
+		long nextId()
+		{
+			byte[] buffer = getBuffer();
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer[this.offset++];
+				value |= (long) (b & 0x7f) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+			this.previous += value;
+			return this.previous;
+		}
+	}
+}
@@ -0,0 +1,531 @@
+package de.tuberlin.dima.minidb.io.index;
+
+
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+
+
+/**
+ * The key area of a compressed index page, see {@link BTreeCompressedLeafPage} and
+ * {@link BTreeCompressedInnerNodePage}.
+ * <p>
+ * The keys are stored in a normalized form: a byte string of the key width, whose unsigned
+ * lexicographic order is the order of the keys. Integer types are stored big endian with the sign
+ * bit flipped, <code>CHAR</code> as big endian characters. All keys of a page share a common prefix,
+ * which is stored once. Trailing <code>0xFF</code> bytes are not stored either: each key is stored
+ * in a slot of the same width, and the bytes behind the slot are implied to be <code>0xFF</code>.
+ * This also truncates separator keys in inner nodes that are chosen to end in <code>0xFF</code>
+ * bytes, see {@link #getShortestSeparator(DataType, DataField, DataField)}.
+ * <p>
+ * The area starts at a fixed offset in the page with the prefix, followed by the records. A record
+ * is the slot of a key followed by a fixed width payload, the RID in a leaf, the child pointer in an
+ * inner node. The lengths of the prefix and of the slots are kept in the page header:
+ * <ul>
+ *   <li>Bytes 24 - 27 are an INT (little endian) holding the length of the common prefix.</li>
+ *   <li>Bytes 28 - 31 are an INT (little endian) holding the width of the key slots.</li>
+ * </ul>
+ * Adding a key that does not share the prefix, or that needs a wider slot, rewrites the records
+ * for the shorter prefix or the wider slot. The prefix never grows and the slots never shrink while
+ * the page holds records.
+ */
+final class CompressedKeyArea
+{
+	/**
+	 * The offset of the field holding the length of the common prefix.
+	 */
+	static final int HEADER_PREFIX_LENGTH_OFFSET = 24;
+
+	/**
+	 * The offset of the field holding the width of the key slots.
+	 */
+	static final int HEADER_SLOT_WIDTH_OFFSET = 28;
+
+	private final byte[] buffer;
+
+	private final DataType keyType;
+
+	private final BasicType basicType;
+
+	private final int keyWidth;
+
+	/**
+	 * The offset of the prefix in the page.
+	 */
+	private final int areaStart;
+
+	/**
+	 * The number of bytes from the start of the area to the end of the page.
+	 */
+	private final int areaSize;
+
+	/**
+	 * The width of the data behind each key slot.
+	 */
+	private final int payloadWidth;
+
+	private int prefixLength;
+
+	private int slotWidth;
+
+
+	/**
+	 * Creates the key area of a page, reading the layout from the page header.
+	 *
+	 * @param buffer The buffer of the page.
+	 * @param keyType The type of the keys.
+	 * @param pageSize The size of the page.
+	 * @param areaStart The offset of the area in the page.
+	 * @param payloadWidth The width of the data behind each key slot.
+	 */
+	CompressedKeyArea(byte[] buffer, DataType keyType, int pageSize, int areaStart, int payloadWidth)
+	{
+		this.buffer = buffer;
+		this.keyType = keyType;
+		this.basicType = keyType.getBasicType();
+		this.keyWidth = keyType.getNumberOfBytes();
+		this.areaStart = areaStart;
+		this.areaSize = pageSize - areaStart;
+		this.payloadWidth = payloadWidth;
+		this.prefixLength = IntField.getIntFromBinary(buffer, HEADER_PREFIX_LENGTH_OFFSET);
+		this.slotWidth = IntField.getIntFromBinary(buffer, HEADER_SLOT_WIDTH_OFFSET);
+	}
+
+	/**
+	 * Initializes the layout fields in the header of a new page.
+	 *
+	 * @param buffer The buffer of the page.
+	 */
+	static void initHeader(byte[] buffer)
+	{
+		IntField.encodeIntAsBinary(0, buffer, HEADER_PREFIX_LENGTH_OFFSET);
+		IntField.encodeIntAsBinary(0, buffer, HEADER_SLOT_WIDTH_OFFSET);
+	}
+
+	// ------------------------------------------------------------------------
+	//                            normalized keys
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Checks whether keys of the given type can be stored in compressed pages.
+	 *
+	 * @param type The type of the keys.
+	 * @return True, for <code>SMALL_INT</code>, <code>INT</code>, <code>BIG_INT</code>,
+	 *         <code>DATE</code> and <code>CHAR</code>, false otherwise.
+	 */
+	static boolean isSupported(DataType type)
+	{
+		switch (type.getBasicType()) {
+			case SMALL_INT:
+			case INT:
+			case BIG_INT:
+			case DATE:
+			case CHAR:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Gets a byte of the normalized form of a key, without creating the normalized form.
+	 *
+	 * @param key The key.
+	 * @param type The basic type of the key.
+	 * @param i The position of the byte.
+	 * @return The byte, as an unsigned value.
+	 */
+	private static int keyByte(DataField key, BasicType type, int i)
+	{
+		switch (type) {
+			case SMALL_INT:
+				return ((((SmallIntField) key).getValue() ^ 0x8000) >>> (8 * (1 - i))) & 0xff;
+			case INT:
+				return ((((IntField) key).getValue() ^ Integer.MIN_VALUE) >>> (8 * (3 - i))) & 0xff;
+			case DATE: {
+				DateField date = (DateField) key;
+				int raw = date.isNULL() ? 0xffffffff : (date.getYear() << 16) | (date.getMonth() << 8) | date.getDay();
+				return ((raw ^ Integer.MIN_VALUE) >>> (8 * (3 - i))) & 0xff;
+			}
+			case BIG_INT:
+				return (int) ((((BigIntField) key).getValue() ^ Long.MIN_VALUE) >>> (8 * (7 - i))) & 0xff;
+			default: {
+				// CHAR, missing characters sort before all others
+				if (key.isNULL()) {
+					return 0;
+				}
+				// the string of a char field is its value, no copy is made
+				String chars = key.encodeAsString();
+				int c = (i >> 1) < chars.length() ? chars.charAt(i >> 1) : 0;
+				return (i & 1) == 0 ? c >>> 8 : c & 0xff;
+			}
+		}
+	}
+
+	/**
+	 * Creates the normalized form of a key.
+	 *
+	 * @param key The key.
+	 * @param type The type of the key.
+	 * @return The normalized key.
+	 */
+	static byte[] normalize(DataField key, DataType type)
+	{
+		BasicType basic = type.getBasicType();
+		byte[] normalized = new byte[type.getNumberOfBytes()];
+		for (int i = 0; i < normalized.length; i++) {
+			normalized[i] = (byte) keyByte(key, basic, i);
+		}
+		return normalized;
+	}
+
+	/**
+	 * Creates the key for a normalized form.
+	 *
+	 * @param normalized The normalized key.
+	 * @param type The type of the key.
+	 * @return The key.
+	 */
+	static DataField denormalize(byte[] normalized, DataType type)
+	{
+		int width = normalized.length;
+		byte[] binary = new byte[width];
+		if (type.getBasicType() == BasicType.CHAR) {
+			for (int i = 0; i < width - 1; i += 2) {
+				binary[i] = normalized[i + 1];
+				binary[i + 1] = normalized[i];
+			}
+		}
+		else {
+			for (int i = 0; i < width; i++) {
+				binary[i] = normalized[width - 1 - i];
+			}
+			binary[width - 1] ^= 0x80;
+		}
+		return type.getFromBinary(binary, 0, width);
+	}
+
+	/**
+	 * Gets the length of a normalized key without its trailing <code>0xFF</code> bytes.
+	 */
+	static int getSignificantLength(byte[] normalized)
+	{
+		int length = normalized.length;
+		while (length > 0 && normalized[length - 1] == (byte) 0xff) {
+			length--;
+		}
+		return length;
+	}
+
+	/**
+	 * Gets the number of bytes that two byte strings have in common at their beginning.
+	 */
+	static int getCommonPrefixLength(byte[] a, int aOffset, byte[] b, int bOffset, int length)
+	{
+		int i = 0;
+		while (i < length && a[aOffset + i] == b[bOffset + i]) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Compares two normalized keys.
+	 */
+	static int compareNormalized(byte[] a, byte[] b)
+	{
+		for (int i = 0; i < a.length; i++) {
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the key with the shortest stored form that separates two keys, as they are separated in
+	 * an inner node: it is not smaller than the left key and smaller than the right key. That is the
+	 * left key's normalized form up to and including the first byte where it differs from the right
+	 * key, followed by <code>0xFF</code> bytes, which compressed pages do not store.
+	 *
+	 * @param type The type of the keys.
+	 * @param left The highest key left of the separator.
+	 * @param right The lowest key right of the separator, not smaller than the left key.
+	 * @return The separator, or the left key, if both keys are equal.
+	 */
+	static DataField getShortestSeparator(DataType type, DataField left, DataField right)
+	{
+		byte[] l = normalize(left, type);
+		byte[] r = normalize(right, type);
+		int differing = getCommonPrefixLength(l, 0, r, 0, l.length);
+		if (differing >= l.length - 1) {
+			// equal, or differing in the last byte only, nothing to truncate
+			return left;
+		}
+		Arrays.fill(l, differing + 1, l.length, (byte) 0xff);
+		return denormalize(l, type);
+	}
+
+	// ------------------------------------------------------------------------
+	//                                layout
+	// ------------------------------------------------------------------------
+
+	int getPrefixLength()
+	{
+		return this.prefixLength;
+	}
+
+	int getSlotWidth()
+	{
+		return this.slotWidth;
+	}
+
+	/**
+	 * Gets the number of records that fit the page in the current layout.
+	 */
+	int getCapacity()
+	{
+		return (this.areaSize - this.prefixLength) / (this.slotWidth + this.payloadWidth);
+	}
+
+	/**
+	 * Gets the number of bytes that a key area of the given layout occupies.
+	 */
+	static int getRequiredBytes(int prefixLength, int slotWidth, int payloadWidth, int numRecords)
+	{
+		return prefixLength + numRecords * (slotWidth + payloadWidth);
+	}
+
+	/**
+	 * Gets the length of the prefix for keys with the given common prefix and significant length.
+	 */
+	static int getPrefixLength(int commonPrefixLength, int maxSignificantLength)
+	{
+		return Math.min(commonPrefixLength, maxSignificantLength);
+	}
+
+	/**
+	 * Gets the offset of the record at the given position.
+	 */
+	int getRecordOffset(int position)
+	{
+		return this.areaStart + this.prefixLength + position * (this.slotWidth + this.payloadWidth);
+	}
+
+	/**
+	 * Gets the offset of the payload of the record at the given position.
+	 */
+	int getPayloadOffset(int position)
+	{
+		return getRecordOffset(position) + this.slotWidth;
+	}
+
+	/**
+	 * Makes the layout hold the given additional keys besides the current records. The keys
+	 * must be normalized, the lowest and the highest of them given, as well as the greatest
+	 * significant length among them. If the records do not fit the page, nothing is changed.
+	 *
+	 * @param low The lowest of the additional keys.
+	 * @param high The highest of the additional keys.
+	 * @param maxSignificantLength The greatest significant length of the additional keys.
+	 * @param numRecords The number of records on the page.
+	 * @param additional The number of records to add.
+	 * @return True, if the records fit the page, false otherwise.
+	 */
+	boolean makeRoom(byte[] low, byte[] high, int maxSignificantLength, int numRecords, int additional)
+	{
+		int common = getCommonPrefixLength(low, 0, high, 0, this.keyWidth);
+		int significant = maxSignificantLength;
+		if (numRecords > 0) {
+			common = Math.min(common, getCommonPrefixLength(this.buffer, this.areaStart, low, 0, this.prefixLength));
+			common = Math.min(common, getCommonPrefixLength(this.buffer, this.areaStart, high, 0, this.prefixLength));
+			significant = Math.max(significant, this.prefixLength + this.slotWidth);
+		}
+		int newPrefixLength = getPrefixLength(common, significant);
+		int newSlotWidth = significant - newPrefixLength;
+		if (getRequiredBytes(newPrefixLength, newSlotWidth, this.payloadWidth, numRecords + additional) > this.areaSize) {
+			return false;
+		}
+		if (numRecords == 0) {
+			System.arraycopy(low, 0, this.buffer, this.areaStart, newPrefixLength);
+			setLayout(newPrefixLength, newSlotWidth);
+		}
+		else if (newPrefixLength != this.prefixLength || newSlotWidth != this.slotWidth) {
+			relayout(newPrefixLength, newSlotWidth, numRecords);
+		}
+		return true;
+	}
+
+	/**
+	 * Rewrites the records for a shorter prefix or wider slots.
+	 */
+	private void relayout(int newPrefixLength, int newSlotWidth, int numRecords)
+	{
+		int oldRecordWidth = this.slotWidth + this.payloadWidth;
+		int newRecordWidth = newSlotWidth + this.payloadWidth;
+		byte[] old = Arrays.copyOfRange(this.buffer, this.areaStart,
+				this.areaStart + getRequiredBytes(this.prefixLength, this.slotWidth, this.payloadWidth, numRecords));
+		byte[] key = new byte[this.keyWidth];
+		// the new prefix is a prefix of the old one and stays in place
+		int oldRecords = this.prefixLength;
+		int newRecords = this.areaStart + newPrefixLength;
+		for (int i = 0; i < numRecords; i++) {
+			System.arraycopy(old, 0, key, 0, this.prefixLength);
+			System.arraycopy(old, oldRecords + i * oldRecordWidth, key, this.prefixLength, this.slotWidth);
+			Arrays.fill(key, this.prefixLength + this.slotWidth, this.keyWidth, (byte) 0xff);
+			int offset = newRecords + i * newRecordWidth;
+			System.arraycopy(key, newPrefixLength, this.buffer, offset, newSlotWidth);
+			System.arraycopy(old, oldRecords + i * oldRecordWidth + this.slotWidth, this.buffer, offset + newSlotWidth, this.payloadWidth);
+		}
+		setLayout(newPrefixLength, newSlotWidth);
+	}
+
+	private void setLayout(int newPrefixLength, int newSlotWidth)
+	{
+		this.prefixLength = newPrefixLength;
+		this.slotWidth = newSlotWidth;
+		IntField.encodeIntAsBinary(newPrefixLength, this.buffer, HEADER_PREFIX_LENGTH_OFFSET);
+		IntField.encodeIntAsBinary(newSlotWidth, this.buffer, HEADER_SLOT_WIDTH_OFFSET);
+	}
+
+	/**
+	 * Stores a normalized key in the slot of the record at the given position. The key must fit
+	 * the layout, see {@link #makeRoom(byte[], byte[], int, int, int)}.
+	 */
+	void writeKey(int position, byte[] normalized)
+	{
+		System.arraycopy(normalized, this.prefixLength, this.buffer, getRecordOffset(position), this.slotWidth);
+	}
+
+	/**
+	 * Moves the records from the given position to the end by the given number of positions.
+	 *
+	 * @param from The position of the first record to move.
+	 * @param numRecords The number of records on the page.
+	 * @param distance The number of positions to move, negative to move to the front.
+	 */
+	void moveRecords(int from, int numRecords, int distance)
+	{
+		if (from < numRecords) {
+			System.arraycopy(this.buffer, getRecordOffset(from), this.buffer, getRecordOffset(from + distance),
+					(numRecords - from) * (this.slotWidth + this.payloadWidth));
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                               lookups
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the normalized key of the record at the given position.
+	 */
+	byte[] getNormalizedKey(int position)
+	{
+		byte[] key = new byte[this.keyWidth];
+		System.arraycopy(this.buffer, this.areaStart, key, 0, this.prefixLength);
+		System.arraycopy(this.buffer, getRecordOffset(position), key, this.prefixLength, this.slotWidth);
+		Arrays.fill(key, this.prefixLength + this.slotWidth, this.keyWidth, (byte) 0xff);
+		return key;
+	}
+
+	/**
+	 * Gets the key of the record at the given position.
+	 */
+	DataField getKey(int position)
+	{
+		return denormalize(getNormalizedKey(position), this.keyType);
+	}
+
+	/**
+	 * Compares the common prefix with the beginning of the given key.
+	 *
+	 * @return A negative number, zero or a positive number, if the prefix is smaller than, equal to
+	 *         or greater than the beginning of the key.
+	 */
+	private int comparePrefix(DataField key)
+	{
+		for (int i = 0; i < this.prefixLength; i++) {
+			int cmp = (this.buffer[this.areaStart + i] & 0xff) - keyByte(key, this.basicType, i);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares the key of the record at the given position with the given key, whose beginning
+	 * equals the common prefix.
+	 *
+	 * @return A negative number, zero or a positive number, if the stored key is smaller than,
+	 *         equal to or greater than the given key.
+	 */
+	private int compareSlot(int position, DataField key)
+	{
+		int offset = getRecordOffset(position);
+		int i = this.prefixLength;
+		for (int end = i + this.slotWidth; i < end; i++, offset++) {
+			int cmp = (this.buffer[offset] & 0xff) - keyByte(key, this.basicType, i);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		// the bytes that are not stored are 0xFF
+		for (; i < this.keyWidth; i++) {
+			if (keyByte(key, this.basicType, i) != 0xff) {
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compares the key of the record at the given position with the given key.
+	 *
+	 * @return A negative number, zero or a positive number, if the stored key is smaller than,
+	 *         equal to or greater than the given key.
+	 */
+	int compare(int position, DataField key)
+	{
+		int cmp = comparePrefix(key);
+		return cmp != 0 ? cmp : compareSlot(position, key);
+	}
+
+	/**
+	 * Finds the position of the first record whose key is not smaller than the given key.
+	 *
+	 * @param key The key to search for.
+	 * @param numRecords The number of records on the page.
+	 * @return The position, between <code>0</code> and <code>numRecords</code>.
+	 */
+	int lowerBound(DataField key, int numRecords)
+	{
+		if (numRecords == 0) {
+			return 0;
+		}
+		int cmp = comparePrefix(key);
+		if (cmp != 0) {
+			// all keys are greater or all are smaller
+			return cmp > 0 ? 0 : numRecords;
+		}
+		int low = 0;
+		int high = numRecords;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareSlot(mid, key) < 0) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
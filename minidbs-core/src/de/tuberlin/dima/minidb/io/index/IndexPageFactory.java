@@ -2,6 +2,7 @@ package de.tuberlin.dima.minidb.io.index;
 
 
 import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.core.IntField;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 
@@ -52,6 +53,15 @@ public abstract class IndexPageFactory
 		else if (typeVersion == BTreeLeafPage.HEADER_TYPE_VALUE) {
 			return new BTreeLeafPage(schema, buffer);
 		}
+		else if (typeVersion == BTreeCompressedInnerNodePage.HEADER_TYPE_VALUE) {
+			return new BTreeCompressedInnerNodePage(schema, buffer);
+		}
+		else if (typeVersion == BTreeCompressedLeafPage.HEADER_TYPE_VALUE) {
+			return new BTreeCompressedLeafPage(schema, buffer);
+		}
+		else if (typeVersion == BTreePostingListLeafPage.HEADER_TYPE_VALUE) {
+			return new BTreePostingListLeafPage(schema, buffer);
+		}
 		else {
 			throw new PageFormatException("Unknown type indicator: " + typeVersion);
 		}
@@ -61,7 +71,10 @@ public abstract class IndexPageFactory
 	/**
 	 * Initializes an index page for the given schema and the contents of the buffer.
 	 * The type of the page will be depending on the contents of the version field
-	 * in the header contained in the binary buffer.
+	 * in the header contained in the binary buffer. If the schema describes a compressed
+	 * index, the page is a {@link BTreeCompressedLeafPage} or a {@link BTreeCompressedInnerNodePage}.
+	 * If the schema describes an index with posting lists, the leaf page is a
+	 * {@link BTreePostingListLeafPage}.
 	 *   
 	 * @param schema The schema for the index page.
 	 * @param buffer The buffer containing the binary data from the page.
@@ -88,26 +101,59 @@ public abstract class IndexPageFactory
 		IntField.encodeIntAsBinary(newPageNumber, buffer, 4);
 		
 		// encode fields depending on page type
-		if (leafPage) {
+		boolean compressed = schema.isCompressed();
+		if (compressed) {
+			// code the layout of the empty key area
+			CompressedKeyArea.initHeader(buffer);
+		}
+		if (leafPage && schema.hasPostingLists()) {
 			// code version
-			IntField.encodeIntAsBinary(BTreeLeafPage.HEADER_TYPE_VALUE, buffer, 8);
+			IntField.encodeIntAsBinary(BTreePostingListLeafPage.HEADER_TYPE_VALUE, buffer, 8);
 			// code number of entries
 			IntField.encodeIntAsBinary(0, buffer, 12);
 			// code linked page
 			IntField.encodeIntAsBinary(-1, buffer, 16);
 			// code flags
 			IntField.encodeIntAsBinary(0, buffer, 20);
+			// code number of distinct keys
+			IntField.encodeIntAsBinary(0, buffer, 24);
 			
-			return new BTreeLeafPage(schema, buffer);
+			return new BTreePostingListLeafPage(schema, buffer);
+		}
+		else if (leafPage) {
+			// code version
+			IntField.encodeIntAsBinary(compressed ? BTreeCompressedLeafPage.HEADER_TYPE_VALUE : BTreeLeafPage.HEADER_TYPE_VALUE, buffer, 8);
+			// code number of entries
+			IntField.encodeIntAsBinary(0, buffer, 12);
+			// code linked page
+			IntField.encodeIntAsBinary(-1, buffer, 16);
+			// code flags
+			IntField.encodeIntAsBinary(0, buffer, 20);
+			
+			return compressed ? new BTreeCompressedLeafPage(schema, buffer) : new BTreeLeafPage(schema, buffer);
 		}
 		else {
 			// code version
-			IntField.encodeIntAsBinary(BTreeInnerNodePage.HEADER_TYPE_VALUE, buffer, 8);
+			IntField.encodeIntAsBinary(compressed ? BTreeCompressedInnerNodePage.HEADER_TYPE_VALUE : BTreeInnerNodePage.HEADER_TYPE_VALUE, buffer, 8);
 			// code number of entries
 			IntField.encodeIntAsBinary(0, buffer, 12);
 			
-			return new BTreeInnerNodePage(schema, buffer);
+			return compressed ? new BTreeCompressedInnerNodePage(schema, buffer) : new BTreeInnerNodePage(schema, buffer);
 		}
 		
 	}
+	
+	
+	/**
+	 * Checks whether an index over keys of the given type can store its keys prefix compressed.
+	 * That are the types <code>SMALL_INT</code>, <code>INT</code>, <code>BIG_INT</code>,
+	 * <code>DATE</code> and <code>CHAR</code>.
+	 * 
+	 * @param keyType The type of the keys.
+	 * @return True, if the keys can be compressed, false otherwise.
+	 */
+	public static boolean isCompressionSupported(DataType keyType)
+	{
+		return CompressedKeyArea.isSupported(keyType);
+	}
 }
@@ -18,6 +18,7 @@ import de.tuberlin.dima.minidb.io.cache.CacheableData;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.cache.UnsupportedPageSizeException;
+import de.tuberlin.dima.minidb.io.manager.MappedPageReader;
 import de.tuberlin.dima.minidb.io.manager.ResourceManager;
 
 /**
@@ -58,6 +59,16 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	private static final int INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK = 0x1;
 
+	/**
+	 * The mask to access the 'compressed' bit in the attributes.
+	 */
+	private static final int INDEX_HEADER_ATTRIBUTE_COMPRESSED_MASK = 0x2;
+
+	/**
+	 * The mask to access the 'posting lists' bit in the attributes.
+	 */
+	private static final int INDEX_HEADER_ATTRIBUTE_POSTING_LISTS_MASK = 0x4;
+
 	/**
 	 * The I/O channel through which the index file is accessed.
 	 */
@@ -88,6 +99,11 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	private int lastPageNumber;
 
+	/**
+	 * The reader for the memory mapped file, if pages are read through a mapping, otherwise null.
+	 */
+	private volatile MappedPageReader mappedReader;
+
 	// ------------------------------------------------------------------------
 	//                        Constructor & Life-Cycle
 	// ------------------------------------------------------------------------
@@ -209,6 +225,7 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	@Override
 	public synchronized void closeResource() throws IOException {
+		this.mappedReader = null;
 		try {
 			this.theLock.release();
 			this.ioChannel.close();
@@ -271,6 +288,28 @@ public class IndexResourceManager extends ResourceManager {
 		return this.schema.getPageSize();
 	}
 
+	/**
+	 * Makes this index manager read pages from memory mapped regions of the index file, rather than
+	 * through read calls on the file channel. Pages that are not (yet) in the file are still read
+	 * through the channel.
+	 * 
+	 * @see MappedPageReader
+	 */
+	public synchronized void enableMappedReads() {
+		if (this.mappedReader == null) {
+			this.mappedReader = new MappedPageReader(this.ioChannel, this.pageSize);
+		}
+	}
+
+	/**
+	 * Checks whether this index manager reads pages from memory mapped regions of the index file.
+	 * 
+	 * @return True, if pages are read through a mapping, false otherwise.
+	 */
+	public boolean isMappedReadsEnabled() {
+		return this.mappedReader != null;
+	}
+
 	// ------------------------------------------------------------------------
 
 	/**
@@ -328,6 +367,11 @@ public class IndexResourceManager extends ResourceManager {
 	 */
 	@Override
 	public synchronized void truncate() throws IOException {
+		// the mapped regions must not outlive the truncated parts of the file
+		if (this.mappedReader != null) {
+			this.mappedReader.invalidate();
+		}
+
 		// write a new empty leaf page
 		try {
 			byte[] temporaryBuffer = new byte[this.pageSize];
@@ -370,11 +414,22 @@ public class IndexResourceManager extends ResourceManager {
 			throw new IllegalArgumentException("Parameters must be a specifictaion of the page type through " + BTreeIndexPageType.class.getCanonicalName());
 		}
 		BTreeIndexPageType pageType = (BTreeIndexPageType) type;
+		if ((pageType == BTreeIndexPageType.COMPRESSED_LEAF_PAGE || pageType == BTreeIndexPageType.COMPRESSED_INNER_NODE_PAGE)
+				&& !this.schema.isCompressed())
+		{
+			throw new IllegalArgumentException("The index does not store its keys compressed.");
+		}
+		if (pageType == BTreeIndexPageType.POSTING_LIST_LEAF_PAGE && !this.schema.hasPostingLists()) {
+			throw new IllegalArgumentException("The index does not store posting lists in its leaves.");
+		}
 		int newPageNumber = this.lastPageNumber + 1;
 
 		try {
+			// the pages have the format of the index
 			BTreeIndexPage newPage = null;
-			if (pageType == BTreeIndexPageType.LEAF_PAGE) {
+			if (pageType == BTreeIndexPageType.LEAF_PAGE || pageType == BTreeIndexPageType.COMPRESSED_LEAF_PAGE
+					|| pageType == BTreeIndexPageType.POSTING_LIST_LEAF_PAGE)
+			{
 				newPage = IndexPageFactory.initIndexPage(this.schema, buffer, newPageNumber, true);
 			} else {
 				newPage = IndexPageFactory.initIndexPage(this.schema, buffer, newPageNumber, false);
@@ -409,7 +464,10 @@ public class IndexResourceManager extends ResourceManager {
 		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
 		long position = ((long) this.pageSize) * ((long) pageNumber);
 		try {
-			readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			MappedPageReader mapped = this.mappedReader;
+			if (mapped == null || !mapped.readPage(buffer, pageNumber)) {
+				readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be read from index file.", ioex);
 		}
@@ -453,14 +511,17 @@ public class IndexResourceManager extends ResourceManager {
 		}
 
 		try {
-			this.ioChannel.position(this.pageSize * (long) firstPageNumber);
-			long totalSize = buffers.length * this.pageSize;
-			long bytesRemaining = buffers.length * this.pageSize;
-			int currFirstBuffer = 0;
-			do {
-				bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
-				currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
-			} while (bytesRemaining > 0);
+			MappedPageReader mapped = this.mappedReader;
+			if (mapped == null || !mapped.readPages(buffers, firstPageNumber)) {
+				this.ioChannel.position(this.pageSize * (long) firstPageNumber);
+				long totalSize = buffers.length * this.pageSize;
+				long bytesRemaining = buffers.length * this.pageSize;
+				int currFirstBuffer = 0;
+				do {
+					bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+					currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
+				} while (bytesRemaining > 0);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + buffers.length - 1) + "] could not be read from index file.",
 				ioex);
@@ -479,6 +540,28 @@ public class IndexResourceManager extends ResourceManager {
 		return pages;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.manager.ResourceManager#supportsBufferWrapping()
+	 */
+	@Override
+	public boolean supportsBufferWrapping() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.manager.ResourceManager#wrapBuffer(byte[])
+	 */
+	@Override
+	public BTreeIndexPage wrapBuffer(byte[] buffer) throws IOException {
+		try {
+			return IndexPageFactory.createPage(this.schema, buffer);
+		} catch (PageFormatException pfex) {
+			throw new IOException("Page could not be wrapped because it is corrupted.", pfex);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.io.ResourceManager#writePageToResource(byte[],
@@ -734,6 +817,8 @@ public class IndexResourceManager extends ResourceManager {
 		int firstLeafNode = buffer.getInt();
 		int flags = buffer.getInt();
 		boolean unique = (flags & INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK) != 0;
+		boolean compressed = (flags & INDEX_HEADER_ATTRIBUTE_COMPRESSED_MASK) != 0;
+		boolean postingLists = (flags & INDEX_HEADER_ATTRIBUTE_POSTING_LISTS_MASK) != 0;
 		int highestPage = (int) (channel.size() / pageSize) - 1;
 
 		// sanity checks
@@ -746,13 +831,21 @@ public class IndexResourceManager extends ResourceManager {
 		if (rootNode < FIRST_DATA_PAGE || rootNode > highestPage) {
 			throw new PageFormatException("Index header specified a root page number that is out of range.");
 		}
+		if (unique && postingLists) {
+			throw new PageFormatException("Index header specified posting lists for a unique index.");
+		}
 
 		try {
 			// instantiate
 			PageSize ps = PageSize.getPageSize(pageSize);
-			return new IndexSchema(tableSchema, columnNumber, ps, unique, rootNode, firstLeafNode);
+			IndexSchema schema = new IndexSchema(tableSchema, columnNumber, ps, unique, rootNode, firstLeafNode);
+			schema.setCompressed(compressed);
+			schema.setPostingLists(postingLists);
+			return schema;
 		} catch (UnsupportedPageSizeException uspsex) {
 			throw new PageFormatException("The index header stated an unsupported page size.");
+		} catch (IllegalArgumentException iaex) {
+			throw new PageFormatException("The index header stated compressed keys of a type that cannot be compressed.");
 		}
 	}
 
@@ -788,6 +881,8 @@ public class IndexResourceManager extends ResourceManager {
 		// write the attribute flags
 		int flags = 0;
 		flags |= schema.isUnique() ? INDEX_HEADER_ATTRIBUTE_UNIQUE_MASK : 0;
+		flags |= schema.isCompressed() ? INDEX_HEADER_ATTRIBUTE_COMPRESSED_MASK : 0;
+		flags |= schema.hasPostingLists() ? INDEX_HEADER_ATTRIBUTE_POSTING_LISTS_MASK : 0;
 		buffer.putInt(flags);
 
 		// write the buffer
@@ -2,7 +2,9 @@ package de.tuberlin.dima.minidb.io.manager;
 
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
+import de.tuberlin.dima.minidb.io.cache.AccessHint;
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 
 
@@ -55,6 +57,10 @@ public interface BufferPoolManager
 	 *   <li>It dereferences the caches (setting them to null), allowing the garbage collection to
 	 *       reclaim the memory.</li>
 	 * </ol>
+	 * The buffer pool is closed even if modified pages could not be written.
+	 * 
+	 * @throws UncheckedIOException Thrown, if modified pages could not be written to their resource.
+	 *                              It wraps the first error that occurred while writing.
 	 */
 	public void closeBufferPool();
 
@@ -103,6 +109,30 @@ public interface BufferPoolManager
 	public CacheableData getPageAndPin(int resourceId, int pageNumber)
 			throws BufferPoolException, IOException;
 	
+	/**
+	 * Works like {@link #getPageAndPin(int, int)}, but tells the buffer pool how the page is accessed.
+	 * Pages of a {@link AccessHint#SEQUENTIAL_SCAN} are kept in a few frames that are reused before
+	 * any other page is evicted, so that a scan does not displace pages that are accessed repeatedly,
+	 * such as the inner nodes of an index ({@link AccessHint#INDEX_INTERNAL}).
+	 * <p>
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param resourceId The id of the resource.
+	 * @param pageNumber The page number of the page to fetch.
+	 * @param hint The way the page is accessed.
+	 * @return The requested page, wrapped by a structure to make it accessible.
+	 * 
+	 * @throws BufferPoolException Thrown, if the given resource it not registered at the buffer pool,
+	 *                             the buffer pool is closed, or an internal problem occurred.
+	 * @throws IOException Thrown, if the page had to be loaded from secondary storage and the loading
+	 *                     failed due to an I/O problem.
+	 */
+	public default CacheableData getPageAndPin(int resourceId, int pageNumber, AccessHint hint)
+			throws BufferPoolException, IOException
+	{
+		return getPageAndPin(resourceId, pageNumber);
+	}
+	
 	/**
 	 * Unpins a given page and in addition fetches another page from the same resource. This method works exactly
 	 * like the method {@link de.tuberlin.dima.minidb.io.BufferPoolManager#getPageAndPin(int, int)}, only that it
@@ -126,6 +156,29 @@ public interface BufferPoolManager
 	 */
 	public CacheableData unpinAndGetPageAndPin(int resourceId, int unpinPageNumber, int getPageNumber)
 			throws BufferPoolException, IOException;
+	
+	/**
+	 * Works like {@link #unpinAndGetPageAndPin(int, int, int)}, but tells the buffer pool how the
+	 * page is accessed, see {@link #getPageAndPin(int, int, AccessHint)}.
+	 * <p>
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param resourceId The id of the resource.
+	 * @param unpinPageNumber The page number of the page to be unpinned.
+	 * @param getPageNumber The page number of the page to get and pin.
+	 * @param hint The way the page is accessed.
+	 * @return The requested page, wrapped by a structure to make it accessible.
+	 * 
+	 * @throws BufferPoolException Thrown, if the given resource it not registered at the buffer pool,
+	 *                             the buffer pool is closed, or an internal problem occurred.
+	 * @throws IOException Thrown, if the page had to be loaded from secondary storage and the loading
+	 *                     failed due to an I/O problem.
+	 */
+	public default CacheableData unpinAndGetPageAndPin(int resourceId, int unpinPageNumber, int getPageNumber, AccessHint hint)
+			throws BufferPoolException, IOException
+	{
+		return unpinAndGetPageAndPin(resourceId, unpinPageNumber, getPageNumber);
+	}
 
 	/**
 	 * Unpins a page so that it can again be evicted from the cache. This method works after the principle of 
@@ -169,6 +222,57 @@ public interface BufferPoolManager
 	 */
 	public void prefetchPages(int resourceId, int startPageNumber, int endPageNumber)
 			throws BufferPoolException;
+	
+	/**
+	 * Works like {@link #prefetchPages(int, int, int)}, but tells the buffer pool how the pages will
+	 * be accessed, see {@link #getPageAndPin(int, int, AccessHint)}. A scan should prefetch with the
+	 * same hint it later requests the pages with.
+	 * <p>
+	 * The default implementation ignores the hint.
+	 * 
+	 * @param resourceId The id of the resource.
+	 * @param startPageNumber The page number of the first page to prefetch.
+	 * @param endPageNumber The page number of the last page to prefetch.
+	 * @param hint The way the pages will be accessed.
+	 * @throws BufferPoolException If the buffer pool is closed, or the resource is not registered.
+	 */
+	public default void prefetchPages(int resourceId, int startPageNumber, int endPageNumber, AccessHint hint)
+			throws BufferPoolException
+	{
+		prefetchPages(resourceId, startPageNumber, endPageNumber);
+	}
+	
+	/**
+	 * Gets the number of frames that are currently free to read pages of the given resource into.
+	 * Operators that prefetch may use it to keep their read-ahead from exhausting the buffer pool.
+	 * <p>
+	 * The default implementation does not know the number and returns {@link Integer#MAX_VALUE}.
+	 * 
+	 * @param resourceId The id of the resource.
+	 * @return The number of free frames.
+	 * @throws BufferPoolException If the buffer pool is closed, or the resource is not registered.
+	 */
+	public default int getNumberOfFreeFrames(int resourceId)
+			throws BufferPoolException
+	{
+		return Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Gets the number of pages of the given resource that have been requested or prefetched and
+	 * are not yet loaded into the cache.
+	 * <p>
+	 * The default implementation does not know the number and returns zero.
+	 * 
+	 * @param resourceId The id of the resource.
+	 * @return The number of outstanding page reads.
+	 * @throws BufferPoolException If the buffer pool is closed, or the resource is not registered.
+	 */
+	public default int getNumberOfPendingReads(int resourceId)
+			throws BufferPoolException
+	{
+		return 0;
+	}
 
 	
 	/**
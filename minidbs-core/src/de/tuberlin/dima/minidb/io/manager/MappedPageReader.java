@@ -0,0 +1,142 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import de.tuberlin.dima.minidb.Constants;
+
+
+/**
+ * Serves page reads of a resource from memory mapped regions of its file, rather than through
+ * read calls on the file channel. The file is mapped read only in regions of
+ * {@link Constants#MAPPED_REGION_SIZE} bytes (rounded down to whole pages), which are mapped
+ * when first accessed. A region that was mapped while the file ended inside it is mapped again
+ * once a page behind its end is requested and the file has grown in the meantime.
+ * <p>
+ * Pages are written through the file channel, as before. The mapping is shared with the operating
+ * system's file cache, so written pages are visible through it. If the file is truncated, the
+ * mappings must be dropped through {@link #invalidate()} before the next read.
+ * <p>
+ * All methods are synchronized on the reader.
+ */
+public final class MappedPageReader
+{
+	/**
+	 * The channel of the mapped file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The number of pages covered by a full region.
+	 */
+	private final int pagesPerRegion;
+
+	/**
+	 * The mapped regions by their index. Entries are null for regions that have not been mapped.
+	 */
+	private MappedByteBuffer[] regions;
+
+
+	/**
+	 * Creates a reader for the given file channel. No region is mapped before it is accessed.
+	 *
+	 * @param channel The channel of the file to read from.
+	 * @param pageSize The size of a page in bytes.
+	 */
+	public MappedPageReader(FileChannel channel, int pageSize)
+	{
+		this.channel = channel;
+		this.pageSize = pageSize;
+		this.pagesPerRegion = Math.max(1, Constants.MAPPED_REGION_SIZE / pageSize);
+		this.regions = new MappedByteBuffer[0];
+	}
+
+
+	/**
+	 * Copies the page with the given number into the given buffer.
+	 *
+	 * @param buffer The buffer to copy the page to.
+	 * @param pageNumber The number of the page.
+	 * @return True, if the page was copied, false if it lies behind the end of the file.
+	 * @throws IOException Thrown, if the file could not be mapped.
+	 */
+	public synchronized boolean readPage(byte[] buffer, int pageNumber) throws IOException
+	{
+		ByteBuffer region = getRegion(pageNumber);
+		if (region == null) {
+			return false;
+		}
+		region.position((pageNumber % this.pagesPerRegion) * this.pageSize);
+		region.get(buffer, 0, this.pageSize);
+		return true;
+	}
+
+	/**
+	 * Copies the sequence of pages starting at the given page number into the given buffers.
+	 * The sequence may span several regions.
+	 *
+	 * @param buffers The buffers to copy the pages to, one per page.
+	 * @param firstPageNumber The number of the first page.
+	 * @return True, if all pages were copied, false if some lie behind the end of the file. In
+	 *         that case, the contents of the buffers are undefined.
+	 * @throws IOException Thrown, if the file could not be mapped.
+	 */
+	public synchronized boolean readPages(byte[][] buffers, int firstPageNumber) throws IOException
+	{
+		for (int i = 0; i < buffers.length; i++) {
+			if (!readPage(buffers[i], firstPageNumber + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Drops all mapped regions. Must be called when the file is truncated.
+	 */
+	public synchronized void invalidate()
+	{
+		this.regions = new MappedByteBuffer[0];
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets the region that contains the given page, mapping or re-mapping it if necessary.
+	 *
+	 * @return The region, or null, if the page lies behind the end of the file.
+	 */
+	private ByteBuffer getRegion(int pageNumber) throws IOException
+	{
+		int index = pageNumber / this.pagesPerRegion;
+		int offset = (pageNumber % this.pagesPerRegion) * this.pageSize;
+
+		if (index >= this.regions.length) {
+			MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+			System.arraycopy(this.regions, 0, grown, 0, this.regions.length);
+			this.regions = grown;
+		}
+
+		MappedByteBuffer region = this.regions[index];
+		if (region == null || region.capacity() < offset + this.pageSize) {
+			// the region is not mapped or ended with the file, check if the file has grown
+			long start = index * (long) this.pagesPerRegion * this.pageSize;
+			long available = this.channel.size() - start;
+			int pages = (int) Math.min(this.pagesPerRegion, available / this.pageSize);
+			if (pages * this.pageSize < offset + this.pageSize) {
+				return null;
+			}
+			region = this.channel.map(FileChannel.MapMode.READ_ONLY, start, pages * (long) this.pageSize);
+			this.regions[index] = region;
+		}
+		return region;
+	}
+}
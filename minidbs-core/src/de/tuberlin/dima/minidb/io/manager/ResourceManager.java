@@ -131,4 +131,31 @@ public abstract class ResourceManager
 	 */
 	public abstract CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type)
 	throws IOException, PageFormatException;
+	
+	/**
+	 * Checks whether this resource manager can create page objects for page data that is
+	 * already in a buffer, through {@link #wrapBuffer(byte[])}.
+	 * 
+	 * @return True, if buffers can be wrapped, false otherwise. The default is false.
+	 */
+	public boolean supportsBufferWrapping()
+	{
+		return false;
+	}
+	
+	/**
+	 * Creates the page object for the page data in the given buffer, as it was read from this
+	 * resource before, without initiating any I/O. Used to bring back pages whose data was kept
+	 * outside the cache.
+	 * 
+	 * @param buffer The buffer containing the binary page data.
+	 * @return The page object wrapping the page data in the buffer.
+	 * @throws IOException Thrown, if the buffer does not contain a valid page.
+	 * @throws UnsupportedOperationException Thrown, if this resource manager does not support
+	 *                                       wrapping buffers.
+	 */
+	public CacheableData wrapBuffer(byte[] buffer) throws IOException
+	{
+		throw new UnsupportedOperationException("This resource manager cannot wrap buffers.");
+	}
 }
@@ -0,0 +1,441 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataFormatException;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkBuilder;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * Loads a table and builds its indexes without going through the buffer pool, replacing their
+ * previous contents. The tuples are streamed in through {@link #addTuple(DataTuple)} or
+ * {@link #loadCSV(Reader, char)} and are put into pages that are filled one after the other and
+ * written in batches through {@link TableResourceManager#writePagesToResource(byte[][], CacheableData[])}.
+ * <p>
+ * When all tuples are loaded, {@link #finish()} builds the indexes one after the other: the table
+ * is read sequentially, the (key / RID) pairs of the index are sorted with the sort space of the
+ * query heap, spilling sorted runs to the temp space and merging them, if the pairs do not fit, and
+ * the sorted pairs are handed to a {@link BTreeBulkBuilder}, which builds the index bottom-up.
+ * Tuples whose key is NULL are not entered into the index.
+ * <p>
+ * Neither the table nor its indexes may have pages in the buffer pool while they are loaded, and the
+ * caller remains responsible for closing their resource managers.
+ */
+public class BulkLoader
+{
+	/**
+	 * Orders the sort tuples by key and then by RID.
+	 */
+	private static final Comparator<DataTuple> PAIR_ORDER = new Comparator<DataTuple>()
+	{
+		@Override
+		public int compare(DataTuple t1, DataTuple t2)
+		{
+			int cmp = t1.getField(0).compareTo(t2.getField(0));
+			return cmp != 0 ? cmp : t1.getField(1).compareTo(t2.getField(1));
+		}
+	};
+
+	private final TableResourceManager table;
+
+	private final QueryHeap heap;
+
+	private final TableSchema schema;
+
+	private final List<IndexResourceManager> indexes = new ArrayList<IndexResourceManager>();
+
+	private float fillFactor = BTreeBulkBuilder.DEFAULT_FILL_FACTOR;
+
+	/**
+	 * The buffers of the batch of table pages that are written next, also used to read the table.
+	 */
+	private final byte[][] buffers;
+
+	private final TablePage[] pages;
+
+	private int numPagesInBatch;
+
+	private long numTuples;
+
+	/**
+	 * The time the first tuple was added, or zero.
+	 */
+	private long startNanos;
+
+	private long tableLoadNanos;
+
+	private long indexBuildNanos;
+
+	private boolean finished;
+
+
+	/**
+	 * Creates a loader that writes the default number of pages at once. The table is truncated.
+	 *
+	 * @param table The manager of the table to load.
+	 * @param heap The query heap whose sort space the (key / RID) pairs are sorted with.
+	 * @throws IOException Thrown, if the table could not be truncated.
+	 */
+	public BulkLoader(TableResourceManager table, QueryHeap heap) throws IOException
+	{
+		this(table, heap, BTreeBulkBuilder.DEFAULT_PAGES_PER_WRITE);
+	}
+
+	/**
+	 * Creates a loader. The table is truncated.
+	 *
+	 * @param table The manager of the table to load.
+	 * @param heap The query heap whose sort space the (key / RID) pairs are sorted with.
+	 * @param pagesPerWrite The number of pages that are written, or read, at once.
+	 * @throws IOException Thrown, if the table could not be truncated.
+	 */
+	public BulkLoader(TableResourceManager table, QueryHeap heap, int pagesPerWrite) throws IOException
+	{
+		this.table = table;
+		this.heap = heap;
+		this.schema = table.getSchema();
+		this.buffers = new byte[Math.max(1, pagesPerWrite)][this.schema.getPageSize().getNumberOfBytes()];
+		this.pages = new TablePage[this.buffers.length];
+		table.truncate();
+	}
+
+	/**
+	 * Adds an index of the table, which is built when the loading is finished.
+	 *
+	 * @param index The manager of the index.
+	 */
+	public void addIndex(IndexResourceManager index)
+	{
+		if (index.getSchema().getColumnNumber() >= this.schema.getNumberOfColumns()) {
+			throw new IllegalArgumentException("The index does not belong to the loaded table.");
+		}
+		this.indexes.add(index);
+	}
+
+	/**
+	 * Sets the fraction of the entries of the index pages that are filled.
+	 *
+	 * @param fillFactor The fill factor, greater than zero and at most one.
+	 */
+	public void setFillFactor(float fillFactor)
+	{
+		if (fillFactor <= 0.0f || fillFactor > 1.0f) {
+			throw new IllegalArgumentException("The fill factor must be in (0, 1].");
+		}
+		this.fillFactor = fillFactor;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds a tuple to the table.
+	 *
+	 * @param tuple The tuple, with the columns of the table.
+	 * @throws IOException Thrown, if a batch of pages could not be written.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 */
+	public void addTuple(DataTuple tuple) throws IOException, PageFormatException
+	{
+		if (this.finished) {
+			throw new IllegalStateException("The loading has already been finished.");
+		}
+		if (this.startNanos == 0) {
+			this.startNanos = System.nanoTime();
+		}
+		boolean fresh = false;
+		if (this.numPagesInBatch == 0) {
+			newPage();
+			fresh = true;
+		}
+		while (!this.pages[this.numPagesInBatch - 1].insertTuple(tuple)) {
+			if (fresh) {
+				throw new IllegalArgumentException("The tuple does not fit into an empty page.");
+			}
+			newPage();
+			fresh = true;
+		}
+		this.numTuples++;
+	}
+
+	/**
+	 * Adds the tuples of a text input with one tuple per line and the fields separated by the given
+	 * delimiter, as the <tt>.tbl</tt> files of TPC-H. A delimiter behind the last field is allowed.
+	 * Fields are not quoted, an empty field is NULL in a nullable column.
+	 *
+	 * @param in The input.
+	 * @param delimiter The character separating the fields.
+	 * @return The number of loaded tuples.
+	 * @throws IOException Thrown, if the input could not be read or a batch of pages could not be
+	 *                     written.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 * @throws DataFormatException Thrown, if a line has the wrong number of fields or a field could
+	 *                             not be parsed.
+	 */
+	public long loadCSV(Reader in, char delimiter) throws IOException, PageFormatException, DataFormatException
+	{
+		BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		int numCols = this.schema.getNumberOfColumns();
+		long numLines = 0;
+		long numLoaded = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			numLines++;
+			if (line.length() == 0) {
+				continue;
+			}
+			DataField[] fields = new DataField[numCols];
+			int start = 0;
+			for (int col = 0; col < numCols; col++) {
+				int end = line.indexOf(delimiter, start);
+				if (end < 0) {
+					if (col < numCols - 1) {
+						throw new DataFormatException("Line " + numLines + " has " + (col + 1) + " fields, expected " + numCols + ".");
+					}
+					end = line.length();
+				}
+				fields[col] = parseField(line.substring(start, end), col, numLines);
+				start = end + 1;
+			}
+			if (start < line.length()) {
+				throw new DataFormatException("Line " + numLines + " has more than " + numCols + " fields.");
+			}
+			addTuple(new DataTuple(fields));
+			numLoaded++;
+		}
+		return numLoaded;
+	}
+
+	private DataField parseField(String value, int col, long lineNumber) throws DataFormatException
+	{
+		ColumnSchema column = this.schema.getColumn(col);
+		if (value.length() == 0 && column.isNullable()) {
+			return column.getDataType().getNullValue();
+		}
+		try {
+			return column.getDataType().getFromString(value);
+		}
+		catch (DataFormatException dfex) {
+			throw new DataFormatException("Line " + lineNumber + ", column '" + column.getColumnName() + "': " + dfex.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the last pages of the table and builds the indexes.
+	 *
+	 * @throws IOException Thrown, if a page could not be written or read.
+	 * @throws PageFormatException Thrown, if a page could not be initialized.
+	 * @throws QueryHeapException Thrown, if the pairs could not be sorted with the query heap.
+	 * @throws QueryExecutionException Thrown, if the query heap has too little sort space.
+	 */
+	public void finish() throws IOException, PageFormatException, QueryHeapException, QueryExecutionException
+	{
+		if (this.finished) {
+			return;
+		}
+		this.finished = true;
+		flush();
+		if (this.startNanos != 0) {
+			this.tableLoadNanos = System.nanoTime() - this.startNanos;
+		}
+
+		for (IndexResourceManager index : this.indexes) {
+			buildIndex(index);
+		}
+	}
+
+	/**
+	 * Reserves the next page of the table, writing the batch first, if it is full.
+	 */
+	private void newPage() throws IOException, PageFormatException
+	{
+		if (this.numPagesInBatch == this.buffers.length) {
+			flush();
+		}
+		byte[] buffer = this.buffers[this.numPagesInBatch];
+		Arrays.fill(buffer, (byte) 0);
+		this.pages[this.numPagesInBatch++] = this.table.reserveNewPage(buffer);
+	}
+
+	private void flush() throws IOException
+	{
+		if (this.numPagesInBatch == 0) {
+			return;
+		}
+		if (this.numPagesInBatch == this.buffers.length) {
+			this.table.writePagesToResource(this.buffers, this.pages);
+		}
+		else {
+			this.table.writePagesToResource(Arrays.copyOf(this.buffers, this.numPagesInBatch),
+					Arrays.copyOf(this.pages, this.numPagesInBatch));
+		}
+		Arrays.fill(this.pages, null);
+		this.numPagesInBatch = 0;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Builds an index over the loaded table.
+	 */
+	private void buildIndex(IndexResourceManager index)
+	throws IOException, PageFormatException, QueryHeapException, QueryExecutionException
+	{
+		long start = System.nanoTime();
+		int column = index.getSchema().getColumnNumber();
+		DataType[] types = new DataType[] { index.getSchema().getIndexedColumnSchema().getDataType(), DataType.ridType() };
+		int estimatedCardinality = (int) Math.min(Integer.MAX_VALUE, this.numTuples);
+		int heapId = this.heap.reserveSortHeap(types, estimatedCardinality);
+		try {
+			DataTuple[] pairs = this.heap.getSortArray(heapId);
+			int capacity = Math.min(pairs.length, this.heap.getMaximalTuplesForInternalSort(heapId));
+			int num = 0;
+			boolean spilled = false;
+
+			int first = this.table.getFirstDataPageNumber();
+			int last = this.table.getLastDataPageNumber();
+			for (int pageNumber = first; pageNumber <= last; pageNumber += this.buffers.length) {
+				int numPages = Math.min(this.buffers.length, last - pageNumber + 1);
+				byte[][] buffers = numPages == this.buffers.length ? this.buffers : Arrays.copyOf(this.buffers, numPages);
+				for (TablePage page : this.table.readPagesFromResource(buffers, pageNumber)) {
+					for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+						DataTuple tuple;
+						try {
+							tuple = page.getDataTuple(i, 1L << column, 1);
+						}
+						catch (PageTupleAccessException ptaex) {
+							throw new IOException("A record of page " + page.getPageNumber() + " could not be read.", ptaex);
+						}
+						if (tuple == null || tuple.getField(0).isNULL()) {
+							continue;
+						}
+						if (num == capacity) {
+							Arrays.sort(pairs, 0, num, PAIR_ORDER);
+							this.heap.writeTupleSequencetoTemp(heapId, pairs, num);
+							spilled = true;
+							num = 0;
+						}
+						pairs[num++] = new DataTuple(new DataField[] { tuple.getField(0), new RID(page.getPageNumber(), i) });
+					}
+				}
+			}
+			Arrays.sort(pairs, 0, num, PAIR_ORDER);
+
+			BTreeBulkBuilder builder = new BTreeBulkBuilder(index, this.fillFactor, this.buffers.length);
+			if (!spilled) {
+				for (int i = 0; i < num; i++) {
+					builder.addEntry(pairs[i].getField(0), (RID) pairs[i].getField(1));
+				}
+			}
+			else if (num > 0) {
+				this.heap.writeTupleSequencetoTemp(heapId, pairs, num);
+			}
+			// the sort array goes back to the heap's pool
+			Arrays.fill(pairs, 0, capacity, null);
+			if (spilled) {
+				merge(this.heap.getExternalSortedLists(heapId), builder);
+			}
+			builder.finish();
+		}
+		finally {
+			this.heap.releaseSortHeap(heapId);
+		}
+		this.indexBuildNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Merges the sorted runs into the builder.
+	 */
+	private static void merge(ExternalTupleSequenceIterator[] runs, BTreeBulkBuilder builder)
+	throws IOException, PageFormatException, QueryHeapException
+	{
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, runs.length));
+		for (ExternalTupleSequenceIterator iterator : runs) {
+			if (iterator.hasNext()) {
+				queue.add(new Run(iterator, iterator.next()));
+			}
+		}
+		while (!queue.isEmpty()) {
+			Run run = queue.poll();
+			builder.addEntry(run.head.getField(0), (RID) run.head.getField(1));
+			if (run.iterator.hasNext()) {
+				run.head = run.iterator.next();
+				queue.add(run);
+			}
+		}
+	}
+
+	/**
+	 * A sorted run and its smallest pair that has not been merged yet.
+	 */
+	private static final class Run implements Comparable<Run>
+	{
+		private final ExternalTupleSequenceIterator iterator;
+
+		private DataTuple head;
+
+		Run(ExternalTupleSequenceIterator iterator, DataTuple head)
+		{
+			this.iterator = iterator;
+			this.head = head;
+		}
+
+		@Override
+		public int compareTo(Run other)
+		{
+			return PAIR_ORDER.compare(this.head, other.head);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of tuples loaded so far.
+	 *
+	 * @return The number of tuples.
+	 */
+	public long getNumberOfTuples()
+	{
+		return this.numTuples;
+	}
+
+	/**
+	 * Gets the time from adding the first tuple until the last page of the table was written.
+	 *
+	 * @return The time in nanoseconds.
+	 */
+	public long getTableLoadNanos()
+	{
+		return this.tableLoadNanos;
+	}
+
+	/**
+	 * Gets the time spent building the indexes, including reading the table and sorting.
+	 *
+	 * @return The time in nanoseconds.
+	 */
+	public long getIndexBuildNanos()
+	{
+		return this.indexBuildNanos;
+	}
+}
@@ -0,0 +1,516 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * A batch of column vectors that a {@link TablePage} fills for a range of its records, without
+ * creating a {@link de.tuberlin.dima.minidb.core.DataTuple} or {@link DataField} per record.
+ * The batch is created and owned by the caller and is reused for many pages.
+ * <p>
+ * The batch holds the columns selected by a column bitmap, in table order. Row <i>r</i> of the batch
+ * holds the record at position <code>getFirstPosition() + r</code>. Each column is stored in a
+ * primitive vector, depending on its type:
+ * <ul>
+ *   <li><code>SMALL_INT</code>, <code>INT</code> and <code>DATE</code> in an <code>int[]</code>,</li>
+ *   <li><code>BIG_INT</code>, <code>TIME</code>, <code>TIMESTAMP</code> and <code>RID</code> in a <code>long[]</code>,</li>
+ *   <li><code>FLOAT</code> and <code>DOUBLE</code> in a <code>double[]</code>,</li>
+ *   <li><code>CHAR</code> and <code>VAR_CHAR</code> as offset and length pairs into the page buffer.</li>
+ * </ul>
+ * The vectors hold the values as encoded, so NULL values appear as their types' NULL representations.
+ * A <code>VAR_CHAR</code> NULL has offset and length zero.
+ * <p>
+ * The selection vector lists the rows whose records are not deleted, in ascending order. Callers that
+ * filter the batch further may overwrite it with a subset of itself.
+ * <p>
+ * The offsets into the page buffer are only valid as long as the page is pinned.
+ * <p>
+ * Pages that cannot decode their records into a batch, see {@link TablePage#readColumns(int, int, ColumnBatch)},
+ * fill it through {@link #readTuples(TablePage, LowLevelPredicate[], int, int)} from their tuples
+ * instead. The <code>CHAR</code> and <code>VAR_CHAR</code> values are then copied into a buffer of the
+ * batch.
+ */
+public class ColumnBatch
+{
+	/**
+	 * The number of rows a batch holds by default.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * The types of the columns, in table order.
+	 */
+	private final DataType[] types;
+
+	/**
+	 * The bitmap of the table columns held in this batch.
+	 */
+	private final long columnBitmap;
+
+	/**
+	 * The vectors for each column. Only the vectors matching the type of a column are set.
+	 */
+	private final int[][] intVectors;
+	private final long[][] longVectors;
+	private final double[][] doubleVectors;
+	private final int[][] offsetVectors;
+	private final int[][] lengthVectors;
+
+	/**
+	 * The rows that are selected, in ascending order.
+	 */
+	private final int[] selection;
+
+	/**
+	 * A buffer to re-encode values whose fields can only be created from their binary form.
+	 */
+	private final byte[] scratch = new byte[8];
+
+	/**
+	 * The buffer the <code>CHAR</code> and <code>VAR_CHAR</code> values are copied into, if the
+	 * batch is filled from tuples, or null.
+	 */
+	private byte[] tupleBuffer;
+
+	private final int capacity;
+
+	private byte[] buffer;
+
+	private int firstPosition;
+
+	private int numRows;
+
+	private int numSelected;
+
+
+	/**
+	 * Creates a batch for the columns of the given schema that are selected by the bitmap.
+	 *
+	 * @param schema The schema of the table whose pages fill the batch.
+	 * @param columnBitmap The bitmap describing which columns to hold. See the description of
+	 *                     {@link TablePage} for details on how the bitmaps describe the columns.
+	 * @param capacity The maximal number of rows the batch holds.
+	 */
+	public ColumnBatch(TableSchema schema, long columnBitmap, int capacity)
+	{
+		int numTableColumns = schema.getNumberOfColumns();
+		if (numTableColumns < 64 && (columnBitmap >>> numTableColumns) != 0) {
+			throw new IllegalArgumentException("The bitmap selects columns that do not exist in the table.");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive.");
+		}
+
+		int numCols = Long.bitCount(columnBitmap);
+		this.columnBitmap = columnBitmap;
+		this.capacity = capacity;
+		this.types = new DataType[numCols];
+		this.intVectors = new int[numCols][];
+		this.longVectors = new long[numCols][];
+		this.doubleVectors = new double[numCols][];
+		this.offsetVectors = new int[numCols][];
+		this.lengthVectors = new int[numCols][];
+		this.selection = new int[capacity];
+
+		long bitmap = columnBitmap;
+		for (int i = 0, col = 0; bitmap != 0; i++, bitmap >>>= 1) {
+			if ((bitmap & 0x1) == 0) {
+				continue;
+			}
+
+			DataType type = schema.getColumn(i).getDataType();
+			this.types[col] = type;
+			switch (type.getBasicType()) {
+			case SMALL_INT:
+			case INT:
+			case DATE:
+				this.intVectors[col] = new int[capacity];
+				break;
+			case BIG_INT:
+			case TIME:
+			case TIMESTAMP:
+			case RID:
+				this.longVectors[col] = new long[capacity];
+				break;
+			case FLOAT:
+			case DOUBLE:
+				this.doubleVectors[col] = new double[capacity];
+				break;
+			case CHAR:
+			case VAR_CHAR:
+				this.offsetVectors[col] = new int[capacity];
+				this.lengthVectors[col] = new int[capacity];
+				break;
+			}
+			col++;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the bitmap of the table columns held in this batch.
+	 *
+	 * @return The column bitmap.
+	 */
+	public long getColumnBitmap()
+	{
+		return this.columnBitmap;
+	}
+
+	/**
+	 * Gets the number of columns held in this batch.
+	 *
+	 * @return The number of columns.
+	 */
+	public int getNumberOfColumns()
+	{
+		return this.types.length;
+	}
+
+	/**
+	 * Gets the type of a column of this batch.
+	 *
+	 * @param column The column in the batch, counting only the held columns.
+	 * @return The type of the column.
+	 */
+	public DataType getColumnType(int column)
+	{
+		return this.types[column];
+	}
+
+	/**
+	 * Gets the maximal number of rows this batch holds.
+	 *
+	 * @return The capacity of the batch.
+	 */
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+	/**
+	 * Gets the number of rows currently in the batch, including those that are not selected.
+	 *
+	 * @return The number of rows.
+	 */
+	public int getNumberOfRows()
+	{
+		return this.numRows;
+	}
+
+	/**
+	 * Gets the position of the record in row 0 on its page.
+	 *
+	 * @return The position of the first record.
+	 */
+	public int getFirstPosition()
+	{
+		return this.firstPosition;
+	}
+
+	/**
+	 * Gets the buffer of the page the batch has been filled from. The offsets of the
+	 * <code>CHAR</code> and <code>VAR_CHAR</code> columns point into this buffer.
+	 *
+	 * @return The page buffer.
+	 */
+	public byte[] getBuffer()
+	{
+		return this.buffer;
+	}
+
+	/**
+	 * Gets the vector of a <code>SMALL_INT</code>, <code>INT</code> or <code>DATE</code> column.
+	 *
+	 * @param column The column in the batch.
+	 * @return The vector of the column, or null, if the column has a different type.
+	 */
+	public int[] getIntVector(int column)
+	{
+		return this.intVectors[column];
+	}
+
+	/**
+	 * Gets the vector of a <code>BIG_INT</code>, <code>TIME</code>, <code>TIMESTAMP</code>
+	 * or <code>RID</code> column.
+	 *
+	 * @param column The column in the batch.
+	 * @return The vector of the column, or null, if the column has a different type.
+	 */
+	public long[] getLongVector(int column)
+	{
+		return this.longVectors[column];
+	}
+
+	/**
+	 * Gets the vector of a <code>FLOAT</code> or <code>DOUBLE</code> column.
+	 *
+	 * @param column The column in the batch.
+	 * @return The vector of the column, or null, if the column has a different type.
+	 */
+	public double[] getDoubleVector(int column)
+	{
+		return this.doubleVectors[column];
+	}
+
+	/**
+	 * Gets the offsets into the page buffer of a <code>CHAR</code> or <code>VAR_CHAR</code> column.
+	 *
+	 * @param column The column in the batch.
+	 * @return The offsets of the column, or null, if the column has a different type.
+	 */
+	public int[] getOffsetVector(int column)
+	{
+		return this.offsetVectors[column];
+	}
+
+	/**
+	 * Gets the lengths in bytes of the values of a <code>CHAR</code> or <code>VAR_CHAR</code> column.
+	 *
+	 * @param column The column in the batch.
+	 * @return The lengths of the column, or null, if the column has a different type.
+	 */
+	public int[] getLengthVector(int column)
+	{
+		return this.lengthVectors[column];
+	}
+
+	/**
+	 * Gets the selection vector. Its first {@link #getNumberOfSelectedRows()} entries are the
+	 * selected rows, in ascending order.
+	 *
+	 * @return The selection vector.
+	 */
+	public int[] getSelection()
+	{
+		return this.selection;
+	}
+
+	/**
+	 * Gets the number of selected rows.
+	 *
+	 * @return The number of valid entries in the selection vector.
+	 */
+	public int getNumberOfSelectedRows()
+	{
+		return this.numSelected;
+	}
+
+	/**
+	 * Sets the number of selected rows, after the selection vector has been narrowed.
+	 *
+	 * @param numSelected The number of valid entries in the selection vector.
+	 */
+	public void setNumberOfSelectedRows(int numSelected)
+	{
+		if (numSelected < 0 || numSelected > this.numRows) {
+			throw new IllegalArgumentException("The number of selected rows must be between 0 and " + this.numRows + ".");
+		}
+		this.numSelected = numSelected;
+	}
+
+	/**
+	 * Starts filling the batch from a page. Called by the page before it writes the vectors.
+	 *
+	 * @param buffer The buffer of the page.
+	 * @param firstPosition The position of the record that goes to row 0.
+	 * @param numRows The number of rows that will be filled.
+	 * @param numSelected The number of rows that will be selected.
+	 */
+	public void reset(byte[] buffer, int firstPosition, int numRows, int numSelected)
+	{
+		if (numRows > this.capacity) {
+			throw new IllegalArgumentException("The batch holds at most " + this.capacity + " rows.");
+		}
+		this.buffer = buffer;
+		this.firstPosition = firstPosition;
+		this.numRows = numRows;
+		this.numSelected = numSelected;
+	}
+
+	/**
+	 * Fills the batch with the columns it holds for the records in the given range that are not
+	 * deleted and pass all predicates, as {@link TablePage#readColumns(LowLevelPredicate[], int, int, ColumnBatch)}
+	 * does, but from the tuples the page creates with
+	 * {@link TablePage#getDataTuple(LowLevelPredicate[], int, long, int)}. This works with every page
+	 * implementation and is meant for those that do not support decoding their records into a batch.
+	 *
+	 * @param page The page to take the tuples from. It must have the schema the batch was created for.
+	 * @param preds The predicates the tuples must pass, or null.
+	 * @param startPosition The position of the first record to take.
+	 * @param endPosition The position after the last record to take.
+	 *
+	 * @return The number of selected rows, i.e. records in the range that qualify.
+	 *
+	 * @throws PageTupleAccessException Thrown, if the range is not within the records on the page.
+	 * @throws PageExpiredException Thrown, if the operation is performed
+	 * 								on a page that is identified to be expired.
+	 */
+	public int readTuples(TablePage page, LowLevelPredicate[] preds, int startPosition, int endPosition)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		if (startPosition < 0 || startPosition > endPosition) {
+			throw new PageTupleAccessException(startPosition, "range start negative or after its end");
+		}
+		if (endPosition > page.getNumRecordsOnPage()) {
+			throw new PageTupleAccessException(endPosition, "range end larger than the number of tuple on the page");
+		}
+		int numRows = endPosition - startPosition;
+		if (this.tupleBuffer == null) {
+			this.tupleBuffer = new byte[256];
+		}
+		reset(this.tupleBuffer, startPosition, numRows, 0);
+
+		int numCols = this.types.length;
+		// offset zero marks a VAR_CHAR NULL, so the values start behind it
+		int bufferEnd = 1;
+		for (int row = 0; row < numRows; row++) {
+			DataTuple tuple = preds == null
+				? page.getDataTuple(startPosition + row, this.columnBitmap, numCols)
+				: page.getDataTuple(preds, startPosition + row, this.columnBitmap, numCols);
+			if (tuple == null) {
+				continue;
+			}
+			for (int col = 0; col < numCols; col++) {
+				bufferEnd = setField(row, col, tuple.getField(col), bufferEnd);
+			}
+			this.selection[this.numSelected++] = row;
+		}
+		return this.numSelected;
+	}
+
+	/**
+	 * Encodes a field into the vector of its column, in the representation a page decodes it to.
+	 *
+	 * @return The end of the values in the tuple buffer.
+	 */
+	private int setField(int row, int column, DataField field, int bufferEnd)
+	{
+		DataType type = this.types[column];
+		BasicType basicType = type.getBasicType();
+		if (basicType == BasicType.CHAR || basicType == BasicType.VAR_CHAR) {
+			int length = basicType == BasicType.CHAR ? type.getNumberOfBytes() : field.getNumberOfBytes();
+			if (basicType == BasicType.VAR_CHAR && field.isNULL()) {
+				this.offsetVectors[column][row] = 0;
+				this.lengthVectors[column][row] = 0;
+				return bufferEnd;
+			}
+			// a CHAR NULL is encoded in two bytes, whatever the length of the type
+			int needed = bufferEnd + Math.max(length, 2);
+			if (needed > this.tupleBuffer.length) {
+				this.tupleBuffer = Arrays.copyOf(this.tupleBuffer, Math.max(needed, 2 * this.tupleBuffer.length));
+				this.buffer = this.tupleBuffer;
+			}
+			// unused bytes of a CHAR are zero, as on the page
+			Arrays.fill(this.tupleBuffer, bufferEnd, needed, (byte) 0);
+			field.encodeBinary(this.tupleBuffer, bufferEnd);
+			this.offsetVectors[column][row] = bufferEnd;
+			this.lengthVectors[column][row] = length;
+			return needed;
+		}
+
+		field.encodeBinary(this.scratch, 0);
+		switch (basicType) {
+		case SMALL_INT:
+			this.intVectors[column][row] = (short) ((this.scratch[0] & 0xff) | (this.scratch[1] << 8));
+			break;
+		case INT:
+		case DATE:
+			this.intVectors[column][row] = IntField.getIntFromBinary(this.scratch, 0);
+			break;
+		case BIG_INT:
+		case TIME:
+		case TIMESTAMP:
+		case RID:
+			this.longVectors[column][row] = decodeLong(this.scratch, 0);
+			break;
+		case FLOAT:
+			this.doubleVectors[column][row] = Float.intBitsToFloat(IntField.getIntFromBinary(this.scratch, 0));
+			break;
+		case DOUBLE:
+			this.doubleVectors[column][row] = Double.longBitsToDouble(decodeLong(this.scratch, 0));
+			break;
+		default:
+			throw new IllegalStateException("Unknown type " + type + ".");
+		}
+		return bufferEnd;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Creates the field for a value of the batch. This is meant for the boundary where the
+	 * values leave the batch as tuples.
+	 *
+	 * @param row The row of the value.
+	 * @param column The column of the value in the batch.
+	 * @return The field holding the value.
+	 */
+	public DataField getField(int row, int column)
+	{
+		DataType type = this.types[column];
+		switch (type.getBasicType()) {
+		case SMALL_INT:
+			return new SmallIntField((short) this.intVectors[column][row]);
+		case INT:
+			return new IntField(this.intVectors[column][row]);
+		case BIG_INT:
+			return new BigIntField(this.longVectors[column][row]);
+		case FLOAT:
+			return new FloatField((float) this.doubleVectors[column][row]);
+		case DOUBLE:
+			return new DoubleField(this.doubleVectors[column][row]);
+		case RID:
+			return new RID(this.longVectors[column][row]);
+		case DATE:
+			IntField.encodeIntAsBinary(this.intVectors[column][row], this.scratch, 0);
+			return type.getFromBinary(this.scratch, 0);
+		case TIME:
+		case TIMESTAMP:
+			encodeLong(this.longVectors[column][row], this.scratch, 0);
+			return type.getFromBinary(this.scratch, 0);
+		case CHAR:
+		case VAR_CHAR:
+			int offset = this.offsetVectors[column][row];
+			int length = this.lengthVectors[column][row];
+			if (type.getBasicType() == BasicType.VAR_CHAR && offset == 0 && length == 0) {
+				return type.getNullValue();
+			}
+			return type.getFromBinary(this.buffer, offset, length);
+		default:
+			throw new IllegalStateException("Unknown type " + type + ".");
+		}
+	}
+
+	private static void encodeLong(long value, byte[] buffer, int offset)
+	{
+		for (int i = 0; i < 8; i++) {
+			buffer[offset + i] = (byte) (value >>> (8 * i));
+		}
+	}
+
+	private static long decodeLong(byte[] buffer, int offset)
+	{
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value |= (buffer[offset + i] & 0xffL) << (8 * i);
+		}
+		return value;
+	}
+}
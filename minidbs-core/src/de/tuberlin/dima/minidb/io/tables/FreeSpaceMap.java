@@ -0,0 +1,262 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+/**
+ * Tracks approximately how many bytes are free on each data page of a table, so that inserts
+ * can fill pages with room rather than always appending new pages. The free space of a page is
+ * kept in one byte, as the number of whole <i>units</i> of 1/256 of the page size that are free.
+ * The map hence never reports more free space than a page had when it was last recorded, but
+ * may report up to one unit less.
+ * <p>
+ * The map is held in memory and persisted in a file next to the table's file, named after it
+ * with the suffix {@link #FILE_SUFFIX}. The file is only written when the map changed. The
+ * entries are hints: a page may have changed since its entry was recorded, for example if the
+ * table was modified without the map being saved. Pages without an entry count as full.
+ * <p>
+ * All methods are synchronized on the map.
+ */
+public final class FreeSpaceMap
+{
+	/**
+	 * The suffix appended to the name of a table's file to name the file of its free-space map.
+	 */
+	public static final String FILE_SUFFIX = ".fsm";
+
+	/**
+	 * The magic number that identifies a file as a free-space map.
+	 */
+	private static final int MAGIC_NUMBER = 0xF5EE5BAC;
+
+	/**
+	 * The largest number of units an entry holds.
+	 */
+	private static final int MAX_UNITS = 255;
+
+	/**
+	 * The file the map is persisted in, or null, if it is held in memory only.
+	 */
+	private final File file;
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	private final int pageSize;
+
+	/**
+	 * The number of bytes in one unit of free space.
+	 */
+	private final int unit;
+
+	/**
+	 * The number of the first data page, whose entry is the first in the map.
+	 */
+	private final int firstPageNumber;
+
+	/**
+	 * The free units of the pages, by page number minus the first page number.
+	 */
+	private byte[] entries;
+
+	/**
+	 * The number of pages that have an entry.
+	 */
+	private int numPages;
+
+	/**
+	 * The entry at which the next search starts, the one found by the last search.
+	 */
+	private int searchStart;
+
+	/**
+	 * Flag indicating that the map changed since it was last written.
+	 */
+	private boolean modified;
+
+
+	/**
+	 * Creates an empty map, in which all pages count as full.
+	 *
+	 * @param file The file to persist the map in, or null, if it is held in memory only.
+	 * @param pageSize The size of a page in bytes.
+	 * @param firstPageNumber The number of the first data page of the table.
+	 */
+	public FreeSpaceMap(File file, int pageSize, int firstPageNumber)
+	{
+		this.file = file;
+		this.pageSize = pageSize;
+		this.unit = Math.max(1, pageSize / (MAX_UNITS + 1));
+		this.firstPageNumber = firstPageNumber;
+		this.entries = new byte[64];
+	}
+
+	/**
+	 * Loads the map from the given file. If the file does not exist, or was written for a table
+	 * with a different page size or first data page, the map starts empty.
+	 *
+	 * @param file The file the map is persisted in.
+	 * @param pageSize The size of a page in bytes.
+	 * @param firstPageNumber The number of the first data page of the table.
+	 * @return The loaded map.
+	 * @throws IOException Thrown, if the file exists but could not be read.
+	 */
+	public static FreeSpaceMap load(File file, int pageSize, int firstPageNumber) throws IOException
+	{
+		FreeSpaceMap map = new FreeSpaceMap(file, pageSize, firstPageNumber);
+		if (!file.exists()) {
+			return map;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC_NUMBER || in.readInt() != pageSize || in.readInt() != firstPageNumber) {
+				// written for another table, the entries would be meaningless
+				return map;
+			}
+			int numPages = in.readInt();
+			if (numPages < 0) {
+				return map;
+			}
+			map.entries = new byte[Math.max(64, numPages)];
+			in.readFully(map.entries, 0, numPages);
+			map.numPages = numPages;
+		}
+		finally {
+			in.close();
+		}
+		return map;
+	}
+
+	/**
+	 * Gets the file of the free-space map that belongs to the given table file.
+	 *
+	 * @param tableFile The file of the table.
+	 * @return The file of the table's free-space map.
+	 */
+	public static File getFile(File tableFile)
+	{
+		return new File(tableFile.getPath() + FILE_SUFFIX);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Records how many bytes are free on the given page.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @param freeBytes The number of bytes free on the page, as {@link TablePage#getFreeSpace()} returns it.
+	 */
+	public synchronized void update(int pageNumber, int freeBytes)
+	{
+		int index = pageNumber - this.firstPageNumber;
+		if (index < 0) {
+			return;
+		}
+		byte units = (byte) Math.min(MAX_UNITS, Math.max(0, freeBytes) / this.unit);
+		if (index >= this.numPages) {
+			if (units == 0) {
+				// pages without an entry count as full anyway
+				return;
+			}
+			if (index >= this.entries.length) {
+				byte[] grown = new byte[Math.max(index + 1, 2 * this.entries.length)];
+				System.arraycopy(this.entries, 0, grown, 0, this.numPages);
+				this.entries = grown;
+			}
+			this.numPages = index + 1;
+		}
+		else if (this.entries[index] == units) {
+			return;
+		}
+		this.entries[index] = units;
+		this.modified = true;
+	}
+
+	/**
+	 * Gets how many bytes were free on the given page when it was last recorded, rounded down
+	 * to whole units.
+	 *
+	 * @param pageNumber The number of the page.
+	 * @return The recorded number of free bytes, or zero, if the page has no entry.
+	 */
+	public synchronized int getFreeSpace(int pageNumber)
+	{
+		int index = pageNumber - this.firstPageNumber;
+		if (index < 0 || index >= this.numPages) {
+			return 0;
+		}
+		return (this.entries[index] & 0xff) * this.unit;
+	}
+
+	/**
+	 * Finds a page that had at least the given number of bytes free when it was last recorded.
+	 * The search continues where the previous one found its page, so that consecutive inserts
+	 * fill one page before moving to the next one.
+	 *
+	 * @param numBytes The number of bytes needed.
+	 * @param lastPageNumber The number of the last data page of the table. Entries of pages
+	 *                       after it are ignored.
+	 * @return The number of the page, or -1, if no page has enough bytes free.
+	 */
+	public synchronized int findPage(int numBytes, int lastPageNumber)
+	{
+		int units = (numBytes + this.unit - 1) / this.unit;
+		int num = Math.min(this.numPages, lastPageNumber - this.firstPageNumber + 1);
+		if (units > MAX_UNITS || num <= 0) {
+			return -1;
+		}
+		int start = this.searchStart < num ? this.searchStart : 0;
+		for (int i = 0, index = start; i < num; i++, index = index + 1 < num ? index + 1 : 0) {
+			if ((this.entries[index] & 0xff) >= units) {
+				this.searchStart = index;
+				return this.firstPageNumber + index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes all entries, so that all pages count as full.
+	 */
+	public synchronized void clear()
+	{
+		this.modified |= this.numPages > 0;
+		this.entries = new byte[64];
+		this.numPages = 0;
+		this.searchStart = 0;
+	}
+
+	/**
+	 * Writes the map to its file, if it changed since it was last written.
+	 *
+	 * @throws IOException Thrown, if the file could not be written.
+	 */
+	public synchronized void flush() throws IOException
+	{
+		if (!this.modified || this.file == null) {
+			return;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file)));
+		try {
+			out.writeInt(MAGIC_NUMBER);
+			out.writeInt(this.pageSize);
+			out.writeInt(this.firstPageNumber);
+			out.writeInt(this.numPages);
+			out.write(this.entries, 0, this.numPages);
+		}
+		finally {
+			out.close();
+		}
+		this.modified = false;
+	}
+}
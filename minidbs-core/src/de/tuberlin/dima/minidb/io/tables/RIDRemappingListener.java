@@ -0,0 +1,23 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+/**
+ * Receives the changes of RIDs caused by the compaction of table pages, for example to patch the
+ * entries of the table's indexes. Records only move within their page, so the page number of a
+ * RID stays the same and only its tuple index changes.
+ *
+ * @see TableVacuum
+ */
+public interface RIDRemappingListener
+{
+	/**
+	 * Called after a page has been compacted, before any other operation on the page.
+	 *
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param pageNumber The number of the compacted page.
+	 * @param newPositions For each former position of a record on the page its new position, or -1,
+	 *                     if the record was deleted and has been dropped. Positions that did not
+	 *                     change map to themselves.
+	 */
+	public void recordsMoved(int resourceId, int pageNumber, int[] newPositions);
+}
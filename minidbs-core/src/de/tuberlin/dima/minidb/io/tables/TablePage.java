@@ -21,6 +21,11 @@ import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
  * <p>
  * All methods return the tuples with their fields in the order as on the page.
  * <p>
+ * Some methods were added to the interface later and are optional: their default implementations
+ * throw an <code>UnsupportedOperationException</code>, so that page implementations written against
+ * the original interface still load. These are the methods for deleted records, free space and slot
+ * reuse, the methods that decode records into column batches, and those for compaction.
+ * <p>
  * Several methods contain a bitmap to describe which columns are supposed to be fetched and which
  * ones are not fetched. In such a bitmap, a <i>1</i> at position <i>n</i> (counting from the least
  * significant bit) means that the <i>n</i>'th column should be fetched. In that sense, a tuple is
@@ -80,12 +85,45 @@ public interface TablePage extends CacheableData
 	 */
 	public int getNumRecordsOnPage() throws PageExpiredException;
 	
+	/**
+	 * Gets how many of the records on this page are marked as deleted. Their slots are reused
+	 * by later inserts. The number retrieved by this function is the value from the header
+	 * bytes 20 - 23. Pages written before that field was maintained hold zero there, so the
+	 * number is a lower bound for them.
+	 * 
+	 * @return The number of deleted records on this page.
+	 * @throws PageExpiredException Thrown, if the operation is performed 
+	 * 								on a page that is identified to be expired. 
+	 */
+	public default int getNumDeletedRecordsOnPage() throws PageExpiredException
+	{
+		throw new UnsupportedOperationException("getNumDeletedRecordsOnPage is not supported by " + getClass().getName() + ".");
+	}
+	
+	/**
+	 * Gets how many bytes are free on this page for new tuples: the bytes between the record
+	 * sequence and the variable-length-chunk, plus the slots of the deleted records. A tuple
+	 * without variable-length fields fits, if its record takes at most this many bytes. A tuple
+	 * with variable-length fields may not fit even so, because its fields cannot use the slots
+	 * of deleted records.
+	 * 
+	 * @return The number of bytes free for new tuples.
+	 * @throws PageExpiredException Thrown, if the operation is performed 
+	 * 								on a page that is identified to be expired. 
+	 */
+	public default int getFreeSpace() throws PageExpiredException
+	{
+		throw new UnsupportedOperationException("getFreeSpace is not supported by " + getClass().getName() + ".");
+	}
+	
 	
 	// ------------------------------------------------------------------------
 	
 	/**
 	 * Inserts a tuple into the page by inserting the variable-length fields into the dedicated
 	 * part of the page and inserting the record for the tuple into the record sequence.
+	 * The record takes the slot of a deleted record, if there is one, as described for
+	 * {@link #insertTupleAndGetPosition(DataTuple)}.
 	 * <p>
 	 * If the method is not successful in inserting the tuple due to the fact that there is
 	 * not enough space left, it returns false, but does not throw an exception.
@@ -99,9 +137,28 @@ public interface TablePage extends CacheableData
 	 */
 	public boolean insertTuple(DataTuple tuple) throws PageFormatException, PageExpiredException;
 	
+	/**
+	 * Inserts a tuple into the page as {@link #insertTuple(DataTuple)} does, and returns the
+	 * position of its record. If records on the page are marked as deleted, the tuple's record
+	 * takes the slot of the first of them, rather than being appended to the record sequence.
+	 * The variable-length fields of the deleted record are not reclaimed.
+	 * 
+	 * @param tuple The tuple to be inserted.
+	 * @return The position of the tuple's record, or -1, if the tuple was not inserted.
+	 * @throws PageFormatException Thrown, if the format of the page is invalid, such as that
+	 *                             current offset to the variable-length-chunk is invalid.
+	 * @throws PageExpiredException Thrown, if the operation is performed 
+	 * 								on a page that is identified to be expired. 
+	 */
+	public default int insertTupleAndGetPosition(DataTuple tuple) throws PageFormatException, PageExpiredException
+	{
+		throw new UnsupportedOperationException("insertTupleAndGetPosition is not supported by " + getClass().getName() + ".");
+	}
+	
 	
 	/**
-	 * Deletes a tuple by setting the tombstone flag to 1.
+	 * Deletes a tuple by setting the tombstone flag to 1. The record is counted in the number of
+	 * deleted records, unless its tombstone flag was already set.
 	 * 
 	 * @param position The position of the tuple's record. The first record has position 0.
 	 * @throws PageTupleAccessException Thrown, if the index is negative or larger than the number
@@ -205,7 +262,56 @@ public interface TablePage extends CacheableData
 	 */
 	public TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap)
 	throws PageTupleAccessException, PageExpiredException;
-	
+
+	/**
+	 * Decodes the columns held by the given batch for the records from <code>startPosition</code>
+	 * (inclusive) to <code>endPosition</code> (exclusive) into the batch's column vectors, without
+	 * creating tuples or fields. The selection vector of the batch is set to the rows whose
+	 * tombstone bit is not set. Records whose tombstone bit is set are not decoded.
+	 *
+	 * @param startPosition The position of the first record to decode.
+	 * @param endPosition The position after the last record to decode.
+	 * @param batch The batch to fill. It must have been created for the schema of this page and
+	 *              hold at least <code>endPosition - startPosition</code> rows.
+	 *
+	 * @return The number of selected rows, i.e. records in the range that are not deleted.
+	 *
+	 * @throws PageTupleAccessException Thrown, if the range is not within the records on the page.
+	 * @throws PageExpiredException Thrown, if the operation is performed
+	 * 								on a page that is identified to be expired.
+	 */
+	public default int readColumns(int startPosition, int endPosition, ColumnBatch batch)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		throw new UnsupportedOperationException("readColumns is not supported by " + getClass().getName() + ".");
+	}
+
+	/**
+	 * Decodes the columns held by the given batch for the records in the given range that are not
+	 * deleted and pass all predicates, as {@link #readColumns(int, int, ColumnBatch)} does. The
+	 * predicates are evaluated on the binary records, before anything is decoded, so the columns
+	 * they refer to need not be held by the batch. The selection vector of the batch is set to the
+	 * rows whose records qualify.
+	 *
+	 * @param preds An array of predicates that the tuple must pass. The predicates are conjunctively
+	 *              connected, so if any of the predicates evaluates to false, the tuple is discarded.
+	 * @param startPosition The position of the first record to decode.
+	 * @param endPosition The position after the last record to decode.
+	 * @param batch The batch to fill. It must have been created for the schema of this page and
+	 *              hold at least <code>endPosition - startPosition</code> rows.
+	 *
+	 * @return The number of selected rows, i.e. records in the range that qualify.
+	 *
+	 * @throws PageTupleAccessException Thrown, if the range is not within the records on the page.
+	 * @throws PageExpiredException Thrown, if the operation is performed
+	 * 								on a page that is identified to be expired.
+	 */
+	public default int readColumns(LowLevelPredicate[] preds, int startPosition, int endPosition, ColumnBatch batch)
+	throws PageTupleAccessException, PageExpiredException
+	{
+		throw new UnsupportedOperationException("readColumns with predicates is not supported by " + getClass().getName() + ".");
+	}
+
 	/**
 	 * Creates an iterator as the function <code>getIterator()</code> does. In addition to the tuples,
 	 * this iterator the RID that referenced the tuple's record.
@@ -218,5 +324,38 @@ public interface TablePage extends CacheableData
 	 */
 	public TupleRIDIterator getIteratorWithRID() throws PageTupleAccessException, PageExpiredException;
 	
+	/**
+	 * Gets how many bytes a compaction of this page would reclaim: the slots of the deleted
+	 * records and the bytes in the variable-length-chunk that no live record refers to.
+	 * 
+	 * @return The number of bytes that {@link #compact()} would reclaim.
+	 * @throws PageExpiredException Thrown, if the operation is performed 
+	 * 								on a page that is identified to be expired. 
+	 */
+	public default int getReclaimableSpace() throws PageExpiredException
+	{
+		throw new UnsupportedOperationException("getReclaimableSpace is not supported by " + getClass().getName() + ".");
+	}
+	
+	/**
+	 * Compacts the page: the records that are not deleted are moved to the front of the record
+	 * sequence, in their order, and their variable-length fields are rewritten without gaps at
+	 * the end of the page. Deleted records and the variable-length fields of deleted records are
+	 * dropped. Afterwards, no record on the page is marked as deleted.
+	 * <p>
+	 * The positions of the records change, so RIDs referring to records of this page must be
+	 * mapped through the returned array. Tuples, iterators and batches obtained from the page
+	 * before are no longer valid.
+	 * 
+	 * @return For each former position of a record its new position, or -1, if the record was
+	 *         deleted and has been dropped.
+	 * @throws PageExpiredException Thrown, if the operation is performed 
+	 * 								on a page that is identified to be expired. 
+	 */
+	public default int[] compact() throws PageExpiredException
+	{
+		throw new UnsupportedOperationException("compact is not supported by " + getClass().getName() + ".");
+	}
+	
 
 }
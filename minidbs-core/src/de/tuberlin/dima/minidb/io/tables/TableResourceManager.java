@@ -19,6 +19,7 @@ import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.io.cache.CacheableData;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.MappedPageReader;
 import de.tuberlin.dima.minidb.io.manager.ResourceManager;
 
 /**
@@ -80,6 +81,17 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	private int lastDataPageNumber;
 
+	/**
+	 * The reader for the memory mapped file, if pages are read through a mapping, otherwise null.
+	 */
+	private volatile MappedPageReader mappedReader;
+
+	/**
+	 * The map of the free space on the data pages. Held in memory only, unless the table
+	 * was opened or created through a file.
+	 */
+	private FreeSpaceMap freeSpaceMap;
+
 	// ------------------------------------------------------------------------
 	//                        Constructor & Life-Cycle
 	// ------------------------------------------------------------------------
@@ -130,6 +142,7 @@ public class TableResourceManager extends ResourceManager {
 		// find page numbers
 		this.firstDataPageNumber = (int) (this.ioChannel.position() / this.schema.getPageSize().getNumberOfBytes()) + 1;
 		this.lastDataPageNumber = (int) ((this.ioChannel.size() - 1) / this.schema.getPageSize().getNumberOfBytes());
+		this.freeSpaceMap = new FreeSpaceMap(null, this.pageSize, this.firstDataPageNumber);
 	}
 
 	/**
@@ -181,6 +194,7 @@ public class TableResourceManager extends ResourceManager {
 		// consumed by the header.
 		this.firstDataPageNumber = (int) (this.ioChannel.position() / schema.getPageSize().getNumberOfBytes()) + 1;
 		this.lastDataPageNumber = this.firstDataPageNumber - 1;
+		this.freeSpaceMap = new FreeSpaceMap(null, this.pageSize, this.firstDataPageNumber);
 	}
 
 	/*
@@ -189,7 +203,9 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	@Override
 	public synchronized void closeResource() throws IOException {
+		this.mappedReader = null;
 		try {
+			this.freeSpaceMap.flush();
 			this.theLock.release();
 			this.ioChannel.close();
 		} catch (Throwable t) {
@@ -274,6 +290,28 @@ public class TableResourceManager extends ResourceManager {
 		return this.lastDataPageNumber;
 	}
 
+	/**
+	 * Makes this table manager read pages from memory mapped regions of the table file, rather than
+	 * through read calls on the file channel. Pages that are not (yet) in the file are still read
+	 * through the channel.
+	 * 
+	 * @see MappedPageReader
+	 */
+	public synchronized void enableMappedReads() {
+		if (this.mappedReader == null) {
+			this.mappedReader = new MappedPageReader(this.ioChannel, this.pageSize);
+		}
+	}
+
+	/**
+	 * Checks whether this table manager reads pages from memory mapped regions of the table file.
+	 * 
+	 * @return True, if pages are read through a mapping, false otherwise.
+	 */
+	public boolean isMappedReadsEnabled() {
+		return this.mappedReader != null;
+	}
+
 	// ------------------------------------------------------------------------
 	//                          I/O Methods
 	// ------------------------------------------------------------------------
@@ -284,8 +322,53 @@ public class TableResourceManager extends ResourceManager {
 	 */
 	@Override
 	public synchronized void truncate() throws IOException {
+		// the mapped regions must not outlive the truncated parts of the file
+		if (this.mappedReader != null) {
+			this.mappedReader.invalidate();
+		}
 		this.ioChannel.truncate(this.firstDataPageNumber * this.schema.getPageSize().getNumberOfBytes());
 		this.lastDataPageNumber = this.firstDataPageNumber - 1;
+		this.freeSpaceMap.clear();
+	}
+
+	/**
+	 * Finds a data page that had at least the given number of bytes free, according to the
+	 * free-space map of the table. The map is a hint: the page may have less space by now, in
+	 * which case the caller should record the page's actual free space through
+	 * {@link #recordFreeSpace(int, int)} and search again.
+	 * 
+	 * @param numBytes
+	 *        The number of bytes needed for the tuple's record and its variable-length fields.
+	 * @return The number of the page, or -1, if no page is known to have enough bytes free.
+	 */
+	public int findPageWithFreeSpace(int numBytes) {
+		return this.freeSpaceMap.findPage(numBytes, this.lastDataPageNumber);
+	}
+
+	/**
+	 * Records the number of bytes free on a data page in the free-space map of the table. Pages
+	 * written through this manager are recorded automatically when they are written. Whoever
+	 * frees space on a page, for example by deleting tuples, should record it here, so that
+	 * inserts find the space before the page is written.
+	 * 
+	 * @param pageNumber
+	 *        The number of the page.
+	 * @param numBytes
+	 *        The number of bytes free on the page, as {@link TablePage#getFreeSpace()} returns it.
+	 */
+	public void recordFreeSpace(int pageNumber, int numBytes) {
+		this.freeSpaceMap.update(pageNumber, numBytes);
+	}
+
+	/**
+	 * Gets the number of bytes free on a data page, as recorded in the free-space map of the table.
+	 * 
+	 * @param pageNumber
+	 *        The number of the page.
+	 * @return The recorded number of free bytes, or zero, if nothing is recorded for the page.
+	 */
+	public int getRecordedFreeSpace(int pageNumber) {
+		return this.freeSpaceMap.getFreeSpace(pageNumber);
 	}
 
 	/*
@@ -306,6 +389,7 @@ public class TableResourceManager extends ResourceManager {
 
 		// increment the counter
 		this.lastDataPageNumber = nextEmptyPageNumber;
+		recordFreeSpace(newPage);
 
 		return newPage;
 	}
@@ -350,6 +434,7 @@ public class TableResourceManager extends ResourceManager {
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be written to the table file.", ioex);
 		}
+		recordFreeSpace(wrapper);
 	}
 
 	/*
@@ -413,6 +498,28 @@ public class TableResourceManager extends ResourceManager {
 		} catch (IOException ioex) {
 			throw new IOException("Page sequence [" + pageNumber + ", " + (pageNumber + buffers.length - 1) + "] could not be written to the table file.", ioex);
 		}
+		for (CacheableData wrapper : wrappers) {
+			recordFreeSpace(wrapper);
+		}
+	}
+
+	/**
+	 * Records the free space of a written or new page in the free-space map. Page implementations
+	 * that do not report their free space are left out of the map, so inserts do not look for
+	 * space on their pages.
+	 * 
+	 * @param wrapper
+	 *        The page that was written or initialized.
+	 */
+	private void recordFreeSpace(CacheableData wrapper) {
+		if (wrapper instanceof TablePage) {
+			TablePage page = (TablePage) wrapper;
+			try {
+				this.freeSpaceMap.update(page.getPageNumber(), page.getFreeSpace());
+			} catch (UnsupportedOperationException uoex) {
+				// the page implementation predates the free-space map
+			}
+		}
 	}
 
 	/*
@@ -437,9 +544,11 @@ public class TableResourceManager extends ResourceManager {
 		ByteBuffer b = ByteBuffer.wrap(buffer, 0, this.pageSize);
 
 		try {
-			long position = (this.pageSize * (long) pageNumber);
-			readIntoBuffer(this.ioChannel, b, position, this.pageSize);
-
+			MappedPageReader mapped = this.mappedReader;
+			if (mapped == null || !mapped.readPage(buffer, pageNumber)) {
+				long position = (this.pageSize * (long) pageNumber);
+				readIntoBuffer(this.ioChannel, b, position, this.pageSize);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page " + pageNumber + " could not be read from table file.", ioex);
 		}
@@ -484,14 +593,17 @@ public class TableResourceManager extends ResourceManager {
 		}
 
 		try {
-			this.ioChannel.position(this.pageSize * (long) firstPageNumber);
-			long totalSize = buffers.length * this.pageSize;
-			long bytesRemaining = buffers.length * this.pageSize;
-			int currFirstBuffer = 0;
-			do {
-				bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
-				currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
-			} while (bytesRemaining > 0);
+			MappedPageReader mapped = this.mappedReader;
+			if (mapped == null || !mapped.readPages(buffers, firstPageNumber)) {
+				this.ioChannel.position(this.pageSize * (long) firstPageNumber);
+				long totalSize = buffers.length * this.pageSize;
+				long bytesRemaining = buffers.length * this.pageSize;
+				int currFirstBuffer = 0;
+				do {
+					bytesRemaining -= this.ioChannel.read(b, currFirstBuffer, buffers.length - currFirstBuffer);
+					currFirstBuffer = (int) ((totalSize - bytesRemaining) / this.pageSize);
+				} while (bytesRemaining > 0);
+			}
 		} catch (IOException ioex) {
 			throw new IOException("Page sequence [" + firstPageNumber + ", " + (firstPageNumber + buffers.length - 1) + "] could not be read from table file.",
 				ioex);
@@ -511,6 +623,28 @@ public class TableResourceManager extends ResourceManager {
 		return pages;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.manager.ResourceManager#supportsBufferWrapping()
+	 */
+	@Override
+	public boolean supportsBufferWrapping() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.io.manager.ResourceManager#wrapBuffer(byte[])
+	 */
+	@Override
+	public TablePage wrapBuffer(byte[] buffer) throws IOException {
+		try {
+			return pageFactory.createTablePage(this.schema, buffer);
+		} catch (PageFormatException pfex) {
+			throw new IOException("Page could not be wrapped because it is corrupted.", pfex);
+		}
+	}
+
 	// ------------------------------------------------------------------------
 	//                           Miscellaneous
 	// ------------------------------------------------------------------------
@@ -563,7 +697,14 @@ public class TableResourceManager extends ResourceManager {
 			}
 
 			RandomAccessFile raf = new RandomAccessFile(tableFile, "rwd");
-			return new TableResourceManager(raf);
+			TableResourceManager manager = new TableResourceManager(raf);
+			try {
+				manager.freeSpaceMap = FreeSpaceMap.load(FreeSpaceMap.getFile(tableFile), manager.pageSize, manager.firstDataPageNumber);
+			} catch (IOException ioex) {
+				manager.makeBestEffortToClose();
+				throw ioex;
+			}
+			return manager;
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
@@ -596,7 +737,15 @@ public class TableResourceManager extends ResourceManager {
 
 			// create the random access file and the table manager
 			RandomAccessFile raf = new RandomAccessFile(tableFile, "rwd");
-			return new TableResourceManager(raf, schema);
+			TableResourceManager manager = new TableResourceManager(raf, schema);
+
+			// a map left by a previous table in the file does not describe the new one
+			File mapFile = FreeSpaceMap.getFile(tableFile);
+			if (mapFile.exists()) {
+				mapFile.delete();
+			}
+			manager.freeSpaceMap = new FreeSpaceMap(mapFile, manager.pageSize, manager.firstDataPageNumber);
+			return manager;
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
@@ -618,8 +767,12 @@ public class TableResourceManager extends ResourceManager {
 				throw new IOException("Table file '" + tableFile.getCanonicalPath() + "' does not exist exist.");
 			}
 
-			// delete the file
+			// delete the file, and the file of the free-space map, if there is one
 			tableFile.delete();
+			File mapFile = FreeSpaceMap.getFile(tableFile);
+			if (mapFile.exists()) {
+				mapFile.delete();
+			}
 		} catch (SecurityException sex) {
 			throw new IOException("The user running the system has insufficient privileges for file manipulation.");
 		}
@@ -0,0 +1,317 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.tuberlin.dima.minidb.io.cache.AccessHint;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * Reclaims the space of deleted tuples in a table, by compacting its pages through the buffer
+ * pool, see {@link TablePage#compact()}. Deleted records are dropped from the record sequence and
+ * the variable-length fields that only deleted records referred to are dropped from the
+ * variable-length-chunk. The compacted pages are written by the buffer pool like any modified page,
+ * and their free space is recorded in the table's free-space map, so that inserts refill them.
+ * <p>
+ * A page is only compacted if that reclaims at least a given number of bytes. Pages of
+ * implementations that cannot compact are taken to have nothing to reclaim. Compacting a page
+ * changes the positions of its records, so every compaction is reported to the registered
+ * {@link RIDRemappingListener}s, which patch whatever refers to the records by RID.
+ * <p>
+ * The vacuum works in steps of a few pages, see {@link #vacuumPages(int)}, so that it can be
+ * interleaved with queries, and it can run in the background through {@link #start(long)}, taking
+ * one step after the other with a pause in between. The pages are requested as
+ * {@link AccessHint#SEQUENTIAL_SCAN}, so that the vacuum does not displace the pages of queries
+ * from the cache. As there are no page latches, queries that hold positions on a page while it is
+ * compacted, such as a scan in the middle of a page, see the records shifted. The background vacuum
+ * is therefore meant to run while no query reads positions from the table, for example between
+ * statements or concurrently to queries on other tables.
+ */
+public class TableVacuum implements Runnable
+{
+	/**
+	 * The default minimal number of bytes a compaction must reclaim, as a fraction of the page size.
+	 */
+	public static final int DEFAULT_MIN_RECLAIM_FRACTION = 8;
+
+	private final BufferPoolManager bufferPool;
+
+	private final TableResourceManager table;
+
+	private final int resourceId;
+
+	private final int minReclaimableBytes;
+
+	private final List<RIDRemappingListener> listeners = new CopyOnWriteArrayList<RIDRemappingListener>();
+
+	/**
+	 * The page that the next step starts at.
+	 */
+	private int nextPageNumber;
+
+	private long numCompactedPages;
+
+	private long numReclaimedBytes;
+
+	private long numDroppedRecords;
+
+	/**
+	 * The thread of the background vacuum, or null, if it is not running.
+	 */
+	private volatile Thread thread;
+
+	/**
+	 * The pause between two steps of the background vacuum.
+	 */
+	private volatile long pauseMillis;
+
+	/**
+	 * The monitor the background vacuum pauses on, so that stopping it does not interrupt its I/O.
+	 */
+	private final Object pauseLock = new Object();
+
+	/**
+	 * The error that stopped the background vacuum, or null.
+	 */
+	private volatile Exception error;
+
+
+	/**
+	 * Creates a vacuum that compacts pages reclaiming at least an eighth of the page size.
+	 *
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param table The manager of the table.
+	 * @param resourceId The id of the table at the buffer pool.
+	 */
+	public TableVacuum(BufferPoolManager bufferPool, TableResourceManager table, int resourceId)
+	{
+		this(bufferPool, table, resourceId, table.getPageSize().getNumberOfBytes() / DEFAULT_MIN_RECLAIM_FRACTION);
+	}
+
+	/**
+	 * Creates a vacuum.
+	 *
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param table The manager of the table.
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param minReclaimableBytes The minimal number of bytes a compaction of a page must reclaim.
+	 */
+	public TableVacuum(BufferPoolManager bufferPool, TableResourceManager table, int resourceId, int minReclaimableBytes)
+	{
+		this.bufferPool = bufferPool;
+		this.table = table;
+		this.resourceId = resourceId;
+		this.minReclaimableBytes = Math.max(1, minReclaimableBytes);
+		this.nextPageNumber = table.getFirstDataPageNumber();
+	}
+
+	/**
+	 * Registers a listener that is told about the records moved by every compaction.
+	 *
+	 * @param listener The listener to register.
+	 */
+	public void addListener(RIDRemappingListener listener)
+	{
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Removes a registered listener.
+	 *
+	 * @param listener The listener to remove.
+	 */
+	public void removeListener(RIDRemappingListener listener)
+	{
+		this.listeners.remove(listener);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Vacuums all pages of the table, starting with the first one.
+	 *
+	 * @throws BufferPoolException Thrown, if a page could not be obtained from the buffer pool.
+	 * @throws IOException Thrown, if a page could not be read.
+	 */
+	public synchronized void vacuum() throws BufferPoolException, IOException
+	{
+		this.nextPageNumber = this.table.getFirstDataPageNumber();
+		while (!vacuumPages(Integer.MAX_VALUE)) {
+			// continue until the pass is complete
+		}
+	}
+
+	/**
+	 * Vacuums the next pages of the table, continuing where the previous step stopped.
+	 *
+	 * @param maxPages The maximal number of pages to look at.
+	 * @return True, if the step reached the last page, such that the next step starts over with the
+	 *         first page, false otherwise.
+	 * @throws BufferPoolException Thrown, if a page could not be obtained from the buffer pool.
+	 * @throws IOException Thrown, if a page could not be read.
+	 */
+	public synchronized boolean vacuumPages(int maxPages) throws BufferPoolException, IOException
+	{
+		int lastPageNumber = this.table.getLastDataPageNumber();
+		for (int i = 0; i < maxPages && this.nextPageNumber <= lastPageNumber; i++) {
+			vacuumPage(this.nextPageNumber++);
+		}
+		if (this.nextPageNumber > lastPageNumber) {
+			this.nextPageNumber = this.table.getFirstDataPageNumber();
+			return true;
+		}
+		return false;
+	}
+
+	private void vacuumPage(int pageNumber) throws BufferPoolException, IOException
+	{
+		TablePage page = (TablePage) this.bufferPool.getPageAndPin(this.resourceId, pageNumber, AccessHint.SEQUENTIAL_SCAN);
+		try {
+			int reclaimable;
+			try {
+				reclaimable = page.getReclaimableSpace();
+			}
+			catch (UnsupportedOperationException uoex) {
+				// the page implementation predates compaction
+				return;
+			}
+			if (reclaimable < this.minReclaimableBytes) {
+				return;
+			}
+			int numRecords = page.getNumRecordsOnPage();
+			int[] newPositions = page.compact();
+			this.table.recordFreeSpace(pageNumber, page.getFreeSpace());
+
+			this.numCompactedPages++;
+			this.numReclaimedBytes += reclaimable;
+			this.numDroppedRecords += numRecords - page.getNumRecordsOnPage();
+			for (RIDRemappingListener listener : this.listeners) {
+				listener.recordsMoved(this.resourceId, pageNumber, newPositions);
+			}
+		}
+		finally {
+			this.bufferPool.unpinPage(this.resourceId, pageNumber);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Starts vacuuming the table in the background, one page at a time. A complete pass over the
+	 * table is followed by a pause of a hundred times the given one, but at least a second.
+	 *
+	 * @param pauseMillis The pause between two pages, in milliseconds.
+	 */
+	public synchronized void start(long pauseMillis)
+	{
+		if (this.thread != null) {
+			return;
+		}
+		this.pauseMillis = Math.max(0, pauseMillis);
+		this.error = null;
+		Thread thread = new Thread(this, "Vacuum of resource " + this.resourceId);
+		thread.setDaemon(true);
+		this.thread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Stops the background vacuum and waits until its current step is complete.
+	 *
+	 * @throws InterruptedException Thrown, if the calling thread was interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException
+	{
+		Thread thread = this.thread;
+		if (thread != null) {
+			this.thread = null;
+			synchronized (this.pauseLock) {
+				this.pauseLock.notifyAll();
+			}
+			thread.join();
+		}
+	}
+
+	/**
+	 * Checks whether the background vacuum is running.
+	 *
+	 * @return True, if the vacuum runs in the background, false otherwise.
+	 */
+	public boolean isRunning()
+	{
+		return this.thread != null;
+	}
+
+	/**
+	 * Gets the error that stopped the background vacuum.
+	 *
+	 * @return The error, or null, if the background vacuum did not fail.
+	 */
+	public Exception getError()
+	{
+		return this.error;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		Thread self = Thread.currentThread();
+		try {
+			while (this.thread == self) {
+				long pause = vacuumPages(1) ? Math.max(1000, 100 * this.pauseMillis) : this.pauseMillis;
+				synchronized (this.pauseLock) {
+					if (pause > 0 && this.thread == self) {
+						this.pauseLock.wait(pause);
+					}
+				}
+			}
+		}
+		catch (InterruptedException iex) {
+			this.thread = null;
+		}
+		catch (Exception ex) {
+			this.error = ex;
+			this.thread = null;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of pages compacted so far.
+	 *
+	 * @return The number of compacted pages.
+	 */
+	public synchronized long getNumberOfCompactedPages()
+	{
+		return this.numCompactedPages;
+	}
+
+	/**
+	 * Gets the number of bytes reclaimed so far.
+	 *
+	 * @return The number of reclaimed bytes.
+	 */
+	public synchronized long getNumberOfReclaimedBytes()
+	{
+		return this.numReclaimedBytes;
+	}
+
+	/**
+	 * Gets the number of deleted records dropped from the pages so far.
+	 *
+	 * @return The number of dropped records.
+	 */
+	public synchronized long getNumberOfDroppedRecords()
+	{
+		return this.numDroppedRecords;
+	}
+}
@@ -23,6 +23,12 @@ import de.tuberlin.dima.minidb.semantics.Relation;
  */
 public class FetchPlanOperator extends OptimizerPlanOperator
 {
+	/**
+	 * The number of RIDs the FETCH sorts by their page and fetches together, if it works in
+	 * batches.
+	 */
+	public static final int SORTED_BATCH_SIZE = 1024;
+	
 	/**
 	 * The child of this FETCH operator.
 	 */
@@ -48,6 +54,11 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	 */
 	private Set<Relation> involvedRelations;
 	
+	/**
+	 * The number of RIDs fetched together, 1 if every tuple is fetched on its own.
+	 */
+	private int batchSize = 1;
+	
 	
 	/**
 	 * Creates a new Fetch operator that retrieves the given columns from a table, 
@@ -111,6 +122,28 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 	}
 	
 	
+	/**
+	 * Gets the number of RIDs the operator sorts by their page and fetches together.
+	 * 
+	 * @return The number of RIDs fetched together, 1 if every tuple is fetched on its own.
+	 */
+	public int getBatchSize()
+	{
+		return this.batchSize;
+	}
+	
+	/**
+	 * Sets the number of RIDs the operator sorts by their page and fetches together. The tuples
+	 * are still produced in the order of the RIDs, so the order of the child is preserved.
+	 * 
+	 * @param batchSize The number of RIDs fetched together, 1 to fetch every tuple on its own.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+	
+	
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getName()
 	 */
@@ -169,6 +202,10 @@ public class FetchPlanOperator extends OptimizerPlanOperator
 		for (int i = 0; i < this.outputCols.length; i++) {
 			colIndices[i] = this.outputCols[i].getColumnIndex();
 		}
+		if (this.batchSize > 1) {
+			return OperatorFactory.createFetchOperator(childPlan, buffer, 
+					this.accessedTable.getResourceId(), colIndices, this.batchSize, true);
+		}
 		return OperatorFactory.createFetchOperator(childPlan, buffer, 
 				this.accessedTable.getResourceId(), colIndices);
 	}
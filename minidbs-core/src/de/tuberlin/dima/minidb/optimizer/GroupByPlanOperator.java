@@ -10,6 +10,7 @@ import java.util.Set;
 import de.tuberlin.dima.minidb.core.DataType;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
 import de.tuberlin.dima.minidb.parser.OutputColumn;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperator;
 import de.tuberlin.dima.minidb.qexec.OperatorFactory;
 import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
@@ -24,6 +25,15 @@ import de.tuberlin.dima.minidb.semantics.Relation;
  * <p>
  * The group by operator is expected to receive tuples where the order of columns in the
  * tuples is that of the output tuples.
+ * <p>
+ * A hashed group by operator groups its input through a hash table instead. It needs no
+ * order of its input and produces its tuples in no particular order.
+ * <p>
+ * A hashed group by over a table scan with a degree of parallelism above one groups the tuples of
+ * each of the parallel scans by a group by of its own. If all aggregates can be combined from
+ * partial aggregates, each of these group bys aggregates the tuples of its scan, and a final group
+ * by combines the partial aggregates of all of them. Otherwise, the tuples of the scans are
+ * repartitioned by the grouping columns, so that each group by sees all tuples of its groups.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -64,6 +74,11 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 	 */
 	private long cardinality;
 	
+	/**
+	 * Flag indicating that the groups are formed through hashing rather than from sorted input.
+	 */
+	private boolean hashed;
+	
 	/**
 	 * The group by operator is expected to receive tuples where the order of columns in the
 	 * tuples is that of the output tuples.
@@ -76,6 +91,23 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 	public GroupByPlanOperator(OptimizerPlanOperator child, ProducedColumn[] outCols,
 			int[] groupColIndices, int[] aggColIndices, int outCardinality)
 	throws OptimizerException
+	{
+		this(child, outCols, groupColIndices, aggColIndices, outCardinality, false);
+	}
+	
+	/**
+	 * Creates a group by operator that either expects its input sorted on the grouping columns,
+	 * or, if it is hashed, accepts its input in any order.
+	 * 
+	 * @param outCols
+	 * @param groupColIndices
+	 * @param aggColIndices
+	 * @param outCardinality
+	 * @param hashed Flag indicating that the groups are formed through hashing.
+	 */
+	public GroupByPlanOperator(OptimizerPlanOperator child, ProducedColumn[] outCols,
+			int[] groupColIndices, int[] aggColIndices, int outCardinality, boolean hashed)
+	throws OptimizerException
 	{
 		this.child = child;
 		this.prodCols = outCols;
@@ -89,6 +121,12 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 			this.outColumns[i] = new Column(outCols[i].getRelation(), outCols[i].getOutputDataType(), i);
 		}
 		
+		this.hashed = hashed;
+		if (hashed) {
+			this.order = new OrderedColumn[0];
+			return;
+		}
+		
 		Column[] inputCols = child.getReturnedColumns();
 		OrderedColumn[] childOrder = child.getColumnOrder();
 		
@@ -161,7 +199,7 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 	@Override
 	public String getName()
 	{
-		return "Group By";
+		return this.hashed ? "Hash Group By" : "Group By";
 	}
 
 	/* (non-Javadoc)
@@ -214,6 +252,16 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 	{
 		return this.aggColIndices;
 	}
+	
+	/**
+	 * Checks whether the groups are formed through hashing rather than from sorted input.
+	 * 
+	 * @return True, if the operator is hashed, false otherwise.
+	 */
+	public boolean isHashed()
+	{
+		return this.hashed;
+	}
 
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getColumnOrder()
@@ -230,9 +278,6 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 	@Override
 	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
 	{
-		// translate the child first
-		PhysicalPlanOperator childPlan = this.child.createPhysicalPlan(buffer, heap);
-		
 		// build the arrays with the aggregate functions and the aggregate data types
 		OutputColumn.AggregationType[] aggFunct = new OutputColumn.AggregationType[this.aggColIndices.length];
 		DataType[] aggType = new DataType[this.aggColIndices.length];
@@ -258,8 +303,89 @@ public class GroupByPlanOperator extends OptimizerPlanOperator
 		}
 		
 		// now add this operator
-		return OperatorFactory.createGroupByOperator(childPlan, this.groupColIndices, this.aggColIndices,
-				aggFunct, aggType, groupOutPos, aggOutPos);
+		if (this.hashed) {
+			Column[] inputCols = this.child.getReturnedColumns();
+			DataType[] inputTypes = new DataType[inputCols.length];
+			for (int i = 0; i < inputCols.length; i++) {
+				inputTypes[i] = inputCols[i].getDataType();
+			}
+			int estimate = (int) Math.min(Integer.MAX_VALUE, this.cardinality);
+			
+			if (this.child instanceof TableScanPlanOperator
+					&& ((TableScanPlanOperator) this.child).getDegreeOfParallelism() > 1) {
+				PhysicalPlanOperator[] scans = ((TableScanPlanOperator) this.child).createParallelPhysicalPlans(buffer, heap);
+				return createParallelHashGroupBy(scans, heap, inputTypes, estimate, aggFunct, aggType, groupOutPos, aggOutPos);
+			}
+			return OperatorFactory.createHashGroupByOperator(this.child.createPhysicalPlan(buffer, heap), heap, inputTypes,
+					estimate, this.groupColIndices, this.aggColIndices, aggFunct, aggType, groupOutPos, aggOutPos);
+		}
+		return OperatorFactory.createGroupByOperator(this.child.createPhysicalPlan(buffer, heap), this.groupColIndices,
+				this.aggColIndices, aggFunct, aggType, groupOutPos, aggOutPos);
+	}
+	
+	/**
+	 * Creates the hash group bys over the parallel scans and combines their groups. A hash group by
+	 * takes its heap grant before it opens its input, so the final one holds its grant before the
+	 * gather starts the partial ones, and those wait only for grants that finishing partials release.
+	 */
+	private PhysicalPlanOperator createParallelHashGroupBy(PhysicalPlanOperator[] scans, QueryHeap heap,
+			DataType[] inputTypes, int estimate, OutputColumn.AggregationType[] aggFunct, DataType[] aggType,
+			int[] groupOutPos, int[] aggOutPos)
+	{
+		boolean decomposable = true;
+		for (OutputColumn.AggregationType function : aggFunct) {
+			decomposable &= function != OutputColumn.AggregationType.AVG;
+		}
+		
+		if (decomposable) {
+			// the partial group bys produce the grouping columns followed by the partial aggregates
+			int numGroupCols = this.groupColIndices.length;
+			int width = numGroupCols + aggFunct.length;
+			DataType[] partialTypes = new DataType[width];
+			int[] partialGroupOutPos = new int[width];
+			int[] partialAggOutPos = new int[width];
+			int[] finalGroupCols = new int[numGroupCols];
+			int[] finalAggCols = new int[aggFunct.length];
+			OutputColumn.AggregationType[] finalFunct = new OutputColumn.AggregationType[aggFunct.length];
+			for (int i = 0; i < numGroupCols; i++) {
+				partialTypes[i] = inputTypes[this.groupColIndices[i]];
+				partialGroupOutPos[i] = i;
+				partialAggOutPos[i] = -1;
+				finalGroupCols[i] = i;
+			}
+			for (int i = 0; i < aggFunct.length; i++) {
+				partialTypes[numGroupCols + i] = aggType[i];
+				partialGroupOutPos[numGroupCols + i] = -1;
+				partialAggOutPos[numGroupCols + i] = i;
+				finalAggCols[i] = numGroupCols + i;
+				// the partial counts are added up, all other aggregates combine with themselves
+				finalFunct[i] = aggFunct[i] == OutputColumn.AggregationType.COUNT ?
+						OutputColumn.AggregationType.SUM : aggFunct[i];
+			}
+			
+			PhysicalPlanOperator[] partials = new PhysicalPlanOperator[scans.length];
+			for (int i = 0; i < scans.length; i++) {
+				partials[i] = OperatorFactory.createHashGroupByOperator(scans[i], heap, inputTypes, estimate,
+						this.groupColIndices, this.aggColIndices, aggFunct, aggType, partialGroupOutPos, partialAggOutPos);
+			}
+			return OperatorFactory.createHashGroupByOperator(OperatorFactory.createGatherOperator(partials), heap,
+					partialTypes, estimate, finalGroupCols, finalAggCols, finalFunct, aggType, groupOutPos, aggOutPos);
+		}
+		
+		if (this.groupColIndices.length == 0) {
+			// without grouping columns, all tuples form a single group
+			return OperatorFactory.createHashGroupByOperator(OperatorFactory.createGatherOperator(scans), heap, inputTypes,
+					estimate, this.groupColIndices, this.aggColIndices, aggFunct, aggType, groupOutPos, aggOutPos);
+		}
+		
+		ExchangeOperator[] partitions = OperatorFactory.createRepartitionOperators(scans, this.groupColIndices, scans.length);
+		PhysicalPlanOperator[] groupBys = new PhysicalPlanOperator[partitions.length];
+		for (int i = 0; i < partitions.length; i++) {
+			groupBys[i] = OperatorFactory.createHashGroupByOperator(partitions[i], heap, inputTypes,
+					estimate / partitions.length + 1, this.groupColIndices, this.aggColIndices, aggFunct, aggType,
+					groupOutPos, aggOutPos);
+		}
+		return OperatorFactory.createGatherOperator(groupBys);
 	}
 
 }
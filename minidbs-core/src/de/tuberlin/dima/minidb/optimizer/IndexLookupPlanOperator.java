@@ -204,6 +204,32 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 		}
 	}
 	
+	/**
+	 * Creates an index scan operator that operates uncorrelated over all keys of the index.
+	 * The range has no lower bound and starts at the first key of the index, since the minimum
+	 * value of some types, such as <tt>FLOAT</tt> and <tt>DOUBLE</tt>, is not their smallest key.
+	 * 
+	 * @param index The index descriptor for the index that is to scan.
+	 * @param table The table access for which the index scan stands.
+	 * @param outCard The output cardinality of the scan.
+	 */
+	protected IndexLookupPlanOperator(IndexDescriptor index, BaseTableAccess table, long outCard)
+	{
+		this.theIndex = index;
+		this.tableAccess = table;
+		this.outCardinality = outCard;
+		this.pred = null;
+		this.correlatedColumnIndex = -1;
+		
+		DataType indexedColumnType = index.getSchema().getIndexedColumnSchema().getDataType();
+		this.indexedColumn = new Column(table, indexedColumnType, index.getSchema().getColumnNumber());
+		
+		this.key1 = null;
+		this.key2 = indexedColumnType.getMaxValue();
+		this.key1Included = false;
+		this.key2Included = true;
+	}
+	
 	/**
 	 * Creates an index lookup operator for correlated index accessed.
 	 * 
@@ -260,6 +286,59 @@ public class IndexLookupPlanOperator extends OptimizerPlanOperator
 		return this.pred;
 	}
 	
+	/**
+	 * Gets the column of the base table that the index is built on.
+	 * 
+	 * @return The indexed column.
+	 */
+	public Column getIndexedColumn()
+	{
+		return this.indexedColumn;
+	}
+	
+	/**
+	 * Gets the lower bound of the range of keys of an uncorrelated access. For an equality
+	 * predicate, this is the key.
+	 * 
+	 * @return The lower bound of the range, or null, if the range starts at the first key or the
+	 *         access is correlated.
+	 */
+	public DataField getStartKey()
+	{
+		return this.key1;
+	}
+	
+	/**
+	 * Gets the upper bound of the range of keys of an uncorrelated access. For an equality
+	 * predicate, this is the key.
+	 * 
+	 * @return The upper bound of the range, or null, if the access is correlated.
+	 */
+	public DataField getStopKey()
+	{
+		return this.key2 == null ? this.key1 : this.key2;
+	}
+	
+	/**
+	 * Checks whether the lower bound is included in the range of keys.
+	 * 
+	 * @return True, if the lower bound is included in the range.
+	 */
+	public boolean isStartKeyIncluded()
+	{
+		return this.key1Included;
+	}
+	
+	/**
+	 * Checks whether the upper bound is included in the range of keys.
+	 * 
+	 * @return True, if the upper bound is included in the range.
+	 */
+	public boolean isStopKeyIncluded()
+	{
+		return this.key2 == null ? this.key1Included : this.key2Included;
+	}
+	
 	/**
 	 * Checks, if this index access is correlated, such as in an index-nested-loop-join.
 	 * 
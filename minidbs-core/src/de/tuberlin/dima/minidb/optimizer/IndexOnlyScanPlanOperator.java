@@ -0,0 +1,98 @@
+package de.tuberlin.dima.minidb.optimizer;
+
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateBetween;
+
+
+/**
+ * The optimizer plan representation of an index scan that returns the keys of the index
+ * rather than RIDs, such that no FETCH from the base table is needed. It serves queries
+ * that need no other column of the table than the indexed one, such as a <tt>COUNT(*)</tt>,
+ * <tt>MIN</tt>, <tt>MAX</tt> or <tt>GROUP BY</tt> on the indexed column or an existence check.
+ * <p>
+ * The scan is costed like an index lookup: the descent and the scan along the leaves.
+ */
+public class IndexOnlyScanPlanOperator extends IndexLookupPlanOperator
+{
+	/**
+	 * Creates a new index-only scan that evaluates the given predicate.
+	 *
+	 * @param index The index descriptor for the index that is to scan.
+	 * @param table The table access for which the index scan stands.
+	 * @param pred The predicate to be applied.
+	 * @param outCard The output cardinality of the scan.
+	 */
+	public IndexOnlyScanPlanOperator(IndexDescriptor index, BaseTableAccess table,
+			LocalPredicateAtom pred, long outCard)
+	{
+		super(index, table, pred, outCard);
+	}
+
+	/**
+	 * Creates a new index-only scan that evaluates the given predicate.
+	 *
+	 * @param index The index descriptor for the index that is to scan.
+	 * @param table The table access for which the index scan stands.
+	 * @param pred The predicate to be applied.
+	 * @param outCard The output cardinality of the scan.
+	 */
+	public IndexOnlyScanPlanOperator(IndexDescriptor index, BaseTableAccess table,
+			LocalPredicateBetween pred, long outCard)
+	{
+		super(index, table, pred, outCard);
+	}
+
+	/**
+	 * Creates a new index-only scan over all keys of the index. It must only be used for indexes
+	 * over columns that are not nullable.
+	 *
+	 * @param index The index descriptor for the index that is to scan.
+	 * @param table The table access for which the index scan stands.
+	 * @param outCard The output cardinality of the scan, the cardinality of the table.
+	 */
+	public IndexOnlyScanPlanOperator(IndexDescriptor index, BaseTableAccess table, long outCard)
+	{
+		super(index, table, outCard);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getName()
+	 */
+	@Override
+	public String getName()
+	{
+		return "Index Only Scan";
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getOutputColumns()
+	 */
+	@Override
+	public Column[] getReturnedColumns()
+	{
+		return new Column[] { getIndexedColumn() };
+	}
+
+	/* (non-Javadoc)
+	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#createPhysicalPlan(de.tuberlin.dima.minidb.io.BufferPoolManager, de.tuberlin.dima.minidb.qexec.heap.QueryHeap)
+	 */
+	@Override
+	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
+	{
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(getIndex().getSchema(),
+				buffer, getIndex().getResourceId());
+		return OperatorFactory.createIndexScanOperator(index, getStartKey(), getStopKey(),
+				isStartKeyIncluded(), isStopKeyIncluded());
+	}
+}
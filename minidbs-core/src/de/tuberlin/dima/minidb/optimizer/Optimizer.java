@@ -22,6 +22,7 @@ import de.tuberlin.dima.minidb.io.tables.TablePage;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.optimizer.cost.CostEstimator;
 import de.tuberlin.dima.minidb.optimizer.generator.PhysicalPlanGenerator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
 import de.tuberlin.dima.minidb.optimizer.joins.JoinOrderOptimizer;
 import de.tuberlin.dima.minidb.parser.OrderColumn;
 import de.tuberlin.dima.minidb.parser.Predicate;
@@ -70,6 +71,12 @@ public class Optimizer
 	 */
 	private CostEstimator costEstimator;
 	
+	/**
+	 * The number of queries that may run at the same time, used to choose the degree of
+	 * parallelism of the table scans. 0 keeps the plans serial.
+	 */
+	private int maxConcurrentQueries;
+	
 	
 	/**
 	 * Creates a new optimizer that tries to find the best plan with respect to the given
@@ -99,6 +106,19 @@ public class Optimizer
 		}
 	}
 
+	/**
+	 * Sets the number of queries that may run at the same time. If it is set, the table scans
+	 * of the plans are given a degree of parallelism that shares the processors among the
+	 * queries. By default, the plans are serial.
+	 * 
+	 * @param maxConcurrentQueries The number of queries that may run at the same time, or 0, to
+	 *                             keep the plans serial.
+	 */
+	public void setMaxConcurrentQueries(int maxConcurrentQueries)
+	{
+		this.maxConcurrentQueries = maxConcurrentQueries;
+	}
+
 	/**
 	 * Takes the analyzed select-query and finds the best query execution plan in this
 	 * optimizers plan-space. The plan is returned as a tree of plan operators. 
@@ -229,6 +249,10 @@ public class Optimizer
 		PhysicalPlanGenerator planGenerator = AbstractExtensionFactory.getExtensionFactory().createPhysicalPlanGenerator(this.catalogue, this.cardEstimator, this.costEstimator);
 		
 		OptimizerPlanOperator bestPlan = planGenerator.generatePhysicalPlan(query, bestJoinOrder);
+		bestPlan = PhysicalPlanGeneratorUtils.applyRowLimit(bestPlan, query.getRowLimit());
+		if (this.maxConcurrentQueries > 0) {
+			PhysicalPlanGeneratorUtils.parallelize(bestPlan, this.maxConcurrentQueries);
+		}
 		query.setQueryPlan(bestPlan);
 		return bestPlan;
 	}
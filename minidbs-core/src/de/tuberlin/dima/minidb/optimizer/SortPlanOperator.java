@@ -17,6 +17,10 @@ import de.tuberlin.dima.minidb.semantics.Relation;
 
 /**
  * The optimizer plan operator for a sort operation.
+ * <p>
+ * A sort with a row limit produces only the first tuples in its order. It is executed as a
+ * top-N sort, which keeps only those tuples and needs no heap space. Without sort columns,
+ * it produces the first tuples of its child.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -42,6 +46,16 @@ public class SortPlanOperator extends OptimizerPlanOperator
 	 * True indicates ascending order, false indicates descending order.
 	 */
 	private boolean[] sortAscending;
+	
+	/**
+	 * The maximal number of tuples produced by this sort, or -1, if all tuples are produced.
+	 */
+	private long rowLimit;
+	
+	/**
+	 * The number of threads that generate the sorted runs.
+	 */
+	private int degreeOfParallelism = 1;
 
 	
 	/**
@@ -56,10 +70,27 @@ public class SortPlanOperator extends OptimizerPlanOperator
 	 */
 	public SortPlanOperator(OptimizerPlanOperator child,
 			int[] sortColumnIndices, boolean[] sortAscending)
+	{
+		this(child, sortColumnIndices, sortAscending, -1);
+	}
+	
+	/**
+	 * Creates a new sort operator that produces only the first tuples in the order of the
+	 * given columns, at most as many as the row limit.
+	 * 
+	 * @param child The child whose produced tuples are to be sorted.
+	 * @param sortColumnIndices The indices of the columns after which to sort.
+	 * @param sortAscending The direction of sorting for each column. True indicates ascending,
+	 *                      false indicates descending.
+	 * @param rowLimit The maximal number of tuples to produce, or -1, to produce all tuples.
+	 */
+	public SortPlanOperator(OptimizerPlanOperator child,
+			int[] sortColumnIndices, boolean[] sortAscending, long rowLimit)
 	{
 		this.childOperator = child;
 		this.sortColumnIndices = sortColumnIndices;
 		this.sortAscending = sortAscending;
+		this.rowLimit = rowLimit;
 		
 		if (sortColumnIndices.length != sortAscending.length) {
 			throw new IllegalArgumentException("Sort parameter arrays do not match in length.");
@@ -108,6 +139,39 @@ public class SortPlanOperator extends OptimizerPlanOperator
 		return this.sortAscending;
 	}
 	
+	/**
+	 * Returns the maximal number of tuples produced by this sort operator.
+	 * 
+	 * @return The row limit, or -1, if all tuples are produced.
+	 */
+	public long getRowLimit()
+	{
+		return this.rowLimit;
+	}
+	
+	/**
+	 * Gets the number of threads that generate the sorted runs.
+	 *
+	 * @return The degree of parallelism, 1 for a serial sort.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+
+	/**
+	 * Sets the number of threads that generate the sorted runs.
+	 *
+	 * @param degreeOfParallelism The degree of parallelism, 1 for a serial sort.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least 1.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+	
 	
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator#getChildren()
@@ -134,7 +198,7 @@ public class SortPlanOperator extends OptimizerPlanOperator
 	@Override
 	public String getName()
 	{
-		return "Sort";
+		return this.rowLimit >= 0 ? "Top-N Sort" : "Sort";
 	}
 
 	/* (non-Javadoc)
@@ -144,8 +208,9 @@ public class SortPlanOperator extends OptimizerPlanOperator
 	public long getOutputCardinality()
 	{
 		// this operator does not change cardinality, since we do not do any
-		// de-duplication or so
-		return this.childOperator.getOutputCardinality();
+		// de-duplication or so, unless it produces only the first tuples
+		long card = this.childOperator.getOutputCardinality();
+		return this.rowLimit >= 0 ? Math.min(card, this.rowLimit) : card;
 	}
 
 	/* (non-Javadoc)
@@ -176,6 +241,12 @@ public class SortPlanOperator extends OptimizerPlanOperator
 		// recursively create the child plan
 		PhysicalPlanOperator childPlan = this.childOperator.createPhysicalPlan(buffer, heap);
 		
+		// a limited sort keeps only the tuples it produces
+		if (this.rowLimit >= 0) {
+			return OperatorFactory.createTopNSortOperator(childPlan, this.sortColumnIndices, this.sortAscending,
+					(int) Math.min(Integer.MAX_VALUE, this.rowLimit));
+		}
+		
 		// assemble the schema information for the input tuples
 		Column[] inputCols = this.childOperator.getReturnedColumns();
 		
@@ -187,6 +258,10 @@ public class SortPlanOperator extends OptimizerPlanOperator
 		long card = this.childOperator.getOutputCardinality();
 		int intCard = card <= Integer.MAX_VALUE ? (int) card : Integer.MAX_VALUE;
 		
+		if (this.degreeOfParallelism > 1) {
+			return OperatorFactory.createSortOperator(childPlan, heap, tupleSchema,
+					intCard, this.sortColumnIndices, this.sortAscending, this.degreeOfParallelism);
+		}
 		return OperatorFactory.createSortOperator(childPlan, heap, tupleSchema,
 				intCard, this.sortColumnIndices, this.sortAscending);
 	}
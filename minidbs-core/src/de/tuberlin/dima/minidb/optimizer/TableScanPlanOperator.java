@@ -8,6 +8,7 @@ import de.tuberlin.dima.minidb.semantics.Column;
 import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicate;
 import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
 import de.tuberlin.dima.minidb.qexec.OperatorFactory;
+import de.tuberlin.dima.minidb.qexec.PageRangeDispenser;
 import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
 import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
 import de.tuberlin.dima.minidb.qexec.predicate.LocalPredicateConjunction;
@@ -15,6 +16,10 @@ import de.tuberlin.dima.minidb.qexec.predicate.LocalPredicateConjunction;
 
 /**
  * Plan operator describing a table access via a full table scan.
+ * <p>
+ * With a degree of parallelism above one, the table is scanned by as many scans, each run by a
+ * thread of its own, that claim ranges of pages from a shared dispenser. Their tuples are gathered
+ * into one stream, unless the operator above takes the parallel scans themselves.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
@@ -40,6 +45,11 @@ public class TableScanPlanOperator extends BaseTableAccess
 	 */
 	private int prefetchingLength = Constants.DEFAULT_PREFETCHING_LENGTH;
 	
+	/**
+	 * The number of scans that scan the table side by side.
+	 */
+	private int degreeOfParallelism = 1;
+	
 	
 	// ------------------------------------------------------------------------
 	
@@ -126,6 +136,29 @@ public class TableScanPlanOperator extends BaseTableAccess
 		this.prefetchingLength = prefetchingLength;
 	}
 	
+	/**
+	 * Gets the number of scans that scan the table side by side.
+	 *
+	 * @return The degree of parallelism, 1 for a serial scan.
+	 */
+	public int getDegreeOfParallelism()
+	{
+		return this.degreeOfParallelism;
+	}
+
+	/**
+	 * Sets the number of scans that scan the table side by side.
+	 *
+	 * @param degreeOfParallelism The degree of parallelism, 1 for a serial scan.
+	 */
+	public void setDegreeOfParallelism(int degreeOfParallelism)
+	{
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least 1.");
+		}
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+	
 	/**
 	 * Assigns this operator the columns it should produce.
 	 * 
@@ -150,6 +183,38 @@ public class TableScanPlanOperator extends BaseTableAccess
 	 */
 	@Override
 	public PhysicalPlanOperator createPhysicalPlan(BufferPoolManager buffer, QueryHeap heap)
+	{
+		if (this.degreeOfParallelism > 1) {
+			return OperatorFactory.createGatherOperator(createParallelPhysicalPlans(buffer, heap));
+		}
+		return createScan(buffer, null);
+	}
+	
+	/**
+	 * Creates the scans of a parallel plan, one for each degree of parallelism. The scans share
+	 * a dispenser of the pages of the table, so that together they produce every tuple once. Each
+	 * of them is to be run by a thread of its own.
+	 * 
+	 * @param buffer The buffer pool used by the scans.
+	 * @param heap The query heap.
+	 * @return The scans.
+	 */
+	public PhysicalPlanOperator[] createParallelPhysicalPlans(BufferPoolManager buffer, QueryHeap heap)
+	{
+		PageRangeDispenser dispenser = new PageRangeDispenser(getTable().getResourceManager(),
+				PageRangeDispenser.DEFAULT_MORSEL_PAGES, this.degreeOfParallelism);
+		PhysicalPlanOperator[] scans = new PhysicalPlanOperator[this.degreeOfParallelism];
+		for (int i = 0; i < scans.length; i++) {
+			scans[i] = createScan(buffer, dispenser);
+		}
+		return scans;
+	}
+	
+	/**
+	 * Creates a scan over the whole table, or, if a dispenser is given, over the pages claimed
+	 * from it. Each scan gets its own translation of the predicate.
+	 */
+	private PhysicalPlanOperator createScan(BufferPoolManager buffer, PageRangeDispenser dispenser)
 	{
 		// check if we have columns assigned. if not, the scan is still abstract and cannot
 		// be translated into a physical plan
@@ -198,8 +263,12 @@ public class TableScanPlanOperator extends BaseTableAccess
 			colIndices[i] = this.producedColumns[i].getColumnIndex();
 		}
 		
+		if (dispenser == null) {
+			return OperatorFactory.createTableScanOperator(buffer, getTable().getResourceManager(),
+					getTable().getResourceId(), colIndices, execPred, this.prefetchingLength);
+		}
 		return OperatorFactory.createTableScanOperator(buffer, getTable().getResourceManager(),
-				getTable().getResourceId(), colIndices, execPred, this.prefetchingLength);
+				getTable().getResourceId(), colIndices, execPred, this.prefetchingLength, dispenser);
 	}
 
 
@@ -213,6 +282,9 @@ public class TableScanPlanOperator extends BaseTableAccess
 		bld.append('[').append(getName()).append(' ');
 		bld.append(':').append(' ');
 		bld.append(getTable().getTableName());
+		if (this.degreeOfParallelism > 1) {
+			bld.append(" x").append(this.degreeOfParallelism);
+		}
 		bld.append(" IN: ").append(getInputCardinality());
 		bld.append(", OUT: ").append(getOutputCardinality()).append(']');
 		return bld.toString();
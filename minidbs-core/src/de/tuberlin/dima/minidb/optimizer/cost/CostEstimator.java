@@ -52,7 +52,8 @@ public interface CostEstimator
 	/**
 	 * Computes the costs of an index scan. The costs are assumed to be the descend down the
 	 * B-Tree (random I/O, minus pages from the first two levels in the cache) and then the scan along the leafs,
-	 * which is assumed to be sequential.
+	 * which is assumed to be sequential. The same costs apply to an index-only scan, which answers
+	 * the query from the keys of the index and adds no FETCH costs on top.
 	 * 
 	 * @param index The descriptor of the index.
 	 * @param baseTable The descriptor of the table that is indexed.
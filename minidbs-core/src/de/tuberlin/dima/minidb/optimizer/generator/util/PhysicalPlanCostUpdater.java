@@ -153,8 +153,25 @@ public class PhysicalPlanCostUpdater
 		// get the child's costs and compute them if necessary
 		long childCosts = getChildCosts(childPop);
 		
+		long cardinality = childPop.getOutputCardinality();
 		long fetchCosts = this.costEstimator.computeFetchCosts(fetchPop.getAccessedTable(), 
-				childPop.getOutputCardinality(), fetchPop.isSequentialFetch());
+				cardinality, fetchPop.isSequentialFetch());
+		
+		// RIDs in no particular order may be sorted by page in batches, each of which is then
+		// fetched like a short sequence of sorted RIDs
+		fetchPop.setBatchSize(1);
+		if (!fetchPop.isSequentialFetch() && cardinality > 1) {
+			int batchSize = FetchPlanOperator.SORTED_BATCH_SIZE;
+			long batchedCosts = (cardinality / batchSize) * 
+					this.costEstimator.computeFetchCosts(fetchPop.getAccessedTable(), batchSize, true);
+			if (cardinality % batchSize != 0) {
+				batchedCosts += this.costEstimator.computeFetchCosts(fetchPop.getAccessedTable(), cardinality % batchSize, true);
+			}
+			if (batchedCosts < fetchCosts) {
+				fetchPop.setBatchSize(batchSize);
+				fetchCosts = batchedCosts;
+			}
+		}
 	
 		fetchPop.setOperatorCosts(fetchCosts);
 		fetchPop.setCumulativeCosts(childCosts + fetchCosts);
@@ -219,7 +236,9 @@ public class PhysicalPlanCostUpdater
 	/**
 	 * Computes the costs and cumulative costs for the given GROUP BY operator.
 	 * The operator is assumed to be free, as it only performs a one-pass over
-	 * a pre-sorted stream of tuples.
+	 * a pre-sorted stream of tuples. A hashed group by operator is assumed to be free
+	 * as well, because its groups are expected to fit into the query heap, whose size is
+	 * not known while planning.
 	 * 
 	 * @param nljnJoinPop The nested loop join operator to compute the costs for.
 	 */
@@ -13,17 +13,23 @@ import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
 import de.tuberlin.dima.minidb.optimizer.AbstractJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.FetchPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.FilterPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.IndexLookupPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.IndexOnlyScanPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.InterestingOrder;
+import de.tuberlin.dima.minidb.optimizer.NestedLoopJoinPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OptimizerException;
 import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.OrderedColumn;
 import de.tuberlin.dima.minidb.optimizer.RequestedOrder;
 import de.tuberlin.dima.minidb.optimizer.SortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
 import de.tuberlin.dima.minidb.optimizer.cardinality.CardinalityEstimator;
 import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.PageRangeDispenser;
 import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
 import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
 import de.tuberlin.dima.minidb.semantics.Relation;
 import de.tuberlin.dima.minidb.semantics.predicate.JoinPredicate;
 import de.tuberlin.dima.minidb.semantics.predicate.JoinPredicateAtom;
@@ -43,6 +49,11 @@ public class PhysicalPlanGeneratorUtils
 	 * Helper to sort candidate plans for the pruning phase.
 	 */
 	public static final Comparator<OptimizerPlanOperator> PRUNE_SORTER = new OutOrderColsCountSorter();
+	
+	/**
+	 * The minimal number of tuples for each thread that generates sorted runs.
+	 */
+	public static final int MIN_TUPLES_PER_SORT_THREAD = 50000;
 
 	// ------------------------------------------------------------------------
 	//                  Utility Methods for Operators
@@ -83,6 +94,87 @@ public class PhysicalPlanGeneratorUtils
 		return null;
 	}
 	
+	/**
+	 * Tries to create an index-only scan that produces the required columns of a table access
+	 * from the keys of an index alone, without a FETCH from the table. That is possible, if all
+	 * required columns are the indexed column of one of the available indexes, and if the
+	 * predicate, if any, is a predicate on that column that the index evaluates (see
+	 * {@link #createIndexLookup(BaseTableAccess, long, LocalPredicate, int, List)}).
+	 * Without any required column, as for a <tt>COUNT(*)</tt>, any index covers the access, and
+	 * the one with the fewest leaves is taken.
+	 * <p>
+	 * Without a predicate, the scan must see every row of the table. The indexes do not contain
+	 * the rows whose key is <tt>NULL</tt>, so only indexes over columns that are not nullable
+	 * qualify.
+	 * 
+	 * @param table The table access for which this function searches for a covering index.
+	 * @param cardinality The cardinality after the application of the given predicate.
+	 * @param pred The predicate to be represented by the index access, or null.
+	 * @param requiredColumns The columns of the table that are required in the output.
+	 * @param indexes The list of available indexes for the accessed table.
+	 * @return An index-only scan for the access, or null.
+	 */
+	public static final IndexOnlyScanPlanOperator createIndexOnlyScan(
+			BaseTableAccess table, long cardinality, LocalPredicate pred, 
+			Column[] requiredColumns, List<IndexDescriptor> indexes)
+	{
+		int column = -1;
+		if (pred instanceof LocalPredicateAtom) {
+			if (((LocalPredicateAtom) pred).getParsedPredicate().getOp() == Predicate.Operator.NOT_EQUAL) {
+				return null;
+			}
+			column = ((LocalPredicateAtom) pred).getColumn().getColumnIndex();
+		}
+		else if (pred instanceof LocalPredicateBetween) {
+			column = ((LocalPredicateBetween) pred).getColumn().getColumnIndex();
+		}
+		else if (pred != null) {
+			return null;
+		}
+		for (Column col : requiredColumns) {
+			if (col.isRID() || (column != -1 && col.getColumnIndex() != column)) {
+				return null;
+			}
+			column = col.getColumnIndex();
+		}
+		
+		IndexDescriptor covering = null;
+		for (IndexDescriptor id : indexes) {
+			if (pred == null && !coversAllRows(id)) {
+				continue;
+			}
+			if (column == -1 || id.getSchema().getColumnNumber() == column) {
+				if (covering == null || id.getStatistics().getNumberOfLeafs() < covering.getStatistics().getNumberOfLeafs()) {
+					covering = id;
+				}
+			}
+		}
+		if (covering == null) {
+			return null;
+		}
+		else if (pred instanceof LocalPredicateAtom) {
+			return new IndexOnlyScanPlanOperator(covering, table, (LocalPredicateAtom) pred, cardinality);
+		}
+		else if (pred instanceof LocalPredicateBetween) {
+			return new IndexOnlyScanPlanOperator(covering, table, (LocalPredicateBetween) pred, cardinality);
+		}
+		else {
+			return new IndexOnlyScanPlanOperator(covering, table, cardinality);
+		}
+	}
+	
+	/**
+	 * Checks whether a scan over all keys of the given index produces a key for every row of the
+	 * table, which requires the indexed column not to be nullable.
+	 * 
+	 * @param index The index to check.
+	 * @return true, if the scan over all keys of the index sees every row, false otherwise.
+	 */
+	private static boolean coversAllRows(IndexDescriptor index)
+	{
+		return !index.getSchema().getIndexedColumnSchema().isNullable();
+	}
+	
 	/**
 	 * Takes a join predicate and checks if its join columns (right and left hand side) are
 	 * already contained in the list of columns that the right and left hand side produces.
@@ -233,6 +325,66 @@ public class PhysicalPlanGeneratorUtils
 	}
 	
 	
+	/**
+	 * Creates the group by operator over the given plan. If the plan is already sorted on the
+	 * grouping columns, the groups are formed from the sorted stream. Otherwise, if no order on
+	 * the grouping columns is required above the group by, the groups are formed through hashing,
+	 * which saves the sort. If an order is required, a sort on the grouping columns is added.
+	 * 
+	 * @param pop The plan producing the tuples to be grouped.
+	 * @param outCols The columns produced by the group by.
+	 * @param groupColIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColIndices The indices of the aggregation columns in the input tuple.
+	 * @param outCardinality The number of groups.
+	 * @param orderRequired Flag indicating that the output must be ordered on the grouping columns.
+	 * @return The group by operator over the given plan.
+	 * @throws OptimizerException Thrown, if the group by operator could not be created.
+	 */
+	public static final GroupByPlanOperator createGroupBy(OptimizerPlanOperator pop,
+			ProducedColumn[] outCols, int[] groupColIndices, int[] aggColIndices, int outCardinality,
+			boolean orderRequired)
+	throws OptimizerException
+	{
+		try {
+			return new GroupByPlanOperator(pop, outCols, groupColIndices, aggColIndices, outCardinality);
+		}
+		catch (OptimizerException oex) {
+			// the plan is not sorted on the grouping columns
+		}
+		
+		if (!orderRequired) {
+			return new GroupByPlanOperator(pop, outCols, groupColIndices, aggColIndices, outCardinality, true);
+		}
+		boolean[] ascending = new boolean[groupColIndices.length];
+		Arrays.fill(ascending, true);
+		return new GroupByPlanOperator(new SortPlanOperator(pop, groupColIndices, ascending),
+				outCols, groupColIndices, aggColIndices, outCardinality);
+	}
+	
+	/**
+	 * Limits the rows produced by the given plan. If the plan ends in a sort, the sort is replaced
+	 * by one with the row limit, which keeps only the first tuples in its order. Otherwise, the
+	 * plan produces its tuples in the required order already, and a sort without sort columns
+	 * takes its first tuples.
+	 * 
+	 * @param plan The plan whose rows are limited.
+	 * @param rowLimit The maximal number of rows, or -1, if the rows are not limited.
+	 * @return The plan with the row limit.
+	 */
+	public static final OptimizerPlanOperator applyRowLimit(OptimizerPlanOperator plan, long rowLimit)
+	{
+		if (rowLimit < 0) {
+			return plan;
+		}
+		if (plan instanceof SortPlanOperator) {
+			SortPlanOperator sort = (SortPlanOperator) plan;
+			long limit = sort.getRowLimit() < 0 ? rowLimit : Math.min(rowLimit, sort.getRowLimit());
+			return new SortPlanOperator(sort.getChild(), sort.getSortColumnIndices(), sort.getSortAscending(), limit);
+		}
+		return new SortPlanOperator(plan, new int[0], new boolean[0], rowLimit);
+	}
+	
+	
 	// --------------------------------------------------------------------------------------------
 	//                                   Pruning and comparison
 	// --------------------------------------------------------------------------------------------
@@ -586,4 +738,83 @@ public class PhysicalPlanGeneratorUtils
 			return fetch;
 		}
 	}
+	
+	// --------------------------------------------------------------------------------------------
+	//                                   Intra-query parallelism
+	// --------------------------------------------------------------------------------------------
+	
+	/**
+	 * Chooses the number of scans that scan a table side by side. The processors are shared
+	 * evenly among the queries that may run at the same time, and every scan should get at least
+	 * one range of pages of the table.
+	 * 
+	 * @param numPages The number of pages of the table.
+	 * @param maxConcurrentQueries The number of queries that may run at the same time, or 0, if
+	 *                             queries are not to be run in parallel.
+	 * @return The degree of parallelism, 1 for a serial scan.
+	 */
+	public static final int chooseDegreeOfParallelism(int numPages, int maxConcurrentQueries)
+	{
+		if (maxConcurrentQueries < 1) {
+			return 1;
+		}
+		int dop = Runtime.getRuntime().availableProcessors() / maxConcurrentQueries;
+		dop = Math.min(dop, numPages / PageRangeDispenser.DEFAULT_MORSEL_PAGES);
+		return Math.max(dop, 1);
+	}
+	
+	/**
+	 * Chooses the number of threads that generate the sorted runs of a sort. The processors are
+	 * shared evenly among the queries that may run at the same time, and every thread should get
+	 * at least {@link #MIN_TUPLES_PER_SORT_THREAD} tuples to sort.
+	 * 
+	 * @param cardinality The estimated number of tuples to sort.
+	 * @param maxConcurrentQueries The number of queries that may run at the same time, or 0, if
+	 *                             queries are not to be run in parallel.
+	 * @return The degree of parallelism, 1 for a serial sort.
+	 */
+	public static final int chooseSortParallelism(long cardinality, int maxConcurrentQueries)
+	{
+		if (maxConcurrentQueries < 1) {
+			return 1;
+		}
+		long dop = Runtime.getRuntime().availableProcessors() / maxConcurrentQueries;
+		dop = Math.min(dop, cardinality / MIN_TUPLES_PER_SORT_THREAD);
+		return (int) Math.max(dop, 1);
+	}
+	
+	/**
+	 * Assigns the table scans and the sorts in the given plan a degree of parallelism. Scans on the
+	 * inner side of a nested loop join are opened once for every outer tuple and are kept serial,
+	 * as are scans of tables whose number of pages is not known. A sort with a row limit keeps
+	 * only its first tuples and is always serial.
+	 * 
+	 * @param plan The plan whose scans are parallelized.
+	 * @param maxConcurrentQueries The number of queries that may run at the same time, or 0, if
+	 *                             queries are not to be run in parallel.
+	 */
+	public static final void parallelize(OptimizerPlanOperator plan, int maxConcurrentQueries)
+	{
+		if (plan instanceof TableScanPlanOperator) {
+			TableScanPlanOperator scan = (TableScanPlanOperator) plan;
+			int numPages = scan.getTable().getStatistics().getNumberOfPages();
+			scan.setDegreeOfParallelism(chooseDegreeOfParallelism(numPages, maxConcurrentQueries));
+		}
+		else if (plan instanceof SortPlanOperator) {
+			SortPlanOperator sort = (SortPlanOperator) plan;
+			if (sort.getRowLimit() < 0) {
+				sort.setDegreeOfParallelism(chooseSortParallelism(sort.getChild().getOutputCardinality(), maxConcurrentQueries));
+			}
+			parallelize(sort.getChild(), maxConcurrentQueries);
+		}
+		else if (plan instanceof NestedLoopJoinPlanOperator) {
+			parallelize(((NestedLoopJoinPlanOperator) plan).getOuterChild(), maxConcurrentQueries);
+		}
+		else {
+			Iterator<OptimizerPlanOperator> children = plan.getChildren();
+			while (children.hasNext()) {
+				parallelize(children.next(), maxConcurrentQueries);
+			}
+		}
+	}
 }
@@ -0,0 +1,43 @@
+package de.tuberlin.dima.minidb.parser;
+
+
+/**
+ * A parse tree node representing a LIMIT clause, which holds the maximal number of rows
+ * that the query returns.
+ */
+public class LimitClause extends AbstractListNode<IntegerLiteral>
+{
+	/**
+	 * Creates a plain empty LIMIT clause.
+	 */
+	public LimitClause()
+	{
+		super("LIMIT", false);
+	}
+
+
+	/**
+	 * Sets the number of rows of the LIMIT clause.
+	 *
+	 * @param rowCount The literal with the maximal number of rows.
+	 */
+	public void setRowCount(IntegerLiteral rowCount)
+	{
+		if (getNumberOfChildren() == 0) {
+			super.addElement(rowCount);
+		}
+		else {
+			super.setElement(rowCount, 0);
+		}
+	}
+
+	/**
+	 * Gets the number of rows of the LIMIT clause.
+	 *
+	 * @return The literal with the maximal number of rows.
+	 */
+	public IntegerLiteral getRowCount()
+	{
+		return super.getElement(0);
+	}
+}
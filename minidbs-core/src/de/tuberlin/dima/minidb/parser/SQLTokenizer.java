@@ -379,6 +379,9 @@ public class SQLTokenizer
 		else if (str.equalsIgnoreCase("BY")) {
 			return new Token(Token.TokenType.BY);
 		}
+		else if (str.equalsIgnoreCase("LIMIT")) {
+			return new Token(Token.TokenType.LIMIT);
+		}
 		else if (str.equalsIgnoreCase("INSERT")) {
 			return new Token(Token.TokenType.INSERT);
 		}
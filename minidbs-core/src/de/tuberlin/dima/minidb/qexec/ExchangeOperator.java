@@ -0,0 +1,16 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+/**
+ * Interface describing a physical plan operator that hands the tuples of several producing
+ * sub-plans, each run by a thread of its own, to the thread that consumes them. A gathering
+ * exchange merges the tuples of all producers into one stream; a repartitioning exchange has
+ * one consumer per partition and routes each tuple to the consumer of the hash of its key.
+ *
+ * This interface is empty and serves only as a marker. All relevant methods
+ * are specified in the interface <tt>PhysicalPlanOperator</tt>.
+ */
+public interface ExchangeOperator extends PhysicalPlanOperator
+{
+
+}
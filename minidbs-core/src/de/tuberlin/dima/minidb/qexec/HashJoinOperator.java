@@ -0,0 +1,15 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+/**
+ * Interface describing a physical plan operator that joins two streams of tuples through
+ * hashing. The tuples of the build side are put into a hash table over their join columns,
+ * and the tuples of the probe side are looked up in it.
+ *
+ * This interface is empty and serves only as a marker. All relevant methods
+ * are specified in the interface <tt>PhysicalPlanOperator</tt>.
+ */
+public interface HashJoinOperator extends PhysicalPlanOperator
+{
+
+}
@@ -1,17 +1,33 @@
 package de.tuberlin.dima.minidb.qexec;
 
 
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
 /**
  * Operator representing the access to an index in a correlated fashion. The
  * index evaluates only equality predicates against one column of the current
  * correlated tuple.
  * 
- * This interface is empty and serves only as a marker. The methods are all
+ * Apart from {@link #prepareLookups(DataTuple[], int)}, the methods are all
  * specified in <tt>PhysicalPlanOperator</tt>.
  * 
  * @author Stephan Ewen (stephan.ewen@tu-berlin.de)
  */
 public interface IndexCorrelatedLookupOperator extends PhysicalPlanOperator
 {
-	
+	/**
+	 * Announces the tuples the operator will be opened with next, so that it can look up their
+	 * keys in one batch rather than one at a time. A nested loop join calls this for each block of
+	 * tuples it draws from its outer side. The operator may still be opened with other tuples.
+	 * <p>
+	 * The default implementation ignores the announcement.
+	 * 
+	 * @param correlatedTuples The tuples the operator will be opened with.
+	 * @param num The number of tuples at the beginning of the array.
+	 * @throws QueryExecutionException Thrown, if the lookups failed.
+	 */
+	public default void prepareLookups(DataTuple[] correlatedTuples, int num) throws QueryExecutionException
+	{
+	}
 }
@@ -88,7 +88,30 @@ public final class LowLevelPredicate implements LocalPredicate
 	{
 		return this.colIndex;
 	}
-		
+
+	/**
+	 * Gets the literal that the column is compared to.
+	 *
+	 * @return The literal of the predicate.
+	 */
+	public DataField getLiteral()
+	{
+		return this.literal;
+	}
+
+	/**
+	 * Checks whether the result of comparing a (non-NULL) field to the literal satisfies the operator.
+	 * This lets evaluations that compare values without creating a field apply the predicate.
+	 *
+	 * @param comparison The sign of the comparison, -1, 0 or 1, as the signum of the field's
+	 *                   <code>compareTo</code>.
+	 * @return True, if the comparison result passes the predicate, false otherwise.
+	 */
+	public boolean evaluateComparison(int comparison)
+	{
+		return (comparison == this.c1 | comparison == this.c2);
+	}
+
 	
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.qexec.predicate.LocalPredicate#evaluate(de.tuberlin.dima.minidb.core.DataTuple)
@@ -112,7 +135,7 @@ public final class LowLevelPredicate implements LocalPredicate
 	 */
 	public boolean evaluate(DataField field)
 	{
-		int c = field.compareTo(this.literal);
+		int c = Integer.signum(field.compareTo(this.literal));
 		return (c == this.c1 | c == this.c2);
 	}
 	
@@ -129,7 +152,7 @@ public final class LowLevelPredicate implements LocalPredicate
 	 */
 	public boolean evaluateWithNull(DataField field)
 	{
-		int c = field.compareTo(this.literal);
+		int c = Integer.signum(field.compareTo(this.literal));
 		boolean b = !field.isNULL();
 		return (c == this.c1 | c == this.c2) & b;
 	}
@@ -155,7 +178,7 @@ public final class LowLevelPredicate implements LocalPredicate
 		for (int i = 0; i < fields.length; i++) {
 			@SuppressWarnings("unchecked")
 			T ft = (T) fields[i];
-			int c = ft.compareTo(lt);
+			int c = Integer.signum(ft.compareTo(lt));
 			result[i] = (c == c1 | c == c2);
 		}
 	}
@@ -181,7 +204,7 @@ public final class LowLevelPredicate implements LocalPredicate
 		for (int i = 0; i < fields.length; i++) {
 			@SuppressWarnings("unchecked")
 			T ft = (T) fields[i];
-			int c = ft.compareTo(lt);
+			int c = Integer.signum(ft.compareTo(lt));
 			boolean b = !ft.isNULL();
 			result[i] = (c == c1 | c == c2) & b;
 		}
@@ -80,6 +80,39 @@ public class OperatorFactory
 		return registry.createTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength);
 	}
 	
+	/**
+	 * Creates a table scan operator that is one of several scans of a parallel plan. It scans
+	 * the ranges of pages it claims from the dispenser, which it shares with the other scans of
+	 * the table.
+	 * 
+	 * @param bufferPool The buffer pool used to get the pages that are scanned.
+	 * @param tableManager The table manager of the scanned table.
+	 * @param resourceId The resource id of the table resource.
+	 * @param producedColumnIndexes The indexes of the columns that occur in the produced
+	 *                              tuple in the order as they are produced.
+	 * @param predicate The predicate evaluated within this TableScan.
+	 * @param prefetchWindowLength The number of pages to prefetch in advance to the page
+	 *                             that the operator currently works on.
+	 * @param dispenser The dispenser of the ranges of pages to scan.
+	 * @return A new physical plan operator representing a TableScan.
+	 */
+	public static TableScanOperator createTableScanOperator(
+			BufferPoolManager bufferPool,
+			TableResourceManager tableManager,
+			int resourceId,
+			int[] producedColumnIndexes,
+			LowLevelPredicate[] predicate,
+			int prefetchWindowLength,
+			PageRangeDispenser dispenser)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createTableScanOperator(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate,
+				prefetchWindowLength, dispenser);
+	}
+	
 	/**
 	 * Creates an index scan operator that returns the RIDs for the key
 	 * given as the equality literal. This index scan is used to evaluate a local equality
@@ -122,6 +155,27 @@ public class OperatorFactory
 		return registry.getIndexScanOperatorForBetweenPredicate(index, lowerBound, lowerIncluded, upperBound, upperIncluded);
 	}
 
+	/**
+	 * Creates an index scan operator returning the keys in the given range, rather than the RIDs.
+	 * The scan answers a query from the index alone, if the query needs no other column of the
+	 * indexed table than the key.
+	 * 
+	 * @param index The index object used to access the index.
+	 * @param startKey The lower bound of the range, or null to start at the first key.
+	 * @param stopKey The upper bound of the range.
+	 * @param startKeyIncluded Flag indicating whether the lower bound itself is included in the range.
+	 * @param stopKeyIncluded Flag indicating whether the upper bound itself is included in the range.
+	 */
+	public static IndexScanOperator createIndexScanOperator(BTreeIndex index,
+			DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createIndexScanOperator(index, startKey, stopKey, startKeyIncluded, stopKeyIncluded);
+	}
+
 	/**
 	 * Creates an index scan operator that works in a correlated fashion. For each time it is opened, 
 	 * it returns the RIDs for the key equal to the correlated tuple's column at the specified position. 
@@ -176,6 +230,31 @@ public class OperatorFactory
 		return registry.createFetchOperator(child, bufferPool, tableResourceId, outputColumnMap);
 	}
 	
+	/**
+	 * Creates a new FETCH operator that sorts batches of RIDs by their page and fetches all
+	 * tuples of a page under a single pin. The operator is instantiated through the extension
+	 * factory. The columns are mapped as described for
+	 * {@link #createFetchOperator(PhysicalPlanOperator, BufferPoolManager, int, int[])}.
+	 * 
+	 * @param child The child operator of this fetch operator.
+	 * @param bufferPool The buffer pool used to take the pages from.
+	 * @param tableResourceId The resource id of the table that the tuples are fetched from.
+	 * @param outputColumnMap The map describing how the column of the tuple produced by the
+	 *                        FETCH operator are produced from the tuple fetched from the table.
+	 * @param batchSize The number of RIDs that are sorted and fetched together.
+	 * @param preserveOrder Flag indicating that the tuples are produced in the order in which the
+	 *                      child produced their RIDs.
+	 */
+	public static FetchOperator createFetchOperator(PhysicalPlanOperator child,
+			BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap, int batchSize, boolean preserveOrder)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createFetchOperator(child, bufferPool, tableResourceId, outputColumnMap, batchSize, preserveOrder);
+	}
+	
 	
 	/**
 	 * Creates a new filter operator that evaluates a local predicate on the incoming tuples.
@@ -314,6 +393,71 @@ public class OperatorFactory
 		return registry.createMergeJoinOperator(leftChild, rightChild, leftJoinColumns, rightJoinColumns, leftOutColumnMap, rightOutColumnMap);
 	}
 	
+	/**
+	 * Creates a hash join operator. The tuples of the build side are kept in a hash table over
+	 * their join columns, and the tuples of the probe side are joined with the build tuples that
+	 * have equal join columns and qualify for the join predicate, if one is given. The column maps
+	 * are used as for the merge join.
+	 * 
+	 * @param probeChild The operator producing the tuples that are looked up.
+	 * @param buildChild The operator producing the tuples that are put into the hash table.
+	 * @param probeJoinColumns The indices of the join columns in the probe input.
+	 * @param buildJoinColumns The indices of the join columns in the build input.
+	 * @param joinPredicate A further predicate on pairs of probe and build tuples, or null.
+	 * @param probeOutColumnMap The map describing which position in the probe input tuple goes
+	 *                          to which position in the output tuple.
+	 * @param buildOutColumnMap The map describing which position in the build input tuple goes
+	 *                          to which position in the output tuple.
+	 * @return A Hash-Join-Operator.
+	 */
+	public static HashJoinOperator createHashJoinOperator(
+			PhysicalPlanOperator probeChild, PhysicalPlanOperator buildChild,
+			int[] probeJoinColumns, int[] buildJoinColumns, JoinPredicate joinPredicate,
+			int[] probeOutColumnMap, int[] buildOutColumnMap)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashJoinOperator(probeChild, buildChild, probeJoinColumns, buildJoinColumns, joinPredicate,
+				probeOutColumnMap, buildOutColumnMap);
+	}
+	
+	/**
+	 * Creates an exchange operator that gathers the tuples of several sub-plans, each run by
+	 * a thread of its own.
+	 * 
+	 * @param producers The sub-plans whose tuples are gathered.
+	 * @return An Exchange-Operator.
+	 */
+	public static ExchangeOperator createGatherOperator(PhysicalPlanOperator[] producers)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createGatherOperator(producers);
+	}
+	
+	/**
+	 * Creates exchange operators that repartition the tuples of several sub-plans, each run by
+	 * a thread of its own, by the hash of their key columns, one operator per partition.
+	 * 
+	 * @param producers The sub-plans whose tuples are repartitioned.
+	 * @param keyColumns The columns whose hash decides the partition of a tuple.
+	 * @param numPartitions The number of partitions.
+	 * @return For each partition the Exchange-Operator producing its tuples.
+	 */
+	public static ExchangeOperator[] createRepartitionOperators(PhysicalPlanOperator[] producers,
+			int[] keyColumns, int numPartitions)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createRepartitionOperators(producers, keyColumns, numPartitions);
+	}
+	
 	/**
 	 * Creates a new sort operator that performs an external merge-sort.
 	 * 
@@ -344,6 +488,53 @@ public class OperatorFactory
 				estimatedCardinality, sortColumns, columnsAscending);
 	}
 	
+	/**
+	 * Creates a new sort operator that performs an external merge-sort whose sorted runs are
+	 * generated by the given number of threads.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param queryHeap The heap which manages the memory and manages reading and writing of the
+	 *                  temporary lists.
+	 * @param tupleSchema An array of the data types of the tuple's fields.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The indices of the columns after which to sort.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @param degreeOfParallelism The number of threads that generate the sorted runs.
+	 * @return An implementation of the SortOperator.
+	 */
+	public static SortOperator createSortOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] tupleSchema, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createSortOperator(child, queryHeap, tupleSchema,
+				estimatedCardinality, sortColumns, columnsAscending, degreeOfParallelism);
+	}
+	
+	/**
+	 * Creates a sort operator that produces only the first tuples in the sort order, at most
+	 * as many as the limit. It needs no heap space, since it keeps only those tuples.
+	 * 
+	 * @param child The child of the operator, producing the tuples to be sorted.
+	 * @param sortColumns The indices of the columns after which to sort. Without sort columns,
+	 *                    the first tuples of the child are produced.
+	 * @param columnsAscending An array indicating the sort direction of each sort column.
+	 * @param limit The maximal number of tuples to produce.
+	 * @return An implementation of the TopNSortOperator.
+	 */
+	public static TopNSortOperator createTopNSortOperator(PhysicalPlanOperator child,
+			int[] sortColumns, boolean[] columnsAscending, int limit)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createTopNSortOperator(child, sortColumns, columnsAscending, limit);
+	}
+	
 	/**
 	 * Create a group by operator that groups and aggregates a sorted stream of tuples.
 	 * 
@@ -404,4 +595,41 @@ public class OperatorFactory
 				aggregateFunctions, aggColumnTypes, 
 				groupColumnOutputPositions, aggregateColumnOutputPosition);
 	}
+
+	/**
+	 * Creates a group by operator that groups and aggregates a stream of tuples in any order
+	 * through hashing. Groups that do not fit into the memory granted by the query heap are
+	 * partitioned to temp space and aggregated in further passes. The columns are described as for
+	 * {@link #createGroupByOperator(PhysicalPlanOperator, int[], int[], OutputColumn.AggregationType[], DataType[], int[], int[])}.
+	 * 
+	 * @param child The child of the operator, delivering the tuples to be grouped and aggregated
+	 *              in any order.
+	 * @param queryHeap The query heap that provides the memory for the groups and the temp space.
+	 * @param inputColumnTypes The types of the columns of the tuples produced by the child.
+	 * @param estimatedGroups The estimated number of groups.
+	 * @param groupColumnIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated functions.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping columns will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced
+	 *                                      tuple the aggregate columns will be put.
+	 * @return An implementation of the GroupByOperator.
+	 */
+	public static GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child,
+			QueryHeap queryHeap, DataType[] inputColumnTypes, int estimatedGroups,
+			int[] groupColumnIndices, int[] aggColumnIndices,
+			OutputColumn.AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes,
+			int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		if (registry == null) {
+			registry = AbstractExtensionFactory.getExtensionFactory();
+		}
+		
+		return registry.createHashGroupByOperator(child, queryHeap, inputColumnTypes, estimatedGroups,
+				groupColumnIndices, aggColumnIndices, aggregateFunctions, aggColumnTypes, 
+				groupColumnOutputPositions, aggregateColumnOutputPosition);
+	}
 }
@@ -0,0 +1,100 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Hands out disjoint ranges of the data pages of a table to the table scans of a parallel plan.
+ * Each scan claims a range of pages, a morsel, scans it, and claims the next one, until all pages
+ * between the first and the last data page of the table have been handed out. Scans that are
+ * faster than others thereby take over more of the table, and no scan waits for a share that was
+ * fixed in advance.
+ * <p>
+ * A dispenser is shared by a known number of scans. Each pass over the table opens every one of
+ * them once, and the pass that follows starts over at the first page once all scans of the previous
+ * pass have been opened. The page range of the table is taken at the start of each pass.
+ */
+public final class PageRangeDispenser
+{
+	/**
+	 * The number of pages handed out at a time, if not given otherwise.
+	 */
+	public static final int DEFAULT_MORSEL_PAGES = 64;
+
+	private final TableResourceManager tableManager;
+
+	private final int morselPages;
+
+	private final int numScans;
+
+	/**
+	 * The scans opened in the current pass.
+	 */
+	private int numOpened;
+
+	private int nextPage;
+
+	private int lastPage;
+
+
+	/**
+	 * Creates a dispenser for the pages of the given table.
+	 *
+	 * @param tableManager The manager of the scanned table.
+	 * @param morselPages The number of pages handed out at a time.
+	 * @param numScans The number of scans that share the dispenser.
+	 */
+	public PageRangeDispenser(TableResourceManager tableManager, int morselPages, int numScans)
+	{
+		if (morselPages < 1 || numScans < 1) {
+			throw new IllegalArgumentException("Morsels and the number of scans must not be empty.");
+		}
+		this.tableManager = tableManager;
+		this.morselPages = morselPages;
+		this.numScans = numScans;
+		this.numOpened = numScans;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the number of scans that share this dispenser.
+	 *
+	 * @return The number of scans.
+	 */
+	public int getNumberOfScans()
+	{
+		return this.numScans;
+	}
+
+	/**
+	 * Announces that one of the scans is opened. The first scan of a pass starts the pass over.
+	 */
+	public synchronized void open()
+	{
+		if (this.numOpened == this.numScans) {
+			this.numOpened = 0;
+			this.nextPage = this.tableManager.getFirstDataPageNumber();
+			this.lastPage = this.tableManager.getLastDataPageNumber();
+		}
+		this.numOpened++;
+	}
+
+	/**
+	 * Claims the next range of pages.
+	 *
+	 * @param range The array that receives the first and the last page of the range.
+	 * @return true, if a range was claimed, false, if all pages of the pass have been handed out.
+	 */
+	public synchronized boolean claim(int[] range)
+	{
+		if (this.nextPage > this.lastPage) {
+			return false;
+		}
+		range[0] = this.nextPage;
+		range[1] = (int) Math.min(this.lastPage, (long) this.nextPage + this.morselPages - 1);
+		this.nextPage = range[1] + 1;
+		return true;
+	}
+}
@@ -59,16 +59,50 @@ public interface PhysicalPlanOperator
 	
 	
 	/**
-	 * Produces the next batch of tuples from the plan below and stores them in the 
-	 * given array. Returns true if a full batch was returned, false otherwise. 
+	 * The number of tuples an operator draws from its child at a time, if it consumes
+	 * its child in batches.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+	
+	
+	/**
+	 * Produces the next tuple from the plan below. 
 	 * 
-	 * @return The next tuple, produced by this operator.
+	 * @return The next tuple, produced by this operator, or null, if the operator is exhausted.
 	 * @throws QueryExecutionException Thrown, if the query execution could not be completed
 	 *                                 for whatever reason.
 	 */
 	public DataTuple next() throws QueryExecutionException;
 	
 	
+	/**
+	 * Produces the next batch of tuples from the plan below and stores them at the beginning
+	 * of the given array. The operator fills as much of the array as it can cheaply; a batch
+	 * that is not full does not mean that the operator is exhausted, only an empty batch does.
+	 * Calls to this method and to {@link #next()} may be mixed, the tuples are produced in the
+	 * same order either way.
+	 * 
+	 * The default implementation fills the array by calls to {@link #next()}, so that operators
+	 * that do not produce batches themselves can be mixed with ones that do. Operators that
+	 * consume their children in batches call this method on them.
+	 * 
+	 * @param batch The array to store the tuples in. Its length is the maximal number of tuples
+	 *              to produce.
+	 * @return The number of tuples stored, 0, if the operator is exhausted.
+	 * @throws QueryExecutionException Thrown, if the query execution could not be completed
+	 *                                 for whatever reason.
+	 */
+	public default int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		int num = 0;
+		DataTuple tuple;
+		while (num < batch.length && (tuple = next()) != null) {
+			batch[num++] = tuple;
+		}
+		return num;
+	}
+	
+	
 	/**
 	 * Closes the query plan by releasing all resources and runtime structures used
 	 * in this operator and the plan below.
@@ -0,0 +1,15 @@
+package de.tuberlin.dima.minidb.qexec;
+
+
+/**
+ * Interface describing a physical plan operator that produces only the first tuples of its
+ * input in the order of a sort. Unlike a full sort, it keeps no more tuples than it produces,
+ * and needs no heap space and no temporary lists.
+ *
+ * This interface is empty and serves only as a marker. All relevant methods
+ * are specified in the interface <tt>PhysicalPlanOperator</tt>.
+ */
+public interface TopNSortOperator extends SortOperator
+{
+
+}
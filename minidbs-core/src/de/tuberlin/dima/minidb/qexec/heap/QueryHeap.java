@@ -260,24 +260,11 @@ public class QueryHeap
 	public int reserveSortHeap(DataType[] columnTypes, int estimatedCardinality)
 	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
 	{		
-		// the id we will get assigned
-		Integer id = null;
 		AssignedSortHeapSpace space = null;
 		
 		// calculate space
 		int tupleWidth = getTupleBytes(columnTypes);
-		long minimalBytes = MIN_INTERNAL_SORT_TUPLES * tupleWidth;
-		long share = 0;
-		
-		// check if it is at all possible to get our minimal tuple count
-		if (minimalBytes > this.maxBytesPerAssignment) {
-			throw new QueryExecutionOutOfHeapSpaceException(
-					"Query Heap is too small to assign the minimal bytes for sorting to the query."
-					+ " Required bytes: " + minimalBytes + ", Maximal bytes for one sort: " + 
-					this.maxBytesPerAssignment + " (" +
-					((1-FRACTION_RESERVED_FOR_BLOCK_BUFFERS) * MAX_INTERNAL_SPACE_FRACTION_PER_ASSIGNMENT)
-					+ " of the total heap space).");
-		}
+		long minimalBytes = getMinimalSortBytes(tupleWidth);
 		
 		// request object that we need to wait on if we can not immediately get the space
 		HeapRequest request = null;
@@ -339,37 +326,119 @@ public class QueryHeap
 				this.requestedHeapSizes.remove(request);
 			}
 			
-			// compute our share
-			if (this.requestedHeapSizes.isEmpty()) {
-				// no unserved request pending, assign as by the exponential function
-				share = (long) Math.pow(this.bytesFree, this.assignmentExponent);
-				long cardinalityRequirement = 2L * estimatedCardinality * tupleWidth;
-				share = cardinalityRequirement < 0 ? share : Math.min(share, cardinalityRequirement);
-				share = Math.max(share, minimalBytes);
-			}
-			else {
-				share = minimalBytes;
-			}
-			
-			// reserve space
-			this.bytesFree -= share;
-			do {
-				id = new Integer(this.idGenerator.nextInt(Integer.MAX_VALUE) + 1);
-			}
-			while (this.assignedSortSpace.containsKey(id));
-			
-			space = new AssignedSortHeapSpace(columnTypes, id.intValue(), share);
-			this.assignedSortSpace.put(id, space);
+			space = assignSortSpace(columnTypes, estimatedCardinality, tupleWidth, minimalBytes);
 		}
 		// ---------------------------------------------------------------------
 		// END: Critical section on shared structures
 		// ---------------------------------------------------------------------
 		
-		int numInternalTuples = (int) (share / tupleWidth);
+		return allocateSortArray(space, tupleWidth);
+	}
+	
+	/**
+	 * Reserves a portion of the heap for sorting as {@link #reserveSortHeap(DataType[], int)} does,
+	 * but only if that is possible without waiting: if other requests are pending or the heap
+	 * does not have the minimal space free, nothing is reserved. An operator that holds a portion
+	 * already uses this function for further portions, since it would otherwise wait for space
+	 * that only it can release.
+	 * 
+	 * @param tupleSchema The schema of the tuples, used to estimate the memory consumption.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @return The ID under which the assigned portion of the heap can be addressed, or -1, if
+	 *         no portion could be reserved at once.
+	 * @throws QueryExecutionOutOfHeapSpaceException Thrown, if the heap is in total to small
+	 *                                               to provide enough space to sort tuples of
+	 *                                               the given schema.
+	 */
+	public int tryReserveSortHeap(DataType[] columnTypes, int estimatedCardinality)
+	throws QueryExecutionOutOfHeapSpaceException, QueryHeapException
+	{
+		AssignedSortHeapSpace space = null;
+		int tupleWidth = getTupleBytes(columnTypes);
+		long minimalBytes = getMinimalSortBytes(tupleWidth);
+		
+		synchronized (this.assignableHeapMonitor)
+		{
+			if (this.closed) {
+				throw new QueryHeapException("The query heap has been closed.");
+			}
+			if (!this.requestedHeapSizes.isEmpty() || this.bytesFree < minimalBytes) {
+				return -1;
+			}
+			space = assignSortSpace(columnTypes, estimatedCardinality, tupleWidth, minimalBytes);
+		}
+		
+		return allocateSortArray(space, tupleWidth);
+	}
+	
+	/**
+	 * Gets the minimal number of bytes for sorting tuples of the given width.
+	 * 
+	 * @throws QueryExecutionOutOfHeapSpaceException Thrown, if a single assignment cannot be
+	 *                                               that large.
+	 */
+	private long getMinimalSortBytes(int tupleWidth) throws QueryExecutionOutOfHeapSpaceException
+	{
+		long minimalBytes = MIN_INTERNAL_SORT_TUPLES * tupleWidth;
+		
+		// check if it is at all possible to get our minimal tuple count
+		if (minimalBytes > this.maxBytesPerAssignment) {
+			throw new QueryExecutionOutOfHeapSpaceException(
+					"Query Heap is too small to assign the minimal bytes for sorting to the query."
+					+ " Required bytes: " + minimalBytes + ", Maximal bytes for one sort: " + 
+					this.maxBytesPerAssignment + " (" +
+					((1-FRACTION_RESERVED_FOR_BLOCK_BUFFERS) * MAX_INTERNAL_SPACE_FRACTION_PER_ASSIGNMENT)
+					+ " of the total heap space).");
+		}
+		return minimalBytes;
+	}
+	
+	/**
+	 * Computes the share of a sort and registers the assignment. Must be called while holding
+	 * the monitor of the assignable heap, with at least the minimal bytes free.
+	 */
+	private AssignedSortHeapSpace assignSortSpace(DataType[] columnTypes, int estimatedCardinality,
+			int tupleWidth, long minimalBytes)
+	{
+		Integer id = null;
+		long share = 0;
+		
+		// compute our share
+		if (this.requestedHeapSizes.isEmpty()) {
+			// no unserved request pending, assign as by the exponential function
+			share = (long) Math.pow(this.bytesFree, this.assignmentExponent);
+			long cardinalityRequirement = 2L * estimatedCardinality * tupleWidth;
+			share = cardinalityRequirement < 0 ? share : Math.min(share, cardinalityRequirement);
+			share = Math.max(share, minimalBytes);
+		}
+		else {
+			share = minimalBytes;
+		}
+		
+		// reserve space
+		this.bytesFree -= share;
+		do {
+			id = new Integer(this.idGenerator.nextInt(Integer.MAX_VALUE) + 1);
+		}
+		while (this.assignedSortSpace.containsKey(id));
+		
+		AssignedSortHeapSpace space = new AssignedSortHeapSpace(columnTypes, id.intValue(), share);
+		this.assignedSortSpace.put(id, space);
+		return space;
+	}
+	
+	/**
+	 * Gives the assigned space its array for internal sorts.
+	 * 
+	 * @return The ID of the assigned space.
+	 */
+	private int allocateSortArray(AssignedSortHeapSpace space, int tupleWidth)
+	{
+		int numInternalTuples = (int) (space.getHeapSize() / tupleWidth);
 		space.setNumInternallySortedTuples(numInternalTuples);
 		space.setInternalSortArray(getPooledSortArray(numInternalTuples));
 		
-		return id.intValue();
+		return space.getHeapId();
 	}
 	
 	
@@ -60,6 +60,11 @@ public final class AnalyzedSelectQuery extends Relation
 	 */
 	private boolean grouping;
 	
+	/**
+	 * The maximal number of rows the query returns, or -1, if the rows are not limited.
+	 */
+	private long rowLimit = -1;
+	
 	// ------------------------------------------------------------------------
 	// ------------------------------------------------------------------------
 		
@@ -217,6 +222,27 @@ public final class AnalyzedSelectQuery extends Relation
 	{
 		return this.grouping;
 	}
+	
+	/**
+	 * Sets the maximal number of rows that the query returns, as given in its LIMIT clause.
+	 * 
+	 * @param rowLimit The maximal number of rows, or -1, if the rows are not limited.
+	 */
+	public void setRowLimit(long rowLimit)
+	{
+		this.rowLimit = rowLimit;
+	}
+	
+	/**
+	 * Gets the maximal number of rows that the query returns. If the query has an order, the
+	 * rows are the first ones in that order.
+	 * 
+	 * @return The maximal number of rows, or -1, if the rows are not limited.
+	 */
+	public long getRowLimit()
+	{
+		return this.rowLimit;
+	}
 
 	/* (non-Javadoc)
 	 * @see de.tuberlin.dima.minidb.semantics.Relation#getColumn(java.lang.String)
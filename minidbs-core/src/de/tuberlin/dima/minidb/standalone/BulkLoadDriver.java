@@ -0,0 +1,191 @@
+package de.tuberlin.dima.minidb.standalone;
+
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.DBInstance;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.Catalogue;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.tables.BulkLoader;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Command line tool that bulk loads a table of the catalogue from a delimited text file and
+ * rebuilds all indexes of the table, see {@link BulkLoader}. The tool works on the files directly,
+ * so no instance may run on the same data directory at the same time. The statistics in the
+ * catalogue are not updated.
+ */
+public class BulkLoadDriver
+{
+	/**
+	 * The string describing the valid syntax to call the program.
+	 */
+	private static final String USAGE = "MiniDBS-Load -table <name> -input <file> [-options]\n\n" +
+			"where options include:\n" +
+			"  -config <file>           The configuration file to use.\n" +
+			"  -catalogue <file>        The catalogue file to use.\n" +
+			"  -delimiter <char>        The character separating the fields (default '|').\n" +
+			"  -fill <factor>           The fill factor of the index pages (default 0.9).\n";
+
+
+	/**
+	 * The main entry point of the bulk load tool. The return codes are those of {@link DBInstance}.
+	 *
+	 * @param args The array of command line parameters.
+	 */
+	public static void main(String[] args)
+	{
+		String configFileName = Constants.CONFIG_FILE_PATH;
+		String catalogueFileName = Constants.CATALOGUE_FILE_PATH;
+		String tableName = null;
+		String inputFileName = null;
+		char delimiter = '|';
+		float fillFactor = 0.9f;
+
+		// parse the arguments
+		for (int i = 0; i < args.length - 1; i += 2) {
+			String arg = args[i];
+			String value = args[i + 1];
+			if (arg.equalsIgnoreCase("-config")) {
+				configFileName = value;
+			}
+			else if (arg.equalsIgnoreCase("-catalogue")) {
+				catalogueFileName = value;
+			}
+			else if (arg.equalsIgnoreCase("-table")) {
+				tableName = value;
+			}
+			else if (arg.equalsIgnoreCase("-input")) {
+				inputFileName = value;
+			}
+			else if (arg.equalsIgnoreCase("-delimiter") && value.length() == 1) {
+				delimiter = value.charAt(0);
+			}
+			else if (arg.equalsIgnoreCase("-fill")) {
+				try {
+					fillFactor = Float.parseFloat(value);
+				}
+				catch (NumberFormatException nfex) {
+					fillFactor = -1.0f;
+				}
+				if (fillFactor <= 0.0f || fillFactor > 1.0f) {
+					System.err.println("Invalid fill factor: " + value);
+					System.exit(DBInstance.RETURN_CODE_UNKNOWN_COMMAND_LINE_ARGUMENT);
+				}
+			}
+			else {
+				tableName = null;
+				break;
+			}
+		}
+		if (args.length % 2 != 0 || tableName == null || inputFileName == null) {
+			System.err.println(USAGE);
+			System.exit(DBInstance.RETURN_CODE_UNKNOWN_COMMAND_LINE_ARGUMENT);
+		}
+
+		Config config;
+		TableDescriptor descriptor;
+		List<IndexDescriptor> indexDescriptors;
+		try {
+			AbstractExtensionFactory.initializeDefault();
+			config = Config.loadConfig(new File(configFileName));
+			Catalogue catalogue = Catalogue.loadCatalogue(new File(catalogueFileName));
+			descriptor = catalogue.getTable(tableName);
+			indexDescriptors = catalogue.getAllIndexesForTable(tableName);
+		}
+		catch (Exception ex) {
+			System.err.println("The configuration or the catalogue could not be loaded: " + ex.getMessage());
+			System.exit(DBInstance.RETURN_CODE_INVALID_CONIG_PARAMETER);
+			return;
+		}
+		if (descriptor == null) {
+			System.err.println("The catalogue contains no table '" + tableName + "'.");
+			System.exit(DBInstance.RETURN_CODE_INVALID_CONIG_PARAMETER);
+			return;
+		}
+
+		TableResourceManager table = null;
+		List<IndexResourceManager> indexes = new ArrayList<IndexResourceManager>();
+		QueryHeap heap = null;
+		int exitCode = DBInstance.RETURN_CODE_OKAY;
+		try {
+			table = TableResourceManager.openTable(new File(config.getDataDirectory(), descriptor.getFileName()));
+			for (IndexDescriptor index : indexDescriptors) {
+				indexes.add(IndexResourceManager.openIndex(new File(config.getDataDirectory(), index.getFileName()), table.getSchema()));
+			}
+			heap = new QueryHeap(Logger.getLogger(BulkLoadDriver.class.getName()), config);
+
+			BulkLoader loader = new BulkLoader(table, heap);
+			loader.setFillFactor(fillFactor);
+			for (IndexResourceManager index : indexes) {
+				loader.addIndex(index);
+			}
+			Reader in = new InputStreamReader(new FileInputStream(inputFileName), "UTF-8");
+			try {
+				loader.loadCSV(in, delimiter);
+			}
+			finally {
+				in.close();
+			}
+			loader.finish();
+
+			long tuples = loader.getNumberOfTuples();
+			System.out.println(String.format("Loaded %d tuples into %d pages in %.1f ms (%.0f rows/s).",
+					tuples, table.getLastDataPageNumber() - table.getFirstDataPageNumber() + 1,
+					loader.getTableLoadNanos() / 1000000.0, rowsPerSecond(tuples, loader.getTableLoadNanos())));
+			System.out.println(String.format("Built %d indexes in %.1f ms (%.0f rows/s).",
+					indexes.size(), loader.getIndexBuildNanos() / 1000000.0,
+					rowsPerSecond(tuples * indexes.size(), loader.getIndexBuildNanos())));
+		}
+		catch (Exception ex) {
+			System.err.println("The table could not be loaded: " + ex.getMessage());
+			ex.printStackTrace();
+			exitCode = DBInstance.RETURN_CODE_SYSTEM_PROBLEM;
+		}
+		finally {
+			for (IndexResourceManager index : indexes) {
+				try {
+					index.closeResource();
+				}
+				catch (Exception ex) {
+					exitCode = DBInstance.RETURN_CODE_SHUTDOWN_INCOLMPLETE;
+				}
+			}
+			if (table != null) {
+				try {
+					table.closeResource();
+				}
+				catch (Exception ex) {
+					exitCode = DBInstance.RETURN_CODE_SHUTDOWN_INCOLMPLETE;
+				}
+			}
+			if (heap != null) {
+				try {
+					heap.closeQueryHeap();
+				}
+				catch (Exception ex) {
+					// temp files are left behind, nothing else to release
+				}
+			}
+		}
+		System.exit(exitCode);
+	}
+
+	private static double rowsPerSecond(long rows, long nanos)
+	{
+		return nanos == 0 ? 0.0 : rows * 1000000000.0 / nanos;
+	}
+}
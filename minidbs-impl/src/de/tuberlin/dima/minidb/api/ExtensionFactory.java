@@ -7,12 +7,15 @@ import de.tuberlin.dima.minidb.catalogue.IndexSchema;
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.cache.ConcurrentPageCache;
 import de.tuberlin.dima.minidb.io.cache.PageCache;
 import de.tuberlin.dima.minidb.io.cache.PageCacheImpl;
 import de.tuberlin.dima.minidb.io.cache.PageFormatException;
 import de.tuberlin.dima.minidb.io.cache.PageSize;
 import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexImpl;
 import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManagerImpl;
 import de.tuberlin.dima.minidb.io.tables.TablePage;
 import de.tuberlin.dima.minidb.io.tables.TablePageImpl;
 import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
@@ -61,31 +64,43 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		//throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public PageCache createPageCache(PageSize pageSize, int numPages, int numSegments) {
+		return new ConcurrentPageCache(pageSize, numPages, numSegments);
+	}
+
 	@Override
 	public BufferPoolManager createBufferPoolManager(Config config, Logger logger) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new BufferPoolManagerImpl(config, logger);
 	}
 
 	@Override
 	public BTreeIndex createBTreeIndex(IndexSchema schema, BufferPoolManager bufferPool, int resourceId) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new BTreeIndexImpl(schema, bufferPool, resourceId);
 	}
 
 	@Override
 	public TableScanOperator createTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
 			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new TableScanOperatorImpl(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength);
+	}
+
+	@Override
+	public TableScanOperator createTableScanOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicate, int prefetchWindowLength, PageRangeDispenser dispenser) {
+		return new TableScanOperatorImpl(bufferPool, tableManager, resourceId, producedColumnIndexes, predicate, prefetchWindowLength,
+				dispenser);
 	}
 
 	@Override
 	public IndexScanOperator createIndexScanOperator(BTreeIndex index, DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new IndexScanOperatorImpl(index, startKey, stopKey, startKeyIncluded, stopKeyIncluded);
 	}
 
 	@Override
 	public InsertOperator createInsertOperator(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId, BTreeIndex[] indexes,
 			int[] columnNumbers, PhysicalPlanOperator child) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new InsertOperatorImpl(bufferPool, tableManager, resourceId, indexes, columnNumbers, child);
 	}
 
 	@Override
@@ -96,28 +111,34 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 	@Override
 	public NestedLoopJoinOperator createNestedLoopJoinOperator(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild, JoinPredicate joinPredicate,
 			int[] columnMapOuterTuple, int[] columnMapInnerTuple) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new NestedLoopJoinOperatorImpl(outerChild, innerChild, joinPredicate, columnMapOuterTuple, columnMapInnerTuple);
 	}
 
 	@Override
 	public IndexLookupOperator getIndexLookupOperator(BTreeIndex index, DataField equalityLiteral) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new IndexLookupOperatorImpl(index, equalityLiteral, equalityLiteral, true, true);
 	}
 
 	@Override
 	public IndexLookupOperator getIndexScanOperatorForBetweenPredicate(BTreeIndex index, DataField lowerBound, boolean lowerIncluded, DataField upperBound,
 			boolean upperIncluded) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new IndexLookupOperatorImpl(index, lowerBound, upperBound, lowerIncluded, upperIncluded);
 	}
 
 	@Override
 	public IndexCorrelatedLookupOperator getIndexCorrelatedScanOperator(BTreeIndex index, int correlatedColumnIndex) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new IndexCorrelatedLookupOperatorImpl(index, correlatedColumnIndex);
 	}
 
 	@Override
 	public FetchOperator createFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new FetchOperatorImpl(child, bufferPool, tableResourceId, outputColumnMap, 1, true);
+	}
+
+	@Override
+	public FetchOperator createFetchOperator(PhysicalPlanOperator child, BufferPoolManager bufferPool, int tableResourceId, int[] outputColumnMap,
+			int batchSize, boolean preserveOrder) {
+		return new FetchOperatorImpl(child, bufferPool, tableResourceId, outputColumnMap, batchSize, preserveOrder);
 	}
 
 	@Override
@@ -133,7 +154,20 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 	@Override
 	public SortOperator createSortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
 			int[] sortColumns, boolean[] columnsAscending) {
-		throw new UnsupportedOperationException("Method not yet supported");
+		return new SortOperatorImpl(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending);
+	}
+
+	@Override
+	public SortOperator createSortOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes, int estimatedCardinality,
+			int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism) {
+		return new SortOperatorImpl(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending,
+				degreeOfParallelism);
+	}
+
+	@Override
+	public TopNSortOperator createTopNSortOperator(PhysicalPlanOperator child, int[] sortColumns, boolean[] columnsAscending,
+			int limit) {
+		return new TopNSortOperatorImpl(child, sortColumns, columnsAscending, limit);
 	}
 
 	@Override
@@ -142,12 +176,38 @@ public class ExtensionFactory extends AbstractExtensionFactory {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public GroupByOperator createHashGroupByOperator(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] inputColumnTypes,
+			int estimatedGroups, int[] groupColumnIndices, int[] aggColumnIndices, AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition) {
+		return new HashGroupByOperatorImpl(child, queryHeap, inputColumnTypes, estimatedGroups, groupColumnIndices, aggColumnIndices,
+				aggregateFunctions, aggColumnTypes, groupColumnOutputPositions, aggregateColumnOutputPosition);
+	}
+
 	@Override
 	public MergeJoinOperator createMergeJoinOperator(PhysicalPlanOperator leftChild, PhysicalPlanOperator rightChild, int[] leftJoinColumns,
 			int[] rightJoinColumns, int[] columnMapLeftTuple, int[] columnMapRightTuple) {
 		throw new UnsupportedOperationException("Method not yet supported");
 	}
 
+	@Override
+	public HashJoinOperator createHashJoinOperator(PhysicalPlanOperator probeChild, PhysicalPlanOperator buildChild,
+			int[] probeJoinColumns, int[] buildJoinColumns, JoinPredicate joinPredicate, int[] columnMapProbeTuple,
+			int[] columnMapBuildTuple) {
+		return new HashJoinOperatorImpl(probeChild, buildChild, probeJoinColumns, buildJoinColumns, joinPredicate,
+				columnMapProbeTuple, columnMapBuildTuple);
+	}
+
+	@Override
+	public ExchangeOperator createGatherOperator(PhysicalPlanOperator[] producers) {
+		return ExchangeOperatorImpl.createGather(producers);
+	}
+
+	@Override
+	public ExchangeOperator[] createRepartitionOperators(PhysicalPlanOperator[] producers, int[] keyColumns, int numPartitions) {
+		return ExchangeOperatorImpl.createRepartition(producers, keyColumns, numPartitions);
+	}
+
 	@Override
 	public JoinOrderOptimizer createJoinOrderOptimizer(CardinalityEstimator estimator) {
 		throw new UnsupportedOperationException("Method not yet supported");
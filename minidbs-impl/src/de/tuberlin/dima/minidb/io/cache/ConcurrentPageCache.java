@@ -0,0 +1,330 @@
+package de.tuberlin.dima.minidb.io.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A page cache that can be used by many query threads at the same time. The cache is partitioned
+ * by the hash of (resource id, page number) into segments that are locked independently of each
+ * other. Every segment is a {@link PageCacheImpl} that owns a fixed share of the cache's frames and
+ * runs its own ARC replacement, so threads requesting different pages only contend when their pages
+ * fall into the same segment.
+ * <p>
+ * Since replacement decisions are taken per segment, the global eviction order approximates the one
+ * of a single ARC cache of the same capacity. A cache with a single segment behaves exactly like a
+ * single ARC cache.
+ * <p>
+ * A segment that holds only pinned pages borrows a frame from another segment for a new page, so
+ * that pinning many pages of one segment, such as the path of a B-Tree split while scans hold
+ * their pages, does not fail while the cache has unpinned pages elsewhere. A
+ * {@link CachePinnedException} is thrown only if no segment has an unpinned page. The sizes of
+ * the segments shift that way, while their sum stays the capacity of the cache. A segment that
+ * lent frames takes them back from the segments above their share for its next pages.
+ */
+public class ConcurrentPageCache implements PageCache
+{
+	/**
+	 * The smallest number of frames a segment is created with. Fewer segments are created if the
+	 * capacity is too small to give every segment that many frames.
+	 */
+	private static final int MIN_FRAMES_PER_SEGMENT = 8;
+
+	/**
+	 * The segments, each guarding its share of the frames. A segment is its own lock.
+	 */
+	private final PageCacheImpl[] segments;
+
+	/**
+	 * The mask to map a hash code to a segment. The number of segments is a power of two.
+	 */
+	private final int segmentMask;
+
+	/**
+	 * The number of frames each segment is created with, its share of the capacity.
+	 */
+	private final int[] shares;
+
+	/**
+	 * The number of frames in all segments together.
+	 */
+	private final int capacity;
+
+
+	/**
+	 * Creates a new cache holding the given number of pages, spread over roughly the given
+	 * number of segments. The number of segments is rounded to a power of two and reduced if
+	 * the segments would become too small.
+	 *
+	 * @param pageSize The size of the pages held by this cache.
+	 * @param numPages The number of pages held by this cache.
+	 * @param numSegments The desired number of independently locked segments.
+	 */
+	public ConcurrentPageCache(PageSize pageSize, int numPages, int numSegments)
+	{
+		if (numPages < 1) {
+			throw new IllegalArgumentException("The cache must hold at least one page.");
+		}
+		if (numSegments < 1) {
+			throw new IllegalArgumentException("The cache must have at least one segment.");
+		}
+
+		int num = 1;
+		while (num < numSegments && (num << 1) * MIN_FRAMES_PER_SEGMENT <= numPages) {
+			num <<= 1;
+		}
+
+		this.segments = new PageCacheImpl[num];
+		this.segmentMask = num - 1;
+		this.shares = new int[num];
+		this.capacity = numPages;
+
+		// hand out the frames as evenly as possible
+		for (int i = 0; i < num; i++) {
+			this.shares[i] = numPages / num + (i < numPages % num ? 1 : 0);
+			this.segments[i] = new PageCacheImpl(pageSize, this.shares[i]);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                           Cache operations
+	// ------------------------------------------------------------------------
+
+	@Override
+	public CacheableData getPage(int resourceId, int pageNumber)
+	{
+		PageCacheImpl segment = segmentFor(resourceId, pageNumber);
+		synchronized (segment) {
+			return segment.getPage(resourceId, pageNumber);
+		}
+	}
+
+	@Override
+	public CacheableData getPageAndPin(int resourceId, int pageNumber)
+	{
+		PageCacheImpl segment = segmentFor(resourceId, pageNumber);
+		synchronized (segment) {
+			return segment.getPageAndPin(resourceId, pageNumber);
+		}
+	}
+
+	@Override
+	public EvictedCacheEntry addPage(CacheableData newPage, int resourceId)
+	throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return add(newPage, resourceId, false, AccessHint.RANDOM);
+	}
+
+	@Override
+	public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
+	throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return add(newPage, resourceId, true, AccessHint.RANDOM);
+	}
+
+	@Override
+	public CacheableData getPage(int resourceId, int pageNumber, AccessHint hint)
+	{
+		PageCacheImpl segment = segmentFor(resourceId, pageNumber);
+		synchronized (segment) {
+			return segment.getPage(resourceId, pageNumber, hint);
+		}
+	}
+
+	@Override
+	public CacheableData getPageAndPin(int resourceId, int pageNumber, AccessHint hint)
+	{
+		PageCacheImpl segment = segmentFor(resourceId, pageNumber);
+		synchronized (segment) {
+			return segment.getPageAndPin(resourceId, pageNumber, hint);
+		}
+	}
+
+	@Override
+	public EvictedCacheEntry addPage(CacheableData newPage, int resourceId, AccessHint hint)
+	throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return add(newPage, resourceId, false, hint);
+	}
+
+	@Override
+	public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId, AccessHint hint)
+	throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return add(newPage, resourceId, true, hint);
+	}
+
+	@Override
+	public void unpinPage(int resourceId, int pageNumber)
+	{
+		PageCacheImpl segment = segmentFor(resourceId, pageNumber);
+		synchronized (segment) {
+			segment.unpinPage(resourceId, pageNumber);
+		}
+	}
+
+	@Override
+	public CacheableData[] getAllPagesForResource(int resourceId)
+	{
+		List<CacheableData> pages = new ArrayList<CacheableData>();
+		for (PageCacheImpl segment : this.segments) {
+			synchronized (segment) {
+				pages.addAll(Arrays.asList(segment.getAllPagesForResource(resourceId)));
+			}
+		}
+		return pages.toArray(new CacheableData[pages.size()]);
+	}
+
+	@Override
+	public void expellAllPagesForResource(int resourceId)
+	{
+		for (PageCacheImpl segment : this.segments) {
+			synchronized (segment) {
+				segment.expellAllPagesForResource(resourceId);
+			}
+		}
+	}
+
+	@Override
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+	@Override
+	public void unpinAllPages()
+	{
+		for (PageCacheImpl segment : this.segments) {
+			synchronized (segment) {
+				segment.unpinAllPages();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of segments that this cache is partitioned into.
+	 *
+	 * @return The number of segments.
+	 */
+	public int getNumberOfSegments()
+	{
+		return this.segments.length;
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Utilities
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Adds the page to its segment. A segment below its share first takes a frame back from a
+	 * segment above its share. A segment that holds only pinned pages takes a frame from any other
+	 * segment.
+	 */
+	private EvictedCacheEntry add(CacheableData newPage, int resourceId, boolean pin, AccessHint hint)
+	throws CachePinnedException, DuplicateCacheEntryException
+	{
+		int index = segmentIndex(resourceId, newPage.getPageNumber());
+		PageCacheImpl segment = this.segments[index];
+		boolean pinned = false;
+		synchronized (segment) {
+			if (segment.getCapacity() >= this.shares[index]) {
+				try {
+					return add(segment, newPage, resourceId, pin, hint);
+				}
+				catch (CachePinnedException cpex) {
+					pinned = true;
+				}
+			}
+		}
+
+		// the segments are locked in the order of their index, so the lock of this one is not held
+		EvictedCacheEntry evicted;
+		if (!pinned) {
+			evicted = addWithLentFrame(index, newPage, resourceId, pin, hint, false);
+			if (evicted != null) {
+				return evicted;
+			}
+			synchronized (segment) {
+				try {
+					return add(segment, newPage, resourceId, pin, hint);
+				}
+				catch (CachePinnedException cpex) {
+					// borrow from any segment below
+				}
+			}
+		}
+		evicted = addWithLentFrame(index, newPage, resourceId, pin, hint, true);
+		if (evicted == null) {
+			throw new CachePinnedException();
+		}
+		return evicted;
+	}
+
+	/**
+	 * Adds the page to its segment with a frame that another segment frees for it. The segment
+	 * and the lending one are locked together, in the order of their index, so that the lent frame
+	 * goes straight to the new page.
+	 *
+	 * @param fromAny Flag indicating that any segment may lend the frame, not only the segments
+	 *                above their share.
+	 * @return The lent frame, or null, if no segment lent one.
+	 */
+	private EvictedCacheEntry addWithLentFrame(int index, CacheableData newPage, int resourceId,
+			boolean pin, AccessHint hint, boolean fromAny)
+	throws DuplicateCacheEntryException
+	{
+		PageCacheImpl segment = this.segments[index];
+		for (int i = 1; i < this.segments.length; i++) {
+			int other = (index + i) & this.segmentMask;
+			PageCacheImpl lender = this.segments[other];
+			synchronized (this.segments[Math.min(index, other)]) {
+				synchronized (this.segments[Math.max(index, other)]) {
+					if (segment.contains(resourceId, newPage.getPageNumber())) {
+						throw new DuplicateCacheEntryException(resourceId, newPage.getPageNumber());
+					}
+					if (fromAny || lender.getCapacity() > this.shares[other]) {
+						EvictedCacheEntry frame = lender.lendFrame();
+						if (frame != null) {
+							segment.borrowFrame(frame);
+							try {
+								return add(segment, newPage, resourceId, pin, hint);
+							}
+							catch (CachePinnedException cpex) {
+								throw new IllegalStateException("The lent frame was not used for the page.", cpex);
+							}
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private static EvictedCacheEntry add(PageCacheImpl segment, CacheableData newPage, int resourceId, boolean pin, AccessHint hint)
+	throws CachePinnedException, DuplicateCacheEntryException
+	{
+		return pin ? segment.addPageAndPin(newPage, resourceId, hint) : segment.addPage(newPage, resourceId, hint);
+	}
+
+	/**
+	 * Gets the segment responsible for the given page.
+	 */
+	private PageCacheImpl segmentFor(int resourceId, int pageNumber)
+	{
+		return this.segments[segmentIndex(resourceId, pageNumber)];
+	}
+
+	/**
+	 * Gets the index of the segment responsible for the given page. The hash is mixed such that
+	 * consecutive pages of one resource are spread over different segments, which keeps a
+	 * sequential scan from queueing up on a single lock.
+	 */
+	private int segmentIndex(int resourceId, int pageNumber)
+	{
+		int h = resourceId * 0x9E3779B9 + pageNumber;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h & this.segmentMask;
+	}
+}
@@ -1,176 +1,195 @@
-    package de.tuberlin.dima.minidb.io.cache;
+package de.tuberlin.dima.minidb.io.cache;
 
-import de.tuberlin.dima.minidb.io.tables.TablePage;
-import sun.misc.Cache;
+import java.util.Arrays;
 
-import java.util.*;
+import de.tuberlin.dima.minidb.Constants;
 
-    /**
+/**
  * Created by royd1990 on 11/8/16.
+ *
+ * ARC page cache. All bookkeeping is done on a fixed pool of nodes, so that hits, misses,
+ * promotions and evictions run in constant time and do not allocate:
+ * <ul>
+ *   <li>A node is identified by its index in the pool arrays. The lists T1, T2, B1 and B2 (as well
+ *       as the expelled and the free nodes) are doubly linked through the <tt>prev</tt> and
+ *       <tt>next</tt> arrays, from least to most recently used.</li>
+ *   <li>Resident pages and ghosts are found through one open addressing hash table over the
+ *       primitive key <tt>(resourceId &lt;&lt; 32 | pageNumber)</tt>.</li>
+ * </ul>
+ * The pool holds at least <tt>2 * size + 1</tt> nodes, which covers the <tt>2 * size</tt> resident
+ * and ghost entries ARC keeps plus the node of a page that is being added.
+ * <p>
+ * Pages added with the hint {@link AccessHint#SEQUENTIAL_SCAN} do not enter T1, but a separate
+ * FIFO list of at most <tt>scanRing</tt> pages outside of ARC. Its frames are reused before any
+ * other page is replaced once the ring is full or the scan has consumed the page, and they leave
+ * no ghost entry behind. That way, a scan over a large table cycles through a few frames instead of
+ * flushing T1 and T2. A scan page that is requested without the hint joins T1. Pages added with the
+ * hint {@link AccessHint#INDEX_INTERNAL} enter T2 directly.
+ * <p>
+ * A cache that is a segment of a larger one can hand frames to another segment and take frames
+ * from it ({@link #lendFrame()}, {@link #borrowFrame(EvictedCacheEntry)}), which changes its size.
+ * The node pool grows with the size, if needed.
+ * <p>
+ * The cache is not thread safe.
  */
 public class PageCacheImpl implements PageCache {
-    private PageSize pz;
+
+    private static final int NIL = -1;
+
+    private static final byte FREE = 0;
+    private static final byte T1 = 1;
+    private static final byte T2 = 2;
+    private static final byte B1 = 3;
+    private static final byte B2 = 4;
+    private static final byte EXPELLED = 5;
+    private static final byte SCAN = 6;
+    private static final int NUM_LISTS = 7;
+
+    private final int pageBytes;
     private int size;
+
+    /**
+     * The number of frames the pages of sequential scans may occupy before their frames are reused.
+     */
+    private final int scanRing;
+
+    /**
+     * The adaptive target size of T1.
+     */
     private int targetSize;
-    private TablePage tablePage;
-    private boolean expelled;
-    HashMap<Identifier,CachePage> lru;
-    HashMap<Identifier,CachePage> mfu;
-    List<Identifier> lru_ghost;
-    List<Identifier> mfu_ghost;
-
-    public PageCacheImpl(PageSize pz, int size){
-        this.pz = pz;
-        this.size = size;
-        expelled = false;
-        targetSize=size/2;
-        lru = new HashMap<Identifier,CachePage>();
-        mfu = new HashMap<Identifier,CachePage>();
 
-        lru_ghost = new LinkedList<Identifier>();
-        mfu_ghost = new LinkedList<Identifier>();
+    /**
+     * The number of frames that have not yet been handed out as an empty buffer.
+     */
+    private int emptyFrames;
+
+    /**
+     * The frame taken from another cache that has not yet been handed out, or null.
+     */
+    private EvictedCacheEntry borrowedFrame;
+
+    // ------------------------------ node pool -------------------------------
+
+    private long[] keys;
+    private CacheableData[] pages;
+    private int[] pins;
+    private boolean[] hit;
+    private byte[] list;
+    private int[] prev;
+    private int[] next;
+
+    private final int[] heads = new int[NUM_LISTS];
+    private final int[] tails = new int[NUM_LISTS];
+    private final int[] sizes = new int[NUM_LISTS];
+
+    // ------------------------------ hash table ------------------------------
+
+    /**
+     * Linear probing table. A slot holds the node index plus one, zero marks an empty slot.
+     */
+    private int[] table;
+    private int mask;
+
+    public PageCacheImpl(PageSize pz, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one page.");
+        }
+        this.pageBytes = pz.getNumberOfBytes();
+        this.size = size;
+        this.scanRing = Math.max(1, Math.min(2 * Constants.DEFAULT_PREFETCHING_LENGTH, size / 4));
+        this.targetSize = 0;
+        this.emptyFrames = size;
+
+        int numNodes = 2 * size + 1;
+        this.keys = new long[numNodes];
+        this.pages = new CacheableData[numNodes];
+        this.pins = new int[numNodes];
+        this.hit = new boolean[numNodes];
+        this.list = new byte[numNodes];
+        this.prev = new int[numNodes];
+        this.next = new int[numNodes];
+
+        Arrays.fill(heads, NIL);
+        Arrays.fill(tails, NIL);
+        for (int node = 0; node < numNodes; node++) {
+            pushBack(FREE, node);
+        }
+
+        // keep the load factor below one half
+        int tableSize = Integer.highestOneBit(numNodes) << 2;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
     }
 
     @Override
     public CacheableData getPage(int resourceId, int pageNumber) {
-        Identifier i = new Identifier(resourceId,pageNumber);
-        CachePage page = lru.get(i);
-        if(page!=null && !page.isExpelled() ){
-            page.hit();
-            if(page.getHits() > 1){
-                mfu.put(i,page);
-            }
-            else{
-                lru.put(i,page);
-            }
-            return page.getPage();
-        }
-        page = mfu.get(i);
-        if(page!=null && !page.isExpelled()){
-            page.hit();
-            if(page.getHits() > 1){
-                mfu.put(i,page);
-                return page.getPage();
-            }
-        }
-        return null;
+        return request(key(resourceId, pageNumber), false, AccessHint.RANDOM);
     }
 
     @Override
     public CacheableData getPageAndPin(int resourceId, int pageNumber) {
-        Identifier i = new Identifier(resourceId,pageNumber);
-        CachePage page = lru.get(i);
-        if(page!=null && !page.isExpelled()){
-            page.hit();
-            page.pin();
-            if(page.getHits() > 1){
-                mfu.put(i,page);
-            }
-            else{
-                lru.put(i,page);
-            }
-            return page.getPage();
-        }
-        page = mfu.get(i);
-        if(page!=null && !page.isExpelled()){
-            page.hit();
-            page.pin();
-            if(page.getHits() > 1){
-                mfu.put(i,page);
-                return page.getPage();
-            }
-        }
-        return null;
+        return request(key(resourceId, pageNumber), true, AccessHint.RANDOM);
+    }
+
+    @Override
+    public CacheableData getPage(int resourceId, int pageNumber, AccessHint hint) {
+        return request(key(resourceId, pageNumber), false, hint);
+    }
+
+    @Override
+    public CacheableData getPageAndPin(int resourceId, int pageNumber, AccessHint hint) {
+        return request(key(resourceId, pageNumber), true, hint);
     }
 
     @Override
     public EvictedCacheEntry addPage(CacheableData newPage, int resourceId) throws CachePinnedException, DuplicateCacheEntryException {
-        Identifier i = new Identifier(resourceId,newPage.getPageNumber());
-        if(lru.containsKey(i) || mfu.containsKey(i)){
-            throw new DuplicateCacheEntryException(resourceId,newPage.getPageNumber());
-        }
-        if(lru_ghost.remove(i)){
-            int b1 = lru_ghost.size();
-            int b2 = mfu_ghost.size();
-            int delta = ( b1 >= b2 || b1 == 0 ? 1 : b2/b1);
-            targetSize  = Math.min(targetSize + delta, size/2);
-            EvictedCacheEntry evicted = evictPage();
-            mfu.put(i,new CachePage(newPage,false));
-            EvictedCacheEntry evictedCacheEntry = evictPage();
-            return  evictedCacheEntry;
-        }
-        else if(mfu_ghost.remove(i)){
-            int b1 = lru_ghost.size();
-            int b2 = mfu_ghost.size();
-            int delta = ( b2 >= b1 || b2 == 0 ? 1 : b1/b2);
-            targetSize  = Math.min(targetSize - delta, 0);
-            EvictedCacheEntry evictedCacheEntry = evictPage();
-            mfu.put(i,new CachePage(newPage,false));
-            return evictedCacheEntry;
-        }
-        else{
-            EvictedCacheEntry evicted = evictPage();
-            lru.put(i,new CachePage(newPage,false));
-            return evicted;
-        }
+        return add(newPage, resourceId, false, AccessHint.RANDOM);
     }
 
     @Override
     public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId) throws CachePinnedException, DuplicateCacheEntryException {
-        Identifier i = new Identifier(resourceId,newPage.getPageNumber());
-        if(lru.containsKey(i) || mfu.containsKey(i)){
-            throw new DuplicateCacheEntryException(resourceId,newPage.getPageNumber());
-        }
-        if(lru_ghost.remove(i)){
-            int b1 = lru_ghost.size();
-            int b2 = mfu_ghost.size();
-            int delta = ( b1 >= b2 || b1 == 0 ? 1 : b2/b1);
-            targetSize  = Math.min(targetSize + delta, size/2);
-            EvictedCacheEntry evicted = evictPage();
-            mfu.put(i,new CachePage(newPage,true));
-            EvictedCacheEntry evictedCacheEntry = evictPage();
-            return  evictedCacheEntry;
-        }
-        else if(mfu_ghost.remove(i)){
-            int b1 = lru_ghost.size();
-            int b2 = mfu_ghost.size();
-            int delta = ( b2 >= b1 || b2 == 0 ? 1 : b1/b2);
-            targetSize  = Math.min(targetSize - delta, 0);
-            EvictedCacheEntry evictedCacheEntry = evictPage();
-            mfu.put(i,new CachePage(newPage,true));
-            return evictedCacheEntry;
-        }
-        else{
-            EvictedCacheEntry evicted = evictPage();
-            lru.put(i,new CachePage(newPage,true));
-            return evicted;
-        }
+        return add(newPage, resourceId, true, AccessHint.RANDOM);
     }
 
     @Override
-    public void unpinPage(int resourceId, int pageNumber) {
-        Identifier i = new Identifier(resourceId,pageNumber);
-        CachePage page = lru.get(i);
-        if(page!=null){
-            page.unpin();
+    public EvictedCacheEntry addPage(CacheableData newPage, int resourceId, AccessHint hint) throws CachePinnedException, DuplicateCacheEntryException {
+        return add(newPage, resourceId, false, hint);
+    }
 
-        }
-        else{
-            if(mfu.get(i) !=null){
-                mfu.get(i).unpin();
-            }
-        }
+    @Override
+    public EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId, AccessHint hint) throws CachePinnedException, DuplicateCacheEntryException {
+        return add(newPage, resourceId, true, hint);
+    }
 
+    @Override
+    public void unpinPage(int resourceId, int pageNumber) {
+        int node = lookup(key(resourceId, pageNumber));
+        if (node != NIL && isResident(node) && pins[node] > 0) {
+            pins[node]--;
+        }
     }
 
     @Override
     public CacheableData[] getAllPagesForResource(int resourceId) {
-        return new CacheableData[0];
+        int[] found = new int[sizes[T1] + sizes[T2] + sizes[SCAN]];
+        int num = collect(T1, resourceId, found, 0);
+        num = collect(T2, resourceId, found, num);
+        num = collect(SCAN, resourceId, found, num);
+
+        // every returned page counts as a request
+        CacheableData[] result = new CacheableData[num];
+        for (int i = 0; i < num; i++) {
+            touch(found[i], AccessHint.RANDOM);
+            result[i] = pages[found[i]];
+        }
+        return result;
     }
 
     @Override
     public void expellAllPagesForResource(int resourceId) {
-
+        expell(T1, resourceId);
+        expell(T2, resourceId);
+        expell(SCAN, resourceId);
     }
 
     @Override
@@ -180,183 +199,389 @@ public class PageCacheImpl implements PageCache {
 
     @Override
     public void unpinAllPages() {
-        Iterator<CachePage> it = lru.values().iterator();
-        while (it.hasNext()){
-            CachePage cp = it.next();
-            cp.unpin();
-        }
-        it = mfu.values().iterator();
-        while (it.hasNext()){
-            CachePage cp = it.next();
-            cp.unpin();
-        }
-    }
-
-    private EvictedCacheEntry evictPage() throws CachePinnedException{
-        Iterator<Map.Entry<Identifier,CachePage>> it;
-        boolean fromFrequent;
-        if ((mfu_ghost.size() + lru_ghost.size()) < size)
-            return new EvictedCacheEntry(new byte[pz.getNumberOfBytes()]);
-        if (expelled) {
-            it = lru.entrySet().iterator();
-            while (it.hasNext())
-            {
-                Map.Entry<Identifier,CachePage> entry = it.next();
-
-                if (entry.getValue().isExpelled()) {
-                    CacheableData page = entry.getValue().getPage();
-                    it.remove();
-                    return new EvictedCacheEntry(page.getBuffer(), page, entry.getKey().getResourceId());
-                }
-            }
-            it = mfu.entrySet().iterator();
-            while (it.hasNext())
-            {
-                Map.Entry<Identifier, CachePage> entry = it.next();
-
-                if (entry.getValue().isExpelled()) {
-                    CacheableData page = entry.getValue().getPage();
-                    it.remove();
-                    return new EvictedCacheEntry(page.getBuffer(), page, entry.getKey().getResourceId());
-                }
-            }
-            expelled = false;
-        }
-        if (lru.size() >= targetSize) {
-            it = lru.entrySet().iterator();
-            fromFrequent = false;
-        } else {
-            it = mfu.entrySet().iterator();
-            fromFrequent = true;
-        }
-        Map.Entry<Identifier,CachePage> entry;
-        while (it.hasNext())
-        {
-            entry = it.next();
-
-            if (!entry.getValue().isPinned()) {
-                CacheableData page = entry.getValue().getPage();
-                if (fromFrequent) {
-                    if (mfu_ghost.size() >= targetSize)
-                        mfu_ghost.remove(0);
-                    mfu_ghost.add(entry.getKey());
-
-                } else {
-                    if (lru_ghost.size() >= size - targetSize)
-                        lru_ghost.remove(0);
-                    lru_ghost.add(entry.getKey());
-                }
-                it.remove();
-                return new EvictedCacheEntry(page.getBuffer(), page, entry.getKey().getResourceId());
+        for (byte l = T1; l < NUM_LISTS; l++) {
+            for (int node = heads[l]; node != NIL; node = next[node]) {
+                pins[node] = 0;
             }
         }
-        // The frequent (resp. recent) part of the cache is entirely pinned, check the other part
-        if (fromFrequent) {
-            it = lru.entrySet().iterator();
-            fromFrequent = false;
-        } else {
-            it = mfu.entrySet().iterator();
-            fromFrequent = true;
-        }
-        while (it.hasNext())
-        {
-            entry = it.next();
-
-            if (!entry.getValue().isPinned()) {
-                CacheableData page = entry.getValue().getPage();
-
-                if (fromFrequent) {
-                    if (mfu_ghost.size() >= targetSize)
-                        mfu_ghost.remove(0);
-                    mfu_ghost.add(entry.getKey());
-                } else {
-                    if (lru_ghost.size() >= size - targetSize)
-                        lru_ghost.remove(0);
-                    lru_ghost.add(entry.getKey());
-                }
-                it.remove();
-                return new EvictedCacheEntry(page.getBuffer(), page, entry.getKey().getResourceId());
-            }
+    }
+
+    /**
+     * Checks whether the page is in the cache, without counting as a request for it.
+     */
+    boolean contains(int resourceId, int pageNumber) {
+        int node = lookup(key(resourceId, pageNumber));
+        return node != NIL && isResident(node);
+    }
+
+    /**
+     * Frees a frame for another cache, which lowers the size of this cache by one. The frame is
+     * freed the same way as for a new page of this cache.
+     *
+     * @return The freed frame, or null, if all pages of this cache are pinned.
+     */
+    EvictedCacheEntry lendFrame() {
+        EvictedCacheEntry frame;
+        try {
+            frame = replace(false, targetSize);
+        }
+        catch (CachePinnedException cpex) {
+            return null;
+        }
+        size--;
+        targetSize = Math.min(targetSize, size);
+        trimGhosts();
+        return frame;
+    }
+
+    /**
+     * Takes a frame freed by another cache, which raises the size of this cache by one. The frame
+     * is handed out before any other when the next page is added, which must follow right away.
+     *
+     * @param frame The frame that another cache lent.
+     */
+    void borrowFrame(EvictedCacheEntry frame) {
+        size++;
+        if (keys.length < 2 * size + 1) {
+            growPool(2 * size + 1);
+        }
+        borrowedFrame = frame;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private CacheableData request(long key, boolean pin, AccessHint hint) {
+        int node = lookup(key);
+        if (node == NIL || !isResident(node)) {
+            return null;
+        }
+        touch(node, hint);
+        if (pin) {
+            pins[node]++;
         }
-        
+        return pages[node];
+    }
 
-        throw new CachePinnedException();
+    /**
+     * Records a request for a resident page. The first request after a page was added
+     * (a prefetched page) keeps it in T1, any further request moves it to T2. A request of a
+     * sequential scan only marks the page as consumed and leaves its recency unchanged, a
+     * request for an index page moves it to T2 right away.
+     */
+    private void touch(int node, AccessHint hint) {
+        if (hint == AccessHint.SEQUENTIAL_SCAN) {
+            hit[node] = true;
+            return;
+        }
+        unlink(node);
+        if (hint == AccessHint.INDEX_INTERNAL) {
+            pushBack(T2, node);
+        }
+        else if ((list[node] == T1 && !hit[node]) || list[node] == SCAN) {
+            hit[node] = true;
+            pushBack(T1, node);
+        }
+        else {
+            pushBack(T2, node);
+        }
     }
 
-    private class CachePage{
-        private int hit;
-        private CacheableData cacheableData;
-        private boolean pinned;
-        private boolean expelled;
+    private EvictedCacheEntry add(CacheableData newPage, int resourceId, boolean pin, AccessHint hint) throws CachePinnedException, DuplicateCacheEntryException {
+        int pageNumber = newPage.getPageNumber();
+        long key = key(resourceId, pageNumber);
+        int node = lookup(key);
+        EvictedCacheEntry evicted;
+
+        if (node != NIL && !isResident(node) && hint == AccessHint.SEQUENTIAL_SCAN) {
+            // a scan says nothing about the reuse of the page, so it does not adapt the lists
+            dropGhost(node);
+            node = NIL;
+        }
+
+        if (node == NIL) {
+            evicted = replace(false, targetSize);
+            node = heads[FREE];
+            unlink(node);
+            keys[node] = key;
+            insert(node);
+            if (hint == AccessHint.SEQUENTIAL_SCAN) {
+                hit[node] = pin;
+                pushBack(SCAN, node);
+            }
+            else if (hint == AccessHint.INDEX_INTERNAL) {
+                hit[node] = true;
+                pushBack(T2, node);
+            }
+            else {
+                hit[node] = pin;
+                pushBack(T1, node);
+            }
+        }
+        else if (isResident(node)) {
+            throw new DuplicateCacheEntryException(resourceId, pageNumber);
+        }
+        else {
+            // hit in a ghost list: adapt the target size of T1 and load the page into T2
+            int b1 = sizes[B1];
+            int b2 = sizes[B2];
+            boolean inB2 = list[node] == B2;
+            int newTarget = inB2
+                    ? Math.max(targetSize - (b2 >= b1 ? 1 : b1 / b2), 0)
+                    : Math.min(targetSize + (b1 >= b2 ? 1 : b2 / b1), size);
+            evicted = replace(inB2, newTarget);
+            targetSize = newTarget;
+            unlink(node);
+            hit[node] = true;
+            pushBack(T2, node);
+        }
+
+        pages[node] = newPage;
+        pins[node] = pin ? 1 : 0;
+        trimGhosts();
+        return evicted;
+    }
 
-        public CachePage(CacheableData cacheableData,boolean pinned){
-            this.cacheableData = cacheableData;
-            this.pinned = pinned;
-            this.expelled = false;
+    /**
+     * Frees a frame. Borrowed frames and frames that never held a page come first, then the
+     * frames of expelled pages, then the oldest page of a sequential scan if the scan ring is full
+     * or the page has been consumed, and then the least recently used unpinned page of T1 if T1
+     * exceeds its target, of T2 otherwise. If that list holds only pinned pages, the other one is
+     * used, and if both do, any unpinned scan page.
+     */
+    private EvictedCacheEntry replace(boolean hitInB2, int target) throws CachePinnedException {
+        if (borrowedFrame != null) {
+            EvictedCacheEntry frame = borrowedFrame;
+            borrowedFrame = null;
+            return frame;
+        }
+        if (emptyFrames > 0) {
+            emptyFrames--;
+            return new EvictedCacheEntry(new byte[pageBytes]);
+        }
+
+        int victim = heads[EXPELLED];
+        if (victim != NIL) {
+            EvictedCacheEntry evicted = toEvictedEntry(victim);
+            unlink(victim);
+            pages[victim] = null;
+            pushBack(FREE, victim);
+            return evicted;
+        }
 
+        victim = firstUnpinned(SCAN);
+        if (victim != NIL && (sizes[SCAN] >= scanRing || hit[victim])) {
+            return evictScanPage(victim);
         }
-        public void pin(){
-            this.pinned = true;
+
+        int t1 = sizes[T1];
+        boolean fromT1 = t1 > 0 && (t1 > target || (hitInB2 && t1 == target));
+        victim = firstUnpinned(fromT1 ? T1 : T2);
+        if (victim == NIL) {
+            fromT1 = !fromT1;
+            victim = firstUnpinned(fromT1 ? T1 : T2);
         }
-        public void unpin(){
-            this.pinned = false;
+        if (victim == NIL) {
+            victim = firstUnpinned(SCAN);
+            if (victim == NIL) {
+                throw new CachePinnedException();
+            }
+            return evictScanPage(victim);
         }
-        public CacheableData getPage(){
-            return this.cacheableData;
+
+        EvictedCacheEntry evicted = toEvictedEntry(victim);
+        unlink(victim);
+        pages[victim] = null;
+        pushBack(fromT1 ? B1 : B2, victim);
+        return evicted;
+    }
+
+    /**
+     * Evicts a page of a sequential scan. It leaves no ghost entry.
+     */
+    private EvictedCacheEntry evictScanPage(int node) {
+        EvictedCacheEntry evicted = toEvictedEntry(node);
+        remove(node);
+        unlink(node);
+        pages[node] = null;
+        pushBack(FREE, node);
+        return evicted;
+    }
+
+    /**
+     * Drops the oldest ghosts until |T1| + |B1| <= size and all entries fit into 2 * size nodes.
+     */
+    private void trimGhosts() {
+        while (sizes[T1] + sizes[B1] > size && sizes[B1] > 0) {
+            dropGhost(heads[B1]);
         }
-        public boolean isPinned(){
-            return pinned; 
+        int maxNodes = 2 * size;
+        while (keys.length - sizes[FREE] > maxNodes) {
+            dropGhost(sizes[B2] > 0 ? heads[B2] : heads[B1]);
         }
-        public void hit(){
-            this.hit++;
+    }
+
+    private void dropGhost(int node) {
+        remove(node);
+        unlink(node);
+        pushBack(FREE, node);
+    }
+
+    private int firstUnpinned(byte l) {
+        int node = heads[l];
+        while (node != NIL && pins[node] > 0) {
+            node = next[node];
         }
-       public int getHits(){
-            return hit;
+        return node;
+    }
+
+    private int collect(byte l, int resourceId, int[] target, int num) {
+        for (int node = heads[l]; node != NIL; node = next[node]) {
+            if ((int) (keys[node] >>> 32) == resourceId) {
+                target[num++] = node;
+            }
         }
-        public boolean isExpelled(){
-            return expelled;
+        return num;
+    }
+
+    private void expell(byte l, int resourceId) {
+        int node = heads[l];
+        while (node != NIL) {
+            int following = next[node];
+            if ((int) (keys[node] >>> 32) == resourceId) {
+                remove(node);
+                unlink(node);
+                pushBack(EXPELLED, node);
+            }
+            node = following;
         }
+    }
+
+    private boolean isResident(int node) {
+        return list[node] == T1 || list[node] == T2 || list[node] == SCAN;
+    }
+
+    private EvictedCacheEntry toEvictedEntry(int node) {
+        CacheableData page = pages[node];
+        return new EvictedCacheEntry(page.getBuffer(), page, (int) (keys[node] >>> 32));
+    }
 
+    private static long key(int resourceId, int pageNumber) {
+        return (((long) resourceId) << 32) | (pageNumber & 0xffffffffL);
     }
 
-    private class Identifier{
-        private int resourceID;
-        private int pageNumber;
+    /**
+     * Enlarges the node pool to the given number of nodes. The new nodes are free, and the hash
+     * table is rebuilt if it would become too full.
+     */
+    private void growPool(int numNodes) {
+        int oldNodes = keys.length;
+        keys = Arrays.copyOf(keys, numNodes);
+        pages = Arrays.copyOf(pages, numNodes);
+        pins = Arrays.copyOf(pins, numNodes);
+        hit = Arrays.copyOf(hit, numNodes);
+        list = Arrays.copyOf(list, numNodes);
+        prev = Arrays.copyOf(prev, numNodes);
+        next = Arrays.copyOf(next, numNodes);
+        for (int node = oldNodes; node < numNodes; node++) {
+            pushBack(FREE, node);
+        }
+
+        int tableSize = Integer.highestOneBit(numNodes) << 2;
+        if (tableSize > table.length) {
+            table = new int[tableSize];
+            mask = tableSize - 1;
+            for (int node = 0; node < oldNodes; node++) {
+                if (list[node] != FREE && list[node] != EXPELLED) {
+                    insert(node);
+                }
+            }
+        }
+    }
 
-        public Identifier(int resourceId,int pageNumber){
-            this.resourceID = resourceId;
-            this.pageNumber = pageNumber;
+    // ----------------------------- linked lists -----------------------------
 
+    private void pushBack(byte l, int node) {
+        int tail = tails[l];
+        list[node] = l;
+        prev[node] = tail;
+        next[node] = NIL;
+        if (tail == NIL) {
+            heads[l] = node;
         }
+        else {
+            next[tail] = node;
+        }
+        tails[l] = node;
+        sizes[l]++;
+    }
 
-        public int getResourceId(){
-            return this.resourceID;
+    private void unlink(int node) {
+        byte l = list[node];
+        int p = prev[node];
+        int n = next[node];
+        if (p == NIL) {
+            heads[l] = n;
         }
-        @Override
-        public int hashCode()
-        {
-            final int prime = 31;
-            int result = 1;
-            result += prime * result + this.resourceID;
-            result += prime * result + this.pageNumber;
-            return result;
+        else {
+            next[p] = n;
         }
-        @Override
-        public boolean equals(Object obj){
-            Identifier i = (Identifier) obj;
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            Identifier other = (Identifier) obj;
-            if (this.resourceID != other.resourceID)
-                return false;
-            if (this.pageNumber != other.pageNumber)
-                return false;
-            return true;
+        if (n == NIL) {
+            tails[l] = p;
         }
+        else {
+            prev[n] = p;
+        }
+        sizes[l]--;
+    }
+
+    // ------------------------------ hash table ------------------------------
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
 
+    private int lookup(long key) {
+        int slot = hash(key) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (keys[entry - 1] == key) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NIL;
+    }
+
+    private void insert(int node) {
+        int slot = hash(keys[node]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = node + 1;
+    }
+
+    /**
+     * Removes a node from the table and shifts the following entries of the probe sequence
+     * back, so that no tombstones are needed.
+     */
+    private void remove(int node) {
+        int gap = hash(keys[node]) & mask;
+        while (table[gap] != node + 1) {
+            gap = (gap + 1) & mask;
+        }
+        int slot = (gap + 1) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            int home = hash(keys[entry - 1]) & mask;
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                table[gap] = entry;
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[gap] = 0;
     }
 }
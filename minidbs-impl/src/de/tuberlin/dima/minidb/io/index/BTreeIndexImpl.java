@@ -0,0 +1,638 @@
+package de.tuberlin.dima.minidb.io.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * A B-Tree index that can be searched and extended by many threads at the same time.
+ * <p>
+ * Every page is guarded by a read / write latch, and the page number of the root by a latch of its
+ * own. A thread descends from the root to a leaf with latch coupling: it latches the child before it
+ * releases the parent, so that no split can change a node between the two. Lookups and the first
+ * attempt of an insert hold read latches on the inner nodes and latch only the leaf exclusively, so
+ * that inserts into different leaves run in parallel. If the leaf is full, the insert starts over and
+ * descends with write latches, releasing the latches of all ancestors whenever it reaches a node that
+ * has room for one more key and hence does not split. The latches are always taken from the root
+ * downwards and, among leaves, from left to right, which rules out deadlocks.
+ * <p>
+ * The iterators over the results do not keep latches between their calls. They read the qualifying
+ * pairs of one leaf at a time and move to the next leaf over the right link of the leaf they read
+ * last. Pairs that a split moved to the right after they were read are recognized and skipped.
+ * <p>
+ * The index works on all page formats of {@link IndexPageFactory}. Pairs are never deleted.
+ */
+public class BTreeIndexImpl implements BTreeIndex
+{
+	private final IndexSchema schema;
+
+	private final BufferPoolManager bufferPool;
+
+	private final int resourceId;
+
+	/**
+	 * The latch guarding the page number of the root.
+	 */
+	private final ReentrantReadWriteLock rootLatch;
+
+	/**
+	 * The latches of the pages, by their page numbers.
+	 */
+	private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> latches;
+
+
+	/**
+	 * Creates an index over the pages of the given resource.
+	 *
+	 * @param schema The schema of the index.
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param resourceId The id of the index at the buffer pool.
+	 */
+	public BTreeIndexImpl(IndexSchema schema, BufferPoolManager bufferPool, int resourceId)
+	{
+		this.schema = schema;
+		this.bufferPool = bufferPool;
+		this.resourceId = resourceId;
+		this.rootLatch = new ReentrantReadWriteLock();
+		this.latches = new ConcurrentHashMap<Integer, ReentrantReadWriteLock>();
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public IndexSchema getIndexSchema()
+	{
+		return this.schema;
+	}
+
+	@Override
+	public IndexResultIterator<RID> lookupRids(DataField key)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new RangeIterator<RID>(key, key, true, true) {
+			@Override
+			protected RID select(DataField key, RID rid)
+			{
+				return rid;
+			}
+		};
+	}
+
+	/**
+	 * Looks the keys up in sorted order in one sweep over the leaves. The sweep descends to the leaf
+	 * of the smallest key and keeps the leaf it is on latched. A key that is not beyond the last key
+	 * of that leaf is found on it, a key that is not beyond the last key of the next leaf is found
+	 * there; only for keys further right, the sweep releases its leaf and descends again.
+	 */
+	@Override
+	public List<List<RID>> lookupRids(final DataField[] keys)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		Integer[] order = new Integer[keys.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2)
+			{
+				return keys[i1].compareTo(keys[i2]);
+			}
+		});
+
+		List<List<RID>> result = new ArrayList<List<RID>>(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			result.add(null);
+		}
+		BTreeLeafPage leaf = null;
+		try {
+			for (int i = 0; i < order.length; i++) {
+				DataField key = keys[order[i]];
+				if (i > 0 && key.equals(keys[order[i - 1]])) {
+					result.set(order[i], new ArrayList<RID>(result.get(order[i - 1])));
+					continue;
+				}
+				// the leaf is handed over to the methods moving on, which release it also if they fail
+				List<RID> rids = new ArrayList<RID>();
+				BTreeLeafPage previous = leaf;
+				leaf = null;
+				leaf = leafForNextKey(previous, key);
+				while (leaf.getAllsRIDsForKey(key, rids) && leaf.isLastKeyContinuingOnNextPage()) {
+					previous = leaf;
+					leaf = null;
+					leaf = moveRight(previous, previous.getNextLeafPageNumber());
+				}
+				result.set(order[i], rids);
+			}
+		}
+		finally {
+			if (leaf != null) {
+				release(leaf, false);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public IndexResultIterator<RID> lookupRids(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new RangeIterator<RID>(startKey, stopKey, startKeyIncluded, stopKeyIncluded) {
+			@Override
+			protected RID select(DataField key, RID rid)
+			{
+				return rid;
+			}
+		};
+	}
+
+	@Override
+	public IndexResultIterator<DataField> lookupKeys(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	throws PageFormatException, IndexFormatCorruptException, IOException
+	{
+		return new RangeIterator<DataField>(startKey, stopKey, startKeyIncluded, stopKeyIncluded) {
+			@Override
+			protected DataField select(DataField key, RID rid)
+			{
+				return key;
+			}
+		};
+	}
+
+	@Override
+	public void insertEntry(DataField key, RID rid)
+	throws PageFormatException, IndexFormatCorruptException, DuplicateException, IOException
+	{
+		if (insertOptimistically(key, rid)) {
+			return;
+		}
+		while (!insertPessimistically(key, rid)) {
+			// the pair did not fit the half of the split leaf, try again
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                               inserts
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Inserts the pair into its leaf, holding read latches on the way down.
+	 *
+	 * @return true, if the pair was inserted, false, if the leaf is full.
+	 */
+	private boolean insertOptimistically(DataField key, RID rid) throws PageFormatException, IOException
+	{
+		BTreeLeafPage leaf = descend(key, true);
+		try {
+			return leaf.insertKeyRIDPair(key, rid);
+		}
+		finally {
+			release(leaf, true);
+		}
+	}
+
+	/**
+	 * Inserts the pair into its leaf, holding write latches on all nodes that may split.
+	 *
+	 * @return true, if the pair was inserted, false, if it did not fit after the leaf was split.
+	 */
+	private boolean insertPessimistically(DataField key, RID rid) throws PageFormatException, IOException
+	{
+		// the latched inner nodes that may split, and the positions of the pointers taken in them
+		List<BTreeInnerNodePage> path = new ArrayList<BTreeInnerNodePage>();
+		List<Integer> positions = new ArrayList<Integer>();
+		boolean rootLatched = true;
+		this.rootLatch.writeLock().lock();
+
+		BTreeLeafPage leaf = null;
+		List<BTreeIndexPage> created = new ArrayList<BTreeIndexPage>();
+		try {
+			BTreeIndexPage page = pinAndLatch(this.schema.getRootPageNumber(), true);
+			while (page instanceof BTreeInnerNodePage) {
+				BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+				if (hasRoomForKey(node)) {
+					// nothing above this node splits
+					releaseAll(path, true);
+					positions.clear();
+					if (rootLatched) {
+						this.rootLatch.writeLock().unlock();
+						rootLatched = false;
+					}
+				}
+				path.add(node);
+				BTreeInnerNodePage.KeyPageNumberPosition child = node.getChildWithKeyAndPosition(key);
+				positions.add(child.getPosition());
+				page = pinAndLatch(child.getPageNumber(), true);
+			}
+			leaf = (BTreeLeafPage) page;
+			if (leaf.insertKeyRIDPair(key, rid)) {
+				return true;
+			}
+			if (this.schema.isUnique() && leaf.getRIDForKey(key) != null) {
+				// a full leaf does not check for duplicates
+				throw new DuplicateException("Key " + key + " is already contained.");
+			}
+
+			// split the leaf, moving its upper half to a new leaf right of it
+			BTreeLeafPage right = (BTreeLeafPage) newPage(BTreeIndexPageType.LEAF_PAGE, created);
+			int num = leaf.getNumberOfEntries();
+			right.prependEntriesFromOtherPage(leaf, num - num / 2);
+			right.setNextLeafPageNumber(leaf.getNextLeafPageNumber());
+			right.setLastKeyContinuingOnNextPage(leaf.isLastKeyContinuingOnNextPage());
+			leaf.setNextLeafPageNumber(right.getPageNumber());
+			leaf.setLastKeyContinuingOnNextPage(leaf.getLastKey().equals(right.getFirstKey()));
+			DataField separator = leaf.getLastKey();
+			BTreeLeafPage target = key.compareTo(separator) <= 0 ? leaf : right;
+
+			// enter the new node into the parent, splitting the parents that are full
+			int rightNumber = right.getPageNumber();
+			int leftNumber = leaf.getPageNumber();
+			boolean entered = false;
+			for (int level = path.size() - 1; level >= 0; level--) {
+				BTreeInnerNodePage node = path.get(level);
+				int position = positions.get(level);
+				if (node.insertKeyPageNumberPairAtPosition(separator, rightNumber, position)) {
+					entered = true;
+					break;
+				}
+				BTreeInnerNodePage sibling = (BTreeInnerNodePage) newPage(BTreeIndexPageType.INNER_NODE_PAGE, created);
+				int numKeys = node.getNumberOfKeys();
+				DataField dropped = node.moveLastToNewPage(sibling, numKeys - numKeys / 2);
+				int first = node.getNumberOfKeys() + 1;
+				boolean fits = position < first ?
+						node.insertKeyPageNumberPairAtPosition(separator, rightNumber, position) :
+						sibling.insertKeyPageNumberPairAtPosition(separator, rightNumber, position - first);
+				if (!fits) {
+					throw new IndexFormatCorruptException("The key " + separator + " does not fit a split inner node.");
+				}
+				separator = dropped;
+				leftNumber = node.getPageNumber();
+				rightNumber = sibling.getPageNumber();
+			}
+
+			if (!entered) {
+				// the root split, the tree grows by one level
+				if (!rootLatched) {
+					throw new IndexFormatCorruptException("A node that had room for a key could not take it.");
+				}
+				BTreeInnerNodePage root = (BTreeInnerNodePage) newPage(BTreeIndexPageType.INNER_NODE_PAGE, created);
+				root.initRootState(separator, leftNumber, rightNumber);
+				this.schema.setRootPageNumber(root.getPageNumber());
+			}
+			return target.insertKeyRIDPair(key, rid);
+		}
+		finally {
+			if (leaf != null) {
+				release(leaf, true);
+			}
+			for (BTreeIndexPage page : created) {
+				release(page, true);
+			}
+			releaseAll(path, true);
+			if (rootLatched) {
+				this.rootLatch.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a node takes one more key without a split. Compressed nodes do not know in
+	 * advance whether a key fits, so they are always assumed to split.
+	 */
+	private boolean hasRoomForKey(BTreeInnerNodePage node)
+	{
+		return !(node instanceof BTreeCompressedInnerNodePage) && node.getNumberOfKeys() < this.schema.getFanOut();
+	}
+
+	// ------------------------------------------------------------------------
+	//                          latches and pages
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Descends from the root to the first leaf that may hold the key, with read latches on the inner
+	 * nodes.
+	 *
+	 * @param key The key to find the leaf for, or null for the first leaf of the index.
+	 * @param exclusive Flag indicating that the leaf is latched for writing.
+	 * @return The leaf, which is pinned and latched.
+	 */
+	private BTreeLeafPage descend(DataField key, boolean exclusive) throws PageFormatException, IOException
+	{
+		BTreeIndexPage page;
+		this.rootLatch.readLock().lock();
+		try {
+			int rootNumber = this.schema.getRootPageNumber();
+			page = pin(rootNumber);
+			latch(rootNumber, exclusive && page instanceof BTreeLeafPage);
+		}
+		finally {
+			this.rootLatch.readLock().unlock();
+		}
+
+		while (page instanceof BTreeInnerNodePage) {
+			BTreeIndexPage child;
+			try {
+				BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+				int childNumber = key == null ? node.getPointer(0) : node.getChildPageForKey(key);
+				child = pin(childNumber);
+				latch(childNumber, exclusive && child instanceof BTreeLeafPage);
+			}
+			finally {
+				release(page, false);
+			}
+			page = child;
+		}
+		return (BTreeLeafPage) page;
+	}
+
+	/**
+	 * Gets the leaf on which the first pair of a key may be, during a sweep over keys in ascending
+	 * order.
+	 *
+	 * @param leaf The leaf holding the pairs of the previous key, which is latched for reading, or
+	 *             null for the first key.
+	 * @param key The key, which is greater than the previous key.
+	 * @return The leaf for the key, which is pinned and latched for reading. The given leaf is
+	 *         released, unless it is returned.
+	 */
+	private BTreeLeafPage leafForNextKey(BTreeLeafPage leaf, DataField key) throws PageFormatException, IOException
+	{
+		if (leaf == null) {
+			return descend(key, false);
+		}
+		if (leaf.getNumberOfEntries() > 0 && key.compareTo(leaf.getLastKey()) <= 0) {
+			return leaf;
+		}
+		int nextNumber = leaf.getNextLeafPageNumber();
+		if (nextNumber != -1) {
+			leaf = moveRight(leaf, nextNumber);
+			if (leaf.getNumberOfEntries() > 0 && key.compareTo(leaf.getLastKey()) <= 0) {
+				return leaf;
+			}
+		}
+		// the latch on the leaf must not be held while latching from the root downwards
+		release(leaf, false);
+		return descend(key, false);
+	}
+
+	/**
+	 * Moves from a leaf to the leaf right of it, latching that leaf before releasing the other.
+	 */
+	private BTreeLeafPage moveRight(BTreeLeafPage leaf, int nextNumber) throws PageFormatException, IOException
+	{
+		try {
+			return (BTreeLeafPage) pinAndLatch(nextNumber, false);
+		}
+		finally {
+			release(leaf, false);
+		}
+	}
+
+	private BTreeIndexPage pin(int pageNumber) throws PageFormatException, IOException
+	{
+		try {
+			return (BTreeIndexPage) this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+		}
+		catch (BufferPoolException bpex) {
+			throw new IOException("Page " + pageNumber + " could not be obtained from the buffer pool.", bpex);
+		}
+	}
+
+	private BTreeIndexPage pinAndLatch(int pageNumber, boolean exclusive) throws PageFormatException, IOException
+	{
+		BTreeIndexPage page = pin(pageNumber);
+		latch(pageNumber, exclusive);
+		return page;
+	}
+
+	/**
+	 * Creates a new page of the given type, which is pinned and latched for writing.
+	 */
+	private BTreeIndexPage newPage(BTreeIndexPageType type, List<BTreeIndexPage> created) throws IOException
+	{
+		BTreeIndexPage page;
+		try {
+			page = (BTreeIndexPage) this.bufferPool.createNewPageAndPin(this.resourceId, type);
+		}
+		catch (BufferPoolException bpex) {
+			throw new IOException("A new page could not be obtained from the buffer pool.", bpex);
+		}
+		latch(page.getPageNumber(), true);
+		created.add(page);
+		return page;
+	}
+
+	private void latch(int pageNumber, boolean exclusive)
+	{
+		ReentrantReadWriteLock latch = getLatch(pageNumber);
+		if (exclusive) {
+			latch.writeLock().lock();
+		}
+		else {
+			latch.readLock().lock();
+		}
+	}
+
+	private void release(BTreeIndexPage page, boolean exclusive)
+	{
+		int pageNumber = page.getPageNumber();
+		ReentrantReadWriteLock latch = getLatch(pageNumber);
+		if (exclusive) {
+			latch.writeLock().unlock();
+		}
+		else {
+			latch.readLock().unlock();
+		}
+		this.bufferPool.unpinPage(this.resourceId, pageNumber);
+	}
+
+	private void releaseAll(List<? extends BTreeIndexPage> pages, boolean exclusive)
+	{
+		for (BTreeIndexPage page : pages) {
+			release(page, exclusive);
+		}
+		pages.clear();
+	}
+
+	private ReentrantReadWriteLock getLatch(int pageNumber)
+	{
+		ReentrantReadWriteLock latch = this.latches.get(pageNumber);
+		if (latch == null) {
+			ReentrantReadWriteLock newLatch = new ReentrantReadWriteLock();
+			latch = this.latches.putIfAbsent(pageNumber, newLatch);
+			if (latch == null) {
+				latch = newLatch;
+			}
+		}
+		return latch;
+	}
+
+	// ------------------------------------------------------------------------
+	//                              lookups
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Iterates over the pairs in a range of keys, reading the qualifying pairs of one leaf at a time.
+	 */
+	private abstract class RangeIterator<E> implements IndexResultIterator<E>
+	{
+		/**
+		 * The lower bound of the range, or null, if the range starts at the first key of the index.
+		 */
+		private final DataField startKey;
+
+		private final DataField stopKey;
+
+		private final boolean startKeyIncluded;
+
+		private final boolean stopKeyIncluded;
+
+		/**
+		 * The results read from the current leaf.
+		 */
+		private final List<E> results;
+
+		/**
+		 * The RIDs of the highest key of the leaves read so far, which have been read already.
+		 */
+		private final Set<RID> boundaryRids;
+
+		/**
+		 * The highest key of the leaves read so far, or null.
+		 */
+		private DataField boundaryKey;
+
+		/**
+		 * The number of the leaf read last, or -1.
+		 */
+		private int leafNumber;
+
+		private int next;
+
+		private boolean exhausted;
+
+
+		RangeIterator(DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+		{
+			this.startKey = startKey;
+			this.stopKey = stopKey;
+			this.startKeyIncluded = startKeyIncluded;
+			this.stopKeyIncluded = stopKeyIncluded;
+			this.results = new ArrayList<E>();
+			this.boundaryRids = new HashSet<RID>();
+			this.leafNumber = -1;
+		}
+
+		/**
+		 * Selects the result for a qualifying pair.
+		 */
+		protected abstract E select(DataField key, RID rid);
+
+		@Override
+		public boolean hasNext() throws IOException, IndexFormatCorruptException, PageFormatException
+		{
+			while (this.next >= this.results.size() && !this.exhausted) {
+				readNextLeaf();
+			}
+			return this.next < this.results.size();
+		}
+
+		@Override
+		public E next() throws IOException, IndexFormatCorruptException, PageFormatException
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return this.results.get(this.next++);
+		}
+
+		private void readNextLeaf() throws IOException, PageFormatException
+		{
+			this.results.clear();
+			this.next = 0;
+
+			BTreeLeafPage leaf;
+			int position;
+			if (this.leafNumber == -1) {
+				leaf = descend(this.startKey, false);
+				position = this.startKey == null ? 0 : leaf.getPositionForKey(this.startKey);
+			}
+			else {
+				// follow the current right link of the leaf read last, which leads to the pairs
+				// that were moved out of it in the meantime
+				BTreeLeafPage previous = (BTreeLeafPage) pinAndLatch(this.leafNumber, false);
+				try {
+					int nextNumber = previous.getNextLeafPageNumber();
+					if (nextNumber == -1) {
+						this.exhausted = true;
+						return;
+					}
+					leaf = (BTreeLeafPage) pinAndLatch(nextNumber, false);
+				}
+				finally {
+					release(previous, false);
+				}
+				position = 0;
+			}
+
+			try {
+				int num = leaf.getNumberOfEntries();
+				for (; position < num; position++) {
+					DataField key = leaf.getKey(position);
+					int cmp;
+					if (this.startKey != null) {
+						cmp = key.compareTo(this.startKey);
+						if (cmp < 0 || (cmp == 0 && !this.startKeyIncluded)) {
+							continue;
+						}
+					}
+					cmp = key.compareTo(this.stopKey);
+					if (cmp > 0 || (cmp == 0 && !this.stopKeyIncluded)) {
+						this.exhausted = true;
+						break;
+					}
+					RID rid = leaf.getRidAtPosition(position);
+					if (this.boundaryKey != null) {
+						cmp = key.compareTo(this.boundaryKey);
+						if (cmp < 0 || (cmp == 0 && this.boundaryRids.contains(rid))) {
+							continue;
+						}
+					}
+					this.results.add(select(key, rid));
+				}
+
+				// remember the pairs of the highest key, whose pairs may continue on the next leaf
+				if (!this.exhausted && num > 0) {
+					DataField last = leaf.getLastKey();
+					if (!last.equals(this.boundaryKey)) {
+						this.boundaryKey = last;
+						this.boundaryRids.clear();
+					}
+					for (int i = num - 1; i >= 0 && leaf.getKey(i).equals(last); i--) {
+						this.boundaryRids.add(leaf.getRidAtPosition(i));
+					}
+				}
+				this.leafNumber = leaf.getPageNumber();
+			}
+			finally {
+				release(leaf, false);
+			}
+		}
+	}
+}
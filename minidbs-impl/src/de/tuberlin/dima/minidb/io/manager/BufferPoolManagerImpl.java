@@ -0,0 +1,1499 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.cache.AccessHint;
+import de.tuberlin.dima.minidb.io.cache.CachePinnedException;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.DuplicateCacheEntryException;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageCache;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+
+
+/**
+ * A buffer pool that serves every registered resource through a dedicated reader and a dedicated
+ * writer thread.
+ * <p>
+ * Page requests that miss the cache are put into the read queue of their resource and are represented
+ * by a future, on which only the requesting callers block. The reader thread serves the queue in an
+ * elevator fashion: it picks the next queued page at or after the position of the last read and merges
+ * the queued requests for the directly following pages (up to
+ * {@link BufferPoolManager#MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE}) into one vectored
+ * {@link ResourceManager#readPagesFromResource(byte[][], int)} call.
+ * <p>
+ * Modified pages evicted from the cache are put into the write queue of their resource, where
+ * runs of consecutive pages are written together. Writing is deferred to let the runs grow: The
+ * writers start flushing when the I/O buffers held by waiting pages of their page size reach the
+ * high watermark, and stop once they are down to the low watermark, so that a share of the buffers
+ * is always free for reads and new pages. Waiting pages are flushed regardless once they have waited
+ * for the maximal delay, or when a thread runs out of I/O buffers. A page that is requested while its
+ * write is still queued goes back to the cache without any I/O; a page that is currently being written
+ * is not read again before the write has completed.
+ * <p>
+ * A run that cannot be written is logged, and its pages go back into the cache as modified pages,
+ * or, if the cache holds only pinned pages, into the write queue again. The writer of the resource
+ * then pauses for the maximal delay before it flushes again. The first such error is thrown by
+ * {@link #closeBufferPool()}, wrapped into an {@link UncheckedIOException}.
+ * <p>
+ * If configured, pages that leave the cache unmodified, or have been written back, are kept in an
+ * {@link OffHeapPageStore} outside the Java heap. Cache misses are served from there before the
+ * resource is read, as long as the resource manager can wrap buffers into pages.
+ * <p>
+ * Locking: The caches are thread safe by themselves. Each resource has a monitor guarding its
+ * queues; a cache miss and the enqueueing of the request, as well as adding a loaded page to the
+ * cache and completing its request, happen under that monitor. No other monitor of the buffer pool
+ * is acquired while holding it, apart from the cache's. The actual I/O calls synchronize on the
+ * resource manager, because the managers position their file channel for vectored transfers.
+ */
+public class BufferPoolManagerImpl implements BufferPoolManager
+{
+	/**
+	 * The configuration providing cache sizes and the number of I/O buffers.
+	 */
+	private final Config config;
+
+	/**
+	 * The logger for problems in the I/O threads.
+	 */
+	private final Logger logger;
+
+	/**
+	 * The caches, one per page size. Guarded by this buffer pool's monitor.
+	 */
+	private final Map<PageSize, PageCache> caches;
+
+	/**
+	 * The I/O buffers, one pool per page size. Guarded by this buffer pool's monitor.
+	 */
+	private final Map<PageSize, IOBuffers> ioBuffers;
+
+	/**
+	 * The off-heap page stores, one per page size with a configured capacity. Guarded by this
+	 * buffer pool's monitor.
+	 */
+	private final Map<PageSize, OffHeapPageStore> offHeapStores;
+
+	/**
+	 * All registered resources by their id.
+	 */
+	private final Map<Integer, Resource> resources;
+
+	/**
+	 * The time (nanoseconds) a modified page may wait in a write queue.
+	 */
+	private final long maxWriteDelay;
+
+	// counters of the write behind, see WriteBehindStatistics
+	private final AtomicLong pagesFlushed = new AtomicLong();
+	private final AtomicLong writeBatches = new AtomicLong();
+	private final AtomicInteger largestBatch = new AtomicInteger();
+	private final AtomicLong pagesRescued = new AtomicLong();
+	private final AtomicLong stalls = new AtomicLong();
+	private final AtomicLong stallNanos = new AtomicLong();
+
+	/**
+	 * The first error of a write, to be reported when the buffer pool is closed.
+	 */
+	private final AtomicReference<IOException> writeError = new AtomicReference<IOException>();
+
+	/**
+	 * Flag indicating whether the I/O threads have been started.
+	 */
+	private boolean started;
+
+	/**
+	 * Flag indicating whether the buffer pool has been closed.
+	 */
+	private volatile boolean closed;
+
+
+	/**
+	 * Creates a new buffer pool. The I/O threads are not yet running.
+	 *
+	 * @param config The configuration to take the cache sizes and the number of I/O buffers from.
+	 * @param logger The logger to report problems of the I/O threads to.
+	 */
+	public BufferPoolManagerImpl(Config config, Logger logger)
+	{
+		this.config = config;
+		this.logger = logger;
+		this.caches = new HashMap<PageSize, PageCache>();
+		this.ioBuffers = new HashMap<PageSize, IOBuffers>();
+		this.offHeapStores = new HashMap<PageSize, OffHeapPageStore>();
+		this.resources = new ConcurrentHashMap<Integer, Resource>();
+		this.maxWriteDelay = config.getWriteBehindMaxDelay() * 1000000L;
+	}
+
+	// ------------------------------------------------------------------------
+	//                            Life cycle
+	// ------------------------------------------------------------------------
+
+	@Override
+	public synchronized void startIOThreads() throws BufferPoolException
+	{
+		if (this.closed) {
+			throw new BufferPoolException("The buffer pool has been closed.");
+		}
+		if (this.started) {
+			return;
+		}
+		this.started = true;
+		for (Resource resource : this.resources.values()) {
+			resource.startThreads();
+		}
+	}
+
+	@Override
+	public void closeBufferPool()
+	{
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+		}
+
+		// stop reading and wake up everyone waiting for a page or a buffer
+		for (Resource resource : this.resources.values()) {
+			resource.stopReading();
+		}
+		for (IOBuffers buffers : this.ioBuffers.values()) {
+			buffers.close();
+		}
+
+		// write back what has been modified and let the writers drain their queues
+		for (Resource resource : this.resources.values()) {
+			for (CacheableData page : resource.cache.getAllPagesForResource(resource.id)) {
+				if (page.hasBeenModified()) {
+					resource.queueWrite(page.getBuffer(), page);
+				}
+			}
+		}
+		for (Resource resource : this.resources.values()) {
+			resource.stopWriting();
+		}
+
+		synchronized (this) {
+			this.caches.clear();
+			this.ioBuffers.clear();
+			this.offHeapStores.clear();
+		}
+
+		IOException error = this.writeError.getAndSet(null);
+		if (error != null) {
+			throw new UncheckedIOException("Modified pages could not be written to their resource.", error);
+		}
+	}
+
+	@Override
+	public synchronized void registerResource(int id, ResourceManager manager) throws BufferPoolException
+	{
+		if (this.closed) {
+			throw new BufferPoolException("The buffer pool has been closed.");
+		}
+		if (this.resources.containsKey(id)) {
+			throw new BufferPoolException("A resource with id " + id + " is already registered.");
+		}
+
+		PageSize pageSize = manager.getPageSize();
+		PageCache cache = this.caches.get(pageSize);
+		if (cache == null) {
+			cache = createCache(pageSize);
+			this.caches.put(pageSize, cache);
+		}
+		IOBuffers buffers = this.ioBuffers.get(pageSize);
+		if (buffers == null) {
+			buffers = new IOBuffers(pageSize, this.config.getNumIOBuffers(),
+					this.config.getWriteBehindLowWatermark(), this.config.getWriteBehindHighWatermark());
+			this.ioBuffers.put(pageSize, buffers);
+		}
+
+		OffHeapPageStore store = this.offHeapStores.get(pageSize);
+		if (store == null && this.config.getOffHeapCacheSize(pageSize) > 0) {
+			store = new OffHeapPageStore(pageSize, this.config.getOffHeapCacheSize(pageSize));
+			this.offHeapStores.put(pageSize, store);
+		}
+		if (!manager.supportsBufferWrapping()) {
+			store = null;
+		}
+
+		Resource resource = new Resource(id, manager, cache, buffers, store);
+		this.resources.put(id, resource);
+		buffers.writers.add(resource);
+		if (this.started) {
+			resource.startThreads();
+		}
+	}
+
+	/**
+	 * Creates the cache for a page size. The cache must be thread safe, so the segmented cache
+	 * is preferred and a plain cache is only used, guarded by a single lock, if the extension
+	 * factory cannot provide one.
+	 */
+	private PageCache createCache(PageSize pageSize) throws BufferPoolException
+	{
+		AbstractExtensionFactory factory = AbstractExtensionFactory.getExtensionFactory();
+		int size = this.config.getCacheSize(pageSize);
+		try {
+			try {
+				return factory.createPageCache(pageSize, size, this.config.getCacheSegments());
+			}
+			catch (UnsupportedOperationException uoex) {
+				return new SynchronizedPageCache(factory.createPageCache(pageSize, size));
+			}
+		}
+		catch (Exception ex) {
+			throw new BufferPoolException("The cache for page size " + pageSize + " could not be created.", ex);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                       Page level operations
+	// ------------------------------------------------------------------------
+
+	@Override
+	public CacheableData getPageAndPin(int resourceId, int pageNumber) throws BufferPoolException, IOException
+	{
+		return getPageAndPin(resourceId, pageNumber, AccessHint.RANDOM);
+	}
+
+	@Override
+	public CacheableData getPageAndPin(int resourceId, int pageNumber, AccessHint hint) throws BufferPoolException, IOException
+	{
+		Resource resource = getResource(resourceId);
+		while (true) {
+			CacheableData page = resource.cache.getPageAndPin(resourceId, pageNumber, hint);
+			if (page != null) {
+				return page;
+			}
+			if (resource.store != null && resource.store.contains(resourceId, pageNumber)) {
+				page = loadFromStore(resource, pageNumber, hint);
+				if (page != null) {
+					return page;
+				}
+			}
+
+			PageRequest request;
+			boolean pinOwner;
+			synchronized (resource) {
+				// the page may have been loaded in the meantime
+				page = resource.cache.getPageAndPin(resourceId, pageNumber, hint);
+				if (page != null) {
+					return page;
+				}
+				checkOpen();
+				request = resource.pendingReads.get(pageNumber);
+				if (request != null) {
+					pinOwner = !request.pin;
+					request.pin = true;
+					if (hint != AccessHint.SEQUENTIAL_SCAN) {
+						// the page is not only needed by a scan
+						request.hint = hint;
+					}
+				}
+				else {
+					request = resource.requestPage(pageNumber, true, hint);
+					pinOwner = true;
+				}
+			}
+			if (request.evicted != null) {
+				handleEvicted(request.evicted, resource.buffers);
+			}
+
+			page = awaitPage(request);
+			if (pinOwner) {
+				return page;
+			}
+			// another caller holds the pin the page was loaded with, so pin it through the cache.
+			// if it has already been evicted again, the request is repeated.
+		}
+	}
+
+	/**
+	 * Brings a page back from the off-heap store in the calling thread, which is cheaper than handing
+	 * the request to the reader.
+	 *
+	 * @return The pinned page, or null, if the page is no longer in the store or is already being read.
+	 */
+	private CacheableData loadFromStore(Resource resource, int pageNumber, AccessHint hint) throws BufferPoolException, IOException
+	{
+		byte[] buffer = resource.buffers.take();
+		CacheableData page;
+		EvictedCacheEntry evicted;
+		synchronized (resource) {
+			page = resource.cache.getPageAndPin(resource.id, pageNumber, hint);
+			if (page != null || resource.pendingReads.containsKey(pageNumber) || !resource.store.take(resource.id, pageNumber, buffer)) {
+				resource.buffers.release(buffer);
+				return page;
+			}
+			try {
+				page = resource.manager.wrapBuffer(buffer);
+				evicted = resource.cache.addPageAndPin(page, resource.id, hint);
+			}
+			catch (IOException ioex) {
+				resource.buffers.release(buffer);
+				throw ioex;
+			}
+			catch (CachePinnedException cpex) {
+				resource.buffers.release(buffer);
+				throw new BufferPoolException("The cache holds only pinned pages, page " + pageNumber + " cannot be added.", cpex);
+			}
+			catch (DuplicateCacheEntryException dceex) {
+				// cannot happen, the page was found to be missing under the monitor
+				resource.buffers.release(buffer);
+				throw new BufferPoolException("Page " + pageNumber + " is already in the cache.", dceex);
+			}
+		}
+		handleEvicted(evicted, resource.buffers);
+		return page;
+	}
+
+	@Override
+	public CacheableData unpinAndGetPageAndPin(int resourceId, int unpinPageNumber, int getPageNumber)
+	throws BufferPoolException, IOException
+	{
+		return unpinAndGetPageAndPin(resourceId, unpinPageNumber, getPageNumber, AccessHint.RANDOM);
+	}
+
+	@Override
+	public CacheableData unpinAndGetPageAndPin(int resourceId, int unpinPageNumber, int getPageNumber, AccessHint hint)
+	throws BufferPoolException, IOException
+	{
+		Resource resource = getResource(resourceId);
+		resource.cache.unpinPage(resourceId, unpinPageNumber);
+		return getPageAndPin(resourceId, getPageNumber, hint);
+	}
+
+	@Override
+	public void unpinPage(int resourceId, int pageNumber)
+	{
+		Resource resource = this.resources.get(resourceId);
+		if (resource != null && !this.closed) {
+			resource.cache.unpinPage(resourceId, pageNumber);
+		}
+	}
+
+	@Override
+	public void prefetchPage(int resourceId, int pageNumber) throws BufferPoolException
+	{
+		prefetchPages(resourceId, pageNumber, pageNumber);
+	}
+
+	@Override
+	public void prefetchPages(int resourceId, int startPageNumber, int endPageNumber) throws BufferPoolException
+	{
+		prefetchPages(resourceId, startPageNumber, endPageNumber, AccessHint.RANDOM);
+	}
+
+	@Override
+	public void prefetchPages(int resourceId, int startPageNumber, int endPageNumber, AccessHint hint) throws BufferPoolException
+	{
+		Resource resource = getResource(resourceId);
+		List<EvictedCacheEntry> evicted = null;
+		synchronized (resource) {
+			checkOpen();
+			for (int pageNumber = startPageNumber; pageNumber <= endPageNumber; pageNumber++) {
+				// a cached page is hit, any other one is loaded without being hit
+				if (resource.cache.getPage(resourceId, pageNumber, hint) == null && !resource.pendingReads.containsKey(pageNumber)) {
+					PageRequest request = resource.requestPage(pageNumber, false, hint);
+					if (request.evicted != null) {
+						if (evicted == null) {
+							evicted = new ArrayList<EvictedCacheEntry>();
+						}
+						evicted.add(request.evicted);
+					}
+				}
+			}
+		}
+		if (evicted != null) {
+			for (EvictedCacheEntry entry : evicted) {
+				handleEvicted(entry, resource.buffers);
+			}
+		}
+	}
+
+	@Override
+	public int getNumberOfFreeFrames(int resourceId) throws BufferPoolException
+	{
+		return getResource(resourceId).buffers.available();
+	}
+
+	@Override
+	public int getNumberOfPendingReads(int resourceId) throws BufferPoolException
+	{
+		Resource resource = getResource(resourceId);
+		synchronized (resource) {
+			return resource.pendingReads.size();
+		}
+	}
+
+	@Override
+	public CacheableData createNewPageAndPin(int resourceId) throws BufferPoolException, IOException
+	{
+		return createNewPageAndPin(resourceId, null);
+	}
+
+	@Override
+	public CacheableData createNewPageAndPin(int resourceId, Enum<?> type) throws BufferPoolException, IOException
+	{
+		Resource resource = getResource(resourceId);
+		byte[] buffer = resource.buffers.take();
+
+		CacheableData page;
+		EvictedCacheEntry evicted;
+		try {
+			synchronized (resource.manager) {
+				page = type == null ? resource.manager.reserveNewPage(buffer) : resource.manager.reserveNewPage(buffer, type);
+			}
+			// a page of the same number from before a truncation must not come back
+			if (resource.store != null) {
+				resource.store.remove(resourceId, page.getPageNumber());
+			}
+			evicted = resource.cache.addPageAndPin(page, resourceId);
+		}
+		catch (PageFormatException pfex) {
+			resource.buffers.release(buffer);
+			throw new BufferPoolException("The new page could not be initialized.", pfex);
+		}
+		catch (CachePinnedException cpex) {
+			resource.buffers.release(buffer);
+			throw new BufferPoolException("The cache holds only pinned pages, the new page cannot be added.", cpex);
+		}
+		catch (DuplicateCacheEntryException dceex) {
+			resource.buffers.release(buffer);
+			throw new BufferPoolException("The resource reserved a page that is already in the cache.", dceex);
+		}
+		catch (IOException ioex) {
+			resource.buffers.release(buffer);
+			throw ioex;
+		}
+
+		handleEvicted(evicted, resource.buffers);
+		return page;
+	}
+
+	/**
+	 * Gets the current counters describing how modified pages are written back.
+	 *
+	 * @return A snapshot of the write behind counters.
+	 */
+	public WriteBehindStatistics getWriteBehindStatistics()
+	{
+		return new WriteBehindStatistics(this.pagesFlushed.get(), this.writeBatches.get(), this.largestBatch.get(),
+				this.pagesRescued.get(), this.stalls.get(), this.stallNanos.get());
+	}
+
+	// ------------------------------------------------------------------------
+	//                              Utilities
+	// ------------------------------------------------------------------------
+
+	private Resource getResource(int resourceId) throws BufferPoolException
+	{
+		checkOpen();
+		Resource resource = this.resources.get(resourceId);
+		if (resource == null) {
+			throw new BufferPoolException("The resource " + resourceId + " is not registered at the buffer pool.");
+		}
+		return resource;
+	}
+
+	private void checkOpen() throws BufferPoolException
+	{
+		if (this.closed) {
+			throw new BufferPoolException("The buffer pool has been closed.");
+		}
+	}
+
+	private static CacheableData awaitPage(PageRequest request) throws BufferPoolException, IOException
+	{
+		try {
+			return request.future.get();
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new BufferPoolException("Interrupted while waiting for page " + request.pageNumber + ".", iex);
+		}
+		catch (ExecutionException eex) {
+			Throwable cause = eex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof BufferPoolException) {
+				throw (BufferPoolException) cause;
+			}
+			throw new BufferPoolException("Page " + request.pageNumber + " could not be loaded.", cause);
+		}
+	}
+
+	/**
+	 * Takes care of the frame a page was added to. A frame that held a modified page is written
+	 * to that page's resource (which need not be the one whose page was added) and returns to the
+	 * I/O buffers afterwards, any other frame returns to the I/O buffers right away, after its page
+	 * has been copied to the off-heap store.
+	 * <p>
+	 * Must not be called while holding the monitor of a resource.
+	 */
+	private void handleEvicted(EvictedCacheEntry evicted, IOBuffers buffers)
+	{
+		CacheableData wrapper = evicted.getWrappingPage();
+		if (wrapper != null) {
+			Resource owner = this.resources.get(evicted.getResourceID());
+			if (wrapper.hasBeenModified()) {
+				if (owner != null) {
+					owner.queueWrite(evicted.getBinaryPage(), wrapper);
+					return;
+				}
+			}
+			else if (owner != null && owner.store != null) {
+				owner.store.put(owner.id, wrapper.getPageNumber(), evicted.getBinaryPage());
+			}
+			wrapper.markExpired();
+		}
+		buffers.release(evicted.getBinaryPage());
+	}
+
+	// ------------------------------------------------------------------------
+	//                       Resources and their I/O threads
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A registered resource with its queues and I/O threads. The queues are guarded by the
+	 * monitor of this object.
+	 */
+	private final class Resource
+	{
+		final int id;
+
+		final ResourceManager manager;
+
+		final PageCache cache;
+
+		final IOBuffers buffers;
+
+		/**
+		 * The store for pages outside the heap, or null, if there is none for this resource.
+		 */
+		final OffHeapPageStore store;
+
+		/**
+		 * All requested pages that are not yet in the cache, queued or being read.
+		 */
+		private final Map<Integer, PageRequest> pendingReads = new HashMap<Integer, PageRequest>();
+
+		/**
+		 * The requests that wait to be read, ordered by page number.
+		 */
+		private final TreeMap<Integer, PageRequest> readQueue = new TreeMap<Integer, PageRequest>();
+
+		/**
+		 * All pages to be written, queued or being written.
+		 */
+		private final Map<Integer, WriteRequest> pendingWrites = new HashMap<Integer, WriteRequest>();
+
+		/**
+		 * The pages that wait to be written, ordered by page number.
+		 */
+		private final TreeMap<Integer, WriteRequest> writeQueue = new TreeMap<Integer, WriteRequest>();
+
+		/**
+		 * The page after the last one read, where the elevator continues.
+		 */
+		private int readPosition;
+
+		/**
+		 * The page after the last one written, where the elevator continues.
+		 */
+		private int writePosition;
+
+		private boolean readingStopped;
+
+		private boolean writingStopped;
+
+		/**
+		 * Whether the writer is currently flushing its queue.
+		 */
+		private boolean flushing;
+
+		/**
+		 * Whether the current flush empties the queue, rather than stopping at the low watermark.
+		 */
+		private boolean drainAll;
+
+		/**
+		 * Set when a page is waited for whose write is still queued.
+		 */
+		private boolean urgent;
+
+		/**
+		 * The time (System.nanoTime()) since which the queue has held pages without being flushed.
+		 */
+		private long oldestQueued;
+
+		/**
+		 * The time (System.nanoTime()) before which the writer does not flush again, after a failed write.
+		 */
+		private long retryAt = System.nanoTime();
+
+		private Thread reader;
+
+		private Thread writer;
+
+
+		Resource(int id, ResourceManager manager, PageCache cache, IOBuffers buffers, OffHeapPageStore store)
+		{
+			this.id = id;
+			this.manager = manager;
+			this.cache = cache;
+			this.buffers = buffers;
+			this.store = store;
+		}
+
+		void startThreads()
+		{
+			this.reader = new Thread("BufferPool Reader (resource " + this.id + ")") {
+				@Override
+				public void run()
+				{
+					runReader();
+				}
+			};
+			this.writer = new Thread("BufferPool Writer (resource " + this.id + ")") {
+				@Override
+				public void run()
+				{
+					runWriter();
+				}
+			};
+			this.reader.setDaemon(true);
+			this.writer.setDaemon(true);
+			this.reader.start();
+			this.writer.start();
+		}
+
+		/**
+		 * Creates the request for a page that is neither cached nor pending. Must be called while
+		 * holding the monitor of this resource.
+		 * <p>
+		 * If the page still waits to be written, it is put back into the cache and the returned request
+		 * is already completed. The entry evicted for it must then be handled by the caller, after
+		 * leaving the monitor. Otherwise, the request is queued for the reader.
+		 */
+		PageRequest requestPage(int pageNumber, boolean pin, AccessHint hint)
+		{
+			PageRequest request = new PageRequest(pageNumber);
+			request.pin = pin;
+			request.hint = hint;
+
+			WriteRequest queued = this.writeQueue.get(pageNumber);
+			if (queued != null) {
+				try {
+					request.evicted = pin ? this.cache.addPageAndPin(queued.wrapper, this.id, hint) : this.cache.addPage(queued.wrapper, this.id, hint);
+					this.writeQueue.remove(pageNumber);
+					this.pendingWrites.remove(pageNumber);
+					request.future.complete(queued.wrapper);
+					this.buffers.removeDirty(1);
+					BufferPoolManagerImpl.this.pagesRescued.incrementAndGet();
+					return request;
+				}
+				catch (CachePinnedException cpex) {
+					// read it once it is written, and have it written soon
+				}
+				catch (DuplicateCacheEntryException dceex) {
+					// cannot happen, the page was found to be missing under the monitor
+				}
+				this.urgent = true;
+			}
+
+			this.pendingReads.put(pageNumber, request);
+			this.readQueue.put(pageNumber, request);
+			notifyAll();
+			return request;
+		}
+
+		void queueWrite(byte[] buffer, CacheableData wrapper)
+		{
+			synchronized (this) {
+				if (this.writeQueue.isEmpty()) {
+					this.oldestQueued = System.nanoTime();
+				}
+				WriteRequest request = new WriteRequest(buffer, wrapper);
+				this.pendingWrites.put(request.pageNumber, request);
+				this.writeQueue.put(request.pageNumber, request);
+				notifyAll();
+			}
+			this.buffers.addDirty();
+		}
+
+		/**
+		 * Makes the writer re-check whether it has to flush.
+		 */
+		synchronized void wakeWriter()
+		{
+			notifyAll();
+		}
+
+		/**
+		 * Stops the reader and fails all requests that have not been completed yet.
+		 */
+		void stopReading()
+		{
+			synchronized (this) {
+				this.readingStopped = true;
+				BufferPoolException closed = new BufferPoolException("The buffer pool has been closed.");
+				for (PageRequest request : this.pendingReads.values()) {
+					request.future.completeExceptionally(closed);
+				}
+				this.pendingReads.clear();
+				this.readQueue.clear();
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Stops the writer after it has written all queued pages and waits for it to finish.
+		 * If the I/O threads were never started, the queued pages are written by the calling thread.
+		 */
+		void stopWriting()
+		{
+			synchronized (this) {
+				this.writingStopped = true;
+				notifyAll();
+			}
+			if (this.writer == null) {
+				runWriter();
+				return;
+			}
+			try {
+				this.writer.join();
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		// --------------------------------------------------------------------
+
+		private void runReader()
+		{
+			byte[][] ioBuffers = new byte[MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE][];
+			try {
+				while (true) {
+					synchronized (this) {
+						while (this.readQueue.isEmpty() && !this.readingStopped) {
+							wait();
+						}
+						if (this.readingStopped) {
+							return;
+						}
+					}
+
+					// get the buffers first, there is no point in taking more requests than buffers
+					int numBuffers = this.buffers.take(ioBuffers);
+
+					List<PageRequest> run;
+					synchronized (this) {
+						if (this.readingStopped) {
+							this.buffers.release(ioBuffers, 0, numBuffers);
+							return;
+						}
+						run = takeReadRun(numBuffers);
+
+						// a page that is still being written out must not be read before it is on disk
+						while (hasPendingWrite(run) && !this.readingStopped) {
+							this.urgent = true;
+							notifyAll();
+							wait();
+						}
+					}
+					this.buffers.release(ioBuffers, run.size(), numBuffers);
+
+					readRun(run, ioBuffers);
+				}
+			}
+			catch (InterruptedException iex) {
+				// shut down
+			}
+			catch (BufferPoolException bpex) {
+				// the I/O buffers were closed
+			}
+		}
+
+		/**
+		 * Takes the next run of queued requests for consecutive pages, in elevator order.
+		 */
+		private List<PageRequest> takeReadRun(int maxLength)
+		{
+			Integer first = this.readQueue.ceilingKey(this.readPosition);
+			if (first == null) {
+				first = this.readQueue.firstKey();
+			}
+
+			List<PageRequest> run = new ArrayList<PageRequest>(maxLength);
+			int pageNumber = first;
+			PageRequest request;
+			while (run.size() < maxLength && (request = this.readQueue.remove(pageNumber)) != null) {
+				run.add(request);
+				pageNumber++;
+			}
+			this.readPosition = pageNumber;
+			return run;
+		}
+
+		private boolean hasPendingWrite(List<PageRequest> run)
+		{
+			if (this.pendingWrites.isEmpty()) {
+				return false;
+			}
+			for (PageRequest request : run) {
+				if (this.pendingWrites.containsKey(request.pageNumber)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void readRun(List<PageRequest> run, byte[][] ioBuffers)
+		{
+			int num = run.size();
+			int firstPageNumber = run.get(0).pageNumber;
+			CacheableData[] pages = new CacheableData[num];
+
+			try {
+				int from = 0;
+				while (from < num) {
+					// requests served from a page whose write failed need no I/O
+					if (run.get(from).future.isDone()) {
+						from++;
+						continue;
+					}
+					// pages kept off-heap come back without I/O, the others are read in runs
+					if (this.store != null && this.store.take(this.id, firstPageNumber + from, ioBuffers[from])) {
+						pages[from] = this.manager.wrapBuffer(ioBuffers[from]);
+						from++;
+						continue;
+					}
+					int to = from + 1;
+					while (to < num && !run.get(to).future.isDone() && (this.store == null || !this.store.contains(this.id, firstPageNumber + to))) {
+						to++;
+					}
+					readFromResource(pages, ioBuffers, from, to, firstPageNumber + from);
+					from = to;
+				}
+			}
+			catch (IOException ioex) {
+				synchronized (this) {
+					for (PageRequest request : run) {
+						this.pendingReads.remove(request.pageNumber);
+						request.future.completeExceptionally(ioex);
+					}
+				}
+				this.buffers.release(ioBuffers, 0, num);
+				return;
+			}
+
+			// add the pages to the cache and hand them out
+			EvictedCacheEntry[] evicted = new EvictedCacheEntry[num];
+			synchronized (this) {
+				for (int i = 0; i < num; i++) {
+					PageRequest request = run.get(i);
+					if (request.future.isDone()) {
+						// failed by closing the buffer pool
+						this.buffers.release(ioBuffers[i]);
+						continue;
+					}
+					try {
+						evicted[i] = request.pin ? this.cache.addPageAndPin(pages[i], this.id, request.hint) : this.cache.addPage(pages[i], this.id, request.hint);
+						request.future.complete(pages[i]);
+					}
+					catch (CachePinnedException cpex) {
+						this.buffers.release(ioBuffers[i]);
+						request.future.completeExceptionally(
+							new BufferPoolException("The cache holds only pinned pages, page " + request.pageNumber + " cannot be added.", cpex));
+					}
+					catch (DuplicateCacheEntryException dceex) {
+						// the page was created in the meantime, the cached version is the valid one
+						this.buffers.release(ioBuffers[i]);
+						CacheableData cached = request.pin ? this.cache.getPageAndPin(this.id, request.pageNumber, request.hint)
+								: this.cache.getPage(this.id, request.pageNumber, request.hint);
+						request.future.complete(cached);
+					}
+					this.pendingReads.remove(request.pageNumber);
+				}
+			}
+
+			for (EvictedCacheEntry entry : evicted) {
+				if (entry != null) {
+					handleEvicted(entry, this.buffers);
+				}
+			}
+		}
+
+		/**
+		 * Reads the pages for the buffers <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive) with one call.
+		 */
+		private void readFromResource(CacheableData[] pages, byte[][] ioBuffers, int from, int to, int firstPageNumber)
+		throws IOException
+		{
+			int num = to - from;
+			synchronized (this.manager) {
+				if (num == 1) {
+					pages[from] = this.manager.readPageFromResource(ioBuffers[from], firstPageNumber);
+				}
+				else {
+					byte[][] runBuffers = new byte[num][];
+					System.arraycopy(ioBuffers, from, runBuffers, 0, num);
+					System.arraycopy(this.manager.readPagesFromResource(runBuffers, firstPageNumber), 0, pages, from, num);
+				}
+			}
+		}
+
+		/**
+		 * Flushes the write queue when the I/O buffers reach the high watermark (down to the low
+		 * watermark), or completely when pages have waited for too long, buffers are waited for, a queued
+		 * page is requested again, or writing is stopped.
+		 */
+		private void runWriter()
+		{
+			long maxDelay = BufferPoolManagerImpl.this.maxWriteDelay;
+			try {
+				while (true) {
+					List<WriteRequest> run;
+					synchronized (this) {
+						while (true) {
+							if (this.writeQueue.isEmpty()) {
+								this.flushing = false;
+								this.urgent = false;
+								if (this.writingStopped) {
+									return;
+								}
+								wait();
+							}
+							else if (this.flushing) {
+								break;
+							}
+							else if (!this.writingStopped && this.retryAt - System.nanoTime() > 0) {
+								wait(Math.max(1, (this.retryAt - System.nanoTime()) / 1000000));
+							}
+							else if (this.writingStopped || this.urgent || this.buffers.hasWaiters()) {
+								this.flushing = true;
+								this.drainAll = true;
+							}
+							else if (this.buffers.isAboveHighWatermark()) {
+								this.flushing = true;
+								this.drainAll = false;
+							}
+							else {
+								long waited = System.nanoTime() - this.oldestQueued;
+								if (waited >= maxDelay) {
+									this.flushing = true;
+									this.drainAll = true;
+								}
+								else {
+									wait(Math.max(1, (maxDelay - waited) / 1000000));
+								}
+							}
+						}
+						run = takeWriteRun();
+					}
+
+					if (!writeRun(run)) {
+						synchronized (this) {
+							this.flushing = false;
+							this.retryAt = System.nanoTime() + maxDelay;
+						}
+						continue;
+					}
+
+					synchronized (this) {
+						if (!this.drainAll && this.buffers.isAtLowWatermark()) {
+							this.flushing = false;
+							this.urgent = false;
+							this.oldestQueued = System.nanoTime();
+						}
+					}
+				}
+			}
+			catch (InterruptedException iex) {
+				// shut down
+			}
+		}
+
+		/**
+		 * Takes the next run of queued writes for consecutive pages, in elevator order.
+		 */
+		private List<WriteRequest> takeWriteRun()
+		{
+			Integer first = this.writeQueue.ceilingKey(this.writePosition);
+			if (first == null) {
+				first = this.writeQueue.firstKey();
+			}
+
+			List<WriteRequest> run = new ArrayList<WriteRequest>();
+			int pageNumber = first;
+			WriteRequest request;
+			while (run.size() < MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE && (request = this.writeQueue.remove(pageNumber)) != null) {
+				run.add(request);
+				pageNumber++;
+			}
+			this.writePosition = pageNumber;
+			return run;
+		}
+
+		/**
+		 * Writes a run of pages and releases their buffers, or keeps the pages if the write fails.
+		 *
+		 * @return True, if the pages were written, false otherwise.
+		 */
+		private boolean writeRun(List<WriteRequest> run)
+		{
+			int num = run.size();
+			try {
+				synchronized (this.manager) {
+					if (num == 1) {
+						this.manager.writePageToResource(run.get(0).buffer, run.get(0).wrapper);
+					}
+					else {
+						byte[][] runBuffers = new byte[num][];
+						CacheableData[] wrappers = new CacheableData[num];
+						for (int i = 0; i < num; i++) {
+							runBuffers[i] = run.get(i).buffer;
+							wrappers[i] = run.get(i).wrapper;
+						}
+						this.manager.writePagesToResource(runBuffers, wrappers);
+					}
+				}
+			}
+			catch (IOException ioex) {
+				BufferPoolManagerImpl.this.logger.log(Level.SEVERE, "Pages " + run.get(0).pageNumber + " to "
+						+ (run.get(0).pageNumber + num - 1) + " of resource " + this.id + " could not be written.", ioex);
+				BufferPoolManagerImpl.this.writeError.compareAndSet(null, ioex);
+				keepFailedRun(run);
+				return false;
+			}
+
+			// the pages are clean now and may be kept off-heap. they must be in the store before
+			// the reader may read them again.
+			if (this.store != null) {
+				for (WriteRequest request : run) {
+					this.store.put(this.id, request.pageNumber, request.buffer);
+				}
+			}
+			synchronized (this) {
+				for (WriteRequest request : run) {
+					this.pendingWrites.remove(request.pageNumber);
+				}
+				notifyAll();
+			}
+			for (WriteRequest request : run) {
+				request.wrapper.markExpired();
+				this.buffers.release(request.buffer);
+			}
+			this.buffers.removeDirty(num);
+
+			BufferPoolManagerImpl.this.pagesFlushed.addAndGet(num);
+			BufferPoolManagerImpl.this.writeBatches.incrementAndGet();
+			AtomicInteger largest = BufferPoolManagerImpl.this.largestBatch;
+			int current;
+			while ((current = largest.get()) < num && !largest.compareAndSet(current, num)) {
+				// retry
+			}
+			return true;
+		}
+
+		/**
+		 * Puts the pages of a run that could not be written back into the cache, still modified, so that
+		 * they are written when they are evicted again. Requests waiting for such a page are completed
+		 * with it. Pages the cache cannot take wait in the queue for the next flush. Once writing has
+		 * been stopped, the pages are given up.
+		 */
+		private void keepFailedRun(List<WriteRequest> run)
+		{
+			List<EvictedCacheEntry> evicted = new ArrayList<EvictedCacheEntry>();
+			int removed = 0;
+			synchronized (this) {
+				for (WriteRequest request : run) {
+					if (this.writingStopped) {
+						this.pendingWrites.remove(request.pageNumber);
+						removed++;
+						continue;
+					}
+					PageRequest waiting = this.pendingReads.get(request.pageNumber);
+					try {
+						EvictedCacheEntry entry;
+						if (waiting == null) {
+							entry = this.cache.addPage(request.wrapper, this.id);
+						}
+						else {
+							entry = waiting.pin ? this.cache.addPageAndPin(request.wrapper, this.id, waiting.hint)
+									: this.cache.addPage(request.wrapper, this.id, waiting.hint);
+							this.pendingReads.remove(request.pageNumber);
+							this.readQueue.remove(request.pageNumber);
+							waiting.future.complete(request.wrapper);
+						}
+						if (entry != null) {
+							evicted.add(entry);
+						}
+						this.pendingWrites.remove(request.pageNumber);
+						removed++;
+						continue;
+					}
+					catch (CachePinnedException cpex) {
+						// wait in the queue for the next attempt
+					}
+					catch (DuplicateCacheEntryException dceex) {
+						// cannot happen, the page is not read while its write is pending
+					}
+					if (this.writeQueue.isEmpty()) {
+						this.oldestQueued = System.nanoTime();
+					}
+					this.writeQueue.put(request.pageNumber, request);
+				}
+				notifyAll();
+			}
+			this.buffers.removeDirty(removed);
+
+			// the cache took the frames of the pages, in exchange for those of the evicted ones
+			for (EvictedCacheEntry entry : evicted) {
+				handleEvicted(entry, this.buffers);
+			}
+		}
+	}
+
+	/**
+	 * A requested page that is not yet in the cache. The future is completed by the reader thread.
+	 */
+	private static final class PageRequest
+	{
+		final int pageNumber;
+
+		final CompletableFuture<CacheableData> future = new CompletableFuture<CacheableData>();
+
+		/**
+		 * Whether the page is to be added to the cache pinned. Guarded by the resource's monitor.
+		 */
+		boolean pin;
+
+		/**
+		 * How the page is accessed. A scan's request is upgraded when another caller waits for the
+		 * page, too. Guarded by the resource's monitor.
+		 */
+		AccessHint hint;
+
+		/**
+		 * The entry evicted when the page was put back into the cache from the write queue.
+		 */
+		EvictedCacheEntry evicted;
+
+		PageRequest(int pageNumber)
+		{
+			this.pageNumber = pageNumber;
+		}
+	}
+
+	/**
+	 * A modified page that is to be written out from the given buffer.
+	 */
+	private static final class WriteRequest
+	{
+		final int pageNumber;
+
+		final byte[] buffer;
+
+		final CacheableData wrapper;
+
+		WriteRequest(byte[] buffer, CacheableData wrapper)
+		{
+			this.pageNumber = wrapper.getPageNumber();
+			this.buffer = buffer;
+			this.wrapper = wrapper;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+	//                              I/O buffers
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The free I/O buffers for one page size. Pages are read into these buffers, and the frames of
+	 * evicted pages return to them once they are no longer needed. The buffers held by modified pages
+	 * waiting in the write queues are counted, to tell the writers when to flush.
+	 */
+	private final class IOBuffers
+	{
+		private final ArrayDeque<byte[]> free;
+
+		/**
+		 * The writers of all resources with this page size.
+		 */
+		final List<Resource> writers = new CopyOnWriteArrayList<Resource>();
+
+		/**
+		 * The number of buffers held by queued writes.
+		 */
+		private final AtomicInteger dirty = new AtomicInteger();
+
+		private final int lowMark;
+
+		private final int highMark;
+
+		/**
+		 * The number of threads waiting for a buffer.
+		 */
+		private volatile int waiting;
+
+		private boolean closed;
+
+		IOBuffers(PageSize pageSize, int numBuffers, int lowWatermark, int highWatermark)
+		{
+			this.free = new ArrayDeque<byte[]>(numBuffers);
+			for (int i = 0; i < numBuffers; i++) {
+				this.free.add(new byte[pageSize.getNumberOfBytes()]);
+			}
+			this.lowMark = numBuffers * lowWatermark / 100;
+			this.highMark = Math.max(1, numBuffers * highWatermark / 100);
+		}
+
+		byte[] take() throws BufferPoolException
+		{
+			byte[][] target = new byte[1][];
+			take(target);
+			return target[0];
+		}
+
+		/**
+		 * Takes as many buffers as available, up to the length of the target array, but at least one.
+		 * If none is available, the writers are made to flush their queues.
+		 *
+		 * @return The number of buffers taken.
+		 */
+		int take(byte[][] target) throws BufferPoolException
+		{
+			synchronized (this) {
+				int num = poll(target);
+				if (num > 0) {
+					return num;
+				}
+				this.waiting++;
+			}
+
+			wakeWriters();
+			long start = System.nanoTime();
+			try {
+				synchronized (this) {
+					try {
+						while (this.free.isEmpty() && !this.closed) {
+							wait();
+						}
+					}
+					catch (InterruptedException iex) {
+						Thread.currentThread().interrupt();
+						throw new BufferPoolException("Interrupted while waiting for an I/O buffer.", iex);
+					}
+					if (this.closed) {
+						throw new BufferPoolException("The buffer pool has been closed.");
+					}
+					return poll(target);
+				}
+			}
+			finally {
+				synchronized (this) {
+					this.waiting--;
+				}
+				BufferPoolManagerImpl.this.stalls.incrementAndGet();
+				BufferPoolManagerImpl.this.stallNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		private int poll(byte[][] target) throws BufferPoolException
+		{
+			if (this.closed) {
+				throw new BufferPoolException("The buffer pool has been closed.");
+			}
+			int num = 0;
+			while (num < target.length && !this.free.isEmpty()) {
+				target[num++] = this.free.poll();
+			}
+			return num;
+		}
+
+		synchronized int available()
+		{
+			return this.free.size();
+		}
+
+		synchronized void release(byte[] buffer)
+		{
+			this.free.add(buffer);
+			notifyAll();
+		}
+
+		synchronized void release(byte[][] buffers, int from, int to)
+		{
+			for (int i = from; i < to; i++) {
+				this.free.add(buffers[i]);
+			}
+			notifyAll();
+		}
+
+		synchronized void close()
+		{
+			this.closed = true;
+			notifyAll();
+		}
+
+		/**
+		 * Counts a buffer that went into a write queue. Must not be called while holding the monitor
+		 * of a resource.
+		 */
+		void addDirty()
+		{
+			if (this.dirty.incrementAndGet() == this.highMark) {
+				wakeWriters();
+			}
+		}
+
+		void removeDirty(int num)
+		{
+			this.dirty.addAndGet(-num);
+		}
+
+		boolean isAboveHighWatermark()
+		{
+			return this.dirty.get() >= this.highMark;
+		}
+
+		boolean isAtLowWatermark()
+		{
+			return this.dirty.get() <= this.lowMark;
+		}
+
+		boolean hasWaiters()
+		{
+			return this.waiting > 0;
+		}
+
+		private void wakeWriters()
+		{
+			for (Resource resource : this.writers) {
+				resource.wakeWriter();
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Guards a cache that is not thread safe by its own monitor.
+	 */
+	private static final class SynchronizedPageCache implements PageCache
+	{
+		private final PageCache cache;
+
+		SynchronizedPageCache(PageCache cache)
+		{
+			this.cache = cache;
+		}
+
+		@Override
+		public synchronized CacheableData getPage(int resourceId, int pageNumber)
+		{
+			return this.cache.getPage(resourceId, pageNumber);
+		}
+
+		@Override
+		public synchronized CacheableData getPageAndPin(int resourceId, int pageNumber)
+		{
+			return this.cache.getPageAndPin(resourceId, pageNumber);
+		}
+
+		@Override
+		public synchronized EvictedCacheEntry addPage(CacheableData newPage, int resourceId)
+		throws CachePinnedException, DuplicateCacheEntryException
+		{
+			return this.cache.addPage(newPage, resourceId);
+		}
+
+		@Override
+		public synchronized EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
+		throws CachePinnedException, DuplicateCacheEntryException
+		{
+			return this.cache.addPageAndPin(newPage, resourceId);
+		}
+
+		@Override
+		public synchronized CacheableData getPage(int resourceId, int pageNumber, AccessHint hint)
+		{
+			return this.cache.getPage(resourceId, pageNumber, hint);
+		}
+
+		@Override
+		public synchronized CacheableData getPageAndPin(int resourceId, int pageNumber, AccessHint hint)
+		{
+			return this.cache.getPageAndPin(resourceId, pageNumber, hint);
+		}
+
+		@Override
+		public synchronized EvictedCacheEntry addPage(CacheableData newPage, int resourceId, AccessHint hint)
+		throws CachePinnedException, DuplicateCacheEntryException
+		{
+			return this.cache.addPage(newPage, resourceId, hint);
+		}
+
+		@Override
+		public synchronized EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId, AccessHint hint)
+		throws CachePinnedException, DuplicateCacheEntryException
+		{
+			return this.cache.addPageAndPin(newPage, resourceId, hint);
+		}
+
+		@Override
+		public synchronized void unpinPage(int resourceId, int pageNumber)
+		{
+			this.cache.unpinPage(resourceId, pageNumber);
+		}
+
+		@Override
+		public synchronized CacheableData[] getAllPagesForResource(int resourceId)
+		{
+			return this.cache.getAllPagesForResource(resourceId);
+		}
+
+		@Override
+		public synchronized void expellAllPagesForResource(int resourceId)
+		{
+			this.cache.expellAllPagesForResource(resourceId);
+		}
+
+		@Override
+		public synchronized int getCapacity()
+		{
+			return this.cache.getCapacity();
+		}
+
+		@Override
+		public synchronized void unpinAllPages()
+		{
+			this.cache.unpinAllPages();
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+import java.nio.ByteBuffer;
+
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+
+
+/**
+ * Keeps copies of unmodified pages in direct memory, outside the Java heap. The buffer pool puts
+ * pages here when they leave the cache clean or have been written back, and takes them back on a cache
+ * miss instead of reading them from their resource. That way, a large share of the memory for pages
+ * neither adds to the heap size nor to the work of the garbage collector, while the cache on the heap
+ * can stay small.
+ * <p>
+ * The frames are slices of a few large direct buffers (arenas) of up to one gigabyte, allocated once
+ * when the store is created. The mapping from (resource, page) to frame is an open addressing hash
+ * table over primitive arrays, so that the store creates no objects after construction. A page taken
+ * back into the cache leaves the store; when the store is full, frames are reused in clock order,
+ * giving pages that were put again since the hand passed them a second chance.
+ * <p>
+ * All methods are synchronized on the store. Direct memory is limited by the JVM option
+ * <tt>-XX:MaxDirectMemorySize</tt>, which defaults to the maximal heap size.
+ */
+public final class OffHeapPageStore
+{
+	/**
+	 * The maximal size of one arena in bytes.
+	 */
+	private static final int MAX_ARENA_BYTES = 1 << 30;
+
+	private static final byte FREE = 0;
+
+	private static final byte USED = 1;
+
+	private static final byte REFERENCED = 2;
+
+	private final int pageBytes;
+
+	private final int capacity;
+
+	private final int framesPerArena;
+
+	private final ByteBuffer[] arenas;
+
+	/**
+	 * The key (resource and page number) of the page in each frame.
+	 */
+	private final long[] keys;
+
+	/**
+	 * The state of each frame: free, used or used and referenced since the clock hand passed.
+	 */
+	private final byte[] states;
+
+	/**
+	 * Stack of free frames.
+	 */
+	private final int[] freeFrames;
+
+	private int numFree;
+
+	/**
+	 * Hash table holding frame + 1 per slot, zero marks an empty slot.
+	 */
+	private final int[] table;
+
+	private final int mask;
+
+	private int clockHand;
+
+	private long hits;
+
+	private long misses;
+
+
+	/**
+	 * Creates a store for the given number of pages and allocates its direct memory.
+	 *
+	 * @param pageSize The size of the pages in the store.
+	 * @param capacity The number of pages the store can hold.
+	 */
+	public OffHeapPageStore(PageSize pageSize, int capacity)
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive.");
+		}
+		this.pageBytes = pageSize.getNumberOfBytes();
+		this.capacity = capacity;
+		this.framesPerArena = MAX_ARENA_BYTES / this.pageBytes;
+
+		int numArenas = (capacity + this.framesPerArena - 1) / this.framesPerArena;
+		this.arenas = new ByteBuffer[numArenas];
+		for (int i = 0; i < numArenas; i++) {
+			int frames = Math.min(this.framesPerArena, capacity - i * this.framesPerArena);
+			this.arenas[i] = ByteBuffer.allocateDirect(frames * this.pageBytes);
+		}
+
+		this.keys = new long[capacity];
+		this.states = new byte[capacity];
+		this.freeFrames = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.freeFrames[i] = capacity - 1 - i;
+		}
+		this.numFree = capacity;
+
+		int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+		this.table = new int[tableSize];
+		this.mask = tableSize - 1;
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Puts a copy of the given page into the store, replacing an older copy of the same page.
+	 *
+	 * @param resourceId The id of the resource the page belongs to.
+	 * @param pageNumber The number of the page.
+	 * @param buffer The buffer holding the page data.
+	 */
+	public synchronized void put(int resourceId, int pageNumber, byte[] buffer)
+	{
+		long key = key(resourceId, pageNumber);
+		int frame = find(key);
+		if (frame >= 0) {
+			this.states[frame] = REFERENCED;
+		}
+		else {
+			frame = allocateFrame();
+			this.keys[frame] = key;
+			this.states[frame] = USED;
+			insert(key, frame);
+		}
+		ByteBuffer arena = this.arenas[frame / this.framesPerArena];
+		arena.position((frame % this.framesPerArena) * this.pageBytes);
+		arena.put(buffer, 0, this.pageBytes);
+	}
+
+	/**
+	 * Takes the given page out of the store and copies it into the given buffer.
+	 *
+	 * @param resourceId The id of the resource the page belongs to.
+	 * @param pageNumber The number of the page.
+	 * @param buffer The buffer to copy the page data to.
+	 * @return True, if the page was in the store, false otherwise.
+	 */
+	public synchronized boolean take(int resourceId, int pageNumber, byte[] buffer)
+	{
+		long key = key(resourceId, pageNumber);
+		int frame = find(key);
+		if (frame < 0) {
+			this.misses++;
+			return false;
+		}
+		this.hits++;
+		ByteBuffer arena = this.arenas[frame / this.framesPerArena];
+		arena.position((frame % this.framesPerArena) * this.pageBytes);
+		arena.get(buffer, 0, this.pageBytes);
+		release(key, frame);
+		return true;
+	}
+
+	/**
+	 * Checks whether the store holds the given page.
+	 *
+	 * @param resourceId The id of the resource the page belongs to.
+	 * @param pageNumber The number of the page.
+	 * @return True, if the page is in the store, false otherwise.
+	 */
+	public synchronized boolean contains(int resourceId, int pageNumber)
+	{
+		return find(key(resourceId, pageNumber)) >= 0;
+	}
+
+	/**
+	 * Drops the given page from the store, if it is there.
+	 *
+	 * @param resourceId The id of the resource the page belongs to.
+	 * @param pageNumber The number of the page.
+	 */
+	public synchronized void remove(int resourceId, int pageNumber)
+	{
+		long key = key(resourceId, pageNumber);
+		int frame = find(key);
+		if (frame >= 0) {
+			release(key, frame);
+		}
+	}
+
+	/**
+	 * Gets the number of pages the store can hold.
+	 *
+	 * @return The capacity in pages.
+	 */
+	public int getCapacity()
+	{
+		return this.capacity;
+	}
+
+	/**
+	 * Gets the number of pages currently in the store.
+	 *
+	 * @return The number of pages.
+	 */
+	public synchronized int getSize()
+	{
+		return this.capacity - this.numFree;
+	}
+
+	/**
+	 * Gets the number of requests that found their page in the store.
+	 *
+	 * @return The number of hits.
+	 */
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+
+	/**
+	 * Gets the number of requests that did not find their page in the store.
+	 *
+	 * @return The number of misses.
+	 */
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+
+	// --------------------------------------------------------------------------------------------
+	//                                  Frames and hash table
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Gets a free frame, or frees the next one in clock order that was not referenced.
+	 */
+	private int allocateFrame()
+	{
+		if (this.numFree > 0) {
+			return this.freeFrames[--this.numFree];
+		}
+		while (true) {
+			int frame = this.clockHand;
+			this.clockHand = frame + 1 == this.capacity ? 0 : frame + 1;
+			if (this.states[frame] == REFERENCED) {
+				this.states[frame] = USED;
+			}
+			else {
+				remove(this.keys[frame]);
+				return frame;
+			}
+		}
+	}
+
+	private void release(long key, int frame)
+	{
+		remove(key);
+		this.states[frame] = FREE;
+		this.freeFrames[this.numFree++] = frame;
+	}
+
+	private int find(long key)
+	{
+		int slot = hash(key) & this.mask;
+		int entry;
+		while ((entry = this.table[slot]) != 0) {
+			if (this.keys[entry - 1] == key) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	private void insert(long key, int frame)
+	{
+		int slot = hash(key) & this.mask;
+		while (this.table[slot] != 0) {
+			slot = (slot + 1) & this.mask;
+		}
+		this.table[slot] = frame + 1;
+	}
+
+	/**
+	 * Removes the key from the hash table, shifting the following entries of its probe sequence back.
+	 */
+	private void remove(long key)
+	{
+		int slot = hash(key) & this.mask;
+		while (this.keys[this.table[slot] - 1] != key) {
+			slot = (slot + 1) & this.mask;
+		}
+
+		int hole = slot;
+		int next = (hole + 1) & this.mask;
+		int entry;
+		while ((entry = this.table[next]) != 0) {
+			int home = hash(this.keys[entry - 1]) & this.mask;
+			// move the entry into the hole, if its home slot is not between the hole and its slot
+			if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+				this.table[hole] = entry;
+				hole = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+		this.table[hole] = 0;
+	}
+
+	private static long key(int resourceId, int pageNumber)
+	{
+		return (((long) resourceId) << 32) | (pageNumber & 0xffffffffL);
+	}
+
+	private static int hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
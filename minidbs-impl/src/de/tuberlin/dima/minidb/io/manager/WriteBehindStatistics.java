@@ -0,0 +1,117 @@
+package de.tuberlin.dima.minidb.io.manager;
+
+
+/**
+ * A snapshot of the counters that describe how the buffer pool writes modified pages back.
+ * The values are accumulated since the buffer pool was created.
+ */
+public final class WriteBehindStatistics
+{
+	private final long pagesFlushed;
+
+	private final long writeBatches;
+
+	private final int largestBatch;
+
+	private final long pagesRescued;
+
+	private final long stalls;
+
+	private final long stallNanos;
+
+
+	WriteBehindStatistics(long pagesFlushed, long writeBatches, int largestBatch, long pagesRescued,
+			long stalls, long stallNanos)
+	{
+		this.pagesFlushed = pagesFlushed;
+		this.writeBatches = writeBatches;
+		this.largestBatch = largestBatch;
+		this.pagesRescued = pagesRescued;
+		this.stalls = stalls;
+		this.stallNanos = stallNanos;
+	}
+
+	/**
+	 * Gets the number of pages written to their resources.
+	 *
+	 * @return The number of flushed pages.
+	 */
+	public long getPagesFlushed()
+	{
+		return this.pagesFlushed;
+	}
+
+	/**
+	 * Gets the number of write calls issued to the resources. Each call writes a run of
+	 * consecutive pages.
+	 *
+	 * @return The number of write batches.
+	 */
+	public long getWriteBatches()
+	{
+		return this.writeBatches;
+	}
+
+	/**
+	 * Gets the average number of pages written per call.
+	 *
+	 * @return The average batch size, or zero, if nothing has been written.
+	 */
+	public double getAverageBatchSize()
+	{
+		return this.writeBatches == 0 ? 0.0 : this.pagesFlushed / (double) this.writeBatches;
+	}
+
+	/**
+	 * Gets the largest number of pages written in one call.
+	 *
+	 * @return The largest batch size.
+	 */
+	public int getLargestBatch()
+	{
+		return this.largestBatch;
+	}
+
+	/**
+	 * Gets the number of modified pages that were requested again while waiting to be written,
+	 * and went back to the cache without any I/O.
+	 *
+	 * @return The number of rescued pages.
+	 */
+	public long getPagesRescued()
+	{
+		return this.pagesRescued;
+	}
+
+	/**
+	 * Gets the number of times a thread had to wait for a free I/O buffer.
+	 *
+	 * @return The number of stalls.
+	 */
+	public long getStalls()
+	{
+		return this.stalls;
+	}
+
+	/**
+	 * Gets the total time threads spent waiting for a free I/O buffer.
+	 *
+	 * @return The stall time in nanoseconds.
+	 */
+	public long getStallNanos()
+	{
+		return this.stallNanos;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return "flushed=" + this.pagesFlushed + ", batches=" + this.writeBatches + ", avgBatch="
+				+ String.format("%.1f", getAverageBatchSize()) + ", maxBatch=" + this.largestBatch
+				+ ", rescued=" + this.pagesRescued + ", stalls=" + this.stalls + ", stallMs="
+				+ (this.stallNanos / 1000000);
+	}
+}
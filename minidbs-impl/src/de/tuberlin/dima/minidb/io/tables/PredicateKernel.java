@@ -0,0 +1,387 @@
+package de.tuberlin.dima.minidb.io.tables;
+
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.TimeField;
+import de.tuberlin.dima.minidb.core.TimestampField;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+/**
+ * Evaluates a {@link LowLevelPredicate} directly on the binary records of a table page, without
+ * creating a field for the value. There is one kernel per type family, which reads the value from
+ * the record and compares it with the literal in its primitive form. The comparison yields the same
+ * sign as the field's <code>compareTo</code>, so a kernel accepts exactly the records for which
+ * <code>evaluateWithNull</code> returns true.
+ * <p>
+ * Predicates on <code>VAR_CHAR</code> and <code>RID</code> columns, and predicates with a NULL
+ * literal, are evaluated by decoding the field.
+ */
+abstract class PredicateKernel {
+
+    final LowLevelPredicate predicate;
+
+    /**
+     * The offset of the column's value from the start of the record.
+     */
+    final int fieldOffset;
+
+    PredicateKernel(LowLevelPredicate predicate, int fieldOffset) {
+        this.predicate = predicate;
+        this.fieldOffset = fieldOffset;
+    }
+
+    /**
+     * Creates the kernels for a conjunction of predicates on records of the given schema.
+     *
+     * @param preds The predicates.
+     * @param schema The schema of the records.
+     * @return The kernels, in the order of the predicates.
+     */
+    static PredicateKernel[] compile(LowLevelPredicate[] preds, TableSchema schema) {
+        PredicateKernel[] kernels = new PredicateKernel[preds.length];
+        for (int i = 0; i < preds.length; i++) {
+            kernels[i] = compile(preds[i], schema);
+        }
+        return kernels;
+    }
+
+    /**
+     * Creates the kernel for a predicate on records of the given schema.
+     *
+     * @param pred The predicate.
+     * @param schema The schema of the records.
+     * @return The kernel that evaluates the predicate.
+     */
+    static PredicateKernel compile(LowLevelPredicate pred, TableSchema schema) {
+        int column = pred.getColumnIndex();
+        int fieldOffset = 4;
+        for (int i = 0; i < column; i++) {
+            DataType type = schema.getColumn(i).getDataType();
+            fieldOffset += type.isFixLength() ? type.getNumberOfBytes() : 8;
+        }
+        DataType type = schema.getColumn(column).getDataType();
+        DataField literal = pred.getLiteral();
+
+        if (literal.isNULL()) {
+            return new FieldKernel(pred, fieldOffset, type);
+        }
+        // the literal is encoded as on the page and read back like the records' values
+        byte[] encoded = new byte[Math.max(8, literal.getNumberOfBytes())];
+        switch (type.getBasicType()) {
+            case SMALL_INT:
+                if (literal instanceof SmallIntField)
+                    return new SmallIntKernel(pred, fieldOffset, ((SmallIntField) literal).getValue());
+                break;
+            case INT:
+                if (literal instanceof IntField)
+                    return new IntKernel(pred, fieldOffset, ((IntField) literal).getValue(), Integer.MIN_VALUE);
+                break;
+            case DATE:
+                if (literal instanceof DateField) {
+                    literal.encodeBinary(encoded, 0);
+                    return new IntKernel(pred, fieldOffset, IntField.getIntFromBinary(encoded, 0), 0xffffffff);
+                }
+                break;
+            case BIG_INT:
+                if (literal instanceof BigIntField)
+                    return new LongKernel(pred, fieldOffset, ((BigIntField) literal).getValue());
+                break;
+            case TIMESTAMP:
+                if (literal instanceof TimestampField) {
+                    literal.encodeBinary(encoded, 0);
+                    return new LongKernel(pred, fieldOffset, getLong(encoded, 0));
+                }
+                break;
+            case TIME:
+                if (literal instanceof TimeField) {
+                    literal.encodeBinary(encoded, 0);
+                    return new TimeKernel(pred, fieldOffset, TimeKernel.absolute(getLong(encoded, 0)));
+                }
+                break;
+            case FLOAT:
+                if (literal instanceof FloatField)
+                    return new FloatKernel(pred, fieldOffset, ((FloatField) literal).getValue());
+                break;
+            case DOUBLE:
+                if (literal instanceof DoubleField)
+                    return new DoubleKernel(pred, fieldOffset, ((DoubleField) literal).getValue());
+                break;
+            case CHAR:
+                if (literal instanceof CharField) {
+                    int numChars = literal.encodeBinary(encoded, 0) / 2;
+                    char[] chars = new char[numChars];
+                    for (int i = 0; i < numChars; i++) {
+                        chars[i] = (char) ((encoded[2 * i] & 0xff) | ((encoded[2 * i + 1] << 8) & 0xff00));
+                    }
+                    return new CharKernel(pred, fieldOffset, type.getNumberOfBytes() / 2, chars);
+                }
+                break;
+            default:
+                break;
+        }
+        return new FieldKernel(pred, fieldOffset, type);
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * Checks whether the record at the given offset passes the predicate.
+     *
+     * @param buffer The buffer of the page.
+     * @param recordOffset The offset of the record in the buffer.
+     * @return True, if the record passes the predicate, false otherwise.
+     */
+    abstract boolean accepts(byte[] buffer, int recordOffset);
+
+    /**
+     * Narrows a selection of rows to those whose records pass the predicate. Row <i>r</i> is the
+     * record at <code>firstRecordOffset + r * recordWidth</code>.
+     *
+     * @param buffer The buffer of the page.
+     * @param firstRecordOffset The offset of the record of row 0.
+     * @param recordWidth The width of the records.
+     * @param selection The selected rows, in ascending order. Overwritten with the remaining ones.
+     * @param numSelected The number of selected rows.
+     * @return The number of rows that remain selected.
+     */
+    int filter(byte[] buffer, int firstRecordOffset, int recordWidth, int[] selection, int numSelected) {
+        int kept = 0;
+        for (int i = 0; i < numSelected; i++) {
+            int row = selection[i];
+            if (accepts(buffer, firstRecordOffset + row * recordWidth))
+                selection[kept++] = row;
+        }
+        return kept;
+    }
+
+    /**
+     * Checks whether the record at the given offset passes all kernels.
+     */
+    static boolean acceptsAll(PredicateKernel[] kernels, byte[] buffer, int recordOffset) {
+        for (PredicateKernel kernel : kernels) {
+            if (!kernel.accepts(buffer, recordOffset))
+                return false;
+        }
+        return true;
+    }
+
+    static long getLong(byte[] buffer, int offset) {
+        return (IntField.getIntFromBinary(buffer, offset) & 0xffffffffL) | ((long) IntField.getIntFromBinary(buffer, offset + 4) << 32);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private static final class SmallIntKernel extends PredicateKernel {
+
+        private final short literal;
+
+        SmallIntKernel(LowLevelPredicate predicate, int fieldOffset, short literal) {
+            super(predicate, fieldOffset);
+            this.literal = literal;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            int offset = recordOffset + fieldOffset;
+            short value = (short) ((buffer[offset] & 0xff) | (buffer[offset + 1] << 8));
+            return value != Short.MIN_VALUE && predicate.evaluateComparison(value < literal ? -1 : (value == literal ? 0 : 1));
+        }
+    }
+
+    private static final class IntKernel extends PredicateKernel {
+
+        private final int literal;
+
+        private final int nullValue;
+
+        IntKernel(LowLevelPredicate predicate, int fieldOffset, int literal, int nullValue) {
+            super(predicate, fieldOffset);
+            this.literal = literal;
+            this.nullValue = nullValue;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            int value = IntField.getIntFromBinary(buffer, recordOffset + fieldOffset);
+            return value != nullValue && predicate.evaluateComparison(value < literal ? -1 : (value == literal ? 0 : 1));
+        }
+
+        @Override
+        int filter(byte[] buffer, int firstRecordOffset, int recordWidth, int[] selection, int numSelected) {
+            // the most common kernel, keep its loop free of virtual calls
+            int kept = 0;
+            int base = firstRecordOffset + fieldOffset;
+            boolean less = predicate.evaluateComparison(-1);
+            boolean equal = predicate.evaluateComparison(0);
+            boolean greater = predicate.evaluateComparison(1);
+            for (int i = 0; i < numSelected; i++) {
+                int row = selection[i];
+                int value = IntField.getIntFromBinary(buffer, base + row * recordWidth);
+                boolean pass = value < literal ? less : (value == literal ? equal : greater);
+                if (pass & value != nullValue)
+                    selection[kept++] = row;
+            }
+            return kept;
+        }
+    }
+
+    /**
+     * Kernel for BIG_INT and TIMESTAMP, which both use {@link Long#MIN_VALUE} as NULL.
+     */
+    private static final class LongKernel extends PredicateKernel {
+
+        private final long literal;
+
+        LongKernel(LowLevelPredicate predicate, int fieldOffset, long literal) {
+            super(predicate, fieldOffset);
+            this.literal = literal;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            long value = getLong(buffer, recordOffset + fieldOffset);
+            return value != Long.MIN_VALUE && predicate.evaluateComparison(value < literal ? -1 : (value == literal ? 0 : 1));
+        }
+    }
+
+    /**
+     * Kernel for TIME, which compares the times shifted to UTC.
+     */
+    private static final class TimeKernel extends PredicateKernel {
+
+        private final long literal;
+
+        TimeKernel(LowLevelPredicate predicate, int fieldOffset, long literal) {
+            super(predicate, fieldOffset);
+            this.literal = literal;
+        }
+
+        static long absolute(long time) {
+            return ((long) (int) time) - ((long) (int) (time >>> 32));
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            long time = getLong(buffer, recordOffset + fieldOffset);
+            if (time == 0xffffffffffffffffL)
+                return false;
+            long value = absolute(time);
+            return predicate.evaluateComparison(value < literal ? -1 : (value == literal ? 0 : 1));
+        }
+    }
+
+    private static final class FloatKernel extends PredicateKernel {
+
+        private final float literal;
+
+        FloatKernel(LowLevelPredicate predicate, int fieldOffset, float literal) {
+            super(predicate, fieldOffset);
+            this.literal = literal;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            float value = Float.intBitsToFloat(IntField.getIntFromBinary(buffer, recordOffset + fieldOffset));
+            return !Float.isNaN(value) && predicate.evaluateComparison(value < literal ? -1 : (value == literal ? 0 : 1));
+        }
+
+        @Override
+        int filter(byte[] buffer, int firstRecordOffset, int recordWidth, int[] selection, int numSelected) {
+            int kept = 0;
+            int base = firstRecordOffset + fieldOffset;
+            boolean less = predicate.evaluateComparison(-1);
+            boolean equal = predicate.evaluateComparison(0);
+            boolean greater = predicate.evaluateComparison(1);
+            for (int i = 0; i < numSelected; i++) {
+                int row = selection[i];
+                float value = Float.intBitsToFloat(IntField.getIntFromBinary(buffer, base + row * recordWidth));
+                // NaN is NULL and fails all three comparisons, hence it reaches the greater branch
+                boolean pass = value < literal ? less : (value == literal ? equal : greater & value == value);
+                if (pass)
+                    selection[kept++] = row;
+            }
+            return kept;
+        }
+    }
+
+    private static final class DoubleKernel extends PredicateKernel {
+
+        private final double literal;
+
+        DoubleKernel(LowLevelPredicate predicate, int fieldOffset, double literal) {
+            super(predicate, fieldOffset);
+            this.literal = literal;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            double value = Double.longBitsToDouble(getLong(buffer, recordOffset + fieldOffset));
+            return !Double.isNaN(value) && predicate.evaluateComparison(value < literal ? -1 : (value == literal ? 0 : 1));
+        }
+    }
+
+    /**
+     * Kernel for CHAR, which compares the two-byte characters in place like {@link String#compareTo(String)}.
+     */
+    private static final class CharKernel extends PredicateKernel {
+
+        private final int numChars;
+
+        private final char[] literal;
+
+        CharKernel(LowLevelPredicate predicate, int fieldOffset, int numChars, char[] literal) {
+            super(predicate, fieldOffset);
+            this.numChars = numChars;
+            this.literal = literal;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            int offset = recordOffset + fieldOffset;
+            if (buffer[offset] == 0 && buffer[offset + 1] == 0)
+                return false;
+            int common = Math.min(numChars, literal.length);
+            for (int i = 0; i < common; i++, offset += 2) {
+                char c = (char) ((buffer[offset] & 0xff) | ((buffer[offset + 1] << 8) & 0xff00));
+                if (c != literal[i])
+                    return predicate.evaluateComparison(Integer.signum(c - literal[i]));
+            }
+            return predicate.evaluateComparison(Integer.signum(numChars - literal.length));
+        }
+    }
+
+    /**
+     * Kernel for the remaining cases, which decodes the field.
+     */
+    private static final class FieldKernel extends PredicateKernel {
+
+        private final DataType type;
+
+        FieldKernel(LowLevelPredicate predicate, int fieldOffset, DataType type) {
+            super(predicate, fieldOffset);
+            this.type = type;
+        }
+
+        @Override
+        boolean accepts(byte[] buffer, int recordOffset) {
+            int offset = recordOffset + fieldOffset;
+            DataField field;
+            if (type.isFixLength()) {
+                field = type.getFromBinary(buffer, offset);
+            } else {
+                int start = IntField.getIntFromBinary(buffer, offset);
+                int length = IntField.getIntFromBinary(buffer, offset + 4);
+                field = start == 0 && length == 0 ? type.getNullValue() : type.getFromBinary(buffer, start, length);
+            }
+            return predicate.evaluateWithNull(field);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package de.tuberlin.dima.minidb.io.tables;
 
+import java.util.Arrays;
+
 import de.tuberlin.dima.minidb.catalogue.TableSchema;
 import de.tuberlin.dima.minidb.core.DataField;
 import de.tuberlin.dima.minidb.core.DataTuple;
@@ -21,6 +23,11 @@ public class TablePageImpl implements TablePage {
     private int numOfRecords;
    // private int recordWidth;
     private TableSchema schema;
+    /**
+     * The kernels of the predicates last passed to getDataTuple or readColumns, so that they are
+     * compiled once and not for every record or batch.
+     */
+    private CompiledPredicates compiled;
 
 
     public TablePageImpl(TableSchema schema,byte[] buffer) throws PageFormatException{
@@ -57,6 +64,7 @@ public class TablePageImpl implements TablePage {
         encodeIntAsBinary(0,buffer,8);
         encodeIntAsBinary(recordWidth,buffer,12);
         encodeIntAsBinary(buffer.length,buffer,16);
+        encodeIntAsBinary(0,buffer,20);
     }
 
     @Override
@@ -128,11 +136,28 @@ public class TablePageImpl implements TablePage {
         encoded[offset + 2] = (byte) (value >>> 16);
         encoded[offset + 3] = (byte) (value >>> 24);
     }
+    @Override
+    public int getNumDeletedRecordsOnPage() throws PageExpiredException {
+        if (isExpired) throw new PageExpiredException();
+        return IntField.getIntFromBinary(buffer, 20);
+    }
+
+    @Override
+    public int getFreeSpace() throws PageExpiredException {
+        if (isExpired) throw new PageExpiredException();
+        int recordWidth = getRecordWidth();
+        return getChunkOffset() - (getNumRecordsOnPage() * recordWidth + 32) + getNumDeletedRecordsOnPage() * recordWidth;
+    }
+
     @Override
     public boolean insertTuple(DataTuple tuple) throws PageFormatException, PageExpiredException {
+        return insertTupleAndGetPosition(tuple) >= 0;
+    }
+
+    @Override
+    public int insertTupleAndGetPosition(DataTuple tuple) throws PageFormatException, PageExpiredException {
         if(isExpired) throw new PageExpiredException();
         int varRecLength = 0;
-        int newRecordOffset = getNumRecordsOnPage()*getRecordWidth() + 32;
         for (int i = 0; i < tuple.getNumberOfFields(); i++) {
 
 
@@ -144,16 +169,25 @@ public class TablePageImpl implements TablePage {
                 varRecLength += dataField.getNumberOfBytes();
             }
         }
-        if (varRecLength + getRecordWidth()  > getChunkOffset() - newRecordOffset)
-            return false;
+        int numRecords = getNumRecordsOnPage();
+        int recordWidth = getRecordWidth();
+        int endOfRecords = numRecords * recordWidth + 32;
+        int position = getNumDeletedRecordsOnPage() > 0 ? findDeletedRecord(numRecords, recordWidth) : -1;
+        if (position >= 0) {
+            if (varRecLength > getChunkOffset() - endOfRecords)
+                return -1;
+        } else {
+            if (varRecLength + recordWidth  > getChunkOffset() - endOfRecords)
+                return -1;
+            position = numRecords;
+        }
+        int newRecordOffset = position * recordWidth + 32;
         //Write to the bytes
         encodeIntAsBinary(0,buffer,newRecordOffset);
         int dataRecordOffset = newRecordOffset + 4;
         int newChunkOffset = getChunkOffset();
         for(int i = 0;i < tuple.getNumberOfFields();i++){
             DataField dataField = tuple.getField(i);
-            if (!dataField.getBasicType().equals(schema.getColumn(i).getDataType().getBasicType()))
-                throw new PageFormatException("Error");
             if(dataField.getBasicType().isFixLength()){                //In case of fixed length fields
                 dataField.encodeBinary(buffer,dataRecordOffset);
                 dataRecordOffset+=schema.getColumn(i).getDataType().getNumberOfBytes();
@@ -174,17 +208,38 @@ public class TablePageImpl implements TablePage {
             }
 
         }
-        encodeIntAsBinary(getNumRecordsOnPage()+1,buffer,8);//Update Number of Records in byte array
+        if (position == numRecords)
+            encodeIntAsBinary(numRecords+1,buffer,8);//Update Number of Records in byte array
+        else
+            encodeIntAsBinary(getNumDeletedRecordsOnPage()-1,buffer,20);//The deleted record's slot is taken
         encodeIntAsBinary(newChunkOffset,buffer,16);//Update Variable Chunk Offset array
         this.hasBeenModified = true;
-        return true;   //Overflow logic yet to be written
+        return position;
+    }
+
+    /**
+     * Finds the first record whose tombstone bit is set. If there is none, the count of deleted
+     * records in the header was too high, and is reset.
+     */
+    private int findDeletedRecord(int numRecords, int recordWidth) {
+        for (int position = 0, offset = 32; position < numRecords; position++, offset += recordWidth) {
+            if ((buffer[offset] & 0x1) == 1)
+                return position;
+        }
+        encodeIntAsBinary(0, buffer, 20);
+        return -1;
     }
 
     @Override
     public void deleteTuple(int position) throws PageTupleAccessException, PageExpiredException {
         if (isExpired) throw new PageExpiredException();
+        if (position >= IntField.getIntFromBinary(buffer, 8) || position < 0)
+            throw new PageTupleAccessException(position, "index negative or larger than the number of tuple on the page");
         int newRecordOffset = IntField.getIntFromBinary(buffer,12)*position + 32;//Traverse to record position
+        if ((buffer[newRecordOffset] & 0x1) == 1)
+            return;
         encodeIntAsBinary(1,buffer,newRecordOffset);//Make first bit 1
+        encodeIntAsBinary(IntField.getIntFromBinary(buffer, 20) + 1, buffer, 20);
         this.hasBeenModified = true;
     }
     @Override
@@ -247,55 +302,252 @@ public class TablePageImpl implements TablePage {
         int recordOffset = IntField.getIntFromBinary(buffer, 12) * position + 32;
         if (( IntField.getIntFromBinary(buffer, recordOffset) & 0x1) == 1)
             return null;
-        recordOffset += 4;
-        DataTuple tuple = new DataTuple(numCols);
-        DataType type;
-        DataField field;
-        int currentColumn = 0;
-        for (int i =0; i < schema.getNumberOfColumns(); i++) {
-            type = schema.getColumn(i).getDataType();
-            if (type.isFixLength()) {
-                field = type.getFromBinary(buffer, recordOffset);
-                recordOffset += type.getNumberOfBytes();
-            } else  {
-                int start = IntField.getIntFromBinary(buffer, recordOffset);
-                int length = IntField.getIntFromBinary(buffer, recordOffset+4);
+        // test the predicates on the binary record, so that only qualifying tuples are decoded
+        if (!PredicateKernel.acceptsAll(kernelsFor(preds), buffer, recordOffset))
+            return null;
+        return getDataTuple(position, columnBitmap, numCols);
+    }
 
-                if(start == 0 && length ==0) {
-                    field = type.getNullValue();
+    /**
+     * Returns the kernels for the given predicates, compiling them only if the array differs from
+     * the one of the previous call.
+     */
+    private PredicateKernel[] kernelsFor(LowLevelPredicate[] preds) {
+        CompiledPredicates last = compiled;
+        if (last == null || last.preds != preds) {
+            last = new CompiledPredicates(preds, PredicateKernel.compile(preds, schema));
+            compiled = last;
+        }
+        return last.kernels;
+    }
 
-                } else {
-                    field = type.getFromBinary(buffer, start, length);
+    /**
+     * Checks whether the record at the given position is not deleted and passes all kernels.
+     */
+    boolean qualifies(PredicateKernel[] kernels, int position) {
+        int recordOffset = IntField.getIntFromBinary(buffer, 12) * position + 32;
+        if ((buffer[recordOffset] & 0x1) == 1)
+            return false;
+        return kernels == null || PredicateKernel.acceptsAll(kernels, buffer, recordOffset);
+    }
+
+    TableSchema getSchema() {
+        return schema;
+    }
+
+
+    @Override
+    public TupleIterator getIterator(int numCols, long columnBitmap) throws PageTupleAccessException, PageExpiredException {
+        if (isExpired) throw new PageExpiredException();
+        return new TupleIteratorImpl(this, numCols, columnBitmap);
+    }
+
+    @Override
+    public TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap) throws PageTupleAccessException, PageExpiredException {
+        if (isExpired) throw new PageExpiredException();
+        return new TupleIteratorImpl(this,preds,numCols,columnBitmap);
+    }
+
+    @Override
+    public int readColumns(int startPosition, int endPosition, ColumnBatch batch) throws PageTupleAccessException, PageExpiredException {
+        return readColumns(null, startPosition, endPosition, batch);
+    }
+
+    @Override
+    public int readColumns(LowLevelPredicate[] preds, int startPosition, int endPosition, ColumnBatch batch) throws PageTupleAccessException, PageExpiredException {
+        if (isExpired) throw new PageExpiredException();
+        if (startPosition < 0 || startPosition > endPosition)
+            throw new PageTupleAccessException(startPosition, "range start negative or after its end");
+        if (endPosition > IntField.getIntFromBinary(buffer, 8))
+            throw new PageTupleAccessException(endPosition, "range end larger than the number of tuple on the page");
+        int numRows = endPosition - startPosition;
+        batch.reset(buffer, startPosition, numRows, 0);
+
+        int recordWidth = IntField.getIntFromBinary(buffer, 12);
+        int firstRecordOffset = 32 + startPosition * recordWidth;
+
+        // select the alive records first, so that the columns are only decoded for them
+        int[] selection = batch.getSelection();
+        int numSelected = 0;
+        for (int row = 0, recordOffset = firstRecordOffset; row < numRows; row++, recordOffset += recordWidth) {
+            if ((buffer[recordOffset] & 0x1) == 0)
+                selection[numSelected++] = row;
+        }
+        if (preds != null) {
+            PredicateKernel[] kernels = kernelsFor(preds);
+            for (int i = 0; i < kernels.length && numSelected > 0; i++) {
+                numSelected = kernels[i].filter(buffer, firstRecordOffset, recordWidth, selection, numSelected);
+            }
+        }
+        batch.setNumberOfSelectedRows(numSelected);
+
+        long columnBitmap = batch.getColumnBitmap();
+        int fieldOffset = firstRecordOffset + 4;
+        for (int i = 0, col = 0; columnBitmap != 0; i++, columnBitmap >>>= 1) {
+            DataType type = schema.getColumn(i).getDataType();
+            if ((columnBitmap & 0x1) == 1) {
+                readColumn(type, fieldOffset, recordWidth, selection, numSelected, batch, col++);
+            }
+            fieldOffset += type.isFixLength() ? type.getNumberOfBytes() : 8;
+        }
+        return numSelected;
+    }
+
+    /**
+     * Decodes one column for the selected rows into the vector of the batch, one loop per type.
+     */
+    private void readColumn(DataType type, int fieldOffset, int recordWidth, int[] selection, int numSelected, ColumnBatch batch, int col) {
+        switch (type.getBasicType()) {
+            case SMALL_INT: {
+                int[] vector = batch.getIntVector(col);
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    int offset = fieldOffset + row * recordWidth;
+                    vector[row] = (short) ((buffer[offset] & 0xff) | (buffer[offset + 1] << 8));
                 }
-                recordOffset += 8;
+                break;
             }
-            for(int j = 0; j < preds.length; j++) {
-                if (preds[j].getColumnIndex() == i) {
-                    if (!preds[j].evaluateWithNull(field))
-                        return null;
+            case INT:
+            case DATE: {
+                int[] vector = batch.getIntVector(col);
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    vector[row] = IntField.getIntFromBinary(buffer, fieldOffset + row * recordWidth);
                 }
+                break;
             }
-            if ((columnBitmap & 0x1) == 1) {
-                tuple.assignDataField(field, currentColumn);
-
-                currentColumn++;
+            case BIG_INT:
+            case TIME:
+            case TIMESTAMP:
+            case RID: {
+                long[] vector = batch.getLongVector(col);
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    vector[row] = getLongFromBinary(buffer, fieldOffset + row * recordWidth);
+                }
+                break;
+            }
+            case FLOAT: {
+                double[] vector = batch.getDoubleVector(col);
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    vector[row] = Float.intBitsToFloat(IntField.getIntFromBinary(buffer, fieldOffset + row * recordWidth));
+                }
+                break;
+            }
+            case DOUBLE: {
+                double[] vector = batch.getDoubleVector(col);
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    vector[row] = Double.longBitsToDouble(getLongFromBinary(buffer, fieldOffset + row * recordWidth));
+                }
+                break;
+            }
+            case CHAR: {
+                int[] offsets = batch.getOffsetVector(col);
+                int[] lengths = batch.getLengthVector(col);
+                int length = type.getNumberOfBytes();
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    offsets[row] = fieldOffset + row * recordWidth;
+                    lengths[row] = length;
+                }
+                break;
+            }
+            case VAR_CHAR: {
+                int[] offsets = batch.getOffsetVector(col);
+                int[] lengths = batch.getLengthVector(col);
+                for (int i = 0; i < numSelected; i++) {
+                    int row = selection[i];
+                    int offset = fieldOffset + row * recordWidth;
+                    offsets[row] = IntField.getIntFromBinary(buffer, offset);
+                    lengths[row] = IntField.getIntFromBinary(buffer, offset + 4);
+                }
+                break;
             }
-            columnBitmap >>>=1;
         }
-        return tuple;
     }
 
+    private static long getLongFromBinary(byte[] buffer, int offset) {
+        return PredicateKernel.getLong(buffer, offset);
+    }
 
     @Override
-    public TupleIterator getIterator(int numCols, long columnBitmap) throws PageTupleAccessException, PageExpiredException {
+    public int getReclaimableSpace() throws PageExpiredException {
         if (isExpired) throw new PageExpiredException();
-        return new TupleIteratorImpl(this, numCols, columnBitmap);
+        int numRecords = getNumRecordsOnPage();
+        int recordWidth = getRecordWidth();
+        int[] varOffsets = getVariableLengthOffsets();
+        int reclaimable = buffer.length - getChunkOffset();
+        for (int position = 0, offset = 32; position < numRecords; position++, offset += recordWidth) {
+            if ((buffer[offset] & 0x1) == 1) {
+                reclaimable += recordWidth;
+                continue;
+            }
+            for (int varOffset : varOffsets)
+                reclaimable -= IntField.getIntFromBinary(buffer, offset + varOffset + 4);
+        }
+        return reclaimable;
     }
 
     @Override
-    public TupleIterator getIterator(LowLevelPredicate[] preds, int numCols, long columnBitmap) throws PageTupleAccessException, PageExpiredException {
+    public int[] compact() throws PageExpiredException {
         if (isExpired) throw new PageExpiredException();
-        return new TupleIteratorImpl(this,preds,numCols,columnBitmap);
+        int numRecords = getNumRecordsOnPage();
+        int recordWidth = getRecordWidth();
+        int[] varOffsets = getVariableLengthOffsets();
+        int[] newPositions = new int[numRecords];
+
+        // records and fields move towards the ends of the page, read them from a copy
+        byte[] old = buffer.clone();
+        int numLive = 0;
+        int chunkOffset = buffer.length;
+        for (int position = 0, offset = 32; position < numRecords; position++, offset += recordWidth) {
+            if ((old[offset] & 0x1) == 1) {
+                newPositions[position] = -1;
+                continue;
+            }
+            int newOffset = 32 + numLive * recordWidth;
+            System.arraycopy(old, offset, buffer, newOffset, recordWidth);
+            for (int varOffset : varOffsets) {
+                int start = IntField.getIntFromBinary(old, offset + varOffset);
+                int length = IntField.getIntFromBinary(old, offset + varOffset + 4);
+                if (start == 0 && length == 0)
+                    continue;
+                chunkOffset -= length;
+                System.arraycopy(old, start, buffer, chunkOffset, length);
+                encodeIntAsBinary(chunkOffset, buffer, newOffset + varOffset);
+            }
+            newPositions[position] = numLive++;
+        }
+        Arrays.fill(buffer, 32 + numLive * recordWidth, chunkOffset, (byte) 0);
+        encodeIntAsBinary(numLive, buffer, 8);
+        encodeIntAsBinary(chunkOffset, buffer, 16);
+        encodeIntAsBinary(0, buffer, 20);
+        this.hasBeenModified = true;
+        return newPositions;
+    }
+
+    /**
+     * Gets the offsets of the variable-length fields' pointers from the start of a record.
+     */
+    private int[] getVariableLengthOffsets() {
+        int num = 0;
+        for (int i = 0; i < schema.getNumberOfColumns(); i++) {
+            if (!schema.getColumn(i).getDataType().isFixLength())
+                num++;
+        }
+        int[] offsets = new int[num];
+        for (int i = 0, offset = 4, v = 0; i < schema.getNumberOfColumns(); i++) {
+            DataType type = schema.getColumn(i).getDataType();
+            if (type.isFixLength()) {
+                offset += type.getNumberOfBytes();
+            } else {
+                offsets[v++] = offset;
+                offset += 8;
+            }
+        }
+        return offsets;
     }
 
     @Override
@@ -304,6 +556,22 @@ public class TablePageImpl implements TablePage {
         int cols = schema.getNumberOfColumns();
         return new TupleRIDIteratorImpl(this, cols, Long.MAX_VALUE);
     }
+
+    /**
+     * A predicate array together with its kernels. Both are set at once, so that pages shared by
+     * several threads never see kernels of another array.
+     */
+    private static final class CompiledPredicates {
+
+        final LowLevelPredicate[] preds;
+
+        final PredicateKernel[] kernels;
+
+        CompiledPredicates(LowLevelPredicate[] preds, PredicateKernel[] kernels) {
+            this.preds = preds;
+            this.kernels = kernels;
+        }
+    }
 }
 
 
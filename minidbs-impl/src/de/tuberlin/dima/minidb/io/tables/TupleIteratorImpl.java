@@ -13,12 +13,21 @@ public class TupleIteratorImpl implements TupleIterator {
     long colBmp;
     LowLevelPredicate[] preds;
     TablePageImpl page;
+    /**
+     * The predicates compiled against the page's record layout, or null, if there are none.
+     */
+    PredicateKernel[] kernels;
+    /**
+     * The position of the next qualifying record, if it has been looked up, -1 otherwise.
+     */
+    int nextPosition;
 
     public TupleIteratorImpl(TablePageImpl page, int numCols, long colBmp){
         this.page = page;
         this.numCols = numCols;
         this.colBmp = colBmp;
         position = -1;
+        nextPosition = -1;
     }
 
     public TupleIteratorImpl(TablePageImpl page, LowLevelPredicate[] preds, int numCols, long colBmp){
@@ -26,51 +35,33 @@ public class TupleIteratorImpl implements TupleIterator {
         this.numCols = numCols;
         this.colBmp = colBmp;
         this.preds = preds;
+        if (preds != null && preds.length > 0)
+            this.kernels = PredicateKernel.compile(preds, page.getSchema());
         position = -1;
+        nextPosition = -1;
     }
     @Override
     public boolean hasNext() throws PageTupleAccessException {
+        if (nextPosition >= 0)
+            return true;
         int numRecords = page.getNumRecordsOnPage();
-
-
-
+        // the predicates are tested on the binary records, only the returned tuples are decoded
         for (int i = position +1; i < numRecords; i++){
-
-            if ((page.getAliveBit(i) & 0x1) == 0) {
-
-                if (preds == null)
-                    return true;
-
-                if (page.getDataTuple(preds, i, colBmp, numCols) != null)
-                    return true;
-
+            if (page.qualifies(kernels, i)) {
+                nextPosition = i;
+                return true;
             }
         }
+        position = numRecords - 1;
         return false;
     }
 
     @Override
     public DataTuple next() throws PageTupleAccessException {
-        int numRecords = page.getNumRecordsOnPage();
-
-        for (int i = position +1; i < numRecords; i++){
-
-            if ((page.getAliveBit(i) & 0x1) == 0) {
-                if (preds == null) {
-                    position = i;
-                    return page.getDataTuple( i, colBmp, numCols);
-                }
-
-
-                DataTuple tuple = page.getDataTuple(preds, i, colBmp, numCols);
-
-                if (tuple != null) {
-                    position = i;
-                    return tuple;
-                }
-            }
-        }
-        return null;
+        if (!hasNext())
+            return null;
+        position = nextPosition;
+        nextPosition = -1;
+        return page.getDataTuple(position, colBmp, numCols);
     }
 }
-
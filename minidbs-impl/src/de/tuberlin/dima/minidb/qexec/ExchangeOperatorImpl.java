@@ -0,0 +1,398 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * Hands the tuples of several producing sub-plans, each run by a thread of its own, to one or
+ * more consumers. A gathering exchange has a single consumer that receives the tuples of all
+ * producers. A repartitioning exchange has one consumer per partition, and each tuple goes to the
+ * consumer of the partition its key columns hash to, so that all tuples with the same key reach
+ * the same consumer. The consumers are instances of this class, one per partition, that share the
+ * producers.
+ * <p>
+ * The producers are drawn from in batches, and the tuples travel in batches through a bounded
+ * queue per consumer, so a producer waits while its consumer is behind. The tuples of different
+ * producers arrive in no particular order.
+ * <p>
+ * The producers are opened and started when the first consumer is opened, and each of them is
+ * closed by its thread when it is exhausted. A pass expects every consumer to be opened, each
+ * consumer typically by a thread of its own, and ends when all consumers are closed. Consumers that
+ * are closed early stop receiving tuples, and when the last one is closed, the producers stop.
+ * An error in a producer stops the other producers and is raised by the consumers.
+ */
+public class ExchangeOperatorImpl implements ExchangeOperator
+{
+	/**
+	 * The number of batches that may wait in the queue of a consumer.
+	 */
+	private static final int QUEUE_BATCHES = 4;
+
+	/**
+	 * The time a producer waits for space in a queue before it checks whether it should stop.
+	 */
+	private static final long OFFER_MILLIS = 50;
+
+	/**
+	 * Marks the end of the tuples of one producer in a queue.
+	 */
+	private static final DataTuple[] END = new DataTuple[0];
+
+	private final Exchange exchange;
+
+	private final BlockingQueue<DataTuple[]> queue;
+
+	/**
+	 * The batch the tuples are currently taken from.
+	 */
+	private DataTuple[] current;
+
+	private int nextInCurrent;
+
+	/**
+	 * The number of producers whose end has been received.
+	 */
+	private int numEnded;
+
+	private volatile boolean closed;
+
+	private boolean open;
+
+
+	private ExchangeOperatorImpl(Exchange exchange)
+	{
+		this.exchange = exchange;
+		this.queue = new ArrayBlockingQueue<DataTuple[]>(QUEUE_BATCHES * exchange.producers.length);
+		this.closed = true;
+	}
+
+	/**
+	 * Creates a gathering exchange that produces the tuples of all producers.
+	 *
+	 * @param producers The sub-plans whose tuples are gathered, each run by a thread of its own.
+	 * @return The exchange.
+	 */
+	public static ExchangeOperatorImpl createGather(PhysicalPlanOperator[] producers)
+	{
+		return new Exchange(producers, new int[0], 1).consumers[0];
+	}
+
+	/**
+	 * Creates a repartitioning exchange that routes the tuples of the producers by the hash of their
+	 * key columns.
+	 *
+	 * @param producers The sub-plans whose tuples are repartitioned, each run by a thread of its own.
+	 * @param keyColumns The columns whose hash decides the partition of a tuple.
+	 * @param numPartitions The number of partitions.
+	 * @return For each partition the exchange that produces its tuples.
+	 */
+	public static ExchangeOperatorImpl[] createRepartition(PhysicalPlanOperator[] producers, int[] keyColumns, int numPartitions)
+	{
+		if (numPartitions < 1) {
+			throw new IllegalArgumentException("An exchange needs at least one partition.");
+		}
+		return new Exchange(producers, keyColumns, numPartitions).consumers.clone();
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.current = null;
+		this.nextInCurrent = 0;
+		this.numEnded = 0;
+		this.open = true;
+		this.exchange.opened(correlatedTuple);
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The exchange has not been opened.");
+		}
+		if (!ensureBatch()) {
+			return null;
+		}
+		DataTuple tuple = this.current[this.nextInCurrent];
+		this.current[this.nextInCurrent++] = null;
+		return tuple;
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The exchange has not been opened.");
+		}
+		if (!ensureBatch()) {
+			return 0;
+		}
+		// hands out the rest of the current batch, a batch that does not fit is handed out in parts
+		int num = Math.min(batch.length, this.current.length - this.nextInCurrent);
+		System.arraycopy(this.current, this.nextInCurrent, batch, 0, num);
+		Arrays.fill(this.current, this.nextInCurrent, this.nextInCurrent + num, null);
+		this.nextInCurrent += num;
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.open) {
+			this.open = false;
+			this.closed = true;
+			this.current = null;
+			this.exchange.closed();
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Takes the next batch from the queue if the current one is used up.
+	 *
+	 * @return true, if there are tuples in the current batch, false, if all producers are exhausted.
+	 */
+	private boolean ensureBatch() throws QueryExecutionException
+	{
+		while (this.current == null || this.nextInCurrent >= this.current.length) {
+			if (this.numEnded == this.exchange.producers.length) {
+				return false;
+			}
+			DataTuple[] batch;
+			try {
+				// the producers stopped by a failure of another one put no end mark
+				while ((batch = this.queue.poll(OFFER_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+					checkError();
+				}
+			}
+			catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+				throw new QueryExecutionException("Interrupted while waiting for the producers of the exchange.", iex);
+			}
+			if (batch == END) {
+				this.numEnded++;
+				checkError();
+				batch = null;
+			}
+			this.current = batch;
+			this.nextInCurrent = 0;
+		}
+		return true;
+	}
+
+	private void checkError() throws QueryExecutionException
+	{
+		Throwable error = this.exchange.error;
+		if (error != null) {
+			throw new QueryExecutionException("A producer of the exchange failed.", error);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The producers of an exchange and the threads that run them, shared by its consumers.
+	 */
+	private static final class Exchange
+	{
+		private final PhysicalPlanOperator[] producers;
+
+		private final int[] keyColumns;
+
+		private final ExchangeOperatorImpl[] consumers;
+
+		private Thread[] threads;
+
+		/**
+		 * The consumers closed in the current pass.
+		 */
+		private int numClosed;
+
+		private volatile boolean cancelled;
+
+		private volatile Throwable error;
+
+
+		Exchange(PhysicalPlanOperator[] producers, int[] keyColumns, int numPartitions)
+		{
+			if (producers.length == 0) {
+				throw new IllegalArgumentException("An exchange needs at least one producer.");
+			}
+			this.producers = producers;
+			this.keyColumns = keyColumns;
+			this.consumers = new ExchangeOperatorImpl[numPartitions];
+			for (int i = 0; i < numPartitions; i++) {
+				this.consumers[i] = new ExchangeOperatorImpl(this);
+			}
+		}
+
+		/**
+		 * Starts the producers when the first consumer of a pass is opened.
+		 */
+		synchronized void opened(final DataTuple correlatedTuple)
+		{
+			if (this.threads != null) {
+				return;
+			}
+			this.numClosed = 0;
+			this.cancelled = false;
+			this.error = null;
+			// the tuples for consumers opened later in the pass are kept for them
+			for (ExchangeOperatorImpl consumer : this.consumers) {
+				consumer.queue.clear();
+				consumer.closed = false;
+			}
+			this.threads = new Thread[this.producers.length];
+			for (int i = 0; i < this.producers.length; i++) {
+				final PhysicalPlanOperator producer = this.producers[i];
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run()
+					{
+						produce(producer, correlatedTuple);
+					}
+				}, "Exchange producer " + i);
+				thread.setDaemon(true);
+				this.threads[i] = thread;
+			}
+			for (Thread thread : this.threads) {
+				thread.start();
+			}
+		}
+
+		/**
+		 * Stops the producers and waits for their threads when the last consumer of a pass is closed.
+		 */
+		synchronized void closed() throws QueryExecutionException
+		{
+			if (++this.numClosed < this.consumers.length || this.threads == null) {
+				return;
+			}
+			this.cancelled = true;
+			boolean interrupted = false;
+			for (Thread thread : this.threads) {
+				while (true) {
+					try {
+						thread.join();
+						break;
+					}
+					catch (InterruptedException iex) {
+						interrupted = true;
+					}
+				}
+			}
+			this.threads = null;
+			for (ExchangeOperatorImpl consumer : this.consumers) {
+				consumer.queue.clear();
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Runs a producer and routes its tuples to the consumers, followed by the end mark. The
+		 * producer is closed also if it fails to open, and its failure stops the other producers.
+		 */
+		void produce(PhysicalPlanOperator producer, DataTuple correlatedTuple)
+		{
+			int numPartitions = this.consumers.length;
+			DataTuple[][] partitions = new DataTuple[numPartitions][];
+			int[] lengths = new int[numPartitions];
+			try {
+				try {
+					producer.open(correlatedTuple);
+					DataTuple[] batch = new DataTuple[DEFAULT_BATCH_SIZE];
+					int num;
+					while (!this.cancelled && (num = producer.nextBatch(batch)) > 0) {
+						if (numPartitions == 1) {
+							if (num == batch.length) {
+								put(0, batch);
+								batch = new DataTuple[DEFAULT_BATCH_SIZE];
+							}
+							else {
+								put(0, Arrays.copyOf(batch, num));
+							}
+							continue;
+						}
+						for (int i = 0; i < num; i++) {
+							int p = partition(batch[i], numPartitions);
+							if (partitions[p] == null) {
+								partitions[p] = new DataTuple[DEFAULT_BATCH_SIZE];
+							}
+							partitions[p][lengths[p]++] = batch[i];
+							if (lengths[p] == DEFAULT_BATCH_SIZE) {
+								put(p, partitions[p]);
+								partitions[p] = null;
+								lengths[p] = 0;
+							}
+						}
+					}
+					for (int p = 0; p < numPartitions; p++) {
+						if (lengths[p] > 0) {
+							put(p, Arrays.copyOf(partitions[p], lengths[p]));
+						}
+					}
+				}
+				finally {
+					producer.close();
+				}
+			}
+			catch (Throwable t) {
+				if (this.error == null) {
+					this.error = t;
+				}
+				this.cancelled = true;
+			}
+			finally {
+				for (int p = 0; p < numPartitions; p++) {
+					put(p, END);
+				}
+			}
+		}
+
+		/**
+		 * Puts a batch into the queue of a consumer, unless the consumer is closed or the exchange
+		 * stops before there is space.
+		 */
+		private void put(int partition, DataTuple[] batch)
+		{
+			ExchangeOperatorImpl consumer = this.consumers[partition];
+			try {
+				while (!this.cancelled && !consumer.closed) {
+					if (consumer.queue.offer(batch, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+			}
+			catch (InterruptedException iex) {
+				this.cancelled = true;
+			}
+		}
+
+		/**
+		 * Computes the partition of a tuple from the hash of its key columns. The hash is scrambled
+		 * differently than in the hash tables of the consumers, so that the tuples of a partition
+		 * still spread over their tables.
+		 */
+		private int partition(DataTuple tuple, int numPartitions)
+		{
+			int hash = 0;
+			for (int column : this.keyColumns) {
+				DataField field = tuple.getField(column);
+				hash = 31 * hash + (field.isNULL() ? 0 : field.hashCode());
+			}
+			long scrambled = (hash * 0x9E3779B9L) & 0xffffffffL;
+			return (int) ((scrambled * numPartitions) >>> 32);
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+
+
+/**
+ * Fetches the tuples for the RIDs produced by its child from a table. The child produces tuples
+ * with a single RID field. Tuples that have been deleted since the RID was taken are skipped.
+ * <p>
+ * With a batch size of one, each tuple is fetched on its own, pinning its page for it. With a larger
+ * batch size, the operator draws that many RIDs from the child and sorts them by their page. It
+ * prefetches the distinct pages of the batch and then fetches all tuples of a page under a single
+ * pin, visiting the pages in ascending order. The tuples of the batch are produced either in the
+ * order of their pages, or, if the order of the child is to be preserved, in the order their RIDs
+ * came in.
+ * <p>
+ * The RIDs are drawn from the child in batches, and {@link #nextBatch(DataTuple[])} hands out the
+ * fetched tuples of a batch at once.
+ */
+public class FetchOperatorImpl implements FetchOperator
+{
+	private final PhysicalPlanOperator child;
+
+	private final BufferPoolManager bufferPool;
+
+	private final int resourceId;
+
+	/**
+	 * The columns of the table that are fetched.
+	 */
+	private final long columnBitmap;
+
+	private final int numFetchedColumns;
+
+	/**
+	 * For each output column its position in the fetched tuple, or -1.
+	 */
+	private final int[] fetchedPositions;
+
+	private final boolean preserveOrder;
+
+	/**
+	 * The RIDs of the current batch, in the order they came in.
+	 */
+	private final RID[] rids;
+
+	/**
+	 * The tuples with the RIDs of the current batch, as drawn from the child.
+	 */
+	private final DataTuple[] ridTuples;
+
+	/**
+	 * The page of a RID in the upper and its position in the batch in the lower 32 bits, for sorting.
+	 */
+	private final long[] order;
+
+	/**
+	 * The tuples of the current batch, in the order they are produced. Deleted tuples leave gaps if
+	 * the order is preserved.
+	 */
+	private final DataTuple[] tuples;
+
+	private int batchLength;
+
+	private int next;
+
+	private boolean childExhausted;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a fetch operator.
+	 *
+	 * @param child The operator producing the tuples with the RIDs.
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param outputColumnMap For each output column the column of the table, or -1.
+	 * @param batchSize The number of RIDs sorted and fetched together. With 1, each tuple is fetched
+	 *                  on its own.
+	 * @param preserveOrder Flag indicating that the tuples of a batch are produced in the order of
+	 *                      their RIDs rather than in the order of their pages.
+	 */
+	public FetchOperatorImpl(PhysicalPlanOperator child, BufferPoolManager bufferPool, int resourceId,
+			int[] outputColumnMap, int batchSize, boolean preserveOrder)
+	{
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch must hold at least one RID.");
+		}
+		this.child = child;
+		this.bufferPool = bufferPool;
+		this.resourceId = resourceId;
+		this.preserveOrder = preserveOrder;
+
+		long bitmap = 0;
+		for (int column : outputColumnMap) {
+			if (column != -1) {
+				bitmap |= 1L << column;
+			}
+		}
+		this.columnBitmap = bitmap;
+		this.numFetchedColumns = Long.bitCount(bitmap);
+		this.fetchedPositions = new int[outputColumnMap.length];
+		for (int i = 0; i < outputColumnMap.length; i++) {
+			int column = outputColumnMap[i];
+			this.fetchedPositions[i] = column == -1 ? -1 : Long.bitCount(bitmap & ((1L << column) - 1));
+		}
+
+		this.rids = new RID[batchSize];
+		this.ridTuples = new DataTuple[batchSize];
+		this.order = new long[batchSize];
+		this.tuples = new DataTuple[batchSize];
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.child.open(correlatedTuple);
+		this.batchLength = 0;
+		this.next = 0;
+		this.childExhausted = false;
+		this.open = true;
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The fetch operator has not been opened.");
+		}
+		while (true) {
+			while (this.next < this.batchLength) {
+				DataTuple tuple = this.tuples[this.next];
+				this.tuples[this.next++] = null;
+				if (tuple != null) {
+					return tuple;
+				}
+			}
+			if (this.childExhausted || !fetchBatch()) {
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The fetch operator has not been opened.");
+		}
+		int num = 0;
+		while (num < batch.length) {
+			while (this.next < this.batchLength && num < batch.length) {
+				DataTuple tuple = this.tuples[this.next];
+				this.tuples[this.next++] = null;
+				if (tuple != null) {
+					batch[num++] = tuple;
+				}
+			}
+			if (num == batch.length || this.childExhausted || !fetchBatch()) {
+				break;
+			}
+		}
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		Arrays.fill(this.tuples, null);
+		Arrays.fill(this.rids, null);
+		Arrays.fill(this.ridTuples, null);
+		this.child.close();
+		this.open = false;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Draws the next batch of RIDs from the child and fetches their tuples.
+	 *
+	 * @return true, if the batch holds RIDs, false, if the child is exhausted.
+	 */
+	private boolean fetchBatch() throws QueryExecutionException
+	{
+		int num = this.child.nextBatch(this.ridTuples);
+		if (num == 0) {
+			this.childExhausted = true;
+		}
+		for (int i = 0; i < num; i++) {
+			this.rids[i] = (RID) this.ridTuples[i].getField(0);
+			this.ridTuples[i] = null;
+		}
+		// the child may return a partial batch before it is exhausted
+		while (num < this.rids.length && !this.childExhausted) {
+			DataTuple tuple = this.child.next();
+			if (tuple == null) {
+				this.childExhausted = true;
+				break;
+			}
+			this.rids[num++] = (RID) tuple.getField(0);
+		}
+		for (int i = 0; i < num; i++) {
+			this.order[i] = ((long) this.rids[i].getPageIndex() << 32) | i;
+		}
+		this.batchLength = num;
+		this.next = 0;
+		if (num == 0) {
+			return false;
+		}
+
+		Arrays.sort(this.order, 0, num);
+		if (num > 1) {
+			prefetch(num);
+		}
+
+		int produced = 0;
+		for (int start = 0; start < num; ) {
+			int pageNumber = (int) (this.order[start] >>> 32);
+			int end = start + 1;
+			while (end < num && (int) (this.order[end] >>> 32) == pageNumber) {
+				end++;
+			}
+			TablePage page = pin(pageNumber);
+			try {
+				for (int i = start; i < end; i++) {
+					int position = (int) this.order[i];
+					DataTuple tuple = fetch(page, this.rids[position]);
+					this.tuples[this.preserveOrder ? position : produced++] = tuple;
+				}
+			}
+			finally {
+				this.bufferPool.unpinPage(this.resourceId, pageNumber);
+			}
+			start = end;
+		}
+		if (!this.preserveOrder) {
+			this.batchLength = produced;
+		}
+		Arrays.fill(this.rids, 0, num, null);
+		return true;
+	}
+
+	/**
+	 * Prefetches the distinct pages of the sorted batch, with one request per run of adjacent pages.
+	 */
+	private void prefetch(int num) throws QueryExecutionException
+	{
+		int runStart = (int) (this.order[0] >>> 32);
+		int runEnd = runStart;
+		try {
+			for (int i = 1; i < num; i++) {
+				int pageNumber = (int) (this.order[i] >>> 32);
+				if (pageNumber > runEnd + 1) {
+					this.bufferPool.prefetchPages(this.resourceId, runStart, runEnd);
+					runStart = pageNumber;
+				}
+				runEnd = pageNumber;
+			}
+			this.bufferPool.prefetchPages(this.resourceId, runStart, runEnd);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Pages " + runStart + " to " + runEnd + " could not be prefetched.", bpex);
+		}
+	}
+
+	private TablePage pin(int pageNumber) throws QueryExecutionException
+	{
+		try {
+			return (TablePage) this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Page " + pageNumber + " could not be obtained from the buffer pool.", bpex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Page " + pageNumber + " could not be read.", ioex);
+		}
+	}
+
+	/**
+	 * Fetches the tuple for the RID from its page and projects it to the output columns.
+	 *
+	 * @return The tuple, or null, if it has been deleted.
+	 */
+	private DataTuple fetch(TablePage page, RID rid) throws QueryExecutionException
+	{
+		DataTuple fetched;
+		try {
+			fetched = page.getDataTuple(rid.getTupleIndex(), this.columnBitmap, this.numFetchedColumns);
+		}
+		catch (PageTupleAccessException ptaex) {
+			throw new QueryExecutionException("The tuple " + rid + " could not be read.", ptaex);
+		}
+		catch (PageExpiredException peex) {
+			throw new QueryExecutionException("A page expired while the tuple " + rid + " was read.", peex);
+		}
+		if (fetched == null) {
+			return null;
+		}
+		DataTuple tuple = new DataTuple(this.fetchedPositions.length);
+		for (int i = 0; i < this.fetchedPositions.length; i++) {
+			if (this.fetchedPositions[i] != -1) {
+				tuple.assignDataField(fetched.getField(this.fetchedPositions[i]), i);
+			}
+		}
+		return tuple;
+	}
+}
@@ -0,0 +1,719 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * Groups and aggregates the tuples of its child through hashing, so the input needs no order. The
+ * groups are kept in an open addressed hash table over the grouping columns. The running states of
+ * the aggregates are kept in primitive arrays indexed by the group: counts and sums of integer
+ * columns as longs, sums of floating point columns as doubles, and minima and maxima as longs or
+ * doubles where the column is numeric.
+ * <p>
+ * The table holds as many groups as the tuples the query heap grants for sorting them. Once it is
+ * full, the tuples of groups that are not in the table go to one of several partitions in temp
+ * space, chosen by the hash of their grouping columns, while the groups in the table keep
+ * aggregating. The tuples are collected in the sort array of the heap and written out one list per
+ * partition whenever it is full, so the partitions hold only temp space and no memory of the heap.
+ * After the input is consumed, the groups of the table are produced, and then each partition is
+ * aggregated in turn, with a different hash, in the same way. Each pass completes the groups that
+ * fit into the table, so every partition eventually fits.
+ * <p>
+ * The input is drawn from the child in batches. The produced tuples are in no particular order.
+ * <tt>NULL</tt> values are ignored by the aggregates, and an aggregate over no values other than a
+ * count is <tt>NULL</tt>.
+ */
+public class HashGroupByOperatorImpl implements GroupByOperator
+{
+	/**
+	 * The number of partitions the overflowing tuples of a pass are written to.
+	 */
+	private static final int NUM_PARTITIONS = 16;
+
+	private static final int KIND_COUNT = 0;
+
+	private static final int KIND_LONG = 1;
+
+	private static final int KIND_DOUBLE = 2;
+
+	private static final int KIND_FIELD = 3;
+
+	private final PhysicalPlanOperator child;
+
+	private final QueryHeap queryHeap;
+
+	private final int estimatedGroups;
+
+	private final int[] groupColumnIndices;
+
+	private final int[] aggColumnIndices;
+
+	private final AggregationType[] aggregateFunctions;
+
+	private final DataType[] aggColumnTypes;
+
+	private final int[] groupColumnOutputPositions;
+
+	private final int[] aggregateColumnOutputPosition;
+
+	/**
+	 * The types of the tuples written to the partitions: the grouping columns followed by the
+	 * aggregated columns.
+	 */
+	private final DataType[] spillTypes;
+
+	/**
+	 * The positions of the grouping and the aggregated columns in the tuples of the partitions.
+	 */
+	private final int[] spilledGroupColumns;
+
+	private final int[] spilledAggColumns;
+
+	/**
+	 * For each aggregate, how its state is kept.
+	 */
+	private final int[] kinds;
+
+	private int heapId;
+
+	private int capacity;
+
+	/**
+	 * The hash table, holding the group number plus one for occupied slots and zero for empty ones.
+	 */
+	private int[] slots;
+
+	private int[] hashes;
+
+	/**
+	 * The grouping columns of all groups, one after the other.
+	 */
+	private DataField[] keys;
+
+	/**
+	 * The number of non-NULL values per aggregate and group.
+	 */
+	private long[][] counts;
+
+	private long[][] longs;
+
+	private double[][] doubles;
+
+	private DataField[][] fields;
+
+	private int numGroups;
+
+	private int nextGroup;
+
+	/**
+	 * The partitions written by the current pass, which are created when they get their first tuple.
+	 */
+	private Partition[] partitions;
+
+	/**
+	 * The tuples going to the partitions, in the sort array of the heap, and their partitions.
+	 */
+	private DataTuple[] staged;
+
+	private int[] stagedPartitions;
+
+	private int numStaged;
+
+	/**
+	 * The staged tuples ordered by their partition while they are written.
+	 */
+	private DataTuple[] ordered;
+
+	/**
+	 * The partitions that remain to be aggregated.
+	 */
+	private final Deque<Partition> pending;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a hash group by operator. The grouping and aggregate columns and the output positions
+	 * are described as for the group by operator over sorted input.
+	 *
+	 * @param child The child delivering the tuples to be grouped and aggregated in any order.
+	 * @param queryHeap The query heap from which the memory for the groups and the temp space for
+	 *                  the partitions is taken.
+	 * @param inputColumnTypes The types of the columns of the tuples produced by the child.
+	 * @param estimatedGroups The estimated number of groups.
+	 * @param groupColumnIndices The indices of the grouping columns in the input tuple.
+	 * @param aggColumnIndices The indices of the aggregate columns in the input tuple.
+	 * @param aggregateFunctions The functions that are used for aggregation.
+	 * @param aggColumnTypes The types of the aggregated columns in the output.
+	 * @param groupColumnOutputPositions The map describing in which position in the produced tuple
+	 *                                   the grouping columns will be put.
+	 * @param aggregateColumnOutputPosition The map describing in which position in the produced tuple
+	 *                                      the aggregate columns will be put.
+	 */
+	public HashGroupByOperatorImpl(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] inputColumnTypes,
+			int estimatedGroups, int[] groupColumnIndices, int[] aggColumnIndices, AggregationType[] aggregateFunctions,
+			DataType[] aggColumnTypes, int[] groupColumnOutputPositions, int[] aggregateColumnOutputPosition)
+	{
+		this.child = child;
+		this.queryHeap = queryHeap;
+		this.estimatedGroups = Math.max(1, estimatedGroups);
+		this.groupColumnIndices = groupColumnIndices;
+		this.aggColumnIndices = aggColumnIndices;
+		this.aggregateFunctions = aggregateFunctions;
+		this.aggColumnTypes = aggColumnTypes;
+		this.groupColumnOutputPositions = groupColumnOutputPositions;
+		this.aggregateColumnOutputPosition = aggregateColumnOutputPosition;
+
+		int numGroupColumns = groupColumnIndices.length;
+		this.spillTypes = new DataType[numGroupColumns + aggColumnIndices.length];
+		this.spilledGroupColumns = new int[numGroupColumns];
+		this.spilledAggColumns = new int[aggColumnIndices.length];
+		for (int i = 0; i < numGroupColumns; i++) {
+			this.spillTypes[i] = inputColumnTypes[groupColumnIndices[i]];
+			this.spilledGroupColumns[i] = i;
+		}
+
+		this.kinds = new int[aggColumnIndices.length];
+		for (int i = 0; i < aggColumnIndices.length; i++) {
+			DataType type = inputColumnTypes[aggColumnIndices[i]];
+			this.spillTypes[numGroupColumns + i] = type;
+			this.spilledAggColumns[i] = numGroupColumns + i;
+
+			BasicType basicType = type.getBasicType();
+			boolean integral = basicType == BasicType.SMALL_INT || basicType == BasicType.INT || basicType == BasicType.BIG_INT;
+			boolean floating = basicType == BasicType.FLOAT || basicType == BasicType.DOUBLE;
+			switch (aggregateFunctions[i]) {
+			case COUNT:
+				this.kinds[i] = KIND_COUNT;
+				break;
+			case SUM:
+			case AVG:
+				if (!integral && !floating) {
+					throw new IllegalArgumentException("The column aggregated with " + aggregateFunctions[i] +
+							" is of the type " + type + ", which is no arithmetic type.");
+				}
+				this.kinds[i] = integral ? KIND_LONG : KIND_DOUBLE;
+				break;
+			case MIN:
+			case MAX:
+				this.kinds[i] = integral ? KIND_LONG : floating ? KIND_DOUBLE : KIND_FIELD;
+				break;
+			default:
+				throw new IllegalArgumentException("The aggregation function " + aggregateFunctions[i] + " is not supported.");
+			}
+		}
+		this.pending = new ArrayDeque<Partition>();
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		// the grant is taken before the child is opened, since the child may start producers that
+		// hold grants of their own until this operator consumes their tuples
+		try {
+			this.heapId = this.queryHeap.reserveSortHeap(this.spillTypes, this.estimatedGroups);
+			this.staged = this.queryHeap.getSortArray(this.heapId);
+			this.capacity = Math.min(this.staged.length, this.queryHeap.getMaximalTuplesForInternalSort(this.heapId));
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("No memory for the groups could be obtained from the query heap.", qhex);
+		}
+		this.open = true;
+		allocate();
+
+		try {
+			this.child.open(correlatedTuple);
+			beginPass();
+			DataTuple[] batch = new DataTuple[DEFAULT_BATCH_SIZE];
+			int num;
+			while ((num = this.child.nextBatch(batch)) > 0) {
+				for (int i = 0; i < num; i++) {
+					add(batch[i], this.groupColumnIndices, this.aggColumnIndices, 0);
+					batch[i] = null;
+				}
+			}
+			if (this.groupColumnIndices.length == 0 && this.numGroups == 0) {
+				// an aggregate over all tuples produces its row also for an empty input
+				newGroup(0, null, this.groupColumnIndices);
+			}
+			endPass();
+		}
+		catch (QueryExecutionException qeex) {
+			// releases the grant and the partitions, and closes the child
+			close();
+			throw qeex;
+		}
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The group by operator has not been opened.");
+		}
+		while (this.nextGroup >= this.numGroups) {
+			if (this.pending.isEmpty()) {
+				return null;
+			}
+			aggregatePartition(this.pending.removeFirst());
+		}
+		return produce(this.nextGroup++);
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The group by operator has not been opened.");
+		}
+		while (this.nextGroup >= this.numGroups) {
+			if (this.pending.isEmpty()) {
+				return 0;
+			}
+			aggregatePartition(this.pending.removeFirst());
+		}
+		// a batch ends with the groups of the current pass
+		int num = Math.min(batch.length, this.numGroups - this.nextGroup);
+		for (int i = 0; i < num; i++) {
+			batch[i] = produce(this.nextGroup++);
+		}
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.open) {
+			this.open = false;
+			while (!this.pending.isEmpty()) {
+				this.queryHeap.releaseSortHeap(this.pending.removeFirst().heapId);
+			}
+			for (Partition partition : this.partitions) {
+				if (partition != null) {
+					this.queryHeap.releaseSortHeap(partition.heapId);
+				}
+			}
+			this.queryHeap.releaseSortHeap(this.heapId);
+			Arrays.fill(this.staged, 0, this.numStaged, null);
+			this.staged = null;
+			this.ordered = null;
+			this.keys = null;
+			this.fields = null;
+		}
+		this.child.close();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Allocates the hash table and the states for as many groups as the heap granted.
+	 */
+	private void allocate()
+	{
+		int numSlots = Integer.highestOneBit(Math.max(2, this.capacity) * 2 - 1) << 1;
+		this.slots = new int[numSlots];
+		this.hashes = new int[this.capacity];
+		this.keys = new DataField[this.capacity * this.groupColumnIndices.length];
+		this.counts = new long[this.kinds.length][];
+		this.longs = new long[this.kinds.length][];
+		this.doubles = new double[this.kinds.length][];
+		this.fields = new DataField[this.kinds.length][];
+		for (int i = 0; i < this.kinds.length; i++) {
+			this.counts[i] = new long[this.capacity];
+			switch (this.kinds[i]) {
+			case KIND_LONG:
+				this.longs[i] = new long[this.capacity];
+				break;
+			case KIND_DOUBLE:
+				this.doubles[i] = new double[this.capacity];
+				break;
+			case KIND_FIELD:
+				this.fields[i] = new DataField[this.capacity];
+				break;
+			}
+		}
+		this.partitions = new Partition[NUM_PARTITIONS];
+		this.stagedPartitions = new int[this.capacity];
+		this.numStaged = 0;
+	}
+
+	/**
+	 * Empties the table for the next pass.
+	 */
+	private void beginPass()
+	{
+		Arrays.fill(this.slots, 0);
+		Arrays.fill(this.keys, null);
+		for (DataField[] minMax : this.fields) {
+			if (minMax != null) {
+				Arrays.fill(minMax, null);
+			}
+		}
+		this.numGroups = 0;
+		this.nextGroup = 0;
+	}
+
+	/**
+	 * Writes the rest of the partitions of the pass and queues them for aggregation.
+	 */
+	private void endPass() throws QueryExecutionException
+	{
+		writeStaged();
+		for (int i = 0; i < NUM_PARTITIONS; i++) {
+			if (this.partitions[i] != null) {
+				this.pending.addFirst(this.partitions[i]);
+				this.partitions[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Writes the staged tuples, one list per partition.
+	 */
+	private void writeStaged() throws QueryExecutionException
+	{
+		if (this.numStaged == 0) {
+			return;
+		}
+		if (this.ordered == null) {
+			this.ordered = new DataTuple[this.capacity];
+		}
+
+		// order the tuples by their partition
+		int[] starts = new int[NUM_PARTITIONS + 1];
+		for (int i = 0; i < this.numStaged; i++) {
+			starts[this.stagedPartitions[i] + 1]++;
+		}
+		for (int i = 0; i < NUM_PARTITIONS; i++) {
+			starts[i + 1] += starts[i];
+		}
+		int[] positions = Arrays.copyOf(starts, NUM_PARTITIONS);
+		for (int i = 0; i < this.numStaged; i++) {
+			this.ordered[positions[this.stagedPartitions[i]]++] = this.staged[i];
+			this.staged[i] = null;
+		}
+
+		try {
+			for (int i = 0; i < NUM_PARTITIONS; i++) {
+				int num = starts[i + 1] - starts[i];
+				if (num > 0) {
+					System.arraycopy(this.ordered, starts[i], this.staged, 0, num);
+					this.queryHeap.writeTupleSequencetoTemp(this.partitions[i].heapId, this.staged, num);
+					Arrays.fill(this.staged, 0, num, null);
+				}
+			}
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("A partition of the groups could not be written to temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("A partition of the groups could not be written to temp space.", ioex);
+		}
+		finally {
+			Arrays.fill(this.ordered, 0, this.numStaged, null);
+			this.numStaged = 0;
+		}
+	}
+
+	/**
+	 * Aggregates the tuples of a partition in a new pass and releases the partition.
+	 */
+	private void aggregatePartition(Partition partition) throws QueryExecutionException
+	{
+		int level = partition.level + 1;
+		beginPass();
+		try {
+			for (ExternalTupleSequenceIterator iterator : this.queryHeap.getExternalSortedLists(partition.heapId)) {
+				while (iterator.hasNext()) {
+					add(iterator.next(), this.spilledGroupColumns, this.spilledAggColumns, level);
+				}
+			}
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("A partition of the groups could not be read from temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("A partition of the groups could not be read from temp space.", ioex);
+		}
+		finally {
+			this.queryHeap.releaseSortHeap(partition.heapId);
+		}
+		endPass();
+	}
+
+	/**
+	 * Adds the tuple to its group, or writes it to its partition, if its group is not in the table
+	 * and the table is full.
+	 */
+	private void add(DataTuple tuple, int[] groupColumns, int[] aggColumns, int level) throws QueryExecutionException
+	{
+		int hash = hash(tuple, groupColumns, level);
+		int mask = this.slots.length - 1;
+		int slot = hash & mask;
+		int group;
+		while ((group = this.slots[slot] - 1) != -1) {
+			if (this.hashes[group] == hash && keyEquals(group, tuple, groupColumns)) {
+				update(group, tuple, aggColumns);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (this.numGroups == this.capacity) {
+			spill(tuple, groupColumns, aggColumns, hash, level);
+			return;
+		}
+		group = newGroup(hash, tuple, groupColumns);
+		this.slots[slot] = group + 1;
+		update(group, tuple, aggColumns);
+	}
+
+	private int newGroup(int hash, DataTuple tuple, int[] groupColumns)
+	{
+		int group = this.numGroups++;
+		this.hashes[group] = hash;
+		for (int i = 0; i < groupColumns.length; i++) {
+			this.keys[group * groupColumns.length + i] = tuple.getField(groupColumns[i]);
+		}
+		for (int i = 0; i < this.kinds.length; i++) {
+			this.counts[i][group] = 0;
+			if (this.kinds[i] == KIND_LONG) {
+				this.longs[i][group] = 0;
+			}
+			else if (this.kinds[i] == KIND_DOUBLE) {
+				this.doubles[i][group] = 0;
+			}
+		}
+		return group;
+	}
+
+	private boolean keyEquals(int group, DataTuple tuple, int[] groupColumns)
+	{
+		int offset = group * groupColumns.length;
+		for (int i = 0; i < groupColumns.length; i++) {
+			if (!this.keys[offset + i].equals(tuple.getField(groupColumns[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void update(int group, DataTuple tuple, int[] aggColumns)
+	{
+		for (int i = 0; i < this.kinds.length; i++) {
+			DataField field = tuple.getField(aggColumns[i]);
+			if (field.isNULL()) {
+				continue;
+			}
+			boolean first = this.counts[i][group]++ == 0;
+			AggregationType function = this.aggregateFunctions[i];
+			switch (this.kinds[i]) {
+			case KIND_LONG: {
+				long value = DataType.asArithmeticType(field).asLong();
+				long[] states = this.longs[i];
+				if (function == AggregationType.SUM || function == AggregationType.AVG) {
+					states[group] += value;
+				}
+				else if (first || (function == AggregationType.MIN ? value < states[group] : value > states[group])) {
+					states[group] = value;
+				}
+				break;
+			}
+			case KIND_DOUBLE: {
+				double value = DataType.asArithmeticType(field).asDouble();
+				double[] states = this.doubles[i];
+				if (function == AggregationType.SUM || function == AggregationType.AVG) {
+					states[group] += value;
+				}
+				else if (first || (function == AggregationType.MIN ? value < states[group] : value > states[group])) {
+					states[group] = value;
+				}
+				break;
+			}
+			case KIND_FIELD: {
+				DataField[] states = this.fields[i];
+				if (first) {
+					states[group] = field;
+				}
+				else {
+					int cmp = field.compareTo(states[group]);
+					if (function == AggregationType.MIN ? cmp < 0 : cmp > 0) {
+						states[group] = field;
+					}
+				}
+				break;
+			}
+			}
+		}
+	}
+
+	/**
+	 * Stages the tuple, reduced to its grouping and aggregated columns, for its partition.
+	 */
+	private void spill(DataTuple tuple, int[] groupColumns, int[] aggColumns, int hash, int level)
+	throws QueryExecutionException
+	{
+		int index = hash >>> (32 - Integer.numberOfTrailingZeros(NUM_PARTITIONS));
+		if (this.partitions[index] == null) {
+			try {
+				// the partition needs the heap only for its temp space
+				int partitionHeapId = this.queryHeap.reserveSortHeap(this.spillTypes, 0);
+				this.partitions[index] = new Partition(partitionHeapId, level);
+				this.queryHeap.releaseSortArray(partitionHeapId);
+			}
+			catch (QueryHeapException qhex) {
+				throw new QueryExecutionException("No temp space for a partition of the groups could be obtained.", qhex);
+			}
+		}
+		if (this.numStaged == this.capacity) {
+			writeStaged();
+		}
+
+		DataTuple reduced = new DataTuple(this.spillTypes.length);
+		for (int i = 0; i < groupColumns.length; i++) {
+			reduced.assignDataField(tuple.getField(groupColumns[i]), i);
+		}
+		for (int i = 0; i < aggColumns.length; i++) {
+			reduced.assignDataField(tuple.getField(aggColumns[i]), groupColumns.length + i);
+		}
+		this.stagedPartitions[this.numStaged] = index;
+		this.staged[this.numStaged++] = reduced;
+	}
+
+	/**
+	 * Hashes the grouping columns of the tuple with a different seed for each level of partitioning,
+	 * such that the groups of a partition spread over the partitions of the next level. The upper
+	 * bits select the partition and the lower bits the slot of the table.
+	 */
+	private static int hash(DataTuple tuple, int[] groupColumns, int level)
+	{
+		int hash = level * 0x61c88647;
+		for (int i = 0; i < groupColumns.length; i++) {
+			hash = hash * 31 + tuple.getField(groupColumns[i]).hashCode();
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	// ------------------------------------------------------------------------
+
+	private DataTuple produce(int group)
+	{
+		int numGroupColumns = this.groupColumnIndices.length;
+		DataTuple tuple = new DataTuple(this.groupColumnOutputPositions.length);
+		for (int i = 0; i < this.groupColumnOutputPositions.length; i++) {
+			int index = this.groupColumnOutputPositions[i];
+			if (index != -1) {
+				tuple.assignDataField(this.keys[group * numGroupColumns + index], i);
+			}
+		}
+		for (int i = 0; i < this.aggregateColumnOutputPosition.length; i++) {
+			int index = this.aggregateColumnOutputPosition[i];
+			if (index != -1) {
+				tuple.assignDataField(aggregate(index, group), i);
+			}
+		}
+		return tuple;
+	}
+
+	private DataField aggregate(int index, int group)
+	{
+		DataType type = this.aggColumnTypes[index];
+		long count = this.counts[index][group];
+		if (this.kinds[index] == KIND_COUNT) {
+			return toField(type, count);
+		}
+		if (count == 0) {
+			return type.getNullValue();
+		}
+		boolean avg = this.aggregateFunctions[index] == AggregationType.AVG;
+		switch (this.kinds[index]) {
+		case KIND_LONG:
+			long sum = this.longs[index][group];
+			return avg ? (isFloating(type) ? toField(type, sum / (double) count) : toField(type, sum / count)) : toField(type, sum);
+		case KIND_DOUBLE:
+			double value = this.doubles[index][group];
+			return toField(type, avg ? value / count : value);
+		default:
+			return this.fields[index][group];
+		}
+	}
+
+	private static boolean isFloating(DataType type)
+	{
+		return type.getBasicType() == BasicType.FLOAT || type.getBasicType() == BasicType.DOUBLE;
+	}
+
+	private static DataField toField(DataType type, long value)
+	{
+		switch (type.getBasicType()) {
+		case SMALL_INT:
+			return new SmallIntField((short) value);
+		case INT:
+			return new IntField((int) value);
+		case FLOAT:
+			return new FloatField(value);
+		case DOUBLE:
+			return new DoubleField(value);
+		default:
+			return new BigIntField(value);
+		}
+	}
+
+	private static DataField toField(DataType type, double value)
+	{
+		switch (type.getBasicType()) {
+		case FLOAT:
+			return new FloatField((float) value);
+		case DOUBLE:
+			return new DoubleField(value);
+		default:
+			return toField(type, (long) value);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * The tuples of the groups that did not fit into the table during one pass, with the share of
+	 * the heap that holds their temp space.
+	 */
+	private static final class Partition
+	{
+		private final int heapId;
+
+		/**
+		 * The level of the pass that wrote the partition.
+		 */
+		private final int level;
+
+
+		Partition(int heapId, int level)
+		{
+			this.heapId = heapId;
+			this.level = level;
+		}
+	}
+}
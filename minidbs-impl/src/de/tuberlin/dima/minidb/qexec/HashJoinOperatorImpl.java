@@ -0,0 +1,331 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.predicate.JoinPredicate;
+
+
+/**
+ * Joins the tuples of the probe child with the tuples of the build child that have equal values
+ * in the join columns. When the operator is opened, it drains the build child into a hash table
+ * over the join columns, chained through primitive arrays. The probe child is then drawn in
+ * batches, and each of its tuples is joined with the build tuples in its chain whose join columns
+ * are equal and that qualify for the join predicate, if there is one. The output tuples are
+ * combined through the column maps, as in a nested loop join. Tuples with a <tt>NULL</tt> in a
+ * join column join with no tuple.
+ * <p>
+ * The build side is kept in memory. In a parallel plan, both sides come from repartitioning
+ * exchanges on the join columns, so that each of the joins builds and probes only its share of the
+ * tuples, and the joins run side by side without sharing any state.
+ */
+public class HashJoinOperatorImpl implements HashJoinOperator
+{
+	/**
+	 * The number of build tuples the table is allocated for at first.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final PhysicalPlanOperator probeChild;
+
+	private final PhysicalPlanOperator buildChild;
+
+	private final int[] probeColumns;
+
+	private final int[] buildColumns;
+
+	private final JoinPredicate joinPredicate;
+
+	private final int[] columnMapProbeTuple;
+
+	private final int[] columnMapBuildTuple;
+
+	/**
+	 * For each bucket the first build tuple of its chain, plus one, or 0.
+	 */
+	private int[] buckets;
+
+	/**
+	 * For each build tuple the next tuple of its chain, plus one, or 0.
+	 */
+	private int[] chain;
+
+	private int[] hashes;
+
+	private DataTuple[] buildTuples;
+
+	private int numBuildTuples;
+
+	private final DataTuple[] probeBatch;
+
+	private int probeLength;
+
+	private int nextProbe;
+
+	private boolean probeExhausted;
+
+	private DataTuple probeTuple;
+
+	private int probeHash;
+
+	/**
+	 * The next build tuple in the chain of the current probe tuple, plus one, or 0.
+	 */
+	private int candidate;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a hash join.
+	 *
+	 * @param probeChild The operator producing the tuples that are looked up in the hash table.
+	 * @param buildChild The operator producing the tuples that are put into the hash table.
+	 * @param probeColumns The join columns of the probe tuples.
+	 * @param buildColumns The join columns of the build tuples, in the order of the probe columns.
+	 * @param joinPredicate A further predicate evaluated on pairs of probe and build tuples, or null.
+	 * @param columnMapProbeTuple For each output column the column of the probe tuple, or -1.
+	 * @param columnMapBuildTuple For each output column the column of the build tuple, or -1.
+	 */
+	public HashJoinOperatorImpl(PhysicalPlanOperator probeChild, PhysicalPlanOperator buildChild,
+			int[] probeColumns, int[] buildColumns, JoinPredicate joinPredicate,
+			int[] columnMapProbeTuple, int[] columnMapBuildTuple)
+	{
+		if (probeColumns.length != buildColumns.length || probeColumns.length == 0) {
+			throw new IllegalArgumentException("Both sides must have the same, non-empty join columns.");
+		}
+		if (columnMapProbeTuple.length != columnMapBuildTuple.length) {
+			throw new IllegalArgumentException("The column maps must describe the same output columns.");
+		}
+		this.probeChild = probeChild;
+		this.buildChild = buildChild;
+		this.probeColumns = probeColumns;
+		this.buildColumns = buildColumns;
+		this.joinPredicate = joinPredicate;
+		this.columnMapProbeTuple = columnMapProbeTuple;
+		this.columnMapBuildTuple = columnMapBuildTuple;
+		this.probeBatch = new DataTuple[DEFAULT_BATCH_SIZE];
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		allocate(INITIAL_CAPACITY);
+		this.numBuildTuples = 0;
+		this.buildChild.open(correlatedTuple);
+		try {
+			DataTuple[] batch = this.probeBatch;
+			int num;
+			while ((num = this.buildChild.nextBatch(batch)) > 0) {
+				for (int i = 0; i < num; i++) {
+					insert(batch[i]);
+					batch[i] = null;
+				}
+			}
+		}
+		finally {
+			this.buildChild.close();
+		}
+
+		this.probeChild.open(correlatedTuple);
+		this.probeLength = 0;
+		this.nextProbe = 0;
+		this.probeExhausted = false;
+		this.probeTuple = null;
+		this.candidate = 0;
+		this.open = true;
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The hash join has not been opened.");
+		}
+		while (true) {
+			int match = nextMatch();
+			if (match >= 0) {
+				return join(this.probeTuple, this.buildTuples[match]);
+			}
+			if (!nextProbeTuple()) {
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The hash join has not been opened.");
+		}
+		int num = 0;
+		while (num < batch.length) {
+			int match = nextMatch();
+			if (match >= 0) {
+				batch[num++] = join(this.probeTuple, this.buildTuples[match]);
+			}
+			else if (!nextProbeTuple()) {
+				break;
+			}
+		}
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.open) {
+			this.open = false;
+			this.probeChild.close();
+		}
+		Arrays.fill(this.probeBatch, null);
+		this.probeTuple = null;
+		this.buckets = null;
+		this.chain = null;
+		this.hashes = null;
+		this.buildTuples = null;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Finds the next build tuple in the chain of the current probe tuple that joins with it.
+	 *
+	 * @return The build tuple, or -1, if the chain has no more matches.
+	 */
+	private int nextMatch() throws QueryExecutionException
+	{
+		while (this.candidate != 0) {
+			int index = this.candidate - 1;
+			this.candidate = this.chain[index];
+			if (this.hashes[index] == this.probeHash && keysEqual(this.buildTuples[index])
+					&& (this.joinPredicate == null || this.joinPredicate.evaluate(this.probeTuple, this.buildTuples[index]))) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves to the next probe tuple that may find matches and to the start of its chain.
+	 *
+	 * @return true, if there is a next probe tuple, false, if the probe child is exhausted.
+	 */
+	private boolean nextProbeTuple() throws QueryExecutionException
+	{
+		while (true) {
+			if (this.nextProbe >= this.probeLength) {
+				if (this.probeExhausted) {
+					this.probeTuple = null;
+					return false;
+				}
+				this.probeLength = this.probeChild.nextBatch(this.probeBatch);
+				this.nextProbe = 0;
+				if (this.probeLength == 0) {
+					this.probeExhausted = true;
+					continue;
+				}
+			}
+			DataTuple tuple = this.probeBatch[this.nextProbe];
+			this.probeBatch[this.nextProbe++] = null;
+			if (this.numBuildTuples == 0 || hasNull(tuple, this.probeColumns)) {
+				continue;
+			}
+			this.probeTuple = tuple;
+			this.probeHash = hash(tuple, this.probeColumns);
+			this.candidate = this.buckets[this.probeHash & (this.buckets.length - 1)];
+			return true;
+		}
+	}
+
+	private void allocate(int capacity)
+	{
+		this.buckets = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		this.chain = new int[capacity];
+		this.hashes = new int[capacity];
+		this.buildTuples = new DataTuple[capacity];
+	}
+
+	/**
+	 * Puts a build tuple into the table, growing the table if it is full.
+	 */
+	private void insert(DataTuple tuple)
+	{
+		if (hasNull(tuple, this.buildColumns)) {
+			return;
+		}
+		if (this.numBuildTuples == this.buildTuples.length) {
+			int capacity = 2 * this.buildTuples.length;
+			this.chain = Arrays.copyOf(this.chain, capacity);
+			this.hashes = Arrays.copyOf(this.hashes, capacity);
+			this.buildTuples = Arrays.copyOf(this.buildTuples, capacity);
+			this.buckets = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+			for (int i = 0; i < this.numBuildTuples; i++) {
+				link(i);
+			}
+		}
+		int index = this.numBuildTuples++;
+		this.buildTuples[index] = tuple;
+		this.hashes[index] = hash(tuple, this.buildColumns);
+		link(index);
+	}
+
+	private void link(int index)
+	{
+		int bucket = this.hashes[index] & (this.buckets.length - 1);
+		this.chain[index] = this.buckets[bucket];
+		this.buckets[bucket] = index + 1;
+	}
+
+	private boolean keysEqual(DataTuple buildTuple)
+	{
+		for (int i = 0; i < this.probeColumns.length; i++) {
+			if (!this.probeTuple.getField(this.probeColumns[i]).equals(buildTuple.getField(this.buildColumns[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasNull(DataTuple tuple, int[] columns)
+	{
+		for (int column : columns) {
+			if (tuple.getField(column).isNULL()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int hash(DataTuple tuple, int[] columns)
+	{
+		int hash = 0;
+		for (int column : columns) {
+			DataField field = tuple.getField(column);
+			hash = 31 * hash + field.hashCode();
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private DataTuple join(DataTuple probe, DataTuple build)
+	{
+		DataTuple tuple = new DataTuple(this.columnMapProbeTuple.length);
+		for (int i = 0; i < this.columnMapProbeTuple.length; i++) {
+			int probeIndex = this.columnMapProbeTuple[i];
+			if (probeIndex != -1) {
+				tuple.assignDataField(probe.getField(probeIndex), i);
+			}
+			else {
+				int buildIndex = this.columnMapBuildTuple[i];
+				if (buildIndex != -1) {
+					tuple.assignDataField(build.getField(buildIndex), i);
+				}
+			}
+		}
+		return tuple;
+	}
+}
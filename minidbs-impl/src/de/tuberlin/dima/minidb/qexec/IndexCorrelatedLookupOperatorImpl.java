@@ -0,0 +1,162 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+
+
+/**
+ * Looks up the RIDs for the key in a column of the correlated tuple in a B-Tree index. Each call to
+ * {@link #next()} returns a tuple with a single field, the next RID.
+ * <p>
+ * If the tuples the operator is opened with have been announced through
+ * {@link #prepareLookups(DataTuple[], int)}, their keys are looked up together with
+ * {@link BTreeIndex#lookupRids(DataField[])}, and opening the operator for one of them takes the
+ * RIDs from that batch. The announced tuples are expected in the order of the announcement; an
+ * operator opened with another tuple looks up its key on its own.
+ */
+public class IndexCorrelatedLookupOperatorImpl implements IndexCorrelatedLookupOperator
+{
+	private final BTreeIndex index;
+
+	private final int correlatedColumnIndex;
+
+	/**
+	 * The tuples announced last, with the RIDs for their keys.
+	 */
+	private DataTuple[] preparedTuples;
+
+	private List<List<RID>> preparedRids;
+
+	private int numPrepared;
+
+	/**
+	 * The announced tuple expected to be the next the operator is opened with.
+	 */
+	private int nextPrepared;
+
+	/**
+	 * The RIDs for the current tuple if it was announced, or null.
+	 */
+	private List<RID> rids;
+
+	private int nextRid;
+
+	/**
+	 * The iterator over the RIDs for the current tuple if it was not announced, or null.
+	 */
+	private IndexResultIterator<RID> iterator;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a correlated lookup operator.
+	 *
+	 * @param index The index to look the keys up in.
+	 * @param correlatedColumnIndex The column of the correlated tuple that holds the key.
+	 */
+	public IndexCorrelatedLookupOperatorImpl(BTreeIndex index, int correlatedColumnIndex)
+	{
+		this.index = index;
+		this.correlatedColumnIndex = correlatedColumnIndex;
+		this.preparedTuples = new DataTuple[0];
+		this.preparedRids = Collections.emptyList();
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void prepareLookups(DataTuple[] correlatedTuples, int num) throws QueryExecutionException
+	{
+		DataField[] keys = new DataField[num];
+		for (int i = 0; i < num; i++) {
+			keys[i] = correlatedTuples[i].getField(this.correlatedColumnIndex);
+		}
+		try {
+			this.preparedRids = this.index.lookupRids(keys);
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("The keys could not be looked up.", pfex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("The keys could not be looked up.", ioex);
+		}
+		this.preparedTuples = correlatedTuples.clone();
+		this.numPrepared = num;
+		this.nextPrepared = 0;
+	}
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		if (correlatedTuple == null) {
+			throw new QueryExecutionIllegalConditionException("The correlated lookup needs a correlated tuple.");
+		}
+		this.rids = null;
+		this.iterator = null;
+		this.nextRid = 0;
+		if (this.nextPrepared < this.numPrepared && this.preparedTuples[this.nextPrepared] == correlatedTuple) {
+			this.rids = this.preparedRids.get(this.nextPrepared++);
+		}
+		else {
+			try {
+				this.iterator = this.index.lookupRids(correlatedTuple.getField(this.correlatedColumnIndex));
+			}
+			catch (PageFormatException pfex) {
+				throw new QueryExecutionException("The key could not be looked up.", pfex);
+			}
+			catch (IOException ioex) {
+				throw new QueryExecutionException("The key could not be looked up.", ioex);
+			}
+		}
+		this.open = true;
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The correlated lookup has not been opened.");
+		}
+		RID rid;
+		if (this.rids != null) {
+			if (this.nextRid >= this.rids.size()) {
+				return null;
+			}
+			rid = this.rids.get(this.nextRid++);
+		}
+		else {
+			try {
+				if (!this.iterator.hasNext()) {
+					return null;
+				}
+				rid = this.iterator.next();
+			}
+			catch (PageFormatException pfex) {
+				throw new QueryExecutionException("The RIDs could not be read from the index.", pfex);
+			}
+			catch (IOException ioex) {
+				throw new QueryExecutionException("The RIDs could not be read from the index.", ioex);
+			}
+		}
+		DataTuple tuple = new DataTuple(1);
+		tuple.assignDataField(rid, 0);
+		return tuple;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.rids = null;
+		this.iterator = null;
+		this.open = false;
+	}
+}
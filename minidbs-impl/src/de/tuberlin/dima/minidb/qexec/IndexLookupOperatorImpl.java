@@ -0,0 +1,94 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+
+
+/**
+ * Looks up the RIDs for a key or a range of keys in a B-Tree index. Each call to {@link #next()}
+ * returns a tuple with a single field, the next RID, in the order of the keys.
+ */
+public class IndexLookupOperatorImpl implements IndexLookupOperator
+{
+	private final BTreeIndex index;
+
+	private final DataField startKey;
+
+	private final DataField stopKey;
+
+	private final boolean startKeyIncluded;
+
+	private final boolean stopKeyIncluded;
+
+	private IndexResultIterator<RID> iterator;
+
+
+	/**
+	 * Creates an operator for the RIDs in a range of keys. For an equality predicate, both bounds
+	 * are the key and included.
+	 *
+	 * @param index The index to scan.
+	 * @param startKey The lower bound of the range.
+	 * @param stopKey The upper bound of the range.
+	 * @param startKeyIncluded Flag indicating whether the lower bound is included in the range.
+	 * @param stopKeyIncluded Flag indicating whether the upper bound is included in the range.
+	 */
+	public IndexLookupOperatorImpl(BTreeIndex index, DataField startKey, DataField stopKey, boolean startKeyIncluded, boolean stopKeyIncluded)
+	{
+		this.index = index;
+		this.startKey = startKey;
+		this.stopKey = stopKey;
+		this.startKeyIncluded = startKeyIncluded;
+		this.stopKeyIncluded = stopKeyIncluded;
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		try {
+			this.iterator = this.index.lookupRids(this.startKey, this.stopKey, this.startKeyIncluded, this.stopKeyIncluded);
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("The index could not be opened at key " + this.startKey + ".", pfex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("The index could not be opened at key " + this.startKey + ".", ioex);
+		}
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (this.iterator == null) {
+			throw new QueryExecutionIllegalConditionException("The index lookup has not been opened.");
+		}
+		try {
+			if (!this.iterator.hasNext()) {
+				return null;
+			}
+			DataTuple tuple = new DataTuple(1);
+			tuple.assignDataField(this.iterator.next(), 0);
+			return tuple;
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("The RIDs could not be read from the index.", pfex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("The RIDs could not be read from the index.", ioex);
+		}
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.iterator = null;
+	}
+}
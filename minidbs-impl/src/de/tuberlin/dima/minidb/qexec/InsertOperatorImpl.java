@@ -0,0 +1,237 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageFormatException;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Inserts the tuples produced by its child into a table and enters them into the table's indexes.
+ * Each call to {@link #next()} inserts one tuple and returns it.
+ * <p>
+ * A tuple goes to the page the previous tuple went to, if it still has room. Otherwise, the page is
+ * taken from the table's free-space map, see {@link TableResourceManager#findPageWithFreeSpace(int)},
+ * and only if no page is known to have room, a new page is appended to the table. On the page, the
+ * tuple takes the slot of a deleted record, if there is one. Whenever a tuple has been inserted into
+ * a page or did not fit, the page's free space is recorded in the map. For a page the tuple did not
+ * fit, less than the tuple needs is recorded, so that neither stale entries nor free space the tuple
+ * cannot use lead to the same page again.
+ * <p>
+ * Pages of implementations that neither reuse slots nor report their free space get the tuple
+ * appended to their records. Their free space is not recorded, except that a page the tuple did not
+ * fit is recorded as having less than the tuple needs.
+ */
+public class InsertOperatorImpl implements InsertOperator
+{
+	private final BufferPoolManager bufferPool;
+
+	private final TableResourceManager tableManager;
+
+	private final int resourceId;
+
+	private final BTreeIndex[] indexes;
+
+	/**
+	 * For each index the column of the tuples that is its key.
+	 */
+	private final int[] columnNumbers;
+
+	private final PhysicalPlanOperator child;
+
+	/**
+	 * The number of bytes the record of a tuple takes.
+	 */
+	private final int recordWidth;
+
+	/**
+	 * The page the last tuple was inserted into, which is pinned, or null.
+	 */
+	private TablePage page;
+
+	/**
+	 * Whether the current page reuses slots and reports its free space, as far as is known.
+	 */
+	private boolean pageReusesSlots;
+
+	private boolean open;
+
+
+	/**
+	 * Creates an insert operator.
+	 *
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param tableManager The manager of the table to insert into.
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param indexes The indexes of the table that are updated with the inserted tuples.
+	 * @param columnNumbers For each index the column that it refers to.
+	 * @param child The operator producing the tuples to insert.
+	 */
+	public InsertOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			BTreeIndex[] indexes, int[] columnNumbers, PhysicalPlanOperator child)
+	{
+		if (indexes.length != columnNumbers.length) {
+			throw new IllegalArgumentException("Each index needs exactly one column.");
+		}
+		this.bufferPool = bufferPool;
+		this.tableManager = tableManager;
+		this.resourceId = resourceId;
+		this.indexes = indexes;
+		this.columnNumbers = columnNumbers;
+		this.child = child;
+
+		TableSchema schema = tableManager.getSchema();
+		int width = 4;
+		for (int i = 0; i < schema.getNumberOfColumns(); i++) {
+			DataType type = schema.getColumn(i).getDataType();
+			width += type.isFixLength() ? type.getNumberOfBytes() : 8;
+		}
+		this.recordWidth = width;
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.child.open(correlatedTuple);
+		this.page = null;
+		this.open = true;
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The insert operator has not been opened.");
+		}
+		DataTuple tuple = this.child.next();
+		if (tuple == null) {
+			release();
+			return null;
+		}
+
+		RID rid = insert(tuple);
+		for (int i = 0; i < this.indexes.length; i++) {
+			try {
+				this.indexes[i].insertEntry(tuple.getField(this.columnNumbers[i]), rid);
+			}
+			catch (PageFormatException pfex) {
+				throw new QueryExecutionException("Index " + i + " could not be updated.", pfex);
+			}
+			catch (IOException ioex) {
+				throw new QueryExecutionException("Index " + i + " could not be updated.", ioex);
+			}
+		}
+		return tuple;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		release();
+		this.child.close();
+		this.open = false;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Inserts the tuple into a page with room.
+	 *
+	 * @return The RID of the inserted tuple.
+	 */
+	private RID insert(DataTuple tuple) throws QueryExecutionException
+	{
+		int needed = this.recordWidth;
+		for (int i = 0; i < tuple.getNumberOfFields(); i++) {
+			DataField field = tuple.getField(i);
+			if (!field.getBasicType().isFixLength() && !field.isNULL()) {
+				needed += field.getNumberOfBytes();
+			}
+		}
+
+		try {
+			while (true) {
+				boolean fresh = false;
+				if (this.page == null) {
+					int pageNumber = this.tableManager.findPageWithFreeSpace(needed);
+					if (pageNumber < 0) {
+						this.page = (TablePage) this.bufferPool.createNewPageAndPin(this.resourceId);
+						fresh = true;
+					}
+					else {
+						this.page = (TablePage) this.bufferPool.getPageAndPin(this.resourceId, pageNumber);
+					}
+					this.pageReusesSlots = true;
+				}
+
+				int pageNumber = this.page.getPageNumber();
+				int position = insertIntoPage(tuple);
+				if (position >= 0) {
+					if (this.pageReusesSlots) {
+						this.tableManager.recordFreeSpace(pageNumber, this.page.getFreeSpace());
+					}
+					return new RID(pageNumber, position);
+				}
+				// the free bytes may be spread over deleted slots, do not come back for this tuple
+				int freeSpace = this.pageReusesSlots ? this.page.getFreeSpace() : needed - 1;
+				this.tableManager.recordFreeSpace(pageNumber, Math.min(needed - 1, freeSpace));
+				release();
+				if (fresh) {
+					throw new QueryExecutionException("The tuple does not fit into an empty page.");
+				}
+			}
+		}
+		catch (PageFormatException pfex) {
+			throw new QueryExecutionException("The tuple could not be inserted.", pfex);
+		}
+		catch (PageExpiredException peex) {
+			throw new QueryExecutionException("A page expired while the tuple was inserted.", peex);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("A page could not be obtained from the buffer pool.", bpex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("A page could not be read.", ioex);
+		}
+	}
+
+	/**
+	 * Inserts the tuple into the current page, into the slot of a deleted record, if the page
+	 * supports that, or else behind its records.
+	 *
+	 * @return The position of the tuple's record, or -1, if the tuple did not fit.
+	 */
+	private int insertIntoPage(DataTuple tuple) throws PageFormatException, PageExpiredException
+	{
+		if (this.pageReusesSlots) {
+			try {
+				return this.page.insertTupleAndGetPosition(tuple);
+			}
+			catch (UnsupportedOperationException uoex) {
+				// the page implementation predates slot reuse and the free-space map
+				this.pageReusesSlots = false;
+			}
+		}
+		return this.page.insertTuple(tuple) ? this.page.getNumRecordsOnPage() - 1 : -1;
+	}
+
+	private void release()
+	{
+		if (this.page != null) {
+			this.bufferPool.unpinPage(this.resourceId, this.page.getPageNumber());
+			this.page = null;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.predicate.JoinPredicate;
+
+
+/**
+ * Joins the tuples of the outer child with the tuples the inner child produces correlated to them.
+ * For each outer tuple, the inner child is opened with it and drained, and each pair that
+ * qualifies for the join predicate, if there is one, is combined into an output tuple through the
+ * column maps.
+ * <p>
+ * The outer tuples are drawn in blocks. If the inner child is an
+ * {@link IndexCorrelatedLookupOperator}, each block is announced to it before the inner child is
+ * opened for the tuples of the block, so that the index is probed with the keys of the whole block
+ * in one sweep instead of one descent per outer tuple.
+ * <p>
+ * Both children are drawn from in batches, and {@link #nextBatch(DataTuple[])} joins the inner
+ * tuples of an outer tuple into the output batch in one loop.
+ */
+public class NestedLoopJoinOperatorImpl implements NestedLoopJoinOperator
+{
+	/**
+	 * The number of outer tuples drawn at a time, if not given otherwise.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 256;
+
+	private final PhysicalPlanOperator outerChild;
+
+	private final PhysicalPlanOperator innerChild;
+
+	private final JoinPredicate joinPredicate;
+
+	private final int[] columnMapOuterTuple;
+
+	private final int[] columnMapInnerTuple;
+
+	/**
+	 * The current block of outer tuples.
+	 */
+	private final DataTuple[] block;
+
+	private int blockLength;
+
+	/**
+	 * The position in the block of the next outer tuple.
+	 */
+	private int nextInBlock;
+
+	/**
+	 * The tuples drawn from the inner child for the current outer tuple.
+	 */
+	private final DataTuple[] innerBatch;
+
+	private int innerLength;
+
+	private int nextInner;
+
+	private DataTuple outerTuple;
+
+	private boolean innerOpen;
+
+	private boolean outerExhausted;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a nested loop join that draws the default number of outer tuples at a time.
+	 *
+	 * @param outerChild The operator producing the outer tuples.
+	 * @param innerChild The operator producing the inner tuples correlated to an outer tuple.
+	 * @param joinPredicate The predicate evaluated on pairs of outer and inner tuples, or null.
+	 * @param columnMapOuterTuple For each output column the column of the outer tuple, or -1.
+	 * @param columnMapInnerTuple For each output column the column of the inner tuple, or -1.
+	 */
+	public NestedLoopJoinOperatorImpl(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild,
+			JoinPredicate joinPredicate, int[] columnMapOuterTuple, int[] columnMapInnerTuple)
+	{
+		this(outerChild, innerChild, joinPredicate, columnMapOuterTuple, columnMapInnerTuple, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a nested loop join.
+	 *
+	 * @param outerChild The operator producing the outer tuples.
+	 * @param innerChild The operator producing the inner tuples correlated to an outer tuple.
+	 * @param joinPredicate The predicate evaluated on pairs of outer and inner tuples, or null.
+	 * @param columnMapOuterTuple For each output column the column of the outer tuple, or -1.
+	 * @param columnMapInnerTuple For each output column the column of the inner tuple, or -1.
+	 * @param blockSize The number of outer tuples drawn at a time. With 1, the join works tuple at
+	 *                  a time.
+	 */
+	public NestedLoopJoinOperatorImpl(PhysicalPlanOperator outerChild, PhysicalPlanOperator innerChild,
+			JoinPredicate joinPredicate, int[] columnMapOuterTuple, int[] columnMapInnerTuple, int blockSize)
+	{
+		if (columnMapOuterTuple.length != columnMapInnerTuple.length) {
+			throw new IllegalArgumentException("The column maps must describe the same output columns.");
+		}
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("The block must hold at least one tuple.");
+		}
+		this.outerChild = outerChild;
+		this.innerChild = innerChild;
+		this.joinPredicate = joinPredicate;
+		this.columnMapOuterTuple = columnMapOuterTuple;
+		this.columnMapInnerTuple = columnMapInnerTuple;
+		this.block = new DataTuple[blockSize];
+		this.innerBatch = new DataTuple[DEFAULT_BATCH_SIZE];
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public PhysicalPlanOperator getOuterChild()
+	{
+		return this.outerChild;
+	}
+
+	@Override
+	public PhysicalPlanOperator getInnerChild()
+	{
+		return this.innerChild;
+	}
+
+	@Override
+	public JoinPredicate getJoinPredicate()
+	{
+		return this.joinPredicate;
+	}
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.outerChild.open(correlatedTuple);
+		this.blockLength = 0;
+		this.nextInBlock = 0;
+		this.innerLength = 0;
+		this.nextInner = 0;
+		this.outerTuple = null;
+		this.innerOpen = false;
+		this.outerExhausted = false;
+		this.open = true;
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The nested loop join has not been opened.");
+		}
+		while (true) {
+			if (this.innerOpen) {
+				while (this.nextInner < this.innerLength) {
+					DataTuple innerTuple = this.innerBatch[this.nextInner];
+					this.innerBatch[this.nextInner++] = null;
+					if (this.joinPredicate == null || this.joinPredicate.evaluate(this.outerTuple, innerTuple)) {
+						return join(this.outerTuple, innerTuple);
+					}
+				}
+				if (nextInnerBatch()) {
+					continue;
+				}
+			}
+			if (this.nextInBlock >= this.blockLength && !nextBlock()) {
+				return null;
+			}
+			openInner();
+		}
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The nested loop join has not been opened.");
+		}
+		int num = 0;
+		while (num < batch.length) {
+			if (this.innerOpen) {
+				while (this.nextInner < this.innerLength && num < batch.length) {
+					DataTuple innerTuple = this.innerBatch[this.nextInner];
+					this.innerBatch[this.nextInner++] = null;
+					if (this.joinPredicate == null || this.joinPredicate.evaluate(this.outerTuple, innerTuple)) {
+						batch[num++] = join(this.outerTuple, innerTuple);
+					}
+				}
+				if (num == batch.length) {
+					break;
+				}
+				if (nextInnerBatch()) {
+					continue;
+				}
+			}
+			if (this.nextInBlock >= this.blockLength && !nextBlock()) {
+				break;
+			}
+			openInner();
+		}
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (this.innerOpen) {
+			this.innerChild.close();
+			this.innerOpen = false;
+		}
+		for (int i = this.nextInner; i < this.innerLength; i++) {
+			this.innerBatch[i] = null;
+		}
+		this.innerLength = 0;
+		this.nextInner = 0;
+		this.outerChild.close();
+		this.outerTuple = null;
+		this.open = false;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Draws the next block of outer tuples and announces it to an index lookup on the inner side.
+	 *
+	 * @return true, if the block holds tuples, false, if the outer child is exhausted.
+	 */
+	private boolean nextBlock() throws QueryExecutionException
+	{
+		this.blockLength = 0;
+		this.nextInBlock = 0;
+		if (!this.outerExhausted) {
+			this.blockLength = this.outerChild.nextBatch(this.block);
+			this.outerExhausted = this.blockLength == 0;
+		}
+		if (this.blockLength == 0) {
+			return false;
+		}
+		if (this.innerChild instanceof IndexCorrelatedLookupOperator) {
+			((IndexCorrelatedLookupOperator) this.innerChild).prepareLookups(this.block, this.blockLength);
+		}
+		return true;
+	}
+
+	/**
+	 * Opens the inner child for the next outer tuple of the block.
+	 */
+	private void openInner() throws QueryExecutionException
+	{
+		this.outerTuple = this.block[this.nextInBlock];
+		this.block[this.nextInBlock++] = null;
+		this.innerChild.open(this.outerTuple);
+		this.innerOpen = true;
+		this.innerLength = 0;
+		this.nextInner = 0;
+	}
+
+	/**
+	 * Draws the next batch of inner tuples for the current outer tuple, and closes the inner child
+	 * when it is exhausted.
+	 *
+	 * @return true, if the batch holds tuples, false, if the inner child has been closed.
+	 */
+	private boolean nextInnerBatch() throws QueryExecutionException
+	{
+		this.innerLength = this.innerChild.nextBatch(this.innerBatch);
+		this.nextInner = 0;
+		if (this.innerLength > 0) {
+			return true;
+		}
+		this.innerChild.close();
+		this.innerOpen = false;
+		return false;
+	}
+
+	private DataTuple join(DataTuple outer, DataTuple inner)
+	{
+		DataTuple tuple = new DataTuple(this.columnMapOuterTuple.length);
+		for (int i = 0; i < this.columnMapOuterTuple.length; i++) {
+			int outerIndex = this.columnMapOuterTuple[i];
+			if (outerIndex != -1) {
+				tuple.assignDataField(outer.getField(outerIndex), i);
+			}
+			else {
+				int innerIndex = this.columnMapInnerTuple[i];
+				if (innerIndex != -1) {
+					tuple.assignDataField(inner.getField(innerIndex), i);
+				}
+			}
+		}
+		return tuple;
+	}
+}
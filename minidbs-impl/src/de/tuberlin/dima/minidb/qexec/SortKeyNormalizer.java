@@ -0,0 +1,223 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.TimeField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+
+
+/**
+ * Encodes the sort columns of a tuple into a normalized key: a byte string whose unsigned
+ * lexicographic order is the order of the tuples by the sort columns. Sorts compare the keys byte
+ * by byte instead of dispatching to <tt>DataField.compareTo</tt> for every column.
+ * <p>
+ * Numbers are written big-endian with the sign bit flipped, and negative floating point numbers
+ * have all bits inverted. Strings are written as their characters, two bytes each, and end with
+ * three zero bytes; a zero character is written as two zero bytes and a one, so that no key of a
+ * string is the prefix of another one and the following columns compare correctly. The columns
+ * sorted in descending order have all their bytes inverted. As in <tt>compareTo</tt>,
+ * <tt>NULL</tt> comes before all other values of a column.
+ * <p>
+ * A normalizer reuses its buffer and is used by a single thread at a time.
+ */
+public final class SortKeyNormalizer
+{
+	private final int[] sortColumns;
+
+	private final boolean[] columnsAscending;
+
+	private final BasicType[] types;
+
+	private byte[] buffer;
+
+	private int length;
+
+
+	/**
+	 * Creates a normalizer for the given sort columns.
+	 *
+	 * @param columnTypes The types of the columns of the tuples.
+	 * @param sortColumns The columns to sort by, the primary sort column first.
+	 * @param columnsAscending For each sort column, whether it is sorted in ascending order.
+	 */
+	public SortKeyNormalizer(DataType[] columnTypes, int[] sortColumns, boolean[] columnsAscending)
+	{
+		if (sortColumns.length != columnsAscending.length) {
+			throw new IllegalArgumentException("Sort parameter arrays do not match in length.");
+		}
+		this.sortColumns = sortColumns;
+		this.columnsAscending = columnsAscending;
+		this.types = new BasicType[sortColumns.length];
+		for (int i = 0; i < sortColumns.length; i++) {
+			this.types[i] = columnTypes[sortColumns[i]].getBasicType();
+		}
+		this.buffer = new byte[64];
+	}
+
+	/**
+	 * Creates the normalized key of the tuple.
+	 *
+	 * @param tuple The tuple.
+	 * @return The key of its sort columns.
+	 */
+	public byte[] normalize(DataTuple tuple)
+	{
+		this.length = 0;
+		for (int i = 0; i < this.sortColumns.length; i++) {
+			int start = this.length;
+			append(this.types[i], tuple.getField(this.sortColumns[i]));
+			if (!this.columnsAscending[i]) {
+				for (int k = start; k < this.length; k++) {
+					this.buffer[k] = (byte) ~this.buffer[k];
+				}
+			}
+		}
+		return Arrays.copyOf(this.buffer, this.length);
+	}
+
+	/**
+	 * Compares two normalized keys as unsigned byte strings.
+	 *
+	 * @return A negative number, zero, or a positive number, if the first key comes before, is
+	 *         equal to, or comes after the second key.
+	 */
+	public static int compare(byte[] first, byte[] second)
+	{
+		int len = Math.min(first.length, second.length);
+		for (int i = 0; i < len; i++) {
+			int a = first[i] & 0xff;
+			int b = second[i] & 0xff;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return first.length - second.length;
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void append(BasicType type, DataField field)
+	{
+		switch (type) {
+		case SMALL_INT:
+			appendBits(((SmallIntField) field).getValue() ^ 0x8000, 2);
+			break;
+		case INT:
+			appendBits(((IntField) field).getValue() ^ Integer.MIN_VALUE, 4);
+			break;
+		case BIG_INT:
+			appendBits(((BigIntField) field).getValue() ^ Long.MIN_VALUE, 8);
+			break;
+		case FLOAT:
+			float f = ((FloatField) field).getValue();
+			if (Float.isNaN(f)) {
+				appendBits(0, 4);
+			}
+			else {
+				int bits = Float.floatToIntBits(f == 0.0f ? 0.0f : f);
+				appendBits(bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE, 4);
+			}
+			break;
+		case DOUBLE:
+			double d = ((DoubleField) field).getValue();
+			if (Double.isNaN(d)) {
+				appendBits(0, 8);
+			}
+			else {
+				long bits = Double.doubleToLongBits(d == 0.0 ? 0.0 : d);
+				appendBits(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE, 8);
+			}
+			break;
+		case CHAR:
+			appendString(((CharField) field).getValue());
+			break;
+		case VAR_CHAR:
+			appendString(((VarcharField) field).getValue());
+			break;
+		case DATE:
+			DateField date = (DateField) field;
+			if (date.isNULL()) {
+				appendBits(0, 4);
+			}
+			else {
+				appendBits(((date.getYear() << 16) | (date.getMonth() << 8) | date.getDay()) ^ Integer.MIN_VALUE, 4);
+			}
+			break;
+		case TIME:
+			TimeField time = (TimeField) field;
+			if (time.isNULL()) {
+				appendBits(0, 8);
+			}
+			else {
+				appendBits(((long) time.getTimeAsMillis() - time.getUTCOffset()) ^ Long.MIN_VALUE, 8);
+			}
+			break;
+		case TIMESTAMP:
+			// the binary encoding holds the milliseconds little-endian
+			ensureCapacity(8);
+			field.encodeBinary(this.buffer, this.length);
+			for (int lo = this.length, hi = this.length + 7; lo < hi; lo++, hi--) {
+				byte b = this.buffer[lo];
+				this.buffer[lo] = this.buffer[hi];
+				this.buffer[hi] = b;
+			}
+			this.buffer[this.length] ^= 0x80;
+			this.length += 8;
+			break;
+		case RID:
+			appendBits(((RID) field).getID() ^ Long.MIN_VALUE, 8);
+			break;
+		default:
+			throw new IllegalArgumentException("Columns of type " + type + " cannot be sorted.");
+		}
+	}
+
+	private void appendBits(long bits, int numBytes)
+	{
+		ensureCapacity(numBytes);
+		for (int shift = 8 * (numBytes - 1); shift >= 0; shift -= 8) {
+			this.buffer[this.length++] = (byte) (bits >>> shift);
+		}
+	}
+
+	private void appendString(String value)
+	{
+		if (value == null) {
+			ensureCapacity(1);
+			this.buffer[this.length++] = 0;
+			return;
+		}
+		ensureCapacity(4 + 3 * value.length());
+		this.buffer[this.length++] = 1;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			this.buffer[this.length++] = (byte) (c >>> 8);
+			this.buffer[this.length++] = (byte) c;
+			if (c == 0) {
+				this.buffer[this.length++] = 1;
+			}
+		}
+		this.buffer[this.length++] = 0;
+		this.buffer[this.length++] = 0;
+		this.buffer[this.length++] = 0;
+	}
+
+	private void ensureCapacity(int numBytes)
+	{
+		if (this.length + numBytes > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(2 * this.buffer.length, this.length + numBytes));
+		}
+	}
+}
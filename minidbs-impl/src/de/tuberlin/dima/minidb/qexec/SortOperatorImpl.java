@@ -0,0 +1,676 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.qexec.heap.ExternalTupleSequenceIterator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeapException;
+
+
+/**
+ * Sorts the tuples of its child with an external merge sort whose runs are generated on several
+ * threads. Each thread has its own grant of the query heap. When the operator is opened, it
+ * reads the child and fills the sort array of one grant after the other. Only the first grant is
+ * waited for; a further grant is taken only if the heap can give it at once, since the sort would
+ * otherwise wait for memory that it holds itself. Without it, the reading cycles over the grants
+ * it holds. A full array is handed
+ * to a thread that computes the normalized keys of its tuples and sorts them, while the child
+ * is read into the next grant. Only when the reading comes back to a grant whose array still
+ * holds a run, the input does not fit into the grants, and from then on the threads also write
+ * their runs to temp space. Input that fits into the grants is never written.
+ * <p>
+ * The runs in temp space and the runs left in the sort arrays are merged by a tournament tree
+ * of losers. Each inner node of the tree holds the run that lost the comparison at the node, so
+ * that producing a tuple takes one comparison per level of the tree. All comparisons are on
+ * normalized binary keys, see {@link SortKeyNormalizer}.
+ * <p>
+ * With a degree of parallelism of one, the runs are sorted and written by the thread that opens
+ * the operator, and the operator sorts like a serial external merge sort.
+ */
+public class SortOperatorImpl implements SortOperator
+{
+	/**
+	 * The number of tuples below which a range of a run is sorted by insertion.
+	 */
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final PhysicalPlanOperator child;
+
+	private final QueryHeap queryHeap;
+
+	private final DataType[] columnTypes;
+
+	private final int estimatedCardinality;
+
+	private final int[] sortColumns;
+
+	private final boolean[] columnsAscending;
+
+	private final int degreeOfParallelism;
+
+	/**
+	 * The grants in which the runs are generated, reserved as the input needs them. Grants that
+	 * the heap could not give at once stay null.
+	 */
+	private RunGenerator[] generators;
+
+	private LoserTree merge;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a sort that generates its runs on the thread that opens it.
+	 *
+	 * @param child The operator producing the tuples to sort.
+	 * @param queryHeap The heap from which the memory for the runs and the temp space is obtained.
+	 * @param columnTypes The types of the columns of the tuples.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The columns to sort by, the primary sort column first.
+	 * @param columnsAscending For each sort column, whether it is sorted in ascending order.
+	 */
+	public SortOperatorImpl(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending)
+	{
+		this(child, queryHeap, columnTypes, estimatedCardinality, sortColumns, columnsAscending, 1);
+	}
+
+	/**
+	 * Creates a sort that generates its runs on the given number of threads.
+	 *
+	 * @param child The operator producing the tuples to sort.
+	 * @param queryHeap The heap from which the memory for the runs and the temp space is obtained.
+	 * @param columnTypes The types of the columns of the tuples.
+	 * @param estimatedCardinality The estimated number of tuples to sort.
+	 * @param sortColumns The columns to sort by, the primary sort column first.
+	 * @param columnsAscending For each sort column, whether it is sorted in ascending order.
+	 * @param degreeOfParallelism The number of threads, and heap grants, that generate the runs.
+	 */
+	public SortOperatorImpl(PhysicalPlanOperator child, QueryHeap queryHeap, DataType[] columnTypes,
+			int estimatedCardinality, int[] sortColumns, boolean[] columnsAscending, int degreeOfParallelism)
+	{
+		if (sortColumns.length != columnsAscending.length) {
+			throw new IllegalArgumentException("Sort parameter arrays do not match in length.");
+		}
+		if (degreeOfParallelism < 1) {
+			throw new IllegalArgumentException("The degree of parallelism must be at least 1.");
+		}
+		this.child = child;
+		this.queryHeap = queryHeap;
+		this.columnTypes = columnTypes;
+		this.estimatedCardinality = estimatedCardinality;
+		this.sortColumns = sortColumns;
+		this.columnsAscending = columnsAscending;
+		this.degreeOfParallelism = degreeOfParallelism;
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		if (this.open) {
+			close();
+		}
+		this.generators = new RunGenerator[this.degreeOfParallelism];
+		this.open = true;
+		try {
+			generateRuns(correlatedTuple);
+			this.merge = new LoserTree(collectRuns());
+		}
+		catch (QueryExecutionException qeex) {
+			close();
+			throw qeex;
+		}
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The sort has not been opened.");
+		}
+		return this.merge.next();
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The sort has not been opened.");
+		}
+		int num = 0;
+		DataTuple tuple;
+		while (num < batch.length && (tuple = this.merge.next()) != null) {
+			batch[num++] = tuple;
+		}
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		if (!this.open) {
+			return;
+		}
+		this.open = false;
+		this.merge = null;
+		for (RunGenerator generator : this.generators) {
+			if (generator != null) {
+				generator.awaitQuietly();
+				this.queryHeap.releaseSortHeap(generator.heapId);
+				generator.tuples = null;
+				generator.keys = null;
+			}
+		}
+		this.generators = null;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reads the child into the grants and sorts the runs. Runs are written to temp space once the
+	 * input turns out not to fit into the grants.
+	 */
+	private void generateRuns(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		int current = 0;
+		int numGrants = this.generators.length;
+		RunGenerator generator = reserve(0, true);
+		boolean spilling = false;
+
+		this.child.open(correlatedTuple);
+		try {
+			DataTuple[] batch = new DataTuple[DEFAULT_BATCH_SIZE];
+			int num;
+			while ((num = this.child.nextBatch(batch)) > 0) {
+				for (int i = 0; i < num; i++) {
+					if (generator.numTuples == generator.capacity) {
+						generator.dispatch(spilling, this.degreeOfParallelism > 1);
+						current = (current + 1) % numGrants;
+						if (this.generators[current] == null && reserve(current, false) == null) {
+							// the heap has no further grant at once, so the grants held are all there is
+							numGrants = current;
+							current = 0;
+						}
+						generator = this.generators[current];
+						generator.await();
+						if (generator.numTuples > 0) {
+							// the reading came back to a run that is still kept, so the input does not fit
+							spilling = true;
+							generator.write();
+						}
+					}
+					generator.tuples[generator.numTuples++] = batch[i];
+					batch[i] = null;
+				}
+			}
+		}
+		finally {
+			this.child.close();
+		}
+
+		// the last run is sorted in place, the others are sorted or written already
+		generator.sort();
+		for (RunGenerator other : this.generators) {
+			if (other != null) {
+				other.await();
+			}
+		}
+	}
+
+	/**
+	 * Reserves the grant for the run generator with the given index.
+	 *
+	 * @param index The index of the run generator.
+	 * @param wait Whether to wait for the heap to have the space. Only the first grant may be
+	 *             waited for, while the sort holds no other.
+	 * @return The run generator, or null, if the heap could not give the grant at once.
+	 */
+	private RunGenerator reserve(int index, boolean wait) throws QueryExecutionException
+	{
+		int cardinality = Math.max(this.estimatedCardinality, 0) / this.degreeOfParallelism;
+		try {
+			int heapId = wait ? this.queryHeap.reserveSortHeap(this.columnTypes, cardinality)
+					: this.queryHeap.tryReserveSortHeap(this.columnTypes, cardinality);
+			if (heapId == -1) {
+				return null;
+			}
+			RunGenerator generator = new RunGenerator(index, heapId);
+			this.generators[index] = generator;
+			generator.tuples = this.queryHeap.getSortArray(heapId);
+			generator.capacity = Math.min(generator.tuples.length, this.queryHeap.getMaximalTuplesForInternalSort(heapId));
+			generator.keys = new byte[generator.capacity][];
+			return generator;
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("No memory for sorting could be obtained from the query heap.", qhex);
+		}
+	}
+
+	/**
+	 * Gathers the runs written to temp space and the runs kept in the sort arrays.
+	 */
+	private List<Run> collectRuns() throws QueryExecutionException
+	{
+		List<Run> runs = new ArrayList<Run>();
+		SortKeyNormalizer normalizer = new SortKeyNormalizer(this.columnTypes, this.sortColumns, this.columnsAscending);
+		try {
+			for (RunGenerator generator : this.generators) {
+				if (generator == null) {
+					continue;
+				}
+				if (generator.written) {
+					for (ExternalTupleSequenceIterator iterator : this.queryHeap.getExternalSortedLists(generator.heapId)) {
+						runs.add(new ExternalRun(iterator, normalizer));
+					}
+				}
+				if (generator.numTuples > 0) {
+					runs.add(new MemoryRun(generator.tuples, generator.keys, generator.numTuples));
+				}
+			}
+			for (Run run : runs) {
+				run.advance();
+			}
+		}
+		catch (QueryHeapException qhex) {
+			throw new QueryExecutionException("The sorted runs could not be read from temp space.", qhex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("The sorted runs could not be read from temp space.", ioex);
+		}
+		return runs;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A grant of the query heap in which runs are collected, and the thread sorting and writing them.
+	 */
+	private final class RunGenerator
+	{
+		private final int index;
+
+		private final int heapId;
+
+		private final SortKeyNormalizer normalizer;
+
+		private DataTuple[] tuples;
+
+		private byte[][] keys;
+
+		private int capacity;
+
+		private int numTuples;
+
+		/**
+		 * Whether any run of this grant has been written to temp space.
+		 */
+		private boolean written;
+
+		private Thread thread;
+
+		private volatile Throwable error;
+
+
+		RunGenerator(int index, int heapId)
+		{
+			this.index = index;
+			this.heapId = heapId;
+			this.normalizer = new SortKeyNormalizer(SortOperatorImpl.this.columnTypes,
+					SortOperatorImpl.this.sortColumns, SortOperatorImpl.this.columnsAscending);
+		}
+
+		/**
+		 * Sorts the collected run and writes it to temp space, if requested.
+		 *
+		 * @param write Whether to write the run to temp space.
+		 * @param async Whether to do so on a thread of its own.
+		 */
+		void dispatch(final boolean write, boolean async) throws QueryExecutionException
+		{
+			if (!async) {
+				sort();
+				if (write) {
+					write();
+				}
+				return;
+			}
+			this.error = null;
+			this.thread = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					try {
+						sort();
+						if (write) {
+							write();
+						}
+					}
+					catch (Throwable t) {
+						RunGenerator.this.error = t;
+					}
+				}
+			}, "Sort run generator " + this.index);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		/**
+		 * Waits for the thread sorting and writing the current run.
+		 */
+		void await() throws QueryExecutionException
+		{
+			awaitQuietly();
+			Throwable t = this.error;
+			if (t != null) {
+				this.error = null;
+				if (t instanceof QueryExecutionException) {
+					throw (QueryExecutionException) t;
+				}
+				throw new QueryExecutionException("A sorted run could not be generated.", t);
+			}
+		}
+
+		void awaitQuietly()
+		{
+			if (this.thread == null) {
+				return;
+			}
+			boolean interrupted = false;
+			while (true) {
+				try {
+					this.thread.join();
+					break;
+				}
+				catch (InterruptedException iex) {
+					interrupted = true;
+				}
+			}
+			this.thread = null;
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Computes the keys of the collected tuples and sorts the tuples by them.
+		 */
+		void sort()
+		{
+			for (int i = 0; i < this.numTuples; i++) {
+				this.keys[i] = this.normalizer.normalize(this.tuples[i]);
+			}
+			quickSort(this.keys, this.tuples, 0, this.numTuples - 1);
+		}
+
+		/**
+		 * Writes the sorted run to temp space and empties the sort array.
+		 */
+		void write() throws QueryExecutionException
+		{
+			try {
+				SortOperatorImpl.this.queryHeap.writeTupleSequencetoTemp(this.heapId, this.tuples, this.numTuples);
+			}
+			catch (QueryHeapException qhex) {
+				throw new QueryExecutionException("A sorted run could not be written to temp space.", qhex);
+			}
+			catch (IOException ioex) {
+				throw new QueryExecutionException("A sorted run could not be written to temp space.", ioex);
+			}
+			finally {
+				Arrays.fill(this.tuples, 0, this.numTuples, null);
+				Arrays.fill(this.keys, 0, this.numTuples, null);
+				this.numTuples = 0;
+			}
+			this.written = true;
+		}
+	}
+
+	/**
+	 * Sorts the tuples in the given range by their keys, moving keys and tuples alike.
+	 */
+	private static void quickSort(byte[][] keys, DataTuple[] tuples, int lo, int hi)
+	{
+		while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+			// median of three as the pivot
+			int mid = (lo + hi) >>> 1;
+			if (SortKeyNormalizer.compare(keys[mid], keys[lo]) < 0) {
+				swap(keys, tuples, mid, lo);
+			}
+			if (SortKeyNormalizer.compare(keys[hi], keys[lo]) < 0) {
+				swap(keys, tuples, hi, lo);
+			}
+			if (SortKeyNormalizer.compare(keys[hi], keys[mid]) < 0) {
+				swap(keys, tuples, hi, mid);
+			}
+			byte[] pivot = keys[mid];
+
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (SortKeyNormalizer.compare(keys[i], pivot) < 0) {
+					i++;
+				}
+				while (SortKeyNormalizer.compare(keys[j], pivot) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, tuples, i++, j--);
+				}
+			}
+			// recurse into the smaller part, loop on the larger one
+			if (j - lo < hi - i) {
+				quickSort(keys, tuples, lo, j);
+				lo = i;
+			}
+			else {
+				quickSort(keys, tuples, i, hi);
+				hi = j;
+			}
+		}
+		for (int i = lo + 1; i <= hi; i++) {
+			byte[] key = keys[i];
+			DataTuple tuple = tuples[i];
+			int j = i - 1;
+			while (j >= lo && SortKeyNormalizer.compare(keys[j], key) > 0) {
+				keys[j + 1] = keys[j];
+				tuples[j + 1] = tuples[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			tuples[j + 1] = tuple;
+		}
+	}
+
+	private static void swap(byte[][] keys, DataTuple[] tuples, int i, int j)
+	{
+		byte[] key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		DataTuple tuple = tuples[i];
+		tuples[i] = tuples[j];
+		tuples[j] = tuple;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A sorted run in the merge, positioned at its current tuple.
+	 */
+	private static abstract class Run
+	{
+		DataTuple tuple;
+
+		byte[] key;
+
+		/**
+		 * Moves to the next tuple of the run, or sets the tuple to null, if the run is exhausted.
+		 */
+		abstract void advance() throws QueryExecutionException;
+	}
+
+	/**
+	 * A run left in the sort array of a grant, with its keys.
+	 */
+	private static final class MemoryRun extends Run
+	{
+		private final DataTuple[] tuples;
+
+		private final byte[][] keys;
+
+		private final int numTuples;
+
+		private int next;
+
+
+		MemoryRun(DataTuple[] tuples, byte[][] keys, int numTuples)
+		{
+			this.tuples = tuples;
+			this.keys = keys;
+			this.numTuples = numTuples;
+		}
+
+		@Override
+		void advance()
+		{
+			if (this.next < this.numTuples) {
+				this.tuple = this.tuples[this.next];
+				this.key = this.keys[this.next];
+				this.tuples[this.next] = null;
+				this.keys[this.next++] = null;
+			}
+			else {
+				this.tuple = null;
+				this.key = null;
+			}
+		}
+	}
+
+	/**
+	 * A run written to temp space. The keys of its tuples are computed as they are read.
+	 */
+	private static final class ExternalRun extends Run
+	{
+		private final ExternalTupleSequenceIterator iterator;
+
+		private final SortKeyNormalizer normalizer;
+
+
+		ExternalRun(ExternalTupleSequenceIterator iterator, SortKeyNormalizer normalizer)
+		{
+			this.iterator = iterator;
+			this.normalizer = normalizer;
+		}
+
+		@Override
+		void advance() throws QueryExecutionException
+		{
+			try {
+				if (this.iterator.hasNext()) {
+					this.tuple = this.iterator.next();
+					this.key = this.normalizer.normalize(this.tuple);
+				}
+				else {
+					this.tuple = null;
+					this.key = null;
+				}
+			}
+			catch (QueryHeapException qhex) {
+				throw new QueryExecutionException("A sorted run could not be read from temp space.", qhex);
+			}
+			catch (IOException ioex) {
+				throw new QueryExecutionException("A sorted run could not be read from temp space.", ioex);
+			}
+		}
+	}
+
+	/**
+	 * A tournament tree over the runs. The leaves are the runs, each inner node holds the run that
+	 * lost the comparison at the node, and the root holds the overall winner. After the winner has
+	 * produced its tuple, only the path from its leaf to the root is replayed.
+	 */
+	private static final class LoserTree
+	{
+		private final Run[] runs;
+
+		/**
+		 * The losers at the inner nodes 1 to k-1, and the winner at index 0.
+		 */
+		private final int[] tree;
+
+
+		LoserTree(List<Run> runs)
+		{
+			this.runs = runs.toArray(new Run[runs.size()]);
+			this.tree = new int[Math.max(this.runs.length, 1)];
+			Arrays.fill(this.tree, -1);
+			for (int i = this.runs.length - 1; i >= 0; i--) {
+				replay(i);
+			}
+		}
+
+		/**
+		 * Produces the next tuple in the order of all runs.
+		 *
+		 * @return The tuple, or null, if all runs are exhausted.
+		 */
+		DataTuple next() throws QueryExecutionException
+		{
+			if (this.runs.length == 0) {
+				return null;
+			}
+			int winner = this.tree[0];
+			Run run = this.runs[winner];
+			DataTuple tuple = run.tuple;
+			if (tuple != null) {
+				run.advance();
+				replay(winner);
+			}
+			return tuple;
+		}
+
+		/**
+		 * Plays the current tuple of the run up to the root. While the tree is built, a node that
+		 * is still empty keeps the run and ends the game.
+		 */
+		private void replay(int index)
+		{
+			int winner = index;
+			for (int node = (index + this.runs.length) >>> 1; node > 0; node >>>= 1) {
+				int loser = this.tree[node];
+				if (loser == -1) {
+					this.tree[node] = winner;
+					return;
+				}
+				if (beats(loser, winner)) {
+					this.tree[node] = winner;
+					winner = loser;
+				}
+			}
+			this.tree[0] = winner;
+		}
+
+		/**
+		 * Checks whether the first run comes before the second one. Exhausted runs come last.
+		 */
+		private boolean beats(int first, int second)
+		{
+			Run a = this.runs[first];
+			Run b = this.runs[second];
+			if (a.tuple == null) {
+				return false;
+			}
+			if (b.tuple == null) {
+				return true;
+			}
+			int cmp = SortKeyNormalizer.compare(a.key, b.key);
+			return cmp < 0 || (cmp == 0 && first < second);
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.io.IOException;
+
+import de.tuberlin.dima.minidb.Constants;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.cache.AccessHint;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.ColumnBatch;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Scans the data pages of a table in order through the buffer pool, producing the tuples that
+ * qualify for the predicates. The current page is pinned while its tuples are produced. Pages are
+ * requested and prefetched as {@link AccessHint#SEQUENTIAL_SCAN}.
+ * <p>
+ * The predicates are evaluated on the binary records of a page. Only the produced columns of the
+ * qualifying records are decoded, into a {@link ColumnBatch}, and tuples are created from the batch
+ * when they are returned. {@link #nextBatch(DataTuple[])} creates the tuples of a whole batch in
+ * one loop. Pages that do not support decoding their records into a batch fill it from their
+ * tuples, see {@link ColumnBatch#readTuples(TablePage, LowLevelPredicate[], int, int)}.
+ * <p>
+ * The operator prefetches a window of pages ahead of the page it works on. With a fixed window,
+ * that window keeps the length it was created with. With an adaptive window, the length starts
+ * there and follows the consumer:
+ * <ul>
+ *   <li>If a page was not loaded when the scan reached it, the consumer has caught up with the
+ *       I/O, and the window is doubled.</li>
+ *   <li>If, for a whole window of pages, no page had to be waited for and no read was outstanding
+ *       any more, all prefetched pages sit in the cache waiting for a slow consumer, and the
+ *       window is shrunk by a quarter.</li>
+ * </ul>
+ * The window never exceeds {@link #MAX_WINDOW_LENGTH}, nor the pages already prefetched plus half
+ * of the frames the buffer pool has free, so that a scan does not starve the buffer pool.
+ * <p>
+ * A scan that is part of a parallel plan scans only the ranges of pages it claims from a
+ * {@link PageRangeDispenser} it shares with the other scans of the table. It claims the next range
+ * when it has scanned the last one, and the window stops at the end of the range.
+ */
+public class TableScanOperatorImpl implements TableScanOperator
+{
+	/**
+	 * The maximal number of pages an adaptive window prefetches ahead. Matches the number of frames
+	 * the page cache keeps for a sequential scan; pages prefetched beyond would be evicted before
+	 * the scan reaches them.
+	 */
+	public static final int MAX_WINDOW_LENGTH = 2 * Constants.DEFAULT_PREFETCHING_LENGTH;
+
+	/**
+	 * The time a page request may take before it counts as having waited for the I/O.
+	 */
+	private static final long STALL_NANOS = 20000;
+
+	/**
+	 * The number of windows without waiting after which the minimal window length is halved.
+	 */
+	private static final int FLOOR_DECAY_WINDOWS = 8;
+
+	private final BufferPoolManager bufferPool;
+
+	private final TableResourceManager tableManager;
+
+	private final int resourceId;
+
+	/**
+	 * The batch the records of the current page are decoded into.
+	 */
+	private final ColumnBatch batch;
+
+	/**
+	 * For each produced column its column in the batch.
+	 */
+	private final int[] outputColumns;
+
+	private final LowLevelPredicate[] predicates;
+
+	private final int initialWindowLength;
+
+	private final boolean adaptive;
+
+	/**
+	 * The dispenser of the page ranges to scan, or null, if all pages of the table are scanned.
+	 */
+	private final PageRangeDispenser dispenser;
+
+	private final int[] range = new int[2];
+
+	private int windowLength;
+
+	/**
+	 * The length the window does not shrink below, one more than the last window that was too small.
+	 */
+	private int minWindowLength;
+
+	/**
+	 * Pages read in sequence without waiting and without outstanding reads.
+	 */
+	private int calmPages;
+
+	private int currentPageNumber;
+
+	private int lastPageNumber;
+
+	/**
+	 * The last page that has been prefetched.
+	 */
+	private int prefetchedUpTo;
+
+	private boolean pinned;
+
+	private TablePage page;
+
+	/**
+	 * Whether the current page decodes its records into the batch itself, as far as is known.
+	 */
+	private boolean pageReadsColumns;
+
+	/**
+	 * The position of the next record of the current page to decode.
+	 */
+	private int nextPosition;
+
+	private int numRecords;
+
+	/**
+	 * The index of the next row in the selection vector of the batch to produce.
+	 */
+	private int nextSelected;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a table scan with an adaptive prefetch window.
+	 *
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param tableManager The manager of the scanned table.
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param producedColumnIndexes The columns of the table that are produced, in the order they are produced.
+	 * @param predicates The predicates the produced tuples must satisfy, or null.
+	 * @param prefetchWindowLength The initial number of pages to prefetch ahead.
+	 */
+	public TableScanOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicates, int prefetchWindowLength)
+	{
+		this(bufferPool, tableManager, resourceId, producedColumnIndexes, predicates, prefetchWindowLength, true, null);
+	}
+
+	/**
+	 * Creates a table scan with an adaptive prefetch window that scans the ranges of pages it
+	 * claims from a dispenser.
+	 *
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param tableManager The manager of the scanned table.
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param producedColumnIndexes The columns of the table that are produced, in the order they are produced.
+	 * @param predicates The predicates the produced tuples must satisfy, or null.
+	 * @param prefetchWindowLength The initial number of pages to prefetch ahead.
+	 * @param dispenser The dispenser of the page ranges, shared with the other scans of the table.
+	 */
+	public TableScanOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicates, int prefetchWindowLength, PageRangeDispenser dispenser)
+	{
+		this(bufferPool, tableManager, resourceId, producedColumnIndexes, predicates, prefetchWindowLength, true, dispenser);
+	}
+
+	/**
+	 * Creates a table scan.
+	 *
+	 * @param bufferPool The buffer pool to get the pages from.
+	 * @param tableManager The manager of the scanned table.
+	 * @param resourceId The id of the table at the buffer pool.
+	 * @param producedColumnIndexes The columns of the table that are produced, in the order they are produced.
+	 * @param predicates The predicates the produced tuples must satisfy, or null.
+	 * @param prefetchWindowLength The (initial) number of pages to prefetch ahead.
+	 * @param adaptive True, if the prefetch window adapts to the consumer, false, if it is fixed.
+	 */
+	public TableScanOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicates, int prefetchWindowLength, boolean adaptive)
+	{
+		this(bufferPool, tableManager, resourceId, producedColumnIndexes, predicates, prefetchWindowLength, adaptive, null);
+	}
+
+	private TableScanOperatorImpl(BufferPoolManager bufferPool, TableResourceManager tableManager, int resourceId,
+			int[] producedColumnIndexes, LowLevelPredicate[] predicates, int prefetchWindowLength, boolean adaptive,
+			PageRangeDispenser dispenser)
+	{
+		this.bufferPool = bufferPool;
+		this.tableManager = tableManager;
+		this.resourceId = resourceId;
+		this.predicates = predicates == null || predicates.length == 0 ? null : predicates;
+		this.initialWindowLength = Math.max(0, prefetchWindowLength);
+		this.adaptive = adaptive;
+		this.dispenser = dispenser;
+
+		int numTableColumns = tableManager.getSchema().getNumberOfColumns();
+		if (numTableColumns > 64) {
+			throw new IllegalArgumentException("A table scan supports at most 64 columns.");
+		}
+
+		long bitmap = 0;
+		for (int column : producedColumnIndexes) {
+			bitmap |= columnBit(column, numTableColumns);
+		}
+		if (this.predicates != null) {
+			// the predicates are evaluated on the records, the batch does not need their columns
+			for (LowLevelPredicate predicate : this.predicates) {
+				columnBit(predicate.getColumnIndex(), numTableColumns);
+			}
+		}
+		this.batch = new ColumnBatch(tableManager.getSchema(), bitmap, ColumnBatch.DEFAULT_CAPACITY);
+
+		// the batch holds the columns in table order
+		this.outputColumns = new int[producedColumnIndexes.length];
+		for (int i = 0; i < this.outputColumns.length; i++) {
+			this.outputColumns[i] = Long.bitCount(bitmap & ((1L << producedColumnIndexes[i]) - 1));
+		}
+	}
+
+	private static long columnBit(int column, int numTableColumns)
+	{
+		if (column < 0 || column >= numTableColumns) {
+			throw new IllegalArgumentException("Column " + column + " does not exist in the table.");
+		}
+		return 1L << column;
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.currentPageNumber = this.tableManager.getFirstDataPageNumber() - 1;
+		if (this.dispenser == null) {
+			this.lastPageNumber = this.tableManager.getLastDataPageNumber();
+		}
+		else {
+			// the first range is claimed with the first tuple
+			this.dispenser.open();
+			this.lastPageNumber = this.currentPageNumber;
+		}
+		this.prefetchedUpTo = this.currentPageNumber;
+		this.windowLength = this.initialWindowLength;
+		this.minWindowLength = 1;
+		this.calmPages = 0;
+		this.pinned = false;
+		this.page = null;
+		this.batch.reset(null, 0, 0, 0);
+		this.nextSelected = 0;
+		this.open = true;
+		prefetch();
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The table scan has not been opened.");
+		}
+		try {
+			while (true) {
+				if (this.nextSelected < this.batch.getNumberOfSelectedRows()) {
+					return produce(this.batch.getSelection()[this.nextSelected++]);
+				}
+				if (this.page != null && this.nextPosition < this.numRecords) {
+					decode();
+					continue;
+				}
+				if (this.currentPageNumber >= this.lastPageNumber && !nextRange()) {
+					release();
+					return null;
+				}
+				advance();
+			}
+		}
+		catch (PageTupleAccessException ptaex) {
+			throw new QueryExecutionException("Tuple of page " + this.currentPageNumber + " could not be accessed.", ptaex);
+		}
+		catch (PageExpiredException peex) {
+			throw new QueryExecutionException("Page " + this.currentPageNumber + " expired while being scanned.", peex);
+		}
+	}
+
+	/**
+	 * Fills the batch from the selection vectors of the pages, moving to the next page within the
+	 * call until the batch is full or the table is exhausted.
+	 */
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The table scan has not been opened.");
+		}
+		int num = 0;
+		try {
+			while (num < batch.length) {
+				int selected = this.batch.getNumberOfSelectedRows();
+				if (this.nextSelected < selected) {
+					int[] selection = this.batch.getSelection();
+					int end = Math.min(selected, this.nextSelected + batch.length - num);
+					for (int i = this.nextSelected; i < end; i++) {
+						batch[num++] = produce(selection[i]);
+					}
+					this.nextSelected = end;
+					continue;
+				}
+				if (this.page != null && this.nextPosition < this.numRecords) {
+					decode();
+					continue;
+				}
+				if (this.currentPageNumber >= this.lastPageNumber && !nextRange()) {
+					release();
+					break;
+				}
+				advance();
+			}
+		}
+		catch (PageTupleAccessException ptaex) {
+			throw new QueryExecutionException("Tuple of page " + this.currentPageNumber + " could not be accessed.", ptaex);
+		}
+		catch (PageExpiredException peex) {
+			throw new QueryExecutionException("Page " + this.currentPageNumber + " expired while being scanned.", peex);
+		}
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		release();
+		this.open = false;
+	}
+
+	/**
+	 * Gets the current length of the prefetch window.
+	 *
+	 * @return The number of pages prefetched ahead of the current page.
+	 */
+	public int getPrefetchWindowLength()
+	{
+		return this.windowLength;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Claims the next range of pages from the dispenser, if there is one, and prefetches its first
+	 * window.
+	 *
+	 * @return true, if a range was claimed, false, if the scan is exhausted.
+	 */
+	private boolean nextRange() throws QueryExecutionException
+	{
+		if (this.dispenser == null) {
+			return false;
+		}
+		release();
+		if (!this.dispenser.claim(this.range)) {
+			return false;
+		}
+		this.currentPageNumber = this.range[0] - 1;
+		this.lastPageNumber = this.range[1];
+		this.prefetchedUpTo = this.currentPageNumber;
+		prefetch();
+		return true;
+	}
+
+	/**
+	 * Moves to the next page, pins it and adapts the window.
+	 */
+	private void advance() throws QueryExecutionException, PageTupleAccessException, PageExpiredException
+	{
+		int previous = this.currentPageNumber;
+		int pageNumber = previous + 1;
+		TablePage page;
+		long start = System.nanoTime();
+		try {
+			page = (TablePage) (this.pinned
+				? this.bufferPool.unpinAndGetPageAndPin(this.resourceId, previous, pageNumber, AccessHint.SEQUENTIAL_SCAN)
+				: this.bufferPool.getPageAndPin(this.resourceId, pageNumber, AccessHint.SEQUENTIAL_SCAN));
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Page " + pageNumber + " could not be obtained from the buffer pool.", bpex);
+		}
+		catch (IOException ioex) {
+			throw new QueryExecutionException("Page " + pageNumber + " could not be read.", ioex);
+		}
+		long waited = System.nanoTime() - start;
+		this.currentPageNumber = pageNumber;
+		this.pinned = true;
+		this.page = page;
+		this.pageReadsColumns = true;
+		this.nextPosition = 0;
+		this.numRecords = page.getNumRecordsOnPage();
+
+		if (this.adaptive) {
+			adapt(waited > STALL_NANOS);
+		}
+		prefetch();
+	}
+
+	private void adapt(boolean stalled) throws QueryExecutionException
+	{
+		try {
+			if (stalled) {
+				// the window was too small, do not shrink to that length again soon
+				this.minWindowLength = Math.min(MAX_WINDOW_LENGTH, this.windowLength + 1);
+				this.windowLength = Math.max(1, 2 * this.windowLength);
+				this.calmPages = 0;
+			}
+			else if (this.bufferPool.getNumberOfPendingReads(this.resourceId) == 0) {
+				this.calmPages++;
+				if (this.windowLength > this.minWindowLength && this.calmPages >= this.windowLength) {
+					this.windowLength -= Math.max(1, (this.windowLength - this.minWindowLength) / 4);
+					this.calmPages = 0;
+				}
+				else if (this.calmPages >= FLOOR_DECAY_WINDOWS * this.windowLength) {
+					// the consumer may have become slower
+					this.minWindowLength = Math.max(1, this.minWindowLength / 2);
+					this.calmPages = 0;
+				}
+			}
+			else {
+				this.calmPages = 0;
+			}
+
+			int ahead = Math.max(0, this.prefetchedUpTo - this.currentPageNumber);
+			long free = this.bufferPool.getNumberOfFreeFrames(this.resourceId);
+			int limit = (int) Math.max(1, Math.min(MAX_WINDOW_LENGTH, ahead + free / 2));
+			this.windowLength = Math.min(this.windowLength, limit);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("The buffer pool could not be queried.", bpex);
+		}
+	}
+
+	/**
+	 * Prefetches the pages of the window that have not been prefetched yet. Requests are issued in
+	 * batches of at least a quarter window, so that they reach the buffer pool as runs.
+	 */
+	private void prefetch() throws QueryExecutionException
+	{
+		int end = Math.min(this.lastPageNumber, this.currentPageNumber + this.windowLength);
+		int start = Math.max(this.prefetchedUpTo, this.currentPageNumber) + 1;
+		if (end < start) {
+			return;
+		}
+		if (end - start + 1 < this.windowLength / 4 && start > this.currentPageNumber + 1 && end < this.lastPageNumber) {
+			// enough pages are still ahead, wait until the batch is worth a request
+			return;
+		}
+		try {
+			this.bufferPool.prefetchPages(this.resourceId, start, end, AccessHint.SEQUENTIAL_SCAN);
+		}
+		catch (BufferPoolException bpex) {
+			throw new QueryExecutionException("Pages " + start + " to " + end + " could not be prefetched.", bpex);
+		}
+		this.prefetchedUpTo = end;
+	}
+
+	/**
+	 * Decodes the qualifying ones of the next records of the current page into the batch.
+	 */
+	private void decode() throws PageTupleAccessException, PageExpiredException
+	{
+		int end = Math.min(this.numRecords, this.nextPosition + this.batch.getCapacity());
+		if (this.pageReadsColumns) {
+			try {
+				if (this.predicates == null) {
+					this.page.readColumns(this.nextPosition, end, this.batch);
+				}
+				else {
+					this.page.readColumns(this.predicates, this.nextPosition, end, this.batch);
+				}
+			}
+			catch (UnsupportedOperationException uoex) {
+				// the page implementation predates column batches
+				this.pageReadsColumns = false;
+			}
+		}
+		if (!this.pageReadsColumns) {
+			this.batch.readTuples(this.page, this.predicates, this.nextPosition, end);
+		}
+		this.nextPosition = end;
+		this.nextSelected = 0;
+	}
+
+	private DataTuple produce(int row)
+	{
+		DataTuple tuple = new DataTuple(this.outputColumns.length);
+		for (int i = 0; i < this.outputColumns.length; i++) {
+			tuple.assignDataField(this.batch.getField(row, this.outputColumns[i]), i);
+		}
+		return tuple;
+	}
+
+	private void release()
+	{
+		if (this.pinned) {
+			this.bufferPool.unpinPage(this.resourceId, this.currentPageNumber);
+			this.pinned = false;
+		}
+		this.page = null;
+		this.batch.reset(null, 0, 0, 0);
+		this.nextSelected = 0;
+	}
+}
@@ -0,0 +1,230 @@
+package de.tuberlin.dima.minidb.qexec;
+
+import java.util.Arrays;
+
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+
+
+/**
+ * Produces the first tuples of its child in the order of the sort columns, at most as many as
+ * the limit. When the operator is opened, it consumes the child and keeps the first tuples seen
+ * so far in a binary heap whose root is the last of them in the order. A tuple that comes before
+ * the root replaces it, all others are dropped at the cost of a single comparison. The input is
+ * thereby sorted in O(n log k) for a limit of k, and the operator holds no more than k tuples and
+ * never writes to temp space. Without sort columns, the operator passes the first tuples of its
+ * child on and stops reading it at the limit.
+ * <p>
+ * <tt>NULL</tt> values come before all other values of a column in ascending order.
+ */
+public class TopNSortOperatorImpl implements TopNSortOperator
+{
+	/**
+	 * The number of tuples the heap is allocated for at most at first.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final PhysicalPlanOperator child;
+
+	private final int[] sortColumns;
+
+	private final boolean[] columnsAscending;
+
+	private final int limit;
+
+	/**
+	 * The kept tuples. While the child is consumed, they form a heap with the last tuple in the
+	 * order at the root, and afterwards they are in order.
+	 */
+	private DataTuple[] kept;
+
+	private int numKept;
+
+	private int next;
+
+	private boolean open;
+
+
+	/**
+	 * Creates a top-N sort.
+	 *
+	 * @param child The operator producing the tuples to sort.
+	 * @param sortColumns The columns to sort by, the primary sort column first.
+	 * @param columnsAscending For each sort column, whether it is sorted in ascending order.
+	 * @param limit The maximal number of tuples to produce.
+	 */
+	public TopNSortOperatorImpl(PhysicalPlanOperator child, int[] sortColumns, boolean[] columnsAscending, int limit)
+	{
+		if (sortColumns.length != columnsAscending.length) {
+			throw new IllegalArgumentException("Sort parameter arrays do not match in length.");
+		}
+		if (limit < 0) {
+			throw new IllegalArgumentException("The limit must not be negative.");
+		}
+		this.child = child;
+		this.sortColumns = sortColumns;
+		this.columnsAscending = columnsAscending;
+		this.limit = limit;
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public void open(DataTuple correlatedTuple) throws QueryExecutionException
+	{
+		this.kept = new DataTuple[Math.min(this.limit, INITIAL_CAPACITY)];
+		this.numKept = 0;
+		this.next = 0;
+
+		this.child.open(correlatedTuple);
+		try {
+			if (this.sortColumns.length == 0) {
+				DataTuple tuple;
+				while (this.numKept < this.limit && (tuple = this.child.next()) != null) {
+					append(tuple);
+				}
+			}
+			else if (this.limit > 0) {
+				DataTuple[] batch = new DataTuple[DEFAULT_BATCH_SIZE];
+				int num;
+				while ((num = this.child.nextBatch(batch)) > 0) {
+					for (int i = 0; i < num; i++) {
+						offer(batch[i]);
+						batch[i] = null;
+					}
+				}
+				sortKept();
+			}
+		}
+		finally {
+			this.child.close();
+		}
+		this.open = true;
+	}
+
+	@Override
+	public DataTuple next() throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The top-N sort has not been opened.");
+		}
+		if (this.next >= this.numKept) {
+			return null;
+		}
+		DataTuple tuple = this.kept[this.next];
+		this.kept[this.next++] = null;
+		return tuple;
+	}
+
+	@Override
+	public int nextBatch(DataTuple[] batch) throws QueryExecutionException
+	{
+		if (!this.open) {
+			throw new QueryExecutionIllegalConditionException("The top-N sort has not been opened.");
+		}
+		int num = Math.min(batch.length, this.numKept - this.next);
+		System.arraycopy(this.kept, this.next, batch, 0, num);
+		Arrays.fill(this.kept, this.next, this.next + num, null);
+		this.next += num;
+		return num;
+	}
+
+	@Override
+	public void close() throws QueryExecutionException
+	{
+		this.open = false;
+		this.kept = null;
+		this.numKept = 0;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Keeps the tuple, if fewer tuples than the limit are kept or if it comes before the last
+	 * of them, which it then replaces.
+	 */
+	private void offer(DataTuple tuple)
+	{
+		if (this.numKept < this.limit) {
+			append(tuple);
+			siftUp(this.numKept - 1);
+		}
+		else if (compare(tuple, this.kept[0]) < 0) {
+			this.kept[0] = tuple;
+			siftDown(0, this.numKept);
+		}
+	}
+
+	private void append(DataTuple tuple)
+	{
+		if (this.numKept == this.kept.length) {
+			int capacity = (int) Math.min(this.limit, Math.max(2L * this.kept.length, INITIAL_CAPACITY));
+			this.kept = Arrays.copyOf(this.kept, capacity);
+		}
+		this.kept[this.numKept++] = tuple;
+	}
+
+	/**
+	 * Sorts the heap of kept tuples into their order by repeatedly moving the root behind the heap.
+	 */
+	private void sortKept()
+	{
+		for (int end = this.numKept - 1; end > 0; end--) {
+			DataTuple last = this.kept[0];
+			this.kept[0] = this.kept[end];
+			this.kept[end] = last;
+			siftDown(0, end);
+		}
+	}
+
+	private void siftUp(int index)
+	{
+		DataTuple tuple = this.kept[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (compare(tuple, this.kept[parent]) <= 0) {
+				break;
+			}
+			this.kept[index] = this.kept[parent];
+			index = parent;
+		}
+		this.kept[index] = tuple;
+	}
+
+	private void siftDown(int index, int size)
+	{
+		DataTuple tuple = this.kept[index];
+		int half = size >>> 1;
+		while (index < half) {
+			int larger = 2 * index + 1;
+			if (larger + 1 < size && compare(this.kept[larger + 1], this.kept[larger]) > 0) {
+				larger++;
+			}
+			if (compare(tuple, this.kept[larger]) >= 0) {
+				break;
+			}
+			this.kept[index] = this.kept[larger];
+			index = larger;
+		}
+		this.kept[index] = tuple;
+	}
+
+	private int compare(DataTuple first, DataTuple second)
+	{
+		for (int i = 0; i < this.sortColumns.length; i++) {
+			DataField a = first.getField(this.sortColumns[i]);
+			DataField b = second.getField(this.sortColumns[i]);
+			int cmp;
+			if (a.isNULL() || b.isNULL()) {
+				cmp = a.isNULL() ? (b.isNULL() ? 0 : -1) : 1;
+			}
+			else {
+				cmp = a.compareTo(b);
+			}
+			if (cmp != 0) {
+				return this.columnsAscending[i] ? cmp : -cmp;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,115 @@
+package de.tuberlin.dima.minidb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+
+
+/**
+ * Fixtures shared by the test cases and benchmarks: configurations for the test directories, and
+ * the draining of physical plans.
+ */
+public final class Fixtures
+{
+	private Fixtures()
+	{
+	}
+
+	/**
+	 * Creates a configuration for the test directories with the default query heap size.
+	 */
+	public static Config config() throws Exception
+	{
+		return config(0);
+	}
+
+	/**
+	 * Creates a configuration for the test directories.
+	 *
+	 * @param queryHeapSize The size of the query heap in bytes, or 0 for the default size.
+	 */
+	public static Config config(long queryHeapSize) throws Exception
+	{
+		Properties props = new Properties();
+		if (queryHeapSize > 0) {
+			props.setProperty("QUERY_HEAP_SIZE", String.valueOf(queryHeapSize));
+		}
+		props.setProperty("TEMPSPACE_DIRECTORY", "/tempspace/");
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		File file = File.createTempFile("minidb-config", ".xml");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				props.storeToXML(out, null);
+			}
+			finally {
+				out.close();
+			}
+			return Config.loadConfig(file);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Opens the operator, takes all its tuples through <tt>next()</tt> and closes it.
+	 */
+	public static List<DataTuple> drain(PhysicalPlanOperator operator) throws Exception
+	{
+		return drain(operator, 0);
+	}
+
+	/**
+	 * Opens the operator, takes all its tuples and closes it. With a batch size of 0, the tuples are
+	 * taken through <tt>next()</tt>. Otherwise they are taken through <tt>nextBatch()</tt> with
+	 * batches of that size, and for a negative size alternately through <tt>nextBatch()</tt> and
+	 * <tt>next()</tt>. The operator must not produce more tuples after it has signaled its end.
+	 */
+	public static List<DataTuple> drain(PhysicalPlanOperator operator, int batchSize) throws Exception
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		operator.open(null);
+		if (batchSize == 0) {
+			DataTuple tuple;
+			while ((tuple = operator.next()) != null) {
+				tuples.add(tuple);
+			}
+			assertNull(operator.next());
+		}
+		else {
+			DataTuple[] batch = new DataTuple[Math.abs(batchSize)];
+			while (true) {
+				int num = operator.nextBatch(batch);
+				assertTrue(num <= batch.length);
+				for (int i = 0; i < num; i++) {
+					tuples.add(batch[i]);
+				}
+				if (batchSize < 0) {
+					DataTuple tuple = operator.next();
+					if (tuple != null) {
+						tuples.add(tuple);
+						continue;
+					}
+				}
+				if (num == 0) {
+					break;
+				}
+			}
+		}
+		assertEquals(0, operator.nextBatch(new DataTuple[10]));
+		operator.close();
+		return tuples;
+	}
+}
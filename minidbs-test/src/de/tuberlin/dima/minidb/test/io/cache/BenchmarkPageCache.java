@@ -0,0 +1,169 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.io.cache.CachePinnedException;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.ConcurrentPageCache;
+import de.tuberlin.dima.minidb.io.cache.DuplicateCacheEntryException;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageCache;
+import de.tuberlin.dima.minidb.io.cache.PageCacheImpl;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.test.io.cache.TestConcurrentPageCache.TestPage;
+
+
+/**
+ * Measures the throughput of the page cache when it is shared by several query threads.
+ * The single-lock cache serializes every request on the cache monitor, the lock-striped cache
+ * only serializes requests that fall into the same segment.
+ * <p>
+ * The workload is a skewed mix of hits and misses: every thread requests pages from a
+ * shared set of resources, with a normal distribution over the page numbers, and adds
+ * the page if it is not cached.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkPageCache extends AbstractBenchmark
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int CAPACITY = 4096;
+
+	private static final int NUM_THREADS = 8;
+
+	private static final int OPS_PER_THREAD = 200000;
+
+	private static final int NUM_RESOURCES = 4;
+
+
+	@Test
+	public void singleLockCache() throws Exception
+	{
+		runWorkload(new SynchronizedPageCache(new PageCacheImpl(PAGE_SIZE, CAPACITY)));
+	}
+
+	@Test
+	public void lockStripedCache() throws Exception
+	{
+		runWorkload(new ConcurrentPageCache(PAGE_SIZE, CAPACITY, 16));
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void runWorkload(final PageCache cache) throws Exception
+	{
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[NUM_THREADS];
+
+		for (int t = 0; t < NUM_THREADS; t++) {
+			final long seed = 7364528L + t;
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					Random rnd = new Random(seed);
+					try {
+						for (int i = 0; i < OPS_PER_THREAD; i++) {
+							int resource = rnd.nextInt(NUM_RESOURCES);
+							int page = (int) Math.abs(rnd.nextGaussian() * CAPACITY / 2);
+
+							if (cache.getPage(resource, page) == null) {
+								try {
+									cache.addPage(new TestPage(page), resource);
+								}
+								catch (DuplicateCacheEntryException dceex) {
+									// another thread loaded the page in the meantime
+								}
+							}
+						}
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+	}
+
+	/**
+	 * Guards a page cache by a single lock, the way a buffer pool shares a non thread-safe cache.
+	 */
+	private static final class SynchronizedPageCache implements PageCache
+	{
+		private final PageCache cache;
+
+		SynchronizedPageCache(PageCache cache)
+		{
+			this.cache = cache;
+		}
+
+		@Override
+		public synchronized CacheableData getPage(int resourceId, int pageNumber)
+		{
+			return this.cache.getPage(resourceId, pageNumber);
+		}
+
+		@Override
+		public synchronized CacheableData getPageAndPin(int resourceId, int pageNumber)
+		{
+			return this.cache.getPageAndPin(resourceId, pageNumber);
+		}
+
+		@Override
+		public synchronized EvictedCacheEntry addPage(CacheableData newPage, int resourceId)
+		throws CachePinnedException, DuplicateCacheEntryException
+		{
+			return this.cache.addPage(newPage, resourceId);
+		}
+
+		@Override
+		public synchronized EvictedCacheEntry addPageAndPin(CacheableData newPage, int resourceId)
+		throws CachePinnedException, DuplicateCacheEntryException
+		{
+			return this.cache.addPageAndPin(newPage, resourceId);
+		}
+
+		@Override
+		public synchronized void unpinPage(int resourceId, int pageNumber)
+		{
+			this.cache.unpinPage(resourceId, pageNumber);
+		}
+
+		@Override
+		public synchronized CacheableData[] getAllPagesForResource(int resourceId)
+		{
+			return this.cache.getAllPagesForResource(resourceId);
+		}
+
+		@Override
+		public synchronized void expellAllPagesForResource(int resourceId)
+		{
+			this.cache.expellAllPagesForResource(resourceId);
+		}
+
+		@Override
+		public synchronized int getCapacity()
+		{
+			return this.cache.getCapacity();
+		}
+
+		@Override
+		public synchronized void unpinAllPages()
+		{
+			this.cache.unpinAllPages();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageCache;
+import de.tuberlin.dima.minidb.io.cache.PageCacheImpl;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+
+
+/**
+ * Measures the latency of single cache operations for growing cache sizes. With constant time
+ * bookkeeping, the time per operation must stay roughly flat from 1K to 1M pages (apart from
+ * the effects of the CPU caches).
+ * <p>
+ * Each round fills the cache and then issues a fixed number of requests with a skewed distribution
+ * over four times the capacity, loading the page on a miss. The page objects are recycled from the
+ * evicted entries, so that the measured time is the cache's own.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkPageCacheSizes extends AbstractBenchmark
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int NUM_REQUESTS = 2000000;
+
+	private static final int NUM_RESOURCES = 4;
+
+
+	@Test
+	public void size1K() throws Exception
+	{
+		runWorkload(1000);
+	}
+
+	@Test
+	public void size10K() throws Exception
+	{
+		runWorkload(10000);
+	}
+
+	@Test
+	public void size100K() throws Exception
+	{
+		runWorkload(100000);
+	}
+
+	@Test
+	public void size1M() throws Exception
+	{
+		runWorkload(1000000);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void runWorkload(int capacity) throws Exception
+	{
+		PageCache cache = new PageCacheImpl(PAGE_SIZE, capacity);
+		Random rnd = new Random(2349876234L);
+
+		// fill the cache, the buffers of the empty frames are not needed
+		for (int i = 0; i < capacity; i++) {
+			cache.addPage(new RecycledPage(i), i % NUM_RESOURCES);
+		}
+
+		int range = capacity * 4 / NUM_RESOURCES;
+		RecycledPage spare = new RecycledPage(0);
+		int hits = 0;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+			int resource = rnd.nextInt(NUM_RESOURCES);
+			int page = (int) Math.abs(rnd.nextGaussian() * range / 2);
+
+			if (cache.getPage(resource, page) != null) {
+				hits++;
+			}
+			else {
+				// the cache is full, so every add evicts a page that can be reused for the next miss
+				spare.pageNumber = page;
+				EvictedCacheEntry evicted = cache.addPage(spare, resource);
+				spare = (RecycledPage) evicted.getWrappingPage();
+			}
+		}
+
+		long nanos = System.nanoTime() - start;
+		System.out.println("capacity " + capacity + ": " + (nanos / NUM_REQUESTS) + " ns/request, hit rate "
+				+ (100L * hits / NUM_REQUESTS) + "%");
+	}
+
+	/**
+	 * A page whose number can be reassigned.
+	 */
+	private static final class RecycledPage implements CacheableData
+	{
+		private int pageNumber;
+
+		private final byte[] buffer = new byte[0];
+
+		RecycledPage(int pageNumber)
+		{
+			this.pageNumber = pageNumber;
+		}
+
+		@Override
+		public boolean hasBeenModified()
+		{
+			return false;
+		}
+
+		@Override
+		public int getPageNumber()
+		{
+			return this.pageNumber;
+		}
+
+		@Override
+		public void markExpired()
+		{
+		}
+
+		@Override
+		public boolean isExpired()
+		{
+			return false;
+		}
+
+		@Override
+		public byte[] getBuffer()
+		{
+			return this.buffer;
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.io.cache.CachePinnedException;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.ConcurrentPageCache;
+import de.tuberlin.dima.minidb.io.cache.DuplicateCacheEntryException;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageCache;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+
+
+/**
+ * Test case for the lock-striped page cache, covering the single threaded contract
+ * and the consistency of the cache under concurrent access.
+ */
+public class TestConcurrentPageCache
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 8723645827364L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+
+	/**
+	 * Tests that the segment count is bounded and the capacity is kept exactly.
+	 */
+	@Test
+	public void testCapacityAndSegments() throws Exception
+	{
+		ConcurrentPageCache cache = new ConcurrentPageCache(PAGE_SIZE, 1001, 16);
+		assertEquals(1001, cache.getCapacity());
+		assertEquals(16, cache.getNumberOfSegments());
+
+		// too small for 16 segments
+		cache = new ConcurrentPageCache(PAGE_SIZE, 20, 16);
+		assertEquals(2, cache.getNumberOfSegments());
+
+		// exactly 'capacity' empty frames are handed out before the first eviction
+		cache = new ConcurrentPageCache(PAGE_SIZE, 100, 4);
+		int empty = 0;
+		for (int i = 0; i < 200; i++) {
+			EvictedCacheEntry evicted = cache.addPage(new TestPage(i), 1);
+			assertNotNull(evicted.getBinaryPage());
+			if (evicted.getWrappingPage() == null) {
+				empty++;
+			}
+		}
+		assertEquals(100, empty);
+	}
+
+	/**
+	 * Tests that adding a page twice is rejected.
+	 */
+	@Test
+	public void testDuplicates() throws Exception
+	{
+		PageCache cache = new ConcurrentPageCache(PAGE_SIZE, 64, 4);
+		cache.addPage(new TestPage(7), 3);
+		try {
+			cache.addPage(new TestPage(7), 3);
+			fail("Duplicate entry must be detected.");
+		}
+		catch (DuplicateCacheEntryException dceex) {
+			assertEquals(3, dceex.getResourceId());
+			assertEquals(7, dceex.getPageNumber());
+		}
+		// same page number, other resource
+		cache.addPage(new TestPage(7), 4);
+	}
+
+	/**
+	 * Tests that pinned pages are never evicted and that a fully pinned cache reports so.
+	 */
+	@Test
+	public void testPinning() throws Exception
+	{
+		PageCache cache = new ConcurrentPageCache(PAGE_SIZE, 32, 1);
+		for (int i = 0; i < 32; i++) {
+			cache.addPageAndPin(new TestPage(i), 1);
+		}
+		try {
+			cache.addPage(new TestPage(100), 1);
+			fail("All pages are pinned, the cache must refuse the page.");
+		}
+		catch (CachePinnedException cpex) {
+			// expected
+		}
+
+		cache.unpinPage(1, 5);
+		EvictedCacheEntry evicted = cache.addPage(new TestPage(100), 1);
+		assertEquals(5, evicted.getPageNumber());
+		assertNull(cache.getPage(1, 5));
+
+		cache.unpinAllPages();
+		for (int i = 0; i < 32; i++) {
+			cache.addPage(new TestPage(200 + i), 1);
+		}
+	}
+
+	/**
+	 * Tests that a segment whose pages are all pinned borrows frames from the other segments, so
+	 * that the cache refuses a page only if all of its pages are pinned, and that the borrowed
+	 * frames do not raise the capacity.
+	 */
+	@Test
+	public void testPinningAcrossSegments() throws Exception
+	{
+		ConcurrentPageCache cache = new ConcurrentPageCache(PAGE_SIZE, 64, 8);
+		assertEquals(8, cache.getNumberOfSegments());
+
+		// 64 pages do not spread evenly over 8 segments of 8 frames each
+		int empty = 0;
+		for (int i = 0; i < 64; i++) {
+			EvictedCacheEntry evicted = cache.addPageAndPin(new TestPage(i), 1);
+			if (evicted.getWrappingPage() == null) {
+				empty++;
+			}
+		}
+		assertEquals(64, empty);
+		try {
+			cache.addPage(new TestPage(100), 1);
+			fail("All pages are pinned, the cache must refuse the page.");
+		}
+		catch (CachePinnedException cpex) {
+			// expected
+		}
+
+		cache.unpinPage(1, 5);
+		EvictedCacheEntry evicted = cache.addPageAndPin(new TestPage(100), 1);
+		assertEquals(5, evicted.getPageNumber());
+		assertNull(cache.getPage(1, 5));
+		for (int i = 0; i < 64; i++) {
+			if (i != 5) {
+				assertEquals(i, cache.getPage(1, i).getPageNumber());
+			}
+		}
+		assertEquals(100, cache.getPage(1, 100).getPageNumber());
+
+		cache.unpinAllPages();
+		for (int i = 0; i < 200; i++) {
+			evicted = cache.addPage(new TestPage(200 + i), 2);
+			assertNotNull(evicted.getWrappingPage());
+		}
+	}
+
+	/**
+	 * Tests that expelled pages are gone and their frames are reused first.
+	 */
+	@Test
+	public void testExpell() throws Exception
+	{
+		// a single segment, so that all expelled frames are available to every page
+		PageCache cache = new ConcurrentPageCache(PAGE_SIZE, 64, 1);
+		for (int i = 0; i < 32; i++) {
+			cache.addPage(new TestPage(i), 1);
+			cache.addPage(new TestPage(i), 2);
+		}
+		assertEquals(32, cache.getAllPagesForResource(1).length);
+
+		cache.expellAllPagesForResource(1);
+		assertEquals(0, cache.getAllPagesForResource(1).length);
+		assertNull(cache.getPage(1, 3));
+
+		for (int i = 0; i < 32; i++) {
+			EvictedCacheEntry evicted = cache.addPage(new TestPage(100 + i), 3);
+			assertEquals(1, evicted.getResourceID());
+			assertTrue(!evicted.getWrappingPage().isExpired());
+		}
+		assertEquals(32, cache.getAllPagesForResource(2).length);
+	}
+
+	/**
+	 * Lets several threads request and load pages concurrently and checks that a returned page
+	 * is always the requested one and that no frame is lost or duplicated.
+	 */
+	@Test
+	public void testConcurrentAccess() throws Exception
+	{
+		final int capacity = 512;
+		final int numThreads = 8;
+		final int opsPerThread = 50000;
+		final ConcurrentPageCache cache = new ConcurrentPageCache(PAGE_SIZE, capacity, 16);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final List<Set<byte[]>> buffersPerThread = new ArrayList<Set<byte[]>>();
+
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int threadNum = t;
+			final Set<byte[]> buffers = new HashSet<byte[]>();
+			buffersPerThread.add(buffers);
+
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					Random rnd = new Random(SEED + threadNum);
+					try {
+						for (int i = 0; i < opsPerThread; i++) {
+							// each thread works on its own resource, so it is the only one adding its pages
+							int page = (int) Math.abs(rnd.nextGaussian() * capacity / 2);
+							CacheableData found = cache.getPageAndPin(threadNum, page);
+							if (found != null) {
+								if (found.getPageNumber() != page) {
+									throw new AssertionError("Wrong page returned.");
+								}
+								cache.unpinPage(threadNum, page);
+							}
+							else {
+								EvictedCacheEntry evicted = cache.addPage(new TestPage(page), threadNum);
+								if (evicted.getBinaryPage() == null) {
+									throw new AssertionError("Evicted entry without buffer.");
+								}
+								if (evicted.getWrappingPage() == null) {
+									buffers.add(evicted.getBinaryPage());
+								}
+							}
+						}
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+
+		// every empty frame was handed out exactly once
+		int emptyFrames = 0;
+		for (Set<byte[]> buffers : buffersPerThread) {
+			emptyFrames += buffers.size();
+		}
+		assertEquals(capacity, emptyFrames);
+
+		// the cache is full and holds no page twice
+		int cached = 0;
+		for (int t = 0; t < numThreads; t++) {
+			CacheableData[] pages = cache.getAllPagesForResource(t);
+			Set<Integer> numbers = new HashSet<Integer>();
+			for (CacheableData page : pages) {
+				assertTrue(numbers.add(page.getPageNumber()));
+			}
+			cached += pages.length;
+		}
+		assertEquals(capacity, cached);
+	}
+
+
+	/**
+	 * A minimal page that only carries a page number.
+	 */
+	static final class TestPage implements CacheableData
+	{
+		private final int pageNumber;
+
+		private final byte[] buffer = new byte[0];
+
+		private boolean expired;
+
+		TestPage(int pageNumber)
+		{
+			this.pageNumber = pageNumber;
+		}
+
+		@Override
+		public boolean hasBeenModified()
+		{
+			return false;
+		}
+
+		@Override
+		public int getPageNumber()
+		{
+			return this.pageNumber;
+		}
+
+		@Override
+		public void markExpired()
+		{
+			this.expired = true;
+		}
+
+		@Override
+		public boolean isExpired()
+		{
+			return this.expired;
+		}
+
+		@Override
+		public byte[] getBuffer()
+		{
+			return this.buffer;
+		}
+	}
+}
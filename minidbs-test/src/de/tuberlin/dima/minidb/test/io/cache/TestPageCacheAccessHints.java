@@ -0,0 +1,137 @@
+package de.tuberlin.dima.minidb.test.io.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.io.cache.AccessHint;
+import de.tuberlin.dima.minidb.io.cache.EvictedCacheEntry;
+import de.tuberlin.dima.minidb.io.cache.PageCache;
+import de.tuberlin.dima.minidb.io.cache.PageCacheImpl;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.test.io.cache.TestConcurrentPageCache.TestPage;
+
+
+/**
+ * Test case for the placement of pages according to their access hint.
+ */
+public class TestPageCacheAccessHints
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int CAPACITY = 64;
+
+	private static final int INDEX_RESOURCE = 1;
+
+	private static final int TABLE_RESOURCE = 2;
+
+
+	/**
+	 * Tests that a scan over many more pages than the cache holds evicts none of the pages
+	 * that were accessed randomly or as index pages before.
+	 */
+	@Test
+	public void testScanDoesNotDisplaceHotPages() throws Exception
+	{
+		PageCache cache = new PageCacheImpl(PAGE_SIZE, CAPACITY);
+		fillHotPages(cache);
+
+		for (int i = 0; i < 10 * CAPACITY; i++) {
+			EvictedCacheEntry evicted = cache.addPageAndPin(new TestPage(i), TABLE_RESOURCE, AccessHint.SEQUENTIAL_SCAN);
+			if (evicted.getWrappingPage() != null) {
+				assertEquals("Only scan pages may be evicted.", TABLE_RESOURCE, evicted.getResourceID());
+			}
+			cache.unpinPage(TABLE_RESOURCE, i);
+		}
+		assertHotPagesCached(cache);
+	}
+
+	/**
+	 * Tests that the same scan without the hint flushes the cache, which is what the hint prevents.
+	 */
+	@Test
+	public void testScanWithoutHintDisplacesHotPages() throws Exception
+	{
+		PageCache cache = new PageCacheImpl(PAGE_SIZE, CAPACITY);
+		fillHotPages(cache);
+
+		for (int i = 0; i < 10 * CAPACITY; i++) {
+			cache.addPageAndPin(new TestPage(i), TABLE_RESOURCE);
+			cache.unpinPage(TABLE_RESOURCE, i);
+			cache.getPage(TABLE_RESOURCE, i);
+		}
+		int cached = 0;
+		for (int i = 0; i < CAPACITY / 2; i++) {
+			if (cache.getPage(INDEX_RESOURCE, i) != null) {
+				cached++;
+			}
+		}
+		assertTrue("A scan without hint should displace index pages.", cached < CAPACITY / 2);
+	}
+
+	/**
+	 * Tests that a page read by a scan and later requested without the hint is kept like any
+	 * other page, and that prefetched scan pages are not evicted before they were consumed,
+	 * unless the ring is full.
+	 */
+	@Test
+	public void testScanPageReuse() throws Exception
+	{
+		PageCache cache = new PageCacheImpl(PAGE_SIZE, CAPACITY);
+
+		// a scan page that is requested randomly leaves the ring
+		cache.addPage(new TestPage(0), TABLE_RESOURCE, AccessHint.SEQUENTIAL_SCAN);
+		assertNotNull(cache.getPage(TABLE_RESOURCE, 0, AccessHint.SEQUENTIAL_SCAN));
+		assertNotNull(cache.getPage(TABLE_RESOURCE, 0));
+
+		// prefetched pages, not yet consumed
+		for (int i = 1; i <= 4; i++) {
+			cache.addPage(new TestPage(i), TABLE_RESOURCE, AccessHint.SEQUENTIAL_SCAN);
+		}
+		for (int i = 0; i < 2 * CAPACITY; i++) {
+			cache.addPage(new TestPage(i), INDEX_RESOURCE);
+		}
+		for (int i = 1; i <= 4; i++) {
+			assertNotNull("Prefetched scan pages must stay until consumed.", cache.getPage(TABLE_RESOURCE, i, AccessHint.SEQUENTIAL_SCAN));
+		}
+
+		// once consumed, they go first
+		cache.addPage(new TestPage(1000), INDEX_RESOURCE);
+		assertNull(cache.getPage(TABLE_RESOURCE, 1, AccessHint.SEQUENTIAL_SCAN));
+		assertNotNull(cache.getPage(TABLE_RESOURCE, 2, AccessHint.SEQUENTIAL_SCAN));
+
+		// expelling covers scan pages
+		cache.expellAllPagesForResource(TABLE_RESOURCE);
+		assertNull(cache.getPage(TABLE_RESOURCE, 2));
+		assertEquals(0, cache.getAllPagesForResource(TABLE_RESOURCE).length);
+	}
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Fills half of the cache with index pages and a quarter with pages that are hit randomly.
+	 */
+	private static void fillHotPages(PageCache cache) throws Exception
+	{
+		for (int i = 0; i < CAPACITY / 2; i++) {
+			cache.addPage(new TestPage(i), INDEX_RESOURCE, AccessHint.INDEX_INTERNAL);
+		}
+		for (int i = 0; i < CAPACITY / 4; i++) {
+			cache.addPage(new TestPage(i), 3);
+			cache.getPage(3, i);
+		}
+	}
+
+	private static void assertHotPagesCached(PageCache cache)
+	{
+		for (int i = 0; i < CAPACITY / 2; i++) {
+			assertNotNull("Index page " + i + " was displaced.", cache.getPage(INDEX_RESOURCE, i));
+		}
+		for (int i = 0; i < CAPACITY / 4; i++) {
+			assertNotNull("Page " + i + " was displaced.", cache.getPage(3, i));
+		}
+	}
+}
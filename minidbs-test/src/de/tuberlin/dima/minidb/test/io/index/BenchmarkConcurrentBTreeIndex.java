@@ -0,0 +1,158 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * Measures the inserts and the point lookups per second of the B-Tree index with 1, 2, 4, ... up to
+ * the number of available cores threads. The inserts go to random keys in a fresh index, the lookups
+ * to random keys of the filled index. The index fits the buffer pool.
+ */
+@BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 1, callgc = false)
+public class BenchmarkConcurrentBTreeIndex extends AbstractBenchmark
+{
+	private static final int RESOURCE_ID = 1;
+
+	private static final int NUM_PAIRS = 400000;
+
+	private static final int NUM_LOOKUPS = 400000;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@Test
+	public void scaling() throws Exception
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+			run(threads);
+			if (threads == cores) {
+				break;
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void run(final int numThreads) throws Exception
+	{
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), true));
+		IndexSchema schema = new IndexSchema(table, 0, PageSize.SIZE_4096, false, 1, 1);
+		File file = File.createTempFile("minidb-concurrent", ".mdidx");
+		IndexResourceManager manager = IndexResourceManager.createIndex(file, schema);
+		BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(RESOURCE_ID, manager);
+			final BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(schema, bufferPool, RESOURCE_ID);
+
+			long insertTime = runThreads(numThreads, new Task() {
+				@Override
+				public void run(int thread) throws Exception
+				{
+					Random random = new Random(thread);
+					for (int i = thread; i < NUM_PAIRS; i += numThreads) {
+						index.insertEntry(new IntField(random.nextInt(NUM_PAIRS)), new RID(i));
+					}
+				}
+			});
+			long lookupTime = runThreads(numThreads, new Task() {
+				@Override
+				public void run(int thread) throws Exception
+				{
+					Random random = new Random(-thread);
+					long sum = 0;
+					for (int i = thread; i < NUM_LOOKUPS; i += numThreads) {
+						IndexResultIterator<RID> rids = index.lookupRids(new IntField(random.nextInt(NUM_PAIRS)));
+						while (rids.hasNext()) {
+							sum += rids.next().getID();
+						}
+					}
+					BenchmarkIndexPointLookup.sink = sum;
+				}
+			});
+
+			System.out.println(String.format("%d threads: %.0f inserts/s, %.0f lookups/s", numThreads,
+					NUM_PAIRS * 1000000000.0 / insertTime, NUM_LOOKUPS * 1000000000.0 / lookupTime));
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			manager.closeResource();
+			IndexResourceManager.deleteIndex(file);
+		}
+	}
+
+	private interface Task
+	{
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * Runs the task in the given number of threads, which start at the same time.
+	 *
+	 * @return The nanoseconds until the last thread finished.
+	 */
+	private static long runThreads(int num, final Task task) throws Exception
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[num];
+		for (int t = 0; t < num; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+						task.run(thread);
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long duration = System.nanoTime() - begin;
+		if (error.get() != null) {
+			throw new Exception("A thread failed.", error.get());
+		}
+		return duration;
+	}
+}
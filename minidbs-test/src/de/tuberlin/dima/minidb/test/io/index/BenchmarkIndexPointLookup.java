@@ -0,0 +1,217 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Looks up keys of <tt>customer_pk</tt> (unique) and <tt>lineitem_fk_order</tt> (about four
+ * duplicates per key) from the root to the position in the leaf, on pages held in memory. Each index
+ * is searched once through the pages' in-place key comparison and once the former way, which
+ * decoded the key of every probe into a field and walked left over the duplicates with decoded keys.
+ * Each run reports the lookups per second and the bytes allocated per lookup.
+ */
+@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 5, callgc = false)
+public class BenchmarkIndexPointLookup extends AbstractBenchmark
+{
+	private static final int NUM_LOOKUPS = 200000;
+
+	private static Index customerPk;
+
+	private static Index lineitemOrderFk;
+
+	/**
+	 * Prevents the lookups from being optimized away.
+	 */
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		customerPk = new Index("customer.mdtbl", "customer_pk.mdidx");
+		lineitemOrderFk = new Index("lineitem.mdtbl", "lineitem_fk_order.mdidx");
+	}
+
+	@Test
+	public void customerPkInPlace()
+	{
+		run("customer_pk, in place", customerPk, false);
+	}
+
+	@Test
+	public void customerPkDecoding()
+	{
+		run("customer_pk, decoding", customerPk, true);
+	}
+
+	@Test
+	public void lineitemOrderFkInPlace()
+	{
+		run("lineitem_fk_order, in place", lineitemOrderFk, false);
+	}
+
+	@Test
+	public void lineitemOrderFkDecoding()
+	{
+		run("lineitem_fk_order, decoding", lineitemOrderFk, true);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void run(String name, Index index, boolean decoding)
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		long sum = 0;
+		for (int i = 0; i < NUM_LOOKUPS; i++) {
+			sum += index.lookup(index.keys[i % index.keys.length], decoding);
+		}
+		long duration = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+		sink = sum;
+
+		System.out.println(String.format("%s: %.0f lookups/s, %.1f bytes allocated per lookup",
+				name, NUM_LOOKUPS * 1000000000.0 / duration, allocated / (double) NUM_LOOKUPS));
+	}
+
+	/**
+	 * The pages of an index by their page numbers, and the keys to look up in a scattered order.
+	 */
+	private static final class Index
+	{
+		private BTreeIndexPage[] pages = new BTreeIndexPage[16];
+
+		private final int root;
+
+		private final DataField[] keys;
+
+		Index(String tableFile, String indexFile) throws Exception
+		{
+			File dataDir = new File(BenchmarkIndexPointLookup.class.getResource("/data/").getPath());
+			TableResourceManager table = TableResourceManager.openTable(new File(dataDir, tableFile));
+			TableSchema schema = table.getSchema();
+			table.closeResource();
+			IndexResourceManager index = IndexResourceManager.openIndex(new File(dataDir, indexFile), schema);
+			int pageSize = index.getPageSize().getNumberOfBytes();
+			this.root = index.getSchema().getRootPageNumber();
+
+			// read all pages reachable from the root
+			List<Integer> pending = new ArrayList<Integer>();
+			pending.add(this.root);
+			List<DataField> allKeys = new ArrayList<DataField>();
+			while (!pending.isEmpty()) {
+				int pageNumber = pending.remove(pending.size() - 1);
+				BTreeIndexPage page = index.readPageFromResource(new byte[pageSize], pageNumber);
+				if (pageNumber >= this.pages.length) {
+					this.pages = Arrays.copyOf(this.pages, Math.max(pageNumber + 1, 2 * this.pages.length));
+				}
+				this.pages[pageNumber] = page;
+				if (page instanceof BTreeInnerNodePage) {
+					BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+					for (int i = 0; i <= node.getNumberOfKeys(); i++) {
+						pending.add(node.getPointer(i));
+					}
+				}
+				else {
+					((BTreeLeafPage) page).getAllKeys(allKeys, 0);
+				}
+			}
+			index.closeResource();
+
+			// every key, visited with a stride that jumps across the leaves
+			this.keys = new DataField[allKeys.size()];
+			int stride = 7919;
+			while (this.keys.length % stride == 0) {
+				stride += 2;
+			}
+			for (int i = 0; i < this.keys.length; i++) {
+				this.keys[i] = allKeys.get((int) ((long) i * stride % this.keys.length));
+			}
+		}
+
+		/**
+		 * Descends from the root to the leaf for the key.
+		 *
+		 * @return The position of the first occurrence of the key in its leaf.
+		 */
+		int lookup(DataField key, boolean decoding)
+		{
+			BTreeIndexPage page = this.pages[this.root];
+			while (page instanceof BTreeInnerNodePage) {
+				BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+				page = this.pages[decoding ? decodingChildPageForKey(node, key) : node.getChildPageForKey(key)];
+			}
+			BTreeLeafPage leaf = (BTreeLeafPage) page;
+			return decoding ? decodingPositionForKey(leaf, key) : leaf.getPositionForKey(key);
+		}
+
+		private static int decodingChildPageForKey(BTreeInnerNodePage node, DataField key)
+		{
+			int low = 0;
+			int high = node.getNumberOfKeys() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = node.getKey(mid).compareTo(key);
+				if (cmp < 0) {
+					low = mid + 1;
+				}
+				else if (cmp > 0) {
+					high = mid - 1;
+				}
+				else {
+					while (mid > 0 && node.getKey(mid - 1).equals(key)) {
+						mid--;
+					}
+					return node.getPointer(mid);
+				}
+			}
+			return node.getPointer(low);
+		}
+
+		private static int decodingPositionForKey(BTreeLeafPage leaf, DataField key)
+		{
+			int low = 0;
+			int high = leaf.getNumberOfEntries() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = leaf.getKey(mid).compareTo(key);
+				if (cmp < 0) {
+					low = mid + 1;
+				}
+				else if (cmp > 0) {
+					high = mid - 1;
+				}
+				else {
+					while (mid > 0 && leaf.getKey(mid - 1).equals(key)) {
+						mid--;
+					}
+					return mid;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexStatistics;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkBuilder;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Rebuilds the foreign key indexes of the test data once with regular leaves and once with posting
+ * list leaves, and reports for both the size of the index file, the depth and the number of leaves
+ * of the tree, and the keys per second for which all RIDs are fetched, on pages held in memory.
+ */
+@BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1, callgc = false)
+public class BenchmarkPostingListIndex extends AbstractBenchmark
+{
+	private static final int NUM_LOOKUPS = 100000;
+
+	private static File dataDir;
+
+	private static TableSchema lineitem;
+
+	private static TableSchema order;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkPostingListIndex.class.getResource("/data/").getPath());
+		lineitem = tableSchema("lineitem.mdtbl");
+		order = tableSchema("order.mdtbl");
+	}
+
+	@Test
+	public void lineitemOrderFk() throws Exception
+	{
+		run("lineitem_fk_order", lineitem);
+	}
+
+	@Test
+	public void lineitemPartFk() throws Exception
+	{
+		run("lineitem_fk_part", lineitem);
+	}
+
+	@Test
+	public void orderCustomerFk() throws Exception
+	{
+		run("order_fk_customer", order);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static TableSchema tableSchema(String tableFile) throws Exception
+	{
+		TableResourceManager table = TableResourceManager.openTable(new File(dataDir, tableFile));
+		TableSchema schema = table.getSchema();
+		table.closeResource();
+		return schema;
+	}
+
+	private static void run(String indexName, TableSchema table) throws Exception
+	{
+		// the pairs of the index, in order
+		IndexResourceManager index = IndexResourceManager.openIndex(new File(dataDir, indexName + ".mdidx"), table);
+		IndexSchema schema = index.getSchema();
+		List<DataField> keys = new ArrayList<DataField>();
+		List<RID> rids = new ArrayList<RID>();
+		byte[] buffer = new byte[index.getPageSize().getNumberOfBytes()];
+		for (int pageNumber = schema.getFirstLeafNumber(); pageNumber != -1; ) {
+			BTreeLeafPage leaf = (BTreeLeafPage) index.readPageFromResource(buffer, pageNumber);
+			for (int i = 0; i < leaf.getNumberOfEntries(); i++) {
+				keys.add(leaf.getKey(i));
+				rids.add(leaf.getRidAtPosition(i));
+			}
+			pageNumber = leaf.getNextLeafPageNumber();
+		}
+		index.closeResource();
+
+		// the distinct keys, visited with a stride that jumps across the leaves
+		List<DataField> distinct = new ArrayList<DataField>();
+		for (int i = 0; i < keys.size(); i++) {
+			if (i == 0 || !keys.get(i).equals(keys.get(i - 1))) {
+				distinct.add(keys.get(i));
+			}
+		}
+		DataField[] probes = new DataField[distinct.size()];
+		int stride = 7919;
+		while (probes.length % stride == 0) {
+			stride += 2;
+		}
+		for (int i = 0; i < probes.length; i++) {
+			probes[i] = distinct.get((int) ((long) i * stride % probes.length));
+		}
+
+		for (boolean postingLists : new boolean[] { false, true }) {
+			IndexSchema copySchema = new IndexSchema(table, schema.getColumnNumber(), schema.getPageSize(), false, 1, 1);
+			copySchema.setPostingLists(postingLists);
+			File file = File.createTempFile("minidb-posting", ".mdidx");
+			IndexResourceManager copy = IndexResourceManager.createIndex(file, copySchema);
+			try {
+				BTreeBulkBuilder builder = new BTreeBulkBuilder(copy);
+				for (int i = 0; i < keys.size(); i++) {
+					builder.addEntry(keys.get(i), rids.get(i));
+				}
+				builder.finish();
+				IndexStatistics statistics = builder.getStatistics();
+
+				BTreeIndexPage[] pages = readPages(copy, file);
+				int root = copySchema.getRootPageNumber();
+				List<RID> target = new ArrayList<RID>();
+				long start = System.nanoTime();
+				long sum = 0;
+				for (int i = 0; i < NUM_LOOKUPS; i++) {
+					target.clear();
+					lookup(pages, root, probes[i % probes.length], target);
+					sum += target.size();
+				}
+				long duration = System.nanoTime() - start;
+				BenchmarkIndexPointLookup.sink = sum;
+
+				System.out.println(String.format("%s, %s: %d KB, depth %d, %d leaves, %.0f keys/s, %.0f ns per key",
+						indexName, postingLists ? "posting lists" : "regular", file.length() / 1024, statistics.getTreeDepth(),
+						statistics.getNumberOfLeafs(), NUM_LOOKUPS * 1000000000.0 / duration, duration / (double) NUM_LOOKUPS));
+			}
+			finally {
+				copy.closeResource();
+				IndexResourceManager.deleteIndex(file);
+			}
+		}
+	}
+
+	/**
+	 * Reads all pages of an index, by their page numbers.
+	 */
+	private static BTreeIndexPage[] readPages(IndexResourceManager index, File file) throws Exception
+	{
+		int pageSize = index.getPageSize().getNumberOfBytes();
+		BTreeIndexPage[] pages = new BTreeIndexPage[(int) (file.length() / pageSize)];
+		for (int pageNumber = 1; pageNumber < pages.length; pageNumber++) {
+			pages[pageNumber] = index.readPageFromResource(new byte[pageSize], pageNumber);
+		}
+		return pages;
+	}
+
+	/**
+	 * Descends from the root to the first leaf with the key and collects all RIDs of the key.
+	 */
+	private static void lookup(BTreeIndexPage[] pages, int root, DataField key, List<RID> target) throws Exception
+	{
+		BTreeIndexPage page = pages[root];
+		while (page instanceof BTreeInnerNodePage) {
+			page = pages[((BTreeInnerNodePage) page).getChildPageForKey(key)];
+		}
+		BTreeLeafPage leaf = (BTreeLeafPage) page;
+		while (leaf.getAllsRIDsForKey(key, target) && leaf.isLastKeyContinuingOnNextPage()) {
+			leaf = (BTreeLeafPage) pages[leaf.getNextLeafPageNumber()];
+		}
+	}
+}
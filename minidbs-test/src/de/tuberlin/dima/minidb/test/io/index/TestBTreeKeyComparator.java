@@ -0,0 +1,173 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeKeyComparator;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexPageFactory;
+
+
+/**
+ * Test case for the in-place comparison of index keys and the searches of the B-Tree pages that
+ * use it.
+ */
+public class TestBTreeKeyComparator
+{
+	private static final int DUPLICATES = 25;
+
+	private static final int NUM_KEYS = 12;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	/**
+	 * Tests that the comparison of the binary keys has the sign of the <code>compareTo</code> of the
+	 * decoded keys, for all pairs of a set of values including NULL.
+	 */
+	@Test
+	public void testCompareLikeDecodedFields() throws Exception
+	{
+		checkType(DataType.smallIntType(), new SmallIntField((short) -7), new SmallIntField((short) 0),
+				new SmallIntField((short) 300), new SmallIntField(Short.MAX_VALUE));
+		checkType(DataType.intType(), new IntField(-100000), new IntField(0), new IntField(1),
+				new IntField(Integer.MAX_VALUE));
+		checkType(DataType.bigIntType(), new BigIntField(-1L << 40), new BigIntField(-1),
+				new BigIntField(5), new BigIntField(1L << 40));
+		checkType(DataType.floatType(), new FloatField(-2.5f), new FloatField(0.0f),
+				new FloatField(0.07f), new FloatField(Float.MAX_VALUE));
+		checkType(DataType.doubleType(), new DoubleField(-1e300), new DoubleField(-0.5),
+				new DoubleField(0.5), new DoubleField(Double.POSITIVE_INFINITY));
+		checkType(DataType.dateType(), new DateField(1, 0, 1970), new DateField(31, 11, 1994),
+				new DateField(1, 0, 1995), new DateField(2, 0, 1995));
+		checkType(DataType.charType(4), new CharField("ab  "), new CharField("abc "),
+				new CharField("b   "), new CharField("\u00e4bc "), new CharField("ab"));
+		checkType(DataType.varcharType(8), new VarcharField("ab"), new VarcharField("abc"),
+				new VarcharField("b"));
+	}
+
+	/**
+	 * Tests the searches of a leaf page with long runs of duplicates.
+	 */
+	@Test
+	public void testLeafPageDuplicates() throws Exception
+	{
+		IndexSchema schema = indexSchema();
+		BTreeLeafPage leaf = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[4096], 1, true);
+		// the even keys from 0 to 2 * (NUM_KEYS - 1), each DUPLICATES times
+		for (int i = 0; i < NUM_KEYS * DUPLICATES; i++) {
+			assertTrue(leaf.insertKeyRIDPair(new IntField(2 * (i % NUM_KEYS)), new RID(i)));
+		}
+
+		for (int k = 0; k < NUM_KEYS; k++) {
+			assertEquals(k * DUPLICATES, leaf.getPositionForKey(new IntField(2 * k)));
+			assertEquals((k + 1) * DUPLICATES, leaf.getPositionForKey(new IntField(2 * k + 1)));
+
+			List<RID> rids = new ArrayList<RID>();
+			boolean last = leaf.getAllsRIDsForKey(new IntField(2 * k), rids);
+			assertEquals(k == NUM_KEYS - 1, last);
+			assertEquals(DUPLICATES, rids.size());
+			for (RID rid : rids) {
+				assertEquals(k, rid.getTupleIndex() % NUM_KEYS);
+			}
+			assertFalse(leaf.getAllsRIDsForKey(new IntField(2 * k + 1), rids));
+			assertEquals(DUPLICATES, rids.size());
+		}
+		assertEquals(0, leaf.getPositionForKey(new IntField(-1)));
+
+		// delete the pair in the middle of a run, and one that is not contained
+		RID middle = new RID(3 + NUM_KEYS * (DUPLICATES / 2));
+		assertTrue(leaf.deleteKeyRIDPair(new IntField(6), middle));
+		assertFalse(leaf.deleteKeyRIDPair(new IntField(6), middle));
+		assertFalse(leaf.deleteKeyRIDPair(new IntField(8), new RID(3)));
+		List<RID> rids = new ArrayList<RID>();
+		leaf.getAllsRIDsForKey(new IntField(6), rids);
+		assertEquals(DUPLICATES - 1, rids.size());
+		assertFalse(rids.contains(middle));
+	}
+
+	/**
+	 * Tests that an inner node leads to the child of the first occurrence of a key.
+	 */
+	@Test
+	public void testInnerNodeDuplicates() throws Exception
+	{
+		IndexSchema schema = indexSchema();
+		BTreeInnerNodePage node = (BTreeInnerNodePage) IndexPageFactory.initIndexPage(schema, new byte[4096], 2, false);
+		// keys 10, 20, 20, 20, 30 with the pointers 100 to 105
+		node.initRootState(new IntField(10), 100, 101);
+		int[] keys = { 20, 20, 20, 30 };
+		for (int i = 0; i < keys.length; i++) {
+			node.insertKeyPageNumberPairAtPosition(new IntField(keys[i]), 102 + i, node.getNumberOfKeys());
+		}
+
+		assertEquals(100, node.getChildPageForKey(new IntField(5)));
+		assertEquals(100, node.getChildPageForKey(new IntField(10)));
+		assertEquals(101, node.getChildPageForKey(new IntField(15)));
+		assertEquals(101, node.getChildPageForKey(new IntField(20)));
+		assertEquals(104, node.getChildPageForKey(new IntField(25)));
+		assertEquals(105, node.getChildPageForKey(new IntField(31)));
+		assertEquals(1, node.getInsertPositionForKey(new IntField(20)));
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static IndexSchema indexSchema()
+	{
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), true));
+		return new IndexSchema(table, 0, PageSize.SIZE_4096, false, 1, 1);
+	}
+
+	/**
+	 * Compares all pairs of the values and the NULL value in both roles.
+	 */
+	private static void checkType(DataType type, DataField... values)
+	{
+		DataField[] all = new DataField[values.length + 1];
+		System.arraycopy(values, 0, all, 0, values.length);
+		all[values.length] = type.getNullValue();
+
+		int width = type.getNumberOfBytes();
+		byte[] buffer = new byte[width + 16];
+		for (DataField stored : all) {
+			Arrays.fill(buffer, (byte) 0);
+			stored.encodeBinary(buffer, 8);
+			DataField decoded = type.getFromBinary(buffer, 8, width);
+			for (DataField key : all) {
+				int expected = Integer.signum(decoded.compareTo(key));
+				int actual = Integer.signum(BTreeKeyComparator.compare(buffer, 8, type, width, key));
+				assertEquals(type + ": " + decoded + " vs. " + key, expected, actual);
+			}
+		}
+	}
+}
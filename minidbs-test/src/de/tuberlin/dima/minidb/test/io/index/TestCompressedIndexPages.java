@@ -0,0 +1,392 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkBuilder;
+import de.tuberlin.dima.minidb.io.index.BTreeCompressedInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeCompressedLeafPage;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexPageFactory;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+
+
+/**
+ * Test case for the index pages that store their keys prefix compressed, and for the indexes that
+ * are built from them.
+ */
+public class TestCompressedIndexPages
+{
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	/**
+	 * Tests that a compressed leaf page answers like a regular leaf page with the same pairs, and
+	 * that it holds more of them.
+	 */
+	@Test
+	public void testLeafPage() throws Exception
+	{
+		IndexSchema regularSchema = indexSchema(DataType.intType(), false);
+		IndexSchema compressedSchema = indexSchema(DataType.intType(), true);
+		BTreeLeafPage regular = (BTreeLeafPage) IndexPageFactory.initIndexPage(regularSchema, new byte[4096], 1, true);
+		BTreeLeafPage compressed = (BTreeLeafPage) IndexPageFactory.initIndexPage(compressedSchema, new byte[4096], 1, true);
+		assertTrue(compressed instanceof BTreeCompressedLeafPage);
+
+		// keys near a million share two bytes and need two more
+		Random random = new Random(42);
+		int num = 0;
+		DataField key = new IntField(1000000 + random.nextInt(3000));
+		while (regular.insertKeyRIDPair(key, new RID(num))) {
+			assertTrue(compressed.insertKeyRIDPair(key, new RID(num)));
+			key = new IntField(1000000 + random.nextInt(3000));
+			num++;
+		}
+		assertEquals(regularSchema.getMaximalLeafEntries(), regular.getNumberOfEntries());
+		checkSameContents(regular, compressed);
+
+		// the compressed page has room for more
+		int more = 0;
+		while (compressed.insertKeyRIDPair(new IntField(1000000 + random.nextInt(3000)), new RID(num + more))) {
+			more++;
+		}
+		assertTrue(more > 50);
+		assertEquals(((BTreeCompressedLeafPage) compressed).getCapacity(), compressed.getNumberOfEntries());
+		for (int position = compressed.getNumberOfEntries() - 1; position >= 0; position--) {
+			RID rid = compressed.getRidAtPosition(position);
+			if (rid.getTupleIndex() >= num) {
+				assertTrue(compressed.deleteKeyRIDPair(compressed.getKey(position), rid));
+			}
+		}
+		checkSameContents(regular, compressed);
+
+		// delete some pairs, then insert keys that break the prefix and need the whole width
+		for (int k = 0; k < 100; k++) {
+			int position = random.nextInt(regular.getNumberOfEntries());
+			key = regular.getKey(position);
+			RID rid = regular.getRidAtPosition(position);
+			assertTrue(regular.deleteKeyRIDPair(key, rid));
+			assertTrue(compressed.deleteKeyRIDPair(key, rid));
+			assertFalse(compressed.deleteKeyRIDPair(key, rid));
+		}
+		for (int k = 0; k < 20; k++) {
+			key = new IntField(k % 2 == 0 ? -k * 100000 : Integer.MAX_VALUE - k);
+			assertTrue(regular.insertKeyRIDPair(key, new RID(num + k)));
+			assertTrue(compressed.insertKeyRIDPair(key, new RID(num + k)));
+		}
+		checkSameContents(regular, compressed);
+
+		// reading the page from its buffer again
+		BTreeLeafPage reread = (BTreeLeafPage) IndexPageFactory.createPage(compressedSchema, compressed.getBuffer());
+		assertTrue(reread instanceof BTreeCompressedLeafPage);
+		checkSameContents(regular, reread);
+	}
+
+	/**
+	 * Tests moving entries between compressed leaf pages.
+	 */
+	@Test
+	public void testMoveLeafEntries() throws Exception
+	{
+		IndexSchema schema = indexSchema(DataType.charType(6), true);
+		BTreeLeafPage left = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[4096], 1, true);
+		BTreeLeafPage right = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[4096], 2, true);
+		for (int i = 0; i < 40; i++) {
+			assertTrue(left.appendKeyRIDPair(new CharField(String.format("a%05d", i)), new RID(i)));
+			assertTrue(right.appendKeyRIDPair(new CharField(String.format("b%05d", i)), new RID(100 + i)));
+		}
+
+		assertTrue(left.appendEntriesFromOtherPage(right, 10));
+		assertEquals(50, left.getNumberOfEntries());
+		assertEquals(30, right.getNumberOfEntries());
+		assertEquals(new CharField("b00009"), left.getLastKey());
+		assertEquals(new RID(109), left.getRIDForKey(new CharField("b00009")));
+		assertEquals(new CharField("b00010"), right.getFirstKey());
+
+		assertTrue(right.prependEntriesFromOtherPage(left, 20));
+		assertEquals(30, left.getNumberOfEntries());
+		assertEquals(50, right.getNumberOfEntries());
+		assertEquals(new CharField("a00029"), left.getLastKey());
+		assertEquals(new CharField("a00030"), right.getFirstKey());
+		assertEquals(new RID(30), right.getRidAtPosition(0));
+		assertEquals(10, right.getPositionForKey(new CharField("b")));
+		assertNull(right.getRIDForKey(new CharField("a")));
+		assertEquals(new RID(110), right.getRIDForKey(new CharField("b00010")));
+	}
+
+	/**
+	 * Tests the lookups and modifications of a compressed inner node.
+	 */
+	@Test
+	public void testInnerNodePage() throws Exception
+	{
+		IndexSchema schema = indexSchema(DataType.dateType(), true);
+		BTreeInnerNodePage node = (BTreeInnerNodePage) IndexPageFactory.initIndexPage(schema, new byte[4096], 3, false);
+		assertTrue(node instanceof BTreeCompressedInnerNodePage);
+
+		// the first of each month in 1995 and 1996, with the pointers 100 to 124
+		node.initRootState(new DateField(1, 0, 1995), 100, 101);
+		for (int i = 1; i < 24; i++) {
+			assertTrue(node.insertKeyPageNumberPair(new DateField(1, i % 12, 1995 + i / 12), 101 + i));
+		}
+		assertEquals(24, node.getNumberOfKeys());
+		assertEquals(100, node.getChildPageForKey(new DateField(1, 0, 1995)));
+		assertEquals(101, node.getChildPageForKey(new DateField(2, 0, 1995)));
+		assertEquals(113, node.getChildPageForKey(new DateField(15, 0, 1996)));
+		assertEquals(124, node.getChildPageForKey(new DateField(1, 0, 1997)));
+		assertEquals(100, node.getChildPageForKey(new DateField(1, 0, 1970)));
+		assertEquals(12, node.getChildWithKeyAndPosition(new DateField(1, 0, 1996)).getPosition());
+
+		// a key that breaks the common prefix
+		node.setKey(new DateField(2, 0, 1970), 0);
+		assertEquals(new DateField(2, 0, 1970), node.getFirstKey());
+		assertEquals(100, node.getChildPageForKey(new DateField(1, 0, 1970)));
+		assertEquals(101, node.getChildPageForKey(new DateField(3, 0, 1970)));
+		node.deleteKeyAndPointer(0);
+		assertEquals(new DateField(1, 1, 1995), node.getFirstKey());
+		assertEquals(100, node.getPointer(0));
+		assertEquals(102, node.getPointer(1));
+
+		BTreeInnerNodePage other = (BTreeInnerNodePage) IndexPageFactory.initIndexPage(schema, new byte[4096], 4, false);
+		DataField middle = node.moveLastToNewPage(other, 10);
+		assertEquals(new DateField(1, 2, 1996), middle);
+		assertEquals(13, node.getNumberOfKeys());
+		assertEquals(9, other.getNumberOfKeys());
+		assertEquals(115, other.getPointer(0));
+		assertEquals(124, other.getPointer(9));
+		assertEquals(new DateField(1, 3, 1996), other.getFirstKey());
+
+		BTreeInnerNodePage reread = (BTreeInnerNodePage) IndexPageFactory.createPage(schema, other.getBuffer());
+		assertEquals(other.toString(), reread.toString());
+	}
+
+	/**
+	 * Tests that bulk built compressed indexes are shallower than regular ones, that a descent from
+	 * the root finds every key, and that the format is kept in the index header.
+	 */
+	@Test
+	public void testBulkBuiltIndex() throws Exception
+	{
+		// about four pairs per key, as for the orders of the line items
+		int num = 200000;
+		File regularFile = File.createTempFile("minidb-regular", ".mdidx");
+		File compressedFile = File.createTempFile("minidb-compressed", ".mdidx");
+		IndexSchema regularSchema = indexSchema(DataType.intType(), false);
+		IndexSchema compressedSchema = indexSchema(DataType.intType(), true);
+		IndexResourceManager regular = IndexResourceManager.createIndex(regularFile, regularSchema);
+		IndexResourceManager compressed = IndexResourceManager.createIndex(compressedFile, compressedSchema);
+		try {
+			BTreeBulkBuilder regularBuilder = build(regular, num);
+			BTreeBulkBuilder compressedBuilder = build(compressed, num);
+			assertEquals(3, regularBuilder.getStatistics().getTreeDepth());
+			assertEquals(2, compressedBuilder.getStatistics().getTreeDepth());
+			assertTrue(compressedBuilder.getNumberOfLeaves() < regularBuilder.getNumberOfLeaves());
+		}
+		finally {
+			regular.closeResource();
+			compressed.closeResource();
+		}
+
+		try {
+			regular = IndexResourceManager.openIndex(regularFile, regularSchema.getIndexTableSchema());
+			assertFalse(regular.getSchema().isCompressed());
+			regular.closeResource();
+
+			compressed = IndexResourceManager.openIndex(compressedFile, compressedSchema.getIndexTableSchema());
+			assertTrue(compressed.getSchema().isCompressed());
+			for (int key = -1; key <= num / 4; key += 97) {
+				List<RID> rids = lookup(compressed, new IntField(key));
+				assertEquals(key < 0 || key == num / 4 ? 0 : 4, rids.size());
+				for (RID rid : rids) {
+					assertEquals(key, rid.getTupleIndex() / 4);
+				}
+			}
+			compressed.closeResource();
+		}
+		finally {
+			IndexResourceManager.deleteIndex(regularFile);
+			IndexResourceManager.deleteIndex(compressedFile);
+		}
+	}
+
+	/**
+	 * Tests that a single child left over for the last inner node is not added to the node before
+	 * it, when that node is full already. The keys after the first ten come in pairs that share a
+	 * long middle part, and the leaves split the pairs, so the separators between their leaves are
+	 * long. At a fill factor of 0.3, an inner node has room for one of them only, and the nodes
+	 * above those leaves must each hold at most one.
+	 */
+	@Test
+	public void testSingleLeftoverChild() throws Exception
+	{
+		int width = 480;
+		int longPart = 330;
+		StringBuilder middle = new StringBuilder();
+		for (int i = 0; i < longPart; i++) {
+			middle.append('x');
+		}
+		List<CharField> keys = new ArrayList<CharField>();
+		for (int i = 0; i < 10; i++) {
+			keys.add(new CharField(String.format("A%05d", i)));
+		}
+		for (int i = 0; i < 24; i++) {
+			int pair = i / 2;
+			keys.add(new CharField("" + (char) ('C' + pair / 26) + (char) ('a' + pair % 26) + middle + String.format("%05d", i)));
+		}
+
+		File file = File.createTempFile("minidb-leftover", ".mdidx");
+		IndexSchema schema = indexSchema(DataType.charType(width), true);
+		IndexResourceManager index = IndexResourceManager.createIndex(file, schema);
+		try {
+			BTreeBulkBuilder builder = new BTreeBulkBuilder(index, 0.3f, 4);
+			for (int i = 0; i < keys.size(); i++) {
+				builder.addEntry(keys.get(i), new RID(i));
+			}
+			builder.finish();
+
+			// descend to the inner nodes right above the leaves
+			List<Integer> level = new ArrayList<Integer>();
+			level.add(index.getSchema().getRootPageNumber());
+			List<BTreeInnerNodePage> nodes = new ArrayList<BTreeInnerNodePage>();
+			while (!level.isEmpty()) {
+				nodes.clear();
+				List<Integer> children = new ArrayList<Integer>();
+				for (int pageNumber : level) {
+					BTreeIndexPage page = readPage(index, pageNumber);
+					if (page instanceof BTreeInnerNodePage) {
+						BTreeInnerNodePage node = (BTreeInnerNodePage) page;
+						nodes.add(node);
+						for (int i = 0; i <= node.getNumberOfKeys(); i++) {
+							children.add(node.getPointer(i));
+						}
+					}
+				}
+				if (!(readPage(index, children.get(0)) instanceof BTreeInnerNodePage)) {
+					break;
+				}
+				level = children;
+			}
+			assertTrue(nodes.size() > 2);
+			for (BTreeInnerNodePage node : nodes) {
+				int numLong = 0;
+				for (int i = 0; i < node.getNumberOfKeys(); i++) {
+					// a separator ends where its value is filled up with the highest character
+					String separator = ((CharField) node.getKey(i)).getValue();
+					int end = separator.indexOf('\uffff');
+					if ((end < 0 ? separator.trim().length() : end) > longPart) {
+						numLong++;
+					}
+				}
+				assertTrue(node.getNumberOfKeys() + " keys, " + numLong + " long", numLong <= 1);
+			}
+
+			for (int i = 0; i < keys.size(); i++) {
+				List<RID> rids = lookup(index, keys.get(i));
+				assertEquals(1, rids.size());
+				assertEquals(i, rids.get(0).getTupleIndex());
+			}
+		}
+		finally {
+			index.closeResource();
+			IndexResourceManager.deleteIndex(file);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static IndexSchema indexSchema(DataType type, boolean compressed)
+	{
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("key", type, true));
+		IndexSchema schema = new IndexSchema(table, 0, PageSize.SIZE_4096, false, 1, 1);
+		schema.setCompressed(compressed);
+		return schema;
+	}
+
+	private static void checkSameContents(BTreeLeafPage expected, BTreeLeafPage actual) throws Exception
+	{
+		assertEquals(expected.getNumberOfEntries(), actual.getNumberOfEntries());
+		assertEquals(expected.getFirstKey(), actual.getFirstKey());
+		assertEquals(expected.getLastKey(), actual.getLastKey());
+		List<DataField> expectedKeys = new ArrayList<DataField>();
+		List<DataField> actualKeys = new ArrayList<DataField>();
+		expected.getAllKeys(expectedKeys, 0);
+		actual.getAllKeys(actualKeys, 0);
+		assertEquals(expectedKeys, actualKeys);
+		for (DataField key : expectedKeys) {
+			int probe = ((IntField) key).getValue();
+			for (int delta = -1; delta <= 1; delta++) {
+				IntField probeKey = new IntField(probe + delta);
+				assertEquals(expected.getPositionForKey(probeKey), actual.getPositionForKey(probeKey));
+				List<RID> expectedRids = new ArrayList<RID>();
+				List<RID> actualRids = new ArrayList<RID>();
+				assertEquals(expected.getAllsRIDsForKey(probeKey, expectedRids), actual.getAllsRIDsForKey(probeKey, actualRids));
+				assertEquals(expectedRids.size(), actualRids.size());
+				assertTrue(actualRids.containsAll(expectedRids));
+			}
+		}
+	}
+
+	/**
+	 * Builds the index over the pairs with the keys i / 4 and the RIDs i, for i from 0 to num.
+	 */
+	private static BTreeBulkBuilder build(IndexResourceManager index, int num) throws Exception
+	{
+		BTreeBulkBuilder builder = new BTreeBulkBuilder(index);
+		for (int i = 0; i < num; i++) {
+			builder.addEntry(new IntField(i / 4), new RID(i));
+		}
+		builder.finish();
+		return builder;
+	}
+
+	private static BTreeIndexPage readPage(IndexResourceManager index, int pageNumber) throws Exception
+	{
+		return index.readPageFromResource(new byte[index.getPageSize().getNumberOfBytes()], pageNumber);
+	}
+
+	/**
+	 * Descends from the root to the first leaf with the key and collects the RIDs of the key
+	 * from there on.
+	 */
+	private static List<RID> lookup(IndexResourceManager index, DataField key) throws Exception
+	{
+		BTreeIndexPage page = readPage(index, index.getSchema().getRootPageNumber());
+		while (page instanceof BTreeInnerNodePage) {
+			assertTrue(page instanceof BTreeCompressedInnerNodePage);
+			page = readPage(index, ((BTreeInnerNodePage) page).getChildPageForKey(key));
+		}
+		List<RID> rids = new ArrayList<RID>();
+		BTreeLeafPage leaf = (BTreeLeafPage) page;
+		while (leaf.getAllsRIDsForKey(key, rids) && leaf.isLastKeyContinuingOnNextPage()) {
+			leaf = (BTreeLeafPage) readPage(index, leaf.getNextLeafPageNumber());
+		}
+		return rids;
+	}
+}
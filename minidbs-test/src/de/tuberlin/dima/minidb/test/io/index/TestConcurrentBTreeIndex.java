@@ -0,0 +1,390 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DuplicateException;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+
+
+/**
+ * Stress test for the B-Tree index under concurrent inserts and lookups.
+ */
+public class TestConcurrentBTreeIndex
+{
+	private static final int RESOURCE_ID = 1;
+
+	private static final int NUM_THREADS = 8;
+
+	private File file;
+
+	private IndexResourceManager manager;
+
+	private BufferPoolManager bufferPool;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.file = File.createTempFile("minidb-concurrent", ".mdidx");
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.bufferPool != null) {
+			this.bufferPool.closeBufferPool();
+		}
+		if (this.manager != null) {
+			this.manager.closeResource();
+		}
+		IndexResourceManager.deleteIndex(this.file);
+	}
+
+	/**
+	 * Tests lookups and range scans after inserts in random order by a single thread.
+	 */
+	@Test
+	public void testSingleThread() throws Exception
+	{
+		BTreeIndex index = createIndex(false, false);
+		Random random = new Random(7);
+		int num = 50000;
+		int[] keys = new int[num];
+		for (int i = 0; i < num; i++) {
+			keys[i] = random.nextInt(num / 5);
+			index.insertEntry(new IntField(keys[i]), new RID(i));
+		}
+
+		int[] counts = new int[num / 5];
+		for (int key : keys) {
+			counts[key]++;
+		}
+		for (int key = -1; key <= num / 5; key += 13) {
+			List<RID> rids = collect(index.lookupRids(new IntField(key)));
+			assertEquals(key < 0 || key == num / 5 ? 0 : counts[key], rids.size());
+			for (RID rid : rids) {
+				assertEquals(key, keys[(int) rid.getID()]);
+			}
+		}
+
+		// a range with open bounds
+		List<DataField> range = collect(index.lookupKeys(new IntField(100), new IntField(200), false, false));
+		int expected = 0;
+		for (int key = 101; key < 200; key++) {
+			expected += counts[key];
+		}
+		assertEquals(expected, range.size());
+		for (int i = 0; i < range.size(); i++) {
+			int key = ((IntField) range.get(i)).getValue();
+			assertTrue(key > 100 && key < 200);
+			assertTrue(i == 0 || ((IntField) range.get(i - 1)).getValue() <= key);
+		}
+
+		checkAllPairs(index, keys);
+
+		// the pages and the new root were written
+		checkAllPairs(reopenIndex(), keys);
+	}
+
+	/**
+	 * Tests that a batch of keys in random order, with repeated and missing keys, finds the same
+	 * RIDs as single lookups, on an index whose keys span several leaves.
+	 */
+	@Test
+	public void testBatchLookup() throws Exception
+	{
+		BTreeIndex index = createIndex(false, false);
+		Random random = new Random(11);
+		int numKeys = 3000;
+		for (int i = 0; i < 60000; i++) {
+			// a few keys have enough pairs to fill several leaves
+			int key = i % 20 == 0 ? random.nextInt(4) * 1000 : random.nextInt(numKeys);
+			index.insertEntry(new IntField(key), new RID(i));
+		}
+
+		DataField[] probes = new DataField[2000];
+		for (int i = 0; i < probes.length; i++) {
+			probes[i] = new IntField(random.nextInt(numKeys + 20) - 10);
+		}
+		probes[1] = probes[0];
+		List<List<RID>> batch = index.lookupRids(probes);
+		assertEquals(probes.length, batch.size());
+		for (int i = 0; i < probes.length; i++) {
+			assertEquals(collect(index.lookupRids(probes[i])), batch.get(i));
+		}
+		assertTrue(index.lookupRids(new DataField[0]).isEmpty());
+	}
+
+	/**
+	 * Tests threads that insert pairs while others look up the pairs that have been inserted.
+	 */
+	@Test
+	public void testConcurrentInsertsAndLookups() throws Exception
+	{
+		runInsertsAndLookups(createIndex(false, false));
+	}
+
+	/**
+	 * Tests concurrent inserts and lookups on an index with posting list leaves and compressed inner
+	 * nodes.
+	 */
+	@Test
+	public void testConcurrentInsertsAndLookupsPostingLists() throws Exception
+	{
+		runInsertsAndLookups(createIndex(true, true));
+	}
+
+	/**
+	 * Tests that threads inserting the same keys into a unique index succeed exactly once per key.
+	 */
+	@Test
+	public void testConcurrentUniqueInserts() throws Exception
+	{
+		final BTreeIndex index = createUniqueIndex();
+		final int num = 20000;
+		final AtomicInteger inserted = new AtomicInteger();
+		final AtomicInteger duplicates = new AtomicInteger();
+		runThreads(NUM_THREADS, new Task() {
+			@Override
+			public void run(int thread) throws Exception
+			{
+				for (int key : shuffled(num, thread)) {
+					try {
+						index.insertEntry(new IntField(key), new RID(thread, key));
+						inserted.incrementAndGet();
+					}
+					catch (DuplicateException dex) {
+						duplicates.incrementAndGet();
+					}
+				}
+			}
+		});
+		assertEquals(num, inserted.get());
+		assertEquals((NUM_THREADS - 1) * num, duplicates.get());
+		List<DataField> keys = collect(index.lookupKeys(new IntField(Integer.MIN_VALUE), new IntField(Integer.MAX_VALUE), true, true));
+		assertEquals(num, keys.size());
+		for (int i = 0; i < num; i++) {
+			assertEquals(new IntField(i), keys.get(i));
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void runInsertsAndLookups(final BTreeIndex index) throws Exception
+	{
+		// every thread inserts its own share of the pairs, three pairs per key, in random order
+		final int num = 120000;
+		final int[] keys = new int[num];
+		for (int i = 0; i < num; i++) {
+			keys[i] = i / 3;
+		}
+		final ConcurrentLinkedQueue<Integer> published = new ConcurrentLinkedQueue<Integer>();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicInteger writers = new AtomicInteger(NUM_THREADS / 2);
+		final AtomicInteger checked = new AtomicInteger();
+
+		runThreads(NUM_THREADS, new Task() {
+			@Override
+			public void run(int thread) throws Exception
+			{
+				if (thread < NUM_THREADS / 2) {
+					try {
+						for (int i : shuffled(num, thread)) {
+							if (i % (NUM_THREADS / 2) == thread) {
+								index.insertEntry(new IntField(keys[i]), new RID(i));
+								published.add(i);
+							}
+						}
+					}
+					finally {
+						if (writers.decrementAndGet() == 0) {
+							writing.set(false);
+						}
+					}
+				}
+				else {
+					// a pair that was inserted before the lookup started must be found
+					Random random = new Random(thread);
+					while (writing.get()) {
+						Integer i = published.peek();
+						if (i == null) {
+							continue;
+						}
+						int key = keys[i] + random.nextInt(3) - 1;
+						List<RID> rids = collect(index.lookupRids(new IntField(Math.max(0, key))));
+						boolean found = false;
+						for (RID rid : rids) {
+							assertEquals(Math.max(0, key), keys[(int) rid.getID()]);
+							found |= rid.getID() == i;
+						}
+						assertTrue(key != keys[i] || found);
+						assertTrue(rids.size() <= 3);
+						published.poll();
+						checked.incrementAndGet();
+					}
+				}
+			}
+		});
+		assertTrue(checked.get() > 0);
+		checkAllPairs(index, keys);
+	}
+
+	/**
+	 * Checks that a scan over all keys returns every pair exactly once, in the order of the keys.
+	 */
+	private static void checkAllPairs(BTreeIndex index, int[] keys) throws Exception
+	{
+		IntField min = new IntField(Integer.MIN_VALUE);
+		IntField max = new IntField(Integer.MAX_VALUE);
+		List<RID> rids = collect(index.lookupRids(min, max, true, true));
+		List<DataField> scanned = collect(index.lookupKeys(min, max, true, true));
+		assertEquals(keys.length, rids.size());
+		assertEquals(keys.length, scanned.size());
+		boolean[] seen = new boolean[keys.length];
+		for (int i = 0; i < rids.size(); i++) {
+			int id = (int) rids.get(i).getID();
+			assertFalse(seen[id]);
+			seen[id] = true;
+			assertEquals(new IntField(keys[id]), scanned.get(i));
+			assertTrue(i == 0 || keys[(int) rids.get(i - 1).getID()] <= keys[id]);
+		}
+	}
+
+	private BTreeIndex createIndex(boolean postingLists, boolean compressed) throws Exception
+	{
+		IndexSchema schema = new IndexSchema(tableSchema(), 0, PageSize.SIZE_4096, false, 1, 1);
+		schema.setPostingLists(postingLists);
+		schema.setCompressed(compressed);
+		return createIndex(schema);
+	}
+
+	private BTreeIndex createUniqueIndex() throws Exception
+	{
+		return createIndex(new IndexSchema(tableSchema(), 0, PageSize.SIZE_4096, true, 1, 1));
+	}
+
+	private static TableSchema tableSchema()
+	{
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), true));
+		return table;
+	}
+
+	private BTreeIndex createIndex(IndexSchema schema) throws Exception
+	{
+		this.manager = IndexResourceManager.createIndex(this.file, schema);
+		return openIndex(this.manager);
+	}
+
+	private BTreeIndex reopenIndex() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.bufferPool = null;
+		this.manager.closeResource();
+		this.manager = IndexResourceManager.openIndex(this.file, tableSchema());
+		return openIndex(this.manager);
+	}
+
+	private BTreeIndex openIndex(IndexResourceManager manager) throws Exception
+	{
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(RESOURCE_ID, manager);
+		return AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(manager.getSchema(), this.bufferPool, RESOURCE_ID);
+	}
+
+	private static <E> List<E> collect(IndexResultIterator<E> iterator) throws Exception
+	{
+		List<E> list = new ArrayList<E>();
+		while (iterator.hasNext()) {
+			list.add(iterator.next());
+		}
+		return list;
+	}
+
+	private static List<Integer> shuffled(int num, int seed)
+	{
+		List<Integer> list = new ArrayList<Integer>(num);
+		for (int i = 0; i < num; i++) {
+			list.add(i);
+		}
+		Collections.shuffle(list, new Random(seed));
+		return list;
+	}
+
+	private interface Task
+	{
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * Runs the task in the given number of threads, which start at the same time, and rethrows the
+	 * first error of a thread.
+	 */
+	private static void runThreads(int num, final Task task) throws Exception
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[num];
+		for (int t = 0; t < num; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					try {
+						start.await();
+						task.run(thread);
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (error.get() instanceof Exception) {
+			throw (Exception) error.get();
+		}
+		else if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+	}
+}
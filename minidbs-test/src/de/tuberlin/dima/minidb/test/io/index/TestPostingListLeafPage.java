@@ -0,0 +1,307 @@
+package de.tuberlin.dima.minidb.test.io.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeBulkBuilder;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.BTreePostingListLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexPageFactory;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+
+
+/**
+ * Test case for the leaf pages that store each key once with the list of its RIDs, and for the
+ * indexes that are built from them.
+ */
+public class TestPostingListLeafPage
+{
+	private static final Comparator<RID> ASCENDING_IDS = new Comparator<RID>() {
+		@Override
+		public int compare(RID first, RID second)
+		{
+			return first.getID() < second.getID() ? -1 : first.getID() == second.getID() ? 0 : 1;
+		}
+	};
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	/**
+	 * Tests that a posting list leaf page answers like a regular leaf page with the same pairs, and
+	 * that it holds more of them.
+	 */
+	@Test
+	public void testLeafPage() throws Exception
+	{
+		IndexSchema regularSchema = indexSchema(false);
+		IndexSchema postingSchema = indexSchema(true);
+		BTreeLeafPage regular = (BTreeLeafPage) IndexPageFactory.initIndexPage(regularSchema, new byte[4096], 1, true);
+		BTreeLeafPage posting = (BTreeLeafPage) IndexPageFactory.initIndexPage(postingSchema, new byte[4096], 1, true);
+		assertTrue(posting instanceof BTreePostingListLeafPage);
+
+		// about ten pairs per key, with RIDs near each other
+		Random random = new Random(42);
+		int num = 0;
+		DataField key = new IntField(random.nextInt(40));
+		while (regular.insertKeyRIDPair(key, new RID(num * 3))) {
+			assertTrue(posting.insertKeyRIDPair(key, new RID(num * 3)));
+			key = new IntField(random.nextInt(40));
+			num++;
+		}
+		assertEquals(regularSchema.getMaximalLeafEntries(), regular.getNumberOfEntries());
+		checkSameContents(regular, posting);
+
+		// the posting list page has room for many more
+		int more = 0;
+		while (posting.insertKeyRIDPair(new IntField(random.nextInt(40)), new RID((num + more) * 3))) {
+			more++;
+		}
+		assertTrue(more > 1000);
+		for (int position = posting.getNumberOfEntries() - 1; position >= 0; position--) {
+			RID rid = posting.getRidAtPosition(position);
+			if (rid.getID() >= num * 3) {
+				assertTrue(posting.deleteKeyRIDPair(posting.getKey(position), rid));
+			}
+		}
+		checkSameContents(regular, posting);
+
+		// delete some pairs, then insert new keys and RIDs far apart
+		for (int k = 0; k < 100; k++) {
+			int position = random.nextInt(regular.getNumberOfEntries());
+			key = regular.getKey(position);
+			RID rid = regular.getRidAtPosition(position);
+			assertTrue(regular.deleteKeyRIDPair(key, rid));
+			assertTrue(posting.deleteKeyRIDPair(key, rid));
+			assertFalse(posting.deleteKeyRIDPair(key, rid));
+		}
+		for (int k = 0; k < 20; k++) {
+			key = new IntField(k % 2 == 0 ? -k : 1000 + k);
+			RID rid = new RID(k * 1000, k);
+			assertTrue(regular.insertKeyRIDPair(key, rid));
+			assertTrue(posting.insertKeyRIDPair(key, rid));
+		}
+		checkSameContents(regular, posting);
+
+		// deleting all pairs of a key removes the key
+		int keys = ((BTreePostingListLeafPage) posting).getNumberOfKeys();
+		assertTrue(posting.deleteKeyRIDPair(new IntField(-2), new RID(2000, 2)));
+		assertTrue(regular.deleteKeyRIDPair(new IntField(-2), new RID(2000, 2)));
+		assertEquals(keys - 1, ((BTreePostingListLeafPage) posting).getNumberOfKeys());
+		assertNull(posting.getRIDForKey(new IntField(-2)));
+		assertFalse(((BTreePostingListLeafPage) posting).getRIDIteratorForKey(new IntField(-2)).hasNext());
+
+		// reading the page from its buffer again
+		BTreeLeafPage reread = (BTreeLeafPage) IndexPageFactory.createPage(postingSchema, posting.getBuffer());
+		assertTrue(reread instanceof BTreePostingListLeafPage);
+		checkSameContents(regular, reread);
+	}
+
+	/**
+	 * Tests moving entries between posting list leaf pages, also when the moved pairs split the
+	 * posting list of a key.
+	 */
+	@Test
+	public void testMoveLeafEntries() throws Exception
+	{
+		IndexSchema schema = indexSchema(true);
+		BTreeLeafPage left = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[4096], 1, true);
+		BTreeLeafPage right = (BTreeLeafPage) IndexPageFactory.initIndexPage(schema, new byte[4096], 2, true);
+		for (int i = 0; i < 40; i++) {
+			assertTrue(left.appendKeyRIDPair(new IntField(i / 4), new RID(i)));
+			assertTrue(right.appendKeyRIDPair(new IntField(100 + i / 4), new RID(100 + i)));
+		}
+
+		assertTrue(left.appendEntriesFromOtherPage(right, 10));
+		assertEquals(50, left.getNumberOfEntries());
+		assertEquals(30, right.getNumberOfEntries());
+		assertEquals(new IntField(102), left.getLastKey());
+		assertEquals(new RID(108), left.getRIDForKey(new IntField(102)));
+		assertEquals(new IntField(102), right.getFirstKey());
+		assertEquals(new RID(110), right.getRIDForKey(new IntField(102)));
+
+		assertTrue(right.prependEntriesFromOtherPage(left, 21));
+		assertEquals(29, left.getNumberOfEntries());
+		assertEquals(51, right.getNumberOfEntries());
+		assertEquals(new IntField(7), left.getLastKey());
+		assertEquals(new IntField(7), right.getFirstKey());
+		assertEquals(new RID(29), right.getRidAtPosition(0));
+		assertEquals(new RID(110), right.getRidAtPosition(21));
+		assertEquals(19, right.getPositionForKey(new IntField(102)));
+		List<RID> rids = new ArrayList<RID>();
+		assertFalse(right.getAllsRIDsForKey(new IntField(102), rids));
+		assertEquals(4, rids.size());
+		assertNull(right.getRIDForKey(new IntField(6)));
+	}
+
+	/**
+	 * Tests that bulk built indexes with posting lists have fewer leaves than regular ones, that a
+	 * descent from the root streams all RIDs of every key, and that the format is kept in the index
+	 * header.
+	 */
+	@Test
+	public void testBulkBuiltIndex() throws Exception
+	{
+		// about sixteen pairs per key
+		int num = 200000;
+		File regularFile = File.createTempFile("minidb-regular", ".mdidx");
+		File postingFile = File.createTempFile("minidb-posting", ".mdidx");
+		IndexSchema regularSchema = indexSchema(false);
+		IndexSchema postingSchema = indexSchema(true);
+		IndexResourceManager regular = IndexResourceManager.createIndex(regularFile, regularSchema);
+		IndexResourceManager posting = IndexResourceManager.createIndex(postingFile, postingSchema);
+		try {
+			BTreeBulkBuilder regularBuilder = build(regular, num);
+			BTreeBulkBuilder postingBuilder = build(posting, num);
+			assertTrue(postingBuilder.getNumberOfLeaves() * 3 < regularBuilder.getNumberOfLeaves());
+		}
+		finally {
+			regular.closeResource();
+			posting.closeResource();
+		}
+
+		try {
+			regular = IndexResourceManager.openIndex(regularFile, regularSchema.getIndexTableSchema());
+			assertFalse(regular.getSchema().hasPostingLists());
+			regular.closeResource();
+
+			posting = IndexResourceManager.openIndex(postingFile, postingSchema.getIndexTableSchema());
+			assertTrue(posting.getSchema().hasPostingLists());
+			for (int key = -1; key <= num / 16; key += 97) {
+				List<RID> rids = lookup(posting, new IntField(key));
+				assertEquals(key < 0 || key == num / 16 ? 0 : 16, rids.size());
+				for (int i = 0; i < rids.size(); i++) {
+					assertEquals(new RID(key * 16 + i), rids.get(i));
+				}
+			}
+			posting.closeResource();
+		}
+		finally {
+			IndexResourceManager.deleteIndex(regularFile);
+			IndexResourceManager.deleteIndex(postingFile);
+		}
+	}
+
+	/**
+	 * Tests that unique indexes reject posting lists.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUniqueIndex() throws Exception
+	{
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), true));
+		new IndexSchema(table, 0, PageSize.SIZE_4096, true, 1, 1).setPostingLists(true);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static IndexSchema indexSchema(boolean postingLists)
+	{
+		TableSchema table = new TableSchema(PageSize.SIZE_4096);
+		table.addColumn(ColumnSchema.createColumnSchema("key", DataType.intType(), true));
+		IndexSchema schema = new IndexSchema(table, 0, PageSize.SIZE_4096, false, 1, 1);
+		schema.setPostingLists(postingLists);
+		return schema;
+	}
+
+	private static void checkSameContents(BTreeLeafPage expected, BTreeLeafPage actual) throws Exception
+	{
+		assertEquals(expected.getNumberOfEntries(), actual.getNumberOfEntries());
+		assertEquals(expected.getFirstKey(), actual.getFirstKey());
+		assertEquals(expected.getLastKey(), actual.getLastKey());
+		List<DataField> expectedKeys = new ArrayList<DataField>();
+		List<DataField> actualKeys = new ArrayList<DataField>();
+		expected.getAllKeys(expectedKeys, 0);
+		actual.getAllKeys(actualKeys, 0);
+		assertEquals(expectedKeys, actualKeys);
+		for (DataField key : expectedKeys) {
+			int probe = ((IntField) key).getValue();
+			for (int delta = -1; delta <= 1; delta++) {
+				IntField probeKey = new IntField(probe + delta);
+				assertEquals(expected.getPositionForKey(probeKey), actual.getPositionForKey(probeKey));
+				List<RID> expectedRids = new ArrayList<RID>();
+				List<RID> actualRids = new ArrayList<RID>();
+				assertEquals(expected.getAllsRIDsForKey(probeKey, expectedRids), actual.getAllsRIDsForKey(probeKey, actualRids));
+
+				// the posting list holds the RIDs in ascending order
+				Collections.sort(expectedRids, ASCENDING_IDS);
+				assertEquals(expectedRids, actualRids);
+				List<RID> streamed = new ArrayList<RID>();
+				IndexResultIterator<RID> iterator = ((BTreePostingListLeafPage) actual).getRIDIteratorForKey(probeKey);
+				while (iterator.hasNext()) {
+					streamed.add(iterator.next());
+				}
+				assertEquals(expectedRids, streamed);
+			}
+		}
+	}
+
+	/**
+	 * Builds the index over the pairs with the keys i / 16 and the RIDs i, for i from 0 to num.
+	 */
+	private static BTreeBulkBuilder build(IndexResourceManager index, int num) throws Exception
+	{
+		BTreeBulkBuilder builder = new BTreeBulkBuilder(index);
+		for (int i = 0; i < num; i++) {
+			builder.addEntry(new IntField(i / 16), new RID(i));
+		}
+		builder.finish();
+		return builder;
+	}
+
+	private static BTreeIndexPage readPage(IndexResourceManager index, int pageNumber) throws Exception
+	{
+		return index.readPageFromResource(new byte[index.getPageSize().getNumberOfBytes()], pageNumber);
+	}
+
+	/**
+	 * Descends from the root to the first leaf with the key and streams the RIDs of the key from
+	 * there on.
+	 */
+	private static List<RID> lookup(IndexResourceManager index, DataField key) throws Exception
+	{
+		BTreeIndexPage page = readPage(index, index.getSchema().getRootPageNumber());
+		while (page instanceof BTreeInnerNodePage) {
+			page = readPage(index, ((BTreeInnerNodePage) page).getChildPageForKey(key));
+		}
+		List<RID> rids = new ArrayList<RID>();
+		BTreePostingListLeafPage leaf = (BTreePostingListLeafPage) page;
+		while (true) {
+			IndexResultIterator<RID> iterator = leaf.getRIDIteratorForKey(key);
+			while (iterator.hasNext()) {
+				rids.add(iterator.next());
+			}
+			if (leaf.getNumberOfEntries() == 0 || !key.equals(leaf.getLastKey()) || !leaf.isLastKeyContinuingOnNextPage()) {
+				return rids;
+			}
+			leaf = (BTreePostingListLeafPage) readPage(index, leaf.getNextLeafPageNumber());
+		}
+	}
+}
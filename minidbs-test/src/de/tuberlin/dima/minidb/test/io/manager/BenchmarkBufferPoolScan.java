@@ -0,0 +1,110 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Compares a sequential scan of the <tt>lineitem</tt> table through the buffer pool with reading
+ * the same pages directly from the file channel in blocks of
+ * {@link BufferPoolManager#MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE} pages, and with reading them from
+ * memory mapped regions of the file.
+ * <p>
+ * The buffer pool scan prefetches one block ahead of the page it consumes, like the table scan does,
+ * so the reader thread gets the chance to merge the requests of a block into one vectored read.
+ */
+@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3, callgc = false)
+public class BenchmarkBufferPoolScan extends AbstractBenchmark
+{
+	private static final int BLOCK = BufferPoolManager.MAX_PAGE_REQUESTS_IN_SINGLE_QUEUE;
+
+	private static File tableFile;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		tableFile = new File(BenchmarkBufferPoolScan.class.getResource("/data/lineitem.mdtbl").getPath());
+	}
+
+	@Test
+	public void rawChannelScan() throws Exception
+	{
+		rawScan(false);
+	}
+
+	@Test
+	public void rawMappedScan() throws Exception
+	{
+		rawScan(true);
+	}
+
+	private static void rawScan(boolean mapped) throws Exception
+	{
+		TableResourceManager table = TableResourceManager.openTable(tableFile);
+		try {
+			if (mapped) {
+				table.enableMappedReads();
+			}
+			int pageBytes = table.getPageSize().getNumberOfBytes();
+			byte[][] buffers = new byte[BLOCK][pageBytes];
+
+			int page = table.getFirstDataPageNumber();
+			int last = table.getLastDataPageNumber();
+			while (page <= last) {
+				int num = Math.min(BLOCK, last - page + 1);
+				byte[][] block = buffers;
+				if (num < BLOCK) {
+					block = new byte[num][];
+					System.arraycopy(buffers, 0, block, 0, num);
+				}
+				table.readPagesFromResource(block, page);
+				page += num;
+			}
+		}
+		finally {
+			table.closeResource();
+		}
+	}
+
+	@Test
+	public void bufferPoolScan() throws Exception
+	{
+		BufferPoolManager pool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		pool.startIOThreads();
+		TableResourceManager table = TableResourceManager.openTable(tableFile);
+		try {
+			pool.registerResource(1, table);
+
+			int first = table.getFirstDataPageNumber();
+			int last = table.getLastDataPageNumber();
+			pool.prefetchPages(1, first, Math.min(last, first + BLOCK - 1));
+
+			for (int page = first; page <= last; page++) {
+				// keep one block ahead of the consumer
+				if ((page - first) % BLOCK == 0 && page + BLOCK <= last) {
+					pool.prefetchPages(1, page + BLOCK, Math.min(last, page + 2 * BLOCK - 1));
+				}
+				pool.getPageAndPin(1, page);
+				pool.unpinPage(1, page);
+			}
+		}
+		finally {
+			pool.closeBufferPool();
+			table.closeResource();
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+
+
+/**
+ * Compares the garbage collection pauses of a buffer pool that keeps all pages in cache frames
+ * on the heap with one that keeps a small cache on the heap and the bulk of the pages in the
+ * off-heap store. Both variants hold the same number of pages in memory.
+ * <p>
+ * Each run loads the pages of a file once and then issues random page requests, while allocating
+ * short lived objects like query operators do. The pauses of that phase are reported as median,
+ * 99th percentile and maximum. The memory size defaults to 256 MB; for the 4 GB setup, run with
+ * <tt>-Dbenchmark.memory.mb=4096 -Xmx6g</tt>.
+ */
+@BenchmarkOptions(benchmarkRounds = 2, warmupRounds = 0, callgc = true)
+public class BenchmarkOffHeapFrames extends AbstractBenchmark
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_8192;
+
+	private static final int HEAP_CACHE_PAGES = 1024;
+
+	private static final int NUM_REQUESTS = 2000000;
+
+	private static int numPages;
+
+	private static File file;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		numPages = (int) (Long.getLong("benchmark.memory.mb", 256) * 1024 * 1024 / PAGE_SIZE.getNumberOfBytes());
+
+		file = File.createTempFile("minidb-offheap", ".bin");
+		file.deleteOnExit();
+		RandomAccessFile handle = new RandomAccessFile(file, "rw");
+		try {
+			ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE.getNumberOfBytes());
+			for (int i = 0; i < numPages; i++) {
+				page.clear();
+				page.putInt(0, i);
+				handle.getChannel().write(page, i * (long) PAGE_SIZE.getNumberOfBytes());
+			}
+		}
+		finally {
+			handle.close();
+		}
+	}
+
+	@AfterClass
+	public static void tearDownClass()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void heapFrames() throws Exception
+	{
+		runWorkload("heap", numPages, 0);
+	}
+
+	@Test
+	public void offHeapFrames() throws Exception
+	{
+		runWorkload("off-heap", HEAP_CACHE_PAGES, numPages);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void runWorkload(String name, int cacheSize, int offHeapSize) throws Exception
+	{
+		BufferPoolManager pool = createBufferPool(cacheSize, offHeapSize);
+		FileResource resource = new FileResource(file);
+		PauseRecorder pauses = new PauseRecorder();
+		try {
+			pool.registerResource(1, resource);
+			for (int i = 0; i < numPages; i++) {
+				pool.getPageAndPin(1, i);
+				pool.unpinPage(1, i);
+			}
+
+			pauses.start();
+			Random rnd = new Random(87239487L);
+			List<Object> garbage = new ArrayList<Object>();
+			for (int i = 0; i < NUM_REQUESTS; i++) {
+				int pageNumber = rnd.nextInt(numPages);
+				CacheableData page = pool.getPageAndPin(1, pageNumber);
+				if (page.getPageNumber() != pageNumber) {
+					throw new IllegalStateException("Wrong page returned.");
+				}
+				// a few tuples per page
+				garbage.add(new long[16]);
+				if (garbage.size() == 1000) {
+					garbage = new ArrayList<Object>();
+				}
+				pool.unpinPage(1, pageNumber);
+			}
+			pauses.stop();
+		}
+		finally {
+			pool.closeBufferPool();
+			resource.closeResource();
+		}
+		System.out.println(name + " frames, " + numPages + " pages in memory: " + pauses);
+	}
+
+	private static BufferPoolManager createBufferPool(int cacheSize, int offHeapSize) throws Exception
+	{
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(cacheSize));
+		props.setProperty("OFF_HEAP_CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(offHeapSize));
+		File configFile = File.createTempFile("minidb-config", ".xml");
+		configFile.deleteOnExit();
+		OutputStream out = new FileOutputStream(configFile);
+		try {
+			props.storeToXML(out, null);
+		}
+		finally {
+			out.close();
+		}
+		BufferPoolManager pool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.loadConfig(configFile), Logger.getLogger("benchmark"));
+		pool.startIOThreads();
+		return pool;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Collects the durations of the garbage collections reported by the JVM.
+	 */
+	private static final class PauseRecorder implements NotificationListener
+	{
+		private final List<Long> pauses = Collections.synchronizedList(new ArrayList<Long>());
+
+		void start()
+		{
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				((NotificationEmitter) gc).addNotificationListener(this, null, null);
+			}
+		}
+
+		void stop() throws Exception
+		{
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				((NotificationEmitter) gc).removeNotificationListener(this);
+			}
+		}
+
+		@Override
+		public void handleNotification(Notification notification, Object handback)
+		{
+			if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+				GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+				this.pauses.add(info.getGcInfo().getDuration());
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			List<Long> sorted = new ArrayList<Long>(this.pauses);
+			if (sorted.isEmpty()) {
+				return "no collections";
+			}
+			Collections.sort(sorted);
+			long total = 0;
+			for (long pause : sorted) {
+				total += pause;
+			}
+			return sorted.size() + " collections, total " + total + " ms, median " + sorted.get(sorted.size() / 2)
+					+ " ms, p99 " + sorted.get((int) (sorted.size() * 0.99)) + " ms, max " + sorted.get(sorted.size() - 1) + " ms";
+		}
+	}
+
+	/**
+	 * A resource over a plain file whose pages carry their number in the first four bytes.
+	 */
+	private static final class FileResource extends ResourceManager
+	{
+		private final RandomAccessFile handle;
+
+		private final FileChannel channel;
+
+		FileResource(File file) throws IOException
+		{
+			this.handle = new RandomAccessFile(file, "rw");
+			this.channel = this.handle.getChannel();
+		}
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return PAGE_SIZE;
+		}
+
+		@Override
+		public void truncate()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void closeResource() throws IOException
+		{
+			this.handle.close();
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			ByteBuffer b = ByteBuffer.wrap(buffer);
+			long position = pageNumber * (long) buffer.length;
+			while (b.hasRemaining()) {
+				if (this.channel.read(b, position + b.position()) < 0) {
+					throw new IOException("Page " + pageNumber + " does not exist.");
+				}
+			}
+			return wrapBuffer(buffer);
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			CacheableData[] pages = new CacheableData[buffers.length];
+			for (int i = 0; i < buffers.length; i++) {
+				pages[i] = readPageFromResource(buffers[i], firstPageNumber + i);
+			}
+			return pages;
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean supportsBufferWrapping()
+		{
+			return true;
+		}
+
+		@Override
+		public CacheableData wrapBuffer(final byte[] buffer)
+		{
+			return new CacheableData() {
+				private boolean expired;
+
+				@Override
+				public boolean hasBeenModified()
+				{
+					return false;
+				}
+
+				@Override
+				public int getPageNumber()
+				{
+					return ByteBuffer.wrap(buffer).getInt(0);
+				}
+
+				@Override
+				public void markExpired()
+				{
+					this.expired = true;
+				}
+
+				@Override
+				public boolean isExpired()
+				{
+					return this.expired;
+				}
+
+				@Override
+				public byte[] getBuffer()
+				{
+					return buffer;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.cache.AccessHint;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+
+
+/**
+ * Measures how well the inner pages of an index stay cached while a scan over a large table
+ * runs concurrently with index lookups. Each lookup reads the root, one of the inner pages and one
+ * of the leaves of the index; the scan reads the table from front to back over and over,
+ * prefetching ahead. The hit rate of the inner pages (root included) is reported once with all
+ * requests issued without hint, as before access hints existed, and once with the scan and the
+ * inner pages hinted.
+ */
+@BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0, callgc = false)
+public class BenchmarkScanResistance extends AbstractBenchmark
+{
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int CACHE_SIZE = 512;
+
+	private static final int TABLE_PAGES = 20000;
+
+	private static final int INNER_PAGES = 128;
+
+	private static final int LEAF_PAGES = 4096;
+
+	private static final int NUM_LOOKUPS = 200000;
+
+	private static final int PREFETCH_LENGTH = 32;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@Test
+	public void withoutHints() throws Exception
+	{
+		runWorkload("without hints", AccessHint.RANDOM, AccessHint.RANDOM);
+	}
+
+	@Test
+	public void withHints() throws Exception
+	{
+		runWorkload("with hints", AccessHint.SEQUENTIAL_SCAN, AccessHint.INDEX_INTERNAL);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void runWorkload(String name, final AccessHint scanHint, AccessHint innerHint) throws Exception
+	{
+		final BufferPoolManager pool = createBufferPool();
+		final CountingResource table = new CountingResource();
+		CountingResource index = new CountingResource();
+		pool.registerResource(1, table);
+		pool.registerResource(2, index);
+
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicInteger scannedPages = new AtomicInteger();
+		Thread scan = new Thread("scan") {
+			@Override
+			public void run()
+			{
+				try {
+					while (!done.get()) {
+						for (int page = 0; page < TABLE_PAGES && !done.get(); page++) {
+							if (page % PREFETCH_LENGTH == 0) {
+								int end = Math.min(page + 2 * PREFETCH_LENGTH, TABLE_PAGES) - 1;
+								pool.prefetchPages(1, page + PREFETCH_LENGTH, end, scanHint);
+							}
+							pool.getPageAndPin(1, page, scanHint);
+							pool.unpinPage(1, page);
+							scannedPages.incrementAndGet();
+						}
+					}
+				}
+				catch (Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		};
+
+		try {
+			scan.start();
+			Random rnd = new Random(2389472398L);
+			long innerRequests = 0;
+			long innerReads;
+			long start = System.nanoTime();
+			for (int i = 0; i < NUM_LOOKUPS; i++) {
+				int inner = 1 + rnd.nextInt(INNER_PAGES);
+				int leaf = 1 + INNER_PAGES + rnd.nextInt(LEAF_PAGES);
+				pool.getPageAndPin(2, 0, innerHint);
+				pool.unpinAndGetPageAndPin(2, 0, inner, innerHint);
+				pool.unpinAndGetPageAndPin(2, inner, leaf, AccessHint.RANDOM);
+				pool.unpinPage(2, leaf);
+				innerRequests += 2;
+			}
+			long duration = System.nanoTime() - start;
+			innerReads = index.innerReads.get();
+			done.set(true);
+			scan.join();
+
+			System.out.println(String.format("%s: inner index page hit rate %.2f%% (%d reads for %d requests), "
+					+ "%d lookups/s, %d table pages scanned", name, 100.0 * (innerRequests - innerReads) / innerRequests,
+					innerReads, innerRequests, NUM_LOOKUPS * 1000000000L / duration, scannedPages.get()));
+		}
+		finally {
+			done.set(true);
+			pool.closeBufferPool();
+		}
+	}
+
+	private static BufferPoolManager createBufferPool() throws Exception
+	{
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(CACHE_SIZE));
+		File configFile = File.createTempFile("minidb-config", ".xml");
+		configFile.deleteOnExit();
+		OutputStream out = new FileOutputStream(configFile);
+		try {
+			props.storeToXML(out, null);
+		}
+		finally {
+			out.close();
+		}
+		BufferPoolManager pool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.loadConfig(configFile), Logger.getLogger("benchmark"));
+		pool.startIOThreads();
+		return pool;
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A read only resource whose pages are generated on demand and carry their number. It counts
+	 * the reads of the root and the inner pages.
+	 */
+	private static final class CountingResource extends ResourceManager
+	{
+		final AtomicInteger innerReads = new AtomicInteger();
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return PAGE_SIZE;
+		}
+
+		@Override
+		public void truncate()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void closeResource()
+		{
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber)
+		{
+			if (pageNumber <= INNER_PAGES) {
+				this.innerReads.incrementAndGet();
+			}
+			return new GeneratedPage(buffer, pageNumber);
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber)
+		{
+			CacheableData[] pages = new CacheableData[buffers.length];
+			for (int i = 0; i < buffers.length; i++) {
+				pages[i] = readPageFromResource(buffers[i], firstPageNumber + i);
+			}
+			return pages;
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static final class GeneratedPage implements CacheableData
+	{
+		private final byte[] buffer;
+
+		private final int pageNumber;
+
+		private boolean expired;
+
+		GeneratedPage(byte[] buffer, int pageNumber)
+		{
+			this.buffer = buffer;
+			this.pageNumber = pageNumber;
+		}
+
+		@Override
+		public boolean hasBeenModified()
+		{
+			return false;
+		}
+
+		@Override
+		public int getPageNumber()
+		{
+			return this.pageNumber;
+		}
+
+		@Override
+		public void markExpired()
+		{
+			this.expired = true;
+		}
+
+		@Override
+		public boolean isExpired()
+		{
+			return this.expired;
+		}
+
+		@Override
+		public byte[] getBuffer()
+		{
+			return this.buffer;
+		}
+	}
+}
@@ -0,0 +1,628 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.cache.CacheableData;
+import de.tuberlin.dima.minidb.io.cache.PageExpiredException;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolException;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManagerImpl;
+import de.tuberlin.dima.minidb.io.manager.ResourceManager;
+import de.tuberlin.dima.minidb.io.manager.WriteBehindStatistics;
+
+
+/**
+ * Test case for the buffer pool, working against an in-memory resource that records the
+ * I/O calls it receives.
+ */
+public class TestBufferPoolManager
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 928374652873465L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+	private static final int CACHE_SIZE = 64;
+
+	private static final int NUM_PAGES = 1000;
+
+	private BufferPoolManager underTest;
+
+	private MemoryResource resource;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.underTest = createBufferPool(0);
+		this.resource = new MemoryResource(NUM_PAGES);
+		this.underTest.registerResource(1, this.resource);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.underTest.closeBufferPool();
+		this.underTest = null;
+	}
+
+	private static BufferPoolManager createBufferPool(int offHeapSize) throws Exception
+	{
+		// a small cache, so that evictions happen
+		Properties props = new Properties();
+		props.setProperty("DATA_DIRECTORY", "/data/");
+		props.setProperty("CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(CACHE_SIZE));
+		props.setProperty("NUM_IO_BUFFERS", "64");
+		// long enough that only the watermarks trigger writes while a test runs
+		props.setProperty("WRITE_BEHIND_MAX_DELAY_MSECS", "5000");
+		props.setProperty("OFF_HEAP_CACHE_SIZE_FOR_PAGE_" + PAGE_SIZE.name(), String.valueOf(offHeapSize));
+		File configFile = File.createTempFile("minidb-config", ".xml");
+		configFile.deleteOnExit();
+		OutputStream out = new FileOutputStream(configFile);
+		try {
+			props.storeToXML(out, null);
+		}
+		finally {
+			out.close();
+		}
+		Config config = Config.loadConfig(configFile);
+
+		BufferPoolManager pool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(config, Logger.getLogger("test"));
+		pool.startIOThreads();
+		return pool;
+	}
+
+
+	/**
+	 * Tests that requested pages carry the right contents and are pinned.
+	 */
+	@Test
+	public void testGetPageAndPin() throws Exception
+	{
+		Random rnd = new Random(SEED);
+		for (int i = 0; i < 2000; i++) {
+			int pageNumber = rnd.nextInt(NUM_PAGES);
+			CacheableData page = this.underTest.getPageAndPin(1, pageNumber);
+			assertEquals(pageNumber, page.getPageNumber());
+			assertEquals(pageNumber, MemoryResource.readPageNumber(page.getBuffer()));
+			this.underTest.unpinPage(1, pageNumber);
+		}
+
+		// pinned pages stay available while the cache is cycled
+		CacheableData pinned = this.underTest.getPageAndPin(1, 7);
+		for (int i = 100; i < 100 + 3 * CACHE_SIZE; i++) {
+			this.underTest.getPageAndPin(1, i);
+			this.underTest.unpinPage(1, i);
+		}
+		assertTrue(!pinned.isExpired());
+		assertEquals(7, pinned.getPageNumber());
+
+		try {
+			this.underTest.getPageAndPin(2, 0);
+			fail("Unregistered resources must be rejected.");
+		}
+		catch (BufferPoolException bpex) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests that a prefetched sequence of pages is read with few vectored calls.
+	 */
+	@Test
+	public void testReadCoalescing() throws Exception
+	{
+		this.underTest.prefetchPages(1, 0, 31);
+		for (int i = 0; i < 32; i++) {
+			CacheableData page = this.underTest.getPageAndPin(1, i);
+			assertEquals(i, MemoryResource.readPageNumber(page.getBuffer()));
+			this.underTest.unpinPage(1, i);
+		}
+		assertEquals(32, this.resource.pagesRead);
+		assertTrue("Adjacent requests must be merged.", this.resource.maxPagesPerRead > 1);
+		assertTrue(this.resource.readCalls < 32);
+	}
+
+	/**
+	 * Tests that modified pages are written when they are evicted and when the pool is closed,
+	 * and that a page with a pending write is read back with its new contents.
+	 */
+	@Test
+	public void testWriteBack() throws Exception
+	{
+		int[] created = new int[CACHE_SIZE / 2];
+		for (int i = 0; i < created.length; i++) {
+			CacheableData page = this.underTest.createNewPageAndPin(1);
+			created[i] = page.getPageNumber();
+			MemoryResource.writeMarker(page, 1000 + i);
+			this.underTest.unpinPage(1, created[i]);
+		}
+
+		// push the new pages out of the cache
+		for (int i = 0; i < 4 * CACHE_SIZE; i++) {
+			this.underTest.getPageAndPin(1, i);
+			this.underTest.unpinPage(1, i);
+		}
+
+		// read them back, some may come from disk while others are still being written
+		for (int i = 0; i < created.length; i++) {
+			CacheableData page = this.underTest.getPageAndPin(1, created[i]);
+			assertEquals(1000 + i, MemoryResource.readMarker(page.getBuffer()));
+			this.underTest.unpinPage(1, created[i]);
+		}
+
+		// modify a cached page, it must reach the resource on closing
+		CacheableData page = this.underTest.getPageAndPin(1, 3);
+		MemoryResource.writeMarker(page, 4711);
+		this.underTest.unpinPage(1, 3);
+		this.underTest.closeBufferPool();
+
+		assertEquals(4711, MemoryResource.readMarker(this.resource.pages.get(3)));
+		for (int i = 0; i < created.length; i++) {
+			assertEquals(1000 + i, MemoryResource.readMarker(this.resource.pages.get(created[i])));
+		}
+	}
+
+	/**
+	 * Tests that evicted modified pages are collected and written in runs of consecutive pages
+	 * once they reach the high watermark.
+	 */
+	@Test
+	public void testWriteBehind() throws Exception
+	{
+		int num = CACHE_SIZE / 2;
+		for (int i = 0; i < num; i++) {
+			CacheableData page = this.underTest.createNewPageAndPin(1);
+			MemoryResource.writeMarker(page, 1000 + i);
+			this.underTest.unpinPage(1, page.getPageNumber());
+		}
+		for (int i = 0; i < 4 * CACHE_SIZE; i++) {
+			this.underTest.getPageAndPin(1, i);
+			this.underTest.unpinPage(1, i);
+		}
+		this.underTest.closeBufferPool();
+
+		WriteBehindStatistics stats = ((BufferPoolManagerImpl) this.underTest).getWriteBehindStatistics();
+		assertTrue(stats.getPagesFlushed() >= num);
+		assertEquals(this.resource.writeCalls, stats.getWriteBatches());
+		assertTrue("Adjacent writes must be merged.", this.resource.maxPagesPerWrite > 1);
+		assertTrue(this.resource.writeCalls < num);
+		for (int i = 0; i < num; i++) {
+			assertEquals(1000 + i, MemoryResource.readMarker(this.resource.pages.get(NUM_PAGES + i)));
+		}
+	}
+
+	/**
+	 * Tests that a modified page requested while its write is still queued comes back without I/O.
+	 */
+	@Test
+	public void testRescueQueuedWrite() throws Exception
+	{
+		// few enough pages to stay below the high watermark
+		int num = 8;
+		for (int i = 0; i < num; i++) {
+			CacheableData page = this.underTest.createNewPageAndPin(1);
+			MemoryResource.writeMarker(page, 2000 + i);
+			this.underTest.unpinPage(1, page.getPageNumber());
+		}
+		for (int i = 0; i < 2 * CACHE_SIZE; i++) {
+			this.underTest.getPageAndPin(1, i);
+			this.underTest.unpinPage(1, i);
+		}
+		int pagesRead = this.resource.pagesRead;
+
+		for (int i = 0; i < num; i++) {
+			CacheableData page = this.underTest.getPageAndPin(1, NUM_PAGES + i);
+			assertEquals(2000 + i, MemoryResource.readMarker(page.getBuffer()));
+			this.underTest.unpinPage(1, NUM_PAGES + i);
+		}
+
+		assertEquals(pagesRead, this.resource.pagesRead);
+		assertEquals(0, this.resource.writeCalls);
+		assertEquals(num, ((BufferPoolManagerImpl) this.underTest).getWriteBehindStatistics().getPagesRescued());
+	}
+
+	/**
+	 * Tests that pages whose write fails are neither lost nor counted as flushed, and that the
+	 * error is reported when the pool is closed.
+	 */
+	@Test
+	public void testWriteFailure() throws Exception
+	{
+		this.resource.failWrites = true;
+		int num = CACHE_SIZE / 2;
+		for (int i = 0; i < num; i++) {
+			CacheableData page = this.underTest.createNewPageAndPin(1);
+			MemoryResource.writeMarker(page, 3000 + i);
+			this.underTest.unpinPage(1, page.getPageNumber());
+		}
+		for (int i = 0; i < 4 * CACHE_SIZE; i++) {
+			this.underTest.getPageAndPin(1, i);
+			this.underTest.unpinPage(1, i);
+		}
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.resource.failedWrites == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue("The high watermark must have triggered a write.", this.resource.failedWrites > 0);
+
+		// the pages come back with their modifications, from the cache or the write queue
+		for (int i = 0; i < num; i++) {
+			CacheableData page = this.underTest.getPageAndPin(1, NUM_PAGES + i);
+			assertEquals(3000 + i, MemoryResource.readMarker(page.getBuffer()));
+			this.underTest.unpinPage(1, NUM_PAGES + i);
+		}
+		assertEquals(0, ((BufferPoolManagerImpl) this.underTest).getWriteBehindStatistics().getPagesFlushed());
+
+		// once the resource works again, closing writes the pages and reports the earlier error
+		this.resource.failWrites = false;
+		try {
+			this.underTest.closeBufferPool();
+			fail("The failed write must be reported.");
+		}
+		catch (UncheckedIOException uioex) {
+			// expected
+		}
+
+		WriteBehindStatistics stats = ((BufferPoolManagerImpl) this.underTest).getWriteBehindStatistics();
+		assertEquals(this.resource.writeCalls, stats.getWriteBatches());
+		for (int i = 0; i < num; i++) {
+			assertEquals(3000 + i, MemoryResource.readMarker(this.resource.pages.get(NUM_PAGES + i)));
+		}
+	}
+
+	/**
+	 * Tests that pages evicted from the cache come back from the off-heap store (or, if modified,
+	 * from the write queue) without I/O.
+	 */
+	@Test
+	public void testOffHeapStore() throws Exception
+	{
+		this.underTest.closeBufferPool();
+		this.underTest = createBufferPool(4 * CACHE_SIZE);
+		this.resource = new MemoryResource(NUM_PAGES);
+		this.resource.wrapping = true;
+		this.underTest.registerResource(1, this.resource);
+
+		// cycle through three times the cache, everything fits into the store
+		int range = 3 * CACHE_SIZE;
+		for (int i = 0; i < range; i++) {
+			CacheableData page = this.underTest.getPageAndPin(1, i);
+			if (i % 10 == 0) {
+				MemoryResource.writeMarker(page, 3000 + i);
+			}
+			this.underTest.unpinPage(1, i);
+		}
+		int pagesRead = this.resource.pagesRead;
+		assertEquals(range, pagesRead);
+
+		// no page needs to be read again
+		for (int i = 0; i < range; i++) {
+			CacheableData page = this.underTest.getPageAndPin(1, i);
+			assertEquals(i, MemoryResource.readPageNumber(page.getBuffer()));
+			assertEquals(i % 10 == 0 ? 3000 + i : 0, MemoryResource.readMarker(page.getBuffer()));
+			this.underTest.unpinPage(1, i);
+		}
+		assertEquals(pagesRead, this.resource.pagesRead);
+	}
+
+	/**
+	 * Tests that concurrent requests for the same pages each get a pinned, correct page.
+	 */
+	@Test
+	public void testConcurrentRequests() throws Exception
+	{
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final long seed = SEED + t;
+			threads[t] = new Thread() {
+				@Override
+				public void run()
+				{
+					Random rnd = new Random(seed);
+					try {
+						for (int i = 0; i < 5000; i++) {
+							// a small hot set, so that threads run into each other's requests
+							int pageNumber = rnd.nextInt(4 * CACHE_SIZE);
+							CacheableData page = TestBufferPoolManager.this.underTest.getPageAndPin(1, pageNumber);
+							if (MemoryResource.readPageNumber(page.getBuffer()) != pageNumber) {
+								throw new AssertionError("Wrong page returned.");
+							}
+							TestBufferPoolManager.this.underTest.unpinPage(1, pageNumber);
+						}
+					}
+					catch (Throwable th) {
+						error.compareAndSet(null, th);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+	}
+
+	/**
+	 * Tests that callers waiting for a page are woken up with an exception when the pool closes.
+	 */
+	@Test
+	public void testCloseWakesWaiters() throws Exception
+	{
+		this.resource.blockReads = new CountDownLatch(1);
+		final AtomicReference<Throwable> result = new AtomicReference<Throwable>();
+		Thread waiter = new Thread() {
+			@Override
+			public void run()
+			{
+				try {
+					TestBufferPoolManager.this.underTest.getPageAndPin(1, 17);
+				}
+				catch (Throwable th) {
+					result.set(th);
+				}
+			}
+		};
+		waiter.start();
+		Thread.sleep(100);
+
+		this.underTest.closeBufferPool();
+		waiter.join(5000);
+		this.resource.blockReads.countDown();
+
+		assertTrue("The waiting caller must be released.", !waiter.isAlive());
+		assertTrue(result.get() instanceof BufferPoolException);
+	}
+
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * A resource held in memory. The first four bytes of a page hold its page number, the
+	 * following four bytes a marker that tests can modify.
+	 */
+	private static final class MemoryResource extends ResourceManager
+	{
+		final Map<Integer, byte[]> pages = new HashMap<Integer, byte[]>();
+
+		volatile CountDownLatch blockReads;
+
+		volatile boolean failWrites;
+
+		volatile int failedWrites;
+
+		boolean wrapping;
+
+		int nextPageNumber;
+
+		int readCalls;
+
+		int pagesRead;
+
+		int maxPagesPerRead;
+
+		int writeCalls;
+
+		int maxPagesPerWrite;
+
+		MemoryResource(int numPages)
+		{
+			for (int i = 0; i < numPages; i++) {
+				byte[] page = new byte[PAGE_SIZE.getNumberOfBytes()];
+				writeInt(page, 0, i);
+				this.pages.put(i, page);
+			}
+			this.nextPageNumber = numPages;
+		}
+
+		static int readPageNumber(byte[] buffer)
+		{
+			return readInt(buffer, 0);
+		}
+
+		static int readMarker(byte[] buffer)
+		{
+			return readInt(buffer, 4);
+		}
+
+		static void writeMarker(CacheableData page, int marker)
+		{
+			writeInt(page.getBuffer(), 4, marker);
+			((MemoryPage) page).modified = true;
+		}
+
+		@Override
+		public PageSize getPageSize()
+		{
+			return PAGE_SIZE;
+		}
+
+		@Override
+		public void truncate()
+		{
+			this.pages.clear();
+		}
+
+		@Override
+		public void closeResource()
+		{
+		}
+
+		@Override
+		public CacheableData readPageFromResource(byte[] buffer, int pageNumber) throws IOException
+		{
+			return readPagesFromResource(new byte[][] { buffer }, pageNumber)[0];
+		}
+
+		@Override
+		public CacheableData[] readPagesFromResource(byte[][] buffers, int firstPageNumber) throws IOException
+		{
+			CountDownLatch latch = this.blockReads;
+			if (latch != null) {
+				try {
+					latch.await();
+				}
+				catch (InterruptedException iex) {
+					throw new IOException(iex);
+				}
+			}
+
+			this.readCalls++;
+			this.pagesRead += buffers.length;
+			this.maxPagesPerRead = Math.max(this.maxPagesPerRead, buffers.length);
+
+			CacheableData[] result = new CacheableData[buffers.length];
+			for (int i = 0; i < buffers.length; i++) {
+				byte[] stored = this.pages.get(firstPageNumber + i);
+				if (stored == null) {
+					throw new IOException("Page " + (firstPageNumber + i) + " does not exist.");
+				}
+				System.arraycopy(stored, 0, buffers[i], 0, stored.length);
+				result[i] = new MemoryPage(buffers[i]);
+			}
+			return result;
+		}
+
+		@Override
+		public void writePageToResource(byte[] buffer, CacheableData wrapper) throws IOException
+		{
+			writePagesToResource(new byte[][] { buffer }, new CacheableData[] { wrapper });
+		}
+
+		@Override
+		public void writePagesToResource(byte[][] buffers, CacheableData[] wrappers) throws IOException
+		{
+			if (this.failWrites) {
+				this.failedWrites++;
+				throw new IOException("The resource cannot be written.");
+			}
+			this.writeCalls++;
+			this.maxPagesPerWrite = Math.max(this.maxPagesPerWrite, buffers.length);
+			for (int i = 0; i < buffers.length; i++) {
+				this.pages.put(wrappers[i].getPageNumber(), buffers[i].clone());
+			}
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer)
+		{
+			int pageNumber = this.nextPageNumber++;
+			writeInt(ioBuffer, 0, pageNumber);
+			writeInt(ioBuffer, 4, 0);
+			MemoryPage page = new MemoryPage(ioBuffer);
+			page.modified = true;
+			return page;
+		}
+
+		@Override
+		public CacheableData reserveNewPage(byte[] ioBuffer, Enum<?> type)
+		{
+			return reserveNewPage(ioBuffer);
+		}
+
+		@Override
+		public boolean supportsBufferWrapping()
+		{
+			return this.wrapping;
+		}
+
+		@Override
+		public CacheableData wrapBuffer(byte[] buffer)
+		{
+			return new MemoryPage(buffer);
+		}
+
+		private static int readInt(byte[] buffer, int offset)
+		{
+			return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+					| ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+		}
+
+		private static void writeInt(byte[] buffer, int offset, int value)
+		{
+			buffer[offset] = (byte) (value >>> 24);
+			buffer[offset + 1] = (byte) (value >>> 16);
+			buffer[offset + 2] = (byte) (value >>> 8);
+			buffer[offset + 3] = (byte) value;
+		}
+	}
+
+	/**
+	 * The page wrapper of the in-memory resource.
+	 */
+	private static final class MemoryPage implements CacheableData
+	{
+		private final byte[] buffer;
+
+		boolean modified;
+
+		private boolean expired;
+
+		MemoryPage(byte[] buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public boolean hasBeenModified() throws PageExpiredException
+		{
+			return this.modified;
+		}
+
+		@Override
+		public int getPageNumber() throws PageExpiredException
+		{
+			if (this.expired) {
+				throw new PageExpiredException();
+			}
+			return MemoryResource.readPageNumber(this.buffer);
+		}
+
+		@Override
+		public void markExpired()
+		{
+			this.expired = true;
+		}
+
+		@Override
+		public boolean isExpired()
+		{
+			return this.expired;
+		}
+
+		@Override
+		public byte[] getBuffer()
+		{
+			return this.buffer;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.io.manager.MappedPageReader;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+
+
+/**
+ * Test case for reading pages through memory mapped regions of a file.
+ */
+public class TestMappedPageReader
+{
+	private static final int PAGE_SIZE = 4096;
+
+	private File file;
+
+	private RandomAccessFile handle;
+
+	private FileChannel channel;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.file = File.createTempFile("minidb-mapped", ".bin");
+		this.file.deleteOnExit();
+		this.handle = new RandomAccessFile(this.file, "rw");
+		this.channel = this.handle.getChannel();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.channel.close();
+		this.handle.close();
+		this.file.delete();
+	}
+
+
+	/**
+	 * Tests that pages are read correctly, also after the file has grown behind the mapped part.
+	 */
+	@Test
+	public void testReadAndGrow() throws Exception
+	{
+		for (int i = 0; i < 10; i++) {
+			writePage(i);
+		}
+		MappedPageReader reader = new MappedPageReader(this.channel, PAGE_SIZE);
+
+		byte[][] buffers = new byte[10][PAGE_SIZE];
+		assertTrue(reader.readPages(buffers, 0));
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, ByteBuffer.wrap(buffers[i]).getInt(0));
+		}
+
+		byte[] buffer = new byte[PAGE_SIZE];
+		assertFalse("Pages behind the end of the file must not be served.", reader.readPage(buffer, 10));
+
+		writePage(10);
+		writePage(11);
+		assertTrue(reader.readPage(buffer, 11));
+		assertEquals(11, ByteBuffer.wrap(buffer).getInt(0));
+
+		// pages written through the channel are visible through the mapping
+		writePage(3, 333);
+		assertTrue(reader.readPage(buffer, 3));
+		assertEquals(333, ByteBuffer.wrap(buffer).getInt(4));
+	}
+
+	/**
+	 * Tests that the mapping is dropped when the file is truncated.
+	 */
+	@Test
+	public void testInvalidate() throws Exception
+	{
+		for (int i = 0; i < 8; i++) {
+			writePage(i);
+		}
+		MappedPageReader reader = new MappedPageReader(this.channel, PAGE_SIZE);
+		byte[] buffer = new byte[PAGE_SIZE];
+		assertTrue(reader.readPage(buffer, 7));
+
+		reader.invalidate();
+		this.channel.truncate(4 * PAGE_SIZE);
+		assertFalse(reader.readPage(buffer, 7));
+		assertTrue(reader.readPage(buffer, 3));
+		assertEquals(3, ByteBuffer.wrap(buffer).getInt(0));
+	}
+
+	/**
+	 * Tests that a table manager returns the same pages with and without the mapping.
+	 */
+	@Test
+	public void testTableResourceManager() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+
+		// the table file is locked exclusively, so both managers work on a copy each
+		File source = new File(getClass().getResource("/data/region.mdtbl").getPath());
+		File plainCopy = File.createTempFile("minidb-region", ".mdtbl");
+		File mappedCopy = File.createTempFile("minidb-region", ".mdtbl");
+		plainCopy.deleteOnExit();
+		mappedCopy.deleteOnExit();
+		Files.copy(source.toPath(), plainCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Files.copy(source.toPath(), mappedCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		TableResourceManager plain = TableResourceManager.openTable(plainCopy);
+		TableResourceManager mapped = TableResourceManager.openTable(mappedCopy);
+		try {
+			mapped.enableMappedReads();
+			assertTrue(mapped.isMappedReadsEnabled());
+
+			int pageSize = plain.getPageSize().getNumberOfBytes();
+			for (int page = plain.getFirstDataPageNumber(); page <= plain.getLastDataPageNumber(); page++) {
+				TablePage expected = plain.readPageFromResource(new byte[pageSize], page);
+				TablePage actual = mapped.readPageFromResource(new byte[pageSize], page);
+				assertEquals(expected.getNumRecordsOnPage(), actual.getNumRecordsOnPage());
+				assertArrayEquals(expected.getBuffer(), actual.getBuffer());
+			}
+		}
+		finally {
+			plain.closeResource();
+			mapped.closeResource();
+			plainCopy.delete();
+			mappedCopy.delete();
+		}
+	}
+
+
+	// --------------------------------------------------------------------------------------------
+
+	private void writePage(int pageNumber) throws Exception
+	{
+		writePage(pageNumber, 0);
+	}
+
+	private void writePage(int pageNumber, int marker) throws Exception
+	{
+		ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+		page.putInt(0, pageNumber);
+		page.putInt(4, marker);
+		this.channel.write(page, pageNumber * (long) PAGE_SIZE);
+	}
+}
@@ -0,0 +1,125 @@
+package de.tuberlin.dima.minidb.test.io.manager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.OffHeapPageStore;
+
+
+/**
+ * Test case for the store that keeps pages outside the Java heap.
+ */
+public class TestOffHeapPageStore
+{
+	/**
+	 * Fixed seed to make tests reproducible.
+	 */
+	private static final long SEED = 2340987234098L;
+
+	private static final PageSize PAGE_SIZE = PageSize.SIZE_4096;
+
+
+	/**
+	 * Tests that pages are copied in and out, and leave the store when taken.
+	 */
+	@Test
+	public void testPutAndTake() throws Exception
+	{
+		OffHeapPageStore store = new OffHeapPageStore(PAGE_SIZE, 16);
+		store.put(1, 5, page(5, 1));
+		store.put(2, 5, page(5, 2));
+		store.put(1, 5, page(5, 3));
+		assertEquals(2, store.getSize());
+
+		byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+		assertTrue(store.take(1, 5, buffer));
+		assertEquals(3, buffer[PAGE_SIZE.getNumberOfBytes() - 1]);
+		assertFalse("A taken page must leave the store.", store.take(1, 5, buffer));
+
+		assertTrue(store.contains(2, 5));
+		store.remove(2, 5);
+		assertFalse(store.contains(2, 5));
+		assertEquals(0, store.getSize());
+		assertEquals(1, store.getHits());
+		assertEquals(1, store.getMisses());
+	}
+
+	/**
+	 * Tests that a full store replaces pages in clock order, sparing pages that were put again.
+	 */
+	@Test
+	public void testReplacement() throws Exception
+	{
+		OffHeapPageStore store = new OffHeapPageStore(PAGE_SIZE, 4);
+		for (int i = 0; i < 4; i++) {
+			store.put(1, i, page(i, 0));
+		}
+		// page 0 gets a second chance, so page 1 is replaced first
+		store.put(1, 0, page(0, 7));
+		store.put(1, 4, page(4, 0));
+
+		assertEquals(4, store.getSize());
+		assertTrue(store.contains(1, 0));
+		assertFalse(store.contains(1, 1));
+		assertTrue(store.contains(1, 4));
+	}
+
+	/**
+	 * Tests the store against a set of the pages it must hold, with random operations.
+	 */
+	@Test
+	public void testRandomOperations() throws Exception
+	{
+		Random rnd = new Random(SEED);
+		int capacity = 1000;
+		OffHeapPageStore store = new OffHeapPageStore(PAGE_SIZE, capacity);
+		Set<Long> expected = new HashSet<Long>();
+		byte[] buffer = new byte[PAGE_SIZE.getNumberOfBytes()];
+
+		for (int i = 0; i < 20000; i++) {
+			int resource = rnd.nextInt(3);
+			int pageNumber = rnd.nextInt(capacity / 2);
+			long key = ((long) resource << 32) | pageNumber;
+			if (rnd.nextBoolean() && (expected.size() < capacity || expected.contains(key))) {
+				store.put(resource, pageNumber, page(pageNumber, resource));
+				expected.add(key);
+			}
+			else {
+				boolean present = store.take(resource, pageNumber, buffer);
+				assertEquals(expected.remove(key), present);
+				if (present) {
+					assertEquals(pageNumber, readInt(buffer));
+					assertEquals(resource, buffer[PAGE_SIZE.getNumberOfBytes() - 1]);
+				}
+			}
+			assertEquals(expected.size(), store.getSize());
+		}
+	}
+
+
+	// --------------------------------------------------------------------------------------------
+
+	private static byte[] page(int pageNumber, int marker)
+	{
+		byte[] page = new byte[PAGE_SIZE.getNumberOfBytes()];
+		page[0] = (byte) (pageNumber >>> 24);
+		page[1] = (byte) (pageNumber >>> 16);
+		page[2] = (byte) (pageNumber >>> 8);
+		page[3] = (byte) pageNumber;
+		page[page.length - 1] = (byte) marker;
+		return page;
+	}
+
+	private static int readInt(byte[] buffer)
+	{
+		return ((buffer[0] & 0xff) << 24) | ((buffer[1] & 0xff) << 16) | ((buffer[2] & 0xff) << 8) | (buffer[3] & 0xff);
+	}
+}
@@ -0,0 +1,199 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.BulkLoader;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.InsertOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Regenerates <tt>lineitem</tt> of the test data, once tuple by tuple through the insert operator
+ * and the buffer pool, and once with the bulk loader, which also builds the table's six indexes.
+ * Each run reports its throughput in rows per second, for the bulk loader separately for the table
+ * and for the indexes.
+ */
+@BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1, callgc = false)
+public class BenchmarkBulkLoad extends AbstractBenchmark
+{
+	private static final String[] INDEXES = { "lineitem_10", "lineitem_11", "lineitem_12",
+		"lineitem_fk_order", "lineitem_fk_part", "lineitem_fk_supplier" };
+
+	private static TableSchema schema;
+
+	private static List<DataTuple> tuples;
+
+	/**
+	 * For each index its column and whether it is unique.
+	 */
+	private static int[] indexColumns;
+
+	private static boolean[] indexUnique;
+
+	private static QueryHeap heap;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		File dataDir = new File(BenchmarkBulkLoad.class.getResource("/data/").getPath());
+
+		TableResourceManager table = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		schema = table.getSchema();
+		tuples = new ArrayList<DataTuple>();
+		int numCols = schema.getNumberOfColumns();
+		byte[] buffer = new byte[schema.getPageSize().getNumberOfBytes()];
+		for (int p = table.getFirstDataPageNumber(); p <= table.getLastDataPageNumber(); p++) {
+			TablePage page = table.readPageFromResource(buffer, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				DataTuple tuple = page.getDataTuple(i, (1L << numCols) - 1, numCols);
+				if (tuple != null) {
+					tuples.add(tuple);
+				}
+			}
+		}
+		table.closeResource();
+
+		indexColumns = new int[INDEXES.length];
+		indexUnique = new boolean[INDEXES.length];
+		for (int i = 0; i < INDEXES.length; i++) {
+			IndexResourceManager index = IndexResourceManager.openIndex(new File(dataDir, INDEXES[i] + ".mdidx"), schema);
+			indexColumns[i] = index.getSchema().getColumnNumber();
+			indexUnique[i] = index.getSchema().isUnique();
+			index.closeResource();
+		}
+
+		heap = new QueryHeap(Logger.getLogger("benchmark"), config());
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception
+	{
+		heap.closeQueryHeap();
+	}
+
+	@Test
+	public void insertOperator() throws Exception
+	{
+		File file = File.createTempFile("minidb-load", ".mdtbl");
+		TableResourceManager table = TableResourceManager.createTable(file, schema);
+		BufferPoolManager pool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		try {
+			pool.startIOThreads();
+			pool.registerResource(1, table);
+			long start = System.nanoTime();
+			InsertOperatorImpl insert = new InsertOperatorImpl(pool, table, 1, new BTreeIndex[0], new int[0],
+					new ListOperator(tuples));
+			insert.open(null);
+			while (insert.next() != null) {
+				// insert all
+			}
+			insert.close();
+			pool.closeBufferPool();
+			long duration = System.nanoTime() - start;
+			System.out.println(String.format("insert operator, table only: %.1f ms, %.0f rows/s",
+					duration / 1000000.0, tuples.size() * 1000000000.0 / duration));
+		}
+		finally {
+			table.closeResource();
+			TableResourceManager.deleteTable(file);
+		}
+	}
+
+	@Test
+	public void bulkLoad() throws Exception
+	{
+		File file = File.createTempFile("minidb-load", ".mdtbl");
+		TableResourceManager table = TableResourceManager.createTable(file, schema);
+		File[] indexFiles = new File[INDEXES.length];
+		IndexResourceManager[] indexes = new IndexResourceManager[INDEXES.length];
+		try {
+			BulkLoader loader = new BulkLoader(table, heap);
+			for (int i = 0; i < INDEXES.length; i++) {
+				indexFiles[i] = File.createTempFile("minidb-load", ".mdidx");
+				indexes[i] = IndexResourceManager.createIndex(indexFiles[i],
+						new IndexSchema(schema, indexColumns[i], schema.getPageSize(), indexUnique[i], 1, 1));
+				loader.addIndex(indexes[i]);
+			}
+			for (DataTuple tuple : tuples) {
+				loader.addTuple(tuple);
+			}
+			loader.finish();
+			System.out.println(String.format("bulk load, table: %.1f ms, %.0f rows/s; %d indexes: %.1f ms, %.0f rows/s",
+					loader.getTableLoadNanos() / 1000000.0, tuples.size() * 1000000000.0 / loader.getTableLoadNanos(),
+					INDEXES.length, loader.getIndexBuildNanos() / 1000000.0,
+					tuples.size() * 1000000000.0 / loader.getIndexBuildNanos()));
+		}
+		finally {
+			for (int i = 0; i < INDEXES.length; i++) {
+				if (indexes[i] != null) {
+					indexes[i].closeResource();
+					IndexResourceManager.deleteIndex(indexFiles[i]);
+				}
+			}
+			table.closeResource();
+			TableResourceManager.deleteTable(file);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Produces the tuples of a list.
+	 */
+	private static final class ListOperator implements PhysicalPlanOperator
+	{
+		private final List<DataTuple> tuples;
+
+		private Iterator<DataTuple> iterator;
+
+		ListOperator(List<DataTuple> tuples)
+		{
+			this.tuples = tuples;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple)
+		{
+			this.iterator = this.tuples.iterator();
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			return this.iterator.hasNext() ? this.iterator.next() : null;
+		}
+
+		@Override
+		public void close()
+		{
+			this.iterator = null;
+		}
+	}
+}
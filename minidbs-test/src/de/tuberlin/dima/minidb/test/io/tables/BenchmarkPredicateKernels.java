@@ -0,0 +1,161 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.io.tables.ColumnBatch;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TupleIterator;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * Compares ways of evaluating a selective conjunction over all pages of <tt>lineitem</tt>, held in
+ * memory: the former iterator, which decoded every record completely to test the predicates and
+ * decoded it again to return it, the iterator with the predicate kernels, and the column batches
+ * with the predicate kernels. The predicate is the one of TPC-H query 6:
+ * <pre>
+ * l_shipdate >= '1994-01-01' AND l_shipdate < '1995-01-01'
+ * AND l_discount >= 0.05 AND l_discount <= 0.07 AND l_quantity < 24
+ * </pre>
+ * Each run produces l_extendedprice and l_discount of the qualifying tuples.
+ */
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10, callgc = false)
+public class BenchmarkPredicateKernels extends AbstractBenchmark
+{
+	private static final long COLUMN_BITMAP = (1L << 5) | (1L << 6);
+
+	private static final int NUM_COLUMNS = 2;
+
+	private static TableSchema schema;
+
+	private static List<TablePage> pages;
+
+	private static LowLevelPredicate[] predicates;
+
+	private static long expected;
+
+	/**
+	 * Prevents the produced tuples from being optimized away.
+	 */
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		File file = new File(BenchmarkPredicateKernels.class.getResource("/data/lineitem.mdtbl").getPath());
+		TableResourceManager table = TableResourceManager.openTable(file);
+		schema = table.getSchema();
+		pages = new ArrayList<TablePage>();
+		for (int page = table.getFirstDataPageNumber(); page <= table.getLastDataPageNumber(); page++) {
+			pages.add(table.readPageFromResource(new byte[table.getPageSize().getNumberOfBytes()], page));
+		}
+		table.closeResource();
+
+		predicates = new LowLevelPredicate[] {
+			new LowLevelPredicate(Operator.GREATER_OR_EQUAL, new DateField(1, 0, 1994), 10),
+			new LowLevelPredicate(Operator.SMALLER, new DateField(1, 0, 1995), 10),
+			new LowLevelPredicate(Operator.GREATER_OR_EQUAL, new FloatField(0.05f), 6),
+			new LowLevelPredicate(Operator.SMALLER_OR_EQUAL, new FloatField(0.07f), 6),
+			new LowLevelPredicate(Operator.SMALLER, new FloatField(24.0f), 4)
+		};
+		expected = -1;
+	}
+
+	@AfterClass
+	public static void tearDownClass()
+	{
+		System.out.println("BenchmarkPredicateKernels: " + expected + " qualifying tuples");
+		pages = null;
+	}
+
+	@Test
+	public void formerIterator() throws Exception
+	{
+		long count = 0;
+		int numTableColumns = schema.getNumberOfColumns();
+		long allColumns = (1L << numTableColumns) - 1;
+		for (TablePage page : pages) {
+			int numRecords = page.getNumRecordsOnPage();
+			for (int i = 0; i < numRecords; i++) {
+				// test on the fully decoded record, then decode the produced columns again
+				DataTuple full = page.getDataTuple(i, allColumns, numTableColumns);
+				if (full == null || !evaluate(full)) {
+					continue;
+				}
+				DataTuple tuple = page.getDataTuple(i, COLUMN_BITMAP, NUM_COLUMNS);
+				count += tuple.getNumberOfFields();
+			}
+		}
+		check(count);
+	}
+
+	@Test
+	public void kernelIterator() throws Exception
+	{
+		long count = 0;
+		for (TablePage page : pages) {
+			TupleIterator iterator = page.getIterator(predicates, NUM_COLUMNS, COLUMN_BITMAP);
+			while (iterator.hasNext()) {
+				count += iterator.next().getNumberOfFields();
+			}
+		}
+		check(count);
+	}
+
+	@Test
+	public void kernelBatch() throws Exception
+	{
+		long count = 0;
+		ColumnBatch batch = new ColumnBatch(schema, COLUMN_BITMAP, ColumnBatch.DEFAULT_CAPACITY);
+		for (TablePage page : pages) {
+			int numSelected = page.readColumns(predicates, 0, page.getNumRecordsOnPage(), batch);
+			int[] selection = batch.getSelection();
+			for (int i = 0; i < numSelected; i++) {
+				DataTuple tuple = new DataTuple(NUM_COLUMNS);
+				tuple.assignDataField(batch.getField(selection[i], 0), 0);
+				tuple.assignDataField(batch.getField(selection[i], 1), 1);
+				count += tuple.getNumberOfFields();
+			}
+		}
+		check(count);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static boolean evaluate(DataTuple tuple)
+	{
+		for (LowLevelPredicate predicate : predicates) {
+			if (!predicate.evaluateWithNull(tuple.getField(predicate.getColumnIndex()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static synchronized void check(long count)
+	{
+		if (expected >= 0 && expected != count / NUM_COLUMNS) {
+			throw new AssertionError("Expected " + expected + " tuples, but got " + count / NUM_COLUMNS + ".");
+		}
+		expected = count / NUM_COLUMNS;
+		sink += count;
+	}
+}
@@ -0,0 +1,264 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataFormatException;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndexPage;
+import de.tuberlin.dima.minidb.io.index.BTreeInnerNodePage;
+import de.tuberlin.dima.minidb.io.index.BTreeLeafPage;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.tables.BulkLoader;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Test case for the bulk loading of tables and the bottom-up build of their indexes.
+ */
+public class TestBulkLoader
+{
+	private static final int NUM_GROUPS = 37;
+
+	private TableSchema schema;
+
+	private File tableFile;
+
+	private File idIndexFile;
+
+	private File groupIndexFile;
+
+	private TableResourceManager table;
+
+	private IndexResourceManager idIndex;
+
+	private IndexResourceManager groupIndex;
+
+	private QueryHeap heap;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.schema = new TableSchema(PageSize.SIZE_4096);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("id", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("grp", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("name", DataType.varcharType(20), true));
+
+		this.tableFile = File.createTempFile("minidb-bulk", ".mdtbl");
+		this.idIndexFile = File.createTempFile("minidb-bulk-id", ".mdidx");
+		this.groupIndexFile = File.createTempFile("minidb-bulk-grp", ".mdidx");
+		this.table = TableResourceManager.createTable(this.tableFile, this.schema);
+		this.idIndex = IndexResourceManager.createIndex(this.idIndexFile, new IndexSchema(this.schema, 0, PageSize.SIZE_4096, true, 1, 1));
+		this.groupIndex = IndexResourceManager.createIndex(this.groupIndexFile, new IndexSchema(this.schema, 1, PageSize.SIZE_4096, false, 1, 1));
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.heap != null) {
+			this.heap.closeQueryHeap();
+		}
+		this.idIndex.closeResource();
+		this.groupIndex.closeResource();
+		this.table.closeResource();
+		IndexResourceManager.deleteIndex(this.idIndexFile);
+		IndexResourceManager.deleteIndex(this.groupIndexFile);
+		TableResourceManager.deleteTable(this.tableFile);
+	}
+
+
+	/**
+	 * Tests that the tuples are loaded in order and that the indexes hold every tuple under its key.
+	 */
+	@Test
+	public void testLoadAndBuildIndexes() throws Exception
+	{
+		int num = 5000;
+		BulkLoader loader = load(num, 64 * 1024 * 1024, 0.7f);
+		assertEquals(num, loader.getNumberOfTuples());
+		assertEquals(num, countTuples());
+
+		assertEquals(num, verifyIndex(this.idIndex, num));
+		assertEquals(num, verifyIndex(this.groupIndex, num));
+		BTreeLeafPage first = (BTreeLeafPage) readIndexPage(this.idIndex, this.idIndex.getSchema().getFirstLeafNumber());
+		assertEquals((int) (this.idIndex.getSchema().getMaximalLeafEntries() * 0.7f), first.getNumberOfEntries());
+	}
+
+	/**
+	 * Tests that the pairs are sorted through runs in the temp space if they do not fit the sort
+	 * space of the query heap.
+	 */
+	@Test
+	public void testExternalSort() throws Exception
+	{
+		int num = 30000;
+		load(num, 1024 * 1024, 1.0f);
+		assertEquals(num, verifyIndex(this.idIndex, num));
+		assertEquals(num, verifyIndex(this.groupIndex, num));
+		BTreeLeafPage first = (BTreeLeafPage) readIndexPage(this.groupIndex, this.groupIndex.getSchema().getFirstLeafNumber());
+		assertEquals(this.groupIndex.getSchema().getMaximalLeafEntries(), first.getNumberOfEntries());
+		assertTrue(first.isLastKeyContinuingOnNextPage());
+	}
+
+	/**
+	 * Tests the parsing of delimited text.
+	 */
+	@Test
+	public void testLoadCSV() throws Exception
+	{
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(4 * 1024 * 1024));
+		BulkLoader loader = new BulkLoader(this.table, this.heap);
+		loader.addIndex(this.idIndex);
+		assertEquals(3, loader.loadCSV(new StringReader("2|1|abc|\n\n0|2||\n1|1|x"), '|'));
+		loader.finish();
+
+		TablePage page = this.table.readPageFromResource(new byte[4096], this.table.getFirstDataPageNumber());
+		assertEquals(new IntField(2), page.getDataTuple(0, 7, 3).getField(0));
+		assertEquals(new VarcharField("abc"), page.getDataTuple(0, 7, 3).getField(2));
+		assertTrue(page.getDataTuple(1, 7, 3).getField(2).isNULL());
+		assertEquals(3, verifyIndex(this.idIndex, 3));
+
+		try {
+			new BulkLoader(this.table, this.heap).loadCSV(new StringReader("1|2|a\n1|x|b\n"), '|');
+			fail("A field that is no integer must be rejected.");
+		}
+		catch (DataFormatException dfex) {
+			assertTrue(dfex.getMessage().startsWith("Line 2"));
+		}
+		try {
+			new BulkLoader(this.table, this.heap).loadCSV(new StringReader("1|2\n"), '|');
+			fail("A line with too few fields must be rejected.");
+		}
+		catch (DataFormatException dfex) {
+			// expected
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static DataTuple tuple(int id)
+	{
+		DataField name = id % 11 == 0 ? DataType.varcharType(20).getNullValue() : new VarcharField("n" + id);
+		return new DataTuple(new DataField[] { new IntField(id), new IntField(id % NUM_GROUPS), name });
+	}
+
+	/**
+	 * Loads the tuples with the ids from 0 to num in a shuffled order.
+	 */
+	private BulkLoader load(int num, long heapSize, float fillFactor) throws Exception
+	{
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(heapSize));
+		BulkLoader loader = new BulkLoader(this.table, this.heap, 8);
+		loader.addIndex(this.idIndex);
+		loader.addIndex(this.groupIndex);
+		loader.setFillFactor(fillFactor);
+		for (int i = 0; i < num; i++) {
+			loader.addTuple(tuple((int) ((i * 7919L) % num)));
+		}
+		loader.finish();
+		return loader;
+	}
+
+	private int countTuples() throws Exception
+	{
+		int count = 0;
+		byte[] buffer = new byte[4096];
+		for (int p = this.table.getFirstDataPageNumber(); p <= this.table.getLastDataPageNumber(); p++) {
+			TablePage page = this.table.readPageFromResource(buffer, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				assertNotNull(page.getDataTuple(i, 7, 3));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static BTreeIndexPage readIndexPage(IndexResourceManager index, int pageNumber) throws Exception
+	{
+		return index.readPageFromResource(new byte[index.getSchema().getPageSize().getNumberOfBytes()], pageNumber);
+	}
+
+	/**
+	 * Walks the leaves and checks that the keys ascend, that each RID refers to a tuple with the key,
+	 * and that descending from the root for a key arrives at the first leaf holding it.
+	 *
+	 * @return The number of pairs in the index.
+	 */
+	private int verifyIndex(IndexResourceManager index, int numTuples) throws Exception
+	{
+		IndexSchema indexSchema = index.getSchema();
+		int column = indexSchema.getColumnNumber();
+		byte[] tableBuffer = new byte[4096];
+		boolean[] seen = new boolean[numTuples];
+		int count = 0;
+		DataField previous = null;
+		boolean previousContinues = false;
+		int pageNumber = indexSchema.getFirstLeafNumber();
+		while (pageNumber != -1) {
+			BTreeLeafPage leaf = (BTreeLeafPage) readIndexPage(index, pageNumber);
+			assertTrue(leaf.getNumberOfEntries() > 0);
+			DataField firstKey = leaf.getFirstKey();
+			if (previous != null) {
+				assertTrue(previous.compareTo(firstKey) <= 0);
+				assertEquals(previous.equals(firstKey), previousContinues);
+			}
+			if (!previousContinues) {
+				assertEquals(pageNumber, findLeaf(index, firstKey));
+			}
+			for (int i = 0; i < leaf.getNumberOfEntries(); i++) {
+				DataField key = leaf.getKey(i);
+				if (previous != null) {
+					assertTrue(previous.compareTo(key) <= 0);
+				}
+				RID rid = leaf.getRidAtPosition(i);
+				TablePage page = this.table.readPageFromResource(tableBuffer, rid.getPageIndex());
+				DataTuple tuple = page.getDataTuple(rid.getTupleIndex(), 7, 3);
+				assertEquals(key, tuple.getField(column));
+				int id = ((IntField) tuple.getField(0)).getValue();
+				assertFalse(seen[id]);
+				seen[id] = true;
+				previous = key;
+				count++;
+			}
+			previousContinues = leaf.isLastKeyContinuingOnNextPage();
+			pageNumber = leaf.getNextLeafPageNumber();
+		}
+		assertFalse(previousContinues);
+		return count;
+	}
+
+	private static int findLeaf(IndexResourceManager index, DataField key) throws Exception
+	{
+		BTreeIndexPage page = readIndexPage(index, index.getSchema().getRootPageNumber());
+		while (page instanceof BTreeInnerNodePage) {
+			page = readIndexPage(index, ((BTreeInnerNodePage) page).getChildPageForKey(key));
+		}
+		return page.getPageNumber();
+	}
+}
@@ -0,0 +1,335 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.BasicType;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.SmallIntField;
+import de.tuberlin.dima.minidb.core.TimeField;
+import de.tuberlin.dima.minidb.core.TimestampField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.tables.ColumnBatch;
+import de.tuberlin.dima.minidb.io.tables.PageTupleAccessException;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageImpl;
+import de.tuberlin.dima.minidb.io.tables.TupleIterator;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+
+
+/**
+ * Test case for decoding the columns of table pages into column batches, and for evaluating
+ * predicates on the binary records.
+ */
+public class TestColumnBatch
+{
+	/**
+	 * Fixed seed to make tests reproducable.
+	 */
+	private static final long SEED = 2398471293847L;
+
+	private static final int PAGE_SIZE = 8192;
+
+	private Random random;
+
+	private TableSchema schema;
+
+	private TablePage page;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.random = new Random(SEED);
+
+		this.schema = new TableSchema(PAGE_SIZE);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("smallint", DataType.smallIntType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("int", DataType.intType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("varchar", DataType.varcharType(24), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("bigint", DataType.bigIntType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("float", DataType.floatType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("double", DataType.doubleType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("char", DataType.charType(7), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("date", DataType.dateType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("time", DataType.timeType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("timestamp", DataType.timestampType(), true));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("rid", DataType.ridType(), false));
+
+		// the implementation under test, whatever page implementation the factory prefers
+		this.page = new TablePageImpl(this.schema, new byte[PAGE_SIZE], 1);
+		int numCols = this.schema.getNumberOfColumns();
+		while (true) {
+			DataTuple tuple = new DataTuple(numCols);
+			for (int i = 0; i < numCols; i++) {
+				tuple.assignDataField(generateRandomField(this.schema.getColumn(i).getDataType()), i);
+			}
+			if (!this.page.insertTuple(tuple)) {
+				break;
+			}
+		}
+		for (int i = 0; i < this.page.getNumRecordsOnPage(); i++) {
+			if (this.random.nextInt(5) == 0) {
+				this.page.deleteTuple(i);
+			}
+		}
+	}
+
+
+	/**
+	 * Tests that all columns of all records are decoded to the same values as the tuples, and that
+	 * exactly the deleted records are not selected.
+	 */
+	@Test
+	public void testAllColumns() throws Exception
+	{
+		long bitmap = (1L << this.schema.getNumberOfColumns()) - 1;
+		ColumnBatch batch = new ColumnBatch(this.schema, bitmap, ColumnBatch.DEFAULT_CAPACITY);
+		int numRecords = this.page.getNumRecordsOnPage();
+		assertTrue(numRecords > 20);
+
+		int numSelected = this.page.readColumns(0, numRecords, batch);
+		assertEquals(numSelected, batch.getNumberOfSelectedRows());
+		assertEquals(numRecords, batch.getNumberOfRows());
+		checkBatch(batch, bitmap);
+	}
+
+	/**
+	 * Tests decoding a subset of the columns for consecutive ranges of the records.
+	 */
+	@Test
+	public void testProjectedRanges() throws Exception
+	{
+		long bitmap = 0x1L | 0x4L | 0x40L | 0x100L;
+		ColumnBatch batch = new ColumnBatch(this.schema, bitmap, 16);
+		assertEquals(4, batch.getNumberOfColumns());
+
+		int numRecords = this.page.getNumRecordsOnPage();
+		for (int start = 0; start < numRecords; start += 16) {
+			int end = Math.min(numRecords, start + 16);
+			this.page.readColumns(start, end, batch);
+			assertEquals(start, batch.getFirstPosition());
+			assertEquals(end - start, batch.getNumberOfRows());
+			checkBatch(batch, bitmap);
+		}
+	}
+
+	/**
+	 * Tests that ranges outside the page and ranges larger than the batch are rejected.
+	 */
+	@Test
+	public void testInvalidRanges() throws Exception
+	{
+		ColumnBatch batch = new ColumnBatch(this.schema, 0x2L, 8);
+		int numRecords = this.page.getNumRecordsOnPage();
+
+		try {
+			this.page.readColumns(numRecords - 2, numRecords + 1, batch);
+			throw new AssertionError("A range beyond the records has been accepted.");
+		}
+		catch (PageTupleAccessException ptaex) {
+			// expected
+		}
+		try {
+			this.page.readColumns(0, 9, batch);
+			throw new AssertionError("A range larger than the batch has been accepted.");
+		}
+		catch (IllegalArgumentException iaex) {
+			// expected
+		}
+		assertEquals(0, this.page.readColumns(3, 3, batch));
+	}
+
+	/**
+	 * Tests that predicates evaluated on the binary records select exactly the records for which
+	 * the predicates evaluate to true on the decoded fields, for all types and operators, and that
+	 * the iterator with predicates returns the same tuples.
+	 */
+	@Test
+	public void testPredicates() throws Exception
+	{
+		int numCols = this.schema.getNumberOfColumns();
+		long bitmap = (1L << numCols) - 1;
+		int numRecords = this.page.getNumRecordsOnPage();
+		ColumnBatch batch = new ColumnBatch(this.schema, 0x1L, ColumnBatch.DEFAULT_CAPACITY);
+
+		for (int col = 0; col < numCols; col++) {
+			DataType type = this.schema.getColumn(col).getDataType();
+			List<DataField> literals = new ArrayList<DataField>();
+			for (int i = 0; i < 3; i++) {
+				DataTuple tuple = this.page.getDataTuple(this.random.nextInt(numRecords), bitmap, numCols);
+				if (tuple != null) {
+					literals.add(tuple.getField(col));
+				}
+			}
+			literals.add(generateRandomField(type));
+			if (type.getBasicType() == BasicType.CHAR) {
+				literals.add(new CharField("m"));
+			}
+			if (type.getBasicType() != BasicType.RID) {
+				literals.add(type.getNullValue());
+			}
+
+			for (DataField literal : literals) {
+				for (Operator op : Operator.values()) {
+					if (op == Operator.UNDETERMINED) {
+						continue;
+					}
+					LowLevelPredicate pred = new LowLevelPredicate(op, literal, col);
+					LowLevelPredicate[] preds = { pred };
+
+					List<DataTuple> expected = new ArrayList<DataTuple>();
+					List<Integer> expectedRows = new ArrayList<Integer>();
+					for (int i = 0; i < numRecords; i++) {
+						DataTuple tuple = this.page.getDataTuple(i, bitmap, numCols);
+						if (tuple != null && pred.evaluateWithNull(tuple.getField(col))) {
+							expected.add(tuple);
+							expectedRows.add(i);
+						}
+					}
+
+					int numSelected = this.page.readColumns(preds, 0, numRecords, batch);
+					assertEquals(pred.toString(), expectedRows.size(), numSelected);
+					for (int i = 0; i < numSelected; i++) {
+						assertEquals(pred.toString(), expectedRows.get(i).intValue(), batch.getSelection()[i]);
+					}
+
+					List<DataTuple> actual = new ArrayList<DataTuple>();
+					TupleIterator iterator = this.page.getIterator(preds, numCols, bitmap);
+					while (iterator.hasNext()) {
+						actual.add(iterator.next());
+					}
+					assertEquals(pred.toString(), expected, actual);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests that filling the batch from the tuples of the page, as for pages that cannot decode
+	 * their records, gives the same values and selections as decoding the records.
+	 */
+	@Test
+	public void testReadTuples() throws Exception
+	{
+		long bitmap = (1L << this.schema.getNumberOfColumns()) - 1;
+		ColumnBatch batch = new ColumnBatch(this.schema, bitmap, 16);
+		ColumnBatch decoded = new ColumnBatch(this.schema, bitmap, 16);
+		LowLevelPredicate[] preds = { new LowLevelPredicate(Operator.GREATER, new IntField(0), 1) };
+
+		int numRecords = this.page.getNumRecordsOnPage();
+		for (int start = 0; start < numRecords; start += 16) {
+			int end = Math.min(numRecords, start + 16);
+			int numSelected = batch.readTuples(this.page, null, start, end);
+			assertEquals(this.page.readColumns(start, end, decoded), numSelected);
+			assertEquals(start, batch.getFirstPosition());
+			assertEquals(end - start, batch.getNumberOfRows());
+			checkBatch(batch, bitmap);
+
+			numSelected = batch.readTuples(this.page, preds, start, end);
+			assertEquals(this.page.readColumns(preds, start, end, decoded), numSelected);
+			for (int i = 0; i < numSelected; i++) {
+				assertEquals(decoded.getSelection()[i], batch.getSelection()[i]);
+			}
+		}
+
+		try {
+			batch.readTuples(this.page, null, numRecords - 2, numRecords + 1);
+			throw new AssertionError("A range beyond the records has been accepted.");
+		}
+		catch (PageTupleAccessException ptaex) {
+			// expected
+		}
+	}
+
+
+	// --------------------------------------------------------------------------------------------
+
+	private void checkBatch(ColumnBatch batch, long bitmap) throws Exception
+	{
+		int numCols = Long.bitCount(bitmap);
+		int[] selection = batch.getSelection();
+		int next = 0;
+		for (int row = 0; row < batch.getNumberOfRows(); row++) {
+			DataTuple expected = this.page.getDataTuple(batch.getFirstPosition() + row, bitmap, numCols);
+			if (expected == null) {
+				assertTrue(next == batch.getNumberOfSelectedRows() || selection[next] != row);
+				continue;
+			}
+			assertTrue(next < batch.getNumberOfSelectedRows());
+			assertEquals(row, selection[next++]);
+			for (int col = 0; col < numCols; col++) {
+				DataField field = batch.getField(row, col);
+				assertNotNull(field);
+				assertEquals(expected.getField(col).isNULL(), field.isNULL());
+				assertEquals(expected.getField(col), field);
+			}
+		}
+		assertEquals(batch.getNumberOfSelectedRows(), next);
+	}
+
+	private DataField generateRandomField(DataType type) throws Exception
+	{
+		if (type.getBasicType() != BasicType.RID && this.random.nextInt(10) == 0) {
+			return type.getNullValue();
+		}
+
+		switch (type.getBasicType()) {
+		case SMALL_INT:
+			return new SmallIntField((short) this.random.nextInt());
+		case INT:
+			return new IntField(this.random.nextInt());
+		case BIG_INT:
+			return new BigIntField(this.random.nextLong());
+		case FLOAT:
+			return new FloatField(this.random.nextFloat());
+		case DOUBLE:
+			return new DoubleField(this.random.nextDouble());
+		case CHAR:
+			return new CharField(randomString(type.getLength()));
+		case VAR_CHAR:
+			return new VarcharField(randomString(this.random.nextInt(type.getLength())));
+		case TIME:
+			return new TimeField(this.random.nextInt(24), this.random.nextInt(60), this.random.nextInt(60));
+		case TIMESTAMP:
+			return new TimestampField(this.random.nextInt(28) + 1, this.random.nextInt(12), this.random.nextInt(2999) + 1600,
+				this.random.nextInt(24), this.random.nextInt(60), this.random.nextInt(60), this.random.nextInt(1000));
+		case DATE:
+			return new DateField(this.random.nextInt(28) + 1, this.random.nextInt(12), this.random.nextInt(9999) + 1);
+		case RID:
+			return new RID(this.random.nextInt(Integer.MAX_VALUE), this.random.nextInt(Integer.MAX_VALUE));
+		default:
+			throw new IllegalArgumentException("Unknown type " + type + ".");
+		}
+	}
+
+	private String randomString(int len)
+	{
+		StringBuilder buffer = new StringBuilder(len);
+		for (int i = 0; i < len; i++) {
+			buffer.append((char) ('a' + this.random.nextInt(26)));
+		}
+		return buffer.toString();
+	}
+}
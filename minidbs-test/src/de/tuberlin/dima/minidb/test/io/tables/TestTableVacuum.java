@@ -0,0 +1,337 @@
+package de.tuberlin.dima.minidb.test.io.tables;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.RIDRemappingListener;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageImpl;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TableVacuum;
+
+
+/**
+ * Test case for the compaction of table pages and the table vacuum.
+ */
+public class TestTableVacuum
+{
+	private static final int RESOURCE_ID = 1;
+
+	private static final int NUM_PAGES = 20;
+
+	private TableSchema schema;
+
+	private File file;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager table;
+
+	/**
+	 * The RIDs of the tuples by their id.
+	 */
+	private Map<Integer, RID> rids;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.schema = new TableSchema(PageSize.SIZE_4096);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("id", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("name", DataType.varcharType(40), true));
+
+		this.file = File.createTempFile("minidb-vacuum", ".mdtbl");
+		this.table = TableResourceManager.createTable(this.file, this.schema);
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(RESOURCE_ID, this.table);
+		this.rids = new HashMap<Integer, RID>();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.table.closeResource();
+		TableResourceManager.deleteTable(this.file);
+	}
+
+
+	/**
+	 * Tests that a compaction drops the deleted records and their variable-length fields and keeps
+	 * the other tuples, in their order.
+	 */
+	@Test
+	public void testCompactPage() throws Exception
+	{
+		// the implementation under test, whatever page implementation the factory prefers
+		TablePage page = new TablePageImpl(this.schema, new byte[4096], 1);
+		int num = 0;
+		while (page.insertTuple(tuple(num))) {
+			num++;
+		}
+		assertEquals(0, page.getReclaimableSpace());
+
+		int reclaimable = 0;
+		for (int i = 0; i < num; i += 3) {
+			page.deleteTuple(i);
+			reclaimable += 4 + 4 + 8 + tuple(i).getField(1).getNumberOfBytes();
+		}
+		assertEquals(reclaimable, page.getReclaimableSpace());
+		int freeSpace = page.getFreeSpace() - page.getNumDeletedRecordsOnPage() * (4 + 4 + 8);
+
+		int[] newPositions = page.compact();
+		assertEquals(num, newPositions.length);
+		assertEquals(0, page.getReclaimableSpace());
+		assertEquals(0, page.getNumDeletedRecordsOnPage());
+		assertEquals(freeSpace + reclaimable, page.getFreeSpace());
+		assertEquals(num - (num + 2) / 3, page.getNumRecordsOnPage());
+		for (int i = 0; i < num; i++) {
+			if (i % 3 == 0) {
+				assertEquals(-1, newPositions[i]);
+			}
+			else {
+				assertEquals(i - i / 3 - 1, newPositions[i]);
+				assertEquals(tuple(i), page.getDataTuple(newPositions[i], Long.MAX_VALUE, 2));
+			}
+		}
+		assertTrue(page.insertTuple(tuple(-1)));
+	}
+
+	/**
+	 * Tests that the vacuum compacts the pages with enough reclaimable space and reports the moved
+	 * records, such that all remaining tuples are found at their remapped RIDs.
+	 */
+	@Test
+	public void testVacuum() throws Exception
+	{
+		fill();
+		int first = this.table.getFirstDataPageNumber();
+		// the first page loses only one tuple, too little to be compacted
+		delete(id -> id % 4 != 0 && this.rids.get(id).getPageIndex() != first);
+		delete(id -> this.rids.get(id).getPageIndex() == first && this.rids.get(id).getTupleIndex() == 1);
+		int remaining = this.rids.size();
+
+		TableVacuum vacuum = new TableVacuum(this.bufferPool, this.table, RESOURCE_ID);
+		vacuum.addListener(new Remapper());
+		vacuum.vacuum();
+		assertEquals(NUM_PAGES - 1, vacuum.getNumberOfCompactedPages());
+		assertTrue(vacuum.getNumberOfReclaimedBytes() > (NUM_PAGES - 1) * 4096 / 2);
+		assertTrue(this.table.getRecordedFreeSpace(first + 1) > 4096 / 2);
+
+		verify();
+		assertEquals(remaining, count());
+
+		// a second pass finds nothing to reclaim
+		vacuum.vacuum();
+		assertEquals(NUM_PAGES - 1, vacuum.getNumberOfCompactedPages());
+	}
+
+	/**
+	 * Tests that the background vacuum compacts pages and stops.
+	 */
+	@Test
+	public void testBackgroundVacuum() throws Exception
+	{
+		fill();
+		delete(id -> id % 2 == 0);
+
+		TableVacuum vacuum = new TableVacuum(this.bufferPool, this.table, RESOURCE_ID);
+		vacuum.addListener(new Remapper());
+		vacuum.start(1);
+		assertTrue(vacuum.isRunning());
+		long deadline = System.currentTimeMillis() + 10000;
+		while (vacuum.getNumberOfCompactedPages() < NUM_PAGES && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		vacuum.stop();
+		assertTrue(!vacuum.isRunning());
+		assertNull(vacuum.getError());
+		assertEquals(NUM_PAGES, vacuum.getNumberOfCompactedPages());
+		verify();
+	}
+
+	/**
+	 * Tests that the vacuum skips pages that cannot compact and leaves their tuples where they are.
+	 */
+	@Test
+	public void testPagesWithoutCompaction() throws Exception
+	{
+		fill();
+		delete(id -> id % 2 == 0);
+		int remaining = this.rids.size();
+
+		TableVacuum vacuum = new TableVacuum(withBaselinePages(this.bufferPool), this.table, RESOURCE_ID);
+		vacuum.addListener(new Remapper());
+		vacuum.vacuum();
+		assertEquals(0, vacuum.getNumberOfCompactedPages());
+		assertEquals(0, vacuum.getNumberOfReclaimedBytes());
+
+		verify();
+		assertEquals(remaining, count());
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Wraps the buffer pool, so that the table pages it returns only implement the methods of the
+	 * original page interface and throw an <code>UnsupportedOperationException</code> from those
+	 * that were added later, as the pages of an implementation that only has their default methods.
+	 */
+	private static BufferPoolManager withBaselinePages(final BufferPoolManager bufferPool)
+	{
+		return (BufferPoolManager) Proxy.newProxyInstance(BufferPoolManager.class.getClassLoader(),
+				new Class<?>[] { BufferPoolManager.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						Object result = invokeOn(bufferPool, method, args);
+						if (!(result instanceof TablePage)) {
+							return result;
+						}
+						final TablePage page = (TablePage) result;
+						return Proxy.newProxyInstance(TablePage.class.getClassLoader(), new Class<?>[] { TablePage.class },
+								new InvocationHandler() {
+									@Override
+									public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+									{
+										if (method.isDefault()) {
+											throw new UnsupportedOperationException(method.getName() + " is not supported.");
+										}
+										return invokeOn(page, method, args);
+									}
+								});
+					}
+				});
+	}
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable
+	{
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException itex) {
+			throw itex.getCause();
+		}
+	}
+
+	private static DataTuple tuple(int id)
+	{
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < Math.abs(id) % 17; i++) {
+			name.append((char) ('a' + i));
+		}
+		DataField field = id % 5 == 0 ? DataType.varcharType(40).getNullValue() : new VarcharField(name.toString());
+		return new DataTuple(new DataField[] { new IntField(id), field });
+	}
+
+	/**
+	 * Fills the pages of the table with tuples and remembers their RIDs. The pages are new, so each
+	 * tuple is appended behind the records before it, with every page implementation.
+	 */
+	private void fill() throws Exception
+	{
+		int id = 0;
+		for (int p = 0; p < NUM_PAGES; p++) {
+			TablePage page = (TablePage) this.bufferPool.createNewPageAndPin(RESOURCE_ID);
+			while (page.insertTuple(tuple(id))) {
+				this.rids.put(id++, new RID(page.getPageNumber(), page.getNumRecordsOnPage() - 1));
+			}
+			this.bufferPool.unpinPage(RESOURCE_ID, page.getPageNumber());
+		}
+	}
+
+	private interface IdFilter
+	{
+		boolean matches(int id);
+	}
+
+	private void delete(IdFilter filter) throws Exception
+	{
+		for (Integer id : this.rids.keySet().toArray(new Integer[0])) {
+			if (filter.matches(id)) {
+				RID rid = this.rids.remove(id);
+				TablePage page = (TablePage) this.bufferPool.getPageAndPin(RESOURCE_ID, rid.getPageIndex());
+				page.deleteTuple(rid.getTupleIndex());
+				this.bufferPool.unpinPage(RESOURCE_ID, rid.getPageIndex());
+			}
+		}
+	}
+
+	/**
+	 * Checks that all remaining tuples are found at their RIDs.
+	 */
+	private void verify() throws Exception
+	{
+		for (Map.Entry<Integer, RID> entry : this.rids.entrySet()) {
+			RID rid = entry.getValue();
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(RESOURCE_ID, rid.getPageIndex());
+			assertEquals(tuple(entry.getKey()), page.getDataTuple(rid.getTupleIndex(), Long.MAX_VALUE, 2));
+			this.bufferPool.unpinPage(RESOURCE_ID, rid.getPageIndex());
+		}
+	}
+
+	private int count() throws Exception
+	{
+		int num = 0;
+		for (int p = this.table.getFirstDataPageNumber(); p <= this.table.getLastDataPageNumber(); p++) {
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(RESOURCE_ID, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				if (page.getDataTuple(i, 1, 1) != null) {
+					num++;
+				}
+			}
+			this.bufferPool.unpinPage(RESOURCE_ID, p);
+		}
+		return num;
+	}
+
+	/**
+	 * Patches the remembered RIDs, as an index would patch its entries.
+	 */
+	private final class Remapper implements RIDRemappingListener
+	{
+		@Override
+		public void recordsMoved(int resourceId, int pageNumber, int[] newPositions)
+		{
+			assertEquals(RESOURCE_ID, resourceId);
+			for (Map.Entry<Integer, RID> entry : TestTableVacuum.this.rids.entrySet()) {
+				RID rid = entry.getValue();
+				if (rid.getPageIndex() == pageNumber) {
+					int position = newPositions[rid.getTupleIndex()];
+					assertTrue(position >= 0);
+					entry.setValue(new RID(pageNumber, position));
+				}
+			}
+		}
+	}
+}
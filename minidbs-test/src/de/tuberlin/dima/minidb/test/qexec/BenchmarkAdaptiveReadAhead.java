@@ -0,0 +1,158 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+
+
+/**
+ * Compares table scans of <tt>lineitem</tt> with fixed prefetch windows of 1, 8 and 64 pages against
+ * the adaptive window, once with a consumer that only counts the tuples and once with a slow
+ * consumer that spends some work per tuple. Besides the time, each run reports the average number of
+ * pages the window held ahead of the scan. The adaptive runs also print a trace of the window
+ * length over time, one line per change, thinned to at most {@link #TRACE_LINES} lines.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkAdaptiveReadAhead extends AbstractBenchmark
+{
+	private static final int TRACE_LINES = 40;
+
+	/**
+	 * Iterations of busy work per tuple for the slow consumer.
+	 */
+	private static final int SLOW_WORK = 2000;
+
+	private static File tableFile;
+
+	/**
+	 * Prevents the work of the slow consumer from being optimized away.
+	 */
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		tableFile = new File(BenchmarkAdaptiveReadAhead.class.getResource("/data/lineitem.mdtbl").getPath());
+	}
+
+	@Test
+	public void fastFixed1() throws Exception
+	{
+		scan("fast, fixed 1", 1, false, 0);
+	}
+
+	@Test
+	public void fastFixed8() throws Exception
+	{
+		scan("fast, fixed 8", 8, false, 0);
+	}
+
+	@Test
+	public void fastFixed64() throws Exception
+	{
+		scan("fast, fixed 64", 64, false, 0);
+	}
+
+	@Test
+	public void fastAdaptive() throws Exception
+	{
+		scan("fast, adaptive", 8, true, 0);
+	}
+
+	@Test
+	public void slowFixed1() throws Exception
+	{
+		scan("slow, fixed 1", 1, false, SLOW_WORK);
+	}
+
+	@Test
+	public void slowFixed8() throws Exception
+	{
+		scan("slow, fixed 8", 8, false, SLOW_WORK);
+	}
+
+	@Test
+	public void slowFixed64() throws Exception
+	{
+		scan("slow, fixed 64", 64, false, SLOW_WORK);
+	}
+
+	@Test
+	public void slowAdaptive() throws Exception
+	{
+		scan("slow, adaptive", 8, true, SLOW_WORK);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void scan(String name, int window, boolean adaptive, int work) throws Exception
+	{
+		BufferPoolManager pool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		pool.startIOThreads();
+		TableResourceManager table = TableResourceManager.openTable(tableFile);
+		try {
+			pool.registerResource(1, table);
+			int numCols = table.getSchema().getNumberOfColumns();
+			int[] columns = new int[numCols];
+			for (int i = 0; i < numCols; i++) {
+				columns[i] = i;
+			}
+
+			TableScanOperatorImpl scan = new TableScanOperatorImpl(pool, table, 1, columns, null, window, adaptive);
+			StringBuilder trace = new StringBuilder();
+			long[] traceTimes = new long[1 << 16];
+			int[] traceWindows = new int[traceTimes.length];
+			int numChanges = 0;
+
+			long start = System.nanoTime();
+			long tuples = 0;
+			long windowSum = 0;
+			int lastWindow = -1;
+			scan.open(null);
+			DataTuple tuple;
+			while ((tuple = scan.next()) != null) {
+				tuples++;
+				for (int i = 0; i < work; i++) {
+					sink += i ^ tuple.getNumberOfFields();
+				}
+				int current = scan.getPrefetchWindowLength();
+				windowSum += current;
+				if (current != lastWindow && numChanges < traceTimes.length) {
+					traceTimes[numChanges] = System.nanoTime() - start;
+					traceWindows[numChanges++] = current;
+					lastWindow = current;
+				}
+			}
+			scan.close();
+			long duration = System.nanoTime() - start;
+
+			if (adaptive) {
+				int step = Math.max(1, numChanges / TRACE_LINES);
+				for (int i = 0; i < numChanges; i += step) {
+					trace.append(String.format("    %8.2f ms  window %d%n", traceTimes[i] / 1000000.0, traceWindows[i]));
+				}
+			}
+			System.out.print(String.format("%s: %.1f ms, %d tuples, average window %.1f pages%n%s",
+				name, duration / 1000000.0, tuples, (double) windowSum / tuples, trace));
+		}
+		finally {
+			pool.closeBufferPool();
+			table.closeResource();
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.FetchOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Runs three plans over the TPC-H tables tuple at a time and in batches: a scan of six columns of
+ * <tt>lineitem</tt>, the grouping of TPC-H Q1 by return flag and line status over that scan, and
+ * an index nested loop join of <tt>customer</tt> with <tt>order</tt> over
+ * <tt>order_fk_customer</tt> that fetches the orders. Tuple at a time, every operator is wrapped
+ * into one that produces only single tuples, and the plan is drained through <tt>next()</tt>. In
+ * batches, the operators hand batches of {@link PhysicalPlanOperator#DEFAULT_BATCH_SIZE} tuples to
+ * each other. Each run reports the time and the number of produced tuples.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkBatchExecution extends AbstractBenchmark
+{
+	private static final int LINEITEM_ID = 1;
+
+	private static final int CUSTOMER_ID = 2;
+
+	private static final int ORDER_ID = 3;
+
+	private static final int INDEX_ID = 4;
+
+	/**
+	 * The scanned columns: return flag, line status, order key, quantity, extended price, discount.
+	 */
+	private static final int[] SCANNED_COLUMNS = { 8, 9, 0, 4, 5, 6 };
+
+	private static File dataDir;
+
+	private static DataType[] scannedTypes;
+
+	private static QueryHeap heap;
+
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkBatchExecution.class.getResource("/data/").getPath());
+
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		scannedTypes = new DataType[SCANNED_COLUMNS.length];
+		for (int i = 0; i < SCANNED_COLUMNS.length; i++) {
+			scannedTypes[i] = lineitem.getSchema().getColumn(SCANNED_COLUMNS[i]).getDataType();
+		}
+		lineitem.closeResource();
+
+		heap = new QueryHeap(Logger.getLogger("benchmark"), config());
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception
+	{
+		heap.closeQueryHeap();
+	}
+
+	@Test
+	public void scanTupleAtATime() throws Exception
+	{
+		run("lineitem scan", false, false);
+	}
+
+	@Test
+	public void scanBatches() throws Exception
+	{
+		run("lineitem scan", false, true);
+	}
+
+	@Test
+	public void q1TupleAtATime() throws Exception
+	{
+		run("Q1 group by", true, false);
+	}
+
+	@Test
+	public void q1Batches() throws Exception
+	{
+		run("Q1 group by", true, true);
+	}
+
+	@Test
+	public void joinTupleAtATime() throws Exception
+	{
+		join(false);
+	}
+
+	@Test
+	public void joinBatches() throws Exception
+	{
+		join(true);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void run(String name, boolean groupBy, boolean batches) throws Exception
+	{
+		BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(LINEITEM_ID, lineitem);
+			PhysicalPlanOperator plan = wrap(new TableScanOperatorImpl(bufferPool, lineitem, LINEITEM_ID, SCANNED_COLUMNS, null, 8), batches);
+			if (groupBy) {
+				plan = wrap(new HashGroupByOperatorImpl(plan, heap, scannedTypes, 4, new int[] { 0, 1 }, new int[] { 3, 4, 3, 4, 5, 2 },
+						new AggregationType[] { AggregationType.SUM, AggregationType.SUM, AggregationType.AVG,
+								AggregationType.AVG, AggregationType.AVG, AggregationType.COUNT },
+						new DataType[] { scannedTypes[3], scannedTypes[4], scannedTypes[3], scannedTypes[4], scannedTypes[5], DataType.bigIntType() },
+						new int[] { 0, 1, -1, -1, -1, -1, -1, -1 }, new int[] { -1, -1, 0, 1, 2, 3, 4, 5 }), batches);
+			}
+			drain(name, plan, batches);
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			lineitem.closeResource();
+		}
+	}
+
+	private static void join(boolean batches) throws Exception
+	{
+		BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		TableResourceManager customer = TableResourceManager.openTable(new File(dataDir, "customer.mdtbl"));
+		TableResourceManager order = TableResourceManager.openTable(new File(dataDir, "order.mdtbl"));
+		IndexResourceManager orderCustomerFk = IndexResourceManager.openIndex(new File(dataDir, "order_fk_customer.mdidx"), order.getSchema());
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(CUSTOMER_ID, customer);
+			bufferPool.registerResource(ORDER_ID, order);
+			bufferPool.registerResource(INDEX_ID, orderCustomerFk);
+			BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(orderCustomerFk.getSchema(), bufferPool, INDEX_ID);
+
+			PhysicalPlanOperator scan = wrap(new TableScanOperatorImpl(bufferPool, customer, CUSTOMER_ID, new int[] { 0 }, null, 8), batches);
+			// the lookup is not wrapped, so that the join announces its blocks of keys to it either way
+			PhysicalPlanOperator lookup = new IndexCorrelatedLookupOperatorImpl(index, 0);
+			PhysicalPlanOperator join = wrap(new NestedLoopJoinOperatorImpl(scan, lookup, null, new int[] { -1 }, new int[] { 0 }), batches);
+			PhysicalPlanOperator fetch = wrap(new FetchOperatorImpl(join, bufferPool, ORDER_ID, new int[] { 0, 1, 3, 4 }, 64, true), batches);
+			drain("customer-order join", fetch, batches);
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			customer.closeResource();
+			order.closeResource();
+			orderCustomerFk.closeResource();
+		}
+	}
+
+	private static void drain(String name, PhysicalPlanOperator plan, boolean batches) throws Exception
+	{
+		long start = System.nanoTime();
+		long num = 0;
+		plan.open(null);
+		if (batches) {
+			DataTuple[] batch = new DataTuple[PhysicalPlanOperator.DEFAULT_BATCH_SIZE];
+			int produced;
+			while ((produced = plan.nextBatch(batch)) > 0) {
+				num += produced;
+			}
+		}
+		else {
+			while (plan.next() != null) {
+				num++;
+			}
+		}
+		plan.close();
+		long duration = System.nanoTime() - start;
+		sink = num;
+
+		System.out.println(String.format("%s, %s: %.2f ms, %d tuples", name, batches ? "batches" : "tuple at a time",
+				duration / 1000000.0, num));
+	}
+
+	private static PhysicalPlanOperator wrap(PhysicalPlanOperator operator, boolean batches)
+	{
+		return batches ? operator : new TupleAtATime(operator);
+	}
+
+	/**
+	 * Passes the tuples of its child on one at a time, producing batches only through the default
+	 * implementation.
+	 */
+	private static final class TupleAtATime implements PhysicalPlanOperator
+	{
+		private final PhysicalPlanOperator child;
+
+
+		TupleAtATime(PhysicalPlanOperator child)
+		{
+			this.child = child;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple) throws QueryExecutionException
+		{
+			this.child.open(correlatedTuple);
+		}
+
+		@Override
+		public DataTuple next() throws QueryExecutionException
+		{
+			return this.child.next();
+		}
+
+		@Override
+		public void close() throws QueryExecutionException
+		{
+			this.child.close();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.HashGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Aggregates <tt>lineitem</tt> with the hash group by operator over an unsorted table scan. The
+ * first run groups by return flag and line status as in TPC-H Q1, which gives a handful of groups
+ * with sums and averages of quantity, price and discount and a count. The other runs group by the
+ * order key, once with an estimate of the groups that lets them fit into memory, and once with an
+ * estimate far too low, so most groups are partitioned to temp space. Each run reports the time and
+ * the number of groups.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkHashGroupBy extends AbstractBenchmark
+{
+	private static final int LINEITEM_ID = 1;
+
+	/**
+	 * The scanned columns: return flag, line status, order key, quantity, extended price, discount.
+	 */
+	private static final int[] SCANNED_COLUMNS = { 8, 9, 0, 4, 5, 6 };
+
+	private static final AggregationType[] Q1_FUNCTIONS = { AggregationType.SUM, AggregationType.SUM,
+			AggregationType.AVG, AggregationType.AVG, AggregationType.AVG, AggregationType.COUNT };
+
+	private static final int[] Q1_AGG_COLUMNS = { 3, 4, 3, 4, 5, 2 };
+
+	private static File dataDir;
+
+	private static DataType[] scannedTypes;
+
+	private static QueryHeap heap;
+
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkHashGroupBy.class.getResource("/data/").getPath());
+
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		scannedTypes = new DataType[SCANNED_COLUMNS.length];
+		for (int i = 0; i < SCANNED_COLUMNS.length; i++) {
+			scannedTypes[i] = lineitem.getSchema().getColumn(SCANNED_COLUMNS[i]).getDataType();
+		}
+		lineitem.closeResource();
+
+		heap = new QueryHeap(Logger.getLogger("benchmark"), config());
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception
+	{
+		heap.closeQueryHeap();
+	}
+
+	@Test
+	public void q1ReturnFlagLineStatus() throws Exception
+	{
+		int[] outGroups = { 0, 1, -1, -1, -1, -1, -1, -1 };
+		int[] outAggs = { -1, -1, 0, 1, 2, 3, 4, 5 };
+		DataType[] aggTypes = { scannedTypes[3], scannedTypes[4], scannedTypes[3], scannedTypes[4], scannedTypes[5], DataType.bigIntType() };
+		aggregate("Q1", 4, new int[] { 0, 1 }, Q1_AGG_COLUMNS, Q1_FUNCTIONS, aggTypes, outGroups, outAggs);
+	}
+
+	@Test
+	public void orderKeyInMemory() throws Exception
+	{
+		groupByOrderKey("order key, estimated", 1000000);
+	}
+
+	@Test
+	public void orderKeySpilled() throws Exception
+	{
+		groupByOrderKey("order key, spilled", 1);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void groupByOrderKey(String name, int estimatedGroups) throws Exception
+	{
+		aggregate(name, estimatedGroups, new int[] { 2 }, new int[] { 3, 4 },
+				new AggregationType[] { AggregationType.SUM, AggregationType.MAX },
+				new DataType[] { scannedTypes[3], scannedTypes[4] }, new int[] { 0, -1, -1 }, new int[] { -1, 0, 1 });
+	}
+
+	private static void aggregate(String name, int estimatedGroups, int[] groupColumns, int[] aggColumns,
+			AggregationType[] functions, DataType[] aggTypes, int[] outGroups, int[] outAggs) throws Exception
+	{
+		BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(LINEITEM_ID, lineitem);
+			TableScanOperatorImpl scan = new TableScanOperatorImpl(bufferPool, lineitem, LINEITEM_ID, SCANNED_COLUMNS, null, 8);
+			HashGroupByOperatorImpl groupBy = new HashGroupByOperatorImpl(scan, heap, scannedTypes, estimatedGroups,
+					groupColumns, aggColumns, functions, aggTypes, outGroups, outAggs);
+
+			long start = System.nanoTime();
+			long groups = 0;
+			groupBy.open(null);
+			while (groupBy.next() != null) {
+				groups++;
+			}
+			groupBy.close();
+			long duration = System.nanoTime() - start;
+			sink = groups;
+
+			System.out.println(String.format("%s: %.2f ms, %d groups", name, duration / 1000000.0, groups));
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			lineitem.closeResource();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+
+
+/**
+ * Joins <tt>customer</tt> with the RIDs of its orders over <tt>order_fk_customer</tt> with an index
+ * nested loop join, tuple at a time and with blocks of 16, 256 and 4096 customers whose keys are
+ * looked up in one sweep. Each run reports the time and the number of index pages pinned in the
+ * buffer pool. The customers are scanned in key order, so a block of keys covers a dense run of
+ * leaves.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkIndexNestedLoopJoin extends AbstractBenchmark
+{
+	private static final int CUSTOMER_ID = 1;
+
+	private static final int INDEX_ID = 2;
+
+	private static File dataDir;
+
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkIndexNestedLoopJoin.class.getResource("/data/").getPath());
+	}
+
+	@Test
+	public void tupleAtATime() throws Exception
+	{
+		join(1);
+	}
+
+	@Test
+	public void block16() throws Exception
+	{
+		join(16);
+	}
+
+	@Test
+	public void block256() throws Exception
+	{
+		join(256);
+	}
+
+	@Test
+	public void block4096() throws Exception
+	{
+		join(4096);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void join(int blockSize) throws Exception
+	{
+		final AtomicLong indexPins = new AtomicLong();
+		final BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		BufferPoolManager counting = (BufferPoolManager) Proxy.newProxyInstance(BufferPoolManager.class.getClassLoader(),
+				new Class<?>[] { BufferPoolManager.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						if (method.getName().equals("getPageAndPin") && ((Integer) args[0]) == INDEX_ID) {
+							indexPins.incrementAndGet();
+						}
+						try {
+							return method.invoke(bufferPool, args);
+						}
+						catch (InvocationTargetException itex) {
+							throw itex.getCause();
+						}
+					}
+				});
+
+		TableResourceManager customer = TableResourceManager.openTable(new File(dataDir, "customer.mdtbl"));
+		TableResourceManager order = TableResourceManager.openTable(new File(dataDir, "order.mdtbl"));
+		IndexResourceManager orderCustomerFk = IndexResourceManager.openIndex(new File(dataDir, "order_fk_customer.mdidx"), order.getSchema());
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(CUSTOMER_ID, customer);
+			bufferPool.registerResource(INDEX_ID, orderCustomerFk);
+			BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(orderCustomerFk.getSchema(), counting, INDEX_ID);
+
+			TableScanOperatorImpl scan = new TableScanOperatorImpl(bufferPool, customer, CUSTOMER_ID, new int[] { 0 }, null, 8);
+			NestedLoopJoinOperatorImpl join = new NestedLoopJoinOperatorImpl(scan, new IndexCorrelatedLookupOperatorImpl(index, 0),
+					null, new int[] { 0, -1 }, new int[] { -1, 0 }, blockSize);
+
+			long start = System.nanoTime();
+			long num = 0;
+			join.open(null);
+			DataTuple tuple;
+			while ((tuple = join.next()) != null) {
+				num += tuple.getNumberOfFields();
+			}
+			join.close();
+			long duration = System.nanoTime() - start;
+			sink = num;
+
+			System.out.println(String.format("block %d: %.2f ms, %d index pages pinned, %d result tuples",
+					blockSize, duration / 1000000.0, indexPins.get(), num / 2));
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			customer.closeResource();
+			order.closeResource();
+			orderCustomerFk.closeResource();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PageRangeDispenser;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Runs a scan of six columns of <tt>lineitem</tt> and the grouping of TPC-H Q1 by return flag and
+ * line status over it with one, two and four scans that share the pages of the table. The tuples
+ * of the scans are gathered. For Q1, each scan is grouped by a partial group by, and a final group
+ * by combines the partial sums and counts. Each run reports the time and the number of produced
+ * tuples; the speedup is bounded by the number of processors of the machine.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkParallelScan extends AbstractBenchmark
+{
+	private static final int LINEITEM_ID = 1;
+
+	/**
+	 * The scanned columns: return flag, line status, order key, quantity, extended price, discount.
+	 */
+	private static final int[] SCANNED_COLUMNS = { 8, 9, 0, 4, 5, 6 };
+
+	private static File dataDir;
+
+	private static DataType[] scannedTypes;
+
+	private static QueryHeap heap;
+
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkParallelScan.class.getResource("/data/").getPath());
+
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		scannedTypes = new DataType[SCANNED_COLUMNS.length];
+		for (int i = 0; i < SCANNED_COLUMNS.length; i++) {
+			scannedTypes[i] = lineitem.getSchema().getColumn(SCANNED_COLUMNS[i]).getDataType();
+		}
+		lineitem.closeResource();
+
+		heap = new QueryHeap(Logger.getLogger("benchmark"), config());
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception
+	{
+		heap.closeQueryHeap();
+	}
+
+	@Test
+	public void scanSerial() throws Exception
+	{
+		run(false, 1);
+	}
+
+	@Test
+	public void scanTwoWorkers() throws Exception
+	{
+		run(false, 2);
+	}
+
+	@Test
+	public void scanFourWorkers() throws Exception
+	{
+		run(false, 4);
+	}
+
+	@Test
+	public void q1Serial() throws Exception
+	{
+		run(true, 1);
+	}
+
+	@Test
+	public void q1TwoWorkers() throws Exception
+	{
+		run(true, 2);
+	}
+
+	@Test
+	public void q1FourWorkers() throws Exception
+	{
+		run(true, 4);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void run(boolean groupBy, int dop) throws Exception
+	{
+		BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(LINEITEM_ID, lineitem);
+
+			PhysicalPlanOperator plan;
+			if (dop == 1) {
+				plan = new TableScanOperatorImpl(bufferPool, lineitem, LINEITEM_ID, SCANNED_COLUMNS, null, 8);
+				if (groupBy) {
+					plan = q1(plan, scannedTypes, new int[] { 0, 1 }, new int[] { 3, 4, 2 },
+							new AggregationType[] { AggregationType.SUM, AggregationType.SUM, AggregationType.COUNT });
+				}
+			}
+			else {
+				PageRangeDispenser dispenser = new PageRangeDispenser(lineitem, PageRangeDispenser.DEFAULT_MORSEL_PAGES, dop);
+				PhysicalPlanOperator[] workers = new PhysicalPlanOperator[dop];
+				for (int i = 0; i < dop; i++) {
+					workers[i] = new TableScanOperatorImpl(bufferPool, lineitem, LINEITEM_ID, SCANNED_COLUMNS, null, 8, dispenser);
+					if (groupBy) {
+						workers[i] = q1(workers[i], scannedTypes, new int[] { 0, 1 }, new int[] { 3, 4, 2 },
+								new AggregationType[] { AggregationType.SUM, AggregationType.SUM, AggregationType.COUNT });
+					}
+				}
+				plan = ExchangeOperatorImpl.createGather(workers);
+				if (groupBy) {
+					// the partial groups: return flag, line status, sum of quantity, sum of price, count
+					DataType[] partialTypes = { scannedTypes[0], scannedTypes[1], scannedTypes[3], scannedTypes[4], DataType.bigIntType() };
+					plan = q1(plan, partialTypes, new int[] { 0, 1 }, new int[] { 2, 3, 4 },
+							new AggregationType[] { AggregationType.SUM, AggregationType.SUM, AggregationType.SUM });
+				}
+			}
+			drain((groupBy ? "Q1 group by" : "lineitem scan") + ", " + dop + " workers", plan);
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			lineitem.closeResource();
+		}
+	}
+
+	/**
+	 * Groups by the two grouping columns and produces them followed by the three aggregates.
+	 */
+	private static PhysicalPlanOperator q1(PhysicalPlanOperator child, DataType[] inputTypes, int[] groupColumns,
+			int[] aggColumns, AggregationType[] functions)
+	{
+		DataType[] aggTypes = new DataType[aggColumns.length];
+		for (int i = 0; i < aggColumns.length; i++) {
+			aggTypes[i] = functions[i] == AggregationType.COUNT || inputTypes[aggColumns[i]].equals(DataType.bigIntType()) ?
+					DataType.bigIntType() : inputTypes[aggColumns[i]];
+		}
+		return new HashGroupByOperatorImpl(child, heap, inputTypes, 4, groupColumns, aggColumns, functions, aggTypes,
+				new int[] { 0, 1, -1, -1, -1 }, new int[] { -1, -1, 0, 1, 2 });
+	}
+
+	private static void drain(String name, PhysicalPlanOperator plan) throws Exception
+	{
+		long start = System.nanoTime();
+		long num = 0;
+		plan.open(null);
+		DataTuple[] batch = new DataTuple[PhysicalPlanOperator.DEFAULT_BATCH_SIZE];
+		int produced;
+		while ((produced = plan.nextBatch(batch)) > 0) {
+			num += produced;
+		}
+		plan.close();
+		long duration = System.nanoTime() - start;
+		sink = num;
+
+		System.out.println(String.format("%s: %.2f ms, %d tuples", name, duration / 1000000.0, num));
+	}
+}
@@ -0,0 +1,144 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.SortOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Sorts six columns of <tt>lineitem</tt> by ship date descending, comment and order key with one,
+ * two, four and eight threads generating the runs. The query heap has its default size, so the
+ * runs are written to temp space. Each run reports the time and the throughput in tuples per
+ * second; the speedup is bounded by the number of processors of the machine.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkParallelSort extends AbstractBenchmark
+{
+	private static final int LINEITEM_ID = 1;
+
+	/**
+	 * The scanned columns: ship date, comment, order key, line number, quantity, extended price.
+	 */
+	private static final int[] SCANNED_COLUMNS = { 10, 15, 0, 3, 4, 5 };
+
+	private static final int[] SORT_COLUMNS = { 0, 1, 2 };
+
+	private static final boolean[] SORT_ASCENDING = { false, true, true };
+
+	private static File dataDir;
+
+	private static DataType[] scannedTypes;
+
+	private static int cardinality;
+
+	private static QueryHeap heap;
+
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkParallelSort.class.getResource("/data/").getPath());
+
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		scannedTypes = new DataType[SCANNED_COLUMNS.length];
+		for (int i = 0; i < SCANNED_COLUMNS.length; i++) {
+			scannedTypes[i] = lineitem.getSchema().getColumn(SCANNED_COLUMNS[i]).getDataType();
+		}
+		lineitem.closeResource();
+		cardinality = 120515;
+
+		heap = new QueryHeap(Logger.getLogger("benchmark"), config());
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception
+	{
+		heap.closeQueryHeap();
+	}
+
+	@Test
+	public void sortOneThread() throws Exception
+	{
+		run(1);
+	}
+
+	@Test
+	public void sortTwoThreads() throws Exception
+	{
+		run(2);
+	}
+
+	@Test
+	public void sortFourThreads() throws Exception
+	{
+		run(4);
+	}
+
+	@Test
+	public void sortEightThreads() throws Exception
+	{
+		run(8);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void run(int dop) throws Exception
+	{
+		BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		TableResourceManager lineitem = TableResourceManager.openTable(new File(dataDir, "lineitem.mdtbl"));
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(LINEITEM_ID, lineitem);
+
+			PhysicalPlanOperator scan = new TableScanOperatorImpl(bufferPool, lineitem, LINEITEM_ID, SCANNED_COLUMNS, null, 8);
+			PhysicalPlanOperator sort = new SortOperatorImpl(scan, heap, scannedTypes, cardinality,
+					SORT_COLUMNS, SORT_ASCENDING, dop);
+			drain("lineitem sort, " + dop + " threads", sort);
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			lineitem.closeResource();
+		}
+	}
+
+	private static void drain(String name, PhysicalPlanOperator plan) throws Exception
+	{
+		long start = System.nanoTime();
+		long num = 0;
+		plan.open(null);
+		DataTuple[] batch = new DataTuple[PhysicalPlanOperator.DEFAULT_BATCH_SIZE];
+		int produced;
+		while ((produced = plan.nextBatch(batch)) > 0) {
+			num += produced;
+		}
+		plan.close();
+		long duration = System.nanoTime() - start;
+		sink = num;
+
+		System.out.println(String.format("%s: %.2f ms, %d tuples, %.0f tuples/s", name, duration / 1000000.0, num,
+				num * 1000000000.0 / duration));
+	}
+}
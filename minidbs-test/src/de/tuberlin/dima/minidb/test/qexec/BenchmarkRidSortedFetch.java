@@ -0,0 +1,178 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.FetchOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+
+
+/**
+ * Fetches all orders for the RIDs of <tt>order_fk_customer</tt>, in the order of the customer keys,
+ * tuple at a time and in batches of 64 and 1024 RIDs sorted by page, once preserving the order of the
+ * RIDs and once producing the tuples in page order. Each run reports the time and the number of table
+ * pages pinned in the buffer pool.
+ */
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2, callgc = false)
+public class BenchmarkRidSortedFetch extends AbstractBenchmark
+{
+	private static final int ORDER_ID = 1;
+
+	private static final int INDEX_ID = 2;
+
+	private static File dataDir;
+
+	static volatile long sink;
+
+
+	@BeforeClass
+	public static void setUpClass() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		dataDir = new File(BenchmarkRidSortedFetch.class.getResource("/data/").getPath());
+	}
+
+	@Test
+	public void tupleAtATime() throws Exception
+	{
+		fetch(1, true);
+	}
+
+	@Test
+	public void batch64PreservingOrder() throws Exception
+	{
+		fetch(64, true);
+	}
+
+	@Test
+	public void batch1024PreservingOrder() throws Exception
+	{
+		fetch(1024, true);
+	}
+
+	@Test
+	public void batch1024PageOrder() throws Exception
+	{
+		fetch(1024, false);
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static void fetch(int batchSize, boolean preserveOrder) throws Exception
+	{
+		final AtomicLong tablePins = new AtomicLong();
+		final BufferPoolManager bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("benchmark"));
+		BufferPoolManager counting = (BufferPoolManager) Proxy.newProxyInstance(BufferPoolManager.class.getClassLoader(),
+				new Class<?>[] { BufferPoolManager.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						if (method.getName().equals("getPageAndPin") && ((Integer) args[0]) == ORDER_ID) {
+							tablePins.incrementAndGet();
+						}
+						try {
+							return method.invoke(bufferPool, args);
+						}
+						catch (InvocationTargetException itex) {
+							throw itex.getCause();
+						}
+					}
+				});
+
+		TableResourceManager order = TableResourceManager.openTable(new File(dataDir, "order.mdtbl"));
+		IndexResourceManager orderCustomerFk = IndexResourceManager.openIndex(new File(dataDir, "order_fk_customer.mdidx"), order.getSchema());
+		try {
+			bufferPool.startIOThreads();
+			bufferPool.registerResource(ORDER_ID, order);
+			bufferPool.registerResource(INDEX_ID, orderCustomerFk);
+			BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(orderCustomerFk.getSchema(), bufferPool, INDEX_ID);
+			List<RID> rids = new ArrayList<RID>();
+			IndexResultIterator<RID> iterator = index.lookupRids(new IntField(Integer.MIN_VALUE), new IntField(Integer.MAX_VALUE), true, true);
+			while (iterator.hasNext()) {
+				rids.add(iterator.next());
+			}
+
+			FetchOperatorImpl fetch = new FetchOperatorImpl(new RidSource(rids), counting, ORDER_ID, new int[] { 0, 1 }, batchSize, preserveOrder);
+			long start = System.nanoTime();
+			long num = 0;
+			fetch.open(null);
+			DataTuple tuple;
+			while ((tuple = fetch.next()) != null) {
+				num += tuple.getNumberOfFields();
+			}
+			fetch.close();
+			long duration = System.nanoTime() - start;
+			sink = num;
+
+			System.out.println(String.format("batch %d, %s: %.2f ms, %d table pages pinned, %d tuples", batchSize,
+					preserveOrder ? "order preserved" : "page order", duration / 1000000.0, tablePins.get(), num / 2));
+		}
+		finally {
+			bufferPool.closeBufferPool();
+			order.closeResource();
+			orderCustomerFk.closeResource();
+		}
+	}
+
+	/**
+	 * Produces tuples with a single RID field from a list.
+	 */
+	private static final class RidSource implements PhysicalPlanOperator
+	{
+		private final List<RID> rids;
+
+		private int next;
+
+
+		RidSource(List<RID> rids)
+		{
+			this.rids = rids;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple)
+		{
+			this.next = 0;
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			if (this.next >= this.rids.size()) {
+				return null;
+			}
+			DataTuple tuple = new DataTuple(1);
+			tuple.assignDataField(this.rids.get(this.next++), 0);
+			return tuple;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.FetchOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Test case for the batch protocol of the operators. A plan scans the customers, joins them with
+ * the RIDs of their orders from the foreign key index, fetches the orders and counts them per
+ * customer. Every operator of the plan is drained through batches of several sizes, and with calls
+ * of <tt>next()</tt> and <tt>nextBatch()</tt> mixed, and must produce the same tuples in the same
+ * order as through <tt>next()</tt> alone.
+ */
+public class TestBatchExecution
+{
+	private static final int CUSTOMER_ID = 1;
+
+	private static final int ORDER_ID = 2;
+
+	private static final int INDEX_ID = 3;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager customer;
+
+	private TableResourceManager order;
+
+	private IndexResourceManager orderCustomerFk;
+
+	private BTreeIndex index;
+
+	private QueryHeap heap;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.customer = TableResourceManager.openTable(new File(getClass().getResource("/data/customer.mdtbl").getPath()));
+		this.order = TableResourceManager.openTable(new File(getClass().getResource("/data/order.mdtbl").getPath()));
+		this.orderCustomerFk = IndexResourceManager.openIndex(
+				new File(getClass().getResource("/data/order_fk_customer.mdidx").getPath()), this.order.getSchema());
+		this.bufferPool.registerResource(CUSTOMER_ID, this.customer);
+		this.bufferPool.registerResource(ORDER_ID, this.order);
+		this.bufferPool.registerResource(INDEX_ID, this.orderCustomerFk);
+		this.index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(
+				this.orderCustomerFk.getSchema(), this.bufferPool, INDEX_ID);
+		this.heap = new QueryHeap(Logger.getLogger("test"), config());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.heap.closeQueryHeap();
+		this.bufferPool.closeBufferPool();
+		this.customer.closeResource();
+		this.order.closeResource();
+		this.orderCustomerFk.closeResource();
+	}
+
+
+	/**
+	 * Tests the table scan, whose batches span several pages.
+	 */
+	@Test
+	public void testTableScan() throws Exception
+	{
+		checkBatches(scan());
+	}
+
+	/**
+	 * Tests the nested loop join, which draws blocks of customers and the RIDs of their orders in
+	 * batches.
+	 */
+	@Test
+	public void testNestedLoopJoin() throws Exception
+	{
+		checkBatches(join(scan()));
+	}
+
+	/**
+	 * Tests the fetch, which draws its RIDs in batches and hands out the fetched tuples.
+	 */
+	@Test
+	public void testFetch() throws Exception
+	{
+		checkBatches(fetch(join(scan())));
+	}
+
+	/**
+	 * Tests the group by, which consumes its input in batches and produces its groups in batches.
+	 */
+	@Test
+	public void testGroupBy() throws Exception
+	{
+		checkBatches(groupBy(fetch(join(scan()))));
+	}
+
+	/**
+	 * Tests a plan in which operators that produce batches sit above and below operators that
+	 * produce only single tuples.
+	 */
+	@Test
+	public void testMixedPlan() throws Exception
+	{
+		List<DataTuple> expected = drain(groupBy(fetch(join(scan()))), 0);
+		PhysicalPlanOperator plan = groupBy(new TupleAtATime(fetch(new TupleAtATime(join(new TupleAtATime(scan()))))));
+		assertEquals(expected, drain(plan, 0));
+		assertEquals(expected, drain(plan, 100));
+		assertEquals(expected, drain(plan, -37));
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Drains the operator through <tt>next()</tt> and then through batches, and compares the tuples.
+	 */
+	private static void checkBatches(PhysicalPlanOperator operator) throws Exception
+	{
+		List<DataTuple> expected = drain(operator, 0);
+		assertTrue(expected.size() > 0);
+		for (int batchSize : new int[] { 1, 7, 100, PhysicalPlanOperator.DEFAULT_BATCH_SIZE, 5000, -37 }) {
+			assertEquals("batch size " + batchSize, expected, drain(operator, batchSize));
+		}
+	}
+
+	private PhysicalPlanOperator scan()
+	{
+		return new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, new int[] { 0, 3 }, null, 8);
+	}
+
+	/**
+	 * Joins the customers with the RIDs of their orders, keeping only the RIDs.
+	 */
+	private PhysicalPlanOperator join(PhysicalPlanOperator customers)
+	{
+		return new NestedLoopJoinOperatorImpl(customers, new IndexCorrelatedLookupOperatorImpl(this.index, 0),
+				null, new int[] { -1 }, new int[] { 0 }, 50);
+	}
+
+	/**
+	 * Fetches the order key, the customer key and the total price of the orders.
+	 */
+	private PhysicalPlanOperator fetch(PhysicalPlanOperator rids)
+	{
+		return new FetchOperatorImpl(rids, this.bufferPool, ORDER_ID, new int[] { 0, 1, 3 }, 64, true);
+	}
+
+	/**
+	 * Counts the orders and sums their total price per customer.
+	 */
+	private PhysicalPlanOperator groupBy(PhysicalPlanOperator orders)
+	{
+		DataType[] inputTypes = new DataType[3];
+		int[] columns = { 0, 1, 3 };
+		for (int i = 0; i < columns.length; i++) {
+			inputTypes[i] = this.order.getSchema().getColumn(columns[i]).getDataType();
+		}
+		return new HashGroupByOperatorImpl(orders, this.heap, inputTypes, 1000, new int[] { 1 }, new int[] { 0, 2 },
+				new AggregationType[] { AggregationType.COUNT, AggregationType.SUM },
+				new DataType[] { DataType.bigIntType(), inputTypes[2] }, new int[] { 0, -1, -1 }, new int[] { -1, 0, 1 });
+	}
+
+	/**
+	 * Passes the tuples of its child on one at a time, producing batches only through the default
+	 * implementation.
+	 */
+	private static final class TupleAtATime implements PhysicalPlanOperator
+	{
+		private final PhysicalPlanOperator child;
+
+
+		TupleAtATime(PhysicalPlanOperator child)
+		{
+			this.child = child;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple) throws QueryExecutionException
+		{
+			this.child.open(correlatedTuple);
+		}
+
+		@Override
+		public DataTuple next() throws QueryExecutionException
+		{
+			return this.child.next();
+		}
+
+		@Override
+		public void close() throws QueryExecutionException
+		{
+			this.child.close();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.index.IndexResultIterator;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.FetchOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+
+
+/**
+ * Test case for the fetch of the orders for the RIDs of the foreign key index on the customers, in
+ * the order of the index, tuple at a time and in batches sorted by page.
+ */
+public class TestFetchOperator
+{
+	private static final int ORDER_ID = 1;
+
+	private static final int[] COLUMNS = { 2, -1, 0 };
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager order;
+
+	private IndexResourceManager orderCustomerFk;
+
+	private List<RID> rids;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.order = TableResourceManager.openTable(new File(getClass().getResource("/data/order.mdtbl").getPath()));
+		this.bufferPool.registerResource(ORDER_ID, this.order);
+
+		// the RIDs in the order of the customer keys, which jumps across the pages
+		this.orderCustomerFk = IndexResourceManager.openIndex(
+				new File(getClass().getResource("/data/order_fk_customer.mdidx").getPath()), this.order.getSchema());
+		this.bufferPool.registerResource(ORDER_ID + 1, this.orderCustomerFk);
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(
+				this.orderCustomerFk.getSchema(), this.bufferPool, ORDER_ID + 1);
+		this.rids = new ArrayList<RID>();
+		IndexResultIterator<RID> iterator = index.lookupRids(new IntField(Integer.MIN_VALUE), new IntField(Integer.MAX_VALUE), true, true);
+		while (iterator.hasNext()) {
+			this.rids.add(iterator.next());
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.order.closeResource();
+		this.orderCustomerFk.closeResource();
+	}
+
+
+	/**
+	 * Tests that fetching tuple at a time produces the tuples in the order of the RIDs.
+	 */
+	@Test
+	public void testTupleAtATime() throws Exception
+	{
+		assertEquals(readDirectly(), drain(new FetchOperatorImpl(new RidSource(this.rids), this.bufferPool, ORDER_ID, COLUMNS, 1, false)));
+	}
+
+	/**
+	 * Tests that batches sorted by page restore the order of the RIDs if asked to, also for a batch
+	 * size that does not divide the number of RIDs.
+	 */
+	@Test
+	public void testBatchesPreservingOrder() throws Exception
+	{
+		List<DataTuple> expected = readDirectly();
+		for (int batchSize : new int[] { 7, 256, this.rids.size() + 1 }) {
+			assertEquals(expected, drain(new FetchOperatorImpl(new RidSource(this.rids), this.bufferPool, ORDER_ID, COLUMNS, batchSize, true)));
+		}
+	}
+
+	/**
+	 * Tests that batches sorted by page produce each batch in the order of the pages.
+	 */
+	@Test
+	public void testBatchesInPageOrder() throws Exception
+	{
+		int batchSize = 100;
+		List<DataTuple> expected = readDirectly();
+		List<DataTuple> fetched = drain(new FetchOperatorImpl(new RidSource(this.rids), this.bufferPool, ORDER_ID, COLUMNS, batchSize, false));
+		assertEquals(expected.size(), fetched.size());
+
+		Map<DataTuple, RID> ridOf = new HashMap<DataTuple, RID>();
+		for (int i = 0; i < expected.size(); i++) {
+			ridOf.put(expected.get(i), this.rids.get(i));
+		}
+		for (int start = 0; start < fetched.size(); start += batchSize) {
+			List<DataTuple> batch = new ArrayList<DataTuple>(expected.subList(start, Math.min(start + batchSize, expected.size())));
+			for (int i = start; i < Math.min(start + batchSize, fetched.size()); i++) {
+				assertTrue(batch.remove(fetched.get(i)));
+				assertTrue(i == start || ridOf.get(fetched.get(i - 1)).getPageIndex() <= ridOf.get(fetched.get(i)).getPageIndex());
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Reads the projected tuples for the RIDs directly from the table.
+	 */
+	private List<DataTuple> readDirectly() throws Exception
+	{
+		int numCols = this.order.getSchema().getNumberOfColumns();
+		byte[] buffer = new byte[this.order.getPageSize().getNumberOfBytes()];
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (RID rid : this.rids) {
+			DataTuple raw = this.order.readPageFromResource(buffer, rid.getPageIndex()).getDataTuple(rid.getTupleIndex(), (1L << numCols) - 1, numCols);
+			DataTuple tuple = new DataTuple(COLUMNS.length);
+			for (int i = 0; i < COLUMNS.length; i++) {
+				if (COLUMNS[i] != -1) {
+					tuple.assignDataField(raw.getField(COLUMNS[i]), i);
+				}
+			}
+			tuples.add(tuple);
+		}
+		return tuples;
+	}
+
+	/**
+	 * Produces tuples with a single RID field from a list.
+	 */
+	private static final class RidSource implements PhysicalPlanOperator
+	{
+		private final List<RID> rids;
+
+		private int next;
+
+
+		RidSource(List<RID> rids)
+		{
+			this.rids = rids;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple)
+		{
+			this.next = 0;
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			if (this.next >= this.rids.size()) {
+				return null;
+			}
+			DataTuple tuple = new DataTuple(1);
+			tuple.assignDataField(this.rids.get(this.next++), 0);
+			return tuple;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
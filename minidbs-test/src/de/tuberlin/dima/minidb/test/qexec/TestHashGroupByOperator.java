@@ -0,0 +1,295 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.BigIntField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.HashGroupByOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Test case for the hash group by operator, with groups that fit into memory and with groups that
+ * are partitioned to temp space over several passes. The results are checked against groups formed
+ * in a map.
+ */
+public class TestHashGroupByOperator
+{
+	/**
+	 * The input: an INT and a VARCHAR grouping column, an INT value with NULLs, a DOUBLE value and a
+	 * VARCHAR value.
+	 */
+	private static final DataType[] INPUT_TYPES = { DataType.intType(), DataType.varcharType(10),
+			DataType.intType(), DataType.doubleType(), DataType.varcharType(10) };
+
+	private static final AggregationType[] FUNCTIONS = { AggregationType.COUNT, AggregationType.SUM,
+			AggregationType.AVG, AggregationType.MIN, AggregationType.MAX, AggregationType.SUM, AggregationType.MIN };
+
+	private static final int[] AGG_COLUMNS = { 2, 2, 2, 2, 3, 3, 4 };
+
+	private static final DataType[] AGG_TYPES = { DataType.bigIntType(), DataType.bigIntType(), DataType.intType(),
+			DataType.intType(), DataType.doubleType(), DataType.doubleType(), DataType.varcharType(10) };
+
+	private QueryHeap heap;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.heap != null) {
+			this.heap.closeQueryHeap();
+		}
+	}
+
+
+	/**
+	 * Tests the aggregates over a few groups that fit into memory.
+	 */
+	@Test
+	public void testGroupsInMemory() throws Exception
+	{
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(4 * 1024 * 1024));
+		List<DataTuple> input = input(5000, 7);
+		assertGroups(input, 7, 7);
+	}
+
+	/**
+	 * Tests that groups exceeding the memory are partitioned and aggregated in further passes,
+	 * with an estimate far too low.
+	 */
+	@Test
+	public void testGroupsSpilled() throws Exception
+	{
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(2 * 1024 * 1024));
+		List<DataTuple> input = input(60000, 20000);
+		assertGroups(input, 20000, 1);
+	}
+
+	/**
+	 * Tests that an aggregate without grouping columns produces a single row, also for an empty input.
+	 */
+	@Test
+	public void testAggregateWithoutGroups() throws Exception
+	{
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(4 * 1024 * 1024));
+		int[] outGroups = { -1, -1 };
+		int[] outAggs = { 0, 1 };
+		AggregationType[] functions = { AggregationType.COUNT, AggregationType.SUM };
+		DataType[] types = { DataType.bigIntType(), DataType.bigIntType() };
+
+		List<DataTuple> rows = drain(new HashGroupByOperatorImpl(new TupleSource(input(100, 3)), this.heap, INPUT_TYPES, 1,
+				new int[0], new int[] { 2, 2 }, functions, types, outGroups, outAggs));
+		assertEquals(1, rows.size());
+		long count = 0, sum = 0;
+		for (DataTuple tuple : input(100, 3)) {
+			if (!tuple.getField(2).isNULL()) {
+				count++;
+				sum += ((IntField) tuple.getField(2)).getValue();
+			}
+		}
+		assertEquals(new BigIntField(count), rows.get(0).getField(0));
+		assertEquals(new BigIntField(sum), rows.get(0).getField(1));
+
+		rows = drain(new HashGroupByOperatorImpl(new TupleSource(new ArrayList<DataTuple>()), this.heap, INPUT_TYPES, 1,
+				new int[0], new int[] { 2, 2 }, functions, types, outGroups, outAggs));
+		assertEquals(1, rows.size());
+		assertEquals(new BigIntField(0), rows.get(0).getField(0));
+		assertTrue(rows.get(0).getField(1).isNULL());
+	}
+
+	/**
+	 * Tests that the child is closed when the input fails while the groups are built, and that
+	 * the operator can be opened again afterwards.
+	 */
+	@Test
+	public void testFailingInput() throws Exception
+	{
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(4 * 1024 * 1024));
+		TupleSource source = new TupleSource(input(5000, 7));
+		source.failAt = 3000;
+		HashGroupByOperatorImpl groupBy = new HashGroupByOperatorImpl(source, this.heap, INPUT_TYPES, 7,
+				new int[] { 0, 1 }, AGG_COLUMNS, FUNCTIONS, AGG_TYPES, new int[] { 0, -1 }, new int[] { -1, 0 });
+		try {
+			groupBy.open(null);
+			fail("The failure of the input must be raised.");
+		}
+		catch (QueryExecutionException qeex) {
+			// expected
+		}
+		assertTrue("The child must be closed.", !source.open);
+
+		source.failAt = -1;
+		assertEquals(7, drain(groupBy).size());
+		assertTrue(!source.open);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Groups the input through the operator and in a map and compares the groups. The output holds
+	 * the VARCHAR grouping column first, the aggregates and then the INT grouping column.
+	 */
+	private void assertGroups(List<DataTuple> input, int numGroups, int estimatedGroups) throws Exception
+	{
+		int numOut = FUNCTIONS.length + 2;
+		int[] outGroups = new int[numOut];
+		int[] outAggs = new int[numOut];
+		outGroups[0] = 1;
+		outAggs[0] = -1;
+		for (int i = 0; i < FUNCTIONS.length; i++) {
+			outGroups[i + 1] = -1;
+			outAggs[i + 1] = i;
+		}
+		outGroups[numOut - 1] = 0;
+		outAggs[numOut - 1] = -1;
+
+		HashGroupByOperatorImpl groupBy = new HashGroupByOperatorImpl(new TupleSource(input), this.heap, INPUT_TYPES,
+				estimatedGroups, new int[] { 0, 1 }, AGG_COLUMNS, FUNCTIONS, AGG_TYPES, outGroups, outAggs);
+		Map<DataTuple, DataTuple> expected = expectedGroups(input);
+		assertEquals(numGroups, expected.size());
+
+		// a second run reuses the operator
+		for (int run = 0; run < 2; run++) {
+			List<DataTuple> rows = drain(groupBy);
+			assertEquals(expected.size(), rows.size());
+			for (DataTuple row : rows) {
+				DataTuple key = new DataTuple(new DataField[] { row.getField(numOut - 1), row.getField(0) });
+				DataTuple aggregates = new DataTuple(FUNCTIONS.length);
+				for (int i = 0; i < FUNCTIONS.length; i++) {
+					aggregates.assignDataField(row.getField(i + 1), i);
+				}
+				assertEquals(expected.get(key), aggregates);
+			}
+		}
+	}
+
+	private static Map<DataTuple, DataTuple> expectedGroups(List<DataTuple> input)
+	{
+		Map<DataTuple, List<DataTuple>> groups = new HashMap<DataTuple, List<DataTuple>>();
+		for (DataTuple tuple : input) {
+			DataTuple key = new DataTuple(new DataField[] { tuple.getField(0), tuple.getField(1) });
+			List<DataTuple> members = groups.get(key);
+			if (members == null) {
+				members = new ArrayList<DataTuple>();
+				groups.put(key, members);
+			}
+			members.add(tuple);
+		}
+
+		Map<DataTuple, DataTuple> expected = new HashMap<DataTuple, DataTuple>();
+		for (Map.Entry<DataTuple, List<DataTuple>> group : groups.entrySet()) {
+			long count = 0, sum = 0;
+			int min = Integer.MAX_VALUE;
+			double max = Double.NEGATIVE_INFINITY, doubleSum = 0;
+			String minString = null;
+			for (DataTuple tuple : group.getValue()) {
+				if (!tuple.getField(2).isNULL()) {
+					int value = ((IntField) tuple.getField(2)).getValue();
+					count++;
+					sum += value;
+					min = Math.min(min, value);
+				}
+				double value = ((DoubleField) tuple.getField(3)).getValue();
+				max = Math.max(max, value);
+				doubleSum += value;
+				String string = ((VarcharField) tuple.getField(4)).getValue();
+				minString = minString == null || string.compareTo(minString) < 0 ? string : minString;
+			}
+			expected.put(group.getKey(), new DataTuple(new DataField[] {
+					new BigIntField(count),
+					count == 0 ? DataType.bigIntType().getNullValue() : new BigIntField(sum),
+					count == 0 ? DataType.intType().getNullValue() : new IntField((int) (sum / count)),
+					count == 0 ? DataType.intType().getNullValue() : new IntField(min),
+					new DoubleField(max),
+					new DoubleField(doubleSum),
+					new VarcharField(minString) }));
+		}
+		return expected;
+	}
+
+	/**
+	 * Creates the input tuples, spread over the given number of groups in a scattered order.
+	 */
+	private static List<DataTuple> input(int num, int numGroups)
+	{
+		List<DataTuple> input = new ArrayList<DataTuple>(num);
+		for (int i = 0; i < num; i++) {
+			int group = (int) ((i * 7919L) % numGroups);
+			DataField value = i % 5 == 0 ? DataType.intType().getNullValue() : new IntField(i % 1000 - 300);
+			input.add(new DataTuple(new DataField[] { new IntField(group / 3), new VarcharField("g" + group % 3),
+					value, new DoubleField(i * 0.5), new VarcharField("v" + (i * 31) % 97) }));
+		}
+		return input;
+	}
+
+	/**
+	 * Produces the tuples of a list, and fails at a given position, if set.
+	 */
+	private static final class TupleSource implements PhysicalPlanOperator
+	{
+		private final List<DataTuple> tuples;
+
+		private int next;
+
+		int failAt = -1;
+
+		boolean open;
+
+
+		TupleSource(List<DataTuple> tuples)
+		{
+			this.tuples = tuples;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple)
+		{
+			this.next = 0;
+			this.open = true;
+		}
+
+		@Override
+		public DataTuple next() throws QueryExecutionException
+		{
+			if (this.next == this.failAt) {
+				throw new QueryExecutionException("The input failed.");
+			}
+			return this.next < this.tuples.size() ? this.tuples.get(this.next++) : null;
+		}
+
+		@Override
+		public void close()
+		{
+			this.open = false;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TupleRIDIterator;
+import de.tuberlin.dima.minidb.qexec.IndexCorrelatedLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.NestedLoopJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.util.Pair;
+
+
+/**
+ * Test case for the nested loop join of the customers with the RIDs of their orders, looked up in
+ * the foreign key index of the orders, tuple at a time and in blocks.
+ */
+public class TestIndexNestedLoopJoin
+{
+	private static final int CUSTOMER_ID = 1;
+
+	private static final int INDEX_ID = 2;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager customer;
+
+	private TableResourceManager order;
+
+	private IndexResourceManager orderCustomerFk;
+
+	private BTreeIndex index;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.customer = TableResourceManager.openTable(new File(getClass().getResource("/data/customer.mdtbl").getPath()));
+		this.order = TableResourceManager.openTable(new File(getClass().getResource("/data/order.mdtbl").getPath()));
+		this.orderCustomerFk = IndexResourceManager.openIndex(
+				new File(getClass().getResource("/data/order_fk_customer.mdidx").getPath()), this.order.getSchema());
+		this.bufferPool.registerResource(CUSTOMER_ID, this.customer);
+		this.bufferPool.registerResource(INDEX_ID, this.orderCustomerFk);
+		this.index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(
+				this.orderCustomerFk.getSchema(), this.bufferPool, INDEX_ID);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.customer.closeResource();
+		this.order.closeResource();
+		this.orderCustomerFk.closeResource();
+	}
+
+
+	/**
+	 * Tests that the join finds the orders of every customer, tuple at a time.
+	 */
+	@Test
+	public void testTupleAtATime() throws Exception
+	{
+		checkJoin(1);
+	}
+
+	/**
+	 * Tests that the join finds the orders of every customer with the keys of a block of customers
+	 * looked up at once, for a block size that does not divide the number of customers.
+	 */
+	@Test
+	public void testBlocks() throws Exception
+	{
+		checkJoin(7);
+		checkJoin(NestedLoopJoinOperatorImpl.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Tests that the lookup works for a tuple it was not prepared for, and that the prepared
+	 * tuples are still served afterwards.
+	 */
+	@Test
+	public void testUnpreparedTuple() throws Exception
+	{
+		Map<DataField, List<RID>> expected = ordersByCustomer();
+		List<DataTuple> customers = drain(new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, new int[] { 0 }, null, 8));
+		IndexCorrelatedLookupOperatorImpl lookup = new IndexCorrelatedLookupOperatorImpl(this.index, 0);
+		DataTuple[] prepared = new DataTuple[] { customers.get(0), customers.get(1) };
+		lookup.prepareLookups(prepared, 2);
+
+		for (DataTuple tuple : new DataTuple[] { customers.get(2), customers.get(0), customers.get(1) }) {
+			lookup.open(tuple);
+			List<RID> rids = new ArrayList<RID>();
+			DataTuple result;
+			while ((result = lookup.next()) != null) {
+				rids.add((RID) result.getField(0));
+			}
+			lookup.close();
+			assertEquals(sorted(expected.get(tuple.getField(0))), sorted(rids));
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void checkJoin(int blockSize) throws Exception
+	{
+		Map<DataField, List<RID>> expected = ordersByCustomer();
+		TableScanOperatorImpl scan = new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, new int[] { 0 }, null, 8);
+		NestedLoopJoinOperatorImpl join = new NestedLoopJoinOperatorImpl(scan, new IndexCorrelatedLookupOperatorImpl(this.index, 0),
+				null, new int[] { 0, -1 }, new int[] { -1, 0 }, blockSize);
+
+		Map<DataField, List<RID>> joined = new HashMap<DataField, List<RID>>();
+		int num = 0;
+		join.open(null);
+		DataTuple tuple;
+		while ((tuple = join.next()) != null) {
+			List<RID> rids = joined.get(tuple.getField(0));
+			if (rids == null) {
+				rids = new ArrayList<RID>();
+				joined.put(tuple.getField(0), rids);
+			}
+			rids.add((RID) tuple.getField(1));
+			num++;
+		}
+		assertNull(join.next());
+		join.close();
+
+		int numOrders = 0;
+		for (Map.Entry<DataField, List<RID>> entry : expected.entrySet()) {
+			numOrders += entry.getValue().size();
+		}
+		assertTrue(numOrders > 0);
+		assertEquals(numOrders, num);
+		assertEquals(expected.size(), joined.size());
+		for (Map.Entry<DataField, List<RID>> entry : joined.entrySet()) {
+			assertEquals(sorted(expected.get(entry.getKey())), sorted(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Reads the RIDs of the orders of each customer directly from the order table.
+	 */
+	private Map<DataField, List<RID>> ordersByCustomer() throws Exception
+	{
+		int column = this.orderCustomerFk.getSchema().getColumnNumber();
+		byte[] buffer = new byte[this.order.getPageSize().getNumberOfBytes()];
+		Map<DataField, List<RID>> orders = new HashMap<DataField, List<RID>>();
+		for (int page = this.order.getFirstDataPageNumber(); page <= this.order.getLastDataPageNumber(); page++) {
+			TupleRIDIterator iterator = this.order.readPageFromResource(buffer, page).getIteratorWithRID();
+			while (iterator.hasNext()) {
+				Pair<DataTuple, RID> pair = iterator.next();
+				DataField key = pair.getFirst().getField(column);
+				List<RID> rids = orders.get(key);
+				if (rids == null) {
+					rids = new ArrayList<RID>();
+					orders.put(key, rids);
+				}
+				rids.add(pair.getSecond());
+			}
+		}
+		return orders;
+	}
+
+	private static List<RID> sorted(List<RID> rids)
+	{
+		List<RID> copy = new ArrayList<RID>(rids == null ? Collections.<RID>emptyList() : rids);
+		Collections.sort(copy, new Comparator<RID>() {
+			@Override
+			public int compare(RID r1, RID r2)
+			{
+				return Long.compare(r1.getID(), r2.getID());
+			}
+		});
+		return copy;
+	}
+}
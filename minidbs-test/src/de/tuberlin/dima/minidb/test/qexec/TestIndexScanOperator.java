@@ -0,0 +1,390 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexDescriptor;
+import de.tuberlin.dima.minidb.catalogue.IndexSchema;
+import de.tuberlin.dima.minidb.catalogue.IndexStatistics;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.index.IndexResourceManager;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.optimizer.IndexOnlyScanPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.Predicate;
+import de.tuberlin.dima.minidb.qexec.IndexLookupOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.IndexScanOperatorImpl;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.predicate.LocalPredicateAtom;
+
+
+/**
+ * Test case for the index-only scan over the keys of the foreign key index on the customers of the
+ * orders, and for the lookup of the RIDs in the same index. Both are checked against the customer
+ * keys read from the table directly. The choice of the index for an index-only scan is tested
+ * against the indexes of the orders, and against indexes over columns the orders do not have.
+ */
+public class TestIndexScanOperator
+{
+	private static final int INDEX_ID = 1;
+
+	private static final int SCRATCH_INDEX_ID = 2;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager order;
+
+	private IndexResourceManager orderCustomerFk;
+
+	private IndexResourceManager orderPk;
+
+	private File scratchFile;
+
+	private IndexResourceManager scratch;
+
+	private BTreeIndex index;
+
+	/**
+	 * The customer key and the RID of all orders, in the order of the table.
+	 */
+	private List<DataField> keys;
+
+	private List<RID> rids;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.order = TableResourceManager.openTable(new File(getClass().getResource("/data/order.mdtbl").getPath()));
+		this.orderCustomerFk = IndexResourceManager.openIndex(
+				new File(getClass().getResource("/data/order_fk_customer.mdidx").getPath()), this.order.getSchema());
+		this.bufferPool.registerResource(INDEX_ID, this.orderCustomerFk);
+		this.orderPk = IndexResourceManager.openIndex(
+				new File(getClass().getResource("/data/order_pk.mdidx").getPath()), this.order.getSchema());
+		this.index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(
+				this.orderCustomerFk.getSchema(), this.bufferPool, INDEX_ID);
+
+		int column = this.orderCustomerFk.getSchema().getColumnNumber();
+		byte[] buffer = new byte[this.order.getPageSize().getNumberOfBytes()];
+		this.keys = new ArrayList<DataField>();
+		this.rids = new ArrayList<RID>();
+		for (int pageNumber = this.order.getFirstDataPageNumber(); pageNumber <= this.order.getLastDataPageNumber(); pageNumber++) {
+			TablePage page = this.order.readPageFromResource(buffer, pageNumber);
+			for (int position = 0; position < page.getNumRecordsOnPage(); position++) {
+				DataTuple tuple = page.getDataTuple(position, 1L << column, 1);
+				if (tuple != null) {
+					this.keys.add(tuple.getField(0));
+					this.rids.add(new RID(pageNumber, position));
+				}
+			}
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.order.closeResource();
+		this.orderCustomerFk.closeResource();
+		this.orderPk.closeResource();
+		if (this.scratch != null) {
+			this.scratch.closeResource();
+			IndexResourceManager.deleteIndex(this.scratchFile);
+		}
+	}
+
+
+	/**
+	 * Tests that a scan over the full range produces every key of the table in ascending order,
+	 * duplicates included.
+	 */
+	@Test
+	public void testFullScan() throws Exception
+	{
+		List<DataField> expected = new ArrayList<DataField>(this.keys);
+		Collections.sort(expected);
+		assertEquals(expected, keysOf(drain(new IndexScanOperatorImpl(this.index,
+				new IntField(Integer.MIN_VALUE), new IntField(Integer.MAX_VALUE), true, true))));
+	}
+
+	/**
+	 * Tests that a scan over a range honors whether its bounds are included.
+	 */
+	@Test
+	public void testRangeScan() throws Exception
+	{
+		List<DataField> sorted = new ArrayList<DataField>(this.keys);
+		Collections.sort(sorted);
+		DataField low = sorted.get(sorted.size() / 4);
+		DataField high = sorted.get(sorted.size() / 2);
+
+		for (boolean lowIncluded : new boolean[] { true, false }) {
+			for (boolean highIncluded : new boolean[] { true, false }) {
+				List<DataField> expected = new ArrayList<DataField>();
+				for (DataField key : sorted) {
+					int toLow = key.compareTo(low);
+					int toHigh = key.compareTo(high);
+					if ((toLow > 0 || (lowIncluded && toLow == 0)) && (toHigh < 0 || (highIncluded && toHigh == 0))) {
+						expected.add(key);
+					}
+				}
+				assertTrue(expected.size() > 0);
+				assertEquals(expected, keysOf(drain(new IndexScanOperatorImpl(this.index, low, high, lowIncluded, highIncluded))));
+			}
+		}
+	}
+
+	/**
+	 * Tests that the lookup produces the RIDs of exactly the rows with the key, and of the rows
+	 * within a range.
+	 */
+	@Test
+	public void testLookup() throws Exception
+	{
+		DataField key = this.keys.get(this.keys.size() / 3);
+		List<RID> expected = new ArrayList<RID>();
+		for (int i = 0; i < this.keys.size(); i++) {
+			if (this.keys.get(i).equals(key)) {
+				expected.add(this.rids.get(i));
+			}
+		}
+		assertEquals(ridIds(expected), ridIds(ridsOf(drain(new IndexLookupOperatorImpl(this.index, key, key, true, true)))));
+
+		DataField high = new IntField(((IntField) key).getValue() + 50);
+		expected.clear();
+		for (int i = 0; i < this.keys.size(); i++) {
+			if (this.keys.get(i).compareTo(key) >= 0 && this.keys.get(i).compareTo(high) < 0) {
+				expected.add(this.rids.get(i));
+			}
+		}
+		assertEquals(ridIds(expected), ridIds(ridsOf(drain(new IndexLookupOperatorImpl(this.index, key, high, true, false)))));
+	}
+
+	/**
+	 * Tests that the index over the only required column is chosen for an index-only scan, and
+	 * that its plan produces every key of the table.
+	 */
+	@Test
+	public void testCoveringIndexChosen() throws Exception
+	{
+		BaseTableAccess access = orderAccess();
+		IndexDescriptor pk = describe(this.orderPk, access, 3, 10);
+		IndexDescriptor fk = describe(this.orderCustomerFk, access, INDEX_ID, 20);
+		Column customer = column(access, this.order.getSchema(), 1);
+
+		IndexOnlyScanPlanOperator scan = PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, this.keys.size(),
+				null, new Column[] { customer }, Arrays.asList(pk, fk));
+		assertNotNull(scan);
+		assertSame(fk, scan.getIndex());
+		assertEquals(1, scan.getReturnedColumns()[0].getColumnIndex());
+
+		List<DataField> expected = new ArrayList<DataField>(this.keys);
+		Collections.sort(expected);
+		assertEquals(expected, keysOf(drain(scan.createPhysicalPlan(this.bufferPool, null))));
+
+		scan = PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, 1,
+				equality(customer, this.keys.get(0)), new Column[] { customer }, Arrays.asList(pk, fk));
+		assertNotNull(scan);
+		assertSame(fk, scan.getIndex());
+	}
+
+	/**
+	 * Tests that no index-only scan is created, if a required column or the column of the
+	 * predicate is not the key of any index.
+	 */
+	@Test
+	public void testNonCoveringColumnRejected() throws Exception
+	{
+		BaseTableAccess access = orderAccess();
+		List<IndexDescriptor> indexes = Arrays.asList(
+				describe(this.orderPk, access, 3, 10), describe(this.orderCustomerFk, access, INDEX_ID, 20));
+		Column orderKey = column(access, this.order.getSchema(), 0);
+		Column customer = column(access, this.order.getSchema(), 1);
+		Column status = column(access, this.order.getSchema(), 2);
+
+		assertNull(PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, this.keys.size(),
+				null, new Column[] { status }, indexes));
+		assertNull(PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, this.keys.size(),
+				null, new Column[] { customer, status }, indexes));
+		assertNull(PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, 1,
+				equality(orderKey, new IntField(1)), new Column[] { customer }, indexes));
+	}
+
+	/**
+	 * Tests that an index over a nullable column, which lacks the rows with a <tt>NULL</tt> key,
+	 * is used with a predicate on the column only.
+	 */
+	@Test
+	public void testNullableColumnWithoutPredicate() throws Exception
+	{
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("value", DataType.intType(), true));
+		BaseTableAccess access = new BaseTableAccess(new TableDescriptor("scratch", "scratch.mdtbl"));
+		IndexDescriptor nullable = describe(createScratchIndex(schema), access, SCRATCH_INDEX_ID, 1);
+		Column value = column(access, schema, 0);
+
+		assertNull(PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, 100,
+				null, new Column[] { value }, Arrays.asList(nullable)));
+		assertNull(PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, 100,
+				null, new Column[0], Arrays.asList(nullable)));
+		assertNotNull(PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, 1,
+				equality(value, new IntField(7)), new Column[] { value }, Arrays.asList(nullable)));
+	}
+
+	/**
+	 * Tests that a <tt>COUNT(*)</tt>, which requires no column, is answered from the index with
+	 * the fewest leaves.
+	 */
+	@Test
+	public void testCountPicksSmallestIndex() throws Exception
+	{
+		BaseTableAccess access = orderAccess();
+		IndexDescriptor pk = describe(this.orderPk, access, 3, 30);
+		IndexDescriptor fk = describe(this.orderCustomerFk, access, INDEX_ID, 20);
+
+		IndexOnlyScanPlanOperator scan = PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, this.keys.size(),
+				null, new Column[0], Arrays.asList(pk, fk));
+		assertNotNull(scan);
+		assertSame(fk, scan.getIndex());
+		assertEquals(this.keys.size(), keysOf(drain(scan.createPhysicalPlan(this.bufferPool, null))).size());
+
+		fk.getStatistics().setNumberOfLeafs(40);
+		scan = PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, this.keys.size(),
+				null, new Column[0], Arrays.asList(pk, fk));
+		assertNotNull(scan);
+		assertSame(pk, scan.getIndex());
+	}
+
+	/**
+	 * Tests that the index-only scan over all keys of a <tt>DOUBLE</tt> index starts at the first
+	 * key, including zero and negative keys, which lie below the minimum value of the type.
+	 */
+	@Test
+	public void testFullScanOverDoubleKeys() throws Exception
+	{
+		TableSchema schema = new TableSchema(PageSize.SIZE_4096);
+		schema.addColumn(ColumnSchema.createColumnSchema("value", DataType.doubleType(), false));
+		BaseTableAccess access = new BaseTableAccess(new TableDescriptor("scratch", "scratch.mdtbl"));
+		IndexDescriptor doubles = describe(createScratchIndex(schema), access, SCRATCH_INDEX_ID, 1);
+		this.bufferPool.registerResource(SCRATCH_INDEX_ID, this.scratch);
+
+		BTreeIndex index = AbstractExtensionFactory.getExtensionFactory().createBTreeIndex(
+				this.scratch.getSchema(), this.bufferPool, SCRATCH_INDEX_ID);
+		List<DataField> expected = new ArrayList<DataField>();
+		for (int i = 0; i < 2000; i++) {
+			DoubleField key = new DoubleField((i * 7919 % 2000 - 1000) / 8.0);
+			index.insertEntry(key, new RID(i));
+			expected.add(key);
+		}
+		Collections.sort(expected);
+
+		IndexOnlyScanPlanOperator scan = PhysicalPlanGeneratorUtils.createIndexOnlyScan(access, expected.size(),
+				null, new Column[] { column(access, schema, 0) }, Arrays.asList(doubles));
+		assertNotNull(scan);
+		assertEquals(expected, keysOf(drain(scan.createPhysicalPlan(this.bufferPool, null))));
+	}
+
+	// ------------------------------------------------------------------------
+
+	private static BaseTableAccess orderAccess()
+	{
+		return new BaseTableAccess(new TableDescriptor("order", "order.mdtbl"));
+	}
+
+	private static IndexDescriptor describe(IndexResourceManager manager, BaseTableAccess access, int resourceId, int numLeafs)
+	{
+		IndexStatistics statistics = new IndexStatistics();
+		statistics.setNumberOfLeafs(numLeafs);
+		IndexDescriptor descriptor = new IndexDescriptor("index" + resourceId, access.getTable().getTableName(),
+				"index" + resourceId + ".mdidx", statistics);
+		descriptor.setResourceProperties(manager, access.getTable(), resourceId);
+		return descriptor;
+	}
+
+	private static Column column(BaseTableAccess access, TableSchema schema, int index)
+	{
+		return new Column(access, schema.getColumn(index).getDataType(), index);
+	}
+
+	private static LocalPredicateAtom equality(Column column, DataField literal)
+	{
+		Predicate predicate = new Predicate();
+		predicate.setOperator(Predicate.Operator.EQUAL);
+		return new LocalPredicateAtom(predicate, column, literal);
+	}
+
+	private IndexResourceManager createScratchIndex(TableSchema schema) throws Exception
+	{
+		this.scratchFile = File.createTempFile("minidb-index-only", ".mdidx");
+		this.scratch = IndexResourceManager.createIndex(this.scratchFile,
+				new IndexSchema(schema, 0, PageSize.SIZE_4096, false, 1, 1));
+		return this.scratch;
+	}
+
+	private static List<DataField> keysOf(List<DataTuple> tuples)
+	{
+		List<DataField> keys = new ArrayList<DataField>();
+		for (DataTuple tuple : tuples) {
+			assertEquals(1, tuple.getNumberOfFields());
+			keys.add(tuple.getField(0));
+		}
+		return keys;
+	}
+
+	private static List<RID> ridsOf(List<DataTuple> tuples)
+	{
+		List<RID> rids = new ArrayList<RID>();
+		for (DataTuple tuple : tuples) {
+			assertEquals(1, tuple.getNumberOfFields());
+			rids.add((RID) tuple.getField(0));
+		}
+		return rids;
+	}
+
+	/**
+	 * The ids of the RIDs, sorted, as the index orders the RIDs of a key by their own rules.
+	 */
+	private static List<Long> ridIds(List<RID> rids)
+	{
+		List<Long> ids = new ArrayList<Long>();
+		for (RID rid : rids) {
+			ids.add(rid.getID());
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+}
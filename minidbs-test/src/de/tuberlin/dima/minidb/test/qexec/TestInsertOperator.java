@@ -0,0 +1,393 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.ColumnSchema;
+import de.tuberlin.dima.minidb.catalogue.TableSchema;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.RID;
+import de.tuberlin.dima.minidb.io.cache.PageSize;
+import de.tuberlin.dima.minidb.io.index.BTreeIndex;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.FreeSpaceMap;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TablePageImpl;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.InsertOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+
+
+/**
+ * Test case for the insert operator, the reuse of deleted record slots and the free-space map.
+ */
+public class TestInsertOperator
+{
+	private static final int RESOURCE_ID = 1;
+
+	private static final int NUM_TUPLES = 3000;
+
+	private TableSchema schema;
+
+	private File file;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager table;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.schema = new TableSchema(PageSize.SIZE_4096);
+		this.schema.addColumn(ColumnSchema.createColumnSchema("id", DataType.intType(), false));
+		this.schema.addColumn(ColumnSchema.createColumnSchema("name", DataType.charType(10), true));
+
+		this.file = File.createTempFile("minidb-insert", ".mdtbl");
+		this.table = TableResourceManager.createTable(this.file, this.schema);
+		openBufferPool();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.bufferPool != null) {
+			this.bufferPool.closeBufferPool();
+		}
+		this.table.closeResource();
+		TableResourceManager.deleteTable(this.file);
+		assertFalse(FreeSpaceMap.getFile(this.file).exists());
+	}
+
+
+	/**
+	 * Tests that an insert takes the slot of the first deleted record of a page.
+	 */
+	@Test
+	public void testSlotReuse() throws Exception
+	{
+		// the implementation under test, whatever page implementation the factory prefers
+		TablePage page = new TablePageImpl(this.schema, new byte[4096], 1);
+		int num = 0;
+		while (page.insertTuple(tuple(num))) {
+			num++;
+		}
+		assertEquals(num, page.getNumRecordsOnPage());
+		assertEquals(0, page.getNumDeletedRecordsOnPage());
+		int gap = 4096 - 32 - num * (4 + 4 + 20);
+		assertEquals(gap, page.getFreeSpace());
+		assertTrue(gap < 4 + 4 + 20);
+
+		page.deleteTuple(7);
+		page.deleteTuple(3);
+		page.deleteTuple(3);
+		assertEquals(2, page.getNumDeletedRecordsOnPage());
+		assertEquals(gap + 2 * (4 + 4 + 20), page.getFreeSpace());
+
+		assertEquals(3, page.insertTupleAndGetPosition(tuple(-3)));
+		assertEquals(7, page.insertTupleAndGetPosition(tuple(-7)));
+		assertEquals(-1, page.insertTupleAndGetPosition(tuple(-1)));
+		assertEquals(num, page.getNumRecordsOnPage());
+		assertEquals(0, page.getNumDeletedRecordsOnPage());
+		assertEquals(new IntField(-3), page.getDataTuple(3, 1, 1).getField(0));
+		assertEquals(new IntField(-7), page.getDataTuple(7, 1, 1).getField(0));
+	}
+
+	/**
+	 * Tests that a table whose tuples are repeatedly deleted and replaced through the insert
+	 * operator does not grow.
+	 */
+	@Test
+	public void testChurnKeepsTableSize() throws Exception
+	{
+		assertEquals(NUM_TUPLES, insert(0, NUM_TUPLES));
+		int numPages = this.table.getLastDataPageNumber() - this.table.getFirstDataPageNumber() + 1;
+		assertEquals(NUM_TUPLES, count());
+
+		for (int round = 1; round <= 5; round++) {
+			int deleted = deleteEverySecond();
+			assertEquals(NUM_TUPLES / 2, deleted);
+			assertEquals(deleted, insert(round * NUM_TUPLES, deleted));
+			assertEquals(NUM_TUPLES, count());
+		}
+		assertEquals(numPages, this.table.getLastDataPageNumber() - this.table.getFirstDataPageNumber() + 1);
+	}
+
+	/**
+	 * Tests that the free space of written pages is kept in the map's file across reopening.
+	 */
+	@Test
+	public void testMapIsPersisted() throws Exception
+	{
+		insert(0, NUM_TUPLES);
+		deleteEverySecond();
+		int first = this.table.getFirstDataPageNumber();
+		this.bufferPool.closeBufferPool();
+		this.bufferPool = null;
+		assertTrue(this.table.getRecordedFreeSpace(first) > 0);
+		this.table.closeResource();
+		assertTrue(FreeSpaceMap.getFile(this.file).exists());
+
+		this.table = TableResourceManager.openTable(this.file);
+		assertTrue(this.table.getRecordedFreeSpace(first) > 4096 / 3);
+		assertTrue(this.table.getRecordedFreeSpace(first) <= 4096 / 2 + 4 + 4 + 20);
+		int pageNumber = this.table.findPageWithFreeSpace(4 + 4 + 20);
+		assertTrue(pageNumber >= first && pageNumber <= this.table.getLastDataPageNumber());
+
+		this.table.truncate();
+		assertEquals(-1, this.table.findPageWithFreeSpace(1));
+	}
+
+	/**
+	 * Tests that tuples are appended to pages that neither reuse slots nor report their free
+	 * space, and that the indexes get the positions of their records.
+	 */
+	@Test
+	public void testPagesWithoutSlotReuse() throws Exception
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			tuples.add(tuple(i));
+		}
+		final List<RID> rids = new ArrayList<RID>();
+		BTreeIndex index = (BTreeIndex) Proxy.newProxyInstance(BTreeIndex.class.getClassLoader(),
+				new Class<?>[] { BTreeIndex.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args)
+					{
+						if (!method.getName().equals("insertEntry")) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						rids.add((RID) args[1]);
+						return null;
+					}
+				});
+
+		InsertOperatorImpl insert = new InsertOperatorImpl(withBaselinePages(this.bufferPool), this.table, RESOURCE_ID,
+				new BTreeIndex[] { index }, new int[] { 0 }, new ListOperator(tuples));
+		insert.open(null);
+		while (insert.next() != null) {
+			// insert all tuples
+		}
+		insert.close();
+
+		assertEquals(NUM_TUPLES, count());
+		assertEquals(NUM_TUPLES, rids.size());
+		for (int i = 0; i < NUM_TUPLES; i++) {
+			RID rid = rids.get(i);
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(RESOURCE_ID, rid.getPageIndex());
+			assertEquals(new IntField(i), page.getDataTuple(rid.getTupleIndex(), 1, 1).getField(0));
+			this.bufferPool.unpinPage(RESOURCE_ID, rid.getPageIndex());
+		}
+	}
+
+	/**
+	 * Tests that pages of an implementation that does not report its free space can be reserved
+	 * and written, and are left as they are in the map.
+	 */
+	@Test
+	public void testPageWithoutFreeSpace() throws Exception
+	{
+		byte[] buffer = new byte[this.schema.getPageSize().getNumberOfBytes()];
+		TablePage page = this.table.reserveNewPage(buffer);
+		int pageNumber = page.getPageNumber();
+		int recorded = this.table.getRecordedFreeSpace(pageNumber);
+		assertTrue(recorded > 0);
+
+		assertTrue(page.insertTuple(tuple(7)));
+		this.table.writePageToResource(buffer, withoutFreeSpace(page));
+		assertEquals(recorded, this.table.getRecordedFreeSpace(pageNumber));
+
+		TablePage reread = this.table.readPageFromResource(new byte[buffer.length], pageNumber);
+		assertEquals(1, reread.getNumRecordsOnPage());
+		assertEquals(new IntField(7), reread.getDataTuple(0, 1, 1).getField(0));
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Wraps the page into a page that does not report its free space, as the pages of an
+	 * implementation that only has the default method.
+	 */
+	private static TablePage withoutFreeSpace(final TablePage page)
+	{
+		return (TablePage) Proxy.newProxyInstance(TablePage.class.getClassLoader(), new Class<?>[] { TablePage.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						if (method.getName().equals("getFreeSpace")) {
+							throw new UnsupportedOperationException("getFreeSpace is not supported.");
+						}
+						return invokeOn(page, method, args);
+					}
+				});
+	}
+
+	/**
+	 * Wraps the buffer pool, so that the table pages it returns only implement the methods of the
+	 * original page interface and throw an <code>UnsupportedOperationException</code> from those
+	 * that were added later, as the pages of an implementation that only has their default methods.
+	 */
+	private static BufferPoolManager withBaselinePages(final BufferPoolManager bufferPool)
+	{
+		return (BufferPoolManager) Proxy.newProxyInstance(BufferPoolManager.class.getClassLoader(),
+				new Class<?>[] { BufferPoolManager.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						Object result = invokeOn(bufferPool, method, args);
+						if (!(result instanceof TablePage)) {
+							return result;
+						}
+						final TablePage page = (TablePage) result;
+						return Proxy.newProxyInstance(TablePage.class.getClassLoader(), new Class<?>[] { TablePage.class },
+								new InvocationHandler() {
+									@Override
+									public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+									{
+										if (method.isDefault()) {
+											throw new UnsupportedOperationException(method.getName() + " is not supported.");
+										}
+										return invokeOn(page, method, args);
+									}
+								});
+					}
+				});
+	}
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable
+	{
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException itex) {
+			throw itex.getCause();
+		}
+	}
+
+	private void openBufferPool() throws Exception
+	{
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.bufferPool.registerResource(RESOURCE_ID, this.table);
+	}
+
+	private static DataTuple tuple(int id)
+	{
+		return new DataTuple(new DataField[] { new IntField(id), new CharField("t" + id) });
+	}
+
+	private int insert(int firstId, int num) throws Exception
+	{
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (int i = 0; i < num; i++) {
+			tuples.add(tuple(firstId + i));
+		}
+		InsertOperatorImpl insert = new InsertOperatorImpl(this.bufferPool, this.table, RESOURCE_ID,
+				new BTreeIndex[0], new int[0], new ListOperator(tuples));
+		insert.open(null);
+		int inserted = 0;
+		while (insert.next() != null) {
+			inserted++;
+		}
+		assertNull(insert.next());
+		insert.close();
+		return inserted;
+	}
+
+	/**
+	 * Deletes every second tuple and records the freed space, as a delete operator would.
+	 */
+	private int deleteEverySecond() throws Exception
+	{
+		int live = 0;
+		int deleted = 0;
+		for (int p = this.table.getFirstDataPageNumber(); p <= this.table.getLastDataPageNumber(); p++) {
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(RESOURCE_ID, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				if (page.getDataTuple(i, 1, 1) != null && live++ % 2 == 1) {
+					page.deleteTuple(i);
+					deleted++;
+				}
+			}
+			this.table.recordFreeSpace(p, page.getFreeSpace());
+			this.bufferPool.unpinPage(RESOURCE_ID, p);
+		}
+		return deleted;
+	}
+
+	private int count() throws Exception
+	{
+		int num = 0;
+		for (int p = this.table.getFirstDataPageNumber(); p <= this.table.getLastDataPageNumber(); p++) {
+			TablePage page = (TablePage) this.bufferPool.getPageAndPin(RESOURCE_ID, p);
+			for (int i = 0; i < page.getNumRecordsOnPage(); i++) {
+				if (page.getDataTuple(i, 1, 1) != null) {
+					num++;
+				}
+			}
+			this.bufferPool.unpinPage(RESOURCE_ID, p);
+		}
+		return num;
+	}
+
+	/**
+	 * Produces the tuples of a list.
+	 */
+	private static final class ListOperator implements PhysicalPlanOperator
+	{
+		private final List<DataTuple> tuples;
+
+		private Iterator<DataTuple> iterator;
+
+		ListOperator(List<DataTuple> tuples)
+		{
+			this.tuples = tuples;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple)
+		{
+			this.iterator = this.tuples.iterator();
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			return this.iterator.hasNext() ? this.iterator.next() : null;
+		}
+
+		@Override
+		public void close()
+		{
+			this.iterator = null;
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator.DEFAULT_BATCH_SIZE;
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.optimizer.GroupByPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.OutputColumn.AggregationType;
+import de.tuberlin.dima.minidb.qexec.ExchangeOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.HashJoinOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.PageRangeDispenser;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.QueryExecutionException;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+import de.tuberlin.dima.minidb.semantics.ProducedColumn;
+
+
+/**
+ * Test case for parallel plans: table scans that share the pages of a table through a dispenser,
+ * gathering and repartitioning exchanges, the hash join, and the parallel hash group bys created
+ * by the optimizer plan operators. The tuples of parallel plans come in no particular order, so
+ * they are compared with those of serial plans as multisets.
+ */
+public class TestParallelExecution
+{
+	private static final int LINEITEM_ID = 1;
+
+	private static final int CUSTOMER_ID = 2;
+
+	private static final int ORDER_ID = 3;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager lineitem;
+
+	private TableResourceManager customer;
+
+	private TableResourceManager order;
+
+	private QueryHeap heap;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.lineitem = TableResourceManager.openTable(new File(getClass().getResource("/data/lineitem.mdtbl").getPath()));
+		this.customer = TableResourceManager.openTable(new File(getClass().getResource("/data/customer.mdtbl").getPath()));
+		this.order = TableResourceManager.openTable(new File(getClass().getResource("/data/order.mdtbl").getPath()));
+		this.bufferPool.registerResource(LINEITEM_ID, this.lineitem);
+		this.bufferPool.registerResource(CUSTOMER_ID, this.customer);
+		this.bufferPool.registerResource(ORDER_ID, this.order);
+		this.heap = new QueryHeap(Logger.getLogger("test"), config());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.heap.closeQueryHeap();
+		this.bufferPool.closeBufferPool();
+		this.lineitem.closeResource();
+		this.customer.closeResource();
+		this.order.closeResource();
+	}
+
+
+	/**
+	 * Tests that scans sharing a dispenser produce every tuple of the table once, also when the
+	 * gathered scans are opened again.
+	 */
+	@Test
+	public void testGatheredScans() throws Exception
+	{
+		int[] columns = { 0, 3, 4 };
+		Map<DataTuple, Integer> expected = count(drain(
+				new TableScanOperatorImpl(this.bufferPool, this.lineitem, LINEITEM_ID, columns, null, 8), DEFAULT_BATCH_SIZE));
+		assertTrue(expected.size() > 0);
+
+		for (int dop : new int[] { 1, 2, 4 }) {
+			PhysicalPlanOperator gather = ExchangeOperatorImpl.createGather(scans(this.lineitem, LINEITEM_ID, columns, dop, 16));
+			assertEquals("degree of parallelism " + dop, expected, count(drain(gather, DEFAULT_BATCH_SIZE)));
+			assertEquals("degree of parallelism " + dop + ", again", expected, count(drain(gather, DEFAULT_BATCH_SIZE)));
+		}
+	}
+
+	/**
+	 * Tests that a repartitioning exchange routes every tuple to exactly one partition, and all
+	 * tuples with the same key to the same one.
+	 */
+	@Test
+	public void testRepartition() throws Exception
+	{
+		int[] columns = { 0, 1, 3 };
+		Map<DataTuple, Integer> expected = count(drain(
+				new TableScanOperatorImpl(this.bufferPool, this.order, ORDER_ID, columns, null, 8), DEFAULT_BATCH_SIZE));
+
+		ExchangeOperatorImpl[] partitions = ExchangeOperatorImpl.createRepartition(
+				scans(this.order, ORDER_ID, columns, 3, 8), new int[] { 1 }, 4);
+		List<List<DataTuple>> results = drainInParallel(partitions);
+
+		Map<DataTuple, Integer> all = new HashMap<DataTuple, Integer>();
+		Map<DataField, Integer> partitionOfKey = new HashMap<DataField, Integer>();
+		for (int p = 0; p < results.size(); p++) {
+			for (DataTuple tuple : results.get(p)) {
+				Integer other = partitionOfKey.put(tuple.getField(1), p);
+				assertTrue("key in two partitions", other == null || other.intValue() == p);
+			}
+			merge(all, count(results.get(p)));
+		}
+		assertEquals(expected, all);
+		assertTrue("the keys should spread over the partitions", new HashSet<Integer>(partitionOfKey.values()).size() > 1);
+	}
+
+	/**
+	 * Tests the hash join of the orders with their customers against a join formed in a map.
+	 */
+	@Test
+	public void testHashJoin() throws Exception
+	{
+		PhysicalPlanOperator join = new HashJoinOperatorImpl(
+				new TableScanOperatorImpl(this.bufferPool, this.order, ORDER_ID, new int[] { 0, 1 }, null, 8),
+				new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, new int[] { 0, 3 }, null, 8),
+				new int[] { 1 }, new int[] { 0 }, null, new int[] { 0, 1, -1 }, new int[] { -1, -1, 1 });
+		Map<DataTuple, Integer> expected = expectedJoin();
+		assertEquals(expected, count(drain(join, DEFAULT_BATCH_SIZE)));
+		assertEquals(expected, count(drain(join, DEFAULT_BATCH_SIZE)));
+	}
+
+	/**
+	 * Tests hash joins over repartitioned orders and customers, one join per partition, gathered.
+	 */
+	@Test
+	public void testRepartitionedHashJoin() throws Exception
+	{
+		int dop = 3;
+		ExchangeOperatorImpl[] probes = ExchangeOperatorImpl.createRepartition(
+				scans(this.order, ORDER_ID, new int[] { 0, 1 }, dop, 8), new int[] { 1 }, dop);
+		ExchangeOperatorImpl[] builds = ExchangeOperatorImpl.createRepartition(
+				scans(this.customer, CUSTOMER_ID, new int[] { 0, 3 }, dop, 4), new int[] { 0 }, dop);
+		PhysicalPlanOperator[] joins = new PhysicalPlanOperator[dop];
+		for (int i = 0; i < dop; i++) {
+			joins[i] = new HashJoinOperatorImpl(probes[i], builds[i], new int[] { 1 }, new int[] { 0 }, null,
+					new int[] { 0, 1, -1 }, new int[] { -1, -1, 1 });
+		}
+		PhysicalPlanOperator gather = ExchangeOperatorImpl.createGather(joins);
+		assertEquals(expectedJoin(), count(drain(gather, DEFAULT_BATCH_SIZE)));
+	}
+
+	/**
+	 * Tests the group by over a parallel scan whose aggregates are combined from partial
+	 * aggregates, against the group by over a serial scan.
+	 */
+	@Test
+	public void testPartialAggregation() throws Exception
+	{
+		AggregationType[] functions = { AggregationType.COUNT, AggregationType.SUM, AggregationType.MIN, AggregationType.MAX };
+		DataType[] types = { DataType.bigIntType(), DataType.bigIntType(), DataType.intType(), DataType.intType() };
+		checkParallelGroupBy(functions, types);
+	}
+
+	/**
+	 * Tests the group by over a parallel scan whose aggregates cannot be combined, so that the
+	 * tuples are repartitioned by the grouping columns, against the group by over a serial scan.
+	 */
+	@Test
+	public void testRepartitionedAggregation() throws Exception
+	{
+		AggregationType[] functions = { AggregationType.COUNT, AggregationType.AVG, AggregationType.MIN };
+		DataType[] types = { DataType.bigIntType(), DataType.intType(), DataType.intType() };
+		checkParallelGroupBy(functions, types);
+	}
+
+	/**
+	 * Tests that the error of a producer is raised by the consumer of the exchange, and that the
+	 * exchange can be closed afterwards.
+	 */
+	@Test
+	public void testProducerFailure() throws Exception
+	{
+		PhysicalPlanOperator[] producers = scans(this.lineitem, LINEITEM_ID, new int[] { 0 }, 2, 8);
+		producers[1] = new FailingOperator(producers[1], 5000);
+		PhysicalPlanOperator gather = ExchangeOperatorImpl.createGather(producers);
+		gather.open(null);
+		try {
+			while (gather.next() != null) {
+				// drain until the failure arrives
+			}
+			fail("The failure of the producer was not raised.");
+		}
+		catch (QueryExecutionException qeex) {
+			// expected
+		}
+		finally {
+			gather.close();
+		}
+	}
+
+	/**
+	 * Tests that a failing scan under a repartition stops the other scans. The operators over the
+	 * partitions drain them when they are opened, as a group by does, so they fail to open, and
+	 * every producer thread of both exchanges must exit once the gather is closed.
+	 */
+	@Test
+	public void testProducerFailureUnderRepartition() throws Exception
+	{
+		Set<Thread> before = producerThreads();
+		int dop = 3;
+		PhysicalPlanOperator[] producers = scans(this.lineitem, LINEITEM_ID, new int[] { 8, 9, 0 }, dop, 4);
+		producers[0] = new FailingOperator(producers[0], 5000);
+		ExchangeOperatorImpl[] partitions = ExchangeOperatorImpl.createRepartition(producers, new int[] { 0, 1 }, dop);
+		PhysicalPlanOperator[] blocking = new PhysicalPlanOperator[dop];
+		for (int i = 0; i < dop; i++) {
+			blocking[i] = new DrainOnOpen(partitions[i]);
+		}
+		PhysicalPlanOperator gather = ExchangeOperatorImpl.createGather(blocking);
+		try {
+			drain(gather, DEFAULT_BATCH_SIZE);
+			fail("The failure of the producer was not raised.");
+		}
+		catch (QueryExecutionException qeex) {
+			// expected
+		}
+		finally {
+			gather.close();
+		}
+
+		Set<Thread> running = producerThreads();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!before.containsAll(running) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			running = producerThreads();
+		}
+		running.removeAll(before);
+		assertTrue("Producer threads still running: " + running, running.isEmpty());
+	}
+
+	/**
+	 * Tests that the degree of parallelism is kept serial without concurrency information and for
+	 * small tables, and never exceeds the share of processors of a query.
+	 */
+	@Test
+	public void testDegreeOfParallelism()
+	{
+		int processors = Runtime.getRuntime().availableProcessors();
+		assertEquals(1, PhysicalPlanGeneratorUtils.chooseDegreeOfParallelism(100000, 0));
+		assertEquals(1, PhysicalPlanGeneratorUtils.chooseDegreeOfParallelism(PageRangeDispenser.DEFAULT_MORSEL_PAGES - 1, 1));
+		assertEquals(Math.max(1, processors), PhysicalPlanGeneratorUtils.chooseDegreeOfParallelism(Integer.MAX_VALUE, 1));
+		assertEquals(Math.max(1, processors / 2), PhysicalPlanGeneratorUtils.chooseDegreeOfParallelism(Integer.MAX_VALUE, 2));
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Groups the line items by return flag and line status and aggregates their order keys, once
+	 * over a serial scan and once over a scan with a degree of parallelism of three.
+	 */
+	private void checkParallelGroupBy(AggregationType[] functions, DataType[] aggTypes) throws Exception
+	{
+		TableDescriptor table = new TableDescriptor("LINEITEM", "lineitem.mdtbl");
+		table.setResourceProperties(this.lineitem, LINEITEM_ID);
+		BaseTableAccess access = new BaseTableAccess(table);
+		access.setOutputCardinality(120515);
+
+		// the group by expects its input in the order of its output columns
+		int width = 2 + functions.length;
+		Column[] scanned = new Column[width];
+		ProducedColumn[] produced = new ProducedColumn[width];
+		int[] aggColIndices = new int[functions.length];
+		for (int i = 0; i < width; i++) {
+			int column = i == 0 ? 8 : i == 1 ? 9 : 0;
+			DataType type = this.lineitem.getSchema().getColumn(column).getDataType();
+			scanned[i] = new Column(access, type, column);
+			if (i < 2) {
+				produced[i] = new ProducedColumn(access, type, column, "c" + i, null);
+			}
+			else {
+				produced[i] = new ProducedColumn(access, type, column, "c" + i, null, functions[i - 2]);
+				produced[i].setOutputDataType(aggTypes[i - 2]);
+				aggColIndices[i - 2] = i;
+			}
+		}
+
+		TableScanPlanOperator serialScan = new TableScanPlanOperator(access, scanned);
+		GroupByPlanOperator serial = new GroupByPlanOperator(serialScan, produced, new int[] { 0, 1 }, aggColIndices, 10, true);
+		Map<DataTuple, Integer> expected = count(drain(serial.createPhysicalPlan(this.bufferPool, this.heap), DEFAULT_BATCH_SIZE));
+		assertTrue(expected.size() > 1);
+
+		TableScanPlanOperator parallelScan = new TableScanPlanOperator(access, scanned);
+		parallelScan.setDegreeOfParallelism(3);
+		GroupByPlanOperator parallel = new GroupByPlanOperator(parallelScan, produced, new int[] { 0, 1 }, aggColIndices, 10, true);
+		PhysicalPlanOperator plan = parallel.createPhysicalPlan(this.bufferPool, this.heap);
+		assertEquals(expected, count(drain(plan, DEFAULT_BATCH_SIZE)));
+		assertEquals(expected, count(drain(plan, DEFAULT_BATCH_SIZE)));
+	}
+
+	/**
+	 * Creates scans of the table that share a dispenser.
+	 */
+	private PhysicalPlanOperator[] scans(TableResourceManager table, int resourceId, int[] columns, int dop, int morselPages)
+	{
+		PageRangeDispenser dispenser = new PageRangeDispenser(table, morselPages, dop);
+		PhysicalPlanOperator[] scans = new PhysicalPlanOperator[dop];
+		for (int i = 0; i < dop; i++) {
+			scans[i] = new TableScanOperatorImpl(this.bufferPool, table, resourceId, columns, null, 4, dispenser);
+		}
+		return scans;
+	}
+
+	/**
+	 * Joins order key and customer key of the orders with the nation key of their customers in a map.
+	 */
+	private Map<DataTuple, Integer> expectedJoin() throws Exception
+	{
+		Map<DataField, DataField> nations = new HashMap<DataField, DataField>();
+		for (DataTuple tuple : drain(new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, new int[] { 0, 3 }, null, 8), DEFAULT_BATCH_SIZE)) {
+			nations.put(tuple.getField(0), tuple.getField(1));
+		}
+		List<DataTuple> joined = new ArrayList<DataTuple>();
+		for (DataTuple tuple : drain(new TableScanOperatorImpl(this.bufferPool, this.order, ORDER_ID, new int[] { 0, 1 }, null, 8), DEFAULT_BATCH_SIZE)) {
+			DataField nation = nations.get(tuple.getField(1));
+			if (nation != null) {
+				DataTuple result = new DataTuple(3);
+				result.assignDataField(tuple.getField(0), 0);
+				result.assignDataField(tuple.getField(1), 1);
+				result.assignDataField(nation, 2);
+				joined.add(result);
+			}
+		}
+		assertTrue(joined.size() > 0);
+		return count(joined);
+	}
+
+	/**
+	 * Drains each of the operators by a thread of its own.
+	 */
+	private static List<List<DataTuple>> drainInParallel(final PhysicalPlanOperator[] operators) throws Exception
+	{
+		final List<List<DataTuple>> results = new ArrayList<List<DataTuple>>();
+		final Throwable[] errors = new Throwable[operators.length];
+		Thread[] threads = new Thread[operators.length];
+		for (int i = 0; i < operators.length; i++) {
+			results.add(null);
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run()
+				{
+					try {
+						List<DataTuple> tuples = drain(operators[index], DEFAULT_BATCH_SIZE);
+						synchronized (results) {
+							results.set(index, tuples);
+						}
+					}
+					catch (Throwable t) {
+						errors[index] = t;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+			if (errors[i] != null) {
+				throw new AssertionError(errors[i]);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Gets the live threads that run producers of exchanges.
+	 */
+	private static Set<Thread> producerThreads()
+	{
+		Set<Thread> threads = new HashSet<Thread>();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().startsWith("Exchange producer")) {
+				threads.add(thread);
+			}
+		}
+		return threads;
+	}
+
+	private static Map<DataTuple, Integer> count(List<DataTuple> tuples)
+	{
+		Map<DataTuple, Integer> counts = new HashMap<DataTuple, Integer>();
+		for (DataTuple tuple : tuples) {
+			Integer num = counts.get(tuple);
+			counts.put(tuple, num == null ? 1 : num + 1);
+		}
+		return counts;
+	}
+
+	private static void merge(Map<DataTuple, Integer> counts, Map<DataTuple, Integer> other)
+	{
+		Set<Map.Entry<DataTuple, Integer>> entries = other.entrySet();
+		for (Map.Entry<DataTuple, Integer> entry : entries) {
+			Integer num = counts.get(entry.getKey());
+			counts.put(entry.getKey(), num == null ? entry.getValue() : num + entry.getValue());
+		}
+	}
+
+	/**
+	 * Passes on the tuples of its child and fails after a given number of them.
+	 */
+	private static final class FailingOperator implements PhysicalPlanOperator
+	{
+		private final PhysicalPlanOperator child;
+
+		private final int failAfter;
+
+		private int produced;
+
+
+		FailingOperator(PhysicalPlanOperator child, int failAfter)
+		{
+			this.child = child;
+			this.failAfter = failAfter;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple) throws QueryExecutionException
+		{
+			this.produced = 0;
+			this.child.open(correlatedTuple);
+		}
+
+		@Override
+		public DataTuple next() throws QueryExecutionException
+		{
+			if (this.produced++ == this.failAfter) {
+				throw new QueryExecutionException("Failure for the test.");
+			}
+			return this.child.next();
+		}
+
+		@Override
+		public void close() throws QueryExecutionException
+		{
+			this.child.close();
+		}
+	}
+
+	/**
+	 * Consumes all tuples of its child when it is opened and produces none. The child is closed
+	 * by close(), also when opening failed.
+	 */
+	private static final class DrainOnOpen implements PhysicalPlanOperator
+	{
+		private final PhysicalPlanOperator child;
+
+
+		DrainOnOpen(PhysicalPlanOperator child)
+		{
+			this.child = child;
+		}
+
+		@Override
+		public void open(DataTuple correlatedTuple) throws QueryExecutionException
+		{
+			this.child.open(correlatedTuple);
+			DataTuple[] batch = new DataTuple[DEFAULT_BATCH_SIZE];
+			while (this.child.nextBatch(batch) > 0) {
+				// consume
+			}
+		}
+
+		@Override
+		public DataTuple next()
+		{
+			return null;
+		}
+
+		@Override
+		public void close() throws QueryExecutionException
+		{
+			this.child.close();
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator.DEFAULT_BATCH_SIZE;
+import static de.tuberlin.dima.minidb.test.Fixtures.config;
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.CharField;
+import de.tuberlin.dima.minidb.core.DataField;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.core.DateField;
+import de.tuberlin.dima.minidb.core.DoubleField;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.core.VarcharField;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.SortKeyNormalizer;
+import de.tuberlin.dima.minidb.qexec.SortOperator;
+import de.tuberlin.dima.minidb.qexec.SortOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.heap.QueryHeap;
+
+
+/**
+ * Test case for the external merge sort and its normalized keys. The sorted tuples are compared
+ * with a sort in memory that compares the fields. The query heap is small, so that the sort of
+ * <tt>lineitem</tt> writes runs to temp space.
+ */
+public class TestSortOperator
+{
+	private static final int LINEITEM_ID = 1;
+
+	private static final int CUSTOMER_ID = 2;
+
+	/**
+	 * The heap size, too small to sort the scanned columns of <tt>lineitem</tt> in memory.
+	 */
+	private static final long HEAP_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * The scanned columns of <tt>lineitem</tt>: return flag, ship date, comment, order key, price.
+	 */
+	private static final int[] LINEITEM_COLUMNS = { 8, 10, 15, 0, 5 };
+
+	/**
+	 * The scanned columns of <tt>customer</tt>: customer key, nation key, account balance.
+	 */
+	private static final int[] CUSTOMER_COLUMNS = { 0, 3, 5 };
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager lineitem;
+
+	private TableResourceManager customer;
+
+	private QueryHeap heap;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.lineitem = TableResourceManager.openTable(new File(getClass().getResource("/data/lineitem.mdtbl").getPath()));
+		this.customer = TableResourceManager.openTable(new File(getClass().getResource("/data/customer.mdtbl").getPath()));
+		this.bufferPool.registerResource(LINEITEM_ID, this.lineitem);
+		this.bufferPool.registerResource(CUSTOMER_ID, this.customer);
+		this.heap = new QueryHeap(Logger.getLogger("test"), config(HEAP_SIZE));
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.heap.closeQueryHeap();
+		this.bufferPool.closeBufferPool();
+		this.lineitem.closeResource();
+		this.customer.closeResource();
+	}
+
+
+	/**
+	 * Tests a sort whose input fits into the heap, with one and with several threads.
+	 */
+	@Test
+	public void testInMemory() throws Exception
+	{
+		int[] sortColumns = { 2, 0 };
+		boolean[] ascending = { false, true };
+		List<DataTuple> input = drain(customerScan(), DEFAULT_BATCH_SIZE);
+		List<DataTuple> expected = sorted(input, sortColumns, ascending);
+
+		for (int dop : new int[] { 1, 2, 4 }) {
+			SortOperator sort = new SortOperatorImpl(customerScan(), this.heap, types(this.customer, CUSTOMER_COLUMNS),
+					input.size(), sortColumns, ascending, dop);
+			assertEquals("degree of parallelism " + dop, expected, drain(sort, DEFAULT_BATCH_SIZE));
+		}
+	}
+
+	/**
+	 * Tests a sort that writes runs to temp space, by strings, dates and numbers in both directions,
+	 * also when the sort is opened again.
+	 */
+	@Test
+	public void testExternal() throws Exception
+	{
+		int[] sortColumns = { 0, 1, 2, 3, 4 };
+		boolean[] ascending = { true, false, true, false, true };
+		List<DataTuple> input = drain(lineitemScan(), DEFAULT_BATCH_SIZE);
+		List<DataTuple> expected = sorted(input, sortColumns, ascending);
+
+		for (int dop : new int[] { 1, 3 }) {
+			SortOperator sort = new SortOperatorImpl(lineitemScan(), this.heap, types(this.lineitem, LINEITEM_COLUMNS),
+					input.size(), sortColumns, ascending, dop);
+			assertEquals("degree of parallelism " + dop, expected, drain(sort, DEFAULT_BATCH_SIZE));
+			assertEquals("degree of parallelism " + dop + ", again", expected, drain(sort, DEFAULT_BATCH_SIZE));
+		}
+	}
+
+	/**
+	 * Tests that a sort that underestimates its input still sorts it, through more runs. The
+	 * columns after order key and price only decide ties.
+	 */
+	@Test
+	public void testUnderestimatedCardinality() throws Exception
+	{
+		int[] sortColumns = { 3, 4, 0, 1, 2 };
+		boolean[] ascending = { false, false, true, true, true };
+		List<DataTuple> expected = sorted(drain(lineitemScan(), DEFAULT_BATCH_SIZE), sortColumns, ascending);
+
+		SortOperator sort = new SortOperatorImpl(lineitemScan(), this.heap, types(this.lineitem, LINEITEM_COLUMNS),
+				100, sortColumns, ascending, 2);
+		assertEquals(expected, drain(sort, DEFAULT_BATCH_SIZE));
+	}
+
+	/**
+	 * Tests a sort with more threads than the heap has grants for. The sort must not wait for
+	 * memory that it holds itself, but cycle over the grants it got.
+	 */
+	@Test(timeout = 300000)
+	public void testMoreThreadsThanGrants() throws Exception
+	{
+		int[] sortColumns = { 2, 3, 4 };
+		boolean[] ascending = { true, true, true };
+		List<DataTuple> input = drain(lineitemScan(), DEFAULT_BATCH_SIZE);
+		List<DataTuple> expected = sorted(input, sortColumns, ascending);
+
+		SortOperator sort = new SortOperatorImpl(lineitemScan(), this.heap, types(this.lineitem, LINEITEM_COLUMNS),
+				input.size(), sortColumns, ascending, 64);
+		assertEquals(expected, drain(sort, DEFAULT_BATCH_SIZE));
+	}
+
+	/**
+	 * Tests that the keys of single fields are ordered as the fields, including NULL values,
+	 * negative numbers and strings with zero characters.
+	 */
+	@Test
+	public void testNormalizedKeys() throws Exception
+	{
+		checkKeys(DataType.intType(), new IntField(Integer.MIN_VALUE), new IntField(-7), new IntField(0), new IntField(3),
+				new IntField(Integer.MAX_VALUE));
+		checkKeys(DataType.floatType(), new FloatField(Float.NaN), new FloatField(Float.NEGATIVE_INFINITY),
+				new FloatField(-2.5f), new FloatField(-0.0f), new FloatField(0.0f), new FloatField(1e-30f), new FloatField(7.25f));
+		checkKeys(DataType.doubleType(), new DoubleField(Double.NaN), new DoubleField(-1e300), new DoubleField(-1.0),
+				new DoubleField(0.0), new DoubleField(0.5), new DoubleField(Double.POSITIVE_INFINITY));
+		checkKeys(DataType.dateType(), DataType.dateType().getNullValue(), new DateField(31, 11, 1992), new DateField(1, 0, 1993), new DateField(2, 0, 1993),
+				new DateField(1, 1, 1993));
+		checkKeys(DataType.varcharType(8), DataType.varcharType(8).getNullValue(), new VarcharField(""),
+				new VarcharField("a"), new VarcharField("ab"), new VarcharField("b"), new VarcharField("\u00e4"));
+		checkKeys(DataType.charType(2), new CharField(null), new CharField(""), new CharField("\0"), new CharField("\0A"),
+				new CharField("A"), new CharField("A\0"), new CharField("AB"), new CharField("B"));
+
+		// no key of a string is the prefix of another one, so the following column decides only on ties
+		DataType[] types = { DataType.charType(2), DataType.intType() };
+		SortKeyNormalizer normalizer = new SortKeyNormalizer(types, new int[] { 0, 1 }, new boolean[] { true, false });
+		byte[] shorter = normalizer.normalize(new DataTuple(new DataField[] { new CharField("A"), new IntField(1) }));
+		byte[] longer = normalizer.normalize(new DataTuple(new DataField[] { new CharField("A\0"), new IntField(2) }));
+		byte[] tie = normalizer.normalize(new DataTuple(new DataField[] { new CharField("A"), new IntField(5) }));
+		assertTrue(SortKeyNormalizer.compare(shorter, longer) < 0);
+		assertTrue(SortKeyNormalizer.compare(tie, shorter) < 0);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Checks that the keys of the given fields, which are in ascending order, are in ascending
+	 * order, and in descending order for a descending sort.
+	 */
+	private static void checkKeys(DataType type, DataField... fields)
+	{
+		SortKeyNormalizer ascending = new SortKeyNormalizer(new DataType[] { type }, new int[] { 0 }, new boolean[] { true });
+		SortKeyNormalizer descending = new SortKeyNormalizer(new DataType[] { type }, new int[] { 0 }, new boolean[] { false });
+		for (int i = 0; i < fields.length; i++) {
+			for (int j = 0; j < fields.length; j++) {
+				DataTuple first = new DataTuple(new DataField[] { fields[i] });
+				DataTuple second = new DataTuple(new DataField[] { fields[j] });
+				int expected = Integer.signum(fields[i].compareTo(fields[j]));
+				String message = type + ": " + fields[i] + " and " + fields[j];
+				assertEquals(message, expected,
+						Integer.signum(SortKeyNormalizer.compare(ascending.normalize(first), ascending.normalize(second))));
+				assertEquals(message, -expected,
+						Integer.signum(SortKeyNormalizer.compare(descending.normalize(first), descending.normalize(second))));
+			}
+		}
+	}
+
+	private PhysicalPlanOperator lineitemScan()
+	{
+		return new TableScanOperatorImpl(this.bufferPool, this.lineitem, LINEITEM_ID, LINEITEM_COLUMNS, null, 8);
+	}
+
+	private PhysicalPlanOperator customerScan()
+	{
+		return new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, CUSTOMER_COLUMNS, null, 8);
+	}
+
+	private static DataType[] types(TableResourceManager table, int[] columns)
+	{
+		DataType[] types = new DataType[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			types[i] = table.getSchema().getColumn(columns[i]).getDataType();
+		}
+		return types;
+	}
+
+	private static List<DataTuple> sorted(List<DataTuple> tuples, final int[] sortColumns, final boolean[] ascending)
+	{
+		List<DataTuple> copy = new ArrayList<DataTuple>(tuples);
+		Collections.sort(copy, new Comparator<DataTuple>() {
+			@Override
+			public int compare(DataTuple first, DataTuple second)
+			{
+				for (int i = 0; i < sortColumns.length; i++) {
+					int cmp = first.getField(sortColumns[i]).compareTo(second.getField(sortColumns[i]));
+					if (cmp != 0) {
+						return ascending[i] ? cmp : -cmp;
+					}
+				}
+				return 0;
+			}
+		});
+		return copy;
+	}
+}
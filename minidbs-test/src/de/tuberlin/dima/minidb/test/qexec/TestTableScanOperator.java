@@ -0,0 +1,258 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.FloatField;
+import de.tuberlin.dima.minidb.core.IntField;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TablePage;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.io.tables.TupleIterator;
+import de.tuberlin.dima.minidb.parser.Predicate.Operator;
+import de.tuberlin.dima.minidb.qexec.LowLevelPredicate;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+
+
+/**
+ * Test case for the table scan with fixed and adaptive prefetch windows, with predicates, and over
+ * pages that do not decode their records into column batches.
+ */
+public class TestTableScanOperator
+{
+	private static final int RESOURCE_ID = 1;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager table;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.table = TableResourceManager.openTable(new File(getClass().getResource("/data/lineitem.mdtbl").getPath()));
+		this.bufferPool.registerResource(RESOURCE_ID, this.table);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.table.closeResource();
+	}
+
+
+	/**
+	 * Tests that the scan produces all tuples of the table, in page order.
+	 */
+	@Test
+	public void testScanAllColumns() throws Exception
+	{
+		int numCols = this.table.getSchema().getNumberOfColumns();
+		int[] columns = new int[numCols];
+		for (int i = 0; i < numCols; i++) {
+			columns[i] = i;
+		}
+		List<DataTuple> expected = readDirectly(columns);
+
+		TableScanOperatorImpl scan = new TableScanOperatorImpl(this.bufferPool, this.table, RESOURCE_ID, columns, null, 8);
+		assertEquals(expected, drain(scan));
+	}
+
+	/**
+	 * Tests that fixed and adaptive windows produce the same reordered projection, and that the
+	 * adaptive window stays within its bounds.
+	 */
+	@Test
+	public void testProjectionWithWindows() throws Exception
+	{
+		int[] columns = { 4, 1, 6 };
+		List<DataTuple> expected = readDirectly(columns);
+		assertTrue(expected.size() > 0);
+
+		for (int window : new int[] { 0, 1, 64 }) {
+			TableScanOperatorImpl fixed = new TableScanOperatorImpl(this.bufferPool, this.table, RESOURCE_ID, columns, null, window, false);
+			assertEquals(expected, drain(fixed));
+			assertEquals(window, fixed.getPrefetchWindowLength());
+		}
+
+		TableScanOperatorImpl adaptive = new TableScanOperatorImpl(this.bufferPool, this.table, RESOURCE_ID, columns, null, 1);
+		adaptive.open(null);
+		int num = 0;
+		DataTuple tuple;
+		while ((tuple = adaptive.next()) != null) {
+			assertEquals(expected.get(num++), tuple);
+			int window = adaptive.getPrefetchWindowLength();
+			assertTrue(window >= 1 && window <= TableScanOperatorImpl.MAX_WINDOW_LENGTH);
+		}
+		assertNull(adaptive.next());
+		adaptive.close();
+		assertEquals(expected.size(), num);
+	}
+
+	/**
+	 * Tests that the scan produces the same tuples as the page iterator with predicates, including
+	 * predicates on columns that are not produced.
+	 */
+	@Test
+	public void testPredicates() throws Exception
+	{
+		int[] columns = { 13, 0 };
+		LowLevelPredicate[] predicates = {
+			new LowLevelPredicate(Operator.SMALLER, new FloatField(10.0f), 4),
+			new LowLevelPredicate(Operator.GREATER_OR_EQUAL, new IntField(1000), 0)
+		};
+
+		long bitmap = (1L << 0) | (1L << 13);
+		byte[] buffer = new byte[this.table.getPageSize().getNumberOfBytes()];
+		List<DataTuple> expected = new ArrayList<DataTuple>();
+		for (int page = this.table.getFirstDataPageNumber(); page <= this.table.getLastDataPageNumber(); page++) {
+			TupleIterator iterator = this.table.readPageFromResource(buffer, page).getIterator(predicates, 2, bitmap);
+			while (iterator.hasNext()) {
+				DataTuple raw = iterator.next();
+				DataTuple tuple = new DataTuple(2);
+				tuple.assignDataField(raw.getField(1), 0);
+				tuple.assignDataField(raw.getField(0), 1);
+				expected.add(tuple);
+			}
+		}
+		assertTrue(expected.size() > 0);
+
+		TableScanOperatorImpl scan = new TableScanOperatorImpl(this.bufferPool, this.table, RESOURCE_ID, columns, predicates, 8);
+		assertEquals(expected, drain(scan));
+	}
+
+	/**
+	 * Tests that the scan produces the same tuples from pages that only implement the methods of the
+	 * original page interface, with and without predicates, tuple by tuple and in batches.
+	 */
+	@Test
+	public void testBaselinePages() throws Exception
+	{
+		BufferPoolManager baselinePool = withBaselinePages(this.bufferPool);
+		int[] columns = { 4, 1, 6, 8 };
+		List<DataTuple> expected = readDirectly(columns);
+		assertTrue(expected.size() > 0);
+
+		TableScanOperatorImpl scan = new TableScanOperatorImpl(baselinePool, this.table, RESOURCE_ID, columns, null, 8);
+		assertEquals(expected, drain(scan));
+
+		LowLevelPredicate[] predicates = {
+			new LowLevelPredicate(Operator.SMALLER, new FloatField(10.0f), 4)
+		};
+		List<DataTuple> qualifying = new ArrayList<DataTuple>();
+		for (DataTuple tuple : expected) {
+			if (predicates[0].evaluateWithNull(tuple.getField(0))) {
+				qualifying.add(tuple);
+			}
+		}
+		assertTrue(qualifying.size() > 0 && qualifying.size() < expected.size());
+
+		TableScanOperatorImpl filtered = new TableScanOperatorImpl(baselinePool, this.table, RESOURCE_ID, columns, predicates, 8);
+		filtered.open(null);
+		List<DataTuple> actual = new ArrayList<DataTuple>();
+		DataTuple[] batch = new DataTuple[100];
+		int num;
+		while ((num = filtered.nextBatch(batch)) > 0) {
+			for (int i = 0; i < num; i++) {
+				actual.add(batch[i]);
+			}
+		}
+		filtered.close();
+		assertEquals(qualifying, actual);
+	}
+
+
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Wraps the buffer pool, so that the table pages it returns only implement the methods of the
+	 * original page interface and throw an <code>UnsupportedOperationException</code> from those
+	 * that were added later, as the pages of an implementation that only has their default methods.
+	 */
+	private static BufferPoolManager withBaselinePages(final BufferPoolManager bufferPool)
+	{
+		return (BufferPoolManager) Proxy.newProxyInstance(BufferPoolManager.class.getClassLoader(),
+				new Class<?>[] { BufferPoolManager.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						Object result = invokeOn(bufferPool, method, args);
+						return result instanceof TablePage ? baseline((TablePage) result) : result;
+					}
+				});
+	}
+
+	private static TablePage baseline(final TablePage page)
+	{
+		return (TablePage) Proxy.newProxyInstance(TablePage.class.getClassLoader(), new Class<?>[] { TablePage.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+					{
+						if (method.isDefault()) {
+							throw new UnsupportedOperationException(method.getName() + " is not supported.");
+						}
+						return invokeOn(page, method, args);
+					}
+				});
+	}
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable
+	{
+		try {
+			return method.invoke(target, args);
+		}
+		catch (InvocationTargetException itex) {
+			throw itex.getCause();
+		}
+	}
+
+	/**
+	 * Reads the given columns of all tuples from the table's pages, without the buffer pool.
+	 */
+	private List<DataTuple> readDirectly(int[] columns) throws Exception
+	{
+		int numCols = this.table.getSchema().getNumberOfColumns();
+		long bitmap = (1L << numCols) - 1;
+		byte[] buffer = new byte[this.table.getPageSize().getNumberOfBytes()];
+
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		for (int page = this.table.getFirstDataPageNumber(); page <= this.table.getLastDataPageNumber(); page++) {
+			TablePage tablePage = this.table.readPageFromResource(buffer, page);
+			TupleIterator iterator = tablePage.getIterator(numCols, bitmap);
+			while (iterator.hasNext()) {
+				DataTuple raw = iterator.next();
+				DataTuple tuple = new DataTuple(columns.length);
+				for (int i = 0; i < columns.length; i++) {
+					tuple.assignDataField(raw.getField(columns[i]), i);
+				}
+				tuples.add(tuple);
+			}
+		}
+		return tuples;
+	}
+}
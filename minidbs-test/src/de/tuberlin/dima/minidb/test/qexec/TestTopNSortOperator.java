@@ -0,0 +1,207 @@
+package de.tuberlin.dima.minidb.test.qexec;
+
+import static de.tuberlin.dima.minidb.test.Fixtures.drain;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tuberlin.dima.minidb.Config;
+import de.tuberlin.dima.minidb.api.AbstractExtensionFactory;
+import de.tuberlin.dima.minidb.catalogue.TableDescriptor;
+import de.tuberlin.dima.minidb.core.DataTuple;
+import de.tuberlin.dima.minidb.core.DataType;
+import de.tuberlin.dima.minidb.io.manager.BufferPoolManager;
+import de.tuberlin.dima.minidb.io.tables.TableResourceManager;
+import de.tuberlin.dima.minidb.optimizer.OptimizerPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.SortPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.TableScanPlanOperator;
+import de.tuberlin.dima.minidb.optimizer.generator.util.PhysicalPlanGeneratorUtils;
+import de.tuberlin.dima.minidb.parser.IntegerLiteral;
+import de.tuberlin.dima.minidb.parser.LimitClause;
+import de.tuberlin.dima.minidb.qexec.PhysicalPlanOperator;
+import de.tuberlin.dima.minidb.qexec.TableScanOperatorImpl;
+import de.tuberlin.dima.minidb.qexec.TopNSortOperator;
+import de.tuberlin.dima.minidb.qexec.TopNSortOperatorImpl;
+import de.tuberlin.dima.minidb.semantics.BaseTableAccess;
+import de.tuberlin.dima.minidb.semantics.Column;
+
+
+/**
+ * Test case for the top-N sort. The produced tuples are compared with the first tuples of a full
+ * sort of the customer table in memory.
+ */
+public class TestTopNSortOperator
+{
+	private static final int CUSTOMER_ID = 2;
+
+	/**
+	 * The scanned columns: customer key, nation key, account balance.
+	 */
+	private static final int[] COLUMNS = { 0, 3, 5 };
+
+	/**
+	 * The size of the batches in which the tuples are taken from the operators.
+	 */
+	private static final int BATCH_SIZE = 7;
+
+	private BufferPoolManager bufferPool;
+
+	private TableResourceManager customer;
+
+
+	@Before
+	public void setUp() throws Exception
+	{
+		AbstractExtensionFactory.initializeDefault();
+		this.bufferPool = AbstractExtensionFactory.getExtensionFactory().createBufferPoolManager(
+				Config.getDefaultConfig(), Logger.getLogger("test"));
+		this.bufferPool.startIOThreads();
+		this.customer = TableResourceManager.openTable(new File(getClass().getResource("/data/customer.mdtbl").getPath()));
+		this.bufferPool.registerResource(CUSTOMER_ID, this.customer);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.bufferPool.closeBufferPool();
+		this.customer.closeResource();
+	}
+
+
+	/**
+	 * Tests the top customers by account balance for limits from zero to more than the table has.
+	 */
+	@Test
+	public void testSingleColumn() throws Exception
+	{
+		int[] sortColumns = { 2, 0 };
+		boolean[] ascending = { false, true };
+		List<DataTuple> all = sorted(drain(scan(), BATCH_SIZE), sortColumns, ascending);
+		assertTrue(all.size() > 100);
+
+		for (int limit : new int[] { 0, 1, 10, 100, all.size(), all.size() + 5 }) {
+			TopNSortOperator sort = new TopNSortOperatorImpl(scan(), sortColumns, ascending, limit);
+			assertEquals("limit " + limit, all.subList(0, Math.min(limit, all.size())), drain(sort, BATCH_SIZE));
+		}
+	}
+
+	/**
+	 * Tests sorting by the nation key ascending and the account balance descending, with the
+	 * customer key deciding ties.
+	 */
+	@Test
+	public void testMixedDirections() throws Exception
+	{
+		int[] sortColumns = { 1, 2, 0 };
+		boolean[] ascending = { true, false, false };
+		List<DataTuple> all = sorted(drain(scan(), BATCH_SIZE), sortColumns, ascending);
+
+		TopNSortOperator sort = new TopNSortOperatorImpl(scan(), sortColumns, ascending, 250);
+		assertEquals(all.subList(0, 250), drain(sort, BATCH_SIZE));
+		assertEquals("opened again", all.subList(0, 250), drain(sort, BATCH_SIZE));
+	}
+
+	/**
+	 * Tests that without sort columns, the first tuples of the child are produced in their order,
+	 * and that they are handed out tuple by tuple as well.
+	 */
+	@Test
+	public void testWithoutSortColumns() throws Exception
+	{
+		List<DataTuple> all = drain(scan(), BATCH_SIZE);
+
+		TopNSortOperator sort = new TopNSortOperatorImpl(scan(), new int[0], new boolean[0], 42);
+		List<DataTuple> tuples = new ArrayList<DataTuple>();
+		sort.open(null);
+		DataTuple tuple;
+		while ((tuple = sort.next()) != null) {
+			tuples.add(tuple);
+		}
+		sort.close();
+		assertEquals(all.subList(0, 42), tuples);
+	}
+
+	/**
+	 * Tests that the optimizer puts the row limit into the sort at the root of a plan, or adds a
+	 * sort without sort columns.
+	 */
+	@Test
+	public void testRowLimitInPlan() throws Exception
+	{
+		List<DataTuple> input = drain(scan(), BATCH_SIZE);
+		TableDescriptor table = new TableDescriptor("CUSTOMER", "customer.mdtbl");
+		table.setResourceProperties(this.customer, CUSTOMER_ID);
+		BaseTableAccess access = new BaseTableAccess(table);
+		access.setOutputCardinality(input.size());
+		Column[] scanned = new Column[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+			DataType type = this.customer.getSchema().getColumn(COLUMNS[i]).getDataType();
+			scanned[i] = new Column(access, type, COLUMNS[i]);
+		}
+
+		int[] sortColumns = { 2, 0 };
+		boolean[] ascending = { false, true };
+		List<DataTuple> all = sorted(input, sortColumns, ascending);
+
+		OptimizerPlanOperator sort = new SortPlanOperator(new TableScanPlanOperator(access, scanned), sortColumns, ascending);
+		OptimizerPlanOperator limited = PhysicalPlanGeneratorUtils.applyRowLimit(sort, 5);
+		assertTrue(limited instanceof SortPlanOperator);
+		assertEquals(5, ((SortPlanOperator) limited).getRowLimit());
+		assertEquals(5, limited.getOutputCardinality());
+		assertEquals(all.subList(0, 5), drain(limited.createPhysicalPlan(this.bufferPool, null), BATCH_SIZE));
+
+		OptimizerPlanOperator first = PhysicalPlanGeneratorUtils.applyRowLimit(new TableScanPlanOperator(access, scanned), 7);
+		assertEquals(input.subList(0, 7), drain(first.createPhysicalPlan(this.bufferPool, null), BATCH_SIZE));
+
+		assertTrue(PhysicalPlanGeneratorUtils.applyRowLimit(sort, -1) == sort);
+	}
+
+	/**
+	 * Tests the parse tree node of the LIMIT clause.
+	 */
+	@Test
+	public void testLimitClause() throws Exception
+	{
+		LimitClause clause = new LimitClause();
+		clause.setRowCount(new IntegerLiteral(10));
+		clause.setRowCount(new IntegerLiteral(20));
+		assertEquals(1, clause.getNumberOfChildren());
+		assertEquals("20", clause.getRowCount().getNodeContents());
+	}
+
+	// ------------------------------------------------------------------------
+
+	private PhysicalPlanOperator scan()
+	{
+		return new TableScanOperatorImpl(this.bufferPool, this.customer, CUSTOMER_ID, COLUMNS, null, 8);
+	}
+
+	private static List<DataTuple> sorted(List<DataTuple> tuples, final int[] sortColumns, final boolean[] ascending)
+	{
+		List<DataTuple> copy = new ArrayList<DataTuple>(tuples);
+		Collections.sort(copy, new Comparator<DataTuple>() {
+			@Override
+			public int compare(DataTuple first, DataTuple second)
+			{
+				for (int i = 0; i < sortColumns.length; i++) {
+					int cmp = first.getField(sortColumns[i]).compareTo(second.getField(sortColumns[i]));
+					if (cmp != 0) {
+						return ascending[i] ? cmp : -cmp;
+					}
+				}
+				return 0;
+			}
+		});
+		return copy;
+	}
+}